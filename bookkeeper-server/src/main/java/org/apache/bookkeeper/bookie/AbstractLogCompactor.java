@@ -21,8 +21,12 @@
 
 package org.apache.bookkeeper.bookie;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.util.concurrent.RateLimiter;
 
+import java.util.concurrent.TimeUnit;
+
+import org.apache.bookkeeper.common.util.MathUtils;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 
 /**
@@ -40,11 +44,29 @@ public abstract class AbstractLogCompactor {
     protected final LogRemovalListener logRemovalListener;
 
     public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener) {
+        this(conf, logRemovalListener, null);
+    }
+
+    public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener,
+                                OperationLatencyTracker foregroundLatencyTracker) {
+        this(conf, logRemovalListener, foregroundLatencyTracker, null);
+    }
+
+    public AbstractLogCompactor(ServerConfiguration conf, LogRemovalListener logRemovalListener,
+                                OperationLatencyTracker foregroundLatencyTracker, RateLimiter sharedRateLimiter) {
         this.conf = conf;
-        this.throttler = new Throttler(conf);
+        this.throttler = new Throttler(conf, foregroundLatencyTracker, sharedRateLimiter);
         this.logRemovalListener = logRemovalListener;
     }
 
+    /**
+     * Get the current compaction rate, which might be lower than the configured one when the compaction is slowed
+     * down to protect the foreground latency.
+     */
+    public double getRate() {
+        return throttler.getRate();
+    }
+
     /**
      * Compact entry log file.
      * @param entryLogMeta log metadata for the entry log to be compacted
@@ -59,20 +81,91 @@ public abstract class AbstractLogCompactor {
 
     /**
      * class Throttler.
+     *
+     * <p>When a foreground latency tracker and a latency threshold are configured, the rate is adjusted every second:
+     * it is halved while the average foreground latency is above the threshold, down to a tenth of the configured
+     * rate, and it increases by a tenth of the configured rate otherwise.
+     *
+     * <p>When a shared rate limiter is given, the permits are also acquired from it, so that the compactions of
+     * all the ledger directories fit in a global budget.
      */
     public static class Throttler {
+        private static final long ADJUST_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+        private static final double MIN_RATE_RATIO = 0.1;
+        private static final double RATE_INCREASE_RATIO = 0.1;
+
         private final RateLimiter rateLimiter;
         private final boolean isThrottleByBytes;
+        private final double maxRate;
+        private final RateLimiter sharedRateLimiter;
+
+        private final OperationLatencyTracker latencyTracker;
+        private final long latencyThresholdNanos;
+        private long lastAdjustNanos;
+        private long lastTotalLatencyNanos;
+        private long lastCount;
 
         Throttler(ServerConfiguration conf) {
+            this(conf, null, null);
+        }
+
+        Throttler(ServerConfiguration conf, OperationLatencyTracker latencyTracker, RateLimiter sharedRateLimiter) {
             this.isThrottleByBytes  = conf.getIsThrottleByBytes();
-            this.rateLimiter = RateLimiter.create(this.isThrottleByBytes
-                ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries());
+            this.sharedRateLimiter = sharedRateLimiter;
+            this.maxRate = this.isThrottleByBytes
+                ? conf.getCompactionRateByBytes() : conf.getCompactionRateByEntries();
+            this.rateLimiter = RateLimiter.create(maxRate);
+            this.latencyThresholdNanos =
+                TimeUnit.MILLISECONDS.toNanos(conf.getCompactionForegroundLatencyThresholdMillis());
+            this.latencyTracker = latencyThresholdNanos > 0 ? latencyTracker : null;
+            this.lastAdjustNanos = MathUtils.nowInNano();
+            if (this.latencyTracker != null) {
+                this.lastTotalLatencyNanos = latencyTracker.getTotalLatencyNanos();
+                this.lastCount = latencyTracker.getCount();
+            }
         }
 
         // acquire. if bybytes: bytes of this entry; if byentries: 1.
-        void acquire(int permits) {
-            rateLimiter.acquire(this.isThrottleByBytes ? permits : 1);
+        public void acquire(int permits) {
+            if (latencyTracker != null) {
+                maybeAdjustRate(MathUtils.nowInNano());
+            }
+            int acquired = this.isThrottleByBytes ? permits : 1;
+            rateLimiter.acquire(acquired);
+            if (sharedRateLimiter != null) {
+                sharedRateLimiter.acquire(acquired);
+            }
+        }
+
+        double getRate() {
+            return rateLimiter.getRate();
+        }
+
+        @VisibleForTesting
+        void maybeAdjustRate(long now) {
+            if (now - lastAdjustNanos < ADJUST_INTERVAL_NANOS) {
+                return;
+            }
+
+            long totalLatencyNanos = latencyTracker.getTotalLatencyNanos();
+            long count = latencyTracker.getCount();
+            double rate = rateLimiter.getRate();
+            double newRate;
+            if (count == lastCount) {
+                // No foreground traffic to protect
+                newRate = maxRate;
+            } else if ((totalLatencyNanos - lastTotalLatencyNanos) / (count - lastCount) > latencyThresholdNanos) {
+                newRate = Math.max(maxRate * MIN_RATE_RATIO, rate / 2);
+            } else {
+                newRate = Math.min(maxRate, rate + maxRate * RATE_INCREASE_RATIO);
+            }
+
+            if (newRate != rate) {
+                rateLimiter.setRate(newRate);
+            }
+            lastAdjustNanos = now;
+            lastTotalLatencyNanos = totalLatencyNanos;
+            lastCount = count;
         }
     }
 
@@ -19,7 +19,9 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
+import java.util.List;
 import java.util.PrimitiveIterator;
 import java.util.concurrent.CompletableFuture;
 import org.apache.bookkeeper.common.util.Watcher;
@@ -57,6 +59,11 @@ public interface Bookie {
     // TODO: Shouldn't this be async?
     ByteBuf readEntry(long ledgerId, long entryId)
             throws IOException, NoLedgerException, BookieException;
+    CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId);
+    FileRegion readEntryRegion(long ledgerId, long entryId, int minSize)
+            throws IOException, NoLedgerException, BookieException;
+    List<ByteBuf> batchReadEntries(long ledgerId, long startEntryId, int maxCount, long maxSize)
+            throws IOException, NoLedgerException, BookieException;
     long readLastAddConfirmed(long ledgerId) throws IOException, BookieException;
     PrimitiveIterator.OfLong getListOfEntriesOfLedger(long ledgerId) throws IOException, NoLedgerException;
 
@@ -31,6 +31,7 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.FileRegion;
 import java.io.File;
 import java.io.FilenameFilter;
 import java.io.IOException;
@@ -59,6 +60,7 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.BookieStats;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorage;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
 import org.apache.bookkeeper.common.util.Watcher;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.discover.BookieServiceInfo;
@@ -428,7 +430,16 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         // instantiate the journals
         journals = Lists.newArrayList();
         for (int i = 0; i < journalDirectories.size(); i++) {
-            journals.add(new Journal(i, journalDirectories.get(i),
+            File journalDirectory = journalDirectories.get(i);
+            int numStripes = conf.getJournalStripesPerDirectory();
+            int numStripesInUse = Journal.getNumStripesInUse(journalDirectory);
+            if (numStripesInUse > numStripes) {
+                // the stripes may still hold journal files to replay
+                LOG.warn("Journal directory {} has {} stripes while {} are configured, keep using all of them",
+                        journalDirectory, numStripesInUse, numStripes);
+                numStripes = numStripesInUse;
+            }
+            journals.addAll(Journal.newStripeJournals(i, journalDirectory, numStripes,
                     conf, ledgerDirsManager, statsLogger.scope(JOURNAL_SCOPE), allocator));
         }
 
@@ -894,7 +905,18 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
     }
 
     private Journal getJournal(long ledgerId) {
-        return journals.get(MathUtils.signSafeMod(ledgerId, journals.size()));
+        return journals.get(getJournalIndex(ledgerId, journals.size()));
+    }
+
+    /**
+     * Get the index of the journal of a ledger, among the stripes of all the journal directories.
+     *
+     * <p>A ledger always maps to the same journal, so that its entries are written, replayed and
+     * acknowledged in order.
+     */
+    @VisibleForTesting
+    static int getJournalIndex(long ledgerId, int numJournals) {
+        return MathUtils.signSafeMod(ledgerId, numJournals);
     }
 
     /**
@@ -1100,6 +1122,80 @@ public class BookieImpl extends BookieCriticalThread implements Bookie {
         }
     }
 
+    @Override
+    public CompletableFuture<ByteBuf> readEntryAsync(long ledgerId, long entryId) {
+        long requestNanos = MathUtils.nowInNano();
+        CompletableFuture<ByteBuf> future;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading {}@{} asynchronously", entryId, ledgerId);
+            }
+            future = handle.readEntryAsync(entryId);
+        } catch (IOException e) {
+            future = FutureUtils.exception(e);
+        }
+
+        return future.whenComplete((entry, cause) -> {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (cause == null) {
+                int entrySize = entry.readableBytes();
+                bookieStats.getReadBytes().add(entrySize);
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(entrySize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(0);
+            }
+        });
+    }
+
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, int minSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+        FileRegion region = handle.readEntryRegion(entryId, minSize);
+        if (region != null) {
+            // Only the successful reads are recorded, the others are retried with readEntry
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            bookieStats.getReadBytes().add(region.count());
+            bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+            bookieStats.getReadBytesStats().registerSuccessfulValue(region.count());
+        }
+        return region;
+    }
+
+    @Override
+    public List<ByteBuf> batchReadEntries(long ledgerId, long startEntryId, int maxCount, long maxSize)
+            throws IOException, NoLedgerException, BookieException {
+        long requestNanos = MathUtils.nowInNano();
+        boolean success = false;
+        int batchSize = 0;
+        try {
+            LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
+            if (LOG.isTraceEnabled()) {
+                LOG.trace("Reading up to {} entries from {}@{}", maxCount, startEntryId, ledgerId);
+            }
+            List<ByteBuf> entries = handle.batchReadEntries(startEntryId, maxCount, maxSize);
+            for (int i = 0; i < entries.size(); i++) {
+                batchSize += entries.get(i).readableBytes();
+            }
+            bookieStats.getReadBytes().add(batchSize);
+            success = true;
+            return entries;
+        } finally {
+            long elapsedNanos = MathUtils.elapsedNanos(requestNanos);
+            if (success) {
+                bookieStats.getReadEntryStats().registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerSuccessfulValue(batchSize);
+            } else {
+                bookieStats.getReadEntryStats().registerFailedEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+                bookieStats.getReadBytesStats().registerFailedValue(batchSize);
+            }
+        }
+    }
+
     public long readLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         LedgerDescriptor handle = handles.getReadOnlyHandle(ledgerId);
         return handle.getLastAddConfirmed();
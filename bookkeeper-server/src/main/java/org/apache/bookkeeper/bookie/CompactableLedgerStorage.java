@@ -51,4 +51,14 @@ public interface CompactableLedgerStorage extends LedgerStorage {
      * @throws IOException
      */
     void flushEntriesLocationsIndex() throws IOException;
+
+    /**
+     * Get the tracker of the latency of the adds and reads served by this storage, which the compaction
+     * uses to slow down when the foreground operations are suffering.
+     *
+     * @return the latency tracker, or null if the storage doesn't track the latency
+     */
+    default OperationLatencyTracker getForegroundLatencyTracker() {
+        return null;
+    }
 }
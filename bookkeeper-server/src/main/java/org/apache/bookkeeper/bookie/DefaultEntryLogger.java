@@ -32,6 +32,8 @@ import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.FastThreadLocal;
 import java.io.BufferedReader;
 import java.io.File;
@@ -91,6 +93,9 @@ public class DefaultEntryLogger implements EntryLogger {
         private final EntryLogMetadata entryLogMetadata;
         private final File logFile;
         private long ledgerIdAssigned = UNASSIGNED_LEDGERID;
+        // Guards the metadata checkpoint file against a flush racing with the rotation of the log
+        private final Object metadataCheckpointLock = new Object();
+        private boolean ledgersMapAppended = false;
 
         public BufferedLogChannel(ByteBufAllocator allocator, FileChannel fc, int writeCapacity, int readCapacity,
                 long logId, File logFile, long unpersistedBytesBound) throws IOException {
@@ -115,6 +120,38 @@ public class DefaultEntryLogger implements EntryLogger {
             return entryLogMetadata.getLedgersMap();
         }
 
+        /**
+         * Take a snapshot of the ledgers map along with the position of the log it accounts for.
+         * Entries are written and registered while holding the channel lock, so the two are consistent.
+         */
+        synchronized EntryLogMetadataCheckpoint checkpointMetadata() {
+            EntryLogMetadata snapshot = new EntryLogMetadata(logId);
+            entryLogMetadata.getLedgersMap().forEach(snapshot::addLedgerSize);
+            return new EntryLogMetadataCheckpoint(logId, position(), snapshot);
+        }
+
+        File getMetadataCheckpointFile() {
+            return EntryLogMetadataCheckpoint.checkpointFile(logFile, logId);
+        }
+
+        boolean isLedgersMapAppended() {
+            synchronized (metadataCheckpointLock) {
+                return ledgersMapAppended;
+            }
+        }
+
+        /**
+         * Write the metadata checkpoint of the log, unless the log is being rotated out. Once its ledgers map
+         * is appended, the checkpoint is deleted when the rotated log is synced and must not be written again.
+         */
+        void writeMetadataCheckpoint(EntryLogMetadataCheckpoint checkpoint) throws IOException {
+            synchronized (metadataCheckpointLock) {
+                if (!ledgersMapAppended) {
+                    checkpoint.write(getMetadataCheckpointFile());
+                }
+            }
+        }
+
         public Long getLedgerIdAssigned() {
             return ledgerIdAssigned;
         }
@@ -137,6 +174,9 @@ public class DefaultEntryLogger implements EntryLogger {
          * Updates the entry log file header with the offset and size of the map.
          */
         void appendLedgersMap() throws IOException {
+            synchronized (metadataCheckpointLock) {
+                ledgersMapAppended = true;
+            }
 
             long ledgerMapOffset = this.position();
 
@@ -289,6 +329,9 @@ public class DefaultEntryLogger implements EntryLogger {
 
     private final ByteBufAllocator allocator;
 
+    // Reads the sealed entry logs through memory mappings, if enabled
+    private final MappedEntryLogReader mappedEntryLogReader;
+
     final ServerConfiguration conf;
 
     /**
@@ -355,16 +398,35 @@ public class DefaultEntryLogger implements EntryLogger {
         if (entryLogPerLedgerEnabled) {
             this.entryLogManager = new EntryLogManagerForEntryLogPerLedger(conf, ledgerDirsManager,
                     entryLoggerAllocator, listeners, recentlyCreatedEntryLogsStatus, statsLogger);
+        } else if (conf.isEntryLogTieringEnabled()) {
+            this.entryLogManager = new EntryLogManagerForTieredEntryLogs(conf, ledgerDirsManager,
+                    entryLoggerAllocator, listeners, recentlyCreatedEntryLogsStatus);
         } else {
             this.entryLogManager = new EntryLogManagerForSingleEntryLog(conf, ledgerDirsManager, entryLoggerAllocator,
                     listeners, recentlyCreatedEntryLogsStatus);
         }
+        if (conf.isEntryLogMmapReadEnabled()) {
+            // A mapping is limited to 2GB
+            long windowSize = Math.min(conf.getEntryLogMmapWindowSizeMB(), 1024) * MB;
+            this.mappedEntryLogReader = new MappedEntryLogReader(allocator, windowSize,
+                    conf.getEntryLogMmapMaxWindows(), this::findFile);
+        } else {
+            this.mappedEntryLogReader = null;
+        }
     }
 
     EntryLogManager getEntryLogManager() {
         return entryLogManager;
     }
 
+    /**
+     * Notify the entry logger that a ledger was deleted, so that the placement of the ledgers in the entry
+     * logs learns how long they live.
+     */
+    public void ledgerDeleted(long ledgerId) {
+        entryLogManager.onLedgerDeleted(ledgerId);
+    }
+
     void addListener(EntryLogListener listener) {
         if (null != listener) {
             listeners.add(listener);
@@ -520,6 +582,9 @@ public class DefaultEntryLogger implements EntryLogger {
     @Override
     public boolean removeEntryLog(long entryLogId) {
         removeFromChannelsAndClose(entryLogId);
+        if (mappedEntryLogReader != null) {
+            mappedEntryLogReader.unmap(entryLogId);
+        }
         File entryLogFile;
         try {
             entryLogFile = findFile(entryLogId);
@@ -531,6 +596,7 @@ public class DefaultEntryLogger implements EntryLogger {
         if (!entryLogFile.delete()) {
             LOG.warn("Could not delete entry log file {}", entryLogFile);
         }
+        EntryLogMetadataCheckpoint.delete(EntryLogMetadataCheckpoint.checkpointFile(entryLogFile, entryLogId));
         return true;
     }
 
@@ -827,6 +893,12 @@ public class DefaultEntryLogger implements EntryLogger {
         long entryLogId = logIdForOffset(location);
         long pos = posForOffset(location);
 
+        if (mappedEntryLogReader != null && entryLogId < recentlyCreatedEntryLogsStatus.getLeastUnflushedLogId()) {
+            ByteBuf entry = readMappedEntry(ledgerId, entryId, entryLogId, pos, validateEntry);
+            if (entry != null) {
+                return entry;
+            }
+        }
 
         BufferedReadChannel fc = null;
         int entrySize = -1;
@@ -865,6 +937,64 @@ public class DefaultEntryLogger implements EntryLogger {
         return data;
     }
 
+    @Override
+    public FileRegion readEntryRegion(long ledgerId, long entryId, long location, int minSize) throws IOException {
+        long entryLogId = logIdForOffset(location);
+        long pos = posForOffset(location);
+
+        int entrySize;
+        try {
+            BufferedReadChannel fc = getFCForEntryInternal(ledgerId, entryId, entryLogId, pos);
+            ByteBuf sizeBuff = readEntrySize(ledgerId, entryId, entryLogId, pos, fc);
+            entrySize = sizeBuff.getInt(0);
+            validateEntry(ledgerId, entryId, entryLogId, pos, sizeBuff);
+        } catch (EntryLookupException e) {
+            // Let the regular read report the error
+            return null;
+        }
+        if (entrySize < minSize) {
+            return null;
+        }
+
+        // The tail of the current log can still be in its write buffer, instead of the file
+        BufferedLogChannel bc = entryLogManager.getCurrentLogIfPresent(entryLogId);
+        if (null != bc) {
+            synchronized (bc) {
+                if (pos + entrySize > bc.getFileChannelPosition()) {
+                    return null;
+                }
+            }
+        }
+
+        // Open the file right away, so that the region can still be sent if the log is garbage collected
+        DefaultFileRegion region;
+        try {
+            region = new DefaultFileRegion(findFile(entryLogId), pos, entrySize);
+            region.open();
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        return region;
+    }
+
+    /**
+     * Read an entry from the mapping of a sealed entry log.
+     *
+     * @return the entry, or null if it has to be read from the file channel, which also reports the invalid
+     *         entries
+     */
+    private ByteBuf readMappedEntry(long ledgerId, long entryId, long entryLogId, long pos, boolean validateEntry)
+            throws IOException {
+        ByteBuf entry = mappedEntryLogReader.readEntry(entryLogId, pos);
+        if (entry != null && validateEntry
+                && (entry.readableBytes() < MIN_SANE_ENTRY_SIZE || entry.readableBytes() > maxSaneEntrySize
+                    || entry.getLong(0) != ledgerId || entry.getLong(8) != entryId)) {
+            entry.release();
+            return null;
+        }
+        return entry;
+    }
+
     /**
      * Read the header of an entry log.
      */
@@ -975,6 +1105,15 @@ public class DefaultEntryLogger implements EntryLogger {
      */
     @Override
     public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        // Start the read position in the current entry log file to be after
+        // the header where all of the ledger entries are.
+        scanEntryLog(entryLogId, LOGFILE_HEADER_SIZE, scanner);
+    }
+
+    /**
+     * Scan entry log, starting from the given position, which must be the start of an entry.
+     */
+    private void scanEntryLog(long entryLogId, long startPos, EntryLogScanner scanner) throws IOException {
         // Buffer where to read the entrySize (4 bytes) and the ledgerId (8 bytes)
         ByteBuf headerBuffer = Unpooled.buffer(4 + 8);
         BufferedReadChannel bc;
@@ -985,9 +1124,7 @@ public class DefaultEntryLogger implements EntryLogger {
             LOG.warn("Failed to get channel to scan entry log: " + entryLogId + ".log");
             throw e;
         }
-        // Start the read position in the current entry log file to be after
-        // the header where all of the ledger entries are.
-        long pos = LOGFILE_HEADER_SIZE;
+        long pos = startPos;
 
         // Start with a reasonably sized buffer size
         ByteBuf data = allocator.directBuffer(1024 * 1024);
@@ -1140,10 +1277,27 @@ public class DefaultEntryLogger implements EntryLogger {
     private EntryLogMetadata extractEntryLogMetadataByScanning(long entryLogId,
                                                                AbstractLogCompactor.Throttler throttler)
         throws IOException {
-        final EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        EntryLogMetadata checkpointMeta = null;
+        long startPos = LOGFILE_HEADER_SIZE;
+
+        // Resume from the metadata checkpointed while the entry log was written, if any
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(
+                EntryLogMetadataCheckpoint.checkpointFile(findFile(entryLogId), entryLogId), entryLogId);
+        if (checkpoint != null) {
+            if (checkpoint.getOffset() >= LOGFILE_HEADER_SIZE
+                    && checkpoint.getOffset() <= getChannelForLogId(entryLogId).size()) {
+                LOG.info("Scanning entryLogId {} from checkpointed offset {}", entryLogId, checkpoint.getOffset());
+                checkpointMeta = checkpoint.getMetadata();
+                startPos = checkpoint.getOffset();
+            } else {
+                LOG.warn("Ignoring metadata checkpoint of entryLogId {} at offset {} beyond the end of the log",
+                        entryLogId, checkpoint.getOffset());
+            }
+        }
+        final EntryLogMetadata meta = checkpointMeta != null ? checkpointMeta : new EntryLogMetadata(entryLogId);
 
         // Read through the entry log file and extract the entry log meta
-        scanEntryLog(entryLogId, new EntryLogScanner() {
+        scanEntryLog(entryLogId, startPos, new EntryLogScanner() {
             @Override
             public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
                 if (throttler != null) {
@@ -1179,6 +1333,9 @@ public class DefaultEntryLogger implements EntryLogger {
             }
             // clear the mapping, so we don't need to go through the channels again in finally block in normal case.
             logid2FileChannel.clear();
+            if (mappedEntryLogReader != null) {
+                mappedEntryLogReader.close();
+            }
             entryLogManager.close();
             synchronized (compactionLogLock) {
                 if (compactionLogChannel != null) {
@@ -1240,7 +1397,8 @@ public class DefaultEntryLogger implements EntryLogger {
      */
     static class RecentEntryLogsStatus {
         private final SortedMap<Long, Boolean> entryLogsStatusMap;
-        private long leastUnflushedLogId;
+        // Read without the lock by the entry reads
+        private volatile long leastUnflushedLogId;
 
         RecentEntryLogsStatus(long leastUnflushedLogId) {
             entryLogsStatusMap = new TreeMap<>();
@@ -1260,7 +1418,7 @@ public class DefaultEntryLogger implements EntryLogger {
             }
         }
 
-        synchronized long getLeastUnflushedLogId() {
+        long getLeastUnflushedLogId() {
             return leastUnflushedLogId;
         }
 
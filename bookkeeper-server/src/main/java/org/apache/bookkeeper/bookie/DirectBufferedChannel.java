@@ -0,0 +1,212 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.Buffer;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.BufferPool;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link BufferedChannel} which writes the journal with direct I/O.
+ *
+ * <p>The data is accumulated in an aligned {@link Buffer} taken from a {@link BufferPool}, and written
+ * with pwrite to the file opened with O_DIRECT|O_DSYNC, so the writes bypass the page cache and are durable
+ * when {@link #flush()} returns, without a separate fsync. Since direct I/O needs aligned offsets and sizes,
+ * a partially filled block is written padded with zeros and is kept in the buffer, to be written again
+ * with the following data on the next flush. Aligning the journal writes to 4096 bytes with the journal
+ * padding avoids rewriting blocks.
+ *
+ * <p>The file is never written through the page cache, including when it is extended by {@link #preallocate}.
+ *
+ * <p>The writes are synchronized. The data is only written by {@link #flush()} or when the buffer is full,
+ * and {@link #close()} discards the data which was not flushed, like {@link BufferedChannel}.
+ */
+class DirectBufferedChannel extends BufferedChannel {
+    private static final Logger LOG = LoggerFactory.getLogger(DirectBufferedChannel.class);
+    // The journal is never read through this channel, so the read buffer of the BufferedChannel is left minimal
+    private static final int READ_CAPACITY = 512;
+
+    private final NativeIO nativeIO;
+    private final BufferPool bufferPool;
+    private final String filename;
+    private final int fd;
+
+    private Buffer buffer;
+    // Aligned file offset at which the content of the buffer is written
+    private long bufferOffset;
+    private boolean closed = false;
+    private boolean fallocateSupported = true;
+
+    DirectBufferedChannel(ByteBufAllocator allocator, FileChannel fc, int capacity, File file,
+                          BufferPool bufferPool, NativeIO nativeIO) throws IOException {
+        super(allocator, fc, 0, READ_CAPACITY, 0L);
+        this.nativeIO = nativeIO;
+        this.bufferPool = bufferPool;
+        this.filename = file.getPath();
+        this.buffer = bufferPool.acquire();
+        try {
+            // Load the beginning of the block containing the current position, usually the journal header,
+            // since the block is entirely written again on the first flush
+            this.bufferOffset = position - position % Buffer.ALIGNMENT;
+            ByteBuffer head = ByteBuffer.allocate((int) (position - bufferOffset));
+            while (head.hasRemaining()) {
+                if (fc.read(head, bufferOffset + head.position()) < 0) {
+                    throw new IOException(exMsg("Short read of journal").kv("filename", filename)
+                            .kv("position", position).toString());
+                }
+            }
+            head.flip();
+            buffer.writeByteBuf(Unpooled.wrappedBuffer(head));
+
+            this.fd = nativeIO.open(filename, NativeIO.O_WRONLY | NativeIO.O_DIRECT | NativeIO.O_DSYNC, 00644);
+        } catch (IOException e) {
+            bufferPool.release(buffer);
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized void write(ByteBuf src) throws IOException {
+        int len = src.readableBytes();
+        int copied = 0;
+        while (copied < len) {
+            int bytesToCopy = Math.min(len - copied, buffer.size() - buffer.position());
+            buffer.writeByteBuf(src.slice(src.readerIndex() + copied, bytesToCopy));
+            copied += bytesToCopy;
+
+            if (buffer.position() == buffer.size()) {
+                writeBuffer();
+            }
+        }
+        position += copied;
+    }
+
+    /**
+     * Write the buffered data to the file. The data is durable once this method returns.
+     */
+    @Override
+    public synchronized void flush() throws IOException {
+        writeBuffer();
+    }
+
+    /**
+     * The data is already durable when written, only the file metadata might need to be forced.
+     */
+    @Override
+    public long forceWrite(boolean forceMetadata) throws IOException {
+        long positionForceWrite = writeBufferStartPosition.get();
+        if (forceMetadata) {
+            fileChannel.force(true);
+        }
+        return positionForceWrite;
+    }
+
+    /**
+     * Extend the file up to the end of the given range, without going through the page cache. The space is
+     * allocated with fallocate, or else the last block of the range is written with zeros.
+     */
+    synchronized void preallocate(long offset, long len) throws IOException {
+        if (fallocateSupported) {
+            try {
+                nativeIO.fallocate(fd, 0, offset, len);
+                return;
+            } catch (NativeIOException e) {
+                LOG.warn("Failed to fallocate journal {}, writing zeros instead", filename, e);
+                fallocateSupported = false;
+            }
+        }
+
+        long lastBlockOffset = (offset + len - 1) - (offset + len - 1) % Buffer.ALIGNMENT;
+        ByteBuf zeros = PooledByteBufAllocator.DEFAULT.directBuffer(2 * Buffer.ALIGNMENT);
+        try {
+            zeros.setZero(0, zeros.capacity());
+            long address = zeros.memoryAddress();
+            long pointer = address + (Buffer.ALIGNMENT - address % Buffer.ALIGNMENT) % Buffer.ALIGNMENT;
+            int rc = nativeIO.pwrite(fd, pointer, Buffer.ALIGNMENT, lastBlockOffset);
+            if (rc != Buffer.ALIGNMENT) {
+                throw new IOException(exMsg("Failed to preallocate journal").kv("filename", filename)
+                        .kv("offset", lastBlockOffset).kv("rc", rc).toString());
+            }
+        } finally {
+            zeros.release();
+        }
+    }
+
+    @Override
+    public synchronized int getNumOfBytesInWriteBuffer() {
+        return (int) (bufferOffset + buffer.position() - writeBufferStartPosition.get());
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        bufferPool.release(buffer);
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException e) {
+            LOG.warn("Failed to close journal {}", filename, e);
+        }
+        super.close();
+    }
+
+    private void writeBuffer() throws IOException {
+        int size = buffer.position();
+        if (bufferOffset + size == writeBufferStartPosition.get()) {
+            return;
+        }
+
+        int alignedSize = buffer.zeroToAlignment();
+        int written = 0;
+        while (written < alignedSize) {
+            int rc = nativeIO.pwrite(fd, buffer.pointer(written, alignedSize - written), alignedSize - written,
+                    bufferOffset + written);
+            if (rc <= 0) {
+                throw new IOException(exMsg("Failed to write to journal").kv("filename", filename)
+                        .kv("offset", bufferOffset + written).kv("rc", rc).toString());
+            }
+            written += rc;
+        }
+
+        // Keep the last block if it is incomplete, to write it again with the following data
+        int completeBlocks = size - size % Buffer.ALIGNMENT;
+        buffer.compact(completeBlocks);
+        bufferOffset += completeBlocks;
+        writeBufferStartPosition.set(bufferOffset + buffer.position());
+    }
+}
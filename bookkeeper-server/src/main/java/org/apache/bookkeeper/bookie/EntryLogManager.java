@@ -100,4 +100,11 @@ interface EntryLogManager {
      * creates new separate log for compaction.
      */
     BufferedLogChannel createNewLogForCompaction() throws IOException;
+
+    /*
+     * notifies that a ledger was deleted, for the entrylogmanagers placing
+     * the ledgers according to their lifetime.
+     */
+    default void onLedgerDeleted(long ledgerId) {
+    }
 }
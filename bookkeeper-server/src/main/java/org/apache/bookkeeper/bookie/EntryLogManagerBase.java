@@ -46,6 +46,10 @@ abstract class EntryLogManagerBase implements EntryLogManager {
      * The maximum size of a entry logger file.
      */
     final long logSizeLimit;
+    /**
+     * Whether the metadata of the current logs is checkpointed when they are flushed.
+     */
+    final boolean metadataCheckpointEnabled;
 
     EntryLogManagerBase(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
             EntryLoggerAllocator entryLoggerAllocator, List<DefaultEntryLogger.EntryLogListener> listeners) {
@@ -53,6 +57,7 @@ abstract class EntryLogManagerBase implements EntryLogManager {
         this.entryLoggerAllocator = entryLoggerAllocator;
         this.listeners = listeners;
         this.logSizeLimit = conf.getEntryLogSizeLimit();
+        this.metadataCheckpointEnabled = conf.isEntryLogMetadataCheckpointEnabled();
     }
 
     private final FastThreadLocal<ByteBuf> sizeBufferForAdd = new FastThreadLocal<ByteBuf>() {
@@ -73,13 +78,28 @@ abstract class EntryLogManagerBase implements EntryLogManager {
         ByteBuf sizeBuffer = sizeBufferForAdd.get();
         sizeBuffer.clear();
         sizeBuffer.writeInt(entry.readableBytes());
+
+        long pos;
+        if (metadataCheckpointEnabled) {
+            // Hold the channel lock so that the ledgers map is consistent with the position for metadata checkpoints
+            synchronized (logChannel) {
+                pos = writeEntry(logChannel, ledger, sizeBuffer, entry, entrySize);
+            }
+        } else {
+            pos = writeEntry(logChannel, ledger, sizeBuffer, entry, entrySize);
+        }
+
+        return (logChannel.getLogId() << 32L) | pos;
+    }
+
+    private static long writeEntry(BufferedLogChannel logChannel, long ledger, ByteBuf sizeBuffer, ByteBuf entry,
+                                   int entrySize) throws IOException {
         logChannel.write(sizeBuffer);
 
         long pos = logChannel.position();
         logChannel.write(entry);
         logChannel.registerWrittenEntry(ledger, entrySize);
-
-        return (logChannel.getLogId() << 32L) | pos;
+        return pos;
     }
 
     boolean reachEntryLogLimit(BufferedLogChannel logChannel, long size) {
@@ -125,8 +145,25 @@ abstract class EntryLogManagerBase implements EntryLogManager {
 
     void flushLogChannel(BufferedLogChannel logChannel, boolean forceMetadata) throws IOException {
         if (logChannel != null) {
+            // Snapshot before flushing, so that all the entries accounted in the checkpoint are persisted when it is
+            EntryLogMetadataCheckpoint checkpoint = metadataCheckpointEnabled && !logChannel.isLedgersMapAppended()
+                    ? logChannel.checkpointMetadata() : null;
             logChannel.flushAndForceWrite(forceMetadata);
             log.debug("Flush and sync current entry logger {}", logChannel.getLogId());
+            if (checkpoint != null) {
+                // Skipped if the log was rotated out meanwhile, its ledgers map is then at the end of the log
+                logChannel.writeMetadataCheckpoint(checkpoint);
+            }
+        }
+    }
+
+    /*
+     * Once a rotated log is synced, its ledgers map is persisted at the end of the log and the metadata
+     * checkpoint is no longer needed.
+     */
+    void onRotatedLogFlushed(BufferedLogChannel logChannel) {
+        if (metadataCheckpointEnabled) {
+            EntryLogMetadataCheckpoint.delete(logChannel.getMetadataCheckpointFile());
         }
     }
 
@@ -151,26 +188,38 @@ abstract class EntryLogManagerBase implements EntryLogManager {
         // there is a new log channel. it would prevent that a log channel is referenced by both
         // *logChannel* and *ToFlush* list.
         if (null != logChannel) {
-
-            // flush the internal buffer back to filesystem but not sync disk
-            logChannel.flush();
-
-            // Append ledgers map at the end of entry log
-            logChannel.appendLedgersMap();
-
+            sealLog(logChannel);
             BufferedLogChannel newLogChannel = entryLoggerAllocator.createNewLog(selectDirForNextEntryLog());
             setCurrentLogForLedgerAndAddToRotate(ledgerId, newLogChannel);
-            log.info("Flushing entry logger {} back to filesystem, pending for syncing entry loggers : {}.",
-                    logChannel.getLogId(), rotatedLogChannels);
-            for (EntryLogListener listener : listeners) {
-                listener.onRotateEntryLog();
-            }
+            onLogRotated(logChannel);
         } else {
             setCurrentLogForLedgerAndAddToRotate(ledgerId,
                     entryLoggerAllocator.createNewLog(selectDirForNextEntryLog()));
         }
     }
 
+    /*
+     * Prepares a current log channel to be rotated.
+     */
+    void sealLog(BufferedLogChannel logChannel) throws IOException {
+        // flush the internal buffer back to filesystem but not sync disk
+        logChannel.flush();
+
+        // Append ledgers map at the end of entry log
+        logChannel.appendLedgersMap();
+    }
+
+    /*
+     * Notifies the listeners once a log channel was replaced by a new log channel and added to the rotated logs.
+     */
+    void onLogRotated(BufferedLogChannel logChannel) {
+        log.info("Flushing entry logger {} back to filesystem, pending for syncing entry loggers : {}.",
+                logChannel.getLogId(), rotatedLogChannels);
+        for (EntryLogListener listener : listeners) {
+            listener.onRotateEntryLog();
+        }
+    }
+
     File selectDirForNextEntryLog() throws NoWritableLedgerDirException {
         return getDirForNextEntryLog(ledgerDirsManager.getWritableLedgerDirsForNewLog());
     }
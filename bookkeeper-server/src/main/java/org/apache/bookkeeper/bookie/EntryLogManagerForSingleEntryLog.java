@@ -205,6 +205,7 @@ class EntryLogManagerForSingleEntryLog extends EntryLogManagerBase {
             // we had to close the underlying file channel. Otherwise, we might end up
             // leaking fds which cause the disk spaces could not be reclaimed.
             channel.close();
+            onRotatedLogFlushed(channel);
             recentlyCreatedEntryLogsStatus.flushRotatedEntryLog(channel.getLogId());
             log.info("Synced entry logger {} to disk.", channel.getLogId());
         }
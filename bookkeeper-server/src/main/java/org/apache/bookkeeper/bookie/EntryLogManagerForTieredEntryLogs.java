@@ -0,0 +1,338 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.DefaultEntryLogger.INVALID_LID;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.buffer.ByteBuf;
+import java.io.File;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger.BufferedLogChannel;
+import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
+import org.apache.bookkeeper.bookie.LedgerWriteClassifier.Tier;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.IOUtils;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * EntryLogManager which writes into one active entry log per {@link Tier}.
+ *
+ * <p>The ledgers are classified by {@link LedgerWriteClassifier} according to their write rate and expected
+ * lifetime, so that the short lived ledgers end up together in the same entry logs and die together, while
+ * keeping the number of active entry logs small whatever the number of ledgers.
+ */
+@Slf4j
+class EntryLogManagerForTieredEntryLogs extends EntryLogManagerBase {
+
+    private static final Tier[] TIERS = Tier.values();
+
+    private final AtomicReferenceArray<BufferedLogChannel> activeLogChannels =
+            new AtomicReferenceArray<>(TIERS.length);
+    private final long[] logIdsBeforeFlush = new long[TIERS.length];
+    private final boolean[] shouldCreateNewEntryLog = new boolean[TIERS.length];
+    private final LedgerWriteClassifier classifier;
+    private final DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus;
+
+    EntryLogManagerForTieredEntryLogs(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
+            EntryLoggerAllocator entryLoggerAllocator, List<DefaultEntryLogger.EntryLogListener> listeners,
+            DefaultEntryLogger.RecentEntryLogsStatus recentlyCreatedEntryLogsStatus) {
+        super(conf, ledgerDirsManager, entryLoggerAllocator, listeners);
+        this.rotatedLogChannels = new LinkedList<BufferedLogChannel>();
+        this.recentlyCreatedEntryLogsStatus = recentlyCreatedEntryLogsStatus;
+        this.classifier = new LedgerWriteClassifier(conf.getEntryLogTieringWindowSeconds(),
+                conf.getEntryLogTieringHotWriteRateBytes(), conf.getEntryLogTieringColdWriteRateBytes());
+        // Register listener for disk full notifications.
+        ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
+    }
+
+    private LedgerDirsListener getLedgerDirsListener() {
+        return new LedgerDirsListener() {
+            @Override
+            public void diskFull(File disk) {
+                rollLogsOnDisk(disk);
+            }
+
+            @Override
+            public void diskAlmostFull(File disk) {
+                rollLogsOnDisk(disk);
+            }
+        };
+    }
+
+    private synchronized void rollLogsOnDisk(File disk) {
+        // If the disk of a current entry log is (almost) full, then create a new entry log for the tier
+        for (int i = 0; i < TIERS.length; i++) {
+            BufferedLogChannel logChannel = activeLogChannels.get(i);
+            if (logChannel != null && logChannel.getLogFile().getParentFile().equals(disk)) {
+                shouldCreateNewEntryLog[i] = true;
+            }
+        }
+    }
+
+    @VisibleForTesting
+    LedgerWriteClassifier getClassifier() {
+        return classifier;
+    }
+
+    /**
+     * Record the deletion of a ledger, to learn the lifetime of the ledgers.
+     */
+    @Override
+    public void onLedgerDeleted(long ledgerId) {
+        classifier.onLedgerDeleted(ledgerId, MathUtils.nowInNano());
+    }
+
+    @Override
+    public synchronized long addEntry(long ledger, ByteBuf entry, boolean rollLog) throws IOException {
+        classifier.onWrite(ledger, entry.readableBytes() + 4, MathUtils.nowInNano());
+        return super.addEntry(ledger, entry, rollLog);
+    }
+
+    @Override
+    synchronized BufferedLogChannel getCurrentLogForLedgerForAddEntry(long ledgerId, int entrySize,
+            boolean rollLog) throws IOException {
+        Tier tier = classifier.getTier(ledgerId);
+        BufferedLogChannel logChannel = activeLogChannels.get(tier.ordinal());
+        if (null == logChannel) {
+            // log channel can be null because the file is deferred to be created
+            createNewLogForTier(tier, "for ledger '" + ledgerId + "' because the log channel has not initialized yet");
+            return activeLogChannels.get(tier.ordinal());
+        }
+
+        boolean reachEntryLogLimit = rollLog ? reachEntryLogLimit(logChannel, entrySize)
+                : readEntryLogHardLimit(logChannel, entrySize);
+        // Create new log if logSizeLimit reached or current disk is full
+        boolean createNewLog = shouldCreateNewEntryLog[tier.ordinal()];
+        if (createNewLog || reachEntryLogLimit) {
+            logChannel.flushAndForceWriteIfRegularFlush(false);
+            createNewLogForTier(tier, "for ledger '" + ledgerId + "' : createNewLog = " + createNewLog
+                    + ", reachEntryLogLimit = " + reachEntryLogLimit);
+            shouldCreateNewEntryLog[tier.ordinal()] = false;
+        }
+        return activeLogChannels.get(tier.ordinal());
+    }
+
+    @Override
+    synchronized void createNewLog(long ledgerId) throws IOException {
+        super.createNewLog(ledgerId);
+    }
+
+    @Override
+    synchronized void createNewLog(long ledgerId, String reason) throws IOException {
+        createNewLogForTier(classifier.getTier(ledgerId), "for ledger '" + ledgerId + "' " + reason);
+    }
+
+    /*
+     * Rolls the current log of a tier, or creates it if the tier has no log yet. This method should be called
+     * under the lock of the entry log manager.
+     */
+    @VisibleForTesting
+    void createNewLogForTier(Tier tier, String reason) throws IOException {
+        log.info("Creating a new {} entry log file {}", tier, reason);
+
+        BufferedLogChannel logChannel = activeLogChannels.get(tier.ordinal());
+        if (null != logChannel) {
+            sealLog(logChannel);
+        }
+        setCurrentLogForTierAndAddToRotate(tier, entryLoggerAllocator.createNewLog(selectDirForNextEntryLog()));
+        if (null != logChannel) {
+            onLogRotated(logChannel);
+        }
+    }
+
+    /*
+     * Rolls the current logs of the tiers which have one.
+     */
+    private synchronized void createNewLogs(String reason) throws IOException {
+        for (Tier tier : TIERS) {
+            if (activeLogChannels.get(tier.ordinal()) != null) {
+                createNewLogForTier(tier, reason);
+            }
+        }
+    }
+
+    private synchronized void setCurrentLogForTierAndAddToRotate(Tier tier, BufferedLogChannel logChannel) {
+        BufferedLogChannel hasToRotateLogChannel = activeLogChannels.getAndSet(tier.ordinal(), logChannel);
+        if (hasToRotateLogChannel != null) {
+            rotatedLogChannels.add(hasToRotateLogChannel);
+        }
+    }
+
+    @Override
+    public void setCurrentLogForLedgerAndAddToRotate(long ledgerId, BufferedLogChannel logChannel) {
+        setCurrentLogForTierAndAddToRotate(classifier.getTier(ledgerId), logChannel);
+    }
+
+    @Override
+    public BufferedLogChannel getCurrentLogForLedger(long ledgerId) {
+        return activeLogChannels.get(classifier.getTier(ledgerId).ordinal());
+    }
+
+    @VisibleForTesting
+    BufferedLogChannel getCurrentLogForTier(Tier tier) {
+        return activeLogChannels.get(tier.ordinal());
+    }
+
+    @Override
+    public BufferedLogChannel getCurrentLogIfPresent(long entryLogId) {
+        for (int i = 0; i < TIERS.length; i++) {
+            BufferedLogChannel logChannel = activeLogChannels.get(i);
+            if (logChannel != null && logChannel.getLogId() == entryLogId) {
+                return logChannel;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public File getDirForNextEntryLog(List<File> writableLedgerDirs) {
+        Collections.shuffle(writableLedgerDirs);
+        return writableLedgerDirs.get(0);
+    }
+
+    @Override
+    public void checkpoint() throws IOException {
+        /*
+         * The entries of a checkpoint may be in any of the current logs,
+         * so flush both the rotated and the current logs.
+         */
+        super.flush();
+    }
+
+    @Override
+    public void flushCurrentLogs() throws IOException {
+        for (int i = 0; i < TIERS.length; i++) {
+            /**
+             * flushCurrentLogs method is called during checkpoint, so
+             * metadata of the file also should be force written.
+             */
+            flushLogChannel(activeLogChannels.get(i), true);
+        }
+    }
+
+    @Override
+    void flushRotatedLogs() throws IOException {
+        List<BufferedLogChannel> channels = null;
+        synchronized (this) {
+            channels = rotatedLogChannels;
+            rotatedLogChannels = new LinkedList<BufferedLogChannel>();
+        }
+        if (null == channels) {
+            return;
+        }
+        Iterator<BufferedLogChannel> chIter = channels.iterator();
+        while (chIter.hasNext()) {
+            BufferedLogChannel channel = chIter.next();
+            try {
+                channel.flushAndForceWrite(true);
+            } catch (IOException ioe) {
+                // rescue from flush exception, add unflushed channels back
+                synchronized (this) {
+                    if (null == rotatedLogChannels) {
+                        rotatedLogChannels = channels;
+                    } else {
+                        rotatedLogChannels.addAll(0, channels);
+                    }
+                }
+                throw ioe;
+            }
+            // remove the channel from the list after it is successfully flushed
+            chIter.remove();
+            // since this channel is only used for writing, after flushing the channel,
+            // we had to close the underlying file channel. Otherwise, we might end up
+            // leaking fds which cause the disk spaces could not be reclaimed.
+            channel.close();
+            onRotatedLogFlushed(channel);
+            recentlyCreatedEntryLogsStatus.flushRotatedEntryLog(channel.getLogId());
+            log.info("Synced entry logger {} to disk.", channel.getLogId());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        for (int i = 0; i < TIERS.length; i++) {
+            BufferedLogChannel logChannel = activeLogChannels.get(i);
+            if (logChannel != null) {
+                logChannel.close();
+            }
+        }
+    }
+
+    @Override
+    public void forceClose() {
+        for (int i = 0; i < TIERS.length; i++) {
+            IOUtils.close(log, activeLogChannels.get(i));
+        }
+    }
+
+    @Override
+    public synchronized void prepareEntryMemTableFlush() {
+        for (int i = 0; i < TIERS.length; i++) {
+            BufferedLogChannel logChannel = activeLogChannels.get(i);
+            logIdsBeforeFlush[i] = logChannel != null ? logChannel.getLogId() : INVALID_LID;
+        }
+    }
+
+    @Override
+    public synchronized boolean commitEntryMemTableFlush() throws IOException {
+        /*
+         * like with a single entry log, roll the logs which reached the
+         * limit, or which were rolled while the memtable was flushed, and
+         * start checkpointing.
+         */
+        boolean rolled = false;
+        for (Tier tier : TIERS) {
+            BufferedLogChannel logChannel = activeLogChannels.get(tier.ordinal());
+            long logIdAfterFlush = logChannel != null ? logChannel.getLogId() : INVALID_LID;
+            if (logChannel != null
+                    && (reachEntryLogLimit(logChannel, 0L) || logIdAfterFlush != logIdsBeforeFlush[tier.ordinal()])) {
+                createNewLogForTier(tier, "after flushing memtable : logIdBeforeFlush = "
+                        + logIdsBeforeFlush[tier.ordinal()] + ", logIdAfterFlush = " + logIdAfterFlush);
+                rolled = true;
+            }
+        }
+        return rolled;
+    }
+
+    @Override
+    public void prepareSortedLedgerStorageCheckpoint(long numBytesFlushed) throws IOException {
+        if (numBytesFlushed > 0) {
+            // if bytes are added between previous flush and this checkpoint,
+            // they might live in any of the current entry logs, roll them all
+            // and then issue checkpoint to underlying interleaved ledger storage.
+            createNewLogs("due to preparing checkpoint : numBytesFlushed = " + numBytesFlushed);
+        }
+    }
+
+    @Override
+    public BufferedLogChannel createNewLogForCompaction() throws IOException {
+        return entryLoggerAllocator.createNewLogForCompaction(selectDirForNextEntryLog());
+    }
+}
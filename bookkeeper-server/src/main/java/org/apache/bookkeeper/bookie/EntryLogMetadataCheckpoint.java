@@ -0,0 +1,190 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+import lombok.extern.slf4j.Slf4j;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
+
+/**
+ * Checkpoint of the metadata of an entry log which is still being written.
+ *
+ * <p>The ledgers map of an entry log is only appended to the log when it is rotated, so after an unclean
+ * shutdown the metadata of the log that was active has to be rebuilt by scanning the whole log. The checkpoint
+ * stores, next to the entry log, the ledgers map of all the entries preceding a given offset of the log, so that
+ * only the part of the log written after that offset has to be scanned.
+ *
+ * <p>Layout: magic (int), version (int), entry log id (long), offset (long), number of ledgers (int), the
+ * (ledgerId, size) pairs and a crc32 of all the preceding bytes (long).
+ */
+@Slf4j
+class EntryLogMetadataCheckpoint {
+
+    static final String FILE_EXTENSION = ".lmeta";
+
+    private static final int MAGIC = 0x4c4d4554; // "LMET"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4;
+    private static final int LEDGER_ENTRY_SIZE = 8 + 8;
+    private static final int CHECKSUM_SIZE = 8;
+
+    private final long entryLogId;
+    private final long offset;
+    private final EntryLogMetadata metadata;
+
+    EntryLogMetadataCheckpoint(long entryLogId, long offset, EntryLogMetadata metadata) {
+        this.entryLogId = entryLogId;
+        this.offset = offset;
+        this.metadata = metadata;
+    }
+
+    /**
+     * Offset of the entry log up to which the entries are accounted in the metadata.
+     */
+    long getOffset() {
+        return offset;
+    }
+
+    EntryLogMetadata getMetadata() {
+        return metadata;
+    }
+
+    static File checkpointFile(File logFile, long entryLogId) {
+        return new File(logFile.getParentFile(), Long.toHexString(entryLogId) + FILE_EXTENSION);
+    }
+
+    /**
+     * Atomically replace the checkpoint file of the entry log with this checkpoint.
+     */
+    void write(File file) throws IOException {
+        ConcurrentLongLongHashMap ledgersMap = metadata.getLedgersMap();
+        int ledgersCount = (int) ledgersMap.size();
+        ByteBuf buf = Unpooled.buffer(HEADER_SIZE + LEDGER_ENTRY_SIZE * ledgersCount + CHECKSUM_SIZE);
+        try {
+            buf.writeInt(MAGIC);
+            buf.writeInt(VERSION);
+            buf.writeLong(entryLogId);
+            buf.writeLong(offset);
+            buf.writeInt(ledgersCount);
+            ledgersMap.forEach((ledgerId, size) -> {
+                buf.writeLong(ledgerId);
+                buf.writeLong(size);
+            });
+            buf.writeLong(checksum(buf, buf.writerIndex()));
+
+            File tmpFile = new File(file.getParentFile(), file.getName() + ".tmp");
+            try (FileChannel fc = FileChannel.open(tmpFile.toPath(), StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                while (buf.isReadable()) {
+                    buf.readBytes(fc, buf.readableBytes());
+                }
+                fc.force(true);
+            }
+            Files.move(tmpFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+            // The rename is only durable once the directory entry is synced as well
+            syncDirectory(file.getParentFile());
+        } finally {
+            buf.release();
+        }
+    }
+
+    private static void syncDirectory(File dir) throws IOException {
+        try (FileChannel fc = FileChannel.open(dir.toPath(), StandardOpenOption.READ)) {
+            fc.force(true);
+        } catch (IOException e) {
+            // Some platforms do not allow opening or syncing a directory
+            if (dir.isDirectory()) {
+                log.debug("Could not sync directory {}", dir, e);
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Read the checkpoint of the entry log.
+     *
+     * @return the checkpoint, or null if there is no valid checkpoint for the entry log
+     */
+    static EntryLogMetadataCheckpoint read(File file, long entryLogId) {
+        if (!file.exists()) {
+            return null;
+        }
+
+        try {
+            ByteBuf buf = Unpooled.wrappedBuffer(Files.readAllBytes(file.toPath()));
+            if (buf.readableBytes() < HEADER_SIZE + CHECKSUM_SIZE
+                    || buf.getLong(buf.writerIndex() - CHECKSUM_SIZE)
+                        != checksum(buf, buf.writerIndex() - CHECKSUM_SIZE)) {
+                log.warn("Ignoring corrupted entry log metadata checkpoint {}", file);
+                return null;
+            }
+
+            int magic = buf.readInt();
+            int version = buf.readInt();
+            long logId = buf.readLong();
+            if (magic != MAGIC || version != VERSION || logId != entryLogId) {
+                log.warn("Ignoring invalid entry log metadata checkpoint {}: magic {} version {} entryLogId {}",
+                        file, magic, version, logId);
+                return null;
+            }
+
+            long offset = buf.readLong();
+            int ledgersCount = buf.readInt();
+            if (buf.readableBytes() != LEDGER_ENTRY_SIZE * ledgersCount + CHECKSUM_SIZE) {
+                log.warn("Ignoring truncated entry log metadata checkpoint {}", file);
+                return null;
+            }
+
+            EntryLogMetadata metadata = new EntryLogMetadata(entryLogId);
+            for (int i = 0; i < ledgersCount; i++) {
+                metadata.addLedgerSize(buf.readLong(), buf.readLong());
+            }
+            return new EntryLogMetadataCheckpoint(entryLogId, offset, metadata);
+        } catch (IOException e) {
+            log.warn("Failed to read entry log metadata checkpoint {}", file, e);
+            return null;
+        }
+    }
+
+    static void delete(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Could not delete entry log metadata checkpoint {}", file);
+        }
+    }
+
+    private static long checksum(ByteBuf buf, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(buf.nioBuffer(0, length));
+        return crc.getValue();
+    }
+}
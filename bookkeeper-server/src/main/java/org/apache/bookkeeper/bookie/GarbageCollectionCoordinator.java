@@ -0,0 +1,138 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Coordinates the garbage collector threads of the ledger directories of a bookie.
+ *
+ * <p>The garbage collector of each directory compares the ledgers it stores with the ledgers in the metadata
+ * store. Instead of having each directory list all the ledgers of the metadata store, the coordinator keeps the
+ * last listing, as a sorted array of ledger ids, and shares it with all the directories which have listed their
+ * local ledgers before the listing was started. Since the directories are collected on the same schedule, the
+ * metadata store is listed about once per garbage collection cycle.
+ *
+ * <p>The coordinator also holds the compaction and entry log scanning I/O budgets shared by all the directories.
+ */
+public class GarbageCollectionCoordinator {
+
+    private static final Logger LOG = LoggerFactory.getLogger(GarbageCollectionCoordinator.class);
+
+    private final LedgerManager ledgerManager;
+    private final long zkOpTimeoutMs;
+    private final RateLimiter compactionRateLimiter;
+    private final RateLimiter scanRateLimiter;
+
+    private LedgersInMetadata lastListing;
+
+    public GarbageCollectionCoordinator(ServerConfiguration conf, LedgerManager ledgerManager) {
+        this.ledgerManager = ledgerManager;
+        this.zkOpTimeoutMs = conf.getZkTimeout() * 2;
+        double globalRate = conf.getCompactionGlobalRate();
+        this.compactionRateLimiter = globalRate > 0 ? RateLimiter.create(globalRate) : null;
+        this.scanRateLimiter = globalRate > 0 ? RateLimiter.create(globalRate) : null;
+    }
+
+    /**
+     * Get the compaction rate limiter shared by all the directories, or null if the compaction of each
+     * directory is only throttled by its own rate.
+     */
+    public RateLimiter getCompactionRateLimiter() {
+        return compactionRateLimiter;
+    }
+
+    /**
+     * Get the rate limiter shared by the scans of the entry logs of all the directories, when their metadata is
+     * extracted, or null if they are only throttled by the rate of each directory. It is separate from the
+     * compaction budget, so that a directory extracting metadata does not starve the compactions.
+     */
+    public RateLimiter getScanRateLimiter() {
+        return scanRateLimiter;
+    }
+
+    /**
+     * Get the ledgers in the metadata store, listed after the given time.
+     *
+     * <p>A ledger that is not in the returned listing can only be garbage collected if it was stored in the
+     * directory before the listing started, otherwise it might have been created after the listing.
+     *
+     * @param notBeforeNanos the time, from {@link MathUtils#nowInNano()}, at which the caller listed its ledgers
+     */
+    public synchronized LedgersInMetadata getLedgersInMetadata(long notBeforeNanos) throws IOException {
+        if (lastListing != null && lastListing.startNanos >= notBeforeNanos) {
+            return lastListing;
+        }
+
+        long startNanos = MathUtils.nowInNano();
+        long[] ledgers = new long[1024];
+        int count = 0;
+        LedgerRangeIterator iterator = ledgerManager.getLedgerRanges(zkOpTimeoutMs);
+        while (iterator.hasNext()) {
+            LedgerRange range = iterator.next();
+            if (count + range.size() > ledgers.length) {
+                ledgers = Arrays.copyOf(ledgers, Math.max(ledgers.length * 2, count + range.size()));
+            }
+            for (Long ledgerId : range.getLedgers()) {
+                ledgers[count++] = ledgerId;
+            }
+        }
+        ledgers = Arrays.copyOf(ledgers, count);
+        Arrays.sort(ledgers);
+
+        lastListing = new LedgersInMetadata(ledgers, startNanos);
+        LOG.info("Listed {} ledgers from the metadata store in {} ms", count,
+                TimeUnit.NANOSECONDS.toMillis(MathUtils.elapsedNanos(startNanos)));
+        return lastListing;
+    }
+
+    /**
+     * Ledgers present in the metadata store at the time of a listing.
+     */
+    public static class LedgersInMetadata {
+        private final long[] ledgers;
+        private final long startNanos;
+
+        LedgersInMetadata(long[] ledgers, long startNanos) {
+            this.ledgers = ledgers;
+            this.startNanos = startNanos;
+        }
+
+        public boolean contains(long ledgerId) {
+            return Arrays.binarySearch(ledgers, ledgerId) >= 0;
+        }
+
+        public int size() {
+            return ledgers.length;
+        }
+    }
+}
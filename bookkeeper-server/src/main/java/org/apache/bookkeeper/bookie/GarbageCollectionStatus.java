@@ -44,4 +44,13 @@ public class GarbageCollectionStatus {
     private long lastMinorCompactionTime;
     private long majorCompactionCounter;
     private long minorCompactionCounter;
+
+    // number of entry logs below the threshold in the last compaction run
+    private int lastCompactionCandidates;
+    // number of entry logs compacted in the last compaction run
+    private int lastCompactedEntryLogs;
+    private long lastCompactionReclaimedBytes;
+    private long lastCompactionCopiedBytes;
+    // current compaction rate, adapted to the foreground latency when enabled
+    private double compactionRate;
 }
@@ -24,10 +24,14 @@ package org.apache.bookkeeper.bookie;
 import static org.apache.bookkeeper.util.BookKeeperConstants.METADATA_CACHE;
 import com.google.common.annotations.VisibleForTesting;
 import com.google.common.base.Strings;
+import com.google.common.util.concurrent.RateLimiter;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ScheduledExecutorService;
@@ -48,7 +52,6 @@ import org.apache.bookkeeper.stats.StatsLogger;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.commons.lang3.mutable.MutableBoolean;
-import org.apache.commons.lang3.mutable.MutableLong;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -97,6 +100,12 @@ public class GarbageCollectorThread extends SafeRunnable {
     private volatile long totalEntryLogSize;
     private volatile int numActiveEntryLogs;
 
+    // outcome of the last compaction run
+    private volatile int lastCompactionCandidates;
+    private volatile int lastCompactedEntryLogs;
+    private volatile long lastCompactionReclaimedBytes;
+    private volatile long lastCompactionCopiedBytes;
+
     final CompactableLedgerStorage ledgerStorage;
 
     // flag to ensure gc thread will not be interrupted during compaction
@@ -155,6 +164,41 @@ public class GarbageCollectorThread extends SafeRunnable {
                                   StatsLogger statsLogger,
                                   ScheduledExecutorService gcExecutor)
         throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger, gcExecutor, null);
+    }
+
+    /**
+     * Create a garbage collector thread for one of the directories of a ledger storage, sharing the listing of
+     * the metadata store and the compaction budget with the other directories through the given coordinator.
+     *
+     * @param conf
+     *          Server Configuration Object.
+     * @param coordinator
+     *          Coordinator shared by the garbage collector threads of all the directories, or null.
+     * @throws IOException
+     */
+    public GarbageCollectorThread(ServerConfiguration conf,
+                                  LedgerManager ledgerManager,
+                                  final LedgerDirsManager ledgerDirsManager,
+                                  final CompactableLedgerStorage ledgerStorage,
+                                  EntryLogger entryLogger,
+                                  StatsLogger statsLogger,
+                                  GarbageCollectionCoordinator coordinator)
+        throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, ledgerStorage, entryLogger, statsLogger,
+                Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollectorThread")),
+                coordinator);
+    }
+
+    private GarbageCollectorThread(ServerConfiguration conf,
+                                   LedgerManager ledgerManager,
+                                   final LedgerDirsManager ledgerDirsManager,
+                                   final CompactableLedgerStorage ledgerStorage,
+                                   EntryLogger entryLogger,
+                                   StatsLogger statsLogger,
+                                   ScheduledExecutorService gcExecutor,
+                                   GarbageCollectionCoordinator coordinator)
+        throws IOException {
         this.gcExecutor = gcExecutor;
         this.conf = conf;
 
@@ -166,7 +210,8 @@ public class GarbageCollectorThread extends SafeRunnable {
 
         this.numActiveEntryLogs = 0;
         this.totalEntryLogSize = 0L;
-        this.garbageCollector = new ScanAndCompareGarbageCollector(ledgerManager, ledgerStorage, conf, statsLogger);
+        this.garbageCollector = new ScanAndCompareGarbageCollector(ledgerManager, ledgerStorage, conf, statsLogger,
+                coordinator);
         this.gcStats = new GarbageCollectorStats(
             statsLogger,
             () -> numActiveEntryLogs,
@@ -210,13 +255,16 @@ public class GarbageCollectorThread extends SafeRunnable {
                 }
             }
         };
+        RateLimiter sharedRateLimiter = coordinator != null ? coordinator.getCompactionRateLimiter() : null;
         if (conf.getUseTransactionalCompaction()) {
-            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactor = new TransactionalEntryLogCompactor(conf, entryLogger, ledgerStorage, remover,
+                    sharedRateLimiter);
         } else {
-            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover);
+            this.compactor = new EntryLogCompactor(conf, entryLogger, ledgerStorage, remover, sharedRateLimiter);
         }
 
-        this.throttler = new AbstractLogCompactor.Throttler(conf);
+        this.throttler = new AbstractLogCompactor.Throttler(conf, null,
+                coordinator != null ? coordinator.getScanRateLimiter() : null);
         if (minorCompactionInterval > 0 && minorCompactionThreshold > 0) {
             if (minorCompactionThreshold > 1.0f) {
                 throw new IOException("Invalid minor compaction threshold "
@@ -530,9 +578,10 @@ public class GarbageCollectorThread extends SafeRunnable {
      * Compact entry logs if necessary.
      *
      * <p>
-     * Compaction will be executed from low unused space to high unused space.
-     * Those entry log files whose remaining size percentage is higher than threshold
-     * would not be compacted.
+     * The entry log files whose remaining size percentage is lower than threshold are first
+     * collected as candidates, then compacted starting from the ones that reclaim the most space
+     * for each byte that has to be copied. Those entry log files whose remaining size percentage
+     * is higher than threshold would not be compacted.
      * </p>
      */
     @VisibleForTesting
@@ -544,44 +593,116 @@ public class GarbageCollectorThread extends SafeRunnable {
         int[] compactedBuckets = new int[numBuckets];
 
         long start = System.currentTimeMillis();
-        MutableLong end = new MutableLong(start);
-        MutableLong timeDiff = new MutableLong(0);
+        List<CompactionCandidate> candidates = new ArrayList<>();
 
         entryLogMetaMap.forEach((entryLogId, meta) -> {
             int bucketIndex = calculateUsageIndex(numBuckets, meta.getUsage());
             entryLogUsageBuckets[bucketIndex]++;
 
-            if (timeDiff.getValue() < maxTimeMillis) {
-                end.setValue(System.currentTimeMillis());
-                timeDiff.setValue(end.getValue() - start);
+            // We allow the usage limit calculation to continue for all the entry logs so that we get
+            // a accurate report of where the usage was prior to running compaction.
+            if (meta.getUsage() < threshold) {
+                candidates.add(new CompactionCandidate(entryLogId, bucketIndex,
+                        meta.getTotalSize(), meta.getRemainingSize()));
             }
-            if (meta.getUsage() >= threshold || (maxTimeMillis > 0 && timeDiff.getValue() >= maxTimeMillis)
-                    || !running) {
-                // We allow the usage limit calculation to continue so that we get a accurate
-                // report of where the usage was prior to running compaction.
-                return;
+        });
+
+        // Compact first the entry logs with the best ratio of reclaimed space over copied data, so that
+        // the time budget is spent where it frees the most disk space
+        sortCompactionCandidates(candidates);
+
+        int compactedLogs = 0;
+        long reclaimedBytes = 0;
+        long copiedBytes = 0;
+        long timeDiff = 0;
+        for (CompactionCandidate candidate : candidates) {
+            timeDiff = System.currentTimeMillis() - start;
+            if ((maxTimeMillis > 0 && timeDiff >= maxTimeMillis) || !running) {
+                break;
             }
-            if (LOG.isDebugEnabled()) {
-                LOG.debug("Compacting entry log {} with usage {} below threshold {}",
-                        meta.getEntryLogId(), meta.getUsage(), threshold);
+
+            if (candidate.isFullyGarbage()) {
+                // Nothing to copy, the entry log can simply be deleted
+                removeEntryLog(candidate.entryLogId);
+            } else {
+                // The sizes were captured while collecting the candidates, the metadata is only loaded again
+                // for the ledgers map the compactor needs, as the persistent map recycles it after each call
+                boolean exists = entryLogMetaMap.forKey(candidate.entryLogId, (entryLogId, meta) -> {
+                    if (LOG.isDebugEnabled()) {
+                        LOG.debug("Compacting entry log {} with usage {} below threshold {}",
+                                meta.getEntryLogId(), meta.getUsage(), threshold);
+                    }
+                    compactEntryLog(meta);
+                });
+                if (!exists) {
+                    // The entry log was removed since the candidates were collected
+                    continue;
+                }
             }
 
-            long priorRemainingSize = meta.getRemainingSize();
-            compactEntryLog(meta);
-            gcStats.getReclaimedSpaceViaCompaction().add(meta.getTotalSize() - priorRemainingSize);
-            compactedBuckets[bucketIndex]++;
-        });
+            long reclaimed = candidate.totalSize - candidate.remainingSize;
+            gcStats.getReclaimedSpaceViaCompaction().add(reclaimed);
+            compactedBuckets[candidate.bucketIndex]++;
+            compactedLogs++;
+            reclaimedBytes += reclaimed;
+            copiedBytes += candidate.remainingSize;
+        }
+
+        this.lastCompactionCandidates = candidates.size();
+        this.lastCompactedEntryLogs = compactedLogs;
+        this.lastCompactionReclaimedBytes = reclaimedBytes;
+        this.lastCompactionCopiedBytes = copiedBytes;
+
         if (LOG.isDebugEnabled()) {
             if (!running) {
                 LOG.debug("Compaction exited due to gc not running");
             }
-            if (timeDiff.getValue() > maxTimeMillis) {
+            if (maxTimeMillis > 0 && timeDiff >= maxTimeMillis) {
                 LOG.debug("Compaction ran for {}ms but was limited by {}ms", timeDiff, maxTimeMillis);
             }
         }
         LOG.info(
                 "Compaction: entry log usage buckets[10% 20% 30% 40% 50% 60% 70% 80% 90% 100%] = {}, compacted {}",
                 entryLogUsageBuckets, compactedBuckets);
+        LOG.info("Compaction: compacted {} of {} candidate entry logs, reclaimed {} bytes, copied {} bytes,"
+                + " compaction rate {}", compactedLogs, candidates.size(), reclaimedBytes, copiedBytes,
+                compactor.getRate());
+    }
+
+    /**
+     * Entry log selected for compaction, ranked by the space reclaimed for each byte to be copied.
+     * Entry logs without any remaining data rank first, since they are deleted without copying anything.
+     */
+    @VisibleForTesting
+    static final class CompactionCandidate {
+        final long entryLogId;
+        final int bucketIndex;
+        final long totalSize;
+        final long remainingSize;
+        final double score;
+
+        CompactionCandidate(long entryLogId, int bucketIndex, long totalSize, long remainingSize) {
+            this.entryLogId = entryLogId;
+            this.bucketIndex = bucketIndex;
+            this.totalSize = totalSize;
+            this.remainingSize = remainingSize;
+            this.score = remainingSize > 0
+                    ? (double) (totalSize - remainingSize) / remainingSize
+                    : Double.POSITIVE_INFINITY;
+        }
+
+        boolean isFullyGarbage() {
+            return remainingSize <= 0;
+        }
+
+        double getScore() {
+            return score;
+        }
+    }
+
+    @VisibleForTesting
+    static void sortCompactionCandidates(List<CompactionCandidate> candidates) {
+        candidates.sort(Comparator.comparingDouble(CompactionCandidate::getScore).reversed());
     }
 
     /**
@@ -725,6 +846,11 @@ public class GarbageCollectorThread extends SafeRunnable {
             .lastMinorCompactionTime(lastMinorCompactionTime)
             .majorCompactionCounter(gcStats.getMajorCompactionCounter().get())
             .minorCompactionCounter(gcStats.getMinorCompactionCounter().get())
+            .lastCompactionCandidates(lastCompactionCandidates)
+            .lastCompactedEntryLogs(lastCompactedEntryLogs)
+            .lastCompactionReclaimedBytes(lastCompactionReclaimedBytes)
+            .lastCompactionCopiedBytes(lastCompactionCopiedBytes)
+            .compactionRate(compactor.getRate())
             .build();
     }
 }
@@ -47,6 +47,16 @@ public class InMemoryEntryLogMetadataMap implements EntryLogMetadataMap {
         entryLogMetaMap.forEach(action);
     }
 
+    @Override
+    public boolean forKey(long entryLogId, BiConsumer<Long, EntryLogMetadata> action) {
+        EntryLogMetadata entryLogMeta = entryLogMetaMap.get(entryLogId);
+        if (entryLogMeta == null) {
+            return false;
+        }
+        action.accept(entryLogId, entryLogMeta);
+        return true;
+    }
+
     @Override
     public void remove(long entryLogId) {
         entryLogMetaMap.remove(entryLogId);
@@ -50,10 +50,14 @@ import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.bookie.LedgerDirsManager.NoWritableLedgerDirException;
 import org.apache.bookkeeper.bookie.stats.JournalStats;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.Buffer;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.BufferPool;
 import org.apache.bookkeeper.common.collections.BlockingMpscQueue;
 import org.apache.bookkeeper.common.collections.RecyclableArrayList;
 import org.apache.bookkeeper.common.util.MemoryLimitController;
 import org.apache.bookkeeper.common.util.affinity.CpuAffinity;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteCallback;
 import org.apache.bookkeeper.stats.Counter;
@@ -92,6 +96,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                 int capacity) -> new BufferedChannel(UnpooledByteBufAllocator.DEFAULT, fc, capacity);
 
         BufferedChannel create(FileChannel fc, int capacity) throws IOException;
+
+        default BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+            return create(fc, capacity);
+        }
     }
 
 
@@ -383,8 +391,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             try {
                 if (shouldForceWrite) {
                     this.logFile.forceWrite(false);
-                    journalStats.getJournalSyncStats()
-                        .registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                    long syncNanos = MathUtils.elapsedNanos(startTime);
+                    journalStats.getJournalSyncStats().registerSuccessfulEvent(syncNanos, TimeUnit.NANOSECONDS);
+                    if (groupCommitController != null) {
+                        groupCommitController.onForceWrite(syncNanos);
+                    }
                 }
                 lastLogMark.setCurLogMark(this.logId, this.lastFlushedPosition);
 
@@ -585,6 +596,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             running = false;
             this.interrupt();
             this.join();
+            if (directWriteBuffers != null) {
+                directWriteBuffers.close();
+            }
         }
     }
 
@@ -641,6 +655,11 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     final ServerConfiguration conf;
     final ForceWriteThread forceWriteThread;
     final FileChannelProvider fileChannelProvider;
+    // pool of pre-allocated journal files, null when disabled
+    final JournalFilePool journalFilePool;
+    // aligned write buffers of the journal files written with direct I/O, null when disabled
+    private final BufferPool directWriteBuffers;
+    private final NativeIO nativeIO;
 
     // Time after which we will stop grouping and issue the flush
     private final long maxGroupWaitInNanos;
@@ -650,6 +669,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final long bufferedWritesThreshold;
     // should we flush if the queue is empty
     private final boolean flushWhenQueueEmpty;
+    // picks the group wait to meet the target add latency, null when disabled
+    private final JournalGroupCommitController groupCommitController;
     // should we hint the filesystem to remove pages from cache after force write
     private final boolean removePagesFromCache;
     private final int journalFormatVersionToWrite;
@@ -663,6 +684,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     private final LastLogMark lastLogMark = new LastLogMark(0, 0);
 
     private static final String LAST_MARK_DEFAULT_NAME = "lastMark";
+    private static final String JOURNAL_STRIPE_DIR_PREFIX = "stripe-";
 
     private final String lastMarkFileName;
 
@@ -695,10 +717,26 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
     public Journal(int journalIndex, File journalDirectory, ServerConfiguration conf,
             LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger, ByteBufAllocator allocator) {
+        this(journalIndex, 0, 1, journalDirectory, conf, ledgerDirsManager, statsLogger, allocator);
+    }
+
+    /**
+     * Create a journal writing into one stripe of a journal directory.
+     *
+     * @param journalIndex index of the journal directory
+     * @param stripeIndex index of the stripe in the journal directory
+     * @param numStripes number of stripes actually used in the journal directory, which share its memory budget
+     * @param journalDirectory directory of the journal files of the stripe,
+     *                         see {@link #getStripeDirectory(File, int)}
+     */
+    public Journal(int journalIndex, int stripeIndex, int numStripes, File journalDirectory,
+            ServerConfiguration conf, LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
+            ByteBufAllocator allocator) {
         super(journalThreadName + "-" + conf.getBookiePort());
         this.allocator = allocator;
 
-        StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex", String.valueOf(journalIndex));
+        StatsLogger journalStatsLogger = statsLogger.scopeLabel("journalIndex",
+                stripeIndex == 0 ? String.valueOf(journalIndex) : journalIndex + "-" + stripeIndex);
 
         if (conf.isBusyWaitEnabled()) {
             // To achieve lower latency, use busy-wait blocking queue implementation
@@ -710,7 +748,8 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         }
 
         // Adjust the journal max memory in case there are multiple journals configured.
-        long journalMaxMemory = conf.getJournalMaxMemorySizeMb() / conf.getJournalDirNames().length * 1024 * 1024;
+        long journalMaxMemory = conf.getJournalMaxMemorySizeMb()
+                / (conf.getJournalDirNames().length * Math.max(numStripes, 1)) * 1024 * 1024;
         this.memoryLimitController = new MemoryLimitController(journalMaxMemory);
         this.ledgerDirsManager = ledgerDirsManager;
         this.conf = conf;
@@ -739,17 +778,32 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
         this.journalTime = journalStatsLogger.getThreadScopedCounter("journal-thread-time");
 
-        // Unless there is a cap on the max wait (which requires group force writes)
-        // we cannot skip flushing for queue empty
-        this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        if (conf.getJournalGroupCommitTargetLatencyMicros() > 0) {
+            this.groupCommitController = new JournalGroupCommitController(
+                    TimeUnit.MICROSECONDS.toNanos(conf.getJournalGroupCommitTargetLatencyMicros()),
+                    maxGroupWaitInNanos, syncData);
+            // The group wait is always capped by the target latency
+            this.flushWhenQueueEmpty = conf.getJournalFlushWhenQueueEmpty();
+        } else {
+            this.groupCommitController = null;
+            // Unless there is a cap on the max wait (which requires group force writes)
+            // we cannot skip flushing for queue empty
+            this.flushWhenQueueEmpty = maxGroupWaitInNanos <= 0 || conf.getJournalFlushWhenQueueEmpty();
+        }
 
         this.removePagesFromCache = conf.getJournalRemovePagesFromCache();
         // read last log mark
+        String markFileName;
         if (conf.getJournalDirs().length == 1) {
-            lastMarkFileName = LAST_MARK_DEFAULT_NAME;
+            markFileName = LAST_MARK_DEFAULT_NAME;
         } else {
-            lastMarkFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
+            markFileName = LAST_MARK_DEFAULT_NAME + "." + journalIndex;
         }
+        if (stripeIndex > 0) {
+            // the name only depends on the stripe index, so that it's stable when the number of stripes changes
+            markFileName += "." + JOURNAL_STRIPE_DIR_PREFIX + stripeIndex;
+        }
+        lastMarkFileName = markFileName;
         lastLogMark.readLog();
         if (LOG.isDebugEnabled()) {
             LOG.debug("Last Log Mark : {}", lastLogMark.getCurMark());
@@ -765,6 +819,96 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         // Expose Stats
         this.journalStats = new JournalStats(journalStatsLogger, journalMaxMemory,
                 () -> memoryLimitController.currentUsage());
+
+        if (conf.getJournalPreAllocPoolSize() > 0) {
+            // Cover the entries written after the journal reached its max size, until it is rolled
+            this.journalFilePool = new JournalFilePool(journalDirectory, conf.getJournalPreAllocPoolSize(),
+                    maxJournalSize + journalPreAllocSize, journalStats.getJournalFilePoolMisses());
+        } else {
+            this.journalFilePool = null;
+        }
+
+        if (conf.getJournalDirectIOEnabled()) {
+            this.nativeIO = new NativeIOImpl();
+            int bufferSize = Buffer.nextAlignment(Math.max(journalWriteBufferSize, Buffer.ALIGNMENT));
+            try {
+                // The buffer of the previous journal file is released when the file is closed after a rollover
+                this.directWriteBuffers = new BufferPool(nativeIO, bufferSize,
+                        Math.max(conf.getJournalDirectIOWriteBuffersCount(), 1));
+            } catch (IOException e) {
+                LOG.error("Failed to allocate the direct I/O buffers of the journal", e);
+                throw new RuntimeException(e);
+            }
+            if (journalFormatVersionToWrite < JournalChannel.V5 || journalAlignmentSize % Buffer.ALIGNMENT != 0) {
+                LOG.warn("Journal writes are not aligned to {} bytes, direct I/O will write some blocks more"
+                        + " than once", Buffer.ALIGNMENT);
+            }
+        } else {
+            this.nativeIO = null;
+            this.directWriteBuffers = null;
+        }
+    }
+
+    /**
+     * Get the directory of the journal files of a stripe of a journal directory.
+     *
+     * <p>The first stripe uses the journal directory itself, so that the journal files written before
+     * enabling the stripes are still replayed by the same journal.
+     */
+    public static File getStripeDirectory(File journalDirectory, int stripeIndex) {
+        return stripeIndex == 0
+                ? journalDirectory
+                : new File(journalDirectory, JOURNAL_STRIPE_DIR_PREFIX + stripeIndex);
+    }
+
+    /**
+     * Get the number of stripes that have been used in a journal directory, based on the existing
+     * stripe directories.
+     */
+    public static int getNumStripesInUse(File journalDirectory) {
+        int numStripes = 1;
+        while (getStripeDirectory(journalDirectory, numStripes).isDirectory()) {
+            numStripes++;
+        }
+        return numStripes;
+    }
+
+    /**
+     * Create the journals of the first numStripes stripes of a journal directory, creating the missing
+     * stripe directories.
+     */
+    public static List<Journal> newStripeJournals(int journalIndex, File journalDirectory, int numStripes,
+            ServerConfiguration conf, LedgerDirsManager ledgerDirsManager, StatsLogger statsLogger,
+            ByteBufAllocator allocator) throws IOException {
+        List<Journal> journals = new ArrayList<>(numStripes);
+        for (int stripe = 0; stripe < numStripes; stripe++) {
+            File stripeDirectory = getStripeDirectory(journalDirectory, stripe);
+            if (!stripeDirectory.isDirectory() && !stripeDirectory.mkdirs()) {
+                throw new IOException("Failed to create journal stripe directory " + stripeDirectory);
+            }
+            journals.add(new Journal(journalIndex, stripe, numStripes, stripeDirectory, conf, ledgerDirsManager,
+                    statsLogger, allocator));
+        }
+        return journals;
+    }
+
+    /**
+     * Create the journals of all the stripes in use in the journal directories of the configuration,
+     * for the tools that inspect the journals or the last log marks of a bookie. No directory is created.
+     */
+    public static List<Journal> newJournalsOfStripesInUse(ServerConfiguration conf,
+            LedgerDirsManager ledgerDirsManager) {
+        List<Journal> journals = new ArrayList<>();
+        File[] journalDirs = conf.getJournalDirs();
+        for (int idx = 0; idx < journalDirs.length; idx++) {
+            File currentDir = BookieImpl.getCurrentDirectory(journalDirs[idx]);
+            int numStripes = getNumStripesInUse(currentDir);
+            for (int stripe = 0; stripe < numStripes; stripe++) {
+                journals.add(new Journal(idx, stripe, numStripes, getStripeDirectory(currentDir, stripe), conf,
+                        ledgerDirsManager, NullStatsLogger.INSTANCE, UnpooledByteBufAllocator.DEFAULT));
+            }
+        }
+        return journals;
     }
 
     JournalStats getJournalStats() {
@@ -824,6 +968,10 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     // make sure the journal id is smaller than marked journal id
                     if (id < mark.getCurMark().getLogFileId()) {
                         File journalFile = new File(journalDirectory, Long.toHexString(id) + ".txn");
+                        if (journalFilePool != null && journalFilePool.recycle(journalFile)) {
+                            LOG.info("recycled journal " + journalFile.getName());
+                            continue;
+                        }
                         if (!journalFile.delete()) {
                             LOG.warn("Could not delete old journal file {}", journalFile);
                         }
@@ -1004,6 +1152,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
         BufferedChannel bc = null;
         JournalChannel logFile = null;
         forceWriteThread.start();
+        if (journalFilePool != null) {
+            journalFilePool.start();
+        }
         Stopwatch journalCreationWatcher = Stopwatch.createUnstarted();
         Stopwatch journalFlushWatcher = Stopwatch.createUnstarted();
         long batchSize = 0;
@@ -1031,7 +1182,7 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                     logFile = new JournalChannel(journalDirectory, logId, journalPreAllocSize, journalWriteBufferSize,
                                         journalAlignmentSize, removePagesFromCache,
                                         journalFormatVersionToWrite, getBufferedChannelBuilder(),
-                                        conf, fileChannelProvider);
+                                        conf, fileChannelProvider, journalFilePool);
 
                     journalStats.getJournalCreationStats().registerSuccessfulEvent(
                             journalCreationWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
@@ -1055,10 +1206,16 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                         journalStats.getJournalQueueSize().dec();
                         journalStats.getJournalQueueStats()
                             .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                        if (groupCommitController != null) {
+                            groupCommitController.onArrival(qe.enqueueTime);
+                        }
                     } else {
-                        long pollWaitTimeNanos = maxGroupWaitInNanos
+                        long groupWaitNanos = groupCommitController != null
+                                ? groupCommitController.getGroupWaitNanos() : maxGroupWaitInNanos;
+                        long pollWaitTimeNanos = groupWaitNanos
                                 - MathUtils.elapsedNanos(toFlush.get(0).enqueueTime);
-                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0) {
+                        if (flushWhenQueueEmpty || pollWaitTimeNanos < 0 || (groupCommitController != null
+                                && !groupCommitController.expectsArrivalWithin(pollWaitTimeNanos))) {
                             pollWaitTimeNanos = 0;
                         }
                         qe = queue.poll(pollWaitTimeNanos, TimeUnit.NANOSECONDS);
@@ -1068,17 +1225,21 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             journalStats.getJournalQueueSize().dec();
                             journalStats.getJournalQueueStats()
                                 .registerSuccessfulEvent(MathUtils.elapsedNanos(qe.enqueueTime), TimeUnit.NANOSECONDS);
+                            if (groupCommitController != null) {
+                                groupCommitController.onArrival(qe.enqueueTime);
+                            }
                         }
 
                         boolean shouldFlush = false;
-                        // We should issue a forceWrite if any of the three conditions below holds good
+                        // We should issue a forceWrite if any of the conditions below holds good
+                        // (the 4th one only applies with the adaptive group commit)
                         // 1. If the oldest pending entry has been pending for longer than the max wait time
-                        if (maxGroupWaitInNanos > 0 && !groupWhenTimeout && (MathUtils
-                                .elapsedNanos(toFlush.get(0).enqueueTime) > maxGroupWaitInNanos)) {
+                        if (groupWaitNanos > 0 && !groupWhenTimeout && (MathUtils
+                                .elapsedNanos(toFlush.get(0).enqueueTime) > groupWaitNanos)) {
                             groupWhenTimeout = true;
-                        } else if (maxGroupWaitInNanos > 0 && groupWhenTimeout
+                        } else if (groupWaitNanos > 0 && groupWhenTimeout
                             && (qe == null // no entry to group
-                                || MathUtils.elapsedNanos(qe.enqueueTime) < maxGroupWaitInNanos)) {
+                                || MathUtils.elapsedNanos(qe.enqueueTime) < groupWaitNanos)) {
                             // when group timeout, it would be better to look forward, as there might be lots of
                             // entries already timeout
                             // due to a previous slow write (writing to filesystem which impacted by force write).
@@ -1103,6 +1264,12 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             groupWhenTimeout = false;
                             shouldFlush = true;
                             journalStats.getFlushEmptyQueueCounter().inc();
+                        } else if (qe == null && groupCommitController != null) {
+                            // 4. If the adaptive group commit doesn't expect another entry before the group wait
+                            // expires, waiting would only add latency
+                            groupWhenTimeout = false;
+                            shouldFlush = true;
+                            journalStats.getFlushAdaptiveCounter().inc();
                         }
 
                         // toFlush is non null and not empty so should be safe to access getFirst
@@ -1115,7 +1282,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
 
                             for (int i = 0; i < toFlush.size(); i++) {
                                 QueueEntry entry = toFlush.get(i);
-                                if (entry != null && (!syncData || entry.ackBeforeSync)) {
+                                // The writes with direct I/O are durable when the flush completes
+                                if (entry != null && (!syncData || entry.ackBeforeSync
+                                        || bc instanceof DirectBufferedChannel)) {
                                     toFlush.set(i, null);
                                     numEntriesToFlush--;
                                     cbThreadPool.execute(entry);
@@ -1123,8 +1292,14 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
                             }
 
                             lastFlushPosition = bc.position();
-                            journalStats.getJournalFlushStats().registerSuccessfulEvent(
-                                    journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS), TimeUnit.NANOSECONDS);
+                            long flushNanos = journalFlushWatcher.stop().elapsed(TimeUnit.NANOSECONDS);
+                            journalStats.getJournalFlushStats()
+                                .registerSuccessfulEvent(flushNanos, TimeUnit.NANOSECONDS);
+                            if (groupCommitController != null) {
+                                groupCommitController.onFlush(flushNanos);
+                                journalStats.getGroupCommitWaitStats()
+                                    .registerSuccessfulValue(TimeUnit.NANOSECONDS.toMicros(groupWaitNanos));
+                            }
 
                             // Trace the lifetime of entries through persistence
                             if (LOG.isDebugEnabled()) {
@@ -1232,7 +1407,32 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
     }
 
     public BufferedChannelBuilder getBufferedChannelBuilder() {
-        return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        if (directWriteBuffers == null) {
+            return (FileChannel fc, int capacity) -> new BufferedChannel(allocator, fc, capacity);
+        }
+        return directBufferedChannelBuilder(allocator, directWriteBuffers, nativeIO);
+    }
+
+    @VisibleForTesting
+    static BufferedChannelBuilder directBufferedChannelBuilder(ByteBufAllocator allocator,
+                                                               BufferPool directWriteBuffers, NativeIO nativeIO) {
+        return new BufferedChannelBuilder() {
+            @Override
+            public BufferedChannel create(FileChannel fc, int capacity) throws IOException {
+                throw new IOException("The journal file is required to write it with direct I/O");
+            }
+
+            @Override
+            public BufferedChannel create(File file, FileChannel fc, int capacity) throws IOException {
+                if (directWriteBuffers.available() == 0) {
+                    // Rather than stalling the journal until a buffer is released, write this file through the
+                    // page cache and force it like without direct I/O
+                    LOG.warn("No direct I/O buffer available for journal {}, writing it with buffered I/O", file);
+                    return new BufferedChannel(allocator, fc, capacity);
+                }
+                return new DirectBufferedChannel(allocator, fc, capacity, file, directWriteBuffers, nativeIO);
+            }
+        };
     }
 
     /**
@@ -1249,6 +1449,9 @@ public class Journal extends BookieCriticalThread implements CheckpointSource {
             }
 
             forceWriteThread.shutdown();
+            if (journalFilePool != null) {
+                journalFilePool.close();
+            }
             cbThreadPool.shutdown();
             if (!cbThreadPool.awaitTermination(5, TimeUnit.SECONDS)) {
                 LOG.warn("Couldn't shutdown journal callback thread gracefully. Forcing");
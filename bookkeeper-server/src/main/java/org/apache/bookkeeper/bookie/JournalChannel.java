@@ -79,6 +79,8 @@ class JournalChannel implements Closeable {
     private final long preAllocSize;
     private final int journalAlignSize;
     private final boolean fRemoveFromPageCache;
+    // Only the journals written with a file pool extend their file with fallocate, like the files of the pool
+    private final boolean fallocateEnabled;
     public final ByteBuffer zeros;
 
     // The position of the file channel's last drop position
@@ -105,7 +107,7 @@ class JournalChannel implements Closeable {
                    FileChannelProvider provider) throws IOException {
          this(journalDirectory, logId, preAllocSize, writeBufferSize, SECTOR_SIZE,
                  position, false, V5, Journal.BufferedChannelBuilder.DEFAULT_BCBUILDER,
-             conf, provider);
+             conf, provider, null);
     }
 
     // Open journal to write
@@ -122,8 +124,18 @@ class JournalChannel implements Closeable {
                    boolean fRemoveFromPageCache, int formatVersionToWrite,
                    Journal.BufferedChannelBuilder bcBuilder, ServerConfiguration conf,
                    FileChannelProvider provider) throws IOException {
+        this(journalDirectory, logId, preAllocSize, writeBufferSize, journalAlignSize, fRemoveFromPageCache,
+                formatVersionToWrite, bcBuilder, conf, provider, null);
+    }
+
+    // Open journal to write, taking the file from the pool of pre-allocated files when one is ready
+    JournalChannel(File journalDirectory, long logId,
+                   long preAllocSize, int writeBufferSize, int journalAlignSize,
+                   boolean fRemoveFromPageCache, int formatVersionToWrite,
+                   Journal.BufferedChannelBuilder bcBuilder, ServerConfiguration conf,
+                   FileChannelProvider provider, JournalFilePool filePool) throws IOException {
         this(journalDirectory, logId, preAllocSize, writeBufferSize, journalAlignSize,
-                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder, conf, provider);
+                START_OF_FILE, fRemoveFromPageCache, formatVersionToWrite, bcBuilder, conf, provider, filePool);
     }
 
     /**
@@ -146,6 +158,8 @@ class JournalChannel implements Closeable {
      *          whether to remove cached pages from page cache.
      * @param formatVersionToWrite
      *          format version to write
+     * @param filePool
+     *          pool of pre-allocated journal files, or null
      * @throws IOException
      */
     private JournalChannel(File journalDirectory, long logId,
@@ -153,11 +167,12 @@ class JournalChannel implements Closeable {
                            long position, boolean fRemoveFromPageCache,
                            int formatVersionToWrite, Journal.BufferedChannelBuilder bcBuilder,
                            ServerConfiguration conf,
-                           FileChannelProvider provider) throws IOException {
+                           FileChannelProvider provider, JournalFilePool filePool) throws IOException {
         this.journalAlignSize = journalAlignSize;
         this.zeros = ByteBuffer.allocate(journalAlignSize);
         this.preAllocSize = preAllocSize - preAllocSize % journalAlignSize;
         this.fRemoveFromPageCache = fRemoveFromPageCache;
+        this.fallocateEnabled = filePool != null;
         this.configuration = conf;
 
         File fn = new File(journalDirectory, Long.toHexString(logId) + ".txn");
@@ -169,7 +184,8 @@ class JournalChannel implements Closeable {
 
         LOG.info("Opening journal {}", fn);
         if (!channel.fileExists(fn)) { // new file, write version
-            if (!fn.createNewFile()) {
+            boolean preAllocated = filePool != null && filePool.take(fn);
+            if (!preAllocated && !fn.createNewFile()) {
                 LOG.error("Journal file {}, that shouldn't exist, already exists. "
                           + " is there another bookie process running?", fn);
                 throw new IOException("File " + fn
@@ -187,10 +203,16 @@ class JournalChannel implements Closeable {
             bb.clear();
             fc.write(bb);
 
-            bc = bcBuilder.create(fc, writeBufferSize);
+            bc = bcBuilder.create(fn, fc, writeBufferSize);
             forceWrite(true);
-            nextPrealloc = this.preAllocSize;
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            if (preAllocated) {
+                // The pooled file is already allocated, and reads as zeros, up to the pool file size
+                nextPrealloc = Math.max(this.preAllocSize,
+                        filePool.getFileSize() - filePool.getFileSize() % journalAlignSize);
+            } else {
+                nextPrealloc = this.preAllocSize;
+                preAllocate(0, nextPrealloc);
+            }
         } else {  // open an existing file
             fc = channel.getFileChannel();
             bc = null; // readonly
@@ -241,7 +263,7 @@ class JournalChannel implements Closeable {
                 throw e;
             }
         }
-        if (fRemoveFromPageCache) {
+        if (fRemoveFromPageCache || filePool != null) {
             this.fd = NativeIO.getSysFileDescriptor(channel.getFD());
         } else {
             this.fd = -1;
@@ -262,8 +284,17 @@ class JournalChannel implements Closeable {
     void preAllocIfNeeded(long size) throws IOException {
         if (bc.position() + size > nextPrealloc) {
             nextPrealloc += preAllocSize;
+            preAllocate(nextPrealloc - preAllocSize, preAllocSize);
+        }
+    }
+
+    private void preAllocate(long offset, long len) throws IOException {
+        if (bc instanceof DirectBufferedChannel) {
+            // The file is written with direct I/O, it must not be written through the page cache as well
+            ((DirectBufferedChannel) bc).preallocate(offset, len);
+        } else if (!fallocateEnabled || !NativeIO.bestEffortFallocate(fd, offset, len)) {
             zeros.clear();
-            fc.write(zeros, nextPrealloc - journalAlignSize);
+            fc.write(zeros, offset + len - journalAlignSize);
         }
     }
 
@@ -0,0 +1,229 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.bookie;
+
+import com.google.common.annotations.VisibleForTesting;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.util.NativeIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pool of journal files allocated ahead of time.
+ *
+ * <p>A background thread keeps a number of files of the size of a whole journal ready in the journal directory.
+ * New files are allocated with fallocate, and old journal files are recycled by zeroing them with
+ * {@code FALLOC_FL_ZERO_RANGE}, so that they read as zeros without the zeros being written to the disk. When the
+ * journal rolls over, it takes a ready file from the pool and renames it, instead of creating and extending a new
+ * file on the journal thread. If no file is ready, the journal creates its file as usual.
+ */
+class JournalFilePool implements Closeable {
+    private static final Logger LOG = LoggerFactory.getLogger(JournalFilePool.class);
+
+    static final String POOL_FILE_SUFFIX = ".jpool";
+
+    private final File journalDirectory;
+    private final int poolSize;
+    private final long fileSize;
+    private final Counter missCounter;
+
+    private final BlockingQueue<File> readyFiles = new LinkedBlockingQueue<>();
+    // Files being allocated or recycled by the background thread
+    private final AtomicInteger pendingFiles = new AtomicInteger();
+    private final AtomicLong nextFileId = new AtomicLong();
+    private final ExecutorService executor;
+
+    JournalFilePool(File journalDirectory, int poolSize, long fileSize, Counter missCounter) {
+        this.journalDirectory = journalDirectory;
+        this.poolSize = poolSize;
+        this.fileSize = fileSize;
+        this.missCounter = missCounter;
+        this.executor = Executors.newSingleThreadExecutor(new DefaultThreadFactory("JournalFilePool"));
+    }
+
+    /**
+     * Size of the files of the pool, which read as zeros up to that size.
+     */
+    long getFileSize() {
+        return fileSize;
+    }
+
+    @VisibleForTesting
+    int getReadyFileCount() {
+        return readyFiles.size();
+    }
+
+    void start() {
+        // The files left by a previous run may have been recycled without being zeroed, so zero them again
+        File[] leftovers = journalDirectory.listFiles(file -> file.getName().endsWith(POOL_FILE_SUFFIX));
+        if (leftovers != null) {
+            for (File file : leftovers) {
+                if (pendingFiles.get() >= poolSize || !prepareAsync(file, true)) {
+                    deleteFile(file);
+                }
+            }
+        }
+        replenish();
+    }
+
+    /**
+     * Move a ready file of the pool to the given journal file.
+     *
+     * @return true if the journal file was taken from the pool, false if no file was ready
+     */
+    boolean take(File journalFile) {
+        File file = readyFiles.poll();
+        replenish();
+        if (file == null) {
+            missCounter.inc();
+            return false;
+        }
+
+        try {
+            Files.move(file.toPath(), journalFile.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            return true;
+        } catch (IOException e) {
+            LOG.warn("Failed to move pre-allocated journal file {} to {}", file, journalFile, e);
+            deleteFile(file);
+            missCounter.inc();
+            return false;
+        }
+    }
+
+    /**
+     * Move a journal file which is no longer needed to the pool, to be reused for a later journal.
+     *
+     * @return true if the file was recycled, false if the pool is full and the file should be deleted
+     */
+    boolean recycle(File journalFile) {
+        if (readyFiles.size() + pendingFiles.get() >= poolSize) {
+            return false;
+        }
+
+        File file = newPoolFile();
+        try {
+            Files.move(journalFile.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Failed to recycle journal file {}", journalFile, e);
+            return false;
+        }
+        if (!prepareAsync(file, true)) {
+            deleteFile(file);
+        }
+        return true;
+    }
+
+    private void replenish() {
+        while (readyFiles.size() + pendingFiles.get() < poolSize) {
+            if (!prepareAsync(newPoolFile(), false)) {
+                return;
+            }
+        }
+    }
+
+    private File newPoolFile() {
+        return new File(journalDirectory, System.currentTimeMillis() + "-" + nextFileId.incrementAndGet()
+                + POOL_FILE_SUFFIX);
+    }
+
+    private boolean prepareAsync(File file, boolean recycled) {
+        pendingFiles.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    prepare(file, recycled);
+                    readyFiles.add(file);
+                } catch (IOException e) {
+                    LOG.warn("Failed to pre-allocate journal file {}", file, e);
+                    deleteFile(file);
+                } finally {
+                    pendingFiles.decrementAndGet();
+                }
+            });
+            return true;
+        } catch (RuntimeException e) {
+            // The pool is closed
+            pendingFiles.decrementAndGet();
+            return false;
+        }
+    }
+
+    private void prepare(File file, boolean recycled) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            int fd = NativeIO.getSysFileDescriptor(raf.getFD());
+            boolean allocated;
+            if (recycled) {
+                if (raf.length() > fileSize) {
+                    raf.setLength(fileSize);
+                }
+                allocated = NativeIO.bestEffortZeroRange(fd, 0, fileSize);
+                if (!allocated) {
+                    // Drop the content of the recycled file
+                    raf.setLength(0);
+                }
+            } else {
+                allocated = false;
+            }
+
+            if (!allocated && !NativeIO.bestEffortFallocate(fd, 0, fileSize)) {
+                // Sparse file, the blocks are allocated when the journal is written
+                raf.setLength(fileSize);
+            }
+            raf.getChannel().force(true);
+        }
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Pre-allocated journal file {} of {} bytes, recycled: {}", file, fileSize, recycled);
+        }
+    }
+
+    private static void deleteFile(File file) {
+        if (file.exists() && !file.delete()) {
+            LOG.warn("Could not delete pre-allocated journal file {}", file);
+        }
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        try {
+            if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                LOG.warn("Timed out waiting for the journal file pool to stop");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
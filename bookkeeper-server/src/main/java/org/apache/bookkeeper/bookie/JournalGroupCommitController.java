@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adaptive group commit of the journal.
+ *
+ * <p>The controller picks how long the journal groups entries before flushing them, so that the add latency
+ * stays close to a target. It keeps moving averages of the flush latency, of the force write latency when the
+ * entries are acknowledged after the force write, and of the time between two entries. The group wait is
+ * the part of the target left once the flush and the force write are accounted for: a slow disk shortens the
+ * window, a fast one lets more entries be grouped in each flush. When the next entry isn't expected before
+ * the window expires, waiting only adds latency, so the journal flushes right away.
+ *
+ * <p>The arrivals and flushes are recorded by the journal thread, the force writes by the force write thread.
+ */
+class JournalGroupCommitController {
+
+    // Weight of the last sample in the moving averages
+    private static final double ALPHA = 0.2;
+    // Lower bound of the group wait, so that the entries already in the queue still get grouped
+    static final long MIN_GROUP_WAIT_NANOS = TimeUnit.MICROSECONDS.toNanos(1);
+
+    private final long targetLatencyNanos;
+    private final long maxGroupWaitNanos;
+    private final boolean syncData;
+
+    private volatile double flushLatencyNanos = 0;
+    private volatile double syncLatencyNanos = 0;
+    private double interArrivalNanos = 0;
+    private long lastArrivalNanos = -1;
+
+    /**
+     * @param targetLatencyNanos target latency of the adds in the journal
+     * @param maxGroupWaitNanos upper bound of the group wait, or 0 for no bound other than the target
+     * @param syncData whether the entries are acknowledged after the force write
+     */
+    JournalGroupCommitController(long targetLatencyNanos, long maxGroupWaitNanos, boolean syncData) {
+        this.targetLatencyNanos = targetLatencyNanos;
+        this.maxGroupWaitNanos = maxGroupWaitNanos > 0 ? Math.min(maxGroupWaitNanos, targetLatencyNanos)
+                : targetLatencyNanos;
+        this.syncData = syncData;
+    }
+
+    /**
+     * Record an entry taken from the journal queue.
+     *
+     * @param enqueueTimeNanos time at which the entry was added to the queue
+     */
+    void onArrival(long enqueueTimeNanos) {
+        if (lastArrivalNanos >= 0 && enqueueTimeNanos >= lastArrivalNanos) {
+            interArrivalNanos = average(interArrivalNanos, enqueueTimeNanos - lastArrivalNanos);
+        }
+        lastArrivalNanos = Math.max(lastArrivalNanos, enqueueTimeNanos);
+    }
+
+    void onFlush(long latencyNanos) {
+        flushLatencyNanos = average(flushLatencyNanos, latencyNanos);
+    }
+
+    void onForceWrite(long latencyNanos) {
+        syncLatencyNanos = average(syncLatencyNanos, latencyNanos);
+    }
+
+    /**
+     * @return how long the oldest entry waiting to be flushed can be kept in the group
+     */
+    long getGroupWaitNanos() {
+        double budget = targetLatencyNanos - flushLatencyNanos - (syncData ? syncLatencyNanos : 0);
+        return Math.max(MIN_GROUP_WAIT_NANOS, Math.min(maxGroupWaitNanos, (long) budget));
+    }
+
+    /**
+     * @return whether another entry is expected to arrive within the given time
+     */
+    boolean expectsArrivalWithin(long nanos) {
+        return interArrivalNanos <= nanos;
+    }
+
+    private static double average(double current, long sample) {
+        return current == 0 ? sample : current + ALPHA * (sample - current);
+    }
+}
@@ -22,8 +22,10 @@
 package org.apache.bookkeeper.bookie;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.Arrays;
+import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -161,6 +163,22 @@ public class LedgerDescriptorImpl extends LedgerDescriptor {
         return ledgerStorage.getEntry(ledgerId, entryId);
     }
 
+    @Override
+    CompletableFuture<ByteBuf> readEntryAsync(long entryId) {
+        return ledgerStorage.getEntryAsync(ledgerId, entryId);
+    }
+
+    @Override
+    FileRegion readEntryRegion(long entryId, int minSize) throws IOException, BookieException {
+        return ledgerStorage.getEntryRegion(ledgerId, entryId, minSize);
+    }
+
+    @Override
+    List<ByteBuf> batchReadEntries(long startEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        return ledgerStorage.batchGetEntries(ledgerId, startEntryId, maxCount, maxSize);
+    }
+
     @Override
     long getLastAddConfirmed() throws IOException, BookieException {
         return ledgerStorage.getLastAddConfirmed(ledgerId);
@@ -24,6 +24,7 @@ package org.apache.bookkeeper.bookie;
 import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 
 import java.io.IOException;
 import java.util.ArrayList;
@@ -32,6 +33,7 @@ import java.util.EnumSet;
 import java.util.List;
 import java.util.Optional;
 import java.util.PrimitiveIterator;
+import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.common.util.Watcher;
@@ -145,6 +147,78 @@ public interface LedgerStorage {
      */
     ByteBuf getEntry(long ledgerId, long entryId) throws IOException, BookieException;
 
+    /**
+     * Read an entry from storage, asynchronously.
+     *
+     * <p>Implementations may complete the returned future inline when the entry is cached and hand the
+     * reads that need to access the disk to a separate pool, so that the calling thread is not blocked.
+     * The default implementation reads the entry synchronously, on the calling thread.
+     */
+    default CompletableFuture<ByteBuf> getEntryAsync(long ledgerId, long entryId) {
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        try {
+            future.complete(getEntry(ledgerId, entryId));
+        } catch (IOException | BookieException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    /**
+     * Get the region of the storage file holding an entry, so that the entry can be sent without being
+     * read in memory.
+     *
+     * <p>Only the entries which are not cached, and at least {@code minSize} bytes long, are returned as a
+     * region. The default implementation never does.
+     *
+     * @return the region of the entry, which the caller has to release, or null if the entry has to be read
+     *         with {@link #getEntry(long, long)}
+     */
+    default FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException, BookieException {
+        return null;
+    }
+
+    /**
+     * Read a batch of consecutive entries from storage, starting from {@code startEntryId}.
+     *
+     * <p>At most {@code maxCount} entries are returned. The first entry is always returned, while the
+     * following ones are only added as long as the total size of the batch doesn't exceed {@code maxSize}.
+     * The batch ends at the first entry which is not found in the storage.
+     *
+     * <p>The caller owns the returned buffers and is responsible for releasing them.
+     *
+     * @throws Bookie.NoEntryException if the first entry is not found
+     */
+    default List<ByteBuf> batchGetEntries(long ledgerId, long startEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        List<ByteBuf> entries = new ArrayList<>(Math.min(maxCount, 64));
+        long size = 0;
+        try {
+            for (int i = 0; i < maxCount; i++) {
+                ByteBuf entry;
+                try {
+                    entry = getEntry(ledgerId, startEntryId + i);
+                } catch (Bookie.NoEntryException e) {
+                    if (entries.isEmpty()) {
+                        throw e;
+                    }
+                    break;
+                }
+
+                if (!entries.isEmpty() && size + entry.readableBytes() > maxSize) {
+                    entry.release();
+                    break;
+                }
+                size += entry.readableBytes();
+                entries.add(entry);
+            }
+            return entries;
+        } catch (IOException | BookieException | RuntimeException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        }
+    }
+
     /**
      * Get last add confirmed.
      *
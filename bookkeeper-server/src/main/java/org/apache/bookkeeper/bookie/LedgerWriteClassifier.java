@@ -0,0 +1,135 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.util.collections.ConcurrentLongHashMap;
+
+/**
+ * Classifies the ledgers by write rate and expected lifetime, to place their entries in a hot, warm or
+ * cold entry log.
+ *
+ * <p>The write rate of each ledger is measured over windows of a fixed duration. Ledgers written faster than
+ * the hot rate go to the hot entry log and ledgers written slower than the cold rate, including the ledgers
+ * written again after being idle, go to the cold one. The lifetimes of the deleted ledgers are averaged: a
+ * ledger which has already lived much longer than the deleted ones is likely to keep living, and is moved to
+ * the cold entry log whatever its rate. New ledgers start in the warm entry log, until their first window
+ * completes.
+ *
+ * <p>Grouping the ledgers this way makes the ledgers which are deleted together share the same entry logs,
+ * which are then reclaimed whole, instead of mixing them with long lived ledgers that the compaction has to
+ * copy.
+ *
+ * <p>The writes are recorded under the lock of the entry log manager, the deletions from the garbage
+ * collector thread.
+ */
+class LedgerWriteClassifier {
+
+    /**
+     * Entry log tier of a ledger.
+     */
+    enum Tier {
+        HOT, WARM, COLD
+    }
+
+    // Weight of the last deleted ledger in the average lifetime
+    private static final double LIFETIME_ALPHA = 0.1;
+    // How many times the average lifetime a ledger has to live to be considered long lived
+    private static final int LONG_LIVED_FACTOR = 2;
+
+    private final long windowNanos;
+    private final double hotBytesPerSecond;
+    private final double coldBytesPerSecond;
+
+    private final ConcurrentLongHashMap<LedgerWrites> ledgers =
+            ConcurrentLongHashMap.<LedgerWrites>newBuilder().build();
+    private volatile double averageLifetimeNanos = 0;
+
+    private static final class LedgerWrites {
+        final long firstWriteNanos;
+        long windowStartNanos;
+        long windowBytes = 0;
+        volatile Tier tier = Tier.WARM;
+
+        LedgerWrites(long nowNanos) {
+            this.firstWriteNanos = nowNanos;
+            this.windowStartNanos = nowNanos;
+        }
+    }
+
+    LedgerWriteClassifier(long windowSeconds, long hotBytesPerSecond, long coldBytesPerSecond) {
+        this.windowNanos = TimeUnit.SECONDS.toNanos(windowSeconds);
+        this.hotBytesPerSecond = hotBytesPerSecond;
+        this.coldBytesPerSecond = coldBytesPerSecond;
+    }
+
+    /**
+     * Record a write and return the tier of the entry log the ledger is written to.
+     */
+    Tier onWrite(long ledgerId, int size, long nowNanos) {
+        LedgerWrites writes = ledgers.computeIfAbsent(ledgerId, id -> new LedgerWrites(nowNanos));
+        long elapsedNanos = nowNanos - writes.windowStartNanos;
+        if (elapsedNanos >= windowNanos) {
+            double bytesPerSecond = writes.windowBytes * (double) TimeUnit.SECONDS.toNanos(1) / elapsedNanos;
+            writes.tier = classify(writes, bytesPerSecond, nowNanos);
+            writes.windowStartNanos = nowNanos;
+            writes.windowBytes = 0;
+        }
+        writes.windowBytes += size;
+        return writes.tier;
+    }
+
+    /**
+     * @return the tier of the entry log the ledger is currently written to
+     */
+    Tier getTier(long ledgerId) {
+        LedgerWrites writes = ledgers.get(ledgerId);
+        return writes != null ? writes.tier : Tier.WARM;
+    }
+
+    /**
+     * Record the deletion of a ledger, to learn how long the ledgers live.
+     */
+    void onLedgerDeleted(long ledgerId, long nowNanos) {
+        LedgerWrites writes = ledgers.remove(ledgerId);
+        if (writes == null) {
+            return;
+        }
+        long lifetimeNanos = nowNanos - writes.firstWriteNanos;
+        double average = averageLifetimeNanos;
+        averageLifetimeNanos = average == 0 ? lifetimeNanos : average + LIFETIME_ALPHA * (lifetimeNanos - average);
+    }
+
+    private Tier classify(LedgerWrites writes, double bytesPerSecond, long nowNanos) {
+        double lifetimeNanos = averageLifetimeNanos;
+        if (lifetimeNanos > 0 && nowNanos - writes.firstWriteNanos > LONG_LIVED_FACTOR * lifetimeNanos) {
+            return Tier.COLD;
+        } else if (bytesPerSecond >= hotBytesPerSecond) {
+            return Tier.HOT;
+        } else if (bytesPerSecond < coldBytesPerSecond) {
+            return Tier.COLD;
+        } else {
+            return Tier.WARM;
+        }
+    }
+}
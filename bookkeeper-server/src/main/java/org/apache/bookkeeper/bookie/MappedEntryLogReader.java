@@ -0,0 +1,270 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+
+package org.apache.bookkeeper.bookie;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.IllegalReferenceCountException;
+import io.netty.util.ReferenceCounted;
+import io.netty.util.internal.PlatformDependent;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Reads the entries of the sealed entry logs through memory mappings of the entry log files.
+ *
+ * <p>The entry logs are mapped in windows of a fixed size, aligned on the window size, and at most a given
+ * number of windows are mapped at the same time, the least recently used one being dropped when a new one is
+ * needed. The entries are returned as slices of the windows, so reading them costs neither a syscall nor a
+ * copy. Entries crossing the boundary of a window are not returned, and have to be read from the file
+ * channel.
+ *
+ * <p>The windows are reference counted: each entry returned holds a reference to its window until it is
+ * released, and a window is only unmapped once it has been dropped, and all the entries read from it are
+ * released. The files are opened and mapped read-only, so the entries are read-only buffers.
+ *
+ * <p>A window is mapped under the lock of its own key only, so the readers of the windows already mapped and
+ * of the other windows are not blocked while a file is opened and mapped.
+ *
+ * <p>Only the entry logs which are no longer written must be read from here, since a window doesn't grow with
+ * its file.
+ */
+class MappedEntryLogReader {
+    private static final Logger LOG = LoggerFactory.getLogger(MappedEntryLogReader.class);
+
+    /**
+     * Finds the file of an entry log, to map it.
+     */
+    interface EntryLogFileProvider {
+        File getFile(long logId) throws IOException;
+    }
+
+    private final ByteBufAllocator allocator;
+    private final long windowSize;
+    private final int maxWindows;
+    private final EntryLogFileProvider fileProvider;
+
+    // Keyed by entry log id in the high 32 bits and window index in the low 32 bits
+    private final ConcurrentHashMap<Long, MappedWindow> windows = new ConcurrentHashMap<>();
+    // Logical clock ordering the accesses to the windows, to drop the least recently used one
+    private final AtomicLong accessClock = new AtomicLong();
+
+    MappedEntryLogReader(ByteBufAllocator allocator, long windowSize, int maxWindows,
+                         EntryLogFileProvider fileProvider) {
+        this.allocator = allocator;
+        this.windowSize = windowSize;
+        this.maxWindows = maxWindows;
+        this.fileProvider = fileProvider;
+    }
+
+    /**
+     * Read the entry at the given position of an entry log.
+     *
+     * @param logId the entry log id
+     * @param pos the position of the entry, after its size
+     * @return the entry, which the caller has to release, or null if the entry is not entirely within a window
+     *         or the entry log cannot be mapped
+     */
+    ByteBuf readEntry(long logId, long pos) throws IOException {
+        long sizePos = pos - 4;
+        long index = sizePos / windowSize;
+        MappedWindow window = getWindow(logId, index);
+        if (window == null) {
+            return null;
+        }
+        try {
+            return window.readEntry((int) (sizePos - index * windowSize));
+        } finally {
+            window.release();
+        }
+    }
+
+    private MappedWindow getWindow(long logId, long index) throws IOException {
+        long key = (logId << 32) | index;
+        while (true) {
+            MappedWindow window = windows.get(key);
+            boolean mapped = false;
+            if (window == null) {
+                try {
+                    window = windows.computeIfAbsent(key, k -> map(logId, index));
+                } catch (UncheckedIOException e) {
+                    throw e.getCause();
+                }
+                if (window == null) {
+                    return null;
+                }
+                mapped = true;
+            }
+            try {
+                window.retain();
+            } catch (IllegalReferenceCountException e) {
+                // The window was dropped concurrently, map it again
+                windows.remove(key, window);
+                continue;
+            }
+            window.lastAccess = accessClock.incrementAndGet();
+            if (mapped) {
+                evictIfNeeded();
+            }
+            return window;
+        }
+    }
+
+    private MappedWindow map(long logId, long index) {
+        File file;
+        try {
+            file = fileProvider.getFile(logId);
+        } catch (IOException e) {
+            // Let the caller read the entry from the file channel, which reports the missing entry logs
+            LOG.debug("Could not find the file of entry log {} to map it", logId, e);
+            return null;
+        }
+        // The mapping stays valid once the channel is closed
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            FileChannel fc = raf.getChannel();
+            long start = index * windowSize;
+            long length = Math.min(windowSize, fc.size() - start);
+            if (length <= 0) {
+                return null;
+            }
+            return new MappedWindow(allocator, fc.map(FileChannel.MapMode.READ_ONLY, start, length));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Drop the least recently used windows beyond the max number of windows.
+     */
+    private void evictIfNeeded() {
+        while (windows.size() > maxWindows) {
+            Map.Entry<Long, MappedWindow> eldest = null;
+            for (Map.Entry<Long, MappedWindow> entry : windows.entrySet()) {
+                if (eldest == null || entry.getValue().lastAccess < eldest.getValue().lastAccess) {
+                    eldest = entry;
+                }
+            }
+            if (eldest == null) {
+                return;
+            }
+            drop(eldest.getKey(), eldest.getValue());
+        }
+    }
+
+    private void drop(long key, MappedWindow window) {
+        // Only the thread removing the window from the map releases the reference held by the map
+        if (windows.remove(key, window)) {
+            window.release();
+        }
+    }
+
+    /**
+     * Drop the windows of an entry log, when it is removed.
+     */
+    void unmap(long logId) {
+        windows.forEach((key, window) -> {
+            if ((key >>> 32) == logId) {
+                drop(key, window);
+            }
+        });
+    }
+
+    /**
+     * Drop all the windows.
+     */
+    void close() {
+        windows.forEach(this::drop);
+    }
+
+    private static final class MappedWindow extends AbstractReferenceCounted {
+        private final ByteBufAllocator allocator;
+        private final MappedByteBuffer mapping;
+        private volatile long lastAccess;
+
+        MappedWindow(ByteBufAllocator allocator, MappedByteBuffer mapping) {
+            this.allocator = allocator;
+            this.mapping = mapping;
+        }
+
+        ByteBuf readEntry(int offset) {
+            if (offset + 4 > mapping.capacity()) {
+                return null;
+            }
+            int entrySize = mapping.getInt(offset);
+            if (entrySize <= 0 || (long) offset + 4 + entrySize > mapping.capacity()) {
+                return null;
+            }
+            ByteBuffer entry = mapping.duplicate();
+            entry.position(offset + 4).limit(offset + 4 + entrySize);
+            return new MappedEntry(allocator, entry.slice(), retain());
+        }
+
+        @Override
+        public MappedWindow retain() {
+            super.retain();
+            return this;
+        }
+
+        @Override
+        public ReferenceCounted touch(Object hint) {
+            return this;
+        }
+
+        @Override
+        protected void deallocate() {
+            PlatformDependent.freeDirectBuffer(mapping);
+        }
+    }
+
+    /**
+     * An entry read from a window, which releases the window when it is deallocated. The entry wraps the
+     * read-only slice of the mapping, which direct byte buffers cannot.
+     */
+    private static final class MappedEntry extends CompositeByteBuf {
+        private final MappedWindow window;
+
+        MappedEntry(ByteBufAllocator allocator, ByteBuffer entry, MappedWindow window) {
+            super(allocator, true, 1, Unpooled.wrappedBuffer(entry));
+            this.window = window;
+        }
+
+        @Override
+        protected void deallocate() {
+            super.deallocate();
+            window.release();
+        }
+    }
+}
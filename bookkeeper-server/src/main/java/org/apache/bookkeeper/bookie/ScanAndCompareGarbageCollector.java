@@ -51,6 +51,7 @@ import org.apache.bookkeeper.meta.MetadataDrivers;
 import org.apache.bookkeeper.meta.exceptions.MetadataException;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.versioning.Versioned;
 import org.apache.commons.configuration.ConfigurationException;
 import org.slf4j.Logger;
@@ -85,10 +86,22 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
     private int activeLedgerCounter;
     private StatsLogger statsLogger;
     private final int maxConcurrentRequests;
+    private final GarbageCollectionCoordinator coordinator;
 
     public ScanAndCompareGarbageCollector(LedgerManager ledgerManager, CompactableLedgerStorage ledgerStorage,
             ServerConfiguration conf, StatsLogger statsLogger) throws IOException {
+        this(ledgerManager, ledgerStorage, conf, statsLogger, null);
+    }
+
+    /**
+     * Create a garbage collector whose listing of the ledgers in the metadata store is shared, through the given
+     * coordinator, with the garbage collectors of the other directories.
+     */
+    public ScanAndCompareGarbageCollector(LedgerManager ledgerManager, CompactableLedgerStorage ledgerStorage,
+            ServerConfiguration conf, StatsLogger statsLogger, GarbageCollectionCoordinator coordinator)
+            throws IOException {
         this.ledgerManager = ledgerManager;
+        this.coordinator = coordinator;
         this.ledgerStorage = ledgerStorage;
         this.conf = conf;
         this.statsLogger = statsLogger;
@@ -122,6 +135,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
 
         try {
             // Get a set of all ledgers on the bookie
+            long bkListingStartNanos = MathUtils.nowInNano();
             NavigableSet<Long> bkActiveLedgers = Sets.newTreeSet(ledgerStorage.getActiveLedgersInRange(0,
                     Long.MAX_VALUE));
             this.activeLedgerCounter = bkActiveLedgers.size();
@@ -142,16 +156,26 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 lastOverReplicatedLedgerGcTimeMillis = System.currentTimeMillis();
             }
 
-            // Iterate over all the ledger on the metadata store
             long zkOpTimeoutMs = this.conf.getZkTimeout() * 2;
+            if (coordinator != null) {
+                // Compare with the listing of the metadata store shared with the other directories
+                GarbageCollectionCoordinator.LedgersInMetadata ledgersInMetadata =
+                        coordinator.getLedgersInMetadata(bkListingStartNanos);
+                for (Long bkLid : bkActiveLedgers) {
+                    if (!ledgersInMetadata.contains(bkLid)) {
+                        cleanIfNotInMetadata(bkLid, zkOpTimeoutMs, garbageCleaner);
+                    }
+                }
+                return;
+            }
+
+            // Iterate over all the ledger on the metadata store
             LedgerRangeIterator ledgerRangeIterator = ledgerManager
                     .getLedgerRanges(zkOpTimeoutMs);
             Set<Long> ledgersInMetadata = null;
             long start;
             long end = -1;
             boolean done = false;
-            AtomicBoolean isBookieInEnsembles = new AtomicBoolean(false);
-            Versioned<LedgerMetadata> metadata = null;
             while (!done) {
                 start = end + 1;
                 if (ledgerRangeIterator.hasNext()) {
@@ -171,42 +195,7 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
                 }
                 for (Long bkLid : subBkActiveLedgers) {
                     if (!ledgersInMetadata.contains(bkLid)) {
-                        if (verifyMetadataOnGc) {
-                            isBookieInEnsembles.set(false);
-                            metadata = null;
-                            int rc = BKException.Code.OK;
-                            try {
-                                metadata = result(ledgerManager.readLedgerMetadata(bkLid), zkOpTimeoutMs,
-                                        TimeUnit.MILLISECONDS);
-                            } catch (BKException | TimeoutException e) {
-                                if (e instanceof BKException) {
-                                    rc = ((BKException) e).getCode();
-                                } else {
-                                    LOG.warn("Time-out while fetching metadata for Ledger {} : {}.", bkLid,
-                                            e.getMessage());
-
-                                    continue;
-                                }
-                            }
-                            // check bookie should be part of ensembles in one
-                            // of the segment else ledger should be deleted from
-                            // local storage
-                            if (metadata != null && metadata.getValue() != null) {
-                                metadata.getValue().getAllEnsembles().forEach((entryId, ensembles) -> {
-                                    if (ensembles != null && ensembles.contains(selfBookieAddress)) {
-                                        isBookieInEnsembles.set(true);
-                                    }
-                                });
-                                if (isBookieInEnsembles.get()) {
-                                    continue;
-                                }
-                            } else if (rc != BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
-                                LOG.warn("Ledger {} Missing in metadata list, but ledgerManager returned rc: {}.",
-                                        bkLid, rc);
-                                continue;
-                            }
-                        }
-                        garbageCleaner.clean(bkLid);
+                        cleanIfNotInMetadata(bkLid, zkOpTimeoutMs, garbageCleaner);
                     }
                 }
             }
@@ -216,6 +205,50 @@ public class ScanAndCompareGarbageCollector implements GarbageCollector {
         }
     }
 
+    /**
+     * Clean a ledger of the bookie which was not found in the listing of the metadata store, after verifying
+     * its metadata if configured so.
+     */
+    private void cleanIfNotInMetadata(long bkLid, long zkOpTimeoutMs, GarbageCleaner garbageCleaner)
+            throws Exception {
+        if (verifyMetadataOnGc) {
+            Versioned<LedgerMetadata> metadata = null;
+            int rc = BKException.Code.OK;
+            try {
+                metadata = result(ledgerManager.readLedgerMetadata(bkLid), zkOpTimeoutMs,
+                        TimeUnit.MILLISECONDS);
+            } catch (BKException | TimeoutException e) {
+                if (e instanceof BKException) {
+                    rc = ((BKException) e).getCode();
+                } else {
+                    LOG.warn("Time-out while fetching metadata for Ledger {} : {}.", bkLid,
+                            e.getMessage());
+
+                    return;
+                }
+            }
+            // check bookie should be part of ensembles in one
+            // of the segment else ledger should be deleted from
+            // local storage
+            if (metadata != null && metadata.getValue() != null) {
+                AtomicBoolean isBookieInEnsembles = new AtomicBoolean(false);
+                metadata.getValue().getAllEnsembles().forEach((entryId, ensembles) -> {
+                    if (ensembles != null && ensembles.contains(selfBookieAddress)) {
+                        isBookieInEnsembles.set(true);
+                    }
+                });
+                if (isBookieInEnsembles.get()) {
+                    return;
+                }
+            } else if (rc != BKException.Code.NoSuchLedgerExistsOnMetadataServerException) {
+                LOG.warn("Ledger {} Missing in metadata list, but ledgerManager returned rc: {}.",
+                        bkLid, rc);
+                return;
+            }
+        }
+        garbageCleaner.clean(bkLid);
+    }
+
     private Set<Long> removeOverReplicatedledgers(Set<Long> bkActiveledgers, final GarbageCleaner garbageCleaner)
             throws Exception {
         final Set<Long> overReplicatedLedgers = Sets.newHashSet();
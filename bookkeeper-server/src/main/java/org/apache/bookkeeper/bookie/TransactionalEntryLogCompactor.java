@@ -21,6 +21,7 @@
 
 package org.apache.bookkeeper.bookie;
 
+import com.google.common.util.concurrent.RateLimiter;
 import io.netty.buffer.ByteBuf;
 
 import java.io.IOException;
@@ -60,7 +61,16 @@ public class TransactionalEntryLogCompactor extends AbstractLogCompactor {
             EntryLogger entryLogger,
             CompactableLedgerStorage ledgerStorage,
             LogRemovalListener logRemover) {
-        super(conf, logRemover);
+        this(conf, entryLogger, ledgerStorage, logRemover, null);
+    }
+
+    public TransactionalEntryLogCompactor(
+            ServerConfiguration conf,
+            EntryLogger entryLogger,
+            CompactableLedgerStorage ledgerStorage,
+            LogRemovalListener logRemover,
+            RateLimiter sharedRateLimiter) {
+        super(conf, logRemover, ledgerStorage.getForegroundLatencyTracker(), sharedRateLimiter);
         this.entryLogger = entryLogger;
         this.ledgerStorage = ledgerStorage;
     }
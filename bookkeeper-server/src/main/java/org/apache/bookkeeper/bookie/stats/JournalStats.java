@@ -25,6 +25,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_ADD_ENTRY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CB_QUEUE_SIZE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_CREATION_LATENCY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FILE_POOL_MISSES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FLUSH_LATENCY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_LEDGER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_BATCH_BYTES;
@@ -33,8 +34,10 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_W
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_COUNT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_GROUPING_FAILURES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_FORCE_WRITE_QUEUE_SIZE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_MAX;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_MEMORY_USED;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_ADAPTIVE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_WAIT;
@@ -168,11 +171,27 @@ public class JournalStats {
         help = "The number of journal flushes triggered when journal queue becomes empty"
     )
     private final Counter flushEmptyQueueCounter;
+    @StatsDoc(
+        name = JOURNAL_NUM_FLUSH_ADAPTIVE,
+        help = "The number of journal flushes triggered by the adaptive group commit, when no entry was expected"
+            + " before the group wait expired"
+    )
+    private final Counter flushAdaptiveCounter;
+    @StatsDoc(
+        name = JOURNAL_GROUP_COMMIT_WAIT,
+        help = "The group wait, in microseconds, picked by the adaptive group commit for each journal flush"
+    )
+    private final OpStatsLogger groupCommitWaitStats;
     @StatsDoc(
         name = JOURNAL_WRITE_BYTES,
         help = "The number of bytes appended to the journal"
     )
     private final Counter journalWriteBytes;
+    @StatsDoc(
+        name = JOURNAL_FILE_POOL_MISSES,
+        help = "The number of journal files created while no pre-allocated file was available in the pool"
+    )
+    private final Counter journalFilePoolMisses;
     @StatsDoc(
             name = JOURNAL_MEMORY_MAX,
             help = "The max amount of memory in bytes that can be used by the bookie journal"
@@ -207,7 +226,10 @@ public class JournalStats {
         flushMaxOutstandingBytesCounter =
                 statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_MAX_OUTSTANDING_BYTES);
         flushEmptyQueueCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_EMPTY_QUEUE);
+        flushAdaptiveCounter = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_NUM_FLUSH_ADAPTIVE);
+        groupCommitWaitStats = statsLogger.getOpStatsLogger(BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT);
         journalWriteBytes = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_WRITE_BYTES);
+        journalFilePoolMisses = statsLogger.getCounter(BookKeeperServerStats.JOURNAL_FILE_POOL_MISSES);
 
         journalMemoryMaxStats = new Gauge<Long>() {
             @Override
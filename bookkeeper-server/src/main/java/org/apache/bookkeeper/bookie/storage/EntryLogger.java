@@ -21,6 +21,7 @@
 package org.apache.bookkeeper.bookie.storage;
 
 import io.netty.buffer.ByteBuf;
+import io.netty.channel.FileRegion;
 import java.io.IOException;
 import java.util.Collection;
 import org.apache.bookkeeper.bookie.AbstractLogCompactor;
@@ -67,6 +68,21 @@ public interface EntryLogger extends AutoCloseable {
     ByteBuf readEntry(long ledgerId, long entryId, long entryLocation)
             throws IOException, NoEntryException;
 
+    /**
+     * Get the region of the entrylog file holding an entry, so that the entry can be sent
+     * from the file without being read in memory.
+     * @param ledgerId the ledgerID to match
+     * @param entryId the entryID to match
+     * @param entryLocation the location of the entry
+     * @param minSize the minimum size of the entry
+     * @return the region of the entry, already opened, or null if the entry is smaller than
+     *         minSize or has to be read with {@link #readEntry(long, long, long)}
+     */
+    default FileRegion readEntryRegion(long ledgerId, long entryId, long entryLocation, int minSize)
+            throws IOException {
+        return null;
+    }
+
     /**
      * Flush any outstanding writes to disk.
      */
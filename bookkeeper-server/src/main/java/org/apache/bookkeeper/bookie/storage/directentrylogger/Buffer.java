@@ -46,7 +46,7 @@ import org.apache.bookkeeper.common.util.nativeio.NativeIO;
  * an integer, or long, the value will be negative (assuming the read is
  * a java read, and thus a signed int).
  */
-class Buffer {
+public class Buffer {
     /* Padding byte must have MSB set, so if read at the start
      * of an integer or long, the returned value is negative. */
     public static final byte PADDING_BYTE = (byte) 0xF0;
@@ -92,7 +92,7 @@ class Buffer {
     /**
      * @return whether there is space in the buffer for size bytes.
      */
-    boolean hasSpace(int size) throws IOException {
+    public boolean hasSpace(int size) throws IOException {
         if (size > bufferSize) {
             throw new IOException(exMsg("Write too large").kv("writeSize", size)
                                   .kv("maxSize", bufferSize).toString());
@@ -119,7 +119,7 @@ class Buffer {
      * number of readable bytes of the bytebuf. Progresses the readerIndex of the passed
      * bytebuf by the number of bytes read (i.e. to the end).
      */
-    void writeByteBuf(ByteBuf bytebuf) throws IOException {
+    public void writeByteBuf(ByteBuf bytebuf) throws IOException {
         int bytesWritten = bytebuf.readableBytes();
         ByteBuffer bytesToPut = bytebuf.nioBuffer();
         byteBuffer.put(bytesToPut);
@@ -195,7 +195,7 @@ class Buffer {
         return pointer;
     }
 
-    long pointer(long offset, long expectedWrite) {
+    public long pointer(long offset, long expectedWrite) {
         if (offset == 0) {
             return pointer;
         } else {
@@ -211,14 +211,14 @@ class Buffer {
     /**
      * @return the number of bytes which have been written to this buffer.
      */
-    int position() {
+    public int position() {
         return byteBuffer.position();
     }
 
     /**
      * @return the size of the buffer (i.e. the max number of bytes writable, or the max offset readable)
      */
-    int size() {
+    public int size() {
         return bufferSize;
     }
 
@@ -233,11 +233,35 @@ class Buffer {
         return nextAlignment;
     }
 
+    /**
+     * Fill the buffer with zeros up to the next alignment position, without moving the position.
+     * @return the position of the next alignment
+     */
+    public int zeroToAlignment() {
+        int bufferPos = byteBuffer.position();
+        int nextAlignment = nextAlignment(bufferPos);
+        buffer.setZero(bufferPos, nextAlignment - bufferPos);
+        return nextAlignment;
+    }
+
+    /**
+     * Move the bytes written after the given aligned offset to the start of the buffer,
+     * and discard the bytes before it.
+     */
+    public void compact(int offset) {
+        checkArgument(isAligned(offset), "Offset not aligned %s", offset);
+        int length = byteBuffer.position() - offset;
+        if (offset > 0 && length > 0) {
+            buffer.setBytes(0, buffer, offset, length);
+        }
+        byteBuffer.position(Math.max(length, 0));
+    }
+
     /**
      * Clear the bytes written. This doesn't actually destroy the data, but moves the position back to the start of
      * the buffer.
      */
-    void reset() {
+    public void reset() {
         byteBuffer.clear();
     }
 
@@ -255,11 +279,11 @@ class Buffer {
         return padding;
     }
 
-    static boolean isAligned(long size) {
+    public static boolean isAligned(long size) {
         return size >= 0 && ((ALIGNMENT - 1) & size) == 0;
     }
 
-    static int nextAlignment(int pos) {
+    public static int nextAlignment(int pos) {
         checkArgument(pos <= MAX_ALIGNMENT,
                       "position (0x%x) must be lower or equal to max alignment (0x%x)",
                        pos, MAX_ALIGNMENT);
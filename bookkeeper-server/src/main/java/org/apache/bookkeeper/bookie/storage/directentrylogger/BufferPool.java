@@ -22,32 +22,70 @@ package org.apache.bookkeeper.bookie.storage.directentrylogger;
 
 import java.io.IOException;
 import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
 
 /**
  * BufferPool used to manage Buffers.
+ *
+ * <p>When all the buffers are in use, {@link #acquire()} waits for one to be released for at most
+ * the acquire timeout. The time spent waiting is reported to the wait stats logger, so that a pool
+ * too small for the number of concurrent writers shows up instead of silently stalling them.
  */
 public class BufferPool implements AutoCloseable {
     private final ArrayBlockingQueue<Buffer> pool;
+    private final long acquireTimeoutMs;
+    private final OpStatsLogger waitStats;
+
+    public BufferPool(NativeIO nativeIO, int bufferSize, int maxPoolSize) throws IOException {
+        this(nativeIO, bufferSize, maxPoolSize, Long.MAX_VALUE,
+                NullStatsLogger.INSTANCE.getOpStatsLogger("buffer-pool-wait"));
+    }
 
-    BufferPool(NativeIO nativeIO, int bufferSize, int maxPoolSize) throws IOException {
-        pool = new ArrayBlockingQueue<>(maxPoolSize);
+    public BufferPool(NativeIO nativeIO, int bufferSize, int maxPoolSize,
+                      long acquireTimeoutMs, OpStatsLogger waitStats) throws IOException {
+        this.pool = new ArrayBlockingQueue<>(maxPoolSize);
+        this.acquireTimeoutMs = acquireTimeoutMs;
+        this.waitStats = waitStats;
         for (int i = 0; i < maxPoolSize; i++) {
             pool.add(new Buffer(nativeIO, bufferSize));
         }
     }
 
-    Buffer acquire() throws IOException {
+    public Buffer acquire() throws IOException {
+        Buffer buffer = pool.poll();
+        if (buffer != null) {
+            return buffer;
+        }
+
+        long startTime = MathUtils.nowInNano();
         try {
-            return pool.take();
+            buffer = pool.poll(acquireTimeoutMs, TimeUnit.MILLISECONDS);
         } catch (InterruptedException ie) {
             Thread.currentThread().interrupt();
+            waitStats.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
             throw new IOException(ie);
         }
+        if (buffer == null) {
+            waitStats.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+            throw new IOException("Timed out after " + acquireTimeoutMs + " ms waiting for a free buffer");
+        }
+        waitStats.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+        return buffer;
+    }
+
+    /**
+     * @return the number of buffers that can be acquired without waiting
+     */
+    public int available() {
+        return pool.size();
     }
 
-    void release(Buffer buffer) {
+    public void release(Buffer buffer) {
         buffer.reset();
         if (!pool.add(buffer)) {
             buffer.free();
@@ -0,0 +1,173 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor.COMPACTED_SUFFIX;
+import static org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor.COMPACTING_SUFFIX;
+
+import com.google.common.base.MoreObjects;
+import io.netty.buffer.ByteBuf;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.util.HardLink;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compaction entry log written through direct I/O.
+ *
+ * <p>The files go through the same states as the ones of the default entry logger:
+ * <ul>
+ * <li>{@code <dst>.log.compacting} while the entries are being copied</li>
+ * <li>{@code <dst>.log.<src>.compacted} once all the entries have been copied and flushed</li>
+ * <li>{@code <dst>.log} once the log is made available for reads</li>
+ * </ul>
+ */
+class DirectCompactionEntryLog implements CompactionEntryLog {
+    private static final Logger log = LoggerFactory.getLogger(DirectCompactionEntryLog.class);
+
+    private final DirectEntryLogger entryLogger;
+    private final long srcLogId;
+    private final long dstLogId;
+    private final File compactingFile;
+    private final File compactedFile;
+    private final File finalFile;
+
+    private WriterWithMetadata writer;
+
+    private DirectCompactionEntryLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId,
+                                     WriterWithMetadata writer) {
+        this.entryLogger = entryLogger;
+        this.srcLogId = srcLogId;
+        this.dstLogId = dstLogId;
+        this.writer = writer;
+
+        File ledgerDir = entryLogger.getLedgerDir();
+        String dstLogName = Long.toHexString(dstLogId);
+        this.compactingFile = new File(ledgerDir, dstLogName + COMPACTING_SUFFIX);
+        this.compactedFile = new File(ledgerDir,
+                dstLogName + EntryLogger.LOG_FILE_SUFFIX + "." + Long.toHexString(srcLogId) + COMPACTED_SUFFIX);
+        this.finalFile = new File(ledgerDir, dstLogName + EntryLogger.LOG_FILE_SUFFIX);
+    }
+
+    static DirectCompactionEntryLog newLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId)
+            throws IOException {
+        File compactingFile = new File(entryLogger.getLedgerDir(), Long.toHexString(dstLogId) + COMPACTING_SUFFIX);
+        WriterWithMetadata writer = entryLogger.newWriter(dstLogId, compactingFile, new EntryLogMetadata(dstLogId));
+        return new DirectCompactionEntryLog(entryLogger, srcLogId, dstLogId, writer);
+    }
+
+    static DirectCompactionEntryLog recoverLog(DirectEntryLogger entryLogger, long srcLogId, long dstLogId) {
+        return new DirectCompactionEntryLog(entryLogger, srcLogId, dstLogId, null);
+    }
+
+    @Override
+    public synchronized long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        if (writer == null) {
+            throw new IOException("Compaction log " + compactingFile + " is not writable any more");
+        }
+        return writer.addEntry(ledgerId, entry);
+    }
+
+    @Override
+    public void scan(EntryLogScanner scanner) throws IOException {
+        File file = finalFile.exists() ? finalFile : compactedFile;
+        entryLogger.scanFile(dstLogId, file, scanner);
+    }
+
+    @Override
+    public synchronized void flush() throws IOException {
+        if (writer == null) {
+            throw new IOException("Failed to flush compaction log " + compactingFile + " which is already closed");
+        }
+        writer.finalizeAndClose();
+        writer = null;
+        log.info("Flushed compaction log file {} with logId {}.", compactingFile, dstLogId);
+    }
+
+    @Override
+    public synchronized void abort() {
+        if (writer != null) {
+            writer.abort();
+            writer = null;
+        }
+        deleteIfExists(compactingFile);
+        deleteIfExists(compactedFile);
+    }
+
+    @Override
+    public void markCompacted() throws IOException {
+        if (compactingFile.exists()) {
+            if (!compactedFile.exists()) {
+                HardLink.createHardLink(compactingFile, compactedFile);
+            }
+        } else {
+            throw new IOException("Compaction log doesn't exist any more after flush: " + compactingFile);
+        }
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public void makeAvailable() throws IOException {
+        if (!finalFile.exists()) {
+            HardLink.createHardLink(compactedFile, finalFile);
+        }
+    }
+
+    @Override
+    public void finalizeAndCleanup() {
+        deleteIfExists(compactedFile);
+        deleteIfExists(compactingFile);
+    }
+
+    @Override
+    public long getDstLogId() {
+        return dstLogId;
+    }
+
+    @Override
+    public long getSrcLogId() {
+        return srcLogId;
+    }
+
+    private static void deleteIfExists(File file) {
+        if (file.exists() && !file.delete()) {
+            log.warn("Could not delete file: {}", file);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+            .add("logId", dstLogId)
+            .add("compactedLogId", srcLogId)
+            .add("compactingLogFile", compactingFile)
+            .add("compactedLogFile", compactedFile)
+            .add("finalLogFile", finalFile)
+            .toString();
+    }
+}
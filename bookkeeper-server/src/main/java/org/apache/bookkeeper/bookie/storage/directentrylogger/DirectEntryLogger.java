@@ -0,0 +1,628 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor.COMPACTED_SUFFIX;
+import static org.apache.bookkeeper.bookie.TransactionalEntryLogCompactor.COMPACTING_SUFFIX;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import org.apache.bookkeeper.bookie.AbstractLogCompactor;
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * EntryLogger implementation that writes and reads the entry logs with direct I/O,
+ * bypassing the OS page cache.
+ *
+ * <p>Entries are appended to a single active log per ledger directory. The on-disk
+ * format is the one of {@link org.apache.bookkeeper.bookie.DefaultEntryLogger}
+ * (header, size delimited entries, ledgers map trailer), except that the header
+ * fills a whole aligned block and that each write is padded to the alignment, so
+ * the data of the entry logs never gets to evict the hot read set from the page cache.
+ */
+public class DirectEntryLogger implements EntryLogger {
+    private static final Logger log = LoggerFactory.getLogger(DirectEntryLogger.class);
+
+    static final int MIN_SANE_ENTRY_SIZE = 8 + 8;
+
+    private final File ledgerDir;
+    private final NativeIO nativeIO;
+    private final ByteBufAllocator allocator;
+    private final BufferPool writeBuffers;
+    private final long maxFileSize;
+    private final int maxSaneEntrySize;
+    private final int readBufferSize;
+    private final int maxReadersPerThread;
+    private final long maxFdCacheTimeSeconds;
+    private final DirectEntryLoggerStats stats;
+
+    private final Object writerLock = new Object();
+    private volatile WriterWithMetadata curWriter;
+    private long lastLogId;
+
+    // The reader caches of the threads, the ones of the threads that ended are closed by pruneReaderCaches()
+    private final Map<Thread, Cache<Long, DirectReader>> allCaches = new ConcurrentHashMap<>();
+    private final ThreadLocal<Cache<Long, DirectReader>> caches;
+
+    public DirectEntryLogger(File ledgerDir, NativeIO nativeIO, ByteBufAllocator allocator,
+                             long maxFileSize, int maxSaneEntrySize,
+                             int writeBufferSize, int writeBuffersCount, long writeBufferAcquireTimeoutMs,
+                             int readBufferSize, int maxReadersPerThread, long maxFdCacheTimeSeconds,
+                             StatsLogger statsLogger) throws IOException {
+        checkArgument(maxFileSize <= Integer.MAX_VALUE, "Max file size must fit in the entry location offset");
+        checkArgument(readBufferSize >= 2 * Buffer.ALIGNMENT, "Read buffer size must be at least 2 pages");
+        // The current log and the header rewrite of a sealed log need a buffer each
+        checkArgument(writeBuffersCount >= 2, "At least 2 write buffers are needed");
+        if (!ledgerDir.exists()) {
+            throw new FileNotFoundException("Entry log directory '" + ledgerDir + "' does not exist");
+        }
+
+        this.ledgerDir = ledgerDir;
+        this.nativeIO = nativeIO;
+        this.allocator = allocator;
+        this.maxFileSize = maxFileSize;
+        this.maxSaneEntrySize = maxSaneEntrySize;
+        this.readBufferSize = Buffer.nextAlignment(readBufferSize);
+        this.maxReadersPerThread = maxReadersPerThread;
+        this.maxFdCacheTimeSeconds = maxFdCacheTimeSeconds;
+        this.stats = new DirectEntryLoggerStats(statsLogger);
+        this.caches = ThreadLocal.withInitial(() -> {
+            RemovalListener<Long, DirectReader> onRemove = notification -> {
+                try {
+                    // Only drops the reference of the cache, a read in progress keeps the file open
+                    notification.getValue().close();
+                    stats.getReaderCloses().inc();
+                } catch (IOException e) {
+                    log.warn("Failed to close reader for entry log {}", notification.getKey(), e);
+                }
+            };
+            Cache<Long, DirectReader> cache = CacheBuilder.newBuilder()
+                .maximumSize(maxReadersPerThread)
+                .expireAfterAccess(maxFdCacheTimeSeconds, TimeUnit.SECONDS)
+                .removalListener(onRemove)
+                .build();
+            pruneReaderCaches();
+            allCaches.put(Thread.currentThread(), cache);
+            return cache;
+        });
+
+        // The largest entry, with its size prefix, must fit in a single write buffer
+        int minWriteBufferSize = Buffer.nextAlignment(maxSaneEntrySize + Integer.BYTES);
+        // Each open log, current or compaction, holds a buffer, and sealing a log borrows one more to
+        // rewrite its header. Waiting for a buffer blocks the add path, so the wait is measured and bounded.
+        this.writeBuffers = new BufferPool(nativeIO,
+                Math.max(Buffer.nextAlignment(writeBufferSize), minWriteBufferSize), writeBuffersCount,
+                writeBufferAcquireTimeoutMs, stats.getWriteBufferWaitStats());
+
+        // Fail fast if the native library cannot be loaded, rather than on the first flush
+        try {
+            nativeIO.close(nativeIO.open(ledgerDir.getPath(), NativeIO.O_RDONLY, 0));
+        } catch (LinkageError | RuntimeException e) {
+            writeBuffers.close();
+            throw new IOException("Native I/O is not available for the direct I/O entry logger", e);
+        }
+
+        this.lastLogId = findLastLogId();
+        log.info("Created direct I/O entry logger on {} (last log id: {}, write buffer: {}, read buffer: {})",
+                ledgerDir, lastLogId, writeBufferSize, this.readBufferSize);
+    }
+
+    File getLedgerDir() {
+        return ledgerDir;
+    }
+
+    @Override
+    public long addEntry(long ledgerId, ByteBuf buf) throws IOException {
+        long startTime = MathUtils.nowInNano();
+        boolean success = false;
+        try {
+            long location;
+            synchronized (writerLock) {
+                if (curWriter == null) {
+                    curWriter = newWriter();
+                } else if (curWriter.shouldRoll(buf, maxFileSize)) {
+                    // Seal the current log before starting the new one, so that readers
+                    // only stop bounding their reads once all the data is on disk
+                    curWriter.finalizeAndClose();
+                    curWriter = newWriter();
+                    stats.getWriterRolls().inc();
+                }
+                location = curWriter.addEntry(ledgerId, buf.duplicate());
+            }
+            success = true;
+            return location;
+        } finally {
+            if (success) {
+                stats.getAddEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime),
+                        TimeUnit.NANOSECONDS);
+            } else {
+                stats.getAddEntryStats().registerFailedEvent(MathUtils.elapsedNanos(startTime),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    @Override
+    public void flush() throws IOException {
+        long startTime = MathUtils.nowInNano();
+        synchronized (writerLock) {
+            if (curWriter != null) {
+                curWriter.flush();
+            }
+        }
+        stats.getFlushStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public ByteBuf readEntry(long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(-1L, -1L, entryLocation, false);
+    }
+
+    @Override
+    public ByteBuf readEntry(long ledgerId, long entryId, long entryLocation) throws IOException, NoEntryException {
+        return internalReadEntry(ledgerId, entryId, entryLocation, true);
+    }
+
+    private ByteBuf internalReadEntry(long ledgerId, long entryId, long location, boolean validateEntry)
+            throws IOException, NoEntryException {
+        long startTime = MathUtils.nowInNano();
+        long logId = location >> 32L;
+        long pos = location & 0xffffffffL;
+
+        boolean success = false;
+        DirectReader reader = null;
+        try {
+            reader = retainReader(logId);
+            int entrySize = reader.readIntAt(pos - Integer.BYTES);
+            if (entrySize > maxSaneEntrySize) {
+                log.warn("Sanity check failed for entry size of {} at location {} in {}", entrySize, pos, logId);
+            }
+            if (entrySize < MIN_SANE_ENTRY_SIZE) {
+                throw new IOException(exMsg("Invalid entry length").kv("ledgerId", ledgerId)
+                                      .kv("entryId", entryId).kv("logId", logId).kv("pos", pos)
+                                      .kv("entrySize", entrySize).toString());
+            }
+
+            ByteBuf entry = reader.readBufferAt(pos, entrySize);
+            if (validateEntry) {
+                long thisLedgerId = entry.getLong(0);
+                long thisEntryId = entry.getLong(8);
+                if (thisLedgerId != ledgerId || thisEntryId != entryId) {
+                    entry.release();
+                    throw new IOException(exMsg("Found wrong entry").kv("ledgerId", ledgerId)
+                                          .kv("entryId", entryId).kv("foundLedgerId", thisLedgerId)
+                                          .kv("foundEntryId", thisEntryId).kv("logId", logId)
+                                          .kv("pos", pos).toString());
+                }
+            }
+            success = true;
+            return entry;
+        } catch (EOFException e) {
+            throw new NoEntryException("Short read from entrylog " + logId + ": " + e.getMessage(),
+                                       ledgerId, entryId);
+        } finally {
+            if (reader != null) {
+                reader.release();
+            }
+            if (success) {
+                stats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTime),
+                        TimeUnit.NANOSECONDS);
+            } else {
+                stats.getReadEntryStats().registerFailedEvent(MathUtils.elapsedNanos(startTime),
+                        TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    /**
+     * Get a reader of the log from the cache of the thread and take a reference on it, so that it
+     * stays open for the duration of the read even if {@link #removeEntryLog(long)} evicts it.
+     */
+    private DirectReader retainReader(long logId) throws IOException {
+        Cache<Long, DirectReader> cache = caches.get();
+        while (true) {
+            DirectReader reader = getReader(cache, logId);
+            if (reader.tryRetain()) {
+                return reader;
+            }
+            // Closed by a concurrent eviction, drop it unless it was already replaced
+            cache.asMap().remove(logId, reader);
+        }
+    }
+
+    private DirectReader getReader(Cache<Long, DirectReader> cache, long logId) throws IOException {
+        try {
+            return cache.get(logId, () -> newReader(logId, logFile(logId)));
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            } else {
+                throw new IOException(e.getCause());
+            }
+        }
+    }
+
+    private DirectReader newReader(long logId, File file) throws IOException {
+        if (!file.exists()) {
+            throw new FileNotFoundException("No file for log " + Long.toHexString(logId));
+        }
+        DirectReader reader = new DirectReader(logId, file.toString(), allocator, nativeIO, readBufferSize,
+                () -> readableLimit(logId));
+        stats.getReaderOpens().inc();
+        return reader;
+    }
+
+    /**
+     * Reads of the log being written must not go past the data already written out, since the
+     * read buffer would otherwise keep the content of the preallocated space.
+     */
+    private long readableLimit(long logId) {
+        WriterWithMetadata writer = curWriter;
+        if (writer != null && writer.logId() == logId) {
+            return writer.writtenPosition();
+        }
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public void scanEntryLog(long entryLogId, EntryLogScanner scanner) throws IOException {
+        scanFile(entryLogId, logFile(entryLogId), scanner);
+    }
+
+    void scanFile(long logId, File file, EntryLogScanner scanner) throws IOException {
+        try (DirectReader reader = newReader(logId, file)) {
+            // Start right after the legacy header, the rest of the direct header is skipped as a dummy entry
+            long offset = Header.LOGFILE_LEGACY_HEADER_SIZE;
+            while (true) {
+                int entrySize;
+                try {
+                    entrySize = reader.readIntAt(offset);
+                } catch (EOFException eof) {
+                    break;
+                }
+
+                if (entrySize < 0) {
+                    // Hit the padding of a write, move to the next aligned block
+                    if (Buffer.isAligned(offset)) {
+                        log.warn("Invalid entry size {} at aligned offset {} in entry log {}",
+                                entrySize, offset, logId);
+                        return;
+                    }
+                    offset = (offset + Buffer.ALIGNMENT - 1) & ~((long) Buffer.ALIGNMENT - 1);
+                    continue;
+                } else if (entrySize == 0) {
+                    // Reached the pre-allocated space
+                    break;
+                }
+
+                try {
+                    long ledgerId = reader.readLongAt(offset + Integer.BYTES);
+                    if (ledgerId != Header.INVALID_LID && scanner.accept(ledgerId)) {
+                        ByteBuf entry = reader.readBufferAt(offset + Integer.BYTES, entrySize);
+                        try {
+                            scanner.process(ledgerId, offset, entry);
+                        } finally {
+                            entry.release();
+                        }
+                    }
+                } catch (EOFException eof) {
+                    log.warn("Short read for entry at {} from entry log {}", offset, logId);
+                    return;
+                }
+                offset += Integer.BYTES + entrySize;
+            }
+        }
+    }
+
+    @Override
+    public EntryLogMetadata getEntryLogMetadata(long entryLogId, AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        try {
+            return readEntryLogMetadataFromIndex(entryLogId);
+        } catch (IOException e) {
+            log.info("Failed to get ledgers map index from: {}.log : {}", entryLogId, e.getMessage());
+            return readEntryLogMetadataByScanning(entryLogId, throttler);
+        }
+    }
+
+    EntryLogMetadata readEntryLogMetadataFromIndex(long entryLogId) throws IOException {
+        try (DirectReader reader = newReader(entryLogId, logFile(entryLogId))) {
+            Header header = reader.readHeader();
+            if (header.version < Header.HEADER_V1) {
+                throw new IOException("Old log file header without ledgers map on entryLogId " + entryLogId);
+            }
+            if (header.ledgersMapOffset == 0L) {
+                throw new IOException("No ledgers map index found on entryLogId " + entryLogId);
+            }
+
+            EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+            long offset = header.ledgersMapOffset;
+            while (meta.getLedgersMap().size() < header.ledgersCount) {
+                int ledgersMapSize = reader.readIntAt(offset);
+                if (ledgersMapSize < 0 && !Buffer.isAligned(offset)) {
+                    // The batch was moved past the padding of a write
+                    offset = (offset + Buffer.ALIGNMENT - 1) & ~((long) Buffer.ALIGNMENT - 1);
+                    continue;
+                }
+
+                long lid = reader.readLongAt(offset + 4);
+                long entryId = reader.readLongAt(offset + 12);
+                int ledgersCount = reader.readIntAt(offset + 20);
+                if (lid != Header.INVALID_LID || entryId != Header.LEDGERS_MAP_ENTRY_ID || ledgersCount <= 0
+                        || ledgersMapSize != Header.LEDGERS_MAP_HEADER_SIZE - 4
+                                + Header.LEDGERS_MAP_ENTRY_SIZE * ledgersCount) {
+                    throw new IOException(exMsg("Cannot deserialize ledgers map").kv("logId", entryLogId)
+                                          .kv("offset", offset).kv("ledgerId", lid).kv("entryId", entryId)
+                                          .kv("ledgersCount", ledgersCount).toString());
+                }
+
+                long pos = offset + Header.LEDGERS_MAP_HEADER_SIZE;
+                for (int i = 0; i < ledgersCount; i++) {
+                    long ledgerId = reader.readLongAt(pos);
+                    long size = reader.readLongAt(pos + 8);
+                    meta.addLedgerSize(ledgerId, size);
+                    pos += Header.LEDGERS_MAP_ENTRY_SIZE;
+                }
+                offset += Integer.BYTES + ledgersMapSize;
+            }
+
+            if (meta.getLedgersMap().size() != header.ledgersCount) {
+                throw new IOException("Not all ledgers were found in ledgers map index. expected: "
+                        + header.ledgersCount + " -- found: " + meta.getLedgersMap().size()
+                        + " -- entryLogId: " + entryLogId);
+            }
+            return meta;
+        }
+    }
+
+    private EntryLogMetadata readEntryLogMetadataByScanning(long entryLogId,
+                                                           AbstractLogCompactor.Throttler throttler)
+            throws IOException {
+        final EntryLogMetadata meta = new EntryLogMetadata(entryLogId);
+        scanEntryLog(entryLogId, new EntryLogScanner() {
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                if (throttler != null) {
+                    throttler.acquire(entry.readableBytes());
+                }
+                meta.addLedgerSize(ledgerId, entry.readableBytes() + 4);
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId >= 0;
+            }
+        });
+        return meta;
+    }
+
+    @Override
+    public CompactionEntryLog newCompactionLog(long logToCompact) throws IOException {
+        return DirectCompactionEntryLog.newLog(this, logToCompact, nextLogId());
+    }
+
+    @Override
+    public Collection<CompactionEntryLog> incompleteCompactionLogs() {
+        List<CompactionEntryLog> compactionLogs = new ArrayList<>();
+
+        File[] compactingFiles = ledgerDir.listFiles(file -> file.getName().endsWith(COMPACTING_SUFFIX));
+        if (compactingFiles != null) {
+            for (File file : compactingFiles) {
+                if (file.delete()) {
+                    log.info("Deleted failed compaction file {}", file);
+                }
+            }
+        }
+
+        File[] compactedFiles = ledgerDir.listFiles(file -> file.getName().endsWith(COMPACTED_SUFFIX));
+        if (compactedFiles != null) {
+            for (File compactedFile : compactedFiles) {
+                log.info("Found compacted log file {} has partially flushed index, recovering index.",
+                        compactedFile);
+                String[] parts = compactedFile.getName().split(Pattern.quote("."));
+                try {
+                    if (parts.length != 4) {
+                        throw new NumberFormatException("Unexpected file name");
+                    }
+                    long dstLogId = Long.parseLong(parts[0], 16);
+                    long srcLogId = Long.parseLong(parts[2], 16);
+                    compactionLogs.add(DirectCompactionEntryLog.recoverLog(this, srcLogId, dstLogId));
+                } catch (NumberFormatException nfe) {
+                    log.info("Invalid compacted file found ({}), deleting", compactedFile);
+                    if (!compactedFile.delete()) {
+                        log.warn("Couldn't delete invalid compacted file ({})", compactedFile);
+                    }
+                }
+            }
+        }
+        return compactionLogs;
+    }
+
+    @Override
+    public Collection<Long> getFlushedLogIds() {
+        WriterWithMetadata writer = curWriter;
+        long currentLogId = writer != null ? writer.logId() : -1L;
+
+        List<Long> logIds = new ArrayList<>();
+        for (long logId : listLogIds(EntryLogger.LOG_FILE_SUFFIX)) {
+            if (logId != currentLogId) {
+                logIds.add(logId);
+            }
+        }
+        return logIds;
+    }
+
+    @Override
+    public boolean logExists(long logId) {
+        return logFile(logId).exists();
+    }
+
+    @Override
+    public boolean removeEntryLog(long entryLogId) {
+        // The readers are closed once the reads in progress on them complete
+        pruneReaderCaches();
+        for (Cache<Long, DirectReader> cache : allCaches.values()) {
+            cache.invalidate(entryLogId);
+        }
+
+        File file = logFile(entryLogId);
+        if (!file.exists()) {
+            log.error("Trying to delete an entryLog file that could not be found: {}", file);
+            return false;
+        }
+        if (!file.delete()) {
+            log.warn("Could not delete entry log file {}", file);
+        }
+        return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.info("Stopping direct I/O entry logger on {}", ledgerDir);
+        try {
+            synchronized (writerLock) {
+                if (curWriter != null) {
+                    curWriter.finalizeAndClose();
+                    curWriter = null;
+                }
+            }
+        } finally {
+            for (Cache<Long, DirectReader> cache : allCaches.values()) {
+                cache.invalidateAll();
+            }
+            allCaches.clear();
+            writeBuffers.close();
+        }
+    }
+
+    /**
+     * Close the readers cached by the threads that ended, which would otherwise stay open until the logger is
+     * closed. This runs whenever a thread starts reading and whenever a log is removed.
+     */
+    private void pruneReaderCaches() {
+        Iterator<Map.Entry<Thread, Cache<Long, DirectReader>>> iterator = allCaches.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Thread, Cache<Long, DirectReader>> entry = iterator.next();
+            if (!entry.getKey().isAlive()) {
+                iterator.remove();
+                entry.getValue().invalidateAll();
+            }
+        }
+    }
+
+    WriterWithMetadata newWriter(long logId, File file, EntryLogMetadata metadata) throws IOException {
+        DirectWriter writer = new DirectWriter(logId, file.toString(), maxFileSize, writeBuffers, nativeIO);
+        try {
+            return new WriterWithMetadata(writer, metadata, allocator);
+        } catch (IOException e) {
+            writer.abort();
+            throw e;
+        }
+    }
+
+    private WriterWithMetadata newWriter() throws IOException {
+        long logId = nextLogId();
+        return newWriter(logId, logFile(logId), new EntryLogMetadata(logId));
+    }
+
+    private File logFile(long logId) {
+        return new File(ledgerDir, Long.toHexString(logId) + EntryLogger.LOG_FILE_SUFFIX);
+    }
+
+    private synchronized long nextLogId() {
+        long logId = lastLogId + 1;
+        if (logId >= Integer.MAX_VALUE) {
+            // Log ids are stored in the upper half of the entry locations, reuse the lowest free id
+            logId = 0;
+            for (long usedId : listLogIds(null)) {
+                if (usedId != logId) {
+                    break;
+                }
+                logId++;
+            }
+        }
+        lastLogId = logId;
+        return logId;
+    }
+
+    private long findLastLogId() {
+        TreeSet<Long> logIds = listLogIds(null);
+        return logIds.isEmpty() ? -1L : logIds.last();
+    }
+
+    /**
+     * List the ids of the files in the ledger directory that are named after a log id.
+     * @param suffix only consider the files with this suffix, or all the log related files if null
+     */
+    private TreeSet<Long> listLogIds(String suffix) {
+        TreeSet<Long> logIds = new TreeSet<>();
+        File[] files = ledgerDir.listFiles();
+        if (files == null) {
+            return logIds;
+        }
+        for (File f : files) {
+            String name = f.getName();
+            boolean matches = suffix != null
+                    ? name.endsWith(suffix)
+                    : name.endsWith(EntryLogger.LOG_FILE_SUFFIX) || name.endsWith(COMPACTING_SUFFIX)
+                            || name.endsWith(COMPACTED_SUFFIX);
+            if (!matches) {
+                continue;
+            }
+            try {
+                logIds.add(Long.parseLong(name.substring(0, name.indexOf('.')), 16));
+            } catch (NumberFormatException e) {
+                log.warn("Ignoring file with invalid log id {} in {}", name, ledgerDir);
+            }
+        }
+        return logIds;
+    }
+}
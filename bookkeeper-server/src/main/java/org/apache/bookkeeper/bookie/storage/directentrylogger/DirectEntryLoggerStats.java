@@ -0,0 +1,95 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BOOKIE_SCOPE;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+
+import lombok.Getter;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
+
+/**
+ * An umbrella class for the direct I/O entry logger stats.
+ */
+@StatsDoc(
+    name = BOOKIE_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Direct I/O entry logger related stats"
+)
+@Getter
+class DirectEntryLoggerStats {
+    private static final String ADD_ENTRY = "entrylog-add-entry";
+    private static final String READ_ENTRY = "entrylog-read-entry";
+    private static final String FLUSH = "entrylog-flush";
+    private static final String WRITER_ROLLS = "entrylog-writer-rolls";
+    private static final String READER_OPENS = "entrylog-reader-opens";
+    private static final String READER_CLOSES = "entrylog-reader-closes";
+    private static final String WRITE_BUFFER_WAIT = "entrylog-write-buffer-wait";
+
+    @StatsDoc(
+        name = ADD_ENTRY,
+        help = "operation stats of appending entries to the direct I/O entry logger"
+    )
+    private final OpStatsLogger addEntryStats;
+    @StatsDoc(
+        name = READ_ENTRY,
+        help = "operation stats of reading entries from the direct I/O entry logger"
+    )
+    private final OpStatsLogger readEntryStats;
+    @StatsDoc(
+        name = FLUSH,
+        help = "operation stats of flushing the current direct I/O entry log"
+    )
+    private final OpStatsLogger flushStats;
+    @StatsDoc(
+        name = WRITER_ROLLS,
+        help = "number of times a new entry log was started"
+    )
+    private final Counter writerRolls;
+    @StatsDoc(
+        name = READER_OPENS,
+        help = "number of entry log readers opened"
+    )
+    private final Counter readerOpens;
+    @StatsDoc(
+        name = READER_CLOSES,
+        help = "number of entry log readers closed"
+    )
+    private final Counter readerCloses;
+    @StatsDoc(
+        name = WRITE_BUFFER_WAIT,
+        help = "time spent waiting for a free write buffer when all of them are in use"
+    )
+    private final OpStatsLogger writeBufferWaitStats;
+
+    DirectEntryLoggerStats(StatsLogger stats) {
+        addEntryStats = stats.getOpStatsLogger(ADD_ENTRY);
+        readEntryStats = stats.getOpStatsLogger(READ_ENTRY);
+        flushStats = stats.getOpStatsLogger(FLUSH);
+        writerRolls = stats.getCounter(WRITER_ROLLS);
+        readerOpens = stats.getCounter(READER_OPENS);
+        readerCloses = stats.getCounter(READER_CLOSES);
+        writeBufferWaitStats = stats.getOpStatsLogger(WRITE_BUFFER_WAIT);
+    }
+}
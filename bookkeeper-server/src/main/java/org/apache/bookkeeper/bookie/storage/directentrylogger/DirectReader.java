@@ -0,0 +1,227 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * Reads from a file opened with O_DIRECT through an aligned read buffer.
+ *
+ * <p>The buffer keeps the last aligned block range that was read, so that reading
+ * the size prefix and the payload of an entry, or scanning sequentially, results in
+ * a single pread. The readable limit is asked to the supplied {@link LongSupplier}
+ * before every read, so that bytes past the data already written out by a
+ * concurrent {@link DirectWriter} are never kept in the buffer.
+ *
+ * <p>A reader is reference counted, so that one shared through the reader cache is not closed
+ * under a concurrent read when it gets evicted: the creator owns the first reference, each user
+ * takes another one with {@link #tryRetain()}, and the file is closed once the last one is released.
+ */
+class DirectReader implements AutoCloseable {
+    private final NativeIO nativeIO;
+    private final ByteBufAllocator allocator;
+    private final long logId;
+    private final String filename;
+    private final LongSupplier readableLimit;
+    private final int fd;
+    private final AtomicInteger refCnt = new AtomicInteger(1);
+
+    private Buffer buffer;
+    private long bufferStart = -1;
+    private long bufferEnd = -1;
+
+    DirectReader(long logId, String filename, ByteBufAllocator allocator,
+                 NativeIO nativeIO, int bufferSize, LongSupplier readableLimit) throws IOException {
+        this.nativeIO = nativeIO;
+        this.allocator = allocator;
+        this.logId = logId;
+        this.filename = filename;
+        this.readableLimit = readableLimit;
+        this.buffer = new Buffer(nativeIO, bufferSize);
+        try {
+            this.fd = nativeIO.open(filename, NativeIO.O_RDONLY | NativeIO.O_DIRECT, 0);
+        } catch (IOException e) {
+            buffer.free();
+            throw e;
+        }
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    /**
+     * @return the max offset that can be read from the file, or {@link Long#MAX_VALUE} if the file is sealed
+     */
+    long maxOffset() {
+        return readableLimit.getAsLong();
+    }
+
+    synchronized int readIntAt(long offset) throws IOException {
+        ensureBuffered(offset, Integer.BYTES);
+        return buffer.readInt((int) (offset - bufferStart));
+    }
+
+    synchronized long readLongAt(long offset) throws IOException {
+        ensureBuffered(offset, Long.BYTES);
+        return buffer.readLong((int) (offset - bufferStart));
+    }
+
+    /**
+     * Read size bytes starting at offset into a newly allocated buffer.
+     */
+    synchronized ByteBuf readBufferAt(long offset, int size) throws IOException {
+        ByteBuf buf = allocator.buffer(size, size);
+        try {
+            while (size > 0) {
+                int chunk = Math.min(size, buffer.size() - Buffer.ALIGNMENT);
+                ensureBuffered(offset, chunk);
+                int read = buffer.readByteBuf(buf, (int) (offset - bufferStart), chunk);
+                offset += read;
+                size -= read;
+            }
+            return buf;
+        } catch (IOException | RuntimeException e) {
+            buf.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Read the header block bypassing the read buffer, since it can be rewritten after the log is sealed.
+     */
+    synchronized Header readHeader() throws IOException {
+        invalidate();
+        ByteBuf buf = readBufferAt(0, Header.LOGFILE_LEGACY_HEADER_SIZE);
+        try {
+            return Header.readHeader(logId, buf);
+        } finally {
+            buf.release();
+            invalidate();
+        }
+    }
+
+    private void ensureBuffered(long offset, int size) throws IOException {
+        checkOpen();
+        if (offset >= bufferStart && offset + size <= bufferEnd) {
+            return;
+        }
+
+        long limit = maxOffset();
+        if (offset + size > limit) {
+            throw new EOFException(exMsg("Read past the readable limit").kv("filename", filename)
+                                   .kv("offset", offset).kv("size", size).kv("limit", limit).toString());
+        }
+
+        long blockStart = offset & ~((long) Buffer.ALIGNMENT - 1);
+        long bytesToRead = Math.min(buffer.size(), Buffer.nextAlignment((int) Math.min(limit - blockStart,
+                                                                                      buffer.size())));
+        long rc = nativeIO.pread(fd, buffer.pointer(), bytesToRead, blockStart);
+        if (rc < 0) {
+            invalidate();
+            throw new IOException(exMsg("Failed to read from entry log").kv("filename", filename)
+                                  .kv("offset", blockStart).kv("rc", rc).toString());
+        }
+        bufferStart = blockStart;
+        bufferEnd = blockStart + Math.min(rc, limit - blockStart);
+        if (offset + size > bufferEnd) {
+            throw new EOFException(exMsg("Short read from entry log").kv("filename", filename)
+                                   .kv("offset", offset).kv("size", size).kv("read", rc).toString());
+        }
+    }
+
+    private void invalidate() {
+        bufferStart = -1;
+        bufferEnd = -1;
+    }
+
+    private void checkOpen() throws IOException {
+        if (buffer == null) {
+            throw new IOException(exMsg("Reader is closed").kv("filename", filename).toString());
+        }
+    }
+
+    /**
+     * Take a reference on the reader.
+     * @return false if the reader was already closed, in which case it must not be used
+     */
+    boolean tryRetain() {
+        while (true) {
+            int cnt = refCnt.get();
+            if (cnt <= 0) {
+                return false;
+            }
+            if (refCnt.compareAndSet(cnt, cnt + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Release a reference on the reader, closing it if it was the last one.
+     */
+    void release() throws IOException {
+        while (true) {
+            int cnt = refCnt.get();
+            if (cnt <= 0) {
+                return;
+            }
+            if (refCnt.compareAndSet(cnt, cnt - 1)) {
+                if (cnt == 1) {
+                    closeFile();
+                }
+                return;
+            }
+        }
+    }
+
+    /**
+     * Release the reference of the creator of the reader.
+     */
+    @Override
+    public void close() throws IOException {
+        release();
+    }
+
+    private synchronized void closeFile() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        buffer.free();
+        buffer = null;
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException e) {
+            throw new IOException(exMsg("Failed to close entry log reader").kv("filename", filename).toString(), e);
+        }
+    }
+}
@@ -0,0 +1,226 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends size-delimited records to a file opened with O_DIRECT.
+ *
+ * <p>Records are accumulated in an aligned {@link Buffer} taken from a {@link BufferPool}
+ * and written out with pwrite once the buffer is full or on {@link #flush()}. A partially
+ * filled buffer is padded up to the next alignment boundary before being written, so a
+ * record never straddles two writes and the padding can be recognised by readers.
+ *
+ * <p>This class is not thread safe, callers must serialize access to it.
+ */
+class DirectWriter implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(DirectWriter.class);
+
+    private final NativeIO nativeIO;
+    private final BufferPool bufferPool;
+    private final long logId;
+    private final String filename;
+    private final int fd;
+
+    private Buffer buffer;
+    // File offset at which the content of the buffer will be written
+    private long bufferOffset;
+    // Position up to which the data has been handed to the filesystem
+    private volatile long writtenPosition = 0;
+
+    DirectWriter(long logId, String filename, long maxFileSize,
+                 BufferPool bufferPool, NativeIO nativeIO) throws IOException {
+        this.nativeIO = nativeIO;
+        this.bufferPool = bufferPool;
+        this.logId = logId;
+        this.filename = filename;
+        this.fd = nativeIO.open(filename, NativeIO.O_CREAT | NativeIO.O_WRONLY | NativeIO.O_DIRECT, 00644);
+
+        if (maxFileSize > 0) {
+            try {
+                // Reserve the whole file upfront, so that the appends don't need to update the file metadata
+                nativeIO.fallocate(fd, 0, 0, maxFileSize);
+            } catch (NativeIOException e) {
+                log.info("Could not pre-allocate entry log {} ({}), continuing without pre-allocation",
+                        filename, e.getMessage());
+            }
+        }
+        this.buffer = bufferPool.acquire();
+        this.bufferOffset = 0;
+    }
+
+    long logId() {
+        return logId;
+    }
+
+    String filename() {
+        return filename;
+    }
+
+    /**
+     * @return the file position at which the next record will be appended
+     */
+    long position() {
+        return bufferOffset + buffer.position();
+    }
+
+    /**
+     * @return the file position up to which data is readable from the file
+     */
+    long writtenPosition() {
+        return writtenPosition;
+    }
+
+    /**
+     * @return whether a record of the given size can be added to the buffer without writing it out first
+     */
+    boolean hasSpaceInBuffer(int size) throws IOException {
+        return size <= buffer.size() && buffer.hasSpace(size);
+    }
+
+    /**
+     * Append an int followed by the readable bytes of buf.
+     * @return the position of the first byte of buf in the file
+     */
+    long writeDelimited(ByteBuf buf) throws IOException {
+        int size = buf.readableBytes();
+        if (Integer.BYTES + size > buffer.size()) {
+            return writeLargeDelimited(buf);
+        }
+        if (!buffer.hasSpace(Integer.BYTES + size)) {
+            flushBuffer();
+        }
+        buffer.writeInt(size);
+        long position = position();
+        buffer.writeByteBuf(buf);
+        return position;
+    }
+
+    /**
+     * Append a record that doesn't fit in the buffer, as the other entry loggers accept entries above the sane
+     * size. It starts on an aligned block and is written out through full buffers, which are aligned, so that no
+     * padding ends up in the middle of the record.
+     */
+    private long writeLargeDelimited(ByteBuf buf) throws IOException {
+        flushBuffer();
+        buffer.writeInt(buf.readableBytes());
+        long position = position();
+        while (buf.isReadable()) {
+            int chunk = Math.min(buf.readableBytes(), buffer.size() - buffer.position());
+            buffer.writeByteBuf(buf.readSlice(chunk));
+            if (buffer.position() == buffer.size()) {
+                flushBuffer();
+            }
+        }
+        return position;
+    }
+
+    /**
+     * Append the readable bytes of buf, without any size prefix.
+     */
+    void writeRaw(ByteBuf buf) throws IOException {
+        if (!buffer.hasSpace(buf.readableBytes())) {
+            flushBuffer();
+        }
+        buffer.writeByteBuf(buf);
+    }
+
+    /**
+     * Write an aligned block at an aligned offset that was already written, bypassing the append buffer.
+     * This is used to update the header once the ledgers map has been appended.
+     */
+    void writeAt(long offset, ByteBuf buf) throws IOException {
+        checkArgument(Buffer.isAligned(offset), "Offset not aligned %s", offset);
+        checkArgument(Buffer.isAligned(buf.readableBytes()), "Size not aligned %s", buf.readableBytes());
+
+        Buffer tmp = bufferPool.acquire();
+        try {
+            tmp.writeByteBuf(buf);
+            writeFully(tmp, tmp.position(), offset);
+        } finally {
+            bufferPool.release(tmp);
+        }
+    }
+
+    /**
+     * Write out the buffered data and make it durable.
+     */
+    void flush() throws IOException {
+        flushBuffer();
+        nativeIO.fsync(fd);
+    }
+
+    private void flushBuffer() throws IOException {
+        if (buffer.position() == 0) {
+            return;
+        }
+        int size = buffer.padToAlignment();
+        writeFully(buffer, size, bufferOffset);
+        bufferOffset += size;
+        writtenPosition = bufferOffset;
+        buffer.reset();
+    }
+
+    private void writeFully(Buffer buf, int size, long offset) throws IOException {
+        int written = 0;
+        while (written < size) {
+            int rc = nativeIO.pwrite(fd, buf.pointer(written, size - written), size - written, offset + written);
+            if (rc <= 0) {
+                throw new IOException(exMsg("Failed to write to entry log").kv("filename", filename)
+                                      .kv("offset", offset + written).kv("rc", rc).toString());
+            }
+            written += rc;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            flush();
+        } finally {
+            bufferPool.release(buffer);
+            nativeIO.close(fd);
+        }
+    }
+
+    /**
+     * Release the resources without writing out the buffered data.
+     */
+    void abort() {
+        bufferPool.release(buffer);
+        try {
+            nativeIO.close(fd);
+        } catch (NativeIOException e) {
+            log.warn("Failed to close entry log {}", filename, e);
+        }
+    }
+}
@@ -0,0 +1,121 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.apache.bookkeeper.common.util.ExceptionMessageHelper.exMsg;
+
+import io.netty.buffer.ByteBuf;
+
+import java.io.IOException;
+
+/**
+ * The header of an entry log file written by the {@link DirectEntryLogger}.
+ *
+ * <p>The layout of the first 1024 bytes is the same as the one used by
+ * {@link org.apache.bookkeeper.bookie.DefaultEntryLogger}:
+ * <pre>
+ * Fingerprint: 4 bytes "BKLO"
+ * Log file HeaderVersion enum: 4 bytes
+ * Ledger map offset: 8 bytes
+ * Ledgers Count: 4 bytes
+ * </pre>
+ *
+ * <p>Direct I/O requires the header to fill a whole aligned block, so the
+ * remaining bytes up to {@link Buffer#ALIGNMENT} are taken by a dummy entry
+ * belonging to {@link #INVALID_LID}. Legacy scanners will skip it, which keeps
+ * the files written by both loggers readable by either one.
+ */
+class Header {
+    static final int LOGFILE_LEGACY_HEADER_SIZE = 1024;
+    static final int LOGFILE_DIRECT_HEADER_SIZE = Buffer.ALIGNMENT;
+
+    static final int HEADER_V0 = 0; // Old log file format (no ledgers map index)
+    static final int HEADER_V1 = 1; // Introduced ledger map index
+    static final int HEADER_CURRENT_VERSION = HEADER_V1;
+
+    static final int HEADER_VERSION_POSITION = 4;
+    static final int LEDGERS_MAP_OFFSET_POSITION = HEADER_VERSION_POSITION + 4;
+    static final int LEDGERS_COUNT_POSITION = LEDGERS_MAP_OFFSET_POSITION + 8;
+
+    static final long INVALID_LID = -1L;
+
+    // EntryId used to mark an entry (belonging to INVALID_LID) as a component of the serialized ledgers map
+    static final long LEDGERS_MAP_ENTRY_ID = -2L;
+
+    static final int LEDGERS_MAP_HEADER_SIZE = 4 + 8 + 8 + 4;
+    static final int LEDGERS_MAP_ENTRY_SIZE = 8 + 8;
+
+    // Break the ledgers map into multiple batches, each of which can contain up to 10K ledgers
+    static final int LEDGERS_MAP_MAX_BATCH_SIZE = 10000;
+
+    private static final byte[] FINGERPRINT = "BKLO".getBytes(UTF_8);
+
+    final int version;
+    final long ledgersMapOffset;
+    final int ledgersCount;
+
+    Header(int version, long ledgersMapOffset, int ledgersCount) {
+        this.version = version;
+        this.ledgersMapOffset = ledgersMapOffset;
+        this.ledgersCount = ledgersCount;
+    }
+
+    /**
+     * Write a full header block into the buffer.
+     * @param ledgersMapOffset the offset of the ledgers map, or 0 if it has not been written yet
+     * @param ledgersCount the number of ledgers in the ledgers map
+     */
+    static void writeHeader(ByteBuf buf, long ledgersMapOffset, int ledgersCount) {
+        int start = buf.writerIndex();
+        buf.writeBytes(FINGERPRINT);
+        buf.writeInt(HEADER_CURRENT_VERSION);
+        buf.writeLong(ledgersMapOffset);
+        buf.writeInt(ledgersCount);
+        buf.writeZero(LOGFILE_LEGACY_HEADER_SIZE - (buf.writerIndex() - start));
+
+        // Dummy entry covering the rest of the aligned block
+        buf.writeInt(LOGFILE_DIRECT_HEADER_SIZE - LOGFILE_LEGACY_HEADER_SIZE - Integer.BYTES);
+        buf.writeLong(INVALID_LID);
+        buf.writeZero(LOGFILE_DIRECT_HEADER_SIZE - (buf.writerIndex() - start));
+    }
+
+    static Header readHeader(long logId, ByteBuf buf) throws IOException {
+        if (buf.readableBytes() < LOGFILE_LEGACY_HEADER_SIZE) {
+            throw new IOException(exMsg("Short header read").kv("logId", logId)
+                                  .kv("size", buf.readableBytes()).toString());
+        }
+        int start = buf.readerIndex();
+        for (int i = 0; i < FINGERPRINT.length; i++) {
+            if (buf.getByte(start + i) != FINGERPRINT[i]) {
+                throw new IOException(exMsg("Invalid entry log fingerprint").kv("logId", logId).toString());
+            }
+        }
+        int version = buf.getInt(start + HEADER_VERSION_POSITION);
+        if (version < HEADER_V0 || version > HEADER_CURRENT_VERSION) {
+            throw new IOException(exMsg("Unknown entry log header version").kv("logId", logId)
+                                  .kv("version", version).toString());
+        }
+        long ledgersMapOffset = buf.getLong(start + LEDGERS_MAP_OFFSET_POSITION);
+        int ledgersCount = buf.getInt(start + LEDGERS_COUNT_POSITION);
+        return new Header(version, ledgersMapOffset, ledgersCount);
+    }
+}
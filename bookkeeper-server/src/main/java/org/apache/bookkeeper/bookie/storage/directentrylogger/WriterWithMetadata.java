@@ -0,0 +1,151 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+
+/**
+ * An entry log being written, along with the ledgers map that gets appended
+ * to it when it is finalized.
+ */
+class WriterWithMetadata {
+    private final DirectWriter writer;
+    private final EntryLogMetadata metadata;
+    private final ByteBufAllocator allocator;
+
+    WriterWithMetadata(DirectWriter writer, EntryLogMetadata metadata,
+                       ByteBufAllocator allocator) throws IOException {
+        this.writer = writer;
+        this.metadata = metadata;
+        this.allocator = allocator;
+
+        ByteBuf header = allocator.directBuffer(Header.LOGFILE_DIRECT_HEADER_SIZE);
+        try {
+            Header.writeHeader(header, 0L, 0);
+            writer.writeRaw(header);
+        } finally {
+            header.release();
+        }
+    }
+
+    long logId() {
+        return writer.logId();
+    }
+
+    long position() {
+        return writer.position();
+    }
+
+    long writtenPosition() {
+        return writer.writtenPosition();
+    }
+
+    /**
+     * @return whether adding an entry of the given size would make the log grow past maxFileSize
+     */
+    boolean shouldRoll(ByteBuf entry, long maxFileSize) throws IOException {
+        int recordSize = Integer.BYTES + entry.readableBytes();
+        long position = writer.position();
+        if (!writer.hasSpaceInBuffer(recordSize)) {
+            // The buffer will be padded before the entry is added
+            position = (position + Buffer.ALIGNMENT - 1) & ~((long) Buffer.ALIGNMENT - 1);
+        }
+        return position + recordSize > maxFileSize;
+    }
+
+    long addEntry(long ledgerId, ByteBuf entry) throws IOException {
+        int size = entry.readableBytes();
+        long pos = writer.writeDelimited(entry);
+        metadata.addLedgerSize(ledgerId, size + Integer.BYTES);
+        return (writer.logId() << 32L) | pos;
+    }
+
+    void flush() throws IOException {
+        writer.flush();
+    }
+
+    /**
+     * Append the ledgers map, point the header to it and close the log.
+     */
+    void finalizeAndClose() throws IOException {
+        long ledgersMapOffset = -1L;
+        int numberOfLedgers = (int) metadata.getLedgersMap().size();
+
+        int maxMapSize = Header.LEDGERS_MAP_HEADER_SIZE
+                + Header.LEDGERS_MAP_ENTRY_SIZE * Header.LEDGERS_MAP_MAX_BATCH_SIZE;
+        ByteBuf serializedMap = allocator.buffer(maxMapSize);
+        try {
+            long[] ledgers = new long[numberOfLedgers];
+            long[] sizes = new long[numberOfLedgers];
+            int[] idx = new int[1];
+            metadata.getLedgersMap().forEach((ledgerId, size) -> {
+                if (idx[0] < ledgers.length) {
+                    ledgers[idx[0]] = ledgerId;
+                    sizes[idx[0]] = size;
+                    idx[0]++;
+                }
+            });
+            numberOfLedgers = idx[0];
+
+            for (int start = 0; start < numberOfLedgers; start += Header.LEDGERS_MAP_MAX_BATCH_SIZE) {
+                int batchSize = Math.min(numberOfLedgers - start, Header.LEDGERS_MAP_MAX_BATCH_SIZE);
+                serializedMap.clear();
+                serializedMap.writeLong(Header.INVALID_LID);
+                serializedMap.writeLong(Header.LEDGERS_MAP_ENTRY_ID);
+                serializedMap.writeInt(batchSize);
+                for (int i = start; i < start + batchSize; i++) {
+                    serializedMap.writeLong(ledgers[i]);
+                    serializedMap.writeLong(sizes[i]);
+                }
+
+                long pos = writer.writeDelimited(serializedMap);
+                if (ledgersMapOffset < 0) {
+                    ledgersMapOffset = pos - Integer.BYTES;
+                }
+            }
+        } finally {
+            serializedMap.release();
+        }
+
+        // Make sure the map is on disk before the header points to it
+        writer.flush();
+
+        if (ledgersMapOffset > 0) {
+            ByteBuf header = allocator.directBuffer(Header.LOGFILE_DIRECT_HEADER_SIZE);
+            try {
+                Header.writeHeader(header, ledgersMapOffset, numberOfLedgers);
+                writer.writeAt(0, header);
+            } finally {
+                header.release();
+            }
+        }
+        writer.close();
+    }
+
+    void abort() {
+        writer.abort();
+    }
+}
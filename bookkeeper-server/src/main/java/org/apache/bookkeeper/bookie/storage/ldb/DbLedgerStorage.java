@@ -28,6 +28,7 @@ import com.google.common.collect.Lists;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 //CHECKSTYLE.OFF: IllegalImport
 import io.netty.util.internal.PlatformDependent;
@@ -39,6 +40,7 @@ import java.util.ArrayList;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 
@@ -49,6 +51,7 @@ import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.bookie.CheckpointSource;
 import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
 import org.apache.bookkeeper.bookie.Checkpointer;
+import org.apache.bookkeeper.bookie.GarbageCollectionCoordinator;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.bookie.LedgerCache;
@@ -91,6 +94,27 @@ public class DbLedgerStorage implements LedgerStorage {
     static final String READ_AHEAD_CACHE_BATCH_SIZE = "dbStorage_readAheadCacheBatchSize";
     private static final int DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE = 100;
 
+    static final String READ_AHEAD_CACHE_ADAPTIVE_ENABLED = "dbStorage_readAheadCacheAdaptiveEnabled";
+    static final String READ_AHEAD_CACHE_MAX_BATCH_SIZE = "dbStorage_readAheadCacheMaxBatchSize";
+    static final int DEFAULT_READ_AHEAD_CACHE_MAX_BATCH_SIZE_MULTIPLIER = 10;
+
+    static final String FLUSH_WORKER_THREADS = "dbStorage_flushWorkerThreads";
+    static final int DEFAULT_FLUSH_WORKER_THREADS = 1;
+
+    static final String READ_IO_THREADS = "dbStorage_readIOThreads";
+    static final int DEFAULT_READ_IO_THREADS = 0;
+    static final String READ_IO_MAX_QUEUE_DEPTH = "dbStorage_readIOMaxQueueDepth";
+    static final int DEFAULT_READ_IO_MAX_QUEUE_DEPTH = 64;
+
+    static final String OFF_HEAP_INDEX_ENABLED = "dbStorage_offHeapIndexEnabled";
+    static final boolean DEFAULT_OFF_HEAP_INDEX_ENABLED = false;
+
+    static final String GC_COORDINATION_ENABLED = "dbStorage_gcCoordinationEnabled";
+    static final boolean DEFAULT_GC_COORDINATION_ENABLED = false;
+
+    static final String LOCATIONS_INGESTION_MIN_ENTRIES = "dbStorage_locationsIngestionMinEntries";
+    static final int DEFAULT_LOCATIONS_INGESTION_MIN_ENTRIES = 0;
+
     // use the storage assigned to ledger 0 for flags.
     // if the storage configuration changes, the flags may be lost
     // but in that case data integrity should kick off anyhow.
@@ -101,6 +125,9 @@ public class DbLedgerStorage implements LedgerStorage {
     // Keep 1 single Bookie GC thread so the the compactions from multiple individual directories are serialized
     private ScheduledExecutorService gcExecutor;
 
+    // Shares the listing of the metadata store and the compaction budget across the directories, null when disabled
+    private GarbageCollectionCoordinator gcCoordinator;
+
     protected ByteBufAllocator allocator;
 
     // parent DbLedgerStorage stats (not per directory)
@@ -145,6 +172,9 @@ public class DbLedgerStorage implements LedgerStorage {
         int readAheadCacheBatchSize = conf.getInt(READ_AHEAD_CACHE_BATCH_SIZE, DEFAULT_READ_AHEAD_CACHE_BATCH_SIZE);
 
         gcExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("GarbageCollector"));
+        if (conf.getBoolean(GC_COORDINATION_ENABLED, DEFAULT_GC_COORDINATION_ENABLED)) {
+            gcCoordinator = new GarbageCollectionCoordinator(conf, ledgerManager);
+        }
 
         ledgerStorageList = Lists.newArrayList();
         for (File ledgerDir : ledgerDirsManager.getAllLedgerDirs()) {
@@ -195,7 +225,7 @@ public class DbLedgerStorage implements LedgerStorage {
             throws IOException {
         return new SingleDirectoryDbLedgerStorage(conf, ledgerManager, ledgerDirsManager, indexDirsManager,
                                                   statsLogger, allocator, gcExecutor, writeCacheSize, readCacheSize,
-                                                  readAheadCacheBatchSize);
+                                                  readAheadCacheBatchSize, gcCoordinator);
     }
 
     @Override
@@ -264,6 +294,22 @@ public class DbLedgerStorage implements LedgerStorage {
         return getLedgerStorage(ledgerId).getEntry(ledgerId, entryId);
     }
 
+    @Override
+    public CompletableFuture<ByteBuf> getEntryAsync(long ledgerId, long entryId) {
+        return getLedgerStorage(ledgerId).getEntryAsync(ledgerId, entryId);
+    }
+
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).getEntryRegion(ledgerId, entryId, minSize);
+    }
+
+    @Override
+    public List<ByteBuf> batchGetEntries(long ledgerId, long startEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        return getLedgerStorage(ledgerId).batchGetEntries(ledgerId, startEntryId, maxCount, maxSize);
+    }
+
     @Override
     public long getLastAddConfirmed(long ledgerId) throws IOException, BookieException {
         return getLedgerStorage(ledgerId).getLastAddConfirmed(ledgerId);
@@ -45,6 +45,8 @@ class DbLedgerStorageStats {
 
     private static final String ADD_ENTRY = "add-entry";
     private static final String READ_ENTRY = "read-entry";
+    private static final String BATCH_READ_ENTRY = "batch-read-entry";
+    private static final String BATCH_READ_ENTRY_COUNT = "batch-read-entry-count";
     private static final String READ_ENTRY_LOCATIONS_INDEX_TIME = "read-locations-index-time";
     private static final String READ_ENTRYLOG_TIME = "read-entrylog-time";
     private static final String WRITE_CACHE_HITS = "write-cache-hits";
@@ -54,6 +56,10 @@ class DbLedgerStorageStats {
     private static final String READAHEAD_BATCH_COUNT = "readahead-batch-count";
     private static final String READAHEAD_BATCH_SIZE = "readahead-batch-size";
     private static final String READAHEAD_TIME = "readahead-time";
+    private static final String READAHEAD_HITS = "readahead-hits";
+    private static final String READAHEAD_WASTED_BYTES = "readahead-wasted-bytes";
+    private static final String READAHEAD_SKIPPED = "readahead-skipped";
+    private static final String READ_IO_QUEUE_FULL = "read-io-queue-full";
     private static final String FLUSH = "flush";
     private static final String FLUSH_ENTRYLOG = "flush-entrylog";
     private static final String FLUSH_LOCATIONS_INDEX = "flush-locations-index";
@@ -69,6 +75,8 @@ class DbLedgerStorageStats {
     private static final String WRITE_CACHE_COUNT = "write-cache-count";
     private static final String READ_CACHE_SIZE = "read-cache-size";
     private static final String READ_CACHE_COUNT = "read-cache-count";
+    private static final String WRITE_CACHE_INDEX_SIZE = "write-cache-index-size";
+    private static final String READ_CACHE_INDEX_SIZE = "read-cache-index-size";
 
     @StatsDoc(
         name = ADD_ENTRY,
@@ -82,6 +90,17 @@ class DbLedgerStorageStats {
         parent = BOOKIE_ADD_ENTRY
     )
     private final OpStatsLogger readEntryStats;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY,
+        help = "operation stats of reading batches of consecutive entries from db ledger storage"
+    )
+    private final OpStatsLogger batchReadEntryStats;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY_COUNT,
+        help = "the distribution of num of entries returned in one batch read",
+        parent = BATCH_READ_ENTRY
+    )
+    private final OpStatsLogger batchReadEntryCountStats;
     @StatsDoc(
             name = READ_ENTRY_LOCATIONS_INDEX_TIME,
             help = "time spent reading entries from the locations index of the db ledger storage engine",
@@ -133,6 +152,27 @@ class DbLedgerStorageStats {
             help = "Time spent on readahead operations"
     )
     private final Counter readAheadTime;
+    @StatsDoc(
+        name = READAHEAD_HITS,
+        help = "number of reads served by entries loaded in the read cache by readahead"
+    )
+    private final Counter readAheadHitCounter;
+    @StatsDoc(
+        name = READAHEAD_WASTED_BYTES,
+        help = "estimated num of bytes loaded by readahead which were never read"
+    )
+    private final Counter readAheadWastedBytesCounter;
+    @StatsDoc(
+        name = READAHEAD_SKIPPED,
+        help = "number of read cache misses for which readahead was disabled due to a random access pattern"
+    )
+    private final Counter readAheadSkippedCounter;
+    @StatsDoc(
+        name = READ_IO_QUEUE_FULL,
+        help = "number of asynchronous reads rejected because the read I/O queue of the ledger directory was full",
+        parent = READ_ENTRY
+    )
+    private final Counter readIOQueueFullCounter;
     @StatsDoc(
         name = FLUSH,
         help = "operation stats of flushing write cache to entry log files"
@@ -194,14 +234,28 @@ class DbLedgerStorageStats {
         help = "Current number of entries in read cache"
     )
     private final Gauge<Long> readCacheCountGauge;
+    @StatsDoc(
+        name = WRITE_CACHE_INDEX_SIZE,
+        help = "Current number of bytes used by the index of the write cache"
+    )
+    private final Gauge<Long> writeCacheIndexSizeGauge;
+    @StatsDoc(
+        name = READ_CACHE_INDEX_SIZE,
+        help = "Current number of bytes used by the index of the read cache"
+    )
+    private final Gauge<Long> readCacheIndexSizeGauge;
 
     DbLedgerStorageStats(StatsLogger stats,
                          Supplier<Long> writeCacheSizeSupplier,
                          Supplier<Long> writeCacheCountSupplier,
                          Supplier<Long> readCacheSizeSupplier,
-                         Supplier<Long> readCacheCountSupplier) {
+                         Supplier<Long> readCacheCountSupplier,
+                         Supplier<Long> writeCacheIndexSizeSupplier,
+                         Supplier<Long> readCacheIndexSizeSupplier) {
         addEntryStats = stats.getThreadScopedOpStatsLogger(ADD_ENTRY);
         readEntryStats = stats.getThreadScopedOpStatsLogger(READ_ENTRY);
+        batchReadEntryStats = stats.getOpStatsLogger(BATCH_READ_ENTRY);
+        batchReadEntryCountStats = stats.getOpStatsLogger(BATCH_READ_ENTRY_COUNT);
         readFromLocationIndexTime = stats.getThreadScopedCounter(READ_ENTRY_LOCATIONS_INDEX_TIME);
         readFromEntryLogTime = stats.getThreadScopedCounter(READ_ENTRYLOG_TIME);
         readCacheHitCounter = stats.getCounter(READ_CACHE_HITS);
@@ -211,6 +265,10 @@ class DbLedgerStorageStats {
         readAheadBatchCountStats = stats.getOpStatsLogger(READAHEAD_BATCH_COUNT);
         readAheadBatchSizeStats = stats.getOpStatsLogger(READAHEAD_BATCH_SIZE);
         readAheadTime = stats.getThreadScopedCounter(READAHEAD_TIME);
+        readAheadHitCounter = stats.getCounter(READAHEAD_HITS);
+        readAheadWastedBytesCounter = stats.getCounter(READAHEAD_WASTED_BYTES);
+        readAheadSkippedCounter = stats.getCounter(READAHEAD_SKIPPED);
+        readIOQueueFullCounter = stats.getCounter(READ_IO_QUEUE_FULL);
         flushStats = stats.getOpStatsLogger(FLUSH);
         flushEntryLogStats = stats.getOpStatsLogger(FLUSH_ENTRYLOG);
         flushLocationIndexStats = stats.getOpStatsLogger(FLUSH_LOCATIONS_INDEX);
@@ -270,6 +328,30 @@ class DbLedgerStorageStats {
             }
         };
         stats.registerGauge(READ_CACHE_COUNT, readCacheCountGauge);
+        writeCacheIndexSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return writeCacheIndexSizeSupplier.get();
+            }
+        };
+        stats.registerGauge(WRITE_CACHE_INDEX_SIZE, writeCacheIndexSizeGauge);
+        readCacheIndexSizeGauge = new Gauge<Long>() {
+            @Override
+            public Long getDefaultValue() {
+                return 0L;
+            }
+
+            @Override
+            public Long getSample() {
+                return readCacheIndexSizeSupplier.get();
+            }
+        };
+        stats.registerGauge(READ_CACHE_INDEX_SIZE, readCacheIndexSizeGauge);
     }
 
 }
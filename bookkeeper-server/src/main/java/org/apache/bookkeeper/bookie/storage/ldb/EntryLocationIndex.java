@@ -21,9 +21,12 @@
 package org.apache.bookkeeper.bookie.storage.ldb;
 
 import com.google.common.collect.Iterables;
+import com.google.common.collect.Lists;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +34,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.EntryLocation;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.CloseableIterator;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.stats.StatsLogger;
@@ -51,9 +55,14 @@ public class EntryLocationIndex implements Closeable {
 
     private final EntryLocationIndexStats stats;
 
+    // Minimum number of relocated entries for which the new locations are ingested as a sorted file, 0 to disable
+    private final int ingestionMinEntries;
+
     public EntryLocationIndex(ServerConfiguration conf, KeyValueStorageFactory storageFactory, String basePath,
             StatsLogger stats) throws IOException {
         locationsDb = storageFactory.newKeyValueStorage(basePath, "locations", DbConfigType.EntryLocation, conf);
+        ingestionMinEntries = conf.getInt(DbLedgerStorage.LOCATIONS_INGESTION_MIN_ENTRIES,
+                DbLedgerStorage.DEFAULT_LOCATIONS_INGESTION_MIN_ENTRIES);
 
         this.stats = new EntryLocationIndexStats(
             stats,
@@ -90,6 +99,48 @@ public class EntryLocationIndex implements Closeable {
         }
     }
 
+    /**
+     * Get the locations of consecutive entries of a ledger, starting from firstEntryId, with a single
+     * range scan over the index.
+     *
+     * @param locations the array to fill with the locations, its length is the max number of entries to look up
+     * @return the number of consecutive entries found, whose locations have been stored in the array
+     */
+    public int getLocations(long ledgerId, long firstEntryId, long[] locations) throws IOException {
+        if (locations.length == 0) {
+            return 0;
+        }
+
+        long lastEntryId = firstEntryId + locations.length;
+        if (lastEntryId < firstEntryId) {
+            // Overflow
+            lastEntryId = Long.MAX_VALUE;
+        }
+        LongPairWrapper firstKey = LongPairWrapper.get(ledgerId, firstEntryId);
+        LongPairWrapper lastKey = LongPairWrapper.get(ledgerId, lastEntryId);
+
+        int count = 0;
+        try (CloseableIterator<Entry<byte[], byte[]>> iterator = locationsDb.iterator(firstKey.array, lastKey.array)) {
+            while (count < locations.length && iterator.hasNext()) {
+                Entry<byte[], byte[]> entry = iterator.next();
+                long entryId = ArrayUtil.getLong(entry.getKey(), 8);
+                if (entryId != firstEntryId + count) {
+                    // Stop at the first missing entry
+                    break;
+                }
+                locations[count++] = ArrayUtil.getLong(entry.getValue(), 0);
+            }
+        } finally {
+            firstKey.recycle();
+            lastKey.recycle();
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Found {} consecutive entries from {}@{} in db index", count, ledgerId, firstEntryId);
+        }
+        return count;
+    }
+
     public long getLastEntryInLedger(long ledgerId) throws IOException {
         if (deletedLedgers.contains(ledgerId)) {
             // Ledger already deleted
@@ -162,6 +213,11 @@ public class EntryLocationIndex implements Closeable {
             log.debug("Update locations -- {}", Iterables.size(newLocations));
         }
 
+        if (ingestionMinEntries > 0 && Iterables.size(newLocations) >= ingestionMinEntries) {
+            ingestLocations(newLocations);
+            return;
+        }
+
         Batch batch = newBatch();
         // Update all the ledger index pages with the new locations
         for (EntryLocation e : newLocations) {
@@ -176,6 +232,42 @@ public class EntryLocationIndex implements Closeable {
         batch.close();
     }
 
+    /**
+     * Write the new locations of a large set of entries, typically relocated by the compaction, as a sorted
+     * file ingested in the index, rather than through the write path of the storage.
+     */
+    private void ingestLocations(Iterable<EntryLocation> newLocations) throws IOException {
+        long startTime = System.nanoTime();
+        List<EntryLocation> sortedLocations = Lists.newArrayList(newLocations);
+        // The sort is stable, so that the last location of an entry wins if it was relocated more than once
+        sortedLocations.sort(Comparator.<EntryLocation>comparingLong(e -> e.ledger).thenComparingLong(e -> e.entry));
+
+        LongPairWrapper key = LongPairWrapper.get(-1, -1);
+        LongWrapper value = LongWrapper.get();
+        try (KeyValueStorage.SortedWriter writer = locationsDb.newSortedWriter()) {
+            int size = sortedLocations.size();
+            for (int i = 0; i < size; i++) {
+                EntryLocation e = sortedLocations.get(i);
+                if (i + 1 < size && sortedLocations.get(i + 1).ledger == e.ledger
+                        && sortedLocations.get(i + 1).entry == e.entry) {
+                    // Keys must be strictly increasing, skip the locations that are overridden
+                    continue;
+                }
+
+                key.set(e.ledger, e.entry);
+                value.set(e.location);
+                writer.put(key.array, value.array);
+            }
+            writer.commit();
+        } finally {
+            key.recycle();
+            value.recycle();
+        }
+
+        log.info("Ingested {} entry locations in {} ms", sortedLocations.size(),
+                TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startTime));
+    }
+
     public void delete(long ledgerId) throws IOException {
         // We need to find all the LedgerIndexPage records belonging to one specific
         // ledgers
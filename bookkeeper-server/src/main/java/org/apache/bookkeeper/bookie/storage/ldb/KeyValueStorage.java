@@ -132,6 +132,17 @@ public interface KeyValueStorage extends Closeable {
      */
     CloseableIterator<Entry<byte[], byte[]>> iterator();
 
+    /**
+     * Return an iterator object that can be used to sequentially scan through the
+     * entries within a specified range.
+     *
+     * @param firstKey
+     *            the first key in the range (included)
+     * @param lastKey
+     *            the lastKey in the range (not included)
+     */
+    CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey);
+
     /**
      * Commit all pending write to durable storage.
      */
@@ -155,6 +166,33 @@ public interface KeyValueStorage extends Closeable {
 
     Batch newBatch();
 
+    /**
+     * Create a writer for a set of entries provided in increasing order of their keys, which are all made visible
+     * atomically when the writer is committed.
+     *
+     * <p>Implementations can take advantage of the ordering to write large sets of entries without going through
+     * their regular write path. The default implementation writes the entries through a {@link Batch}.
+     */
+    default SortedWriter newSortedWriter() throws IOException {
+        Batch batch = newBatch();
+        return new SortedWriter() {
+            @Override
+            public void put(byte[] key, byte[] value) throws IOException {
+                batch.put(key, value);
+            }
+
+            @Override
+            public void commit() throws IOException {
+                batch.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                batch.close();
+            }
+        };
+    }
+
     /**
      * Interface for a batch to be written in the storage.
      */
@@ -169,4 +207,19 @@ public interface KeyValueStorage extends Closeable {
 
         void flush() throws IOException;
     }
+
+    /**
+     * Interface for a set of entries, sorted by key, to be written in the storage.
+     */
+    interface SortedWriter extends Closeable {
+        /**
+         * Add an entry, whose key must be strictly greater than the key of the previous entry.
+         */
+        void put(byte[] key, byte[] value) throws IOException;
+
+        /**
+         * Write all the entries in the storage.
+         */
+        void commit() throws IOException;
+    }
 }
@@ -23,25 +23,33 @@ package org.apache.bookkeeper.bookie.storage.ldb;
 import static com.google.common.base.Preconditions.checkState;
 
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
+import java.io.File;
 import java.io.IOException;
 import java.nio.file.FileSystems;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.rocksdb.ColumnFamilyDescriptor;
 import org.rocksdb.ColumnFamilyHandle;
+import org.rocksdb.ColumnFamilyOptions;
 import org.rocksdb.DBOptions;
 import org.rocksdb.Env;
+import org.rocksdb.EnvOptions;
+import org.rocksdb.IngestExternalFileOptions;
+import org.rocksdb.Options;
 import org.rocksdb.OptionsUtil;
 import org.rocksdb.ReadOptions;
 import org.rocksdb.RocksDB;
 import org.rocksdb.RocksDBException;
 import org.rocksdb.RocksIterator;
 import org.rocksdb.Slice;
+import org.rocksdb.SstFileWriter;
 import org.rocksdb.WriteBatch;
 import org.rocksdb.WriteOptions;
 import org.slf4j.Logger;
@@ -56,6 +64,10 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
             new KeyValueStorageRocksDB(defaultBasePath, subPath, dbConfigType, conf);
 
     private final RocksDB db;
+    private final DBOptions dbOptions;
+    private final ColumnFamilyOptions columnFamilyOptions;
+    private final File ingestionDir;
+    private final AtomicLong ingestionFileId = new AtomicLong();
 
     private final WriteOptions optionSync;
     private final WriteOptions optionDontSync;
@@ -87,7 +99,7 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         this.emptyBatch = new WriteBatch();
 
         String dbFilePath = "";
-        DBOptions dbOptions = new DBOptions();
+        this.dbOptions = new DBOptions();
         final List<ColumnFamilyDescriptor> cfDescs = new ArrayList<>();
         final List<ColumnFamilyHandle> cfHandles = new ArrayList<>();
         try {
@@ -109,15 +121,20 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
                 dbOptions.setDbLogDir(logPathSetting.toString());
             }
             String path = FileSystems.getDefault().getPath(basePath, subPath).toFile().toString();
+            // The sorted files to ingest are written next to the database, on the same file system
+            this.ingestionDir = FileSystems.getDefault().getPath(basePath, subPath + "-ingest").toFile();
 
             if (readOnly) {
                 db = RocksDB.openReadOnly(dbOptions, path, cfDescs, cfHandles);
             } else {
+                deleteIngestionFiles();
                 db = RocksDB.open(dbOptions, path, cfDescs, cfHandles);
             }
         } catch (RocksDBException e) {
             throw new IOException("Error open RocksDB database", e);
         }
+        // Options of the default column family, used to write the files to ingest in the same format
+        this.columnFamilyOptions = cfDescs.get(0).getOptions();
 
         optionSync.setSync(true);
         optionDontSync.setSync(false);
@@ -134,6 +151,22 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         optionCache.close();
         optionDontCache.close();
         emptyBatch.close();
+        columnFamilyOptions.close();
+        dbOptions.close();
+    }
+
+    /**
+     * Delete the files left over by the sorted writers that were interrupted by a crash before being ingested.
+     */
+    private void deleteIngestionFiles() throws IOException {
+        File[] files = ingestionDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            log.info("Deleting RocksDB file that was never ingested: {}", file);
+            Files.deleteIfExists(file.toPath());
+        }
     }
 
     @Override
@@ -310,6 +343,38 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         };
     }
 
+    @Override
+    public CloseableIterator<Entry<byte[], byte[]>> iterator(byte[] firstKey, byte[] lastKey) {
+        final Slice upperBound = new Slice(lastKey);
+        final ReadOptions option = new ReadOptions(optionCache).setIterateUpperBound(upperBound);
+        final RocksIterator iterator = db.newIterator(option);
+        iterator.seek(firstKey);
+        final EntryWrapper entryWrapper = new EntryWrapper();
+
+        return new CloseableIterator<Entry<byte[], byte[]>>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.isValid();
+            }
+
+            @Override
+            public Entry<byte[], byte[]> next() {
+                checkState(iterator.isValid());
+                entryWrapper.key = iterator.key();
+                entryWrapper.value = iterator.value();
+                iterator.next();
+                return entryWrapper;
+            }
+
+            @Override
+            public void close() {
+                iterator.close();
+                option.close();
+                upperBound.close();
+            }
+        };
+    }
+
     @Override
     public long count() throws IOException {
         try {
@@ -324,6 +389,71 @@ public class KeyValueStorageRocksDB implements KeyValueStorage {
         return new RocksDBBatch();
     }
 
+    @Override
+    public SortedWriter newSortedWriter() throws IOException {
+        return new RocksDBSortedWriter();
+    }
+
+    /**
+     * Writes the entries into an SST file, which is then ingested in the database. The entries skip the WAL and
+     * the memtable, and the file is placed in the LSM tree as a whole, with a sequence number above all the
+     * existing entries.
+     */
+    private class RocksDBSortedWriter implements SortedWriter {
+        private final EnvOptions envOptions = new EnvOptions();
+        private final Options options = new Options(dbOptions, columnFamilyOptions);
+        private final SstFileWriter sstFileWriter = new SstFileWriter(envOptions, options);
+        private final File file;
+        private boolean empty = true;
+
+        RocksDBSortedWriter() throws IOException {
+            file = new File(ingestionDir, ingestionFileId.incrementAndGet() + "-" + System.nanoTime() + ".sst");
+            try {
+                Files.createDirectories(ingestionDir.toPath());
+                sstFileWriter.open(file.getPath());
+            } catch (IOException | RocksDBException e) {
+                close();
+                throw new IOException("Failed to create RocksDB file to ingest " + file, e);
+            }
+        }
+
+        @Override
+        public void put(byte[] key, byte[] value) throws IOException {
+            try {
+                sstFileWriter.put(key, value);
+                empty = false;
+            } catch (RocksDBException e) {
+                throw new IOException("Failed to write RocksDB file to ingest " + file, e);
+            }
+        }
+
+        @Override
+        public void commit() throws IOException {
+            if (empty) {
+                return;
+            }
+
+            try (IngestExternalFileOptions ingestOptions = new IngestExternalFileOptions()) {
+                sstFileWriter.finish();
+                // Hard link the file into the database instead of copying it
+                ingestOptions.setMoveFiles(true);
+                db.ingestExternalFile(Collections.singletonList(file.getPath()), ingestOptions);
+            } catch (RocksDBException e) {
+                throw new IOException("Failed to ingest RocksDB file " + file, e);
+            }
+        }
+
+        @Override
+        public void close() {
+            sstFileWriter.close();
+            options.close();
+            envOptions.close();
+            if (file.exists() && !file.delete()) {
+                log.warn("Failed to delete RocksDB file to ingest {}", file);
+            }
+        }
+    }
+
     private class RocksDBBatch implements Batch {
         private final WriteBatch writeBatch = new WriteBatch();
 
@@ -20,12 +20,10 @@
  */
 package org.apache.bookkeeper.bookie.storage.ldb;
 
-import com.google.common.collect.Lists;
 import com.google.protobuf.ByteString;
 import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
-import java.io.File;
 import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.file.FileSystems;
@@ -43,7 +41,6 @@ import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
 import org.apache.bookkeeper.conf.ServerConfiguration;
-import org.apache.bookkeeper.util.BookKeeperConstants;
 import org.apache.bookkeeper.util.DiskChecker;
 
 import org.slf4j.Logger;
@@ -184,15 +181,9 @@ public class LedgersIndexRebuildOp {
     }
 
     private List<Journal> getJournals(ServerConfiguration conf) throws IOException {
-        List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-        int idx = 0;
-        for (File journalDir : conf.getJournalDirs()) {
-            journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
-                    new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                            new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
-        }
-
-        return journals;
+        // include all the journal stripes of each directory
+        return Journal.newJournalsOfStripesInUse(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
     }
 
     private void scanJournal(Journal journal, long journalId, Set<Long> ledgers) throws IOException {
@@ -25,15 +25,23 @@ import static org.apache.bookkeeper.bookie.storage.ldb.WriteCache.align64;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.Closeable;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.bookkeeper.util.collections.LongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.OffHeapLongLongPairHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -46,6 +54,21 @@ import org.slf4j.LoggerFactory;
  * ring-buffer fashion. When the read cache is full, the oldest segment
  * is cleared and rotated to make space for new entries to be added to
  * the read cache.
+ *
+ * <p>Every time the cache rolls over to the next segment, a new segment
+ * generation is started. The current generation and the write offset within
+ * its segment are packed in a single atomic long, so that reserving space and
+ * rolling over are both a single CAS. All the segments share one index, keyed
+ * by (ledgerId, entryId), that stores the generation and the position of the
+ * entry. A lookup whose generation has already been recycled is detected as
+ * stale and discarded, so readers never need to take a lock.
+ *
+ * <p>Writers register in the segment they write to before reserving their
+ * space, and a segment is only recycled once all the writers of its previous
+ * generation are done, so a stalled writer can never overwrite the entries of
+ * a newer generation. Until then, the entries that would need the segment are
+ * not cached. The index entries of the recycled segments are dropped
+ * in the background, in batches of several segments, by a thread of the cache.
  */
 public class ReadCache implements Closeable {
     private static final Logger log = LoggerFactory.getLogger(ReadCache.class);
@@ -53,179 +76,273 @@ public class ReadCache implements Closeable {
     private static final int DEFAULT_MAX_SEGMENT_SIZE = 1 * 1024 * 1024 * 1024;
 
     private final List<ByteBuf> cacheSegments;
-    private final List<ConcurrentLongLongPairHashMap> cacheIndexes;
-
-    private int currentSegmentIdx;
-    private final AtomicInteger currentSegmentOffset = new AtomicInteger(0);
-
+    private final LongLongPairHashMap cacheIndex;
+
+    // Current segment generation (upper 32 bits) and write offset in its segment (lower 32 bits)
+    private final AtomicLong writeState = new AtomicLong(0);
+    // Number of writers copying an entry in each segment
+    private final AtomicIntegerArray segmentWriters;
+    // Generation (upper 32 bits) and number of entries (lower 32 bits) of each segment
+    private final AtomicLongArray segmentEntries;
+
+    // Drops the index entries of the recycled segments, away from the put() callers
+    private final ExecutorService cleanupExecutor =
+            Executors.newSingleThreadExecutor(new DefaultThreadFactory("read-cache-cleanup", true));
+    private final AtomicBoolean cleanupScheduled = new AtomicBoolean(false);
+    // Last generation whose index entries were dropped, only updated by the cleanup task
+    private volatile long cleanedGeneration = -1;
+    private boolean closed = false;
+
+    private final int segmentsCount;
     private final int segmentSize;
+    // Number of recycled segments to wait for before scanning the index
+    private final int cleanupBatchSegments;
 
     private ByteBufAllocator allocator;
-    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
 
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize) {
         this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE);
     }
 
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, boolean offHeapIndex) {
+        this(allocator, maxCacheSize, DEFAULT_MAX_SEGMENT_SIZE, offHeapIndex);
+    }
+
     public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, false);
+    }
+
+    /**
+     * @param offHeapIndex whether the index of the cached entries should be allocated through the allocator,
+     *                     outside of the Java heap, instead of using an on-heap hash map
+     */
+    public ReadCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean offHeapIndex) {
         this.allocator = allocator;
-        int segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
+        segmentsCount = Math.max(2, (int) (maxCacheSize / maxSegmentSize));
         segmentSize = (int) (maxCacheSize / segmentsCount);
+        segmentWriters = new AtomicIntegerArray(segmentsCount);
+        segmentEntries = new AtomicLongArray(segmentsCount);
+        cleanupBatchSegments = Math.max(1, segmentsCount / 2);
 
         cacheSegments = new ArrayList<>();
-        cacheIndexes = new ArrayList<>();
-
         for (int i = 0; i < segmentsCount; i++) {
             cacheSegments.add(Unpooled.directBuffer(segmentSize, segmentSize));
-            ConcurrentLongLongPairHashMap concurrentLongLongPairHashMap = ConcurrentLongLongPairHashMap.newBuilder()
-                    .expectedItems(4096)
+        }
+
+        if (offHeapIndex) {
+            cacheIndex = OffHeapLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096 * segmentsCount)
+                    .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
+                    .allocator(allocator)
+                    .build();
+        } else {
+            cacheIndex = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096 * segmentsCount)
                     .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
                     .build();
-            cacheIndexes.add(concurrentLongLongPairHashMap);
         }
     }
 
     @Override
     public void close() {
+        synchronized (this) {
+            // Wait for a running cleanup and prevent the next ones from touching the index
+            closed = true;
+        }
+        cleanupExecutor.shutdown();
         cacheSegments.forEach(ByteBuf::release);
+        cacheIndex.close();
     }
 
     public void put(long ledgerId, long entryId, ByteBuf entry) {
         int entrySize = entry.readableBytes();
         int alignedSize = align64(entrySize);
 
-        lock.readLock().lock();
+        if (entrySize > segmentSize) {
+            log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
+            return;
+        }
 
-        try {
-            if (entrySize > segmentSize) {
-                log.warn("entrySize {} > segmentSize {}, skip update read cache!", entrySize, segmentSize);
-                return;
-            }
-            int offset = currentSegmentOffset.getAndAdd(alignedSize);
-            if (offset + entrySize > segmentSize) {
-                // Roll-over the segment (outside the read-lock)
+        long generation;
+        int offset;
+        while (true) {
+            long state = writeState.get();
+            generation = generation(state);
+            offset = offset(state);
+
+            if (offset + entrySize <= segmentSize) {
+                // Register in the segment before reserving the space, so that it cannot be recycled while the
+                // entry is copied
+                int segment = segmentIndex(generation);
+                segmentWriters.incrementAndGet(segment);
+                if (writeState.compareAndSet(state, state + alignedSize)) {
+                    break;
+                }
+                segmentWriters.decrementAndGet(segment);
             } else {
-                // Copy entry into read cache segment
-                cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(),
-                        entry.readableBytes());
-                cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
-                return;
+                // Roll-over to the next segment, the oldest segment only gets recycled once the writers of its
+                // previous generation are done with it
+                int segment = segmentIndex(generation + 1);
+                if (segmentWriters.get(segment) > 0) {
+                    if (writeState.get() != state) {
+                        // Another writer rolled over in the meantime
+                        continue;
+                    }
+                    // A writer stalled for a full turn of the segments, or racing to roll over, is still using
+                    // the segment. Rather than blocking every insertion behind it, this entry is just not cached.
+                    if (log.isDebugEnabled()) {
+                        log.debug("Read cache segment {} still in use, skip caching {}@{}", segment, ledgerId,
+                                entryId);
+                    }
+                    return;
+                }
+                segmentWriters.incrementAndGet(segment);
+                if (writeState.compareAndSet(state, packState(generation + 1, alignedSize))) {
+                    generation = generation + 1;
+                    offset = 0;
+                    onRollover();
+                    break;
+                }
+                segmentWriters.decrementAndGet(segment);
             }
-        } finally {
-            lock.readLock().unlock();
         }
 
-        // We could not insert in segment, we to get the write lock and roll-over to
-        // next segment
-        lock.writeLock().lock();
-
         try {
-            int offset = currentSegmentOffset.getAndAdd(entrySize);
-            if (offset + entrySize > segmentSize) {
-                // Rollover to next segment
-                currentSegmentIdx = (currentSegmentIdx + 1) % cacheSegments.size();
-                currentSegmentOffset.set(alignedSize);
-                cacheIndexes.get(currentSegmentIdx).clear();
-                offset = 0;
-            }
-
             // Copy entry into read cache segment
-            cacheSegments.get(currentSegmentIdx).setBytes(offset, entry, entry.readerIndex(), entry.readableBytes());
-            cacheIndexes.get(currentSegmentIdx).put(ledgerId, entryId, offset, entrySize);
+            cacheSegments.get(segmentIndex(generation)).setBytes(offset, entry, entry.readerIndex(), entrySize);
+            cacheIndex.put(ledgerId, entryId, generation, packLocation(offset, entrySize));
+            countEntry(generation);
         } finally {
-            lock.writeLock().unlock();
+            segmentWriters.decrementAndGet(segmentIndex(generation));
         }
     }
 
     public ByteBuf get(long ledgerId, long entryId) {
-        lock.readLock().lock();
-
-        try {
-            // We need to check all the segments, starting from the current one and looking
-            // backward to minimize the
-            // checks for recently inserted entries
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
-
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    int entryOffset = (int) res.first;
-                    int entryLen = (int) res.second;
-
-                    ByteBuf entry = allocator.buffer(entryLen, entryLen);
-                    entry.writeBytes(cacheSegments.get(segmentIdx), entryOffset, entryLen);
-                    return entry;
-                }
-            }
-        } finally {
-            lock.readLock().unlock();
+        LongPair res = cacheIndex.get(ledgerId, entryId);
+        if (res == null) {
+            // Entry not found in any segment
+            return null;
         }
 
-        // Entry not found in any segment
-        return null;
-    }
+        long generation = res.first;
+        if (!isLive(generation)) {
+            // The segment holding the entry was already recycled
+            cacheIndex.remove(ledgerId, entryId, res.first, res.second);
+            return null;
+        }
 
-    public boolean hasEntry(long ledgerId, long entryId) {
-        lock.readLock().lock();
+        int entryOffset = (int) (res.second >>> 32);
+        int entryLen = (int) res.second;
 
-        try {
-            int size = cacheSegments.size();
-            for (int i = 0; i < size; i++) {
-                int segmentIdx = (currentSegmentIdx + (size - i)) % size;
+        ByteBuf entry = allocator.buffer(entryLen, entryLen);
+        entry.writeBytes(cacheSegments.get(segmentIndex(generation)), entryOffset, entryLen);
 
-                LongPair res = cacheIndexes.get(segmentIdx).get(ledgerId, entryId);
-                if (res != null) {
-                    return true;
-                }
-            }
-        } finally {
-            lock.readLock().unlock();
+        // The segment might have been recycled and overwritten while we were copying
+        if (!isLive(generation)) {
+            entry.release();
+            return null;
         }
 
-        // Entry not found in any segment
-        return false;
+        return entry;
+    }
+
+    public boolean hasEntry(long ledgerId, long entryId) {
+        LongPair res = cacheIndex.get(ledgerId, entryId);
+        return res != null && isLive(res.first);
     }
 
     /**
      * @return the total size of cached entries
      */
     public long size() {
-        lock.readLock().lock();
+        long state = writeState.get();
+        long fullSegments = Math.min(generation(state), segmentsCount - 1);
+        return fullSegments * segmentSize + Math.min(offset(state), segmentSize);
+    }
 
-        try {
-            long size = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                if (i == currentSegmentIdx) {
-                    size += currentSegmentOffset.get();
-                } else if (!cacheIndexes.get(i).isEmpty()) {
-                    size += segmentSize;
-                } else {
-                    // the segment is empty
-                }
+    /**
+     * @return the total number of cached entries, excluding the entries of the recycled segments that are still
+     *         in the index
+     */
+    public long count() {
+        long currentGeneration = generation(writeState.get());
+        long count = 0;
+        for (int i = 0; i < segmentsCount; i++) {
+            long entries = segmentEntries.get(i);
+            if (currentGeneration - generation(entries) < segmentsCount) {
+                count += offset(entries);
             }
-
-            return size;
-        } finally {
-            lock.readLock().unlock();
         }
+        return count;
     }
 
     /**
-     * @return the total number of cached entries
+     * @return the memory used by the index of the cached entries, in bytes
      */
-    public long count() {
-        lock.readLock().lock();
+    public long indexSizeInBytes() {
+        return cacheIndex.sizeInBytes();
+    }
 
-        try {
-            long count = 0;
-            for (int i = 0; i < cacheIndexes.size(); i++) {
-                count += cacheIndexes.get(i).size();
+    private void countEntry(long generation) {
+        // The counter of a segment is reset by the first entry of each new generation
+        int segment = segmentIndex(generation);
+        while (true) {
+            long entries = segmentEntries.get(segment);
+            long updated = generation(entries) == generation ? entries + 1 : packState(generation, 1);
+            if (generation(entries) > generation || segmentEntries.compareAndSet(segment, entries, updated)) {
+                return;
             }
+        }
+    }
 
-            return count;
-        } finally {
-            lock.readLock().unlock();
+    private void onRollover() {
+        // Drop the index entries pointing to the recycled segments. Readers are
+        // already rejecting them through the generation check, so this is only
+        // reclaiming space in the index, which doesn't need to delay the writer.
+        // Every cleanup scans the whole index, so it waits for a few segments to
+        // be recycled.
+        long lastRecycledGeneration = generation(writeState.get()) - segmentsCount;
+        if (lastRecycledGeneration - cleanedGeneration >= cleanupBatchSegments
+                && cleanupScheduled.compareAndSet(false, true)) {
+            try {
+                cleanupExecutor.execute(this::removeRecycledEntries);
+            } catch (RejectedExecutionException e) {
+                cleanupScheduled.set(false);
+            }
         }
     }
+
+    private synchronized void removeRecycledEntries() {
+        cleanupScheduled.set(false);
+        if (closed) {
+            return;
+        }
+        long lastRecycledGeneration = generation(writeState.get()) - segmentsCount;
+        cacheIndex.removeIf((ledgerId, entryId, generation, location) -> generation <= lastRecycledGeneration);
+        cleanedGeneration = lastRecycledGeneration;
+    }
+
+    private boolean isLive(long generation) {
+        return generation(writeState.get()) - generation < segmentsCount;
+    }
+
+    private int segmentIndex(long generation) {
+        return (int) (generation % segmentsCount);
+    }
+
+    private static long generation(long state) {
+        return state >>> 32;
+    }
+
+    private static int offset(long state) {
+        return (int) state;
+    }
+
+    private static long packState(long generation, int offset) {
+        return (generation << 32) | offset;
+    }
+
+    private static long packLocation(int offset, int length) {
+        return ((long) offset << 32) | length;
+    }
 }
@@ -32,21 +32,26 @@ import edu.umd.cs.findbugs.annotations.SuppressFBWarnings;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.concurrent.DefaultThreadFactory;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.List;
 import java.util.Map;
 import java.util.PrimitiveIterator.OfLong;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.concurrent.locks.StampedLock;
 
@@ -60,6 +65,7 @@ import org.apache.bookkeeper.bookie.Checkpointer;
 import org.apache.bookkeeper.bookie.CompactableLedgerStorage;
 import org.apache.bookkeeper.bookie.DefaultEntryLogger;
 import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.GarbageCollectionCoordinator;
 import org.apache.bookkeeper.bookie.GarbageCollectionStatus;
 import org.apache.bookkeeper.bookie.GarbageCollectorThread;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
@@ -67,11 +73,14 @@ import org.apache.bookkeeper.bookie.LedgerCache;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
 import org.apache.bookkeeper.bookie.LedgerDirsManager.LedgerDirsListener;
 import org.apache.bookkeeper.bookie.LedgerEntryPage;
+import org.apache.bookkeeper.bookie.OperationLatencyTracker;
 import org.apache.bookkeeper.bookie.StateManager;
 import org.apache.bookkeeper.bookie.storage.EntryLogger;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.DirectEntryLogger;
 import org.apache.bookkeeper.bookie.storage.ldb.DbLedgerStorageDataFormats.LedgerData;
 import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorage.Batch;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOImpl;
 import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.meta.LedgerManager;
 import org.apache.bookkeeper.proto.BookieProtocol;
@@ -121,6 +130,18 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final ExecutorService executor = Executors.newSingleThreadExecutor(
             new DefaultThreadFactory(dbStoragerExecutorName));
 
+    // Additional threads used to flush the write cache in parallel, null when flushing on a single thread
+    private final ExecutorService flushWorkersExecutor;
+    private final int flushWorkers;
+
+    // Executor used for the asynchronous reads that miss the caches, null when reads are always synchronous
+    private final ExecutorService readIOExecutor;
+    private final int readIOMaxQueueDepth;
+    private final AtomicInteger pendingStorageReads = new AtomicInteger(0);
+
+    // Latency of the successful adds and reads, used by the compactors to adapt their bandwidth
+    private final OperationLatencyTracker foregroundLatencyTracker = new OperationLatencyTracker();
+
     // Executor used to for db index cleanup
     private final ScheduledExecutorService cleanupExecutor = Executors
             .newSingleThreadScheduledExecutor(new DefaultThreadFactory("db-storage-cleanup"));
@@ -134,6 +155,8 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
     private final long writeCacheMaxSize;
     private final long readCacheMaxSize;
     private final int readAheadCacheBatchSize;
+    private final boolean adaptiveReadAheadEnabled;
+    private final int readAheadCacheMaxBatchSize;
 
     private final long maxThrottleTimeNanos;
 
@@ -141,6 +164,15 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
     private static final long DEFAULT_MAX_THROTTLE_TIME_MILLIS = TimeUnit.SECONDS.toMillis(10);
 
+    private static final int KB = 1024;
+    private static final int MB = 1024 * KB;
+
+    // Max number of entry log files each read thread keeps open with the direct I/O entry logger
+    private static final int DIRECT_IO_MAX_READERS_PER_THREAD = 16;
+
+    // Max number of entry locations looked up with a single index scan on batch reads
+    private static final int MAX_BATCH_READ_LOCATIONS = 1024;
+
     private final long maxReadAheadBytesSize;
 
     private final Counter flushExecutorTime;
@@ -149,6 +181,14 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
             ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
             int readAheadCacheBatchSize) throws IOException {
+        this(conf, ledgerManager, ledgerDirsManager, indexDirsManager, statsLogger, allocator, gcExecutor,
+                writeCacheSize, readCacheSize, readAheadCacheBatchSize, null);
+    }
+
+    public SingleDirectoryDbLedgerStorage(ServerConfiguration conf, LedgerManager ledgerManager,
+            LedgerDirsManager ledgerDirsManager, LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
+            ByteBufAllocator allocator, ScheduledExecutorService gcExecutor, long writeCacheSize, long readCacheSize,
+            int readAheadCacheBatchSize, GarbageCollectionCoordinator gcCoordinator) throws IOException {
         checkArgument(ledgerDirsManager.getAllLedgerDirs().size() == 1,
                 "Db implementation only allows for one storage dir");
 
@@ -159,11 +199,17 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 ledgerDirsManager.getAllLedgerDirs().get(0).getPath());
 
         this.writeCacheMaxSize = writeCacheSize;
-        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2);
-        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2);
+        boolean offHeapIndex = conf.getBoolean(DbLedgerStorage.OFF_HEAP_INDEX_ENABLED,
+                DbLedgerStorage.DEFAULT_OFF_HEAP_INDEX_ENABLED);
+        this.writeCache = new WriteCache(allocator, writeCacheMaxSize / 2, offHeapIndex);
+        this.writeCacheBeingFlushed = new WriteCache(allocator, writeCacheMaxSize / 2, offHeapIndex);
 
         readCacheMaxSize = readCacheSize;
         this.readAheadCacheBatchSize = readAheadCacheBatchSize;
+        this.adaptiveReadAheadEnabled = conf.getBoolean(DbLedgerStorage.READ_AHEAD_CACHE_ADAPTIVE_ENABLED, false);
+        this.readAheadCacheMaxBatchSize = Math.max(readAheadCacheBatchSize,
+                conf.getInt(DbLedgerStorage.READ_AHEAD_CACHE_MAX_BATCH_SIZE,
+                        DbLedgerStorage.DEFAULT_READ_AHEAD_CACHE_MAX_BATCH_SIZE_MULTIPLIER * readAheadCacheBatchSize));
 
         // Do not attempt to perform read-ahead more than half the total size of the cache
         maxReadAheadBytesSize = readCacheMaxSize / 2;
@@ -172,7 +218,28 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 DEFAULT_MAX_THROTTLE_TIME_MILLIS);
         maxThrottleTimeNanos = TimeUnit.MILLISECONDS.toNanos(maxThrottleTimeMillis);
 
-        readCache = new ReadCache(allocator, readCacheMaxSize);
+        flushWorkers = Math.max(1, conf.getInt(DbLedgerStorage.FLUSH_WORKER_THREADS,
+                DbLedgerStorage.DEFAULT_FLUSH_WORKER_THREADS));
+        if (flushWorkers > 1) {
+            // The flushing thread takes care of the first partition
+            // Workers sharing a single active entry log would only serialize on it
+            checkArgument(conf.isEntryLogPerLedgerEnabled() && !conf.isDirectIOEntryLoggerEnabled(),
+                    "%s > 1 requires entryLogPerLedgerEnabled and is not supported by the direct IO entry logger",
+                    DbLedgerStorage.FLUSH_WORKER_THREADS);
+            flushWorkersExecutor = Executors.newFixedThreadPool(flushWorkers - 1,
+                    new DefaultThreadFactory("db-storage-flush"));
+        } else {
+            flushWorkersExecutor = null;
+        }
+
+        int readIOThreads = conf.getInt(DbLedgerStorage.READ_IO_THREADS, DbLedgerStorage.DEFAULT_READ_IO_THREADS);
+        readIOExecutor = readIOThreads > 0
+                ? Executors.newFixedThreadPool(readIOThreads, new DefaultThreadFactory("db-storage-read"))
+                : null;
+        readIOMaxQueueDepth = conf.getInt(DbLedgerStorage.READ_IO_MAX_QUEUE_DEPTH,
+                DbLedgerStorage.DEFAULT_READ_IO_MAX_QUEUE_DEPTH);
+
+        readCache = new ReadCache(allocator, readCacheMaxSize, offHeapIndex);
 
         ledgerIndex = new LedgerMetadataIndex(conf, KeyValueStorageRocksDB.factory, baseDir, ledgerDirStatsLogger);
         entryLocationIndex = new EntryLocationIndex(conf,
@@ -186,15 +253,21 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES,
                 TransientLedgerInfo.LEDGER_INFO_CACHING_TIME_MINUTES, TimeUnit.MINUTES);
 
-        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
-        gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, entryLogger, statsLogger);
+        entryLogger = createEntryLogger(conf, ledgerDirsManager, statsLogger, ledgerDirStatsLogger, allocator);
+        if (entryLogger instanceof DefaultEntryLogger) {
+            registerLedgerDeletionListener(((DefaultEntryLogger) entryLogger)::ledgerDeleted);
+        }
+        gcThread = new GarbageCollectorThread(conf, ledgerManager, ledgerDirsManager, this, entryLogger, statsLogger,
+                gcCoordinator);
 
         dbLedgerStorageStats = new DbLedgerStorageStats(
                 ledgerDirStatsLogger,
             () -> writeCache.size() + writeCacheBeingFlushed.size(),
             () -> writeCache.count() + writeCacheBeingFlushed.count(),
             () -> readCache.size(),
-            () -> readCache.count()
+            () -> readCache.count(),
+            () -> writeCache.indexSizeInBytes() + writeCacheBeingFlushed.indexSizeInBytes(),
+            () -> readCache.indexSizeInBytes()
         );
 
         flushExecutorTime = ledgerDirStatsLogger.getThreadScopedCounter("db-storage-thread-time");
@@ -209,6 +282,26 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         ledgerDirsManager.addLedgerDirsListener(getLedgerDirsListener());
     }
 
+    private static EntryLogger createEntryLogger(ServerConfiguration conf, LedgerDirsManager ledgerDirsManager,
+            StatsLogger statsLogger, StatsLogger ledgerDirStatsLogger, ByteBufAllocator allocator) throws IOException {
+        if (!conf.isDirectIOEntryLoggerEnabled()) {
+            return new DefaultEntryLogger(conf, ledgerDirsManager, null, statsLogger, allocator);
+        }
+
+        File ledgerDir = ledgerDirsManager.getAllLedgerDirs().get(0);
+        log.info("Using direct I/O entry logger on {}", ledgerDir);
+        return new DirectEntryLogger(ledgerDir, new NativeIOImpl(), allocator,
+                conf.getEntryLogSizeLimit(),
+                conf.getNettyMaxFrameSizeBytes() - 500,
+                conf.getDirectIOEntryLoggerWriteBufferSizeMb() * MB,
+                conf.getDirectIOEntryLoggerWriteBuffersCount(),
+                conf.getDirectIOEntryLoggerWriteBufferAcquireTimeoutMs(),
+                conf.getDirectIOEntryLoggerReadBufferSizeKb() * KB,
+                DIRECT_IO_MAX_READERS_PER_THREAD,
+                conf.getDirectIOEntryLoggerMaxFdCacheTimeSeconds(),
+                ledgerDirStatsLogger);
+    }
+
     @Override
     public void initialize(ServerConfiguration conf, LedgerManager ledgerManager, LedgerDirsManager ledgerDirsManager,
             LedgerDirsManager indexDirsManager, StatsLogger statsLogger,
@@ -278,6 +371,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             writeCacheBeingFlushed.close();
             readCache.close();
             executor.shutdown();
+            if (flushWorkersExecutor != null) {
+                flushWorkersExecutor.shutdown();
+            }
+            if (readIOExecutor != null) {
+                readIOExecutor.shutdown();
+            }
 
         } catch (IOException e) {
             log.error("Error closing db storage", e);
@@ -427,7 +526,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // after successfully insert the entry, update LAC and notify the watchers
         updateCachedLacIfNeeded(ledgerId, lac);
 
-        recordSuccessfulEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
+        recordForegroundEvent(dbLedgerStorageStats.getAddEntryStats(), startTime);
         return entryId;
     }
 
@@ -487,7 +586,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         long startTime = MathUtils.nowInNano();
         try {
             ByteBuf entry = doGetEntry(ledgerId, entryId);
-            recordSuccessfulEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            recordForegroundEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
             return entry;
         } catch (IOException e) {
             recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
@@ -504,6 +603,120 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             return getLastEntry(ledgerId);
         }
 
+        ByteBuf entry = getEntryFromCaches(ledgerId, entryId);
+        if (entry != null) {
+            return entry;
+        }
+
+        return readEntryFromStorage(ledgerId, entryId);
+    }
+
+    @Override
+    public CompletableFuture<ByteBuf> getEntryAsync(long ledgerId, long entryId) {
+        if (readIOExecutor == null || entryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return CompactableLedgerStorage.super.getEntryAsync(ledgerId, entryId);
+        }
+
+        long startTime = MathUtils.nowInNano();
+        if (log.isDebugEnabled()) {
+            log.debug("Get Entry async: {}@{}", ledgerId, entryId);
+        }
+
+        // Cache hits are completed inline, only the reads that need to access the disk are handed to the
+        // read I/O pool
+        ByteBuf entry = getEntryFromCaches(ledgerId, entryId);
+        if (entry != null) {
+            recordForegroundEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            return CompletableFuture.completedFuture(entry);
+        }
+
+        CompletableFuture<ByteBuf> future = new CompletableFuture<>();
+        if (pendingStorageReads.incrementAndGet() > readIOMaxQueueDepth) {
+            // The disk of this directory is already saturated with reads. Reject the read rather than doing it
+            // on the caller thread, so that the client can back off or try another bookie
+            pendingStorageReads.decrementAndGet();
+            dbLedgerStorageStats.getReadIOQueueFullCounter().inc();
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            future.completeExceptionally(new OperationRejectedException());
+            return future;
+        }
+
+        try {
+            readIOExecutor.execute(() -> {
+                try {
+                    completeStorageRead(future, ledgerId, entryId, startTime);
+                } finally {
+                    pendingStorageReads.decrementAndGet();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            pendingStorageReads.decrementAndGet();
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            future.completeExceptionally(new IOException("Failed to schedule read of entry "
+                    + ledgerId + "@" + entryId, e));
+        }
+        return future;
+    }
+
+    private void completeStorageRead(CompletableFuture<ByteBuf> future, long ledgerId, long entryId,
+                                     long startTime) {
+        try {
+            ByteBuf entry = readEntryFromStorage(ledgerId, entryId);
+            recordForegroundEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            future.complete(entry);
+        } catch (IOException e) {
+            recordFailedEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+            future.completeExceptionally(e);
+        } catch (BookieException | RuntimeException e) {
+            future.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public FileRegion getEntryRegion(long ledgerId, long entryId, int minSize) throws IOException, BookieException {
+        if (entryId == BookieProtocol.LAST_ADD_CONFIRMED || isEntryCached(ledgerId, entryId)) {
+            return null;
+        }
+
+        long startTime = MathUtils.nowInNano();
+        long entryLocation;
+        long locationIndexStartNano = MathUtils.nowInNano();
+        try {
+            entryLocation = entryLocationIndex.getLocation(ledgerId, entryId);
+            if (entryLocation == 0) {
+                // Let the regular read report the missing entry
+                return null;
+            }
+        } finally {
+            dbLedgerStorageStats.getReadFromLocationIndexTime().add(MathUtils.elapsedNanos(locationIndexStartNano));
+        }
+
+        // The entries are only indexed once they are flushed to the entry log, so the region is in the file
+        FileRegion region = entryLogger.readEntryRegion(ledgerId, entryId, entryLocation, minSize);
+        if (region != null) {
+            recordForegroundEvent(dbLedgerStorageStats.getReadEntryStats(), startTime);
+        }
+        return region;
+    }
+
+    private boolean isEntryCached(long ledgerId, long entryId) {
+        long stamp = writeCacheRotationLock.readLock();
+        try {
+            if (writeCache.hasEntry(ledgerId, entryId) || writeCacheBeingFlushed.hasEntry(ledgerId, entryId)) {
+                return true;
+            }
+        } finally {
+            writeCacheRotationLock.unlockRead(stamp);
+        }
+        return readCache.hasEntry(ledgerId, entryId);
+    }
+
+    /**
+     * Get an entry from the write caches or from the read cache.
+     *
+     * @return the entry or null if the entry is not cached
+     */
+    private ByteBuf getEntryFromCaches(long ledgerId, long entryId) {
         // We need to try to read from both write caches, since recent entries could be found in either of the two. The
         // write caches are already thread safe on their own, here we just need to make sure we get references to both
         // of them. Using an optimistic lock since the read lock is always free, unless we're swapping the caches.
@@ -541,12 +754,25 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         entry = readCache.get(ledgerId, entryId);
         if (entry != null) {
             dbLedgerStorageStats.getReadCacheHitCounter().inc();
+            if (adaptiveReadAheadEnabled) {
+                // The read-ahead state is created on the read cache miss that filled the cache
+                TransientLedgerInfo ledgerInfo = transientLedgerInfoCache.get(ledgerId);
+                if (ledgerInfo != null && ledgerInfo.recordReadCacheHit(entryId)) {
+                    dbLedgerStorageStats.getReadAheadHitCounter().inc();
+                }
+            }
             return entry;
         }
 
         dbLedgerStorageStats.getReadCacheMissCounter().inc();
+        return null;
+    }
 
-        // Read from main storage
+    /**
+     * Read an entry from the entry logs, after a miss on all the caches, and read-ahead the following entries.
+     */
+    private ByteBuf readEntryFromStorage(long ledgerId, long entryId) throws IOException, BookieException {
+        ByteBuf entry;
         long entryLocation;
         long locationIndexStartNano = MathUtils.nowInNano();
         try {
@@ -570,15 +796,146 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
         readCache.put(ledgerId, entryId, entry);
 
-        // Try to read more entries
-        long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
-        fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation);
+        // Try to read more entries, unless the ledger is being read at random positions
+        TransientLedgerInfo ledgerInfo = null;
+        int readAheadCount = readAheadCacheBatchSize;
+        if (adaptiveReadAheadEnabled) {
+            ledgerInfo = getOrAddLedgerInfo(ledgerId);
+            readAheadCount = ledgerInfo.recordReadCacheMiss(entryId, readAheadCacheBatchSize,
+                    readAheadCacheMaxBatchSize, dbLedgerStorageStats.getReadAheadWastedBytesCounter());
+        }
+
+        if (readAheadCount > 0) {
+            long nextEntryLocation = entryLocation + 4 /* size header */ + entry.readableBytes();
+            fillReadAheadCache(ledgerId, entryId + 1, nextEntryLocation, readAheadCount, ledgerInfo);
+        } else {
+            dbLedgerStorageStats.getReadAheadSkippedCounter().inc();
+        }
 
         return entry;
     }
 
-    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation) {
+    @Override
+    public List<ByteBuf> batchGetEntries(long ledgerId, long startEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        long startTime = MathUtils.nowInNano();
+        try {
+            List<ByteBuf> entries = doBatchGetEntries(ledgerId, startEntryId, maxCount, maxSize);
+            recordSuccessfulEvent(dbLedgerStorageStats.getBatchReadEntryStats(), startTime);
+            dbLedgerStorageStats.getBatchReadEntryCountStats().registerSuccessfulValue(entries.size());
+            return entries;
+        } catch (IOException e) {
+            recordFailedEvent(dbLedgerStorageStats.getBatchReadEntryStats(), startTime);
+            throw e;
+        }
+    }
+
+    /**
+     * Read consecutive entries, looking up the location of all the entries that are not cached with a
+     * single range scan of the locations index.
+     *
+     * <p>The entries are not inserted in the read cache, since the whole batch is returned to the client
+     * at once and the read-ahead would only evict other entries.
+     */
+    private List<ByteBuf> doBatchGetEntries(long ledgerId, long startEntryId, int maxCount, long maxSize)
+            throws IOException, BookieException {
+        if (log.isDebugEnabled()) {
+            log.debug("Batch get entries: {}@{} maxCount: {} maxSize: {}", ledgerId, startEntryId, maxCount, maxSize);
+        }
+
+        if (startEntryId == BookieProtocol.LAST_ADD_CONFIRMED) {
+            return Lists.newArrayList(getLastEntry(ledgerId));
+        }
+
+        long stamp = writeCacheRotationLock.tryOptimisticRead();
+        WriteCache localWriteCache = writeCache;
+        WriteCache localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+        if (!writeCacheRotationLock.validate(stamp)) {
+            stamp = writeCacheRotationLock.readLock();
+            try {
+                localWriteCache = writeCache;
+                localWriteCacheBeingFlushed = writeCacheBeingFlushed;
+            } finally {
+                writeCacheRotationLock.unlockRead(stamp);
+            }
+        }
+
+        List<ByteBuf> entries = new ArrayList<>(Math.min(maxCount, readAheadCacheBatchSize));
+        long[] locations = null;
+        long locationsFirstEntryId = -1;
+        int locationsCount = 0;
+        long size = 0;
+
+        try {
+            for (int i = 0; i < maxCount; i++) {
+                long entryId = startEntryId + i;
+
+                ByteBuf entry = localWriteCache.get(ledgerId, entryId);
+                if (entry == null) {
+                    entry = localWriteCacheBeingFlushed.get(ledgerId, entryId);
+                }
+                if (entry != null) {
+                    dbLedgerStorageStats.getWriteCacheHitCounter().inc();
+                } else {
+                    dbLedgerStorageStats.getWriteCacheMissCounter().inc();
+                    entry = readCache.get(ledgerId, entryId);
+                    if (entry != null) {
+                        dbLedgerStorageStats.getReadCacheHitCounter().inc();
+                    } else {
+                        dbLedgerStorageStats.getReadCacheMissCounter().inc();
+
+                        if (locations == null
+                                || (entryId - locationsFirstEntryId >= locationsCount
+                                    && locationsCount == locations.length)) {
+                            // Look up the locations of all the remaining entries at once
+                            long locationIndexStartNano = MathUtils.nowInNano();
+                            try {
+                                locations = new long[Math.min(maxCount - i, MAX_BATCH_READ_LOCATIONS)];
+                                locationsFirstEntryId = entryId;
+                                locationsCount = entryLocationIndex.getLocations(ledgerId, entryId, locations);
+                            } finally {
+                                dbLedgerStorageStats.getReadFromLocationIndexTime()
+                                        .add(MathUtils.elapsedNanos(locationIndexStartNano));
+                            }
+                        }
+
+                        int locationIdx = (int) (entryId - locationsFirstEntryId);
+                        if (locationIdx >= locationsCount) {
+                            if (entries.isEmpty()) {
+                                throwIfLimbo(ledgerId);
+                                throw new NoEntryException(ledgerId, entryId);
+                            }
+                            break;
+                        }
+
+                        long readEntryStartNano = MathUtils.nowInNano();
+                        try {
+                            entry = entryLogger.readEntry(ledgerId, entryId, locations[locationIdx]);
+                        } finally {
+                            dbLedgerStorageStats.getReadFromEntryLogTime()
+                                    .add(MathUtils.elapsedNanos(readEntryStartNano));
+                        }
+                    }
+                }
+
+                if (!entries.isEmpty() && size + entry.readableBytes() > maxSize) {
+                    entry.release();
+                    break;
+                }
+                size += entry.readableBytes();
+                entries.add(entry);
+            }
+            return entries;
+        } catch (IOException | BookieException | RuntimeException e) {
+            entries.forEach(ByteBuf::release);
+            throw e;
+        }
+    }
+
+    private void fillReadAheadCache(long orginalLedgerId, long firstEntryId, long firstEntryLocation,
+                                    int maxCount, TransientLedgerInfo ledgerInfo) {
         long readAheadStartNano = MathUtils.nowInNano();
+        long readAheadFirstEntryId = firstEntryId;
         int count = 0;
         long size = 0;
 
@@ -587,7 +944,7 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
             long currentEntryLogId = firstEntryLogId;
             long currentEntryLocation = firstEntryLocation;
 
-            while (count < readAheadCacheBatchSize
+            while (count < maxCount
                     && size < maxReadAheadBytesSize
                     && currentEntryLogId == firstEntryLogId) {
                 ByteBuf entry = entryLogger.readEntry(orginalLedgerId,
@@ -620,6 +977,9 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
                 log.debug("Exception during read ahead for ledger: {}: e", orginalLedgerId, e);
             }
         } finally {
+            if (ledgerInfo != null) {
+                ledgerInfo.recordReadAhead(readAheadFirstEntryId, count, size);
+            }
             dbLedgerStorageStats.getReadAheadBatchCountStats().registerSuccessfulValue(count);
             dbLedgerStorageStats.getReadAheadBatchSizeStats().registerSuccessfulValue(size);
             dbLedgerStorageStats.getReadAheadTime().add(MathUtils.elapsedNanos(readAheadStartNano));
@@ -707,41 +1067,17 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         // Only a single flush operation can happen at a time
         flushMutex.lock();
         try {
+            long sizeToFlush = 0;
+            if (!writeCacheBeingFlushed.isEmpty()) {
+                // A previous flush failed half-way. Its entries are older than the ones in the
+                // current write cache and must be persisted before this checkpoint can be marked
+                sizeToFlush += flushWriteCacheBeingFlushed();
+            }
+
             // Swap the write cache so that writes can continue to happen while the flush is
             // ongoing
             swapWriteCache();
-
-            long sizeToFlush = writeCacheBeingFlushed.size();
-            if (log.isDebugEnabled()) {
-                log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
-                        sizeToFlush / 1024.0 / 1024);
-            }
-
-            // Write all the pending entries into the entry logger and collect the offset
-            // position for each entry
-
-            Batch batch = entryLocationIndex.newBatch();
-            writeCacheBeingFlushed.forEach((ledgerId, entryId, entry) -> {
-                try {
-                    long location = entryLogger.addEntry(ledgerId, entry);
-                    entryLocationIndex.addLocation(batch, ledgerId, entryId, location);
-                } catch (IOException e) {
-                    throw new RuntimeException(e);
-                }
-            });
-
-            long entryLoggerStart = MathUtils.nowInNano();
-            entryLogger.flush();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
-
-            long batchFlushStartTime = MathUtils.nowInNano();
-            batch.flush();
-            batch.close();
-            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
-            if (log.isDebugEnabled()) {
-                log.debug("DB batch flushed time : {} s",
-                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
-            }
+            sizeToFlush += flushWriteCacheBeingFlushed();
 
             long ledgerIndexStartTime = MathUtils.nowInNano();
             ledgerIndex.flush();
@@ -764,9 +1100,6 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
 
             lastCheckpoint = thisCheckpoint;
 
-            // Discard all the entry from the write cache, since they're now persisted
-            writeCacheBeingFlushed.clear();
-
             double flushTimeSeconds = MathUtils.elapsedNanos(startTime) / (double) TimeUnit.SECONDS.toNanos(1);
             double flushThroughput = sizeToFlush / 1024.0 / 1024.0 / flushTimeSeconds;
 
@@ -793,6 +1126,67 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    /**
+     * Write the entries of the write cache being flushed into the entry logger and their locations
+     * into the index, then discard them from the cache.
+     *
+     * <p>The cache is only cleared once everything is persisted: if any of the flush workers fails,
+     * the entries are left in place to be written again by the next checkpoint.
+     *
+     * @return the size of the entries that were flushed
+     */
+    private long flushWriteCacheBeingFlushed() throws IOException {
+        long sizeToFlush = writeCacheBeingFlushed.size();
+        if (log.isDebugEnabled()) {
+            log.debug("Flushing entries. count: {} -- size {} Mb", writeCacheBeingFlushed.count(),
+                    sizeToFlush / 1024.0 / 1024);
+        }
+
+        // Write all the pending entries into the entry logger and collect the offset
+        // position for each entry. The write cache is split in ranges of ledgers that are
+        // written concurrently by the flush workers, each one collecting the locations in
+        // its own batch. The checkpoint is only marked as complete once all of them are done.
+
+        Batch[] batches = new Batch[flushWorkers];
+        for (int i = 0; i < flushWorkers; i++) {
+            batches[i] = entryLocationIndex.newBatch();
+        }
+
+        try {
+            writeCacheBeingFlushed.forEach(flushWorkers, flushWorkersExecutor,
+                    (partition, ledgerId, entryId, entry) -> {
+                try {
+                    long location = entryLogger.addEntry(ledgerId, entry);
+                    entryLocationIndex.addLocation(batches[partition], ledgerId, entryId, location);
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+
+            long entryLoggerStart = MathUtils.nowInNano();
+            entryLogger.flush();
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushEntryLogStats(), entryLoggerStart);
+
+            long batchFlushStartTime = MathUtils.nowInNano();
+            for (Batch batch : batches) {
+                batch.flush();
+            }
+            recordSuccessfulEvent(dbLedgerStorageStats.getFlushLocationIndexStats(), batchFlushStartTime);
+            if (log.isDebugEnabled()) {
+                log.debug("DB batch flushed time : {} s",
+                        MathUtils.elapsedNanos(batchFlushStartTime) / (double) TimeUnit.SECONDS.toNanos(1));
+            }
+        } finally {
+            for (Batch batch : batches) {
+                batch.close();
+            }
+        }
+
+        // Discard all the entry from the write cache, since they're now persisted
+        writeCacheBeingFlushed.clear();
+        return sizeToFlush;
+    }
+
     /**
      * Swap the current write cache with the replacement cache.
      */
@@ -952,6 +1346,11 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         }
     }
 
+    @Override
+    public OperationLatencyTracker getForegroundLatencyTracker() {
+        return foregroundLatencyTracker;
+    }
+
     @Override
     public void flushEntriesLocationsIndex() throws IOException {
         // No-op. Location index is already flushed in updateEntriesLocations() call
@@ -1007,6 +1406,12 @@ public class SingleDirectoryDbLedgerStorage implements CompactableLedgerStorage
         logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
     }
 
+    private void recordForegroundEvent(OpStatsLogger logger, long startTimeNanos) {
+        long elapsedNanos = MathUtils.elapsedNanos(startTimeNanos);
+        logger.registerSuccessfulEvent(elapsedNanos, TimeUnit.NANOSECONDS);
+        foregroundLatencyTracker.record(elapsedNanos);
+    }
+
     private void recordFailedEvent(OpStatsLogger logger, long startTimeNanos) {
         logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
     }
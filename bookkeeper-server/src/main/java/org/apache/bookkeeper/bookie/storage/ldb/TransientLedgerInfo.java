@@ -32,6 +32,7 @@ import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.LastAddConfirmedUpdateNotification;
 import org.apache.bookkeeper.common.util.Watchable;
 import org.apache.bookkeeper.common.util.Watcher;
+import org.apache.bookkeeper.stats.Counter;
 
 /**
  * This class borrows the logic from FileInfo.
@@ -44,6 +45,8 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
 
     static final long NOT_ASSIGNED_LAC = Long.MIN_VALUE;
 
+    private static final long NO_ENTRY = -1L;
+
     // lac
     private volatile long lac = NOT_ASSIGNED_LAC;
     // request from explicit lac requests
@@ -57,6 +60,15 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
 
     private long lastAccessed;
 
+    // read access pattern, used to size the read-ahead after read cache misses
+    private long lastReadEntryId = NO_ENTRY;
+    private int readAheadWindow = 0;
+    // range of entries [first, end) loaded in the read cache by the last read-ahead
+    private long readAheadFirstEntryId = NO_ENTRY;
+    private long readAheadEndEntryId = NO_ENTRY;
+    private long readAheadBytes = 0;
+    private long readAheadLastReadEntryId = NO_ENTRY;
+
     /**
      * Construct an Watchable with zero watchers.
      */
@@ -139,6 +151,66 @@ class TransientLedgerInfo extends Watchable<LastAddConfirmedUpdateNotification>
         setLastAddConfirmed(explicitLacValue);
     }
 
+    /**
+     * Record a read which was served by the read cache.
+     *
+     * @return true if the entry was loaded in the read cache by the last read-ahead of the ledger
+     */
+    synchronized boolean recordReadCacheHit(long entryId) {
+        lastReadEntryId = entryId;
+        lastAccessed = System.currentTimeMillis();
+        if (entryId >= readAheadFirstEntryId && entryId < readAheadEndEntryId) {
+            readAheadLastReadEntryId = Math.max(readAheadLastReadEntryId, entryId);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Record a read cache miss and get the number of entries to read ahead after the missing entry.
+     *
+     * <p>The first miss of a ledger uses the {@code initialWindow}. The window is then doubled, up to
+     * {@code maxWindow}, each time a miss continues a sequential scan and it's disabled when a miss is
+     * at a random position, until the reader goes sequential again.
+     *
+     * <p>The bytes loaded by the previous read-ahead and never read are estimated at this point and
+     * added to {@code wastedBytes}.
+     */
+    synchronized int recordReadCacheMiss(long entryId, int initialWindow, int maxWindow, Counter wastedBytes) {
+        long readAheadCount = readAheadEndEntryId - readAheadFirstEntryId;
+        if (readAheadCount > 0) {
+            long readCount = Math.max(0, readAheadLastReadEntryId - readAheadFirstEntryId + 1);
+            if (readCount < readAheadCount) {
+                wastedBytes.add(readAheadBytes * (readAheadCount - readCount) / readAheadCount);
+            }
+            readAheadFirstEntryId = NO_ENTRY;
+            readAheadEndEntryId = NO_ENTRY;
+            readAheadBytes = 0;
+        }
+
+        if (lastReadEntryId == NO_ENTRY) {
+            readAheadWindow = initialWindow;
+        } else if (entryId == lastReadEntryId + 1) {
+            readAheadWindow = readAheadWindow == 0 ? initialWindow : Math.min(readAheadWindow * 2, maxWindow);
+        } else if (entryId != lastReadEntryId) {
+            readAheadWindow = 0;
+        }
+
+        lastReadEntryId = entryId;
+        lastAccessed = System.currentTimeMillis();
+        return readAheadWindow;
+    }
+
+    /**
+     * Record the range of entries loaded in the read cache by a read-ahead.
+     */
+    synchronized void recordReadAhead(long firstEntryId, int count, long size) {
+        readAheadFirstEntryId = firstEntryId;
+        readAheadEndEntryId = firstEntryId + count;
+        readAheadBytes = size;
+        readAheadLastReadEntryId = NO_ENTRY;
+    }
+
     boolean isStale() {
         return (lastAccessed + TimeUnit.MINUTES.toMillis(LEDGER_INFO_CACHING_TIME_MINUTES)) < System
                 .currentTimeMillis();
@@ -27,6 +27,10 @@ import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
 
 import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.ReentrantLock;
@@ -36,6 +40,10 @@ import org.apache.bookkeeper.util.collections.ConcurrentLongHashSet;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap;
 import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.apache.bookkeeper.util.collections.LongLongHashMap;
+import org.apache.bookkeeper.util.collections.LongLongPairHashMap;
+import org.apache.bookkeeper.util.collections.OffHeapLongLongHashMap;
+import org.apache.bookkeeper.util.collections.OffHeapLongLongPairHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -60,15 +68,16 @@ public class WriteCache implements Closeable {
         void accept(long ledgerId, long entryId, ByteBuf entry);
     }
 
-    private final ConcurrentLongLongPairHashMap index = ConcurrentLongLongPairHashMap.newBuilder()
-            .expectedItems(4096)
-            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-            .build();
+    /**
+     * Consumer that is used to scan the write cache split in multiple partitions of ledgers.
+     */
+    public interface PartitionedEntryConsumer {
+        void accept(int partition, long ledgerId, long entryId, ByteBuf entry);
+    }
 
-    private final ConcurrentLongLongHashMap lastEntryMap = ConcurrentLongLongHashMap.newBuilder()
-            .expectedItems(4096)
-            .concurrencyLevel(2 * Runtime.getRuntime().availableProcessors())
-            .build();
+    private final LongLongPairHashMap index;
+
+    private final LongLongHashMap lastEntryMap;
 
     private final ByteBuf[] cacheSegments;
     private final int segmentsCount;
@@ -91,7 +100,20 @@ public class WriteCache implements Closeable {
         this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024);
     }
 
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, boolean offHeapIndex) {
+        // Default maxSegmentSize set to 1Gb
+        this(allocator, maxCacheSize, 1 * 1024 * 1024 * 1024, offHeapIndex);
+    }
+
     public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize) {
+        this(allocator, maxCacheSize, maxSegmentSize, false);
+    }
+
+    /**
+     * @param offHeapIndex whether the index of the cached entries should be allocated through the allocator,
+     *                     outside of the Java heap, instead of using on-heap hash maps
+     */
+    public WriteCache(ByteBufAllocator allocator, long maxCacheSize, int maxSegmentSize, boolean offHeapIndex) {
         checkArgument(maxSegmentSize > 0);
 
         long alignedMaxSegmentSize = alignToPowerOfTwo(maxSegmentSize);
@@ -114,6 +136,29 @@ public class WriteCache implements Closeable {
 
         int lastSegmentSize = (int) (maxCacheSize % maxSegmentSize);
         cacheSegments[segmentsCount - 1] = Unpooled.directBuffer(lastSegmentSize, lastSegmentSize);
+
+        int concurrencyLevel = 2 * Runtime.getRuntime().availableProcessors();
+        if (offHeapIndex) {
+            this.index = OffHeapLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(concurrencyLevel)
+                    .allocator(allocator)
+                    .build();
+            this.lastEntryMap = OffHeapLongLongHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(concurrencyLevel)
+                    .allocator(allocator)
+                    .build();
+        } else {
+            this.index = ConcurrentLongLongPairHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(concurrencyLevel)
+                    .build();
+            this.lastEntryMap = ConcurrentLongLongHashMap.newBuilder()
+                    .expectedItems(4096)
+                    .concurrencyLevel(concurrencyLevel)
+                    .build();
+        }
     }
 
     public void clear() {
@@ -130,6 +175,8 @@ public class WriteCache implements Closeable {
         for (ByteBuf buf : cacheSegments) {
             buf.release();
         }
+        index.close();
+        lastEntryMap.close();
     }
 
     public boolean put(long ledgerId, long entryId, ByteBuf entry) {
@@ -221,6 +268,19 @@ public class WriteCache implements Closeable {
     private static final ArrayGroupSort groupSorter = new ArrayGroupSort(2, 4);
 
     public void forEach(EntryConsumer consumer) {
+        forEach(1, null, (partition, ledgerId, entryId, entry) -> consumer.accept(ledgerId, entryId, entry));
+    }
+
+    /**
+     * Iterate through the entries in (ledgerId, entryId) order, after splitting them in up to {@code partitions}
+     * contiguous ranges of ledgers of similar size.
+     *
+     * <p>The first partition is scanned by the calling thread and the others are scanned concurrently on the
+     * given executor. All the entries of a ledger belong to the same partition and are passed in order to the
+     * consumer. The method returns once all the partitions have been scanned.
+     */
+    public void forEach(int partitions, Executor executor, PartitionedEntryConsumer consumer) {
+        checkArgument(partitions == 1 || executor != null, "An executor is required to scan multiple partitions");
         sortedEntriesLock.lock();
 
         try {
@@ -233,6 +293,7 @@ public class WriteCache implements Closeable {
             long startTime = MathUtils.nowInNano();
 
             sortedEntriesIdx = 0;
+            sortedEntriesSize = 0;
             index.forEach((ledgerId, entryId, offset, length) -> {
                 if (deletedLedgers.contains(ledgerId)) {
                     // Ignore deleted ledgers
@@ -244,6 +305,7 @@ public class WriteCache implements Closeable {
                 sortedEntries[sortedEntriesIdx + 2] = offset;
                 sortedEntries[sortedEntriesIdx + 3] = length;
                 sortedEntriesIdx += 4;
+                sortedEntriesSize += length;
             });
 
             if (log.isDebugEnabled()) {
@@ -258,32 +320,92 @@ public class WriteCache implements Closeable {
             }
             startTime = MathUtils.nowInNano();
 
-            ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
-            for (int i = 0; i < segmentsCount; i++) {
-                entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+            int[] boundaries = partitionBoundaries(partitions);
+            int partitionsCount = boundaries.length - 1;
+            CompletableFuture<?>[] futures = new CompletableFuture<?>[partitionsCount - 1];
+            for (int p = 1; p < partitionsCount; p++) {
+                final int partition = p;
+                futures[p - 1] = CompletableFuture.runAsync(
+                        () -> forEachInRange(partition, boundaries[partition], boundaries[partition + 1], consumer),
+                        executor);
             }
 
-            for (int i = 0; i < sortedEntriesIdx; i += 4) {
-                long ledgerId = sortedEntries[i];
-                long entryId = sortedEntries[i + 1];
-                long offset = sortedEntries[i + 2];
-                long length = sortedEntries[i + 3];
-
-                int localOffset = (int) (offset & segmentOffsetMask);
-                int segmentIdx = (int) (offset >>> segmentOffsetBits);
-                ByteBuf entry = entrySegments[segmentIdx];
-                entry.setIndex(localOffset, localOffset + (int) length);
-                consumer.accept(ledgerId, entryId, entry);
+            RuntimeException exception = null;
+            try {
+                forEachInRange(0, boundaries[0], boundaries[1], consumer);
+            } catch (RuntimeException e) {
+                exception = e;
+            }
+
+            // Always wait for all the partitions, since they access the sorted entries array
+            for (CompletableFuture<?> future : futures) {
+                try {
+                    future.join();
+                } catch (CompletionException e) {
+                    if (exception == null) {
+                        exception = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : e;
+                    }
+                }
+            }
+
+            if (exception != null) {
+                throw exception;
             }
 
             if (log.isDebugEnabled()) {
-                log.debug("entry log adding {} ms", MathUtils.elapsedNanos(startTime) / 1e6);
+                log.debug("entry log adding {} ms -- partitions: {}", MathUtils.elapsedNanos(startTime) / 1e6,
+                        partitionsCount);
             }
         } finally {
             sortedEntriesLock.unlock();
         }
     }
 
+    /**
+     * Split the sorted entries in ranges of similar total size, making sure a ledger is never split across
+     * two ranges.
+     *
+     * @return the start index of each range in the sorted entries array, followed by the end index of the last one
+     */
+    private int[] partitionBoundaries(int partitions) {
+        int[] boundaries = new int[partitions + 1];
+        int count = 1;
+        long targetSize = sortedEntriesSize / partitions;
+        long size = 0;
+
+        for (int i = 0; i < sortedEntriesIdx && count < partitions; i += 4) {
+            if (i > 0 && size >= targetSize * count && sortedEntries[i] != sortedEntries[i - 4]) {
+                boundaries[count++] = i;
+            }
+            size += sortedEntries[i + 3];
+        }
+
+        boundaries[count] = sortedEntriesIdx;
+        return count == partitions ? boundaries : Arrays.copyOf(boundaries, count + 1);
+    }
+
+    private void forEachInRange(int partition, int startIdx, int endIdx, PartitionedEntryConsumer consumer) {
+        // Each partition uses its own slices, since the reader/writer indexes are updated for each entry
+        ByteBuf[] entrySegments = new ByteBuf[segmentsCount];
+        for (int i = 0; i < segmentsCount; i++) {
+            entrySegments[i] = cacheSegments[i].slice(0, cacheSegments[i].capacity());
+        }
+
+        for (int i = startIdx; i < endIdx; i += 4) {
+            long ledgerId = sortedEntries[i];
+            long entryId = sortedEntries[i + 1];
+            long offset = sortedEntries[i + 2];
+            long length = sortedEntries[i + 3];
+
+            int localOffset = (int) (offset & segmentOffsetMask);
+            int segmentIdx = (int) (offset >>> segmentOffsetBits);
+            ByteBuf entry = entrySegments[segmentIdx];
+            entry.setIndex(localOffset, localOffset + (int) length);
+            consumer.accept(partition, ledgerId, entryId, entry);
+        }
+    }
+
     public long size() {
         return cacheSize.get();
     }
@@ -296,6 +418,13 @@ public class WriteCache implements Closeable {
         return cacheSize.get() == 0L;
     }
 
+    /**
+     * @return the memory used by the index of the cached entries, in bytes
+     */
+    public long indexSizeInBytes() {
+        return index.sizeInBytes() + lastEntryMap.sizeInBytes();
+    }
+
     private static final int ALIGN_64_MASK = ~(64 - 1);
 
     static int align64(int size) {
@@ -309,6 +438,7 @@ public class WriteCache implements Closeable {
     private final ReentrantLock sortedEntriesLock = new ReentrantLock();
     private long[] sortedEntries;
     private int sortedEntriesIdx;
+    private long sortedEntriesSize;
 
     private static final Logger log = LoggerFactory.getLogger(WriteCache.class);
 }
@@ -0,0 +1,180 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static com.google.common.util.concurrent.MoreExecutors.directExecutor;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.bookkeeper.net.BookieId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A {@link SpeculativeRequestExecutionPolicy} which issues speculative requests once a request has been
+ * pending for longer than a percentile of the recent request latencies.
+ *
+ * <p>The latencies are tracked per bookie and for the whole client. The timeout of a request is the
+ * percentile of the bookie it was sent to, or the one of the client until enough samples have been
+ * recorded for the bookie. Until then, {@code firstSpeculativeRequestTimeout} is used. The timeout never
+ * exceeds {@code maxSpeculativeRequestTimeout}.
+ *
+ * <p>The speculative requests are limited to a ratio of the requests, so that they don't overload the
+ * bookies when the latencies of the whole cluster go up. Each request earns a fraction of a speculative
+ * request, and a speculative request is only issued if a whole one has been earned.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicy implements SpeculativeRequestExecutionPolicy {
+    private static final Logger LOG = LoggerFactory.getLogger(AdaptiveSpeculativeRequestExecutionPolicy.class);
+
+    // Length of the windows of the latency histograms
+    private static final long HISTOGRAM_WINDOW_MILLIS = 10000;
+    // Number of samples needed before trusting a percentile
+    private static final long MIN_SAMPLES = 100;
+    // Budget is counted in thousandths of speculative request
+    private static final long BUDGET_UNIT = 1000;
+    // Maximum number of speculative requests which can be saved up, bounding the bursts
+    private static final long MAX_BUDGET = 100 * BUDGET_UNIT;
+
+    final int firstSpeculativeRequestTimeout;
+    final int maxSpeculativeRequestTimeout;
+    final double percentile;
+    final long budgetPerRequest;
+
+    private final LatencyHistogram clientLatencies = new LatencyHistogram(HISTOGRAM_WINDOW_MILLIS);
+    private final ConcurrentMap<BookieId, LatencyHistogram> bookieLatencies = new ConcurrentHashMap<>();
+    private final AtomicLong budget = new AtomicLong(BUDGET_UNIT);
+
+    public AdaptiveSpeculativeRequestExecutionPolicy(int firstSpeculativeRequestTimeout,
+            int maxSpeculativeRequestTimeout, double percentile, double maxSpeculativeRequestsPercent) {
+        if (percentile <= 0 || percentile > 100) {
+            throw new IllegalArgumentException("Invalid value provided for percentile");
+        }
+        if (maxSpeculativeRequestsPercent < 0) {
+            throw new IllegalArgumentException("Invalid value provided for maxSpeculativeRequestsPercent");
+        }
+        this.firstSpeculativeRequestTimeout = firstSpeculativeRequestTimeout;
+        this.maxSpeculativeRequestTimeout = Math.max(firstSpeculativeRequestTimeout, maxSpeculativeRequestTimeout);
+        this.percentile = percentile;
+        this.budgetPerRequest = Math.round(maxSpeculativeRequestsPercent * BUDGET_UNIT / 100);
+    }
+
+    @Override
+    public ScheduledFuture<?> initiateSpeculativeRequest(final ScheduledExecutorService scheduler,
+            final SpeculativeRequestExecutor requestExecutor) {
+        budget.updateAndGet(b -> Math.min(MAX_BUDGET, b + budgetPerRequest));
+        return scheduleSpeculativeRequest(scheduler, requestExecutor);
+    }
+
+    @Override
+    public void recordRequestLatency(BookieId bookie, long latencyNanos) {
+        clientLatencies.recordLatency(latencyNanos);
+        bookieLatencies.computeIfAbsent(bookie, b -> new LatencyHistogram(HISTOGRAM_WINDOW_MILLIS))
+            .recordLatency(latencyNanos);
+    }
+
+    /**
+     * Get the time to wait for a response of a bookie before issuing a speculative request.
+     *
+     * @param bookie the bookie the request was sent to, or null if unknown
+     * @return the timeout in microseconds
+     */
+    long getSpeculativeRequestTimeoutMicros(BookieId bookie) {
+        long timeoutMicros = -1;
+        if (bookie != null) {
+            LatencyHistogram histogram = bookieLatencies.get(bookie);
+            if (histogram != null) {
+                timeoutMicros = histogram.getPercentileMicros(percentile, MIN_SAMPLES);
+            }
+        }
+        if (timeoutMicros < 0) {
+            timeoutMicros = clientLatencies.getPercentileMicros(percentile, MIN_SAMPLES);
+        }
+        if (timeoutMicros < 0) {
+            timeoutMicros = TimeUnit.MILLISECONDS.toMicros(firstSpeculativeRequestTimeout);
+        }
+        return Math.max(1, Math.min(timeoutMicros, TimeUnit.MILLISECONDS.toMicros(maxSpeculativeRequestTimeout)));
+    }
+
+    private boolean acquireBudget() {
+        return budget.getAndUpdate(b -> b >= BUDGET_UNIT ? b - BUDGET_UNIT : b) >= BUDGET_UNIT;
+    }
+
+    private void releaseBudget() {
+        budget.updateAndGet(b -> Math.min(MAX_BUDGET, b + BUDGET_UNIT));
+    }
+
+    private ScheduledFuture<?> scheduleSpeculativeRequest(final ScheduledExecutorService scheduler,
+                                                          final SpeculativeRequestExecutor requestExecutor) {
+        final long timeoutMicros = getSpeculativeRequestTimeoutMicros(requestExecutor.getLastRequestedBookie());
+        try {
+            return scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (!acquireBudget()) {
+                        if (LOG.isDebugEnabled()) {
+                            LOG.debug("No budget left to issue a speculative request for {}, "
+                                + "speculativeRequestTimeout = {} us", requestExecutor, timeoutMicros);
+                        }
+                        return;
+                    }
+                    ListenableFuture<Boolean> issueNextRequest = requestExecutor.issueSpeculativeRequest();
+                    Futures.addCallback(issueNextRequest, new FutureCallback<Boolean>() {
+                        @Override
+                        public void onSuccess(Boolean issueNextRequest) {
+                            if (issueNextRequest) {
+                                scheduleSpeculativeRequest(scheduler, requestExecutor);
+                            } else {
+                                // no request was sent, give the budget back
+                                releaseBudget();
+                                if (LOG.isTraceEnabled()) {
+                                    LOG.trace("Stopped issuing speculative requests for {}, "
+                                        + "speculativeRequestTimeout = {} us", requestExecutor, timeoutMicros);
+                                }
+                            }
+                        }
+
+                        @Override
+                        public void onFailure(Throwable thrown) {
+                            releaseBudget();
+                            LOG.warn("Failed to issue speculative request for {}, speculativeRequestTimeout = {} us : ",
+                                    requestExecutor, timeoutMicros, thrown);
+                        }
+                    }, directExecutor());
+                }
+            }, timeoutMicros, TimeUnit.MICROSECONDS);
+        } catch (RejectedExecutionException re) {
+            if (!scheduler.isShutdown()) {
+                LOG.warn("Failed to schedule speculative request for {}, speculativeRequestTimeout = {} us : ",
+                        requestExecutor, timeoutMicros, re);
+            }
+        }
+        return null;
+    }
+}
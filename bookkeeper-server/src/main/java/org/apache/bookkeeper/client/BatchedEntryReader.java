@@ -0,0 +1,113 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.ReadHandle;
+
+/**
+ * Reads the records batched in the entries of a ledger by {@link BatchingWriteHandle}.
+ *
+ * <p>Only the entries of the ledgers marked as batched in their metadata, see
+ * {@link BatchingWriteHandle#isBatchedLedger}, are split in records, so that an entry of another ledger which
+ * happens to look like a batch is not split. The other entries, and the entries of a batched ledger which are
+ * not valid batches, are returned as a single record, at index 0.
+ */
+public class BatchedEntryReader {
+
+    private final ReadHandle readHandle;
+    private final boolean batched;
+
+    public BatchedEntryReader(ReadHandle readHandle) {
+        this.readHandle = readHandle;
+        this.batched = BatchingWriteHandle.isBatchedLedger(readHandle.getLedgerMetadata());
+    }
+
+    /**
+     * Get the underlying read handle.
+     */
+    public ReadHandle getReadHandle() {
+        return readHandle;
+    }
+
+    /**
+     * Read the records of a range of entries, in order.
+     *
+     * <p>The caller is responsible for closing the returned records.
+     *
+     * @param firstEntry id of the first entry to read
+     * @param lastEntry id of the last entry to read (inclusive)
+     * @see ReadHandle#readAsync(long, long)
+     */
+    public CompletableFuture<List<BatchedRecord>> readAsync(long firstEntry, long lastEntry) {
+        return readHandle.readAsync(firstEntry, lastEntry).thenApply(this::unpack);
+    }
+
+    /**
+     * Read the records of a range of entries, in order, even if they are not known to be confirmed yet.
+     *
+     * <p>The caller is responsible for closing the returned records.
+     *
+     * @param firstEntry id of the first entry to read
+     * @param lastEntry id of the last entry to read (inclusive)
+     * @see ReadHandle#readUnconfirmedAsync(long, long)
+     */
+    public CompletableFuture<List<BatchedRecord>> readUnconfirmedAsync(long firstEntry, long lastEntry) {
+        return readHandle.readUnconfirmedAsync(firstEntry, lastEntry).thenApply(this::unpack);
+    }
+
+    /**
+     * Split entries in records. The entries are closed.
+     */
+    public List<BatchedRecord> unpack(LedgerEntries entries) {
+        try {
+            List<BatchedRecord> records = new ArrayList<>();
+            for (LedgerEntry entry : entries) {
+                unpack(entry, records);
+            }
+            return records;
+        } finally {
+            entries.close();
+        }
+    }
+
+    /**
+     * Split an entry in records, and add them to {@code records}. The entry is not closed.
+     */
+    public void unpack(LedgerEntry entry, List<BatchedRecord> records) {
+        ByteBuf buffer = entry.getEntryBuffer();
+        List<ByteBuf> slices = batched ? EntryBatchFormat.decode(buffer) : null;
+        if (slices == null) {
+            records.add(new BatchedRecord(new BatchedRecordPosition(entry.getEntryId(), 0),
+                                          buffer.retainedSlice()));
+            return;
+        }
+        for (int i = 0; i < slices.size(); i++) {
+            records.add(new BatchedRecord(new BatchedRecordPosition(entry.getEntryId(), i),
+                                          slices.get(i).retain()));
+        }
+    }
+}
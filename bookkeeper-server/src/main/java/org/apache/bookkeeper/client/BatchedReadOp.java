@@ -0,0 +1,223 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.BKException.BKDigestMatchException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.apache.bookkeeper.common.util.SafeRunnable;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.proto.checksum.DigestManager;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A read operation fetching a run of consecutive entries from a single bookie with one request.
+ *
+ * <p>This is only valid when every bookie of the ensemble stores all the entries of the range, that is
+ * when the ensemble size equals the write quorum size and the range doesn't cross an ensemble change. The
+ * replicas of the first entry are tried one after the other until one of them answers successfully.
+ */
+class BatchedReadOp implements BatchedReadEntryCallback, SafeRunnable {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadOp.class);
+
+    private final LedgerHandle lh;
+    private final ClientContext clientCtx;
+    private final long startEntryId;
+    private final int maxCount;
+    private final long maxSize;
+    private final CompletableFuture<LedgerEntries> future = new CompletableFuture<>();
+
+    private List<BookieId> ensemble;
+    private DistributionSchedule.WriteSet writeSet;
+    private int nextReplica = 0;
+    private int firstError = BKException.Code.OK;
+    private long requestTimeNanos;
+
+    BatchedReadOp(LedgerHandle lh, ClientContext clientCtx, long startEntryId, int maxCount, long maxSize) {
+        this.lh = lh;
+        this.clientCtx = clientCtx;
+        this.startEntryId = startEntryId;
+        this.maxCount = maxCount;
+        this.maxSize = maxSize;
+    }
+
+    CompletableFuture<LedgerEntries> future() {
+        return future;
+    }
+
+    @Override
+    public void safeRun() {
+        requestTimeNanos = MathUtils.nowInNano();
+        ensemble = lh.getLedgerMetadata().getEnsembleAt(startEntryId);
+        if (clientCtx.getConf().enableReorderReadSequence) {
+            writeSet = clientCtx.getPlacementPolicy()
+                .reorderReadSequence(
+                        ensemble,
+                        lh.getBookiesHealthInfo(),
+                        lh.getWriteSetForReadOperation(startEntryId));
+        } else {
+            writeSet = lh.getWriteSetForReadOperation(startEntryId);
+        }
+        sendNextRead();
+    }
+
+    private void sendNextRead() {
+        if (nextReplica >= writeSet.size()) {
+            if (shouldFallBackToRangeRead(firstError)) {
+                fallBackToRangeRead();
+            } else {
+                complete(firstError, null);
+            }
+            return;
+        }
+        int bookieIndex = writeSet.get(nextReplica++);
+        if (lh.throttler != null) {
+            lh.throttler.acquire();
+        }
+        clientCtx.getBookieClient().batchReadEntries(ensemble.get(bookieIndex), lh.ledgerId, startEntryId,
+                maxCount, maxSize, this, bookieIndex, BookieProtocol.FLAG_NONE);
+    }
+
+    @Override
+    public void readEntriesComplete(int rc, long ledgerId, long startEntryId, List<ByteBuf> entries, Object ctx) {
+        final int bookieIndex = (Integer) ctx;
+        if (rc != BKException.Code.OK) {
+            logErrorAndReattemptRead(bookieIndex, "Error: " + BKException.getMessage(rc), rc);
+            return;
+        }
+
+        List<LedgerEntry> result = new ArrayList<>(Math.min(entries.size(), maxCount));
+        int i = 0;
+        try {
+            for (; i < entries.size() && i < maxCount; i++) {
+                ByteBuf buffer = entries.get(i);
+                long entryId = startEntryId + i;
+                ByteBuf content = lh.macManager.verifyDigestAndReturnData(entryId, buffer);
+                LedgerEntryImpl entry = LedgerEntryImpl.create(ledgerId, entryId);
+                /*
+                 * The length is a long and it is the last field of the metadata of an entry.
+                 * Consequently, we have to subtract 8 from METADATA_LENGTH to get the length.
+                 */
+                entry.setLength(buffer.getLong(DigestManager.METADATA_LENGTH - 8));
+                entry.setEntryBuf(content);
+                result.add(entry);
+            }
+        } catch (BKDigestMatchException e) {
+            clientCtx.getClientStats().getReadOpDmCounter().inc();
+            result.forEach(LedgerEntry::close);
+            releaseFrom(entries, i);
+            logErrorAndReattemptRead(bookieIndex, "Mac mismatch", BKException.Code.DigestMatchException);
+            return;
+        }
+        // release anything returned on top of what we asked for
+        releaseFrom(entries, i);
+
+        if (result.isEmpty()) {
+            logErrorAndReattemptRead(bookieIndex, "Empty batch", BKException.Code.NoSuchEntryException);
+            return;
+        }
+        complete(BKException.Code.OK, result);
+    }
+
+    private static void releaseFrom(List<ByteBuf> entries, int index) {
+        for (int i = index; i < entries.size(); i++) {
+            entries.get(i).release();
+        }
+    }
+
+    private void logErrorAndReattemptRead(int bookieIndex, String errMsg, int rc) {
+        if (BKException.Code.OK == firstError
+            || BKException.Code.NoSuchEntryException == firstError
+            || BKException.Code.NoSuchLedgerExistsException == firstError) {
+            firstError = rc;
+        }
+        if (BKException.Code.NoSuchEntryException == rc
+            || BKException.Code.NoSuchLedgerExistsException == rc) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No such entry found on bookie.  L{} E{} bookie: {}",
+                        lh.ledgerId, startEntryId, ensemble.get(bookieIndex));
+            }
+        } else if (LOG.isInfoEnabled()) {
+            LOG.info("{} while batch reading L{} E{} from bookie: {}",
+                    errMsg, lh.ledgerId, startEntryId, ensemble.get(bookieIndex));
+        }
+        lh.recordReadErrorOnBookie(bookieIndex);
+        sendNextRead();
+    }
+
+    /**
+     * Bookies which don't support batched reads fail them, with a bad request error or by dropping the
+     * connection, so unless the entries are known to be missing or unreadable the batch is read again
+     * with one request per entry.
+     */
+    private static boolean shouldFallBackToRangeRead(int rc) {
+        switch (rc) {
+            case BKException.Code.NoSuchEntryException:
+            case BKException.Code.NoSuchLedgerExistsException:
+            case BKException.Code.UnauthorizedAccessException:
+            case BKException.Code.ClientClosedException:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private void fallBackToRangeRead() {
+        writeSet.recycle();
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Batch read of L{} E{} failed on all the replicas ({}), reading the entries one by one",
+                    lh.getId(), startEntryId, BKException.getMessage(firstError));
+        }
+        lh.readEntriesInternalAsync(startEntryId, startEntryId + maxCount - 1, false)
+                .whenComplete((entries, cause) -> {
+                    if (cause != null) {
+                        future.completeExceptionally(cause);
+                    } else {
+                        future.complete(entries);
+                    }
+                });
+    }
+
+    private void complete(int rc, List<LedgerEntry> entries) {
+        writeSet.recycle();
+        long latencyNanos = MathUtils.elapsedNanos(requestTimeNanos);
+        if (rc != BKException.Code.OK) {
+            LOG.error("Batch read of ledger entries failed: L{} E{} (max {} entries), Error = '{}'",
+                    lh.getId(), startEntryId, maxCount, BKException.getMessage(rc));
+            clientCtx.getClientStats().getReadOpLogger().registerFailedEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.completeExceptionally(BKException.create(rc));
+        } else {
+            clientCtx.getClientStats().getReadOpLogger().registerSuccessfulEvent(latencyNanos, TimeUnit.NANOSECONDS);
+            future.complete(LedgerEntriesImpl.create(entries));
+        }
+    }
+}
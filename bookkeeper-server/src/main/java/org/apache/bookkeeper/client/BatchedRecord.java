@@ -0,0 +1,68 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * A record read from an entry written by {@link BatchingWriteHandle}.
+ *
+ * <p>The record holds a reference to the buffer of its entry, so it has to be closed once it is no longer
+ * used.
+ */
+public final class BatchedRecord implements AutoCloseable {
+
+    private final BatchedRecordPosition position;
+    private final ByteBuf data;
+
+    BatchedRecord(BatchedRecordPosition position, ByteBuf data) {
+        this.position = position;
+        this.data = data;
+    }
+
+    /**
+     * The position of the record in the ledger.
+     */
+    public BatchedRecordPosition getPosition() {
+        return position;
+    }
+
+    /**
+     * The content of the record.
+     */
+    public ByteBuf getData() {
+        return data;
+    }
+
+    /**
+     * The content of the record, as a byte array.
+     */
+    public byte[] getDataBytes() {
+        byte[] bytes = new byte[data.readableBytes()];
+        data.getBytes(data.readerIndex(), bytes);
+        return bytes;
+    }
+
+    @Override
+    public void close() {
+        data.release();
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+/**
+ * The position of a record batched in an entry: the id of the entry and the index of the record in it.
+ */
+public final class BatchedRecordPosition implements Comparable<BatchedRecordPosition> {
+
+    private final long entryId;
+    private final int index;
+
+    public BatchedRecordPosition(long entryId, int index) {
+        this.entryId = entryId;
+        this.index = index;
+    }
+
+    /**
+     * The id of the entry holding the record.
+     */
+    public long getEntryId() {
+        return entryId;
+    }
+
+    /**
+     * The index of the record in its entry.
+     */
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public int compareTo(BatchedRecordPosition other) {
+        int cmp = Long.compare(entryId, other.entryId);
+        return cmp != 0 ? cmp : Integer.compare(index, other.index);
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof BatchedRecordPosition)) {
+            return false;
+        }
+        BatchedRecordPosition other = (BatchedRecordPosition) obj;
+        return entryId == other.entryId && index == other.index;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(entryId) * 31 + index;
+    }
+
+    @Override
+    public String toString() {
+        return "(" + entryId + ", " + index + ")";
+    }
+}
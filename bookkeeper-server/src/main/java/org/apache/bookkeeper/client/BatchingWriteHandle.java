@@ -0,0 +1,254 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.CreateBuilder;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.apache.bookkeeper.common.concurrent.FutureUtils;
+
+/**
+ * A write handle which batches small records in larger entries.
+ *
+ * <p>Every entry added to a ledger is a separate add request, which has its own digest and is sent to, and
+ * acknowledged by, each bookie of the write quorum. For small records this per entry cost dominates, so this
+ * handle coalesces the records appended within a short delay in a single entry, which is added to the
+ * underlying {@link WriteHandle} once it holds {@code maxBatchRecords} records or {@code maxBatchBytes} bytes,
+ * or {@code maxBatchDelayMicros} after its first record was appended, whichever comes first.
+ *
+ * <p>The records are framed in the entries, so that {@link BatchedEntryReader} can split the entries back in
+ * records. Each record is identified by its {@link BatchedRecordPosition}.
+ *
+ * <p>The records are added in the order they are appended. A failure to add an entry fails all its records.
+ *
+ * <p>The ledger must be created with {@link #createAsync}, which marks it as holding batches in its custom
+ * metadata, so that the readers only split the entries of the ledgers which are known to be batched.
+ */
+public class BatchingWriteHandle implements AutoCloseable {
+
+    /**
+     * Key of the custom metadata marking the ledgers whose entries are batches of records. The value is the
+     * version of the batch format.
+     */
+    public static final String BATCHED_LEDGER_METADATA_KEY = "bk-batched-records";
+
+    private final WriteHandle writeHandle;
+    private final ScheduledExecutorService scheduler;
+    private final ByteBufAllocator allocator;
+    private final int maxBatchRecords;
+    private final int maxBatchBytes;
+    private final long maxBatchDelayMicros;
+
+    // the records of the batch being built, with their futures
+    private List<ByteBuf> records;
+    private List<CompletableFuture<BatchedRecordPosition>> futures;
+    private int batchBytes = 0;
+    private ScheduledFuture<?> flushTask = null;
+    private CompletableFuture<Long> lastAddFuture = CompletableFuture.completedFuture(-1L);
+    private boolean closed = false;
+
+    public BatchingWriteHandle(WriteHandle writeHandle,
+                               ScheduledExecutorService scheduler,
+                               int maxBatchRecords,
+                               int maxBatchBytes,
+                               long maxBatchDelayMicros) {
+        this(writeHandle, scheduler, PooledByteBufAllocator.DEFAULT,
+             maxBatchRecords, maxBatchBytes, maxBatchDelayMicros);
+    }
+
+    public BatchingWriteHandle(WriteHandle writeHandle,
+                               ScheduledExecutorService scheduler,
+                               ByteBufAllocator allocator,
+                               int maxBatchRecords,
+                               int maxBatchBytes,
+                               long maxBatchDelayMicros) {
+        checkBatchLimits(maxBatchRecords, maxBatchBytes, maxBatchDelayMicros);
+        if (!isBatchedLedger(writeHandle.getLedgerMetadata())) {
+            throw new IllegalArgumentException("Ledger " + writeHandle.getId()
+                    + " was not created as a batched ledger");
+        }
+        this.writeHandle = writeHandle;
+        this.scheduler = scheduler;
+        this.allocator = allocator;
+        this.maxBatchRecords = maxBatchRecords;
+        this.maxBatchBytes = maxBatchBytes;
+        this.maxBatchDelayMicros = maxBatchDelayMicros;
+        newBatch();
+    }
+
+    /**
+     * Create a ledger marked as holding batches of records, and a batching handle to write it.
+     *
+     * @param createBuilder the builder of the ledger, its custom metadata is set by this method
+     * @param customMetadata the custom metadata of the ledger, to which the batching mark is added
+     */
+    public static CompletableFuture<BatchingWriteHandle> createAsync(CreateBuilder createBuilder,
+                                                                     Map<String, byte[]> customMetadata,
+                                                                     ScheduledExecutorService scheduler,
+                                                                     int maxBatchRecords,
+                                                                     int maxBatchBytes,
+                                                                     long maxBatchDelayMicros) {
+        // don't create a ledger which couldn't be written
+        checkBatchLimits(maxBatchRecords, maxBatchBytes, maxBatchDelayMicros);
+        Map<String, byte[]> metadata = new HashMap<>(customMetadata);
+        metadata.put(BATCHED_LEDGER_METADATA_KEY, Byte.toString(EntryBatchFormat.VERSION).getBytes(UTF_8));
+        return createBuilder.withCustomMetadata(Collections.unmodifiableMap(metadata)).execute()
+            .thenApply(writeHandle -> new BatchingWriteHandle(writeHandle, scheduler,
+                    maxBatchRecords, maxBatchBytes, maxBatchDelayMicros));
+    }
+
+    private static void checkBatchLimits(int maxBatchRecords, int maxBatchBytes, long maxBatchDelayMicros) {
+        if (maxBatchRecords <= 0 || maxBatchBytes <= 0 || maxBatchDelayMicros < 0) {
+            throw new IllegalArgumentException("Invalid batch limits: " + maxBatchRecords + " records, "
+                    + maxBatchBytes + " bytes, " + maxBatchDelayMicros + " us");
+        }
+    }
+
+    /**
+     * Check whether the entries of a ledger are batches of records.
+     */
+    public static boolean isBatchedLedger(LedgerMetadata metadata) {
+        return metadata.getCustomMetadata().containsKey(BATCHED_LEDGER_METADATA_KEY);
+    }
+
+    /**
+     * Get the underlying write handle.
+     */
+    public WriteHandle getWriteHandle() {
+        return writeHandle;
+    }
+
+    /**
+     * Append a record asynchronously.
+     *
+     * @param record the record to append. Its reference count is decremented once it has been copied in a
+     *               batch, do not reuse it.
+     * @return a future completed with the position of the record, once the entry holding it has been added
+     */
+    public CompletableFuture<BatchedRecordPosition> appendAsync(ByteBuf record) {
+        CompletableFuture<BatchedRecordPosition> future = new CompletableFuture<>();
+        int size = record.readableBytes();
+        synchronized (this) {
+            if (closed) {
+                record.release();
+                return FutureUtils.exception(new BKException.BKLedgerClosedException());
+            }
+            // a record which doesn't fit in the current batch starts a new one
+            if (!records.isEmpty()
+                && EntryBatchFormat.entrySize(records.size() + 1, batchBytes + size) > maxBatchBytes) {
+                flushBatch();
+            }
+            records.add(record);
+            futures.add(future);
+            batchBytes += size;
+            if (records.size() >= maxBatchRecords
+                || EntryBatchFormat.entrySize(records.size(), batchBytes) >= maxBatchBytes
+                || maxBatchDelayMicros == 0) {
+                flushBatch();
+            } else if (records.size() == 1) {
+                flushTask = scheduler.schedule(this::flush, maxBatchDelayMicros, TimeUnit.MICROSECONDS);
+            }
+        }
+        return future;
+    }
+
+    /**
+     * Add the current batch to the ledger, without waiting for its delay to expire.
+     */
+    public synchronized void flush() {
+        if (!records.isEmpty()) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() {
+        if (flushTask != null) {
+            flushTask.cancel(false);
+            flushTask = null;
+        }
+        final List<ByteBuf> batchRecords = records;
+        final List<CompletableFuture<BatchedRecordPosition>> batchFutures = futures;
+        ByteBuf entry;
+        try {
+            entry = EntryBatchFormat.encode(allocator, batchRecords, batchBytes);
+        } catch (RuntimeException | Error e) {
+            // the records of the batch are lost, don't leave their appends pending forever
+            batchFutures.forEach(future -> future.completeExceptionally(e));
+            throw e;
+        } finally {
+            batchRecords.forEach(ByteBuf::release);
+            newBatch();
+        }
+
+        // the entries are added in order, since this is called with the lock held
+        lastAddFuture = writeHandle.appendAsync(entry);
+        lastAddFuture.whenComplete((entryId, cause) -> {
+            for (int i = 0; i < batchFutures.size(); i++) {
+                if (cause != null) {
+                    batchFutures.get(i).completeExceptionally(cause);
+                } else {
+                    batchFutures.get(i).complete(new BatchedRecordPosition(entryId, i));
+                }
+            }
+        });
+    }
+
+    private void newBatch() {
+        records = new ArrayList<>();
+        futures = new ArrayList<>();
+        batchBytes = 0;
+    }
+
+    /**
+     * Flush the current batch, wait for all the entries to be added, and close the underlying handle.
+     */
+    public CompletableFuture<Void> closeAsync() {
+        CompletableFuture<Long> lastAdd;
+        synchronized (this) {
+            if (!closed) {
+                closed = true;
+                flush();
+            }
+            lastAdd = lastAddFuture;
+        }
+        return lastAdd.handle((entryId, cause) -> null)
+            .thenCompose(ignored -> writeHandle.closeAsync());
+    }
+
+    @Override
+    public void close() throws BKException, InterruptedException {
+        SyncCallbackUtils.waitForResult(closeAsync());
+    }
+}
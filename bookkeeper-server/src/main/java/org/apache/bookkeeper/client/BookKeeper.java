@@ -142,6 +142,8 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
     final LedgerManagerFactory ledgerManagerFactory;
     final LedgerManager ledgerManager;
     final LedgerIdGenerator ledgerIdGenerator;
+    // Optional cache of the ledger metadata read by the open operations
+    final LedgerMetadataCache ledgerMetadataCache;
 
     // Ensemble Placement Policy
     final EnsemblePlacementPolicy placementPolicy;
@@ -538,6 +540,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         }
         this.ledgerManager = new CleanupLedgerManager(ledgerManagerFactory.newLedgerManager());
         this.ledgerIdGenerator = ledgerManagerFactory.newLedgerIdGenerator();
+        this.ledgerMetadataCache = conf.getLedgerMetadataCacheMaxSizeBytes() > 0
+                ? new LedgerMetadataCache(ledgerManager, conf.getLedgerMetadataCacheMaxSizeBytes(), clientStats)
+                : null;
 
         this.bookieQuarantineRatio = conf.getBookieQuarantineRatio();
         scheduleBookieHealthCheckIfEnabled(conf);
@@ -561,6 +566,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         ledgerManagerFactory = null;
         ledgerManager = null;
         ledgerIdGenerator = null;
+        ledgerMetadataCache = null;
         featureProvider = null;
         eventLoopGroup = null;
         bookieWatcher = null;
@@ -653,6 +659,25 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         return ledgerManager;
     }
 
+    /**
+     * Read the metadata of a ledger, through the ledger metadata cache when it is enabled.
+     *
+     * @param acceptOpenLedger whether cached metadata can be returned for a ledger that is not closed
+     */
+    CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId, boolean acceptOpenLedger) {
+        if (ledgerMetadataCache != null) {
+            return ledgerMetadataCache.readLedgerMetadata(ledgerId, acceptOpenLedger);
+        } else {
+            return getLedgerManager().readLedgerMetadata(ledgerId);
+        }
+    }
+
+    void invalidateCachedLedgerMetadata(long ledgerId) {
+        if (ledgerMetadataCache != null) {
+            ledgerMetadataCache.invalidate(ledgerId);
+        }
+    }
+
     @VisibleForTesting
     public LedgerManagerFactory getLedgerManagerFactory() {
         return ledgerManagerFactory;
@@ -1380,7 +1405,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
      * @param cb    callback method
      */
     public void asyncIsClosed(long lId, final IsClosedCallback cb, final Object ctx){
-        ledgerManager.readLedgerMetadata(lId).whenComplete((metadata, exception) -> {
+        readLedgerMetadata(lId, false).whenComplete((metadata, exception) -> {
                 if (exception == null) {
                     cb.isClosedComplete(BKException.Code.OK, metadata.getValue().isClosed(), ctx);
                 } else {
@@ -1452,6 +1477,9 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
         // Close bookie client so all pending bookie requests would be failed
         // which will reject any incoming bookie requests.
         bookieClient.close();
+        if (ledgerMetadataCache != null) {
+            ledgerMetadataCache.close();
+        }
         try {
             // Close ledger manage so all pending metadata requests would be failed
             // which will reject any incoming metadata requests.
@@ -1607,7 +1635,7 @@ public class BookKeeper implements org.apache.bookkeeper.client.api.BookKeeper {
 
     @Override
     public CompletableFuture<LedgerMetadata> getLedgerMetadata(long ledgerId) {
-        CompletableFuture<Versioned<LedgerMetadata>> versioned = getLedgerManager().readLedgerMetadata(ledgerId);
+        CompletableFuture<Versioned<LedgerMetadata>> versioned = readLedgerMetadata(ledgerId, true);
         return versioned.thenApply(versionedLedgerMetadata -> {
             return versionedLedgerMetadata.getValue();
         });
@@ -44,4 +44,14 @@ public interface BookiesHealthInfo {
      */
     long getBookiePendingRequests(BookieId bookieSocketAddress);
 
+    /**
+     * Returns the average latency of the reads recently served by a bookie.
+     *
+     * @param bookieSocketAddress
+     * @return average read latency in nanoseconds, 0 if unknown
+     */
+    default long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+        return 0;
+    }
+
 }
@@ -0,0 +1,105 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The framing of the records batched in a single entry by {@link BatchingWriteHandle}.
+ *
+ * <pre>
+ * +------------------+-------------+---------------+------------------+-----+
+ * | magic (2 bytes)  | version (1) | count (4)     | length (4), data | ... |
+ * +------------------+-------------+---------------+------------------+-----+
+ * </pre>
+ */
+final class EntryBatchFormat {
+
+    static final short MAGIC = (short) 0xBA7C;
+    static final byte VERSION = 1;
+    static final int HEADER_SIZE = 2 + 1 + 4;
+    static final int RECORD_HEADER_SIZE = 4;
+
+    private EntryBatchFormat() {
+    }
+
+    /**
+     * Get the size of the entry holding records of {@code dataSize} bytes in total.
+     */
+    static int entrySize(int numRecords, int dataSize) {
+        return HEADER_SIZE + numRecords * RECORD_HEADER_SIZE + dataSize;
+    }
+
+    /**
+     * Frame records in a single entry. The records are not released.
+     */
+    static ByteBuf encode(ByteBufAllocator allocator, List<ByteBuf> records, int dataSize) {
+        ByteBuf entry = allocator.buffer(entrySize(records.size(), dataSize));
+        entry.writeShort(MAGIC);
+        entry.writeByte(VERSION);
+        entry.writeInt(records.size());
+        for (ByteBuf record : records) {
+            entry.writeInt(record.readableBytes());
+            entry.writeBytes(record, record.readerIndex(), record.readableBytes());
+        }
+        return entry;
+    }
+
+    /**
+     * Split an entry in the records it holds.
+     *
+     * <p>The returned records are slices of the entry, which are not retained.
+     *
+     * @return the records of the entry, or null if the entry is not a valid batch
+     */
+    static List<ByteBuf> decode(ByteBuf entry) {
+        int index = entry.readerIndex();
+        int end = entry.writerIndex();
+        if (end - index < HEADER_SIZE
+            || entry.getShort(index) != MAGIC
+            || entry.getByte(index + 2) != VERSION) {
+            return null;
+        }
+        int count = entry.getInt(index + 3);
+        if (count < 0 || count > (end - index - HEADER_SIZE) / RECORD_HEADER_SIZE) {
+            return null;
+        }
+
+        List<ByteBuf> records = new ArrayList<>(count);
+        index += HEADER_SIZE;
+        for (int i = 0; i < count; i++) {
+            if (end - index < RECORD_HEADER_SIZE) {
+                return null;
+            }
+            int length = entry.getInt(index);
+            index += RECORD_HEADER_SIZE;
+            if (length < 0 || length > end - index) {
+                return null;
+            }
+            records.add(entry.slice(index, length));
+            index += length;
+        }
+        return index == end ? records : null;
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import org.apache.bookkeeper.common.util.MathUtils;
+
+/**
+ * A lock free histogram of recent request latencies, used to estimate their percentiles.
+ *
+ * <p>Latencies are counted in log scaled buckets of microseconds, with four buckets per power of two, so
+ * the estimated percentiles are at most about 20% above the actual ones. Only the samples of the current
+ * and previous time windows are counted, so that the percentiles follow the changes of latency.
+ *
+ * <p>Recording a sample races with the rotation of the windows, so a few samples may be lost or counted in
+ * the wrong window. That is good enough for estimating percentiles.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int NUM_BUCKETS = 64 << SUB_BUCKET_BITS;
+
+    private final long windowNanos;
+    private final LongSupplier clock;
+    private final AtomicLongArray[] windows = {
+        new AtomicLongArray(NUM_BUCKETS), new AtomicLongArray(NUM_BUCKETS)
+    };
+    private volatile int current = 0;
+    private volatile long windowStartNanos;
+
+    LatencyHistogram(long windowMillis) {
+        this(windowMillis, MathUtils::nowInNano);
+    }
+
+    @VisibleForTesting
+    LatencyHistogram(long windowMillis, LongSupplier clock) {
+        this.windowNanos = TimeUnit.MILLISECONDS.toNanos(windowMillis);
+        this.clock = clock;
+        this.windowStartNanos = clock.getAsLong();
+    }
+
+    void recordLatency(long latencyNanos) {
+        maybeRotate();
+        windows[current].incrementAndGet(bucket(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+    }
+
+    /**
+     * Get the number of samples in the current and previous windows.
+     */
+    long getCount() {
+        maybeRotate();
+        long count = 0;
+        for (AtomicLongArray window : windows) {
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                count += window.get(i);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Estimate a percentile of the latencies of the current and previous windows.
+     *
+     * @param percentile the percentile, between 0 and 100
+     * @param minCount the minimum number of samples for the estimation to be meaningful
+     * @return the estimated percentile, in microseconds, or -1 if there are fewer than {@code minCount} samples
+     */
+    long getPercentileMicros(double percentile, long minCount) {
+        maybeRotate();
+        long[] counts = new long[NUM_BUCKETS];
+        long total = 0;
+        for (AtomicLongArray window : windows) {
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                counts[i] += window.get(i);
+                total += window.get(i);
+            }
+        }
+        if (total == 0 || total < minCount) {
+            return -1;
+        }
+
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < NUM_BUCKETS; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketUpperBound(i);
+            }
+        }
+        return bucketUpperBound(NUM_BUCKETS - 1);
+    }
+
+    private void maybeRotate() {
+        long now = clock.getAsLong();
+        long start = windowStartNanos;
+        if (now - start < windowNanos) {
+            return;
+        }
+        synchronized (this) {
+            if (windowStartNanos != start) {
+                return;
+            }
+            int previous = 1 - current;
+            AtomicLongArray stale = windows[previous];
+            for (int i = 0; i < NUM_BUCKETS; i++) {
+                stale.set(i, 0);
+            }
+            if (now - start >= 2 * windowNanos) {
+                // nothing was recorded for a whole window, the current one is stale as well
+                AtomicLongArray old = windows[current];
+                for (int i = 0; i < NUM_BUCKETS; i++) {
+                    old.set(i, 0);
+                }
+            }
+            current = previous;
+            windowStartNanos = now;
+        }
+    }
+
+    // values below 4 have their own bucket, the others are split in four buckets per power of two
+    static int bucket(long micros) {
+        if (micros < (1 << SUB_BUCKET_BITS)) {
+            return (int) Math.max(micros, 0);
+        }
+        int log2 = 63 - Long.numberOfLeadingZeros(micros);
+        int subBucket = (int) (micros >>> (log2 - SUB_BUCKET_BITS)) & ((1 << SUB_BUCKET_BITS) - 1);
+        return ((log2 - SUB_BUCKET_BITS + 1) << SUB_BUCKET_BITS) + subBucket;
+    }
+
+    static long bucketUpperBound(int bucket) {
+        if (bucket < (1 << SUB_BUCKET_BITS)) {
+            return bucket;
+        }
+        int log2 = (bucket >>> SUB_BUCKET_BITS) + SUB_BUCKET_BITS - 1;
+        long subBucket = bucket & ((1 << SUB_BUCKET_BITS) - 1);
+        if (log2 >= 62) {
+            return Long.MAX_VALUE;
+        }
+        return ((1L << SUB_BUCKET_BITS) + subBucket + 1) << (log2 - SUB_BUCKET_BITS);
+    }
+}
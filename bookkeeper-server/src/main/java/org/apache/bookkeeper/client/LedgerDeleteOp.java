@@ -83,6 +83,7 @@ class LedgerDeleteOp {
                         deleteOpLogger.registerFailedEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
                     } else {
                         deleteOpLogger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTime), TimeUnit.NANOSECONDS);
+                        bk.invalidateCachedLedgerMetadata(ledgerId);
                     }
                     cb.deleteComplete(BKException.getExceptionCode(exception), this.ctx);
                 }, bk.getMainWorkerPool().chooseThread(ledgerId));
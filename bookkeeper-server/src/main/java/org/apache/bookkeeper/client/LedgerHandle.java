@@ -239,6 +239,11 @@ public class LedgerHandle implements WriteHandle {
             public long getBookiePendingRequests(BookieId bookieSocketAddress) {
                 return clientCtx.getBookieClient().getNumPendingRequests(bookieSocketAddress, ledgerId);
             }
+
+            @Override
+            public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+                return clientCtx.getBookieClient().getReadLatencyNanos(bookieSocketAddress);
+            }
         };
 
         ensembleChangeCounter = clientCtx.getClientStats().getEnsembleChangeCounter();
@@ -694,6 +699,50 @@ public class LedgerHandle implements WriteHandle {
         asyncReadEntriesInternal(firstEntry, lastEntry, cb, ctx, false);
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>When every bookie of the ensemble stores every entry, the whole batch is fetched from a single bookie
+     * with one request. Striped ledgers fall back to a regular range read, which doesn't honour {@code maxSize}.
+     */
+    @Override
+    public CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        // Little sanity check
+        if (startEntry < 0 || maxCount <= 0 || maxSize <= 0) {
+            LOG.error("IncorrectParameterException on ledgerId:{} startEntry:{} maxCount:{} maxSize:{}",
+                    ledgerId, startEntry, maxCount, maxSize);
+            return FutureUtils.exception(new BKIncorrectParameterException());
+        }
+
+        if (startEntry > lastAddConfirmed) {
+            LOG.error("BatchReadAsync exception on ledgerId:{} startEntry:{} lastAddConfirmed:{}",
+                    ledgerId, startEntry, lastAddConfirmed);
+            return FutureUtils.exception(new BKReadException());
+        }
+
+        long lastEntry = Math.min(startEntry + maxCount - 1, lastAddConfirmed);
+        LedgerMetadata metadata = getLedgerMetadata();
+        if (metadata.getEnsembleSize() != metadata.getWriteQuorumSize()) {
+            return readEntriesInternalAsync(startEntry, lastEntry, false);
+        }
+        // a batch is served by a single bookie, so it must not span over an ensemble change
+        long nextEnsembleChange = LedgerMetadataUtils.getNextEnsembleChange(metadata, startEntry);
+        if (nextEnsembleChange != -1) {
+            lastEntry = Math.min(lastEntry, nextEnsembleChange - 1);
+        }
+
+        BatchedReadOp op = new BatchedReadOp(this, clientCtx, startEntry, (int) (lastEntry - startEntry + 1),
+                maxSize);
+        if (clientCtx.isClientClosed()) {
+            op.future().completeExceptionally(BKException.create(ClientClosedException));
+        } else if (isHandleWritable()) {
+            clientCtx.getMainWorkerPool().executeOrdered(ledgerId, op);
+        } else {
+            op.run();
+        }
+        return op.future();
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
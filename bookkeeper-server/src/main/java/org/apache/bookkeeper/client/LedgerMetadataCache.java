@@ -0,0 +1,176 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.bookkeeper.client;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalNotification;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.versioning.Version;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Client side cache of the ledger metadata, in front of {@link LedgerManager#readLedgerMetadata(long)}.
+ *
+ * <p>A metadata listener is registered on the ledger manager for each cached ledger, so that the cached copy
+ * follows the updates of the metadata store and is dropped when the ledger is deleted. A notification only
+ * replaces the cached copy when it carries a newer version.
+ *
+ * <p>The cache is bounded by the estimated size of the cached metadata. The listener of a ledger is unregistered
+ * when the ledger is evicted.
+ */
+class LedgerMetadataCache {
+    private static final Logger LOG = LoggerFactory.getLogger(LedgerMetadataCache.class);
+
+    private final LedgerManager ledgerManager;
+    private final Cache<Long, CachedLedgerMetadata> cache;
+    private final Counter hitsCounter;
+    private final Counter missesCounter;
+
+    LedgerMetadataCache(LedgerManager ledgerManager, long maxSizeBytes, BookKeeperClientStats clientStats) {
+        this.ledgerManager = ledgerManager;
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxSizeBytes)
+                .weigher((Long ledgerId, CachedLedgerMetadata cached) -> cached.weight)
+                .removalListener(this::onRemoval)
+                .build();
+        this.hitsCounter = clientStats.getLedgerMetadataCacheHitsCounter();
+        this.missesCounter = clientStats.getLedgerMetadataCacheMissesCounter();
+    }
+
+    /**
+     * Read the metadata of a ledger, from the cache if possible.
+     *
+     * @param ledgerId ledger id
+     * @param acceptOpenLedger whether the cached metadata can be used if the ledger is not closed. When false, the
+     *                         metadata of the ledgers that are still open is always read from the ledger manager.
+     */
+    CompletableFuture<Versioned<LedgerMetadata>> readLedgerMetadata(long ledgerId, boolean acceptOpenLedger) {
+        CachedLedgerMetadata cached = cache.getIfPresent(ledgerId);
+        if (cached != null) {
+            Versioned<LedgerMetadata> metadata = cached.metadata;
+            if (acceptOpenLedger || metadata.getValue().isClosed()) {
+                hitsCounter.inc();
+                return CompletableFuture.completedFuture(metadata);
+            }
+        }
+
+        missesCounter.inc();
+        return ledgerManager.readLedgerMetadata(ledgerId).whenComplete((metadata, exception) -> {
+            if (exception == null) {
+                put(ledgerId, metadata);
+            }
+        });
+    }
+
+    void invalidate(long ledgerId) {
+        cache.invalidate(ledgerId);
+    }
+
+    void close() {
+        cache.invalidateAll();
+    }
+
+    private void put(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        CachedLedgerMetadata cached = new CachedLedgerMetadata(ledgerId, metadata);
+        // The listener keeps the cached metadata up to date from now on. It is registered before the entry is
+        // inserted, since the insertion can evict the entry right away and unregister it.
+        ledgerManager.registerLedgerMetadataListener(ledgerId, cached);
+        CachedLedgerMetadata existing = cache.asMap().putIfAbsent(ledgerId, cached);
+        if (existing != null) {
+            ledgerManager.unregisterLedgerMetadataListener(ledgerId, cached);
+            existing.update(metadata);
+        } else if (cached.deleted) {
+            // The ledger was deleted while the listener was being registered
+            cache.asMap().remove(ledgerId, cached);
+        }
+    }
+
+    private void onRemoval(RemovalNotification<Long, CachedLedgerMetadata> notification) {
+        CachedLedgerMetadata cached = notification.getValue();
+        if (notification.getCause() != RemovalCause.REPLACED && cached != null && !cached.deleted) {
+            // The listeners of the deleted ledgers are dropped by the ledger manager
+            ledgerManager.unregisterLedgerMetadataListener(cached.ledgerId, cached);
+        }
+    }
+
+    /**
+     * Rough estimate of the memory retained by the metadata of a ledger.
+     */
+    static int estimateSize(LedgerMetadata metadata) {
+        long size = 128;
+        if (metadata.hasPassword()) {
+            size += metadata.getPassword().length;
+        }
+        for (Map.Entry<String, byte[]> e : metadata.getCustomMetadata().entrySet()) {
+            size += 48 + e.getKey().length() * 2 + e.getValue().length;
+        }
+        for (List<BookieId> ensemble : metadata.getAllEnsembles().values()) {
+            size += 48 + 8L * ensemble.size();
+        }
+        return (int) Math.min(size, Integer.MAX_VALUE);
+    }
+
+    private final class CachedLedgerMetadata implements LedgerMetadataListener {
+        private final long ledgerId;
+        private final int weight;
+        private volatile Versioned<LedgerMetadata> metadata;
+        private volatile boolean deleted = false;
+
+        CachedLedgerMetadata(long ledgerId, Versioned<LedgerMetadata> metadata) {
+            this.ledgerId = ledgerId;
+            this.metadata = metadata;
+            this.weight = estimateSize(metadata.getValue());
+        }
+
+        synchronized void update(Versioned<LedgerMetadata> newMetadata) {
+            if (metadata.getVersion().compare(newMetadata.getVersion()) == Version.Occurred.BEFORE) {
+                metadata = newMetadata;
+            }
+        }
+
+        @Override
+        public void onChanged(long ledgerId, Versioned<LedgerMetadata> newMetadata) {
+            if (newMetadata == null) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Ledger {} was deleted, removing its metadata from the cache", ledgerId);
+                }
+                deleted = true;
+                cache.asMap().remove(ledgerId, this);
+            } else {
+                update(newMetadata);
+            }
+        }
+    }
+}
@@ -109,9 +109,10 @@ class LedgerOpenOp {
         startTime = MathUtils.nowInNano();
 
         /**
-         * Asynchronously read the ledger metadata node.
+         * Asynchronously read the ledger metadata node. The metadata of a ledger that is not closed
+         * is only taken from the cache if the ledger doesn't need to be recovered.
          */
-        bk.getLedgerManager().readLedgerMetadata(ledgerId)
+        bk.readLedgerMetadata(ledgerId, !doRecovery)
             .whenComplete((metadata, exception) -> {
                     if (exception != null) {
                         openComplete(BKException.getExceptionCode(exception), null);
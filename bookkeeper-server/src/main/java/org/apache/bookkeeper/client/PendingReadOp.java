@@ -390,6 +390,14 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
             sendNextRead();
         }
 
+        @Override
+        public synchronized BookieId getLastRequestedBookie() {
+            if (nextReplicaIndexToReadFrom == 0) {
+                return null;
+            }
+            return ensemble.get(writeSet.get(nextReplicaIndexToReadFrom - 1));
+        }
+
         synchronized BookieId sendNextRead() {
             if (nextReplicaIndexToReadFrom >= getLedgerMetadata().getWriteQuorumSize()) {
                 // we are done, the read has failed from all replicas, just fail the
@@ -548,12 +556,14 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         final int bookieIndex;
         final BookieId to;
         final LedgerEntryRequest entry;
+        final long sendTimeNanos;
         long lac = LedgerHandle.INVALID_ENTRY_ID;
 
         ReadContext(int bookieIndex, BookieId to, LedgerEntryRequest entry) {
             this.bookieIndex = bookieIndex;
             this.to = to;
             this.entry = entry;
+            this.sendTimeNanos = MathUtils.nowInNano();
         }
 
         @Override
@@ -591,6 +601,13 @@ class PendingReadOp implements ReadEntryCallback, SafeRunnable {
         final ReadContext rctx = (ReadContext) ctx;
         final LedgerEntryRequest entry = rctx.entry;
 
+        if (!parallelRead && clientCtx.getConf().readSpeculativeRequestPolicy.isPresent()) {
+            // the failed and timed out reads are recorded too, otherwise only the fast reads of a bookie which
+            // times out would be left, and they would shorten its speculative timeout
+            clientCtx.getConf().readSpeculativeRequestPolicy.get()
+                .recordRequestLatency(rctx.to, MathUtils.elapsedNanos(rctx.sendTimeNanos));
+        }
+
         if (rc != BKException.Code.OK) {
             entry.logErrorAndReattemptRead(rctx.bookieIndex, rctx.to, "Error: " + BKException.getMessage(rc), rc);
             return;
@@ -26,6 +26,7 @@ import static org.apache.bookkeeper.client.BookKeeperClientStats.NUM_WRITABLE_BO
 import static org.apache.bookkeeper.client.BookKeeperClientStats.READ_REQUESTS_REORDERED;
 import static org.apache.bookkeeper.client.RegionAwareEnsemblePlacementPolicy.UNKNOWN_REGION;
 
+import com.google.common.annotations.VisibleForTesting;
 import com.google.common.cache.Cache;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
@@ -63,6 +64,7 @@ import org.apache.bookkeeper.net.NodeBase;
 import org.apache.bookkeeper.net.ScriptBasedMapping;
 import org.apache.bookkeeper.net.StabilizeNetworkTopology;
 import org.apache.bookkeeper.proto.BookieAddressResolver;
+import org.apache.bookkeeper.proto.BookieClient;
 import org.apache.bookkeeper.stats.Counter;
 import org.apache.bookkeeper.stats.Gauge;
 import org.apache.bookkeeper.stats.OpStatsLogger;
@@ -112,6 +114,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
     protected boolean enforceDurability = false;
     protected int stabilizePeriodSeconds = 0;
     protected int reorderThresholdPendingRequests = 0;
+    protected boolean reorderReadsByPredictedLatency = false;
     // looks like these only assigned in the same thread as constructor, immediately after constructor;
     // no need to make volatile
     protected StatsLogger statsLogger = null;
@@ -291,6 +294,7 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
                     return -1L;
                 }
             });
+        reorderReadsByPredictedLatency = conf.getReorderReadsByPredictedLatency();
         return initialize(
                 dnsResolver,
                 timer,
@@ -311,6 +315,51 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         // do nothing
     }
 
+    /**
+     * Order the write set by the time each bookie is predicted to take to serve one more read, that is its
+     * average read latency multiplied by the number of requests it would then have outstanding.
+     *
+     * <p>The bookies whose latency is not known yet come first, so that it gets measured, and the bookies
+     * whose channel is not writable come last. The order is stable, so that the bookies with the same
+     * prediction keep the order of the write set.
+     *
+     * @return whether the write set was reordered
+     */
+    @VisibleForTesting
+    static boolean reorderByPredictedLatency(List<BookieId> ensemble,
+                                             DistributionSchedule.WriteSet writeSet,
+                                             BookiesHealthInfo bookiesHealthInfo) {
+        long[] predicted = new long[writeSet.size()];
+        for (int i = 0; i < writeSet.size(); i++) {
+            BookieId address = ensemble.get(writeSet.get(i));
+            long pendingReqs = bookiesHealthInfo.getBookiePendingRequests(address);
+            if ((pendingReqs & BookieClient.PENDINGREQ_NOTWRITABLE_MASK) != 0) {
+                predicted[i] = Long.MAX_VALUE;
+            } else {
+                predicted[i] = bookiesHealthInfo.getBookieReadLatencyNanos(address) * (pendingReqs + 1);
+            }
+        }
+
+        boolean reordered = false;
+        for (int i = 1; i < predicted.length; i++) {
+            long current = predicted[i];
+            int j = i;
+            while (j > 0 && predicted[j - 1] > current) {
+                predicted[j] = predicted[j - 1];
+                j--;
+            }
+            if (j < i) {
+                predicted[j] = current;
+                writeSet.moveAndShift(i, j);
+                reordered = true;
+            }
+        }
+        if (reordered && LOG.isDebugEnabled()) {
+            LOG.debug("read set reordered by predicted latency to {}", writeSet);
+        }
+        return reordered;
+    }
+
     /*
      * this method should be called in readlock scope of 'rwLock'
      */
@@ -861,7 +910,9 @@ public class RackawareEnsemblePlacementPolicyImpl extends TopologyAwareEnsembleP
         }
 
         boolean reordered = false;
-        if (reorderThresholdPendingRequests > 0) {
+        if (reorderReadsByPredictedLatency) {
+            reordered = reorderByPredictedLatency(ensemble, writeSet, bookiesHealthInfo);
+        } else if (reorderThresholdPendingRequests > 0) {
             // if there are no slow or unavailable bookies, capture each bookie's number of
             // pending request to reorder requests based on a threshold of pending requests
 
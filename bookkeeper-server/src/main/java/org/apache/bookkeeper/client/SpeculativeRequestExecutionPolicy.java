@@ -22,6 +22,7 @@ package org.apache.bookkeeper.client;
 
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ScheduledFuture;
+import org.apache.bookkeeper.net.BookieId;
 
 /**
  * Define a policy for speculative request execution.
@@ -42,4 +43,14 @@ public interface SpeculativeRequestExecutionPolicy {
      */
     ScheduledFuture<?> initiateSpeculativeRequest(ScheduledExecutorService scheduler,
             SpeculativeRequestExecutor requestExecutor);
+
+    /**
+     * Notify the policy of the latency of a request served by a bookie, so that it can adapt
+     * when to issue speculative requests. The default implementation ignores it.
+     *
+     * @param bookie The bookie which served the request
+     * @param latencyNanos The latency of the request, in nanoseconds
+     */
+    default void recordRequestLatency(BookieId bookie, long latencyNanos) {
+    }
 }
@@ -59,6 +59,45 @@ public interface ReadHandle extends Handle {
                                                               BKException.HANDLER);
     }
 
+    /**
+     * Read a batch of consecutive entries asynchronously, starting from {@code startEntry}.
+     *
+     * <p>At most {@code maxCount} entries are returned, and never beyond the LastAddConfirmed. The first entry is
+     * always returned, while the following ones are only returned as long as their total size doesn't exceed
+     * {@code maxSize} bytes. Implementations are free to return fewer entries than requested, so the caller should
+     * keep reading from the entry following the last one returned.
+     *
+     * @param startEntry
+     *          id of the first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum total size of the entries to read, in bytes
+     * @return an handle to the result of the operation
+     */
+    default CompletableFuture<LedgerEntries> batchReadAsync(long startEntry, int maxCount, long maxSize) {
+        long lastEntry = Math.min(startEntry + maxCount - 1, getLastAddConfirmed());
+        return readAsync(startEntry, lastEntry);
+    }
+
+    /**
+     * Read a batch of consecutive entries synchronously.
+     *
+     * @param startEntry
+     *          id of the first entry of the batch
+     * @param maxCount
+     *          maximum number of entries to read
+     * @param maxSize
+     *          maximum total size of the entries to read, in bytes
+     * @return the result of the operation
+     * @see #batchReadAsync(long, int, long)
+     */
+    default LedgerEntries batchRead(long startEntry, int maxCount, long maxSize)
+            throws BKException, InterruptedException {
+        return FutureUtils.<LedgerEntries, BKException>result(batchReadAsync(startEntry, maxCount, maxSize),
+                                                              BKException.HANDLER);
+    }
+
     /**
      * Read a sequence of entries asynchronously, allowing to read after the LastAddConfirmed range.
      * <br>This is the same of
@@ -130,6 +130,16 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         help = "The number of unsuccessful lac updates on piggybacked responses"
     )
     private final Counter lacUpdateMissesCounter;
+    @StatsDoc(
+        name = LEDGER_METADATA_CACHE_HITS,
+        help = "The number of ledger metadata reads served by the client metadata cache"
+    )
+    private final Counter ledgerMetadataCacheHitsCounter;
+    @StatsDoc(
+        name = LEDGER_METADATA_CACHE_MISSES,
+        help = "The number of ledger metadata reads that had to go to the metadata store"
+    )
+    private final Counter ledgerMetadataCacheMissesCounter;
     @StatsDoc(
         name = CLIENT_CHANNEL_WRITE_WAIT,
         help = " The latency distribution of waiting time on channel being writable"
@@ -181,6 +191,8 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         this.ensembleChangeCounter = stats.getCounter(ENSEMBLE_CHANGES);
         this.lacUpdateHitsCounter = stats.getCounter(LAC_UPDATE_HITS);
         this.lacUpdateMissesCounter = stats.getCounter(LAC_UPDATE_MISSES);
+        this.ledgerMetadataCacheHitsCounter = stats.getCounter(LEDGER_METADATA_CACHE_HITS);
+        this.ledgerMetadataCacheMissesCounter = stats.getCounter(LEDGER_METADATA_CACHE_MISSES);
         this.clientChannelWriteWaitStats = stats.getOpStatsLogger(CLIENT_CHANNEL_WRITE_WAIT);
 
         speculativeReadCounter = stats.getCounter(SPECULATIVE_READ_COUNT);
@@ -269,6 +281,14 @@ public class BookKeeperClientStatsImpl implements BookKeeperClientStats {
         return lacUpdateMissesCounter;
     }
     @Override
+    public Counter getLedgerMetadataCacheHitsCounter() {
+        return ledgerMetadataCacheHitsCounter;
+    }
+    @Override
+    public Counter getLedgerMetadataCacheMissesCounter() {
+        return ledgerMetadataCacheMissesCounter;
+    }
+    @Override
     public OpStatsLogger getClientChannelWriteWaitLogger() {
         return clientChannelWriteWaitStats;
     }
@@ -93,6 +93,7 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
     protected static final String STORE_SYSTEMTIME_AS_LEDGER_CREATION_TIME = "storeSystemTimeAsLedgerCreationTime";
 
     protected static final String ENABLE_BUSY_WAIT = "enableBusyWait";
+    protected static final String ENABLE_IO_URING = "enableIoUring";
     protected static final String ENABLE_HEALTH_CHECK = "enableHealthCheck";
 
     // Metastore settings, only being used when LEDGER_MANAGER_FACTORY_CLASS is MSLedgerManagerFactory
@@ -1185,6 +1186,37 @@ public abstract class AbstractConfiguration<T extends AbstractConfiguration>
         return getThis();
     }
 
+    /**
+     * Return whether the Netty IO threads use the io_uring transport.
+     *
+     * <p>Default is false
+     *
+     * @return the value of the option
+     */
+    public boolean isIoUringEnabled() {
+        return getBoolean(ENABLE_IO_URING, false);
+    }
+
+    /**
+     * Option to use the io_uring transport for the Netty IO threads.
+     *
+     * <p>io_uring batches the socket reads and writes of the event loop in a shared ring with the kernel,
+     * which saves a syscall per request on small entries workloads. It requires a Linux kernel 5.9+ and the
+     * netty io_uring transport (netty-incubator-transport-native-io_uring) in the classpath. When either is
+     * missing, the IO threads fall back to the epoll transport.
+     *
+     * <p>Default is false.
+     *
+     * @param ioUringEnabled
+     *            if enabled, use the io_uring transport when available
+     *
+     * @see #isIoUringEnabled()
+     */
+    public T setIoUringEnabled(boolean ioUringEnabled) {
+        setProperty(ENABLE_IO_URING, ioUringEnabled);
+        return getThis();
+    }
+
     /**
      * Return the flag indicating whether to limit stats logging.
      *
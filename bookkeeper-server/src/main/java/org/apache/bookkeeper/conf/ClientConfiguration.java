@@ -96,6 +96,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String CLIENT_RECEIVEBUFFER_SIZE = "clientReceiveBufferSize";
     protected static final String CLIENT_WRITEBUFFER_LOW_WATER_MARK = "clientWriteBufferLowWaterMark";
     protected static final String CLIENT_WRITEBUFFER_HIGH_WATER_MARK = "clientWriteBufferHighWaterMark";
+    protected static final String CLIENT_FLUSH_CONSOLIDATION_ENABLED = "clientFlushConsolidationEnabled";
+    protected static final String CLIENT_FLUSH_CONSOLIDATION_MAX_FLUSHES = "clientFlushConsolidationMaxFlushes";
+    protected static final String CLIENT_FLUSH_STATS_ENABLED = "clientFlushStatsEnabled";
     protected static final String CLIENT_CONNECT_TIMEOUT_MILLIS = "clientConnectTimeoutMillis";
     protected static final String CLIENT_TCP_USER_TIMEOUT_MILLIS = "clientTcpUserTimeoutMillis";
     protected static final String NUM_CHANNELS_PER_BOOKIE = "numChannelsPerBookie";
@@ -109,6 +112,9 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String MAX_SPECULATIVE_READ_TIMEOUT = "maxSpeculativeReadTimeout";
     protected static final String SPECULATIVE_READ_TIMEOUT_BACKOFF_MULTIPLIER =
         "speculativeReadTimeoutBackoffMultiplier";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_ENABLED = "adaptiveSpeculativeReadEnabled";
+    protected static final String ADAPTIVE_SPECULATIVE_READ_PERCENTILE = "adaptiveSpeculativeReadPercentile";
+    protected static final String SPECULATIVE_READ_MAX_EXTRA_READS_PERCENT = "speculativeReadMaxExtraReadsPercent";
     protected static final String FIRST_SPECULATIVE_READ_LAC_TIMEOUT = "firstSpeculativeReadLACTimeout";
     protected static final String MAX_SPECULATIVE_READ_LAC_TIMEOUT = "maxSpeculativeReadLACTimeout";
     protected static final String SPECULATIVE_READ_LAC_TIMEOUT_BACKOFF_MULTIPLIER =
@@ -117,6 +123,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     protected static final String RECOVERY_READ_BATCH_SIZE = "recoveryReadBatchSize";
     protected static final String REORDER_READ_SEQUENCE_ENABLED = "reorderReadSequenceEnabled";
     protected static final String STICKY_READS_ENABLED = "stickyReadSEnabled";
+    protected static final String LEDGER_METADATA_CACHE_MAX_SIZE_BYTES = "ledgerMetadataCacheMaxSizeBytes";
     // Add Parameters
     protected static final String OPPORTUNISTIC_STRIPING = "opportunisticStriping";
     protected static final String DELAY_ENSEMBLE_CHANGE = "delayEnsembleChange";
@@ -160,6 +167,7 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
     public static final String ENSEMBLE_PLACEMENT_POLICY = "ensemblePlacementPolicy";
     protected static final String NETWORK_TOPOLOGY_STABILIZE_PERIOD_SECONDS = "networkTopologyStabilizePeriodSeconds";
     protected static final String READ_REORDER_THRESHOLD_PENDING_REQUESTS = "readReorderThresholdPendingRequests";
+    protected static final String READ_REORDER_BY_PREDICTED_LATENCY = "readReorderByPredictedLatency";
     protected static final String ENSEMBLE_PLACEMENT_POLICY_ORDER_SLOW_BOOKIES =
         "ensemblePlacementPolicyOrderSlowBookies";
 
@@ -468,6 +476,76 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the flushes of the requests written on a client netty channel are consolidated.
+     *
+     * <p>When enabled, the requests written while the channel is reading, or while the event loop runs other
+     * tasks, are flushed together at the end of the read or on the next event loop iteration, which saves
+     * syscalls at the cost of a slightly higher latency.
+     *
+     * @return whether the flushes are consolidated.
+     */
+    public boolean isClientFlushConsolidationEnabled() {
+        return getBoolean(CLIENT_FLUSH_CONSOLIDATION_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the consolidation of the flushes on client netty channels.
+     *
+     * @param enabled
+     *          whether the flushes are consolidated.
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientFlushConsolidationEnabled(boolean enabled) {
+        setProperty(CLIENT_FLUSH_CONSOLIDATION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of flushes consolidated on a client netty channel before the channel is flushed,
+     * which bounds the number of requests waiting for a flush.
+     *
+     * @return the maximum number of consolidated flushes.
+     */
+    public int getClientFlushConsolidationMaxFlushes() {
+        return getInt(CLIENT_FLUSH_CONSOLIDATION_MAX_FLUSHES, 256);
+    }
+
+    /**
+     * Set the maximum number of flushes consolidated on a client netty channel before the channel is flushed.
+     *
+     * @param maxFlushes
+     *          the maximum number of consolidated flushes.
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientFlushConsolidationMaxFlushes(int maxFlushes) {
+        setProperty(CLIENT_FLUSH_CONSOLIDATION_MAX_FLUSHES, maxFlushes);
+        return this;
+    }
+
+    /**
+     * Whether the number of requests sent by each flush of a client netty channel is recorded.
+     *
+     * <p>This shows how many flushes are consolidated, at the cost of recording a value on every flush.
+     *
+     * @return whether the flush stats are recorded.
+     */
+    public boolean isClientFlushStatsEnabled() {
+        return getBoolean(CLIENT_FLUSH_STATS_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the recording of the number of requests sent by each flush of a client netty channel.
+     *
+     * @param enabled
+     *          whether the flush stats are recorded.
+     * @return client configuration.
+     */
+    public ClientConfiguration setClientFlushStatsEnabled(boolean enabled) {
+        setProperty(CLIENT_FLUSH_STATS_ENABLED, enabled);
+        return this;
+    }
+
     /**
      * Get the tick duration in milliseconds that used for timeout timer.
      *
@@ -1038,6 +1116,82 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether the speculative read timeout adapts to the latency of the reads.
+     *
+     * <p>If enabled, a speculative read is sent once a read has been pending for longer than
+     * {@link #getAdaptiveSpeculativeReadPercentile()} of the recent read latencies of its bookie,
+     * instead of backing off from {@link #getFirstSpeculativeReadTimeout()}. The first speculative
+     * read timeout is then only used until enough latencies have been measured, and the timeout never
+     * exceeds {@link #getMaxSpeculativeReadTimeout()}. Speculative reads must be enabled with a
+     * positive {@link #getFirstSpeculativeReadTimeout()}.
+     *
+     * @return true if the speculative read timeout adapts to the latency of the reads.
+     */
+    public boolean isAdaptiveSpeculativeReadEnabled() {
+        return getBoolean(ADAPTIVE_SPECULATIVE_READ_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the adaptive speculative read timeout.
+     *
+     * @param enabled
+     *          whether the speculative read timeout adapts to the latency of the reads.
+     * @return client configuration.
+     * @see #isAdaptiveSpeculativeReadEnabled()
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadEnabled(boolean enabled) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the percentile of the read latencies used as adaptive speculative read timeout.
+     *
+     * @return percentile of the read latencies, 99 by default.
+     */
+    public double getAdaptiveSpeculativeReadPercentile() {
+        return getDouble(ADAPTIVE_SPECULATIVE_READ_PERCENTILE, 99.0);
+    }
+
+    /**
+     * Set the percentile of the read latencies used as adaptive speculative read timeout.
+     *
+     * @param percentile
+     *          percentile of the read latencies, between 0 and 100.
+     * @return client configuration.
+     */
+    public ClientConfiguration setAdaptiveSpeculativeReadPercentile(double percentile) {
+        setProperty(ADAPTIVE_SPECULATIVE_READ_PERCENTILE, percentile);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of speculative reads, as a percentage of the reads, when the adaptive
+     * speculative read timeout is enabled.
+     *
+     * <p>It prevents speculative reads from overloading the bookies when the latency of the whole
+     * cluster goes up.
+     *
+     * @return maximum percentage of extra reads, 5 by default.
+     */
+    public double getSpeculativeReadMaxExtraReadsPercent() {
+        return getDouble(SPECULATIVE_READ_MAX_EXTRA_READS_PERCENT, 5.0);
+    }
+
+    /**
+     * Set the maximum number of speculative reads, as a percentage of the reads, when the adaptive
+     * speculative read timeout is enabled.
+     *
+     * @param percent
+     *          maximum percentage of extra reads.
+     * @return client configuration.
+     */
+    public ClientConfiguration setSpeculativeReadMaxExtraReadsPercent(double percent) {
+        setProperty(SPECULATIVE_READ_MAX_EXTRA_READS_PERCENT, percent);
+        return this;
+    }
+
     /**
      * Get the period of time after which the first speculative read last add confirmed and entry
      * should be triggered.
@@ -1198,6 +1352,32 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Get the max size of the client ledger metadata cache, in bytes.
+     *
+     * @return max size of the ledger metadata cache. 0 means the cache is disabled.
+     */
+    public long getLedgerMetadataCacheMaxSizeBytes() {
+        return getLong(LEDGER_METADATA_CACHE_MAX_SIZE_BYTES, 0L);
+    }
+
+    /**
+     * Set the max size of the client ledger metadata cache, in bytes.
+     *
+     * <p>When enabled, opening a ledger reuses the metadata read by previous opens of the same ledger,
+     * instead of reading it from the metadata store again. A metadata watch is registered for each cached
+     * ledger to keep the cached copy up to date. The metadata of the ledgers that are not closed yet is
+     * only served from the cache for opens without recovery.
+     *
+     * @param maxSizeBytes
+     *          max size of the ledger metadata cache, in bytes. 0 disables the cache.
+     * @return client configuration.
+     */
+    public ClientConfiguration setLedgerMetadataCacheMaxSizeBytes(long maxSizeBytes) {
+        setProperty(LEDGER_METADATA_CACHE_MAX_SIZE_BYTES, maxSizeBytes);
+        return this;
+    }
+
     /**
      * Get Ensemble Placement Policy Class.
      *
@@ -1246,6 +1426,31 @@ public class ClientConfiguration extends AbstractConfiguration<ClientConfigurati
         return this;
     }
 
+    /**
+     * Whether to reorder reads by the predicted completion time of each bookie, computed from
+     * the average latency of its recent reads and its number of pending requests.
+     *
+     * <p>It only applies when {@link #isReorderReadSequenceEnabled()} is set. When enabled, it replaces
+     * the reordering based on {@link #getReorderThresholdPendingRequests()}.
+     *
+     * @return true if reads are reordered by predicted latency.
+     */
+    public boolean getReorderReadsByPredictedLatency() {
+        return getBoolean(READ_REORDER_BY_PREDICTED_LATENCY, false);
+    }
+
+    /**
+     * Enable or disable reordering reads by the predicted completion time of each bookie.
+     *
+     * @param enabled
+     *            whether to reorder reads by predicted latency.
+     * @return client configuration.
+     */
+    public ClientConfiguration setReorderReadsByPredictedLatency(boolean enabled) {
+        setProperty(READ_REORDER_BY_PREDICTED_LATENCY, enabled);
+        return this;
+    }
+
     /**
      * Get the network topology stabilize period in seconds. if it is zero, this feature is turned off.
      *
@@ -107,6 +107,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String COMPACTION_RATE = "compactionRate";
     protected static final String COMPACTION_RATE_BY_ENTRIES = "compactionRateByEntries";
     protected static final String COMPACTION_RATE_BY_BYTES = "compactionRateByBytes";
+    protected static final String COMPACTION_FOREGROUND_LATENCY_THRESHOLD_MILLIS =
+            "compactionForegroundLatencyThresholdMillis";
+    protected static final String COMPACTION_GLOBAL_RATE = "compactionGlobalRate";
 
     // Gc Parameters
     protected static final String GC_WAIT_TIME = "gcWaitTime";
@@ -143,11 +146,16 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String JOURNAL_BUFFERED_WRITES_THRESHOLD = "journalBufferedWritesThreshold";
     protected static final String JOURNAL_BUFFERED_ENTRIES_THRESHOLD = "journalBufferedEntriesThreshold";
     protected static final String JOURNAL_FLUSH_WHEN_QUEUE_EMPTY = "journalFlushWhenQueueEmpty";
+    protected static final String JOURNAL_GROUP_COMMIT_TARGET_LATENCY = "journalGroupCommitTargetLatencyMicros";
     protected static final String JOURNAL_REMOVE_FROM_PAGE_CACHE = "journalRemoveFromPageCache";
+    protected static final String JOURNAL_DIRECT_IO_ENABLED = "journalDirectIOEnabled";
+    protected static final String JOURNAL_DIRECT_IO_WRITE_BUFFERS_COUNT = "journalDirectIOWriteBuffersCount";
     protected static final String JOURNAL_PRE_ALLOC_SIZE = "journalPreAllocSizeMB";
+    protected static final String JOURNAL_PRE_ALLOC_POOL_SIZE = "journalPreAllocPoolSize";
     protected static final String JOURNAL_WRITE_BUFFER_SIZE = "journalWriteBufferSizeKB";
     protected static final String JOURNAL_ALIGNMENT_SIZE = "journalAlignmentSize";
     protected static final String NUM_JOURNAL_CALLBACK_THREADS = "numJournalCallbackThreads";
+    protected static final String JOURNAL_STRIPES_PER_DIRECTORY = "journalStripesPerDirectory";
     protected static final String JOURNAL_FORMAT_VERSION_TO_WRITE = "journalFormatVersionToWrite";
     protected static final String JOURNAL_QUEUE_SIZE = "journalQueueSize";
     protected static final String JOURNAL_MAX_MEMORY_SIZE_MB = "journalMaxMemorySizeMb";
@@ -178,6 +186,9 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String SERVER_SOCK_LINGER = "serverTcpLinger";
     protected static final String SERVER_WRITEBUFFER_LOW_WATER_MARK = "serverWriteBufferLowWaterMark";
     protected static final String SERVER_WRITEBUFFER_HIGH_WATER_MARK = "serverWriteBufferHighWaterMark";
+    protected static final String SERVER_FLUSH_CONSOLIDATION_ENABLED = "serverFlushConsolidationEnabled";
+    protected static final String SERVER_FLUSH_CONSOLIDATION_MAX_FLUSHES = "serverFlushConsolidationMaxFlushes";
+    protected static final String SERVER_FLUSH_STATS_ENABLED = "serverFlushStatsEnabled";
     protected static final String SERVER_NUM_IO_THREADS = "serverNumIOThreads";
 
     // Zookeeper Parameters
@@ -224,6 +235,7 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String NUM_LONG_POLL_WORKER_THREADS = "numLongPollWorkerThreads";
     protected static final String NUM_HIGH_PRIORITY_WORKER_THREADS = "numHighPriorityWorkerThreads";
     protected static final String READ_WORKER_THREADS_THROTTLING_ENABLED = "readWorkerThreadsThrottlingEnabled";
+    protected static final String ZERO_COPY_READ_MIN_ENTRY_SIZE = "zeroCopyReadMinEntrySize";
 
     // Long poll parameters
     protected static final String REQUEST_TIMER_TICK_DURATION_MILLISEC = "requestTimerTickDurationMs";
@@ -288,6 +300,20 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
      * config specifying if the entrylog per ledger is enabled or not.
      */
     protected static final String ENTRY_LOG_PER_LEDGER_ENABLED = "entryLogPerLedgerEnabled";
+    protected static final String ENTRY_LOG_TIERING_ENABLED = "entryLogTieringEnabled";
+    protected static final String ENTRY_LOG_TIERING_WINDOW_SECONDS = "entryLogTieringWindowSeconds";
+    protected static final String ENTRY_LOG_TIERING_HOT_WRITE_RATE_BYTES = "entryLogTieringHotWriteRateBytes";
+    protected static final String ENTRY_LOG_TIERING_COLD_WRITE_RATE_BYTES = "entryLogTieringColdWriteRateBytes";
+    /*
+     * config specifying if the metadata of the active entry logs is checkpointed when they are flushed.
+     */
+    protected static final String ENTRY_LOG_METADATA_CHECKPOINT_ENABLED = "entryLogMetadataCheckpointEnabled";
+    /*
+     * config specifying if the entries of the sealed entry logs are read through memory mappings.
+     */
+    protected static final String ENTRY_LOG_MMAP_READ_ENABLED = "entryLogMmapReadEnabled";
+    protected static final String ENTRY_LOG_MMAP_WINDOW_SIZE_MB = "entryLogMmapWindowSizeMB";
+    protected static final String ENTRY_LOG_MMAP_MAX_WINDOWS = "entryLogMmapMaxWindows";
     // In the case of multipleentrylogs, multiple threads can be used to flush the memtable parallelly.
     protected static final String NUMBER_OF_MEMTABLE_FLUSH_THREADS = "numOfMemtableFlushThreads";
 
@@ -315,6 +341,21 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
     protected static final String ENTRY_LOG_PER_LEDGER_COUNTER_LIMITS_MULT_FACTOR =
             "entryLogPerLedgerCounterLimitsMultFactor";
 
+    /*
+     * config specifying if the entry logs of DbLedgerStorage are written and read with direct I/O.
+     */
+    protected static final String DB_STORAGE_DIRECT_IO_ENTRY_LOGGER = "dbStorage_directIOEntryLogger";
+    protected static final String DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_SIZE_MB =
+            "dbStorage_directIOEntryLoggerWriteBufferSizeMb";
+    protected static final String DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFERS_COUNT =
+            "dbStorage_directIOEntryLoggerWriteBuffersCount";
+    protected static final String DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_ACQUIRE_TIMEOUT_MS =
+            "dbStorage_directIOEntryLoggerWriteBufferAcquireTimeoutMs";
+    protected static final String DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB =
+            "dbStorage_directIOEntryLoggerReadBufferSizeKb";
+    protected static final String DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_MAX_FD_CACHE_TIME_SECONDS =
+            "dbStorage_directIOEntryLoggerMaxFdCacheTimeSeconds";
+
     // Perform local consistency check on bookie startup
     protected static final String LOCAL_CONSISTENCY_CHECK_ON_STARTUP = "localConsistencyCheckOnStartup";
 
@@ -819,6 +860,31 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this.getInt(JOURNAL_PRE_ALLOC_SIZE, 16);
     }
 
+    /**
+     * Number of whole journal files to allocate ahead of time, in the background, so that rolling the journal
+     * doesn't have to create and extend a new file. Old journal files are recycled into the pool instead of
+     * being deleted. A value of 0 disables the pool.
+     *
+     * <p>When the pool is enabled, the journals taken from it are also extended with fallocate beyond the size of
+     * the pooled files, rather than by writing zeros at the end of the file.
+     *
+     * @return number of pre-allocated journal files
+     */
+    public int getJournalPreAllocPoolSize() {
+        return this.getInt(JOURNAL_PRE_ALLOC_POOL_SIZE, 0);
+    }
+
+    /**
+     * Set the number of whole journal files to allocate ahead of time.
+     *
+     * @param poolSize number of pre-allocated journal files, 0 to disable the pool
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalPreAllocPoolSize(int poolSize) {
+        this.setProperty(JOURNAL_PRE_ALLOC_POOL_SIZE, poolSize);
+        return this;
+    }
+
     /**
      * Size of the write buffers used for the journal.
      *
@@ -1982,6 +2048,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(READ_WORKER_THREADS_THROTTLING_ENABLED, true);
     }
 
+    /**
+     * Set the minimum size of the entries which are sent from the entry log file to the socket,
+     * without being read in memory, when they are read from disk on a plaintext connection.
+     *
+     * @param minEntrySize
+     *          Minimum entry size in bytes, 0 to disable
+     * @return server configuration
+     */
+    public ServerConfiguration setZeroCopyReadMinEntrySize(int minEntrySize) {
+        setProperty(ZERO_COPY_READ_MIN_ENTRY_SIZE, minEntrySize);
+        return this;
+    }
+
+    /**
+     * Get the minimum size of the entries which are sent from the entry log file to the socket,
+     * without being read in memory.
+     *
+     * @return minimum entry size in bytes, 0 if disabled
+     */
+    public int getZeroCopyReadMinEntrySize() {
+        return getInt(ZERO_COPY_READ_MIN_ENTRY_SIZE, 0);
+    }
+
 
 
     /**
@@ -2128,6 +2217,30 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getInt(NUM_JOURNAL_CALLBACK_THREADS, 1);
     }
 
+    /**
+     * Set the number of journal stripes of each journal directory.
+     *
+     * <p>Each stripe is a separate journal, with its own writer thread, force write thread and journal
+     * files, and the ledgers are spread across all the stripes of all the journal directories.
+     *
+     * @param numStripes
+     *          number of journal stripes per journal directory.
+     * @return server configuration
+     */
+    public ServerConfiguration setJournalStripesPerDirectory(int numStripes) {
+        setProperty(JOURNAL_STRIPES_PER_DIRECTORY, numStripes);
+        return this;
+    }
+
+    /**
+     * Get the number of journal stripes of each journal directory.
+     *
+     * @return the number of journal stripes per journal directory.
+     */
+    public int getJournalStripesPerDirectory() {
+        return Math.max(1, getInt(JOURNAL_STRIPES_PER_DIRECTORY, 1));
+    }
+
     /**
      * Set sorted-ledger storage enabled or not.
      *
@@ -2372,6 +2485,29 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return getBoolean(JOURNAL_FLUSH_WHEN_QUEUE_EMPTY, false);
     }
 
+    /**
+     * Target latency of the adds in the journal, for the adaptive group commit. When set, the journal groups
+     * the entries for as long as the target allows once the observed flush and force write latencies are
+     * accounted for, capped by {@link #getJournalMaxGroupWaitMSec()}, and flushes early when no entry is
+     * expected before the group wait expires. A value of 0 disables the adaptive group commit.
+     *
+     * @return target add latency in microseconds
+     */
+    public long getJournalGroupCommitTargetLatencyMicros() {
+        return getLong(JOURNAL_GROUP_COMMIT_TARGET_LATENCY, 0L);
+    }
+
+    /**
+     * Set the target latency of the adds in the journal, for the adaptive group commit.
+     *
+     * @param targetLatencyMicros target add latency in microseconds, 0 to disable the adaptive group commit
+     * @return server configuration.
+     */
+    public ServerConfiguration setJournalGroupCommitTargetLatencyMicros(long targetLatencyMicros) {
+        setProperty(JOURNAL_GROUP_COMMIT_TARGET_LATENCY, targetLatencyMicros);
+        return this;
+    }
+
     /**
      * Set whether the bookie is able to go into read-only mode.
      * If this is set to false, the bookie will shutdown on encountering
@@ -2878,6 +3014,56 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Get the average latency of the foreground adds and reads of a ledger directory above which the
+     * compaction of that directory slows down.
+     *
+     * @return latency threshold in milliseconds, 0 if the compaction rate is not adapted to the latency
+     */
+    public long getCompactionForegroundLatencyThresholdMillis() {
+        return getLong(COMPACTION_FOREGROUND_LATENCY_THRESHOLD_MILLIS, 0L);
+    }
+
+    /**
+     * Set the average latency of the foreground adds and reads of a ledger directory above which the
+     * compaction of that directory slows down.
+     *
+     * <p>When set, the compaction rate is halved every second while the foreground latency stays above
+     * the threshold, down to a tenth of the configured compaction rate, and it goes back up progressively
+     * when the latency recovers. Only the ledger storages that track their latency are affected.
+     *
+     * @param thresholdMillis latency threshold in milliseconds, 0 to disable
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionForegroundLatencyThresholdMillis(long thresholdMillis) {
+        setProperty(COMPACTION_FOREGROUND_LATENCY_THRESHOLD_MILLIS, thresholdMillis);
+        return this;
+    }
+
+    /**
+     * Get the rate of compaction shared by all the ledger directories of the bookie, in the same unit as
+     * the compaction rate of each directory (bytes or entries per second, see {@link #getIsThrottleByBytes()}).
+     *
+     * <p>Only used when the garbage collection of the ledger directories is coordinated. The scans extracting the
+     * metadata of the entry logs share a separate budget of the same rate.
+     *
+     * @return global rate of compaction, 0 if the compactions are only limited by the rate of each directory
+     */
+    public double getCompactionGlobalRate() {
+        return getDouble(COMPACTION_GLOBAL_RATE, 0);
+    }
+
+    /**
+     * Set the rate of compaction shared by all the ledger directories of the bookie.
+     *
+     * @param rate global rate of compaction, 0 to only limit the rate of each directory
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setCompactionGlobalRate(double rate) {
+        setProperty(COMPACTION_GLOBAL_RATE, rate);
+        return this;
+    }
+
     /**
      * Should we remove pages from page cache after force write.
      *
@@ -2900,6 +3086,54 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /**
+     * Whether the journal files are written with direct I/O (O_DIRECT|O_DSYNC), from aligned buffers,
+     * instead of through the page cache followed by a force write. The writes are durable once flushed,
+     * so the entries are acknowledged without waiting for the force write. Requires the native-io library,
+     * and works best with a journal alignment size of 4096.
+     *
+     * @return whether the journal is written with direct I/O
+     */
+    @Beta
+    public boolean getJournalDirectIOEnabled() {
+        return getBoolean(JOURNAL_DIRECT_IO_ENABLED, false);
+    }
+
+    /**
+     * Sets whether the journal files are written with direct I/O.
+     *
+     * @param enabled
+     *            - true to write the journal with direct I/O
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIOEnabled(boolean enabled) {
+        setProperty(JOURNAL_DIRECT_IO_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Number of aligned write buffers of a journal written with direct I/O. Each open journal file holds one
+     * buffer, and the next file is opened before the previous one is closed on a rollover. When no buffer is
+     * available, the journal file is written with buffered I/O instead.
+     *
+     * @return the number of direct I/O write buffers of a journal
+     */
+    public int getJournalDirectIOWriteBuffersCount() {
+        return getInt(JOURNAL_DIRECT_IO_WRITE_BUFFERS_COUNT, 2);
+    }
+
+    /**
+     * Sets the number of aligned write buffers of a journal written with direct I/O.
+     *
+     * @param count
+     *            - number of direct I/O write buffers
+     * @return ServerConfiguration
+     */
+    public ServerConfiguration setJournalDirectIOWriteBuffersCount(int count) {
+        setProperty(JOURNAL_DIRECT_IO_WRITE_BUFFERS_COUNT, count);
+        return this;
+    }
+
     /*
      * Get the {@link LedgerStorage} implementation class name.
      *
@@ -3082,6 +3316,12 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         if (0 == getBookiePort() && !getAllowEphemeralPorts()) {
             throw new ConfigurationException("Invalid port specified, using ephemeral ports accidentally?");
         }
+        if (isEntryLogTieringEnabled()
+                && getEntryLogTieringColdWriteRateBytes() > getEntryLogTieringHotWriteRateBytes()) {
+            throw new ConfigurationException("The cold write rate of the entry log tiering ("
+                    + getEntryLogTieringColdWriteRateBytes() + ") should not exceed the hot write rate ("
+                    + getEntryLogTieringHotWriteRateBytes() + ")");
+        }
         if (isEntryLogPerLedgerEnabled() && getUseTransactionalCompaction()) {
             throw new ConfigurationException(
                     "When entryLogPerLedger is enabled , it is unnecessary to use transactional compaction");
@@ -3687,6 +3927,76 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         setProperty(SERVER_WRITEBUFFER_HIGH_WATER_MARK, waterMark);
         return this;
     }
+
+    /**
+     * Whether the flushes of the responses written on a server netty channel are consolidated.
+     *
+     * <p>When enabled, the responses written while the channel is reading, or while the event loop runs other
+     * tasks, are flushed together at the end of the read or on the next event loop iteration, which saves
+     * syscalls at the cost of a slightly higher latency.
+     *
+     * @return whether the flushes are consolidated.
+     */
+    public boolean isServerFlushConsolidationEnabled() {
+        return getBoolean(SERVER_FLUSH_CONSOLIDATION_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the consolidation of the flushes on server netty channels.
+     *
+     * @param enabled
+     *          whether the flushes are consolidated.
+     * @return server configuration.
+     */
+    public ServerConfiguration setServerFlushConsolidationEnabled(boolean enabled) {
+        setProperty(SERVER_FLUSH_CONSOLIDATION_ENABLED, enabled);
+        return this;
+    }
+
+    /**
+     * Get the maximum number of flushes consolidated on a server netty channel before the channel is flushed,
+     * which bounds the number of responses waiting for a flush.
+     *
+     * @return the maximum number of consolidated flushes.
+     */
+    public int getServerFlushConsolidationMaxFlushes() {
+        return getInt(SERVER_FLUSH_CONSOLIDATION_MAX_FLUSHES, 256);
+    }
+
+    /**
+     * Set the maximum number of flushes consolidated on a server netty channel before the channel is flushed.
+     *
+     * @param maxFlushes
+     *          the maximum number of consolidated flushes.
+     * @return server configuration.
+     */
+    public ServerConfiguration setServerFlushConsolidationMaxFlushes(int maxFlushes) {
+        setProperty(SERVER_FLUSH_CONSOLIDATION_MAX_FLUSHES, maxFlushes);
+        return this;
+    }
+
+    /**
+     * Whether the number of responses sent by each flush of a server netty channel is recorded.
+     *
+     * <p>This shows how many flushes are consolidated, at the cost of recording a value on every flush.
+     *
+     * @return whether the flush stats are recorded.
+     */
+    public boolean isServerFlushStatsEnabled() {
+        return getBoolean(SERVER_FLUSH_STATS_ENABLED, false);
+    }
+
+    /**
+     * Enable or disable the recording of the number of responses sent by each flush of a server netty channel.
+     *
+     * @param enabled
+     *          whether the flush stats are recorded.
+     * @return server configuration.
+     */
+    public ServerConfiguration setServerFlushStatsEnabled(boolean enabled) {
+        setProperty(SERVER_FLUSH_STATS_ENABLED, enabled);
+        return this;
+    }
     /**
      * Set registration manager class.
      *
@@ -3736,6 +4046,136 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /*
+     * specifies if the ledgers are placed in a hot, a warm or a cold entry log,
+     * according to their write rate and expected lifetime, instead of sharing a
+     * single entry log. Ignored when entryLog per ledger is enabled.
+     */
+    public boolean isEntryLogTieringEnabled() {
+        return this.getBoolean(ENTRY_LOG_TIERING_ENABLED, false);
+    }
+
+    /*
+     * enables/disables the placement of the ledgers in hot, warm and cold entry logs.
+     */
+    public ServerConfiguration setEntryLogTieringEnabled(boolean enabled) {
+        this.setProperty(ENTRY_LOG_TIERING_ENABLED, Boolean.toString(enabled));
+        return this;
+    }
+
+    /*
+     * duration of the windows over which the write rate of the ledgers is measured
+     * to place them in the entry logs.
+     */
+    public long getEntryLogTieringWindowSeconds() {
+        return this.getLong(ENTRY_LOG_TIERING_WINDOW_SECONDS, 60L);
+    }
+
+    /*
+     * sets the duration of the windows over which the write rate of the ledgers is measured.
+     */
+    public ServerConfiguration setEntryLogTieringWindowSeconds(long windowSeconds) {
+        this.setProperty(ENTRY_LOG_TIERING_WINDOW_SECONDS, Long.toString(windowSeconds));
+        return this;
+    }
+
+    /*
+     * write rate, in bytes per second, from which a ledger is placed in the hot entry log.
+     */
+    public long getEntryLogTieringHotWriteRateBytes() {
+        return this.getLong(ENTRY_LOG_TIERING_HOT_WRITE_RATE_BYTES, 64 * 1024L);
+    }
+
+    /*
+     * sets the write rate, in bytes per second, from which a ledger is placed in the hot entry log.
+     */
+    public ServerConfiguration setEntryLogTieringHotWriteRateBytes(long bytesPerSecond) {
+        this.setProperty(ENTRY_LOG_TIERING_HOT_WRITE_RATE_BYTES, Long.toString(bytesPerSecond));
+        return this;
+    }
+
+    /*
+     * write rate, in bytes per second, below which a ledger is placed in the cold entry log.
+     */
+    public long getEntryLogTieringColdWriteRateBytes() {
+        return this.getLong(ENTRY_LOG_TIERING_COLD_WRITE_RATE_BYTES, 1024L);
+    }
+
+    /*
+     * sets the write rate, in bytes per second, below which a ledger is placed in the cold entry log.
+     */
+    public ServerConfiguration setEntryLogTieringColdWriteRateBytes(long bytesPerSecond) {
+        this.setProperty(ENTRY_LOG_TIERING_COLD_WRITE_RATE_BYTES, Long.toString(bytesPerSecond));
+        return this;
+    }
+
+    /*
+     * specifies if the ledgers map of the active entry logs is checkpointed, next to the
+     * entry log, every time they are flushed. After an unclean shutdown, the metadata of
+     * those entry logs is then rebuilt by only scanning the entries written after the last
+     * checkpoint, instead of the whole entry log.
+     */
+    public boolean isEntryLogMetadataCheckpointEnabled() {
+        return this.getBoolean(ENTRY_LOG_METADATA_CHECKPOINT_ENABLED, false);
+    }
+
+    /*
+     * enables/disables the checkpointing of the metadata of the active entry logs.
+     */
+    public ServerConfiguration setEntryLogMetadataCheckpointEnabled(boolean enabled) {
+        this.setProperty(ENTRY_LOG_METADATA_CHECKPOINT_ENABLED, Boolean.toString(enabled));
+        return this;
+    }
+
+    /*
+     * specifies if the entries of the sealed entry logs, which are rolled and no longer
+     * written, are read through memory mappings of the entry log files. The entries are
+     * then handed out as slices of the mappings, without a read syscall nor a copy.
+     */
+    public boolean isEntryLogMmapReadEnabled() {
+        return this.getBoolean(ENTRY_LOG_MMAP_READ_ENABLED, false);
+    }
+
+    /*
+     * enables/disables reading the sealed entry logs through memory mappings.
+     */
+    public ServerConfiguration setEntryLogMmapReadEnabled(boolean enabled) {
+        this.setProperty(ENTRY_LOG_MMAP_READ_ENABLED, Boolean.toString(enabled));
+        return this;
+    }
+
+    /*
+     * size of the windows in which the sealed entry logs are mapped. Entries crossing
+     * the boundary of a window are read from the file channel.
+     */
+    public int getEntryLogMmapWindowSizeMB() {
+        return this.getInt(ENTRY_LOG_MMAP_WINDOW_SIZE_MB, 64);
+    }
+
+    /*
+     * sets the size of the windows in which the sealed entry logs are mapped.
+     */
+    public ServerConfiguration setEntryLogMmapWindowSizeMB(int windowSizeMB) {
+        this.setProperty(ENTRY_LOG_MMAP_WINDOW_SIZE_MB, Integer.toString(windowSizeMB));
+        return this;
+    }
+
+    /*
+     * maximum number of windows of the sealed entry logs kept mapped at the same time.
+     * The least recently used window is unmapped when a new one is needed.
+     */
+    public int getEntryLogMmapMaxWindows() {
+        return this.getInt(ENTRY_LOG_MMAP_MAX_WINDOWS, 64);
+    }
+
+    /*
+     * sets the maximum number of windows of the sealed entry logs kept mapped at the same time.
+     */
+    public ServerConfiguration setEntryLogMmapMaxWindows(int maxWindows) {
+        this.setProperty(ENTRY_LOG_MMAP_MAX_WINDOWS, Integer.toString(maxWindows));
+        return this;
+    }
+
     /*
      * In the case of multipleentrylogs, multiple threads can be used to flush the memtable.
      *
@@ -3810,6 +4250,105 @@ public class ServerConfiguration extends AbstractConfiguration<ServerConfigurati
         return this;
     }
 
+    /*
+     * specifies if DbLedgerStorage writes and reads its entry logs with direct I/O, bypassing
+     * the OS page cache. This requires the native-io library to be available.
+     */
+    public boolean isDirectIOEntryLoggerEnabled() {
+        return this.getBoolean(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER, false);
+    }
+
+    /*
+     * enables/disables the direct I/O entry logger of DbLedgerStorage.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerEnabled(boolean enabled) {
+        this.setProperty(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER, Boolean.toString(enabled));
+        return this;
+    }
+
+    /*
+     * the size of the buffers used to write the entry logs with direct I/O. The buffers
+     * are always big enough to hold the largest entry allowed by nettyMaxFrameSizeBytes.
+     */
+    public int getDirectIOEntryLoggerWriteBufferSizeMb() {
+        return this.getInt(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_SIZE_MB, 4);
+    }
+
+    /*
+     * sets the size of the buffers used to write the entry logs with direct I/O.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerWriteBufferSizeMb(int writeBufferSizeMb) {
+        this.setProperty(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_SIZE_MB,
+                Integer.toString(writeBufferSizeMb));
+        return this;
+    }
+
+    /*
+     * the number of write buffers of the direct I/O entry logger. The current entry log and each
+     * compaction log in progress hold one, and sealing a log borrows one more to rewrite its header.
+     */
+    public int getDirectIOEntryLoggerWriteBuffersCount() {
+        return this.getInt(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFERS_COUNT, 4);
+    }
+
+    /*
+     * sets the number of write buffers of the direct I/O entry logger.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerWriteBuffersCount(int writeBuffersCount) {
+        this.setProperty(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFERS_COUNT,
+                Integer.toString(writeBuffersCount));
+        return this;
+    }
+
+    /*
+     * the maximum time an add waits for a free write buffer of the direct I/O entry logger
+     * before failing.
+     */
+    public long getDirectIOEntryLoggerWriteBufferAcquireTimeoutMs() {
+        return this.getLong(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_ACQUIRE_TIMEOUT_MS, 30000L);
+    }
+
+    /*
+     * sets the maximum time an add waits for a free write buffer of the direct I/O entry logger.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerWriteBufferAcquireTimeoutMs(long timeoutMs) {
+        this.setProperty(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_WRITE_BUFFER_ACQUIRE_TIMEOUT_MS,
+                Long.toString(timeoutMs));
+        return this;
+    }
+
+    /*
+     * the size of the buffer that each entry log reader uses with direct I/O.
+     */
+    public int getDirectIOEntryLoggerReadBufferSizeKb() {
+        return this.getInt(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB, 128);
+    }
+
+    /*
+     * sets the size of the buffer that each entry log reader uses with direct I/O.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerReadBufferSizeKb(int readBufferSizeKb) {
+        this.setProperty(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_READ_BUFFER_SIZE_KB,
+                Integer.toString(readBufferSizeKb));
+        return this;
+    }
+
+    /*
+     * the time after which an idle entry log reader of the direct I/O entry logger is closed.
+     */
+    public int getDirectIOEntryLoggerMaxFdCacheTimeSeconds() {
+        return this.getInt(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_MAX_FD_CACHE_TIME_SECONDS, 300);
+    }
+
+    /*
+     * sets the time after which an idle entry log reader of the direct I/O entry logger is closed.
+     */
+    public ServerConfiguration setDirectIOEntryLoggerMaxFdCacheTimeSeconds(int maxFdCacheTimeSeconds) {
+        this.setProperty(DB_STORAGE_DIRECT_IO_ENTRY_LOGGER_MAX_FD_CACHE_TIME_SECONDS,
+                Integer.toString(maxFdCacheTimeSeconds));
+        return this;
+    }
+
     /**
      * True if a local consistency check should be performed on startup.
      */
@@ -142,6 +142,14 @@ class AuthHandler {
 
                     ctx.channel().writeAndFlush(builder.build());
                 }
+            } else if (msg instanceof MessageWithBody) { // add request, with its body decoded aside
+                MessageWithBody req = (MessageWithBody) msg;
+                BookkeeperProtocol.Response.Builder builder = BookkeeperProtocol.Response.newBuilder()
+                    .setHeader(((BookkeeperProtocol.Request) req.getMessage()).getHeader())
+                    .setStatus(BookkeeperProtocol.StatusCode.EUA);
+                req.release();
+
+                ctx.channel().writeAndFlush(builder.build());
             } else {
                 // close the channel, junk coming over it
                 ctx.channel().close();
@@ -367,6 +375,9 @@ class AuthHandler {
                     } else {
                         waitingForAuth.add(msg);
                     }
+                } else if (msg instanceof MessageWithBody) {
+                    // add requests are never auth messages
+                    waitingForAuth.add(msg);
                 } else {
                     LOG.info("dropping write of message {}", msg);
                 }
@@ -0,0 +1,150 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.util.Recycler;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookieProtocol.BatchedReadRequest;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Processor for v2 batched read requests, returning a run of consecutive entries in a single response.
+ */
+class BatchedReadEntryProcessor extends PacketProcessorBase<BatchedReadRequest> {
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadEntryProcessor.class);
+
+    private boolean throttleReadResponses;
+
+    public static BatchedReadEntryProcessor create(BatchedReadRequest request,
+                                                   Channel channel,
+                                                   BookieRequestProcessor requestProcessor,
+                                                   boolean throttleReadResponses) {
+        BatchedReadEntryProcessor rep = RECYCLER.get();
+        rep.init(request, channel, requestProcessor);
+        rep.throttleReadResponses = throttleReadResponses;
+        return rep;
+    }
+
+    @Override
+    protected void processPacket() {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new batched read request: {}", request);
+        }
+        int errorCode = BookieProtocol.EOK;
+        long startTimeNanos = MathUtils.nowInNano();
+        List<ByteBuf> data = null;
+        try {
+            if (request.getMaxCount() <= 0 || request.getMaxCount() > requestProcessor.getMaxBatchReadCount()) {
+                throw new IllegalArgumentException("Invalid max count " + request.getMaxCount());
+            }
+            long maxSize = requestProcessor.getMaxBatchReadSize(request.getMaxSize(), request.getMaxCount());
+            data = requestProcessor.getBookie().batchReadEntries(request.getLedgerId(), request.getEntryId(),
+                    request.getMaxCount(), maxSize);
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("##### Batch read entries ##### {} entries from {}@{}", data.size(),
+                        request.getEntryId(), request.getLedgerId());
+            }
+        } catch (Bookie.NoLedgerException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOLEDGER;
+        } catch (Bookie.NoEntryException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.ENOENTRY;
+        } catch (IOException e) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Error reading {}", request, e);
+            }
+            errorCode = BookieProtocol.EIO;
+        } catch (BookieException.DataUnknownException e) {
+            LOG.error("Ledger {} is in an unknown state", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUNKNOWNLEDGERSTATE;
+        } catch (BookieException e) {
+            LOG.error("Unauthorized access to ledger {}", request.getLedgerId(), e);
+            errorCode = BookieProtocol.EUA;
+        } catch (Throwable t) {
+            LOG.error("Unexpected exception batch reading at {}:{} : {}", request.getLedgerId(), request.getEntryId(),
+                      t.getMessage(), t);
+            errorCode = BookieProtocol.EBADREQ;
+        }
+
+        if (LOG.isTraceEnabled()) {
+            LOG.trace("Batch read entries rc = {} for {}", errorCode, request);
+        }
+        sendResponse(data, errorCode, startTimeNanos);
+    }
+
+    private void sendResponse(List<ByteBuf> data, int errorCode, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        final OpStatsLogger logger = stats.getBatchReadEntryStats();
+        BookieProtocol.Response response;
+        if (errorCode == BookieProtocol.EOK) {
+            logger.registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildBatchedReadResponse(data, request);
+        } else {
+            if (data != null) {
+                data.forEach(ByteBuf::release);
+            }
+            logger.registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            response = ResponseBuilder.buildErrorResponse(errorCode, request);
+        }
+
+        if (throttleReadResponses) {
+            sendResponseAndWait(errorCode, response, stats.getBatchReadRequestStats());
+        } else {
+            sendResponse(errorCode, response, stats.getBatchReadRequestStats());
+        }
+        recycle();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("BatchedReadEntry(%d, %d, %d)", request.getLedgerId(), request.getEntryId(),
+                request.getMaxCount());
+    }
+
+    private void recycle() {
+        super.reset();
+        this.recyclerHandle.recycle(this);
+    }
+
+    private final Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle;
+
+    private BatchedReadEntryProcessor(Recycler.Handle<BatchedReadEntryProcessor> recyclerHandle) {
+        this.recyclerHandle = recyclerHandle;
+    }
+
+    private static final Recycler<BatchedReadEntryProcessor> RECYCLER = new Recycler<BatchedReadEntryProcessor>() {
+        @Override
+        protected BatchedReadEntryProcessor newObject(Recycler.Handle<BatchedReadEntryProcessor> handle) {
+            return new BatchedReadEntryProcessor(handle);
+        }
+    };
+}
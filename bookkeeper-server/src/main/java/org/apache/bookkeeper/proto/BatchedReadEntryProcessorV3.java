@@ -0,0 +1,149 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.UnsafeByteOperations;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.MathUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A processor class for v3 batched read entry packets.
+ */
+class BatchedReadEntryProcessorV3 extends PacketProcessorBaseV3 {
+
+    private static final Logger LOG = LoggerFactory.getLogger(BatchedReadEntryProcessorV3.class);
+
+    private final BatchReadRequest batchReadRequest;
+    private final long ledgerId;
+    private final long startEntryId;
+    // The entries wrapped in the response, released once it is written out
+    private List<ByteBuf> entries = Collections.emptyList();
+
+    BatchedReadEntryProcessorV3(Request request, Channel channel, BookieRequestProcessor requestProcessor) {
+        super(request, channel, requestProcessor);
+        this.batchReadRequest = request.getBatchReadRequest();
+        this.ledgerId = batchReadRequest.getLedgerId();
+        this.startEntryId = batchReadRequest.getStartEntryId();
+    }
+
+    private BatchReadResponse getBatchReadResponse() {
+        long startTimeNanos = MathUtils.nowInNano();
+
+        BatchReadResponse.Builder batchReadResponse = BatchReadResponse.newBuilder()
+                .setLedgerId(ledgerId)
+                .setStartEntryId(startEntryId);
+
+        if (!isVersionCompatible()) {
+            batchReadResponse.setStatus(StatusCode.EBADVERSION);
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+            return batchReadResponse.build();
+        }
+
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Received new batched read request: {}", request);
+        }
+        StatusCode status = StatusCode.EOK;
+        try {
+            if (batchReadRequest.getMaxCount() <= 0
+                    || batchReadRequest.getMaxCount() > requestProcessor.getMaxBatchReadCount()) {
+                LOG.error("Invalid max count {} while batch reading from ledger {}",
+                        batchReadRequest.getMaxCount(), ledgerId);
+                status = StatusCode.EBADREQ;
+            } else {
+                long maxSize = requestProcessor.getMaxBatchReadSize(batchReadRequest.getMaxSize(),
+                        batchReadRequest.getMaxCount());
+                entries = requestProcessor.getBookie().batchReadEntries(ledgerId, startEntryId,
+                        batchReadRequest.getMaxCount(), maxSize);
+                // The bodies are wrapped, not copied, the entries are kept until the response is serialized
+                for (int i = 0; i < entries.size(); i++) {
+                    batchReadResponse.addBody(UnsafeByteOperations.unsafeWrap(entries.get(i).nioBuffer()));
+                }
+            }
+        } catch (Bookie.NoLedgerException e) {
+            status = StatusCode.ENOLEDGER;
+            LOG.info("No ledger found while batch reading from entry: {} of ledger: {}", startEntryId, ledgerId);
+        } catch (Bookie.NoEntryException e) {
+            status = StatusCode.ENOENTRY;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("No entry found while batch reading from entry: {} of ledger: {}", startEntryId, ledgerId);
+            }
+        } catch (IOException e) {
+            status = StatusCode.EIO;
+            LOG.error("IOException while batch reading from entry: {} of ledger {}", startEntryId, ledgerId, e);
+        } catch (BookieException.DataUnknownException e) {
+            status = StatusCode.EUNKNOWNLEDGERSTATE;
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Ledger has unknown state for entry: {} from ledger {}", startEntryId, ledgerId);
+            }
+        } catch (BookieException e) {
+            status = StatusCode.EUA;
+            LOG.error("Unauthorized access to ledger:{} while batch reading from entry:{} in request from address: {}",
+                    ledgerId, startEntryId, channel.remoteAddress());
+        }
+
+        if (status == StatusCode.EOK) {
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        } else {
+            batchReadResponse.clearBody();
+            releaseEntries();
+            requestProcessor.getRequestStats().getBatchReadEntryStats()
+                    .registerFailedEvent(MathUtils.elapsedNanos(startTimeNanos), TimeUnit.NANOSECONDS);
+        }
+        batchReadResponse.setStatus(status);
+        return batchReadResponse.build();
+    }
+
+    @Override
+    public void safeRun() {
+        BatchReadResponse batchReadResponse = getBatchReadResponse();
+        sendResponse(batchReadResponse);
+    }
+
+    void sendResponse(BatchReadResponse batchReadResponse) {
+        Response.Builder response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(batchReadResponse.getStatus())
+                .setBatchReadResponse(batchReadResponse);
+        sendResponse(response.getStatus(), response.build(),
+                requestProcessor.getRequestStats().getBatchReadRequestStats(), this::releaseEntries);
+    }
+
+    private void releaseEntries() {
+        entries.forEach(ByteBuf::release);
+        entries = Collections.emptyList();
+    }
+}
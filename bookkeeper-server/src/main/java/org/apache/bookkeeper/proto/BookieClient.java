@@ -26,6 +26,7 @@ import java.util.concurrent.CompletableFuture;
 
 import org.apache.bookkeeper.client.api.WriteFlag;
 import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ReadEntryCallback;
@@ -84,6 +85,17 @@ public interface BookieClient {
      */
     long getNumPendingRequests(BookieId address, long ledgerId);
 
+    /**
+     * Get the average latency, in nanoseconds, of the reads recently completed by the bookie at
+     * {@code address}.
+     *
+     * @param address the address of the bookie
+     * @return the average read latency, or 0 if it is not known
+     */
+    default long getReadLatencyNanos(BookieId address) {
+        return 0;
+    }
+
     /**
      * Send a force request to the server. When complete all entries which have
      * been written for {@code ledgerId} to this bookie will be persisted on disk.
@@ -180,6 +192,25 @@ public interface BookieClient {
                    ReadEntryCallback cb, Object ctx, int flags, byte[] masterKey,
                    boolean allowFastFail);
 
+    /**
+     * Read a batch of consecutive entries from bookie at address {@code address}.
+     *
+     * <p>The bookie returns at least the first entry, and then as many of the following
+     * entries as it holds, up to {@code maxCount} entries or {@code maxSize} bytes.
+     *
+     * @param address address of the bookie to read from
+     * @param ledgerId id of the ledger the entries belong to
+     * @param startEntryId id of the first entry we wish to read
+     * @param maxCount the maximum number of entries to read
+     * @param maxSize the maximum total size of the entries to read, in bytes
+     * @param cb the callback notified when the request completes
+     * @param ctx a context object passed to the callback on completion
+     * @param flags a bit mask of flags from BookieProtocol.FLAG_*
+     *              {@link org.apache.bookkeeper.proto.BookieProtocol}
+     */
+    void batchReadEntries(BookieId address, long ledgerId, long startEntryId, int maxCount, long maxSize,
+                          BatchedReadEntryCallback cb, Object ctx, int flags);
+
     /**
      * Send a long poll request to bookie, waiting for the last add confirmed
      * to be updated. The client can also request that the full entry is returned
@@ -20,6 +20,10 @@
  */
 package org.apache.bookkeeper.proto;
 
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_RESPONSES_PER_FLUSH;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.SERVER_SCOPE;
+
 import com.google.common.annotations.VisibleForTesting;
 import com.google.protobuf.ExtensionRegistry;
 import io.netty.bootstrap.ServerBootstrap;
@@ -38,8 +42,6 @@ import io.netty.channel.DefaultEventLoopGroup;
 import io.netty.channel.EventLoop;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
-import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.group.ChannelGroup;
 import io.netty.channel.group.ChannelGroupFuture;
 import io.netty.channel.group.DefaultChannelGroup;
@@ -47,7 +49,6 @@ import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
 import io.netty.channel.local.LocalServerChannel;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
 import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
 import io.netty.handler.codec.LengthFieldPrepender;
 import io.netty.handler.ssl.SslHandler;
@@ -77,6 +78,10 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
 import org.apache.bookkeeper.processor.RequestProcessor;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.stats.StatsLogger;
+import org.apache.bookkeeper.stats.annotations.StatsDoc;
 import org.apache.bookkeeper.util.ByteBufList;
 import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.zookeeper.KeeperException;
@@ -86,6 +91,11 @@ import org.slf4j.LoggerFactory;
 /**
  * Netty server for serving bookie requests.
  */
+@StatsDoc(
+    name = SERVER_SCOPE,
+    category = CATEGORY_SERVER,
+    help = "Bookie netty server stats"
+)
 class BookieNettyServer {
 
     private static final Logger LOG = LoggerFactory.getLogger(BookieNettyServer.class);
@@ -109,9 +119,22 @@ class BookieNettyServer {
 
     private final ByteBufAllocator allocator;
 
+    @StatsDoc(
+        name = CHANNEL_RESPONSES_PER_FLUSH,
+        help = "the number of responses sent by each flush of a channel on a bookie"
+    )
+    private final OpStatsLogger responsesPerFlushStats;
+
     BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator)
         throws IOException, KeeperException, InterruptedException, BookieException {
+        this(conf, processor, allocator, NullStatsLogger.INSTANCE);
+    }
+
+    BookieNettyServer(ServerConfiguration conf, RequestProcessor processor, ByteBufAllocator allocator,
+                      StatsLogger statsLogger)
+        throws IOException, KeeperException, InterruptedException, BookieException {
         this.allocator = allocator;
+        this.responsesPerFlushStats = statsLogger.getOpStatsLogger(CHANNEL_RESPONSES_PER_FLUSH);
         this.maxFrameSize = conf.getNettyMaxFrameSizeBytes();
         this.conf = conf;
         this.requestProcessor = processor;
@@ -310,11 +333,7 @@ class BookieNettyServer {
             bootstrap.option(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(
                     conf.getServerWriteBufferLowWaterMark(), conf.getServerWriteBufferHighWaterMark()));
 
-            if (eventLoopGroup instanceof EpollEventLoopGroup) {
-                bootstrap.channel(EpollServerSocketChannel.class);
-            } else {
-                bootstrap.channel(NioServerSocketChannel.class);
-            }
+            bootstrap.channel(EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
 
             bootstrap.childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override
@@ -331,12 +350,17 @@ class BookieNettyServer {
 
                     // For ByteBufList, skip the usual LengthFieldPrepender and have the encoder itself to add it
                     pipeline.addLast("bytebufList", ByteBufList.ENCODER_WITH_SIZE);
+                    // Same for the responses with a payload sent from a file
+                    pipeline.addLast("fileRegionFrame", FileRegionFrame.ENCODER);
 
                     pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(maxFrameSize, 0, 4, 0, 4));
                     pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
 
                     pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    FlushStatsHandler.addLast(pipeline, conf.isServerFlushConsolidationEnabled(),
+                            conf.getServerFlushConsolidationMaxFlushes(), conf.isServerFlushStatsEnabled(),
+                            responsesPerFlushStats);
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
@@ -378,10 +402,8 @@ class BookieNettyServer {
 
             if (jvmEventLoopGroup instanceof DefaultEventLoopGroup) {
                 jvmBootstrap.channel(LocalServerChannel.class);
-            } else if (jvmEventLoopGroup instanceof EpollEventLoopGroup) {
-                jvmBootstrap.channel(EpollServerSocketChannel.class);
             } else {
-                jvmBootstrap.channel(NioServerSocketChannel.class);
+                jvmBootstrap.channel(EventLoopUtil.getServerSocketChannelClass(jvmEventLoopGroup));
             }
 
             jvmBootstrap.childHandler(new ChannelInitializer<LocalChannel>() {
@@ -402,6 +424,9 @@ class BookieNettyServer {
 
                     pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(registry));
                     pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(registry));
+                    FlushStatsHandler.addLast(pipeline, conf.isServerFlushConsolidationEnabled(),
+                            conf.getServerFlushConsolidationMaxFlushes(), conf.isServerFlushStatsEnabled(),
+                            responsesPerFlushStats);
                     pipeline.addLast("bookieAuthHandler", new AuthHandler.ServerSideHandler(
                                 contextHandler.getConnectionPeer(), authProviderFactory));
 
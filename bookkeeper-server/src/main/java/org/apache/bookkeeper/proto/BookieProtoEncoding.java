@@ -35,10 +35,14 @@ import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
 import io.netty.channel.ChannelOutboundHandlerAdapter;
 import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 
 import java.io.IOException;
 import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.apache.bookkeeper.proto.BookieProtocol.PacketHeader;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
@@ -134,6 +138,21 @@ public class BookieProtoEncoding {
                     buf.writeBytes(r.getMasterKey(), 0, BookieProtocol.MASTER_KEY_LENGTH);
                 }
 
+                return buf;
+            } else if (r instanceof BookieProtocol.BatchedReadRequest) {
+                BookieProtocol.BatchedReadRequest br = (BookieProtocol.BatchedReadRequest) r;
+                int totalHeaderSize = 4 // for request type
+                    + 8 // for ledgerId
+                    + 8 // for first entryId
+                    + 4 // for max count
+                    + 8; // for max size
+
+                ByteBuf buf = allocator.buffer(totalHeaderSize);
+                buf.writeInt(PacketHeader.toInt(r.getProtocolVersion(), r.getOpCode(), r.getFlags()));
+                buf.writeLong(br.getLedgerId());
+                buf.writeLong(br.getEntryId());
+                buf.writeInt(br.getMaxCount());
+                buf.writeLong(br.getMaxSize());
                 return buf;
             } else if (r instanceof BookieProtocol.AuthRequest) {
                 BookkeeperProtocol.AuthMessage am = ((BookieProtocol.AuthRequest) r).getAuthMessage();
@@ -187,6 +206,13 @@ public class BookieProtoEncoding {
                 } else {
                     return new BookieProtocol.ReadRequest(version, ledgerId, entryId, flags, null);
                 }
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                ledgerId = packet.readLong();
+                entryId = packet.readLong();
+                int maxCount = packet.readInt();
+                long maxSize = packet.readLong();
+                return new BookieProtocol.BatchedReadRequest(version, ledgerId, entryId, maxCount, maxSize, flags);
+            }
             case BookieProtocol.AUTH:
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
                 builder.mergeFrom(new ByteBufInputStream(packet), extensionRegistry);
@@ -250,7 +276,9 @@ public class BookieProtoEncoding {
                     buf.writeLong(r.getEntryId());
 
                     BookieProtocol.ReadResponse rr = (BookieProtocol.ReadResponse) r;
-                    if (rr.hasData()) {
+                    if (rr.hasRegion()) {
+                        return new FileRegionFrame(buf, rr.getRegion());
+                    } else if (rr.hasData()) {
                         return ByteBufList.get(buf, rr.getData());
                     } else {
                         return buf;
@@ -261,6 +289,29 @@ public class BookieProtoEncoding {
                     buf.writeLong(r.getEntryId());
 
                     return buf;
+                } else if (msg instanceof BookieProtocol.BatchedReadResponse) {
+                    buf.writeInt(r.getErrorCode());
+                    buf.writeLong(r.getLedgerId());
+                    buf.writeLong(r.getEntryId());
+
+                    List<ByteBuf> data = ((BookieProtocol.BatchedReadResponse) r).getData();
+                    if (r.getErrorCode() != BookieProtocol.EOK) {
+                        // The entries read before the error are not sent
+                        ((BookieProtocol.BatchedReadResponse) r).release();
+                        return buf;
+                    }
+
+                    // The sizes of all the entries are written upfront, so that the entries
+                    // themselves are appended to the response without copying them
+                    buf.writeInt(data.size());
+                    for (int i = 0; i < data.size(); i++) {
+                        buf.writeInt(data.get(i).readableBytes());
+                    }
+                    ByteBufList response = ByteBufList.get(buf);
+                    for (int i = 0; i < data.size(); i++) {
+                        response.add(data.get(i));
+                    }
+                    return response;
                 } else if (msg instanceof BookieProtocol.AuthResponse) {
                     BookkeeperProtocol.AuthMessage am = ((BookieProtocol.AuthResponse) r).getAuthMessage();
                     return ByteBufList.get(buf, Unpooled.wrappedBuffer(am.toByteArray()));
@@ -295,6 +346,17 @@ public class BookieProtoEncoding {
 
                 return new BookieProtocol.ReadResponse(
                         version, rc, ledgerId, entryId, buffer.retainedSlice());
+            case BookieProtocol.BATCH_READ_ENTRY: {
+                rc = buffer.readInt();
+                ledgerId = buffer.readLong();
+                entryId = buffer.readLong();
+
+                List<ByteBuf> data = Collections.emptyList();
+                if (rc == BookieProtocol.EOK && buffer.isReadable()) {
+                    data = decodeBatchedReadEntries(buffer);
+                }
+                return new BookieProtocol.BatchedReadResponse(version, rc, ledgerId, entryId, data);
+            }
             case BookieProtocol.AUTH:
                 ByteBufInputStream bufStream = new ByteBufInputStream(buffer);
                 BookkeeperProtocol.AuthMessage.Builder builder = BookkeeperProtocol.AuthMessage.newBuilder();
@@ -305,6 +367,36 @@ public class BookieProtoEncoding {
                 throw new IllegalStateException("Received unknown response : op code = " + opCode);
             }
         }
+
+        /**
+         * Decode the entries of a batched read response, as slices of the buffer. The count and the sizes come
+         * from the wire, so they are checked against the frame before anything is sliced.
+         */
+        private static List<ByteBuf> decodeBatchedReadEntries(ByteBuf buffer) {
+            int count = buffer.readInt();
+            if (count < 0 || count > buffer.readableBytes() / Integer.BYTES) {
+                throw new IllegalStateException("Invalid batched read response : count = " + count
+                        + ", readable bytes = " + buffer.readableBytes());
+            }
+            int sizesIndex = buffer.readerIndex();
+            buffer.skipBytes(count * Integer.BYTES);
+            List<ByteBuf> data = new ArrayList<>(count);
+            try {
+                for (int i = 0; i < count; i++) {
+                    int size = buffer.getInt(sizesIndex + i * Integer.BYTES);
+                    if (size < 0 || size > buffer.readableBytes()) {
+                        throw new IllegalStateException("Invalid batched read response : entry size = " + size
+                                + ", readable bytes = " + buffer.readableBytes());
+                    }
+                    data.add(buffer.retainedSlice(buffer.readerIndex(), size));
+                    buffer.skipBytes(size);
+                }
+            } catch (RuntimeException e) {
+                data.forEach(ByteBuf::release);
+                throw e;
+            }
+            return data;
+        }
     }
 
     /**
@@ -319,11 +411,14 @@ public class BookieProtoEncoding {
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
-            return BookkeeperProtocol.Request.parseFrom(new ByteBufInputStream(packet), extensionRegistry);
+            return ProtocolV3Codec.decodeRequest(packet, extensionRegistry);
         }
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
+            if (msg instanceof MessageWithBody) {
+                return ProtocolV3Codec.encode((MessageWithBody) msg, allocator);
+            }
             BookkeeperProtocol.Request request = (BookkeeperProtocol.Request) msg;
             return serializeProtobuf(request, allocator);
         }
@@ -342,18 +437,42 @@ public class BookieProtoEncoding {
 
         @Override
         public Object decode(ByteBuf packet) throws Exception {
-            return BookkeeperProtocol.Response.parseFrom(new ByteBufInputStream(packet),
-                                                         extensionRegistry);
+            return ProtocolV3Codec.decodeResponse(packet, extensionRegistry);
         }
 
         @Override
         public Object encode(Object msg, ByteBufAllocator allocator) throws Exception {
+            if (msg instanceof MessageWithBody) {
+                return ProtocolV3Codec.encode((MessageWithBody) msg, allocator);
+            }
             BookkeeperProtocol.Response response = (BookkeeperProtocol.Response) msg;
             return serializeProtobuf(response, allocator);
         }
 
     }
 
+    /**
+     * Serialize a v3 read response whose entry body is sent from a file region.
+     *
+     * <p>The response is serialized without the body, followed by the header of the body in a second read
+     * response, as done by {@link ProtocolV3Codec}. Protobuf parsers merge both read responses, so the client
+     * decodes it as a regular response.
+     *
+     * @param response the response, with a read response without body
+     * @param body the body of the read response
+     */
+    static FileRegionFrame serializeReadResponse(Response response, FileRegion body, ByteBufAllocator allocator) {
+        ByteBuf header;
+        try {
+            header = ProtocolV3Codec.serializeWithBodyHeader(response, Response.READRESPONSE_FIELD_NUMBER,
+                    BookkeeperProtocol.ReadResponse.BODY_FIELD_NUMBER, (int) body.count(), allocator);
+        } catch (RuntimeException e) {
+            body.release();
+            throw e;
+        }
+        return new FileRegionFrame(header, body);
+    }
+
     private static ByteBuf serializeProtobuf(MessageLite msg, ByteBufAllocator allocator) {
         int size = msg.getSerializedSize();
         // Protobuf serialization is the last step of the netty pipeline. We used to allocate
@@ -396,7 +515,7 @@ public class BookieProtoEncoding {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Encode request {} to channel {}.", msg, ctx.channel());
             }
-            if (msg instanceof BookkeeperProtocol.Request) {
+            if (msg instanceof BookkeeperProtocol.Request || msg instanceof MessageWithBody) {
                 ctx.write(reqV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Request) {
                 ctx.write(reqPreV3.encode(msg, ctx.alloc()), promise);
@@ -472,10 +591,13 @@ public class BookieProtoEncoding {
             if (LOG.isTraceEnabled()) {
                 LOG.trace("Encode response {} to channel {}.", msg, ctx.channel());
             }
-            if (msg instanceof BookkeeperProtocol.Response) {
+            if (msg instanceof BookkeeperProtocol.Response || msg instanceof MessageWithBody) {
                 ctx.write(repV3.encode(msg, ctx.alloc()), promise);
             } else if (msg instanceof BookieProtocol.Response) {
                 ctx.write(repPreV3.encode(msg, ctx.alloc()), promise);
+            } else if (msg instanceof FileRegionFrame) {
+                // Already serialized
+                ctx.write(msg, promise);
             } else {
                 LOG.error("Invalid response to encode to {}: {}", ctx.channel(), msg.getClass().getName());
                 ctx.write(msg, promise);
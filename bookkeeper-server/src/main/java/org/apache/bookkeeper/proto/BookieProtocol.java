@@ -22,10 +22,14 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
 import io.netty.util.ReferenceCountUtil;
 
+import java.util.Collections;
+import java.util.List;
+
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AuthMessage;
 import org.apache.bookkeeper.util.ByteBufList;
 
@@ -134,6 +138,15 @@ public interface BookieProtocol {
     byte WRITE_LAC = 5;
     byte GET_BOOKIE_INFO = 6;
 
+    /**
+     * The Batch read request payload is the 8-byte ledger number, the 8-byte number of the
+     * first entry, the 4-byte max number of entries and the 8-byte max size of the response.
+     * The response payload is a 4-byte error code, the 8-byte ledger number and the 8-byte
+     * number of the first entry, followed, if the error code is EOK, by the 4-byte number of
+     * entries, the 4-byte size of each entry and finally the entries themselves.
+     */
+    byte BATCH_READ_ENTRY = 7;
+
     /**
      * The error code that indicates success.
      */
@@ -372,6 +385,35 @@ public interface BookieProtocol {
         }
     }
 
+    /**
+     * A request that reads a batch of consecutive entries.
+     */
+    class BatchedReadRequest extends Request {
+        final int maxCount;
+        final long maxSize;
+
+        BatchedReadRequest(byte protocolVersion, long ledgerId, long startEntryId,
+                           int maxCount, long maxSize, short flags) {
+            init(protocolVersion, BATCH_READ_ENTRY, ledgerId, startEntryId, flags, null);
+            this.maxCount = maxCount;
+            this.maxSize = maxSize;
+        }
+
+        int getMaxCount() {
+            return maxCount;
+        }
+
+        long getMaxSize() {
+            return maxSize;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Op(%d)[Ledger:%d,Entry:%d,MaxCount:%d,MaxSize:%d]",
+                                 opCode, ledgerId, entryId, maxCount, maxSize);
+        }
+    }
+
     /**
      * An authentication request.
      */
@@ -448,6 +490,8 @@ public interface BookieProtocol {
      */
     class ReadResponse extends Response {
         final ByteBuf data;
+        // The entry, when it is sent from the entry log file instead of data
+        final FileRegion region;
 
         ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId) {
             this(protocolVersion, errorCode, ledgerId, entryId, Unpooled.EMPTY_BUFFER);
@@ -456,6 +500,13 @@ public interface BookieProtocol {
         ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, ByteBuf data) {
             init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
             this.data = data;
+            this.region = null;
+        }
+
+        ReadResponse(byte protocolVersion, int errorCode, long ledgerId, long entryId, FileRegion region) {
+            init(protocolVersion, READENTRY, errorCode, ledgerId, entryId);
+            this.data = Unpooled.EMPTY_BUFFER;
+            this.region = region;
         }
 
         boolean hasData() {
@@ -466,14 +517,59 @@ public interface BookieProtocol {
             return data;
         }
 
+        boolean hasRegion() {
+            return region != null;
+        }
+
+        FileRegion getRegion() {
+            return region;
+        }
+
         @Override
         public void retain() {
             data.retain();
+            if (region != null) {
+                region.retain();
+            }
         }
 
         @Override
         public void release() {
             data.release();
+            if (region != null) {
+                region.release();
+            }
+        }
+    }
+
+    /**
+     * A response with a batch of consecutive entries, starting from the entry id of the response.
+     */
+    class BatchedReadResponse extends Response {
+        final List<ByteBuf> data;
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long startEntryId) {
+            this(protocolVersion, errorCode, ledgerId, startEntryId, Collections.emptyList());
+        }
+
+        BatchedReadResponse(byte protocolVersion, int errorCode, long ledgerId, long startEntryId,
+                            List<ByteBuf> data) {
+            init(protocolVersion, BATCH_READ_ENTRY, errorCode, ledgerId, startEntryId);
+            this.data = data;
+        }
+
+        List<ByteBuf> getData() {
+            return data;
+        }
+
+        @Override
+        public void retain() {
+            data.forEach(ByteBuf::retain);
+        }
+
+        @Override
+        public void release() {
+            data.forEach(ByteBuf::release);
         }
     }
 
@@ -73,7 +73,8 @@ class BookieRequestHandler extends ChannelInboundHandlerAdapter {
 
     @Override
     public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
-        if (!(msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtocol.Request)) {
+        if (!(msg instanceof BookkeeperProtocol.Request || msg instanceof BookieProtocol.Request
+                || msg instanceof MessageWithBody)) {
             ctx.fireChannelRead(msg);
             return;
         }
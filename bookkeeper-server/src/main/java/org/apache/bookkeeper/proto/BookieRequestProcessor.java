@@ -29,8 +29,11 @@ import com.google.common.cache.CacheBuilder;
 import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.protobuf.ByteString;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.HashedWheelTimer;
 import io.netty.util.concurrent.Future;
@@ -130,6 +133,9 @@ public class BookieRequestProcessor implements RequestProcessor {
 
     private final boolean throttleReadResponses;
 
+    // Minimum size of the entries sent from the entry log files, 0 if disabled
+    private final int zeroCopyReadMinEntrySize;
+
     public BookieRequestProcessor(ServerConfiguration serverCfg, Bookie bookie, StatsLogger statsLogger,
             SecurityHandlerFactory shFactory, ByteBufAllocator allocator) throws SecurityException {
         this.serverCfg = serverCfg;
@@ -138,6 +144,7 @@ public class BookieRequestProcessor implements RequestProcessor {
         this.preserveMdcForTaskExecution = serverCfg.getPreserveMdcForTaskExecution();
         this.bookie = bookie;
         this.throttleReadResponses = serverCfg.isReadWorkerThreadsThrottlingEnabled();
+        this.zeroCopyReadMinEntrySize = serverCfg.getZeroCopyReadMinEntrySize();
         this.readThreadPool = createExecutor(
                 this.serverCfg.getNumReadWorkerThreads(),
                 "BookieReadThreadPool",
@@ -228,6 +235,16 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    /**
+     * Whether the entries read for a channel can be sent straight from the entry log files. The file regions
+     * are only supported by the nio and epoll socket channels, and can't be encrypted.
+     */
+    boolean isZeroCopyReadEnabled(Channel channel) {
+        return zeroCopyReadMinEntrySize > 0
+                && (channel instanceof NioSocketChannel || channel instanceof EpollSocketChannel)
+                && channel.pipeline().get(SslHandler.class) == null;
+    }
+
     protected void onReadRequestStart(Channel channel) {
         if (readsSemaphore != null) {
             if (!readsSemaphore.tryAcquire()) {
@@ -306,7 +323,23 @@ public class BookieRequestProcessor implements RequestProcessor {
     public void processRequest(Object msg, Channel c) {
         // If we can decode this packet as a Request protobuf packet, process
         // it as a version 3 packet. Else, just use the old protocol.
-        if (msg instanceof BookkeeperProtocol.Request) {
+        if (msg instanceof MessageWithBody) {
+            // add requests are decoded with their body aside, which is handed to the bookie without copying it
+            MessageWithBody withBody = (MessageWithBody) msg;
+            BookkeeperProtocol.Request r = (BookkeeperProtocol.Request) withBody.getMessage();
+            if (BookkeeperProtocol.OperationType.ADD_ENTRY == r.getHeader().getOperation()) {
+                restoreMdcContextFromRequest(r);
+                try {
+                    processAddRequestV3(r, ((ByteBuf) withBody.getBody()).retain(), c);
+                } finally {
+                    withBody.release();
+                    MDC.clear();
+                }
+            } else {
+                withBody.release();
+                processRequest(r, c);
+            }
+        } else if (msg instanceof BookkeeperProtocol.Request) {
             BookkeeperProtocol.Request r = (BookkeeperProtocol.Request) msg;
             restoreMdcContextFromRequest(r);
             try {
@@ -349,6 +382,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                     case GET_LIST_OF_ENTRIES_OF_LEDGER:
                         processGetListOfEntriesOfLedgerProcessorV3(r, c);
                         break;
+                    case BATCH_READ_ENTRY:
+                        processBatchReadRequestV3(r, c);
+                        break;
                     default:
                         LOG.info("Unknown operation type {}", header.getOperation());
                         BookkeeperProtocol.Response.Builder response =
@@ -375,6 +411,10 @@ public class BookieRequestProcessor implements RequestProcessor {
                     checkArgument(r instanceof BookieProtocol.ReadRequest);
                     processReadRequest((BookieProtocol.ReadRequest) r, c);
                     break;
+                case BookieProtocol.BATCH_READ_ENTRY:
+                    checkArgument(r instanceof BookieProtocol.BatchedReadRequest);
+                    processBatchReadRequest((BookieProtocol.BatchedReadRequest) r, c);
+                    break;
                 case BookieProtocol.AUTH:
                     LOG.info("Ignoring auth operation from client {}", c.remoteAddress());
                     BookkeeperProtocol.AuthMessage message = BookkeeperProtocol.AuthMessage
@@ -425,7 +465,11 @@ public class BookieRequestProcessor implements RequestProcessor {
     }
 
     private void processAddRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
-        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, c, this);
+        processAddRequestV3(r, null, c);
+    }
+
+    private void processAddRequestV3(final BookkeeperProtocol.Request r, final ByteBuf body, final Channel c) {
+        WriteEntryProcessorV3 write = new WriteEntryProcessorV3(r, body, c, this);
 
         final OrderedExecutor threadPool;
         if (RequestUtils.isHighPriority(r)) {
@@ -445,6 +489,9 @@ public class BookieRequestProcessor implements RequestProcessor {
                               r.getAddRequest().getLedgerId(), r.getAddRequest().getEntryId());
                 }
                 getRequestStats().getAddEntryRejectedCounter().inc();
+                if (null != body) {
+                    body.release();
+                }
                 BookkeeperProtocol.AddResponse.Builder addResponse = BookkeeperProtocol.AddResponse.newBuilder()
                         .setLedgerId(r.getAddRequest().getLedgerId())
                         .setEntryId(r.getAddRequest().getEntryId())
@@ -547,6 +594,30 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processBatchReadRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
+        BatchedReadEntryProcessorV3 read = new BatchedReadEntryProcessorV3(r, c, this);
+        final OrderedExecutor threadPool = RequestUtils.isHighPriority(r) ? highPriorityThreadPool : readThreadPool;
+
+        if (null == threadPool) {
+            read.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getBatchReadRequest().getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to batch read entries at {}:{}. Too many pending requests",
+                              r.getBatchReadRequest().getLedgerId(), r.getBatchReadRequest().getStartEntryId());
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                read.sendResponse(BookkeeperProtocol.BatchReadResponse.newBuilder()
+                    .setLedgerId(r.getBatchReadRequest().getLedgerId())
+                    .setStartEntryId(r.getBatchReadRequest().getStartEntryId())
+                    .setStatus(BookkeeperProtocol.StatusCode.ETOOMANYREQUESTS)
+                    .build());
+            }
+        }
+    }
+
     private void processStartTLSRequestV3(final BookkeeperProtocol.Request r, final Channel c) {
         BookkeeperProtocol.Response.Builder response = BookkeeperProtocol.Response.newBuilder();
         BookkeeperProtocol.BKPacketHeader.Builder header = BookkeeperProtocol.BKPacketHeader.newBuilder();
@@ -684,6 +755,48 @@ public class BookieRequestProcessor implements RequestProcessor {
         }
     }
 
+    private void processBatchReadRequest(final BookieProtocol.BatchedReadRequest r, final Channel c) {
+        BatchedReadEntryProcessor read = BatchedReadEntryProcessor.create(r, c, this, throttleReadResponses);
+        final OrderedExecutor threadPool = r.isHighPriority() ? highPriorityThreadPool : readThreadPool;
+
+        if (null == threadPool) {
+            read.run();
+        } else {
+            try {
+                threadPool.executeOrdered(r.getLedgerId(), read);
+            } catch (RejectedExecutionException e) {
+                if (LOG.isDebugEnabled()) {
+                    LOG.debug("Failed to process request to batch read entries at {}:{}. Too many pending requests",
+                            r.ledgerId, r.entryId);
+                }
+                getRequestStats().getReadEntryRejectedCounter().inc();
+                read.sendResponse(
+                    BookieProtocol.ETOOMANYREQUESTS,
+                    ResponseBuilder.buildErrorResponse(BookieProtocol.ETOOMANYREQUESTS, r),
+                    requestStats.getBatchReadRequestStats());
+            }
+        }
+    }
+
+    /**
+     * The largest entry count a batched read may ask for, so that the per-entry framing of the response
+     * alone can not exceed a frame. Requests asking for more are rejected.
+     */
+    int getMaxBatchReadCount() {
+        return (int) Math.max(1L, (serverCfg.getNettyMaxFrameSizeBytes() - 1024L) / 8L);
+    }
+
+    /**
+     * Bound the size of a batched read response, so that it always fits in a single frame on the wire.
+     */
+    long getMaxBatchReadSize(long requestedMaxSize, int maxCount) {
+        int count = Math.min(Math.max(maxCount, 1), getMaxBatchReadCount());
+        // leave room for the response header and for the per-entry framing
+        long frameLimit = serverCfg.getNettyMaxFrameSizeBytes() - 1024L - 8L * count;
+        // the storage always returns the first entry, the limit only decides how many follow it
+        return Math.max(1L, Math.min(requestedMaxSize, frameLimit));
+    }
+
     public long getWaitTimeoutOnBackpressureMillis() {
         return waitTimeoutOnBackpressureMillis;
     }
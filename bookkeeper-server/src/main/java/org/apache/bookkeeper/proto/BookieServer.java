@@ -94,7 +94,7 @@ public class BookieServer {
 
         this.statsLogger = statsLogger;
         this.bookie = bookie;
-        this.nettyServer = new BookieNettyServer(this.conf, null, allocator);
+        this.nettyServer = new BookieNettyServer(this.conf, null, allocator, statsLogger.scope(SERVER_SCOPE));
         this.uncleanShutdownDetection = uncleanShutdownDetection;
 
         final SecurityHandlerFactory shFactory;
@@ -55,6 +55,7 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
 
     final AtomicInteger counter = new AtomicInteger(0);
     final AtomicLong errorCounter = new AtomicLong(0);
+    final ReadLatencyEstimator readLatency = new ReadLatencyEstimator();
 
     DefaultPerChannelBookieClientPool(ClientConfiguration conf, PerChannelBookieClientFactory factory,
                                       BookieId address,
@@ -141,6 +142,16 @@ class DefaultPerChannelBookieClientPool implements PerChannelBookieClientPool,
         errorCounter.incrementAndGet();
     }
 
+    @Override
+    public void recordReadLatency(long latencyNanos) {
+        readLatency.recordLatency(latencyNanos);
+    }
+
+    @Override
+    public long getReadLatencyNanos() {
+        return readLatency.getLatencyNanos(getNumPendingCompletionRequests());
+    }
+
     @Override
     public void disconnect(boolean wait) {
         for (int i = 0; i < clients.length; i++) {
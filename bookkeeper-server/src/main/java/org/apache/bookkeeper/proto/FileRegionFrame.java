@@ -0,0 +1,98 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.FileRegion;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+
+/**
+ * A response frame made of a header, followed by a payload sent from a file.
+ *
+ * <p>The frame is written as is on the socket by its {@link Encoder}, which has to be placed before the
+ * <code>LengthFieldPrepender</code> in the pipeline, and prepends the size of the whole frame. The payload is
+ * then transferred from the file to the socket by the kernel, without being copied in memory, which is only
+ * possible on plaintext connections.
+ */
+class FileRegionFrame extends AbstractReferenceCounted {
+
+    /**
+     * Encoder for the {@link FileRegionFrame}.
+     */
+    static final Encoder ENCODER = new Encoder();
+
+    private final ByteBuf header;
+    private final FileRegion payload;
+
+    FileRegionFrame(ByteBuf header, FileRegion payload) {
+        this.header = header;
+        this.payload = payload;
+    }
+
+    int size() {
+        return header.readableBytes() + (int) payload.count();
+    }
+
+    @Override
+    protected void deallocate() {
+        ReferenceCountUtil.safeRelease(header);
+        ReferenceCountUtil.safeRelease(payload);
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        header.touch(hint);
+        payload.touch(hint);
+        return this;
+    }
+
+    /**
+     * {@link FileRegionFrame} encoder.
+     */
+    @Sharable
+    static class Encoder extends ChannelOutboundHandlerAdapter {
+
+        @Override
+        public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+            if (msg instanceof FileRegionFrame) {
+                FileRegionFrame frame = (FileRegionFrame) msg;
+                try {
+                    ByteBuf sizeBuffer = ctx.alloc().directBuffer(4, 4);
+                    sizeBuffer.writeInt(frame.size());
+                    ctx.write(sizeBuffer, ctx.voidPromise());
+                    ctx.write(frame.header.retain(), ctx.voidPromise());
+                    // The payload carries on the final promise, to notify when the whole frame was written
+                    ctx.write(frame.payload.retain(), promise);
+                } finally {
+                    ReferenceCountUtil.safeRelease(frame);
+                }
+            } else {
+                ctx.write(msg, promise);
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.flush.FlushConsolidationHandler;
+
+import org.apache.bookkeeper.stats.OpStatsLogger;
+
+/**
+ * Records the number of messages written on a channel by each of its flushes.
+ *
+ * <p>It is placed right before a {@link FlushConsolidationHandler} when the flushes are consolidated, so that it
+ * reports how many requests or responses each consolidated flush sends.
+ */
+class FlushStatsHandler extends ChannelOutboundHandlerAdapter {
+
+    static final String NAME = "flushStats";
+    static final String CONSOLIDATION_NAME = "flushConsolidation";
+
+    private final OpStatsLogger messagesPerFlushStats;
+    // only accessed from the event loop of the channel
+    private int pendingMessages = 0;
+
+    FlushStatsHandler(OpStatsLogger messagesPerFlushStats) {
+        this.messagesPerFlushStats = messagesPerFlushStats;
+    }
+
+    /**
+     * Add the flush stats handler to the pipeline if enabled, followed by a flush consolidation handler if enabled.
+     *
+     * <p>The flushes are consolidated until the end of the current read of the channel, or until the next
+     * iteration of its event loop, which bounds the latency they add, and at most <i>maxFlushes</i> flushes are
+     * consolidated.
+     *
+     * @param pipeline the pipeline, to which the messages are added after being encoded
+     * @param consolidateFlushes whether the flushes are consolidated
+     * @param maxFlushes the maximum number of consolidated flushes
+     * @param recordStats whether the number of messages per flush is recorded
+     * @param messagesPerFlushStats the stats of the number of messages per flush
+     */
+    static void addLast(ChannelPipeline pipeline, boolean consolidateFlushes, int maxFlushes,
+                        boolean recordStats, OpStatsLogger messagesPerFlushStats) {
+        if (recordStats) {
+            pipeline.addLast(NAME, new FlushStatsHandler(messagesPerFlushStats));
+        }
+        if (consolidateFlushes) {
+            pipeline.addLast(CONSOLIDATION_NAME, new FlushConsolidationHandler(maxFlushes, true));
+        }
+    }
+
+    @Override
+    public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+        pendingMessages++;
+        ctx.write(msg, promise);
+    }
+
+    @Override
+    public void flush(ChannelHandlerContext ctx) throws Exception {
+        if (pendingMessages > 0) {
+            messagesPerFlushStats.registerSuccessfulValue(pendingMessages);
+            pendingMessages = 0;
+        }
+        ctx.flush();
+    }
+}
@@ -0,0 +1,102 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.MessageLite;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.AbstractReferenceCounted;
+import io.netty.util.ReferenceCountUtil;
+import io.netty.util.ReferenceCounted;
+
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.StringUtils;
+
+/**
+ * A v3 protocol message whose entry body travels next to it, instead of being copied in the message.
+ *
+ * <p>It is used for add requests and read responses: the {@link #getMessage() message} is the protobuf message
+ * without the body, while the {@link #getBody() body} is a {@link ByteBuf} or a {@link ByteBufList} owned by this
+ * object, and released along with it. The {@link ProtocolV3Codec} writes the body as the body field of the
+ * nested request or response, and slices it out of the frame it received without copying it.
+ */
+class MessageWithBody extends AbstractReferenceCounted {
+
+    private final MessageLite message;
+    private final ReferenceCounted body;
+
+    /**
+     * Create a message with its body.
+     *
+     * @param message the request or the response, without body
+     * @param body the body, either a {@link ByteBuf} or a {@link ByteBufList}, whose reference is transferred
+     */
+    MessageWithBody(MessageLite message, ReferenceCounted body) {
+        this.message = message;
+        this.body = body;
+    }
+
+    MessageLite getMessage() {
+        return message;
+    }
+
+    ReferenceCounted getBody() {
+        return body;
+    }
+
+    int getBodySize() {
+        if (body instanceof ByteBuf) {
+            return ((ByteBuf) body).readableBytes();
+        } else {
+            return ((ByteBufList) body).readableBytes();
+        }
+    }
+
+    /**
+     * Add the buffers of the body to the given list, retaining them.
+     */
+    void addBodyTo(ByteBufList list) {
+        if (body instanceof ByteBuf) {
+            list.add(((ByteBuf) body).retainedSlice());
+        } else {
+            ByteBufList buffers = (ByteBufList) body;
+            for (int i = 0; i < buffers.size(); i++) {
+                list.add(buffers.getBuffer(i).retainedSlice());
+            }
+        }
+    }
+
+    @Override
+    protected void deallocate() {
+        ReferenceCountUtil.safeRelease(body);
+    }
+
+    @Override
+    public ReferenceCounted touch(Object hint) {
+        body.touch(hint);
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        return StringUtils.requestToString(message) + " (body: " + getBodySize() + " bytes)";
+    }
+}
@@ -23,6 +23,7 @@ package org.apache.bookkeeper.proto;
 import io.netty.channel.Channel;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
+import io.netty.util.ReferenceCountUtil;
 import java.util.concurrent.TimeUnit;
 
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
@@ -53,6 +54,15 @@ public abstract class PacketProcessorBaseV3 extends SafeRunnable {
     }
 
     protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger) {
+        sendResponse(code, response, statsLogger, null);
+    }
+
+    /**
+     * Send a response referring to buffers which are not owned by the response itself.
+     *
+     * @param onWritten run once the response is written out or dropped, to release the buffers
+     */
+    protected void sendResponse(StatusCode code, Object response, OpStatsLogger statsLogger, Runnable onWritten) {
         final long writeNanos = MathUtils.nowInNano();
 
         final long timeOut = requestProcessor.getWaitTimeoutOnBackpressureMillis();
@@ -82,6 +92,11 @@ public abstract class PacketProcessorBaseV3 extends SafeRunnable {
                 requestProcessor.getRequestStats().getChannelWriteStats()
                         .registerFailedEvent(MathUtils.elapsedNanos(writeNanos), TimeUnit.NANOSECONDS);
                 statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
+                // responses carrying buffers are released by the channel once written
+                ReferenceCountUtil.release(response);
+                if (onWritten != null) {
+                    onWritten.run();
+                }
                 return;
             } else {
                 requestProcessor.invalidateBlacklist(channel);
@@ -104,11 +119,18 @@ public abstract class PacketProcessorBaseV3 extends SafeRunnable {
                     } else {
                         statsLogger.registerFailedEvent(MathUtils.elapsedNanos(enqueueNanos), TimeUnit.NANOSECONDS);
                     }
+                    if (onWritten != null) {
+                        onWritten.run();
+                    }
                 }
             });
         } else {
             LOGGER.debug("Netty channel {} is inactive, "
                     + "hence bypassing netty channel writeAndFlush during sendResponse", channel);
+            ReferenceCountUtil.release(response);
+            if (onWritten != null) {
+                onWritten.run();
+            }
         }
     }
 
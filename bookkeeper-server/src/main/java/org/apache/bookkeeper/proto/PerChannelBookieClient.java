@@ -44,10 +44,8 @@ import io.netty.channel.EventLoopGroup;
 import io.netty.channel.WriteBufferWaterMark;
 import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
-import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.local.LocalAddress;
 import io.netty.channel.local.LocalChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
 import io.netty.channel.unix.Errors.NativeIoException;
 import io.netty.handler.codec.CorruptedFrameException;
 import io.netty.handler.codec.DecoderException;
@@ -57,6 +55,7 @@ import io.netty.handler.codec.TooLongFrameException;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.util.Recycler;
 import io.netty.util.Recycler.Handle;
+import io.netty.util.ReferenceCountUtil;
 import io.netty.util.concurrent.Future;
 import io.netty.util.concurrent.GenericFutureListener;
 import java.io.IOException;
@@ -95,6 +94,7 @@ import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.conf.ClientConfiguration;
 import org.apache.bookkeeper.net.BookieId;
 import org.apache.bookkeeper.net.BookieSocketAddress;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.ForceLedgerCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GenericCallback;
 import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.GetBookieInfoCallback;
@@ -108,6 +108,8 @@ import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.WriteLacCallback;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.AddResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ForceLedgerResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.GetBookieInfoRequest;
@@ -135,6 +137,7 @@ import org.apache.bookkeeper.tls.SecurityHandlerFactory;
 import org.apache.bookkeeper.tls.SecurityHandlerFactory.NodeType;
 import org.apache.bookkeeper.util.AvailabilityOfEntriesOfLedger;
 import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.EventLoopUtil;
 import org.apache.bookkeeper.util.MathUtils;
 import org.apache.bookkeeper.util.SafeRunnable;
 import org.apache.bookkeeper.util.StringUtils;
@@ -199,6 +202,16 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "timeout stats of read entries requests"
     )
     private final OpStatsLogger readTimeoutOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_BATCH_READ_OP,
+        help = "channel stats of batched read entries requests"
+    )
+    private final OpStatsLogger batchReadEntryOpLogger;
+    @StatsDoc(
+        name = BookKeeperClientStats.CHANNEL_TIMEOUT_BATCH_READ,
+        help = "timeout stats of batched read entries requests"
+    )
+    private final OpStatsLogger batchReadTimeoutOpLogger;
     @StatsDoc(
         name = BookKeeperClientStats.CHANNEL_ADD_OP,
         help = "channel stats of add entries requests"
@@ -281,6 +294,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         help = "the number of outstanding add_entry requests"
     )
     private final Counter readEntryOutstanding;
+    @StatsDoc(
+        name = BookKeeperClientStats.CLIENT_CHANNEL_REQUESTS_PER_FLUSH,
+        help = "the number of requests sent by each flush of this channel"
+    )
+    private final OpStatsLogger requestsPerFlushStats;
     /* collect stats on all Ops that flows through netty pipeline */
     @StatsDoc(
         name = BookKeeperClientStats.NETTY_OPS,
@@ -417,6 +435,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         getListOfEntriesOfLedgerCompletionOpLogger = statsLogger
                 .getOpStatsLogger(BookKeeperClientStats.GET_LIST_OF_ENTRIES_OF_LEDGER_OP);
         readTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_READ);
+        batchReadEntryOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_BATCH_READ_OP);
+        batchReadTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_BATCH_READ);
         addTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_ADD);
         writeLacTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_WRITE_LAC);
         forceLedgerTimeoutOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.CHANNEL_TIMEOUT_FORCE);
@@ -431,6 +451,7 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         addEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.ADD_OP_OUTSTANDING);
         readEntryOutstanding = statsLogger.getCounter(BookKeeperClientStats.READ_OP_OUTSTANDING);
         nettyOpLogger = statsLogger.getOpStatsLogger(BookKeeperClientStats.NETTY_OPS);
+        requestsPerFlushStats = statsLogger.getOpStatsLogger(BookKeeperClientStats.CLIENT_CHANNEL_REQUESTS_PER_FLUSH);
         activeNonTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_NON_TLS_CHANNEL_COUNTER);
         activeTlsChannelCounter = statsLogger.getCounter(BookKeeperClientStats.ACTIVE_TLS_CHANNEL_COUNTER);
         failedConnectionCounter = statsLogger.getCounter(BookKeeperClientStats.FAILED_CONNECTION_COUNTER);
@@ -540,18 +561,18 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         // Set up the ClientBootStrap so we can create a new Channel connection to the bookie.
         Bootstrap bootstrap = new Bootstrap();
         bootstrap.group(eventLoopGroup);
+        if (eventLoopGroup instanceof DefaultEventLoopGroup) {
+            bootstrap.channel(LocalChannel.class);
+        } else {
+            bootstrap.channel(EventLoopUtil.getSocketChannelClass(eventLoopGroup));
+        }
         if (eventLoopGroup instanceof EpollEventLoopGroup) {
-            bootstrap.channel(EpollSocketChannel.class);
             try {
                 // For Epoll channels, configure the TCP user timeout.
                 bootstrap.option(EpollChannelOption.TCP_USER_TIMEOUT, conf.getTcpUserTimeoutMillis());
             } catch (NoSuchElementException e) {
                 // Property not set, so keeping default value.
             }
-        } else if (eventLoopGroup instanceof DefaultEventLoopGroup) {
-            bootstrap.channel(LocalChannel.class);
-        } else {
-            bootstrap.channel(NioSocketChannel.class);
         }
 
         bootstrap.option(ChannelOption.ALLOCATOR, this.allocator);
@@ -590,6 +611,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 pipeline.addLast(
                     "bookieProtoDecoder",
                     new BookieProtoEncoding.ResponseDecoder(extRegistry, useV2WireProtocol, shFactory != null));
+                FlushStatsHandler.addLast(pipeline, conf.isClientFlushConsolidationEnabled(),
+                        conf.getClientFlushConsolidationMaxFlushes(), conf.isClientFlushStatsEnabled(),
+                        requestsPerFlushStats);
                 pipeline.addLast("authHandler", new AuthHandler.ClientSideHandler(authProviderFactory, txnIdGenerator,
                             connectionPeer, useV2WireProtocol));
                 pipeline.addLast("mainhandler", PerChannelBookieClient.this);
@@ -789,21 +813,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
             }
 
-            ByteString body = null;
-            if (toSend.hasArray()) {
-                body = UnsafeByteOperations.unsafeWrap(toSend.array(), toSend.arrayOffset(), toSend.readableBytes());
-            } else {
-                for (int i = 0; i < toSend.size(); i++) {
-                    ByteString piece = UnsafeByteOperations.unsafeWrap(toSend.getBuffer(i).nioBuffer());
-                    // use ByteString.concat to avoid byte[] allocation when toSend has multiple ByteBufs
-                    body = (body == null) ? piece : body.concat(piece);
-                }
-            }
+            // The body is not set in the request: it is written next to it on the channel, without being copied
             AddRequest.Builder addBuilder = AddRequest.newBuilder()
                     .setLedgerId(ledgerId)
                     .setEntryId(entryId)
-                    .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
-                    .setBody(body);
+                    .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey));
 
             if (((short) options & BookieProtocol.FLAG_RECOVERY_ADD) == BookieProtocol.FLAG_RECOVERY_ADD) {
                 addBuilder.setFlag(AddRequest.Flag.RECOVERY_ADD);
@@ -814,10 +828,11 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 addBuilder.setWriteFlags(WriteFlag.getWriteFlagsValue(writeFlags));
             }
 
-            request = withRequestContext(Request.newBuilder())
+            Request addRequest = withRequestContext(Request.newBuilder())
                     .setHeader(headerBuilder)
-                    .setAddRequest(addBuilder)
-                    .build();
+                    .setAddRequest(addBuilder.buildPartial())
+                    .buildPartial();
+            request = new MessageWithBody(addRequest, toSend.retain());
         }
 
         putCompletionKeyValue(completionKey,
@@ -985,12 +1000,60 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     .build();
         }
 
-        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId);
+        ReadCompletion readCompletion = new ReadCompletion(completionKey, cb, ctx, ledgerId, entryId,
+                                                           previousLAC != null);
         putCompletionKeyValue(completionKey, readCompletion);
 
         writeAndFlush(channel, completionKey, request, allowFastFail);
     }
 
+    /**
+     * Batched reads, returning a run of consecutive entries starting from {@code startEntryId}.
+     */
+    public void batchReadEntries(final long ledgerId,
+                                 final long startEntryId,
+                                 final int maxCount,
+                                 final long maxSize,
+                                 BatchedReadEntryCallback cb,
+                                 Object ctx,
+                                 int flags) {
+        Object request = null;
+        CompletionKey completionKey = null;
+        if (useV2WireProtocol) {
+            request = new BookieProtocol.BatchedReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                    ledgerId, startEntryId, maxCount, maxSize, (short) flags);
+            completionKey = acquireV2Key(ledgerId, startEntryId, OperationType.BATCH_READ_ENTRY);
+        } else {
+            final long txnId = getTxnId();
+            completionKey = new V3CompletionKey(txnId, OperationType.BATCH_READ_ENTRY);
+
+            BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                    .setVersion(ProtocolVersion.VERSION_THREE)
+                    .setOperation(OperationType.BATCH_READ_ENTRY)
+                    .setTxnId(txnId);
+            if (((short) flags & BookieProtocol.FLAG_HIGH_PRIORITY) == BookieProtocol.FLAG_HIGH_PRIORITY) {
+                headerBuilder.setPriority(DEFAULT_HIGH_PRIORITY_VALUE);
+            }
+
+            BatchReadRequest.Builder batchReadBuilder = BatchReadRequest.newBuilder()
+                    .setLedgerId(ledgerId)
+                    .setStartEntryId(startEntryId)
+                    .setMaxCount(maxCount)
+                    .setMaxSize(maxSize);
+
+            request = withRequestContext(Request.newBuilder())
+                    .setHeader(headerBuilder)
+                    .setBatchReadRequest(batchReadBuilder)
+                    .build();
+        }
+
+        BatchedReadCompletion readCompletion = new BatchedReadCompletion(completionKey, cb, ctx,
+                ledgerId, startEntryId);
+        putCompletionKeyValue(completionKey, readCompletion);
+
+        writeAndFlush(channel, completionKey, request, false);
+    }
+
     public void getBookieInfo(final long requested, GetBookieInfoCallback cb, Object ctx) {
         final long txnId = getTxnId();
         final CompletionKey completionKey = new V3CompletionKey(txnId, OperationType.GET_BOOKIE_INFO);
@@ -1134,6 +1197,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                     StringUtils.requestToString(request));
 
             errorOut(key, BKException.Code.TooManyRequestsException);
+            // requests carrying their body aside hold a reference on it
+            ReferenceCountUtil.release(request);
             return;
         }
 
@@ -1329,6 +1394,9 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         } else if (msg instanceof Response) {
             Response response = (Response) msg;
             readV3Response(response);
+        } else if (msg instanceof MessageWithBody) {
+            MessageWithBody response = (MessageWithBody) msg;
+            readV3Response((Response) response.getMessage(), response);
         } else {
             ctx.fireChannelRead(msg);
         }
@@ -1412,6 +1480,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 return  OperationType.ADD_ENTRY;
             case BookieProtocol.READENTRY:
                 return OperationType.READ_ENTRY;
+            case BookieProtocol.BATCH_READ_ENTRY:
+                return OperationType.BATCH_READ_ENTRY;
             case BookieProtocol.AUTH:
                 return OperationType.AUTH;
             case BookieProtocol.READ_LAC:
@@ -1453,6 +1523,14 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
     }
 
     private void readV3Response(final Response response) {
+        readV3Response(response, null);
+    }
+
+    /**
+     * Handle a v3 response, with the holder of its body when it was decoded aside from it, which is released
+     * once the response is handled.
+     */
+    private void readV3Response(final Response response, final MessageWithBody withBody) {
         final BKPacketHeader header = response.getHeader();
 
         final CompletionKey key = newCompletionKey(header.getTxnId(), header.getOperation());
@@ -1464,13 +1542,24 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                 LOG.debug("Unexpected response received from bookie : " + bookieId + " for type : "
                         + header.getOperation() + " and txnId : " + header.getTxnId());
             }
+            if (null != withBody) {
+                withBody.release();
+            }
         } else {
             long orderingKey = completionValue.ledgerId;
             executor.executeOrdered(orderingKey, new SafeRunnable() {
                 @Override
                 public void safeRun() {
                     completionValue.restoreMdcContext();
-                    completionValue.handleV3Response(response);
+                    if (null == withBody) {
+                        completionValue.handleV3Response(response);
+                        return;
+                    }
+                    try {
+                        completionValue.handleV3Response(response, (ByteBuf) withBody.getBody());
+                    } finally {
+                        withBody.release();
+                    }
                 }
 
                 @Override
@@ -1609,6 +1698,27 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             }
         }
 
+        /**
+         * Feed the latency of a read to the latency estimation of the bookie, which the client uses to
+         * order the bookies of the next reads. Only the reads which reached the bookie, or timed out, are
+         * representative of its latency.
+         */
+        void recordReadLatency(int rc) {
+            if (pcbcPool == null) {
+                return;
+            }
+            switch (rc) {
+            case BKException.Code.OK:
+            case BKException.Code.NoSuchEntryException:
+            case BKException.Code.NoSuchLedgerExistsException:
+            case BKException.Code.TimeoutException:
+                pcbcPool.recordReadLatency(latency());
+                break;
+            default:
+                break;
+            }
+        }
+
         boolean maybeTimeout() {
             if (MathUtils.elapsedNanos(startTime) >= readEntryTimeoutNanos) {
                 timeout();
@@ -1681,6 +1791,15 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         public abstract void handleV3Response(
                 BookkeeperProtocol.Response response);
+
+        /**
+         * Handle a v3 response whose body was decoded aside from it. The body is released by the caller, so
+         * it has to be retained to be used once this method returns.
+         */
+        public void handleV3Response(
+                BookkeeperProtocol.Response response, ByteBuf body) {
+            handleV3Response(response);
+        }
     }
 
     // visible for testing
@@ -1849,7 +1968,8 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         public ReadCompletion(final CompletionKey key,
                               final ReadEntryCallback originalCallback,
                               final Object originalCtx,
-                              long ledgerId, final long entryId) {
+                              long ledgerId, final long entryId,
+                              final boolean longPoll) {
             super("Read", originalCtx, ledgerId, entryId,
                   readEntryOpLogger, readTimeoutOpLogger);
 
@@ -1859,6 +1979,10 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
                                                   long entryId, ByteBuf buffer,
                                                   Object ctx) {
                         logOpResult(rc);
+                        // long poll reads wait on the bookie for new entries
+                        if (!longPoll) {
+                            recordReadLatency(rc);
+                        }
                         originalCallback.readEntryComplete(rc,
                                                            ledgerId, entryId,
                                                            buffer, originalCtx);
@@ -1899,14 +2023,21 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
 
         @Override
         public void handleV3Response(BookkeeperProtocol.Response response) {
-            readEntryOutstanding.dec();
             ReadResponse readResponse = response.getReadResponse();
-            StatusCode status = response.getStatus() == StatusCode.EOK
-                ? readResponse.getStatus() : response.getStatus();
             ByteBuf buffer = Unpooled.EMPTY_BUFFER;
             if (readResponse.hasBody()) {
                 buffer = Unpooled.wrappedBuffer(readResponse.getBody().asReadOnlyByteBuffer());
             }
+            handleV3Response(response, buffer);
+            buffer.release(); // meaningless using unpooled, but client may expect to hold the last reference
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response, ByteBuf buffer) {
+            readEntryOutstanding.dec();
+            ReadResponse readResponse = response.getReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? readResponse.getStatus() : response.getStatus();
             long maxLAC = INVALID_ENTRY_ID;
             if (readResponse.hasMaxLAC()) {
                 maxLAC = readResponse.getMaxLAC();
@@ -1918,7 +2049,6 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
             handleReadResponse(readResponse.getLedgerId(),
                                readResponse.getEntryId(),
                                status, buffer, maxLAC, lacUpdateTimestamp);
-            buffer.release(); // meaningless using unpooled, but client may expect to hold the last reference
         }
 
         private void handleReadResponse(long ledgerId,
@@ -1944,6 +2074,92 @@ public class PerChannelBookieClient extends ChannelInboundHandlerAdapter {
         }
     }
 
+    class BatchedReadCompletion extends CompletionValue {
+        final BatchedReadEntryCallback cb;
+
+        public BatchedReadCompletion(final CompletionKey key,
+                                     final BatchedReadEntryCallback originalCallback,
+                                     final Object originalCtx,
+                                     long ledgerId, final long startEntryId) {
+            super("BatchedRead", originalCtx, ledgerId, startEntryId,
+                  batchReadEntryOpLogger, batchReadTimeoutOpLogger);
+
+            this.cb = new BatchedReadEntryCallback() {
+                    @Override
+                    public void readEntriesComplete(int rc, long ledgerId, long startEntryId,
+                                                    List<ByteBuf> entries, Object ctx) {
+                        logOpResult(rc);
+                        recordReadLatency(rc);
+                        originalCallback.readEntriesComplete(rc, ledgerId, startEntryId, entries, originalCtx);
+                        key.release();
+                    }
+                };
+        }
+
+        @Override
+        public void errorOut() {
+            errorOut(BKException.Code.BookieHandleNotAvailableException);
+        }
+
+        @Override
+        public void errorOut(final int rc) {
+            errorOutAndRunCallback(
+                    () -> cb.readEntriesComplete(rc, ledgerId, entryId, null, ctx));
+        }
+
+        @Override
+        public void setOutstanding() {
+            readEntryOutstanding.inc();
+        }
+
+        @Override
+        public void handleV2Response(long ledgerId, long entryId,
+                                     StatusCode status,
+                                     BookieProtocol.Response response) {
+            readEntryOutstanding.dec();
+            if (!(response instanceof BookieProtocol.BatchedReadResponse)) {
+                return;
+            }
+            List<ByteBuf> data = ((BookieProtocol.BatchedReadResponse) response).getData();
+            // the response is released once this completes, so hand over our own references
+            List<ByteBuf> entries = new ArrayList<>(data.size());
+            for (int i = 0; i < data.size(); i++) {
+                entries.add(data.get(i).retain());
+            }
+            handleBatchedReadResponse(ledgerId, entryId, status, entries);
+        }
+
+        @Override
+        public void handleV3Response(BookkeeperProtocol.Response response) {
+            readEntryOutstanding.dec();
+            BatchReadResponse batchReadResponse = response.getBatchReadResponse();
+            StatusCode status = response.getStatus() == StatusCode.EOK
+                ? batchReadResponse.getStatus() : response.getStatus();
+            List<ByteBuf> entries = new ArrayList<>(batchReadResponse.getBodyCount());
+            for (int i = 0; i < batchReadResponse.getBodyCount(); i++) {
+                entries.add(Unpooled.wrappedBuffer(batchReadResponse.getBody(i).asReadOnlyByteBuffer()));
+            }
+            handleBatchedReadResponse(batchReadResponse.getLedgerId(), batchReadResponse.getStartEntryId(),
+                                      status, entries);
+        }
+
+        private void handleBatchedReadResponse(long ledgerId,
+                                               long startEntryId,
+                                               StatusCode status,
+                                               List<ByteBuf> entries) {
+            if (LOG.isDebugEnabled()) {
+                logResponse(status, "ledger", ledgerId, "startEntry", startEntryId, "entries", entries.size());
+            }
+
+            int rc = convertStatus(status, BKException.Code.ReadException);
+            if (rc != BKException.Code.OK) {
+                entries.forEach(ByteBuf::release);
+                entries = null;
+            }
+            cb.readEntriesComplete(rc, ledgerId, startEntryId, entries, ctx);
+        }
+    }
+
     class StartTLSCompletion extends CompletionValue {
         final StartTLSCallback cb;
 
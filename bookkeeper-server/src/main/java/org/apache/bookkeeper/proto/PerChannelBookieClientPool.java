@@ -66,6 +66,19 @@ public interface PerChannelBookieClientPool {
      */
     void recordError();
 
+    /**
+     * record the latency of a read completed on {@link PerChannelBookieClientPool}.
+     */
+    default void recordReadLatency(long latencyNanos) {
+    }
+
+    /**
+     * Get the average latency of the reads completed on the channels of the pool, 0 if unknown.
+     */
+    default long getReadLatencyNanos() {
+        return 0;
+    }
+
     /**
      * Check if any ops on any channel needs to be timed out.
      * This is called on all channels, even if the channel is not yet connected.
@@ -0,0 +1,330 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.ExtensionRegistryLite;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.UninitializedMessageException;
+import com.google.protobuf.WireFormat;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+
+import java.io.IOException;
+
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.util.ByteBufList;
+
+/**
+ * Encoder and decoder of the v3 protocol frames which carry an entry body, which is never copied.
+ *
+ * <p>On the way out, the message is serialized without its body, followed by a second occurrence of the nested
+ * add request or read response, made of the header of the body field only, and the body buffers are written
+ * after it as they are. Protobuf parsers merge the occurrences of a nested message, so any v3 peer reads the
+ * frame as a regular message.
+ *
+ * <p>On the way in, the fields of the frame are walked directly in the {@link ByteBuf}: the body field is
+ * sliced out of the frame, and the other ranges of fields are merged in the protobuf builders, so the frames
+ * produced by other encoders, with the body anywhere in the nested message, are decoded too.
+ */
+final class ProtocolV3Codec {
+
+    private ProtocolV3Codec() {}
+
+    /**
+     * Encode a message with its body.
+     *
+     * <p>The message is released, and the returned list holds the serialized message followed by the body
+     * buffers.
+     */
+    static ByteBufList encode(MessageWithBody msg, ByteBufAllocator allocator) {
+        try {
+            ByteBuf header;
+            if (msg.getMessage() instanceof Request) {
+                header = serializeWithBodyHeader(msg.getMessage(), Request.ADDREQUEST_FIELD_NUMBER,
+                        AddRequest.BODY_FIELD_NUMBER, msg.getBodySize(), allocator);
+            } else {
+                header = serializeWithBodyHeader(msg.getMessage(), Response.READRESPONSE_FIELD_NUMBER,
+                        ReadResponse.BODY_FIELD_NUMBER, msg.getBodySize(), allocator);
+            }
+            ByteBufList frame = ByteBufList.get(header);
+            msg.addBodyTo(frame);
+            return frame;
+        } finally {
+            msg.release();
+        }
+    }
+
+    /**
+     * Serialize a message, followed by the header of a body of the given size in the given nested field.
+     *
+     * @param message the message, whose nested message has no body
+     * @param nestedFieldNumber the field of the nested message holding the body
+     * @param bodyFieldNumber the body field in the nested message
+     * @param bodySize the size of the body, which has to be written right after the returned buffer
+     */
+    static ByteBuf serializeWithBodyHeader(MessageLite message, int nestedFieldNumber, int bodyFieldNumber,
+                                           int bodySize, ByteBufAllocator allocator) {
+        int bodyHeaderSize = CodedOutputStream.computeTagSize(bodyFieldNumber)
+                + CodedOutputStream.computeUInt32SizeNoTag(bodySize);
+        int nestedSize = bodyHeaderSize + bodySize;
+        int size = message.getSerializedSize()
+                + CodedOutputStream.computeTagSize(nestedFieldNumber)
+                + CodedOutputStream.computeUInt32SizeNoTag(nestedSize)
+                + bodyHeaderSize;
+
+        ByteBuf buf = allocator.directBuffer(size, size);
+        try {
+            CodedOutputStream out = CodedOutputStream.newInstance(buf.nioBuffer(buf.readerIndex(), size));
+            message.writeTo(out);
+            out.writeTag(nestedFieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(nestedSize);
+            out.writeTag(bodyFieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(bodySize);
+            out.flush();
+        } catch (IOException e) {
+            // This is in-memory serialization, should not fail
+            buf.release();
+            throw new RuntimeException(e);
+        }
+
+        buf.writerIndex(buf.capacity());
+        return buf;
+    }
+
+    /**
+     * Decode a request frame.
+     *
+     * @return a {@link MessageWithBody} for an add request, holding a slice of the frame as body, or a
+     *         {@link Request} otherwise
+     */
+    static Object decodeRequest(ByteBuf frame, ExtensionRegistryLite registry)
+            throws InvalidProtocolBufferException {
+        Request.Builder request = Request.newBuilder();
+        AddRequest.Builder addRequest = null;
+        ByteBuf body = null;
+        try {
+            int end = frame.writerIndex();
+            int nestedSize;
+            while ((nestedSize = mergeUntil(frame, end, request, Request.ADDREQUEST_FIELD_NUMBER, registry)) >= 0) {
+                if (addRequest == null) {
+                    addRequest = AddRequest.newBuilder();
+                }
+                ByteBuf previousBody = body;
+                body = null;
+                body = decodeNested(frame, frame.readerIndex() + nestedSize, addRequest,
+                        AddRequest.BODY_FIELD_NUMBER, previousBody, registry);
+            }
+            if (addRequest == null) {
+                return request.build();
+            }
+            if (body == null) {
+                throw new InvalidProtocolBufferException("Add request without body");
+            }
+            // the body is carried aside, the empty one only keeps the request initialized
+            Request decoded = request.setAddRequest(addRequest.setBody(ByteString.EMPTY)).build();
+            MessageWithBody result = new MessageWithBody(decoded, body);
+            body = null;
+            return result;
+        } catch (UninitializedMessageException e) {
+            throw e.asInvalidProtocolBufferException();
+        } catch (IndexOutOfBoundsException e) {
+            throw new InvalidProtocolBufferException(e.getMessage());
+        } finally {
+            if (body != null) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * Decode a response frame.
+     *
+     * @return a {@link MessageWithBody} for a read response with a body, holding a slice of the frame, or a
+     *         {@link Response} otherwise
+     */
+    static Object decodeResponse(ByteBuf frame, ExtensionRegistryLite registry)
+            throws InvalidProtocolBufferException {
+        Response.Builder response = Response.newBuilder();
+        ReadResponse.Builder readResponse = null;
+        ByteBuf body = null;
+        try {
+            int end = frame.writerIndex();
+            int nestedSize;
+            while ((nestedSize = mergeUntil(frame, end, response, Response.READRESPONSE_FIELD_NUMBER,
+                    registry)) >= 0) {
+                if (readResponse == null) {
+                    readResponse = ReadResponse.newBuilder();
+                }
+                ByteBuf previousBody = body;
+                body = null;
+                body = decodeNested(frame, frame.readerIndex() + nestedSize, readResponse,
+                        ReadResponse.BODY_FIELD_NUMBER, previousBody, registry);
+            }
+            if (readResponse != null) {
+                response.setReadResponse(readResponse);
+            }
+            Response decoded = response.build();
+            if (body == null) {
+                return decoded;
+            }
+            MessageWithBody result = new MessageWithBody(decoded, body);
+            body = null;
+            return result;
+        } catch (UninitializedMessageException e) {
+            throw e.asInvalidProtocolBufferException();
+        } catch (IndexOutOfBoundsException e) {
+            throw new InvalidProtocolBufferException(e.getMessage());
+        } finally {
+            if (body != null) {
+                body.release();
+            }
+        }
+    }
+
+    /**
+     * Decode an occurrence of a nested message ending at <i>end</i>, slicing its body out of the frame.
+     *
+     * @return the body, which replaces the given previous body if the occurrence has one, as protobuf does. The
+     *         body is released if the occurrence cannot be decoded.
+     */
+    private static ByteBuf decodeNested(ByteBuf frame, int end, MessageLite.Builder builder, int bodyFieldNumber,
+                                        ByteBuf body, ExtensionRegistryLite registry)
+            throws InvalidProtocolBufferException {
+        try {
+            int bodySize;
+            while ((bodySize = mergeUntil(frame, end, builder, bodyFieldNumber, registry)) >= 0) {
+                if (body != null) {
+                    body.release();
+                    body = null;
+                }
+                body = frame.retainedSlice(frame.readerIndex(), bodySize);
+                frame.skipBytes(bodySize);
+            }
+            return body;
+        } catch (InvalidProtocolBufferException | RuntimeException e) {
+            if (body != null) {
+                body.release();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Merge the fields of the frame in the builder, up to the given length delimited field or to <i>end</i>.
+     *
+     * @return the size of the field, whose content starts at the reader index of the frame, or -1 once the
+     *         frame is consumed up to <i>end</i>
+     */
+    private static int mergeUntil(ByteBuf frame, int end, MessageLite.Builder builder, int fieldNumber,
+                                  ExtensionRegistryLite registry) throws InvalidProtocolBufferException {
+        int from = frame.readerIndex();
+        while (frame.readerIndex() < end) {
+            int fieldStart = frame.readerIndex();
+            int tag = (int) readVarint(frame, end);
+            if (WireFormat.getTagFieldNumber(tag) == fieldNumber
+                    && WireFormat.getTagWireType(tag) == WireFormat.WIRETYPE_LENGTH_DELIMITED) {
+                merge(frame, from, fieldStart, builder, registry);
+                return readLength(frame, end);
+            }
+            skipField(frame, tag, end);
+        }
+        if (frame.readerIndex() != end) {
+            throw new InvalidProtocolBufferException("Field overruns its enclosing message");
+        }
+        merge(frame, from, end, builder, registry);
+        return -1;
+    }
+
+    private static void merge(ByteBuf frame, int from, int to, MessageLite.Builder builder,
+                              ExtensionRegistryLite registry) throws InvalidProtocolBufferException {
+        if (from == to) {
+            return;
+        }
+        try {
+            builder.mergeFrom(CodedInputStream.newInstance(frame.nioBuffer(from, to - from)),
+                    registry != null ? registry : ExtensionRegistryLite.getEmptyRegistry());
+        } catch (InvalidProtocolBufferException e) {
+            throw e;
+        } catch (IOException e) {
+            throw new InvalidProtocolBufferException(e);
+        }
+    }
+
+    private static void skipField(ByteBuf frame, int tag, int end) throws InvalidProtocolBufferException {
+        if (WireFormat.getTagFieldNumber(tag) == 0) {
+            throw new InvalidProtocolBufferException("Protocol message contained an invalid tag (zero).");
+        }
+        switch (WireFormat.getTagWireType(tag)) {
+        case WireFormat.WIRETYPE_VARINT:
+            readVarint(frame, end);
+            break;
+        case WireFormat.WIRETYPE_FIXED64:
+            skip(frame, Long.BYTES, end);
+            break;
+        case WireFormat.WIRETYPE_LENGTH_DELIMITED:
+            skip(frame, readLength(frame, end), end);
+            break;
+        case WireFormat.WIRETYPE_FIXED32:
+            skip(frame, Integer.BYTES, end);
+            break;
+        default:
+            throw new InvalidProtocolBufferException("Protocol message tag had invalid wire type.");
+        }
+    }
+
+    private static int readLength(ByteBuf frame, int end) throws InvalidProtocolBufferException {
+        long length = readVarint(frame, end);
+        if (length < 0 || length > end - frame.readerIndex()) {
+            throw new InvalidProtocolBufferException("Truncated length delimited field");
+        }
+        return (int) length;
+    }
+
+    private static void skip(ByteBuf frame, int length, int end) throws InvalidProtocolBufferException {
+        if (length > end - frame.readerIndex()) {
+            throw new InvalidProtocolBufferException("Truncated field");
+        }
+        frame.skipBytes(length);
+    }
+
+    private static long readVarint(ByteBuf frame, int end) throws InvalidProtocolBufferException {
+        long result = 0;
+        for (int shift = 0; shift < Long.SIZE; shift += 7) {
+            if (frame.readerIndex() >= end) {
+                throw new InvalidProtocolBufferException("Truncated varint");
+            }
+            byte b = frame.readByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new InvalidProtocolBufferException("Malformed varint");
+    }
+}
@@ -19,6 +19,7 @@ package org.apache.bookkeeper.proto;
 
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
 import io.netty.util.Recycler;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
@@ -76,6 +77,14 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
                     throw BookieException.create(BookieException.Code.UnauthorizedAccessException);
                 }
             }
+            if (fenceResult == null && requestProcessor.isZeroCopyReadEnabled(channel)) {
+                FileRegion region = requestProcessor.getBookie().readEntryRegion(request.getLedgerId(),
+                        request.getEntryId(), requestProcessor.getZeroCopyReadMinEntrySize());
+                if (region != null) {
+                    sendResponse(region, startTimeNanos);
+                    return;
+                }
+            }
             data = requestProcessor.getBookie().readEntry(request.getLedgerId(), request.getEntryId());
             if (LOG.isDebugEnabled()) {
                 LOG.debug("##### Read entry ##### {} -- ref-count: {}", data.readableBytes(), data.refCnt());
@@ -140,6 +149,21 @@ class ReadEntryProcessor extends PacketProcessorBase<ReadRequest> {
         recycle();
     }
 
+    private void sendResponse(FileRegion region, long startTimeNanos) {
+        final RequestStats stats = requestProcessor.getRequestStats();
+        stats.getReadEntryStats().registerSuccessfulEvent(MathUtils.elapsedNanos(startTimeNanos),
+                TimeUnit.NANOSECONDS);
+        stats.getReadEntryZeroCopyCounter().inc();
+        BookieProtocol.Response response = ResponseBuilder.buildReadResponse(region, request);
+
+        if (throttleReadResponses) {
+            sendResponseAndWait(BookieProtocol.EOK, response, stats.getReadRequestStats());
+        } else {
+            sendResponse(BookieProtocol.EOK, response, stats.getReadRequestStats());
+        }
+        recycle();
+    }
+
     private void sendFenceResponse(Boolean result, ByteBuf data, long startTimeNanos) {
         final int retCode = result != null && result ? BookieProtocol.EOK : BookieProtocol.EIO;
         sendResponse(data, retCode, startTimeNanos);
@@ -21,14 +21,18 @@ import com.google.common.base.Stopwatch;
 import com.google.protobuf.ByteString;
 import io.netty.buffer.ByteBuf;
 import io.netty.channel.Channel;
+import io.netty.channel.FileRegion;
 import io.netty.util.ReferenceCountUtil;
 import java.io.IOException;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 import org.apache.bookkeeper.bookie.Bookie;
 import org.apache.bookkeeper.bookie.BookieException;
 import org.apache.bookkeeper.common.concurrent.FutureEventListener;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
 import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
@@ -175,20 +179,29 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
             handleReadResultForFenceRead(entryBody, readResponseBuilder, entryId, startTimeSw);
             return null;
         } else {
-            try {
-                readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
-                if (readLACPiggyBack) {
-                    readResponseBuilder.setEntryId(entryId);
-                } else {
-                    long knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
-                    readResponseBuilder.setMaxLAC(knownLAC);
-                }
-                registerSuccessfulEvent(readStats, startTimeSw);
-                readResponseBuilder.setStatus(StatusCode.EOK);
-                return readResponseBuilder.build();
-            } finally {
-                ReferenceCountUtil.release(entryBody);
+            return buildReadResponse(readResponseBuilder, entryBody, entryId, readLACPiggyBack, startTimeSw);
+        }
+    }
+
+    private ReadResponse buildReadResponse(ReadResponse.Builder readResponseBuilder,
+                                           ByteBuf entryBody,
+                                           long entryId,
+                                           boolean readLACPiggyBack,
+                                           Stopwatch startTimeSw)
+        throws IOException, BookieException {
+        try {
+            readResponseBuilder.setBody(ByteString.copyFrom(entryBody.nioBuffer()));
+            if (readLACPiggyBack) {
+                readResponseBuilder.setEntryId(entryId);
+            } else {
+                long knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
+                readResponseBuilder.setMaxLAC(knownLAC);
             }
+            registerSuccessfulEvent(readStats, startTimeSw);
+            readResponseBuilder.setStatus(StatusCode.EOK);
+            return readResponseBuilder.build();
+        } finally {
+            ReferenceCountUtil.release(entryBody);
         }
     }
 
@@ -214,7 +227,120 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 }
             }
             return readEntry(readResponse, entryId, startTimeSw);
-        } catch (Bookie.NoLedgerException e) {
+        } catch (IOException | BookieException e) {
+            return buildErrorResponse(readResponse, e, startTimeSw);
+        }
+    }
+
+    /**
+     * Read the entry without blocking the read thread when the ledger storage has to access the disk.
+     * The response is sent once the read completes, from the ordered thread of the ledger.
+     */
+    private void executeAsyncRead() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+
+        final ReadResponse.Builder readResponse = ReadResponse.newBuilder()
+            .setLedgerId(ledgerId)
+            .setEntryId(entryId);
+        CompletableFuture<ByteBuf> readFuture = requestProcessor.getBookie().readEntryAsync(ledgerId, entryId);
+        ExecutorService orderedExecutor = getOrderedExecutor();
+        if (readFuture.isDone() || null == orderedExecutor) {
+            // Served by the caches, the response is sent from the read thread
+            readFuture.whenComplete((entryBody, cause) ->
+                    sendAsyncReadResponse(readResponse, entryBody, cause, startTimeSw));
+            return;
+        }
+
+        // Send the response from the ordered thread of the ledger, rather than from the storage read I/O thread
+        readFuture.whenComplete((entryBody, cause) -> {
+            try {
+                orderedExecutor.execute(() -> sendAsyncReadResponse(readResponse, entryBody, cause, startTimeSw));
+            } catch (RejectedExecutionException e) {
+                // The entry was already read, don't drop it because the read thread queue is full
+                sendAsyncReadResponse(readResponse, entryBody, cause, startTimeSw);
+            }
+        });
+    }
+
+    private ExecutorService getOrderedExecutor() {
+        OrderedExecutor threadPool = RequestUtils.isHighPriority(request)
+                ? requestProcessor.getHighPriorityThreadPool()
+                : requestProcessor.getReadThreadPool();
+        return null == threadPool ? null : threadPool.chooseThread(ledgerId);
+    }
+
+    private void sendAsyncReadResponse(ReadResponse.Builder readResponse, ByteBuf entryBody, Throwable cause,
+                                       Stopwatch startTimeSw) {
+        if (null != cause) {
+            Throwable t = cause instanceof CompletionException && null != cause.getCause()
+                    ? cause.getCause() : cause;
+            sendResponse(buildErrorResponse(readResponse, t, startTimeSw));
+            return;
+        }
+        long knownLAC;
+        try {
+            knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
+        } catch (IOException | BookieException e) {
+            ReferenceCountUtil.release(entryBody);
+            sendResponse(buildErrorResponse(readResponse, e, startTimeSw));
+            return;
+        }
+        registerSuccessfulEvent(readStats, startTimeSw);
+        readResponse.setMaxLAC(knownLAC)
+            .setStatus(StatusCode.EOK);
+        sendResponse(readResponse.build(), entryBody);
+    }
+
+    /**
+     * Send the entry straight from the entry log file, if it is large enough and not cached.
+     *
+     * @return whether the response was sent, otherwise the entry has to be read the regular way, which also
+     *         reports the errors
+     */
+    private boolean sendEntryRegion() {
+        final Stopwatch startTimeSw = Stopwatch.createStarted();
+
+        FileRegion body;
+        long knownLAC;
+        try {
+            body = requestProcessor.getBookie().readEntryRegion(ledgerId, entryId,
+                    requestProcessor.getZeroCopyReadMinEntrySize());
+            if (null == body) {
+                return false;
+            }
+        } catch (IOException | BookieException e) {
+            return false;
+        }
+        try {
+            knownLAC = requestProcessor.getBookie().readLastAddConfirmed(ledgerId);
+        } catch (IOException | BookieException e) {
+            body.release();
+            return false;
+        }
+
+        ReadResponse readResponse = ReadResponse.newBuilder()
+            .setLedgerId(ledgerId)
+            .setEntryId(entryId)
+            .setMaxLAC(knownLAC)
+            .setStatus(StatusCode.EOK)
+            .build();
+        registerSuccessfulEvent(readStats, startTimeSw);
+        requestProcessor.getRequestStats().getReadEntryZeroCopyCounter().inc();
+
+        Response response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponse)
+                .build();
+        sendResponse(StatusCode.EOK,
+                     BookieProtoEncoding.serializeReadResponse(response, body, channel.alloc()),
+                     reqStats);
+        requestProcessor.onReadRequestFinish();
+        return true;
+    }
+
+    private ReadResponse buildErrorResponse(ReadResponse.Builder readResponse, Throwable e, Stopwatch startTimeSw) {
+        if (e instanceof Bookie.NoLedgerException) {
             if (RequestUtils.isFenceRequest(readRequest)) {
                 LOG.info("No ledger found reading entry {} when fencing ledger {}", entryId, ledgerId);
             } else if (entryId != BookieProtocol.LAST_ADD_CONFIRMED) {
@@ -224,24 +350,33 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
                 LOG.debug("No ledger found while reading entry: {} from ledger: {}", entryId, ledgerId);
             }
             return buildResponse(readResponse, StatusCode.ENOLEDGER, startTimeSw);
-        } catch (Bookie.NoEntryException e) {
+        } else if (e instanceof Bookie.NoEntryException) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("No entry found while reading entry: {} from ledger: {}", entryId, ledgerId);
             }
             return buildResponse(readResponse, StatusCode.ENOENTRY, startTimeSw);
-        } catch (IOException e) {
+        } else if (e instanceof IOException) {
             LOG.error("IOException while reading entry: {} from ledger {} ", entryId, ledgerId, e);
             return buildResponse(readResponse, StatusCode.EIO, startTimeSw);
-        } catch (BookieException.DataUnknownException e) {
+        } else if (e instanceof BookieException.OperationRejectedException) {
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Read of entry: {} from ledger {} rejected, the storage is saturated", entryId, ledgerId);
+            }
+            requestProcessor.getRequestStats().getReadEntryRejectedCounter().inc();
+            return buildResponse(readResponse, StatusCode.ETOOMANYREQUESTS, startTimeSw);
+        } else if (e instanceof BookieException.DataUnknownException) {
             if (LOG.isDebugEnabled()) {
                 LOG.debug("Ledger has unknown state for entry: {} from ledger {}", entryId, ledgerId);
             }
             return buildResponse(readResponse, StatusCode.EUNKNOWNLEDGERSTATE, startTimeSw);
-        } catch (BookieException e) {
+        } else if (e instanceof BookieException) {
             LOG.error(
                 "Unauthorized access to ledger:{} while reading entry:{} in request from address: {}",
                     ledgerId, entryId, channel.remoteAddress());
             return buildResponse(readResponse, StatusCode.EUA, startTimeSw);
+        } else {
+            LOG.error("Unexpected exception while reading entry: {} from ledger {} ", entryId, ledgerId, e);
+            return buildResponse(readResponse, StatusCode.EIO, startTimeSw);
         }
     }
 
@@ -264,6 +399,14 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
     }
 
     protected void executeOp() {
+        if (!RequestUtils.isFenceRequest(readRequest)) {
+            if (requestProcessor.isZeroCopyReadEnabled(channel) && sendEntryRegion()) {
+                return;
+            }
+            executeAsyncRead();
+            return;
+        }
+
         ReadResponse readResponse = getReadResponse();
         if (null != readResponse) {
             sendResponse(readResponse);
@@ -322,6 +465,22 @@ class ReadEntryProcessorV3 extends PacketProcessorBaseV3 {
         requestProcessor.onReadRequestFinish();
     }
 
+    /**
+     * Send a successful read response, along with the entry body, which is written on the channel as it is
+     * instead of being copied in the response.
+     */
+    private void sendResponse(ReadResponse readResponse, ByteBuf entryBody) {
+        Response response = Response.newBuilder()
+                .setHeader(getHeader())
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponse)
+                .build();
+        sendResponse(StatusCode.EOK,
+                     new MessageWithBody(response, entryBody),
+                     reqStats);
+        requestProcessor.onReadRequestFinish();
+    }
+
     //
     // Stats Methods
     //
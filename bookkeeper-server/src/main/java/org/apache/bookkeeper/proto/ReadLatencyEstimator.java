@@ -0,0 +1,92 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import com.google.common.annotations.VisibleForTesting;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import org.apache.bookkeeper.util.MathUtils;
+
+/**
+ * Exponentially weighted moving average of the read latency of a bookie.
+ *
+ * <p>The average decays towards zero while the bookie is idle, so that a bookie which was slow for a while,
+ * during a GC pause or a compaction for instance, and stopped receiving reads because of it, is eventually
+ * tried again instead of being avoided forever. The average doesn't decay while the bookie has outstanding
+ * requests, otherwise a stalled bookie, whose reads never complete, would soon look like the fastest one.
+ */
+class ReadLatencyEstimator {
+
+    // Weight of the last read in the average
+    private static final double ALPHA = 0.2;
+    // Time after which the average of a bookie without reads is halved
+    private static final long DECAY_HALF_LIFE_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private final LongSupplier clock;
+    private double averageNanos = 0;
+    private long lastUpdateNanos = 0;
+    // Last time the bookie was seen with outstanding requests, the average only decays from then on
+    private long lastBusyNanos = 0;
+
+    ReadLatencyEstimator() {
+        this(MathUtils::nowInNano);
+    }
+
+    @VisibleForTesting
+    ReadLatencyEstimator(LongSupplier clock) {
+        this.clock = clock;
+    }
+
+    synchronized void recordLatency(long latencyNanos) {
+        long now = clock.getAsLong();
+        if (lastUpdateNanos == 0) {
+            averageNanos = latencyNanos;
+        } else {
+            averageNanos = ALPHA * latencyNanos + (1 - ALPHA) * decayed(now);
+        }
+        lastUpdateNanos = now;
+    }
+
+    /**
+     * Get the average read latency, or 0 if no read completed yet.
+     *
+     * @param pendingRequests the number of requests currently outstanding on the bookie
+     */
+    synchronized long getLatencyNanos(long pendingRequests) {
+        if (lastUpdateNanos == 0) {
+            return 0;
+        }
+        long now = clock.getAsLong();
+        if (pendingRequests > 0) {
+            lastBusyNanos = now;
+        }
+        // 0 means unknown, which a fully decayed average must not be confused with
+        return Math.max(1L, (long) decayed(now));
+    }
+
+    private double decayed(long now) {
+        long idleNanos = now - Math.max(lastUpdateNanos, lastBusyNanos);
+        if (idleNanos <= 0) {
+            return averageNanos;
+        }
+        return averageNanos * Math.pow(0.5, (double) idleNanos / DECAY_HALF_LIFE_NANOS);
+    }
+}
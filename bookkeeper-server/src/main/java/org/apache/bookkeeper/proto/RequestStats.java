@@ -25,6 +25,8 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_BLOCK
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_IN_PROGRESS;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.ADD_ENTRY_REQUEST;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.BATCH_READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CATEGORY_SERVER;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.CHANNEL_WRITE;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.FORCE_LEDGER;
@@ -47,6 +49,7 @@ import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_LONG
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_REJECTED;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_SCHEDULING_DELAY;
+import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_ENTRY_ZERO_COPY;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAC_REQUEST;
 import static org.apache.bookkeeper.bookie.BookKeeperServerStats.READ_LAST_ENTRY_NOENTRY_ERROR;
@@ -115,6 +118,23 @@ public class RequestStats {
             parent = READ_ENTRY_REQUEST
     )
     private final Counter readEntryRejectedCounter;
+    @StatsDoc(
+            name = READ_ENTRY_ZERO_COPY,
+            help = "Counter for reads whose entry is sent from the entry log file to the socket without being copied",
+            parent = READ_ENTRY_REQUEST
+    )
+    private final Counter readEntryZeroCopyCounter;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY_REQUEST,
+        help = "request stats of BatchReadEntry on a bookie"
+    )
+    final OpStatsLogger batchReadRequestStats;
+    @StatsDoc(
+        name = BATCH_READ_ENTRY,
+        help = "operation stats of BatchReadEntry on a bookie",
+        parent = BATCH_READ_ENTRY_REQUEST
+    )
+    final OpStatsLogger batchReadEntryStats;
     @StatsDoc(
         name = FORCE_LEDGER,
         help = "operation stats of ForceLedger on a bookie",
@@ -244,6 +264,9 @@ public class RequestStats {
         this.addEntryRejectedCounter = statsLogger.getCounter(ADD_ENTRY_REJECTED);
         this.readEntryStats = statsLogger.getThreadScopedOpStatsLogger(READ_ENTRY);
         this.readEntryRejectedCounter = statsLogger.getCounter(READ_ENTRY_REJECTED);
+        this.readEntryZeroCopyCounter = statsLogger.getCounter(READ_ENTRY_ZERO_COPY);
+        this.batchReadEntryStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY);
+        this.batchReadRequestStats = statsLogger.getOpStatsLogger(BATCH_READ_ENTRY_REQUEST);
         this.forceLedgerStats = statsLogger.getOpStatsLogger(FORCE_LEDGER);
         this.forceLedgerRequestStats = statsLogger.getOpStatsLogger(FORCE_LEDGER_REQUEST);
         this.readRequestStats = statsLogger.getOpStatsLogger(READ_ENTRY_REQUEST);
@@ -45,9 +45,23 @@ import org.slf4j.LoggerFactory;
 class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
     private static final Logger logger = LoggerFactory.getLogger(WriteEntryProcessorV3.class);
 
+    // the entry of the request, when it was decoded aside from the request
+    private final ByteBuf body;
+
     public WriteEntryProcessorV3(Request request, Channel channel,
                                  BookieRequestProcessor requestProcessor) {
+        this(request, null, channel, requestProcessor);
+    }
+
+    /**
+     * Create a processor for an add request whose entry was decoded aside from it.
+     *
+     * @param body the entry, whose reference is transferred to the processor, or null if it is in the request
+     */
+    WriteEntryProcessorV3(Request request, ByteBuf body, Channel channel,
+                          BookieRequestProcessor requestProcessor) {
         super(request, channel, requestProcessor);
+        this.body = body;
         requestProcessor.onAddRequestStart(channel);
     }
 
@@ -117,7 +131,8 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
         final boolean ackBeforeSync = writeFlags.contains(WriteFlag.DEFERRED_SYNC);
         StatusCode status = null;
         byte[] masterKey = addRequest.getMasterKey().toByteArray();
-        ByteBuf entryToAdd = Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
+        ByteBuf entryToAdd = null != body
+                ? body : Unpooled.wrappedBuffer(addRequest.getBody().asReadOnlyByteBuffer());
         try {
             if (RequestUtils.hasFlag(addRequest, AddRequest.Flag.RECOVERY_ADD)) {
                 requestProcessor.getBookie().recoveryAddEntry(entryToAdd, wcb, channel, masterKey);
@@ -163,7 +178,15 @@ class WriteEntryProcessorV3 extends PacketProcessorBaseV3 {
 
     @Override
     public void safeRun() {
-        AddResponse addResponse = getAddResponse();
+        AddResponse addResponse;
+        try {
+            addResponse = getAddResponse();
+        } finally {
+            // the bookie retains the entry as long as it needs it
+            if (null != body) {
+                body.release();
+            }
+        }
         if (null != addResponse) {
             // This means there was an error and we should send this back.
             Response.Builder response = Response.newBuilder()
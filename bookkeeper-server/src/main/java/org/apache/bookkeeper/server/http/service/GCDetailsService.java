@@ -43,7 +43,12 @@ import org.slf4j.LoggerFactory;
  *           "lastMajorCompactionTime" : 1544578144944,
  *           "lastMinorCompactionTime" : 1544578144944,
  *           "majorCompactionCounter" : 1,
- *           "minorCompactionCounter" : 0
+ *           "minorCompactionCounter" : 0,
+ *           "lastCompactionCandidates" : 12,
+ *           "lastCompactedEntryLogs" : 5,
+ *           "lastCompactionReclaimedBytes" : 4160749568,
+ *           "lastCompactionCopiedBytes" : 1207959552,
+ *           "compactionRate" : 1000.0
  *         } ]
  */
 public class GCDetailsService implements HttpEndpointService {
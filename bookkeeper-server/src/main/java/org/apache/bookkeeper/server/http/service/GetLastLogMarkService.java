@@ -20,10 +20,8 @@ package org.apache.bookkeeper.server.http.service;
 
 import static com.google.common.base.Preconditions.checkNotNull;
 
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 
-import java.io.File;
 import java.util.List;
 import java.util.Map;
 
@@ -76,12 +74,10 @@ public class GetLastLogMarkService implements HttpEndpointService {
                  */
                 Map<String, String> output = Maps.newHashMap();
 
-                List<Journal> journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-                int idx = 0;
-                for (File journalDir : conf.getJournalDirs()) {
-                    journals.add(new Journal(idx++, journalDir, conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                      new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
-                }
+                // each journal stripe has its own last log mark
+                List<Journal> journals = Journal.newJournalsOfStripesInUse(conf,
+                        new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                        new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
                 for (Journal journal : journals) {
                     LogMark lastLogMark = journal.getLastLogMark().getCurMark();
                     LOG.debug("LastLogMark: Journal Id - " + lastLogMark.getLogFileId() + "("
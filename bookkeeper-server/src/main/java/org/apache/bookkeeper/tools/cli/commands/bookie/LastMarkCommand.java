@@ -19,7 +19,6 @@
 package org.apache.bookkeeper.tools.cli.commands.bookie;
 
 import com.google.common.util.concurrent.UncheckedExecutionException;
-import java.io.File;
 import java.io.IOException;
 import org.apache.bookkeeper.bookie.Journal;
 import org.apache.bookkeeper.bookie.LedgerDirsManager;
@@ -55,10 +54,8 @@ public class LastMarkCommand extends BookieCommand<CliFlags> {
             LedgerDirsManager dirsManager = new LedgerDirsManager(
                     conf, conf.getLedgerDirs(),
                     new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
-            File[] journalDirs = conf.getJournalDirs();
-
-            for (int idx = 0; idx < journalDirs.length; idx++) {
-                Journal journal = new Journal(idx, journalDirs[idx], conf, dirsManager);
+            // each journal stripe has its own last log mark
+            for (Journal journal : Journal.newJournalsOfStripesInUse(conf, dirsManager)) {
                 LogMark lastLogMark = journal.getLastLogMark().getCurMark();
                 LOG.info("LastLogMark : Journal Id - {}({}.txn), Pos - {}",
                     lastLogMark.getLogFileId(),
@@ -19,7 +19,6 @@
 package org.apache.bookkeeper.tools.cli.commands.bookie;
 
 import com.beust.jcommander.Parameter;
-import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import io.netty.buffer.Unpooled;
 import java.io.File;
@@ -34,7 +33,6 @@ import org.apache.bookkeeper.conf.ServerConfiguration;
 import org.apache.bookkeeper.tools.cli.helpers.BookieCommand;
 import org.apache.bookkeeper.tools.framework.CliFlags;
 import org.apache.bookkeeper.tools.framework.CliSpec;
-import org.apache.bookkeeper.util.BookKeeperConstants;
 import org.apache.bookkeeper.util.DiskChecker;
 import org.apache.bookkeeper.util.EntryFormatter;
 import org.apache.bookkeeper.util.LedgerIdFormatter;
@@ -176,13 +174,9 @@ public class ReadJournalCommand extends BookieCommand<ReadJournalCommand.ReadJou
 
     private synchronized List<Journal> getJournals(ServerConfiguration conf) throws IOException {
         if (null == journals) {
-            journals = Lists.newArrayListWithCapacity(conf.getJournalDirs().length);
-            int idx = 0;
-            for (File journalDir : conf.getJournalDirs()) {
-                journals.add(new Journal(idx++, new File(journalDir, BookKeeperConstants.CURRENT_DIR), conf,
-                         new LedgerDirsManager(conf, conf.getLedgerDirs(),
-                               new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()))));
-            }
+            // include all the journal stripes of each directory
+            journals = Journal.newJournalsOfStripesInUse(conf, new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                    new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold())));
         }
         return journals;
     }
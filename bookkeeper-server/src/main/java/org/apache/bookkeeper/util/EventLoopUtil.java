@@ -17,10 +17,17 @@
  */
 package org.apache.bookkeeper.util;
 
+import com.google.common.annotations.VisibleForTesting;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.SelectStrategy;
 import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
 
 import java.util.concurrent.ThreadFactory;
 
@@ -39,20 +46,76 @@ import org.apache.commons.lang.SystemUtils;
 @Slf4j
 @UtilityClass
 public class EventLoopUtil {
+
+    // The io_uring transport is an optional dependency, check for it without loading any of its classes
+    private static final boolean IO_URING_TRANSPORT_PRESENT =
+            isClassPresent("io.netty.incubator.channel.uring.IOUring");
+
     public static EventLoopGroup getClientEventLoopGroup(ClientConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isIoUringEnabled());
     }
 
     public static EventLoopGroup getServerEventLoopGroup(ServerConfiguration conf, ThreadFactory threadFactory) {
-        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled());
+        return getEventLoopGroup(threadFactory, conf.getServerNumIOThreads(), conf.isBusyWaitEnabled(),
+                conf.isIoUringEnabled());
+    }
+
+    /**
+     * Whether the event loop group is backed by the io_uring transport.
+     */
+    public static boolean isIOUringEventLoopGroup(EventLoopGroup eventLoopGroup) {
+        return IO_URING_TRANSPORT_PRESENT && IOUringTransport.isEventLoopGroup(eventLoopGroup);
+    }
+
+    /**
+     * Get the server socket channel class matching the transport of an event loop group created by this class.
+     */
+    public static Class<? extends ServerSocketChannel> getServerSocketChannelClass(EventLoopGroup eventLoopGroup) {
+        if (eventLoopGroup instanceof EpollEventLoopGroup) {
+            return EpollServerSocketChannel.class;
+        } else if (isIOUringEventLoopGroup(eventLoopGroup)) {
+            return IOUringTransport.serverSocketChannelClass();
+        } else {
+            return NioServerSocketChannel.class;
+        }
+    }
+
+    /**
+     * Get the socket channel class matching the transport of an event loop group created by this class.
+     */
+    public static Class<? extends SocketChannel> getSocketChannelClass(EventLoopGroup eventLoopGroup) {
+        if (eventLoopGroup instanceof EpollEventLoopGroup) {
+            return EpollSocketChannel.class;
+        } else if (isIOUringEventLoopGroup(eventLoopGroup)) {
+            return IOUringTransport.socketChannelClass();
+        } else {
+            return NioSocketChannel.class;
+        }
     }
 
     private static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory,
-            int numThreads, boolean enableBusyWait) {
+            int numThreads, boolean enableBusyWait, boolean enableIoUring) {
+        return getEventLoopGroup(threadFactory, numThreads, enableBusyWait, enableIoUring,
+                IO_URING_TRANSPORT_PRESENT);
+    }
+
+    @VisibleForTesting
+    static EventLoopGroup getEventLoopGroup(ThreadFactory threadFactory, int numThreads, boolean enableBusyWait,
+                                            boolean enableIoUring, boolean ioUringTransportPresent) {
         if (!SystemUtils.IS_OS_LINUX) {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
 
+        if (enableIoUring) {
+            EventLoopGroup eventLoopGroup = getIOUringEventLoopGroup(threadFactory, numThreads, enableBusyWait,
+                    ioUringTransportPresent);
+            if (eventLoopGroup != null) {
+                return eventLoopGroup;
+            }
+            // fall back to epoll
+        }
+
         try {
             if (!enableBusyWait) {
                 // Regular Epoll based event loop
@@ -82,4 +145,31 @@ public class EventLoopUtil {
             return new NioEventLoopGroup(numThreads, threadFactory);
         }
     }
+
+    private static EventLoopGroup getIOUringEventLoopGroup(ThreadFactory threadFactory,
+            int numThreads, boolean enableBusyWait, boolean ioUringTransportPresent) {
+        if (!ioUringTransportPresent) {
+            log.warn("Could not use Netty io_uring event loop: the netty io_uring transport is not in the classpath");
+            return null;
+        }
+        if (enableBusyWait) {
+            log.warn("Busy-wait is not supported by the Netty io_uring event loop, ignoring it");
+        }
+
+        try {
+            return IOUringTransport.newEventLoopGroup(numThreads, threadFactory);
+        } catch (ExceptionInInitializerError | NoClassDefFoundError | UnsatisfiedLinkError e) {
+            log.warn("Could not use Netty io_uring event loop: {}", e.getMessage());
+            return null;
+        }
+    }
+
+    private static boolean isClassPresent(String className) {
+        try {
+            Class.forName(className, false, EventLoopUtil.class.getClassLoader());
+            return true;
+        } catch (ClassNotFoundException | LinkageError e) {
+            return false;
+        }
+    }
 }
@@ -0,0 +1,65 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.util;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringEventLoopGroup;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+
+import java.util.concurrent.ThreadFactory;
+
+import lombok.experimental.UtilityClass;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * Holder of all the references to the netty io_uring transport.
+ *
+ * <p>The transport is an optional dependency, so this class must only be loaded after
+ * {@link EventLoopUtil} has checked that the transport classes are on the classpath.
+ */
+@Slf4j
+@UtilityClass
+class IOUringTransport {
+
+    /**
+     * Create an io_uring event loop group, or return null if io_uring is not supported by the running kernel.
+     */
+    static EventLoopGroup newEventLoopGroup(int numThreads, ThreadFactory threadFactory) {
+        if (!IOUring.isAvailable()) {
+            log.warn("Could not use Netty io_uring event loop: {}", IOUring.unavailabilityCause().getMessage());
+            return null;
+        }
+        return new IOUringEventLoopGroup(numThreads, threadFactory);
+    }
+
+    static boolean isEventLoopGroup(EventLoopGroup eventLoopGroup) {
+        return eventLoopGroup instanceof IOUringEventLoopGroup;
+    }
+
+    static Class<? extends ServerSocketChannel> serverSocketChannelClass() {
+        return IOUringServerSocketChannel.class;
+    }
+
+    static Class<? extends SocketChannel> socketChannelClass() {
+        return IOUringSocketChannel.class;
+    }
+}
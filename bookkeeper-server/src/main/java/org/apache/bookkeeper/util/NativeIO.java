@@ -35,8 +35,13 @@ public final class NativeIO {
 
     private static final int POSIX_FADV_DONTNEED = 4; /* fadvise.h */
 
+    private static final int FALLOC_FL_DEFAULT = 0x00; /* falloc.h */
+    private static final int FALLOC_FL_ZERO_RANGE = 0x10; /* falloc.h */
+
     private static boolean initialized = false;
     private static boolean fadvisePossible = true;
+    // Written by the journal and the journal file pool threads
+    private static volatile boolean fallocatePossible = true;
 
     static {
         try {
@@ -54,6 +59,9 @@ public final class NativeIO {
     // fadvice
     public static native int posix_fadvise(int fd, long offset, long len, int flag) throws LastErrorException;
 
+    // fallocate
+    public static native int fallocate(int fd, int mode, long offset, long len) throws LastErrorException;
+
     private NativeIO() {}
 
     private static Field getFieldByReflection(Class cls, String fieldName) {
@@ -118,4 +126,48 @@ public final class NativeIO {
         }
     }
 
+    /**
+     * Allocate the disk space of a file range, extending the file if needed. The allocated range reads as zeros,
+     * without the zeros being written to the disk.
+     *
+     * @param fd     The file descriptor of the file.
+     * @param offset The offset within the file.
+     * @param len    The length of the range to allocate.
+     * @return true if the range was allocated, false if the caller has to fall back to another method
+     */
+    public static boolean bestEffortFallocate(int fd, long offset, long len) {
+        return tryFallocate(fd, FALLOC_FL_DEFAULT, offset, len, "fallocate");
+    }
+
+    /**
+     * Zero a file range, keeping its disk space allocated, without writing the zeros to the disk.
+     *
+     * @param fd     The file descriptor of the file.
+     * @param offset The offset within the file.
+     * @param len    The length of the range to zero.
+     * @return true if the range was zeroed, false if the caller has to fall back to another method
+     */
+    public static boolean bestEffortZeroRange(int fd, long offset, long len) {
+        return tryFallocate(fd, FALLOC_FL_ZERO_RANGE, offset, len, "fallocate zero-range");
+    }
+
+    private static boolean tryFallocate(int fd, int mode, long offset, long len, String operation) {
+        if (!initialized || !fallocatePossible || fd < 0) {
+            return false;
+        }
+        try {
+            fallocate(fd, mode, offset, len);
+            return true;
+        } catch (UnsupportedOperationException | UnsatisfiedLinkError e) {
+            LOG.warn("{} is not supported : ", operation, e);
+            fallocatePossible = false;
+        } catch (LastErrorException e) {
+            // The file system might not support this mode
+            LOG.info("{} failed on file descriptor {}, offset {}, length {} : {}", operation, fd, offset, len,
+                    e.getMessage());
+        } catch (Exception e) {
+            LOG.warn("Unknown exception: {} failed on file descriptor {}, offset {} : ", operation, fd, offset, e);
+        }
+        return false;
+    }
 }
@@ -40,7 +40,7 @@ import java.util.function.LongPredicate;
  *
  * <p>Keys <strong>MUST</strong> be >= 0.
  */
-public class ConcurrentLongLongHashMap {
+public class ConcurrentLongLongHashMap implements LongLongHashMap {
 
     private static final long EmptyKey = -1L;
     private static final long DeletedKey = -2L;
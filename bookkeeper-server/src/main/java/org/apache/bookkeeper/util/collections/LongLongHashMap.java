@@ -0,0 +1,86 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.BiConsumerLong;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.LongLongPredicate;
+
+/**
+ * Concurrent hash map from primitive long to long.
+ *
+ * <p>Implemented by both the on-heap {@link ConcurrentLongLongHashMap} and the
+ * {@link OffHeapLongLongHashMap}, so that users can pick the storage at runtime.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt;= 0.
+ */
+public interface LongLongHashMap extends AutoCloseable {
+
+    long size();
+
+    /**
+     * @return the memory used by the hash table, in bytes
+     */
+    long sizeInBytes();
+
+    long capacity();
+
+    boolean isEmpty();
+
+    /**
+     * @return the value or -1 if the key was not present
+     */
+    long get(long key);
+
+    boolean containsKey(long key);
+
+    /**
+     * @return the previous value or -1 if the key was not present
+     */
+    long put(long key, long value);
+
+    /**
+     * @return the current value or -1 if the key was not present, in which case the new value was added
+     */
+    long putIfAbsent(long key, long value);
+
+    /**
+     * Change the value for a specific key only if it matches the current value.
+     */
+    boolean compareAndSet(long key, long currentValue, long newValue);
+
+    /**
+     * @return the value associated with the key or -1 if key was not present
+     */
+    long remove(long key);
+
+    int removeIf(LongLongPredicate filter);
+
+    void clear();
+
+    void forEach(BiConsumerLong processor);
+
+    /**
+     * Release the memory held by the map. The map cannot be used afterwards.
+     */
+    @Override
+    default void close() {
+    }
+}
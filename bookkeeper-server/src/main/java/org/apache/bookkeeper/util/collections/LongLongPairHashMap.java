@@ -0,0 +1,75 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.BiConsumerLongPair;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongLongPairPredicate;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Concurrent hash map where both keys and values are composed of pairs of longs.
+ *
+ * <p>Implemented by both the on-heap {@link ConcurrentLongLongPairHashMap} and the
+ * {@link OffHeapLongLongPairHashMap}, so that users can pick the storage at runtime.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt;= 0.
+ */
+public interface LongLongPairHashMap extends AutoCloseable {
+
+    long size();
+
+    /**
+     * @return the memory used by the hash table, in bytes
+     */
+    long sizeInBytes();
+
+    long capacity();
+
+    boolean isEmpty();
+
+    /**
+     * @return the value or null if the key was not present
+     */
+    LongPair get(long key1, long key2);
+
+    boolean containsKey(long key1, long key2);
+
+    boolean put(long key1, long key2, long value1, long value2);
+
+    boolean putIfAbsent(long key1, long key2, long value1, long value2);
+
+    boolean remove(long key1, long key2);
+
+    boolean remove(long key1, long key2, long value1, long value2);
+
+    int removeIf(LongLongPairPredicate filter);
+
+    void clear();
+
+    void forEach(BiConsumerLongPair processor);
+
+    /**
+     * Release the memory held by the map. The map cannot be used afterwards.
+     */
+    @Override
+    default void close() {
+    }
+}
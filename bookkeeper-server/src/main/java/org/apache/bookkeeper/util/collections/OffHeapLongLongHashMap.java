@@ -0,0 +1,844 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.BiConsumerLong;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongHashMap.LongLongPredicate;
+
+/**
+ * Concurrent hash map from primitive long to long, with the hash tables stored in direct memory.
+ *
+ * <p>This is the counterpart of {@link ConcurrentLongLongHashMap}, with the tables allocated outside of the
+ * Java heap and expanded incrementally. See {@link OffHeapLongLongPairHashMap} for the details.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt;= 0. The map needs to be {@link #close() closed} to release the memory.
+ */
+public class OffHeapLongLongHashMap implements LongLongHashMap {
+
+    private static final long EmptyKey = -1L;
+    private static final long DeletedKey = -2L;
+
+    private static final long ValueNotFound = -1L;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private static final float DefaultMapFillFactor = 0.66f;
+    private static final float DefaultMapIdleFactor = 0.15f;
+
+    private static final float DefaultExpandFactor = 2;
+    private static final float DefaultShrinkFactor = 2;
+
+    private static final boolean DefaultAutoShrink = false;
+
+    // Number of buckets moved to the new table by each update, while a section is being expanded
+    private static final int MigrationBatchSize = 16;
+
+    // Each bucket takes 16 bytes and a table needs to fit in a single buffer
+    private static final int MaxSectionCapacity = 1 << 26;
+
+    private final Section[] sections;
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of OffHeapLongLongHashMap.
+     */
+    public static class Builder {
+        int expectedItems = DefaultExpectedItems;
+        int concurrencyLevel = DefaultConcurrencyLevel;
+        float mapFillFactor = DefaultMapFillFactor;
+        float mapIdleFactor = DefaultMapIdleFactor;
+        float expandFactor = DefaultExpandFactor;
+        float shrinkFactor = DefaultShrinkFactor;
+        boolean autoShrink = DefaultAutoShrink;
+        ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+        public Builder expectedItems(int expectedItems) {
+            this.expectedItems = expectedItems;
+            return this;
+        }
+
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public Builder mapFillFactor(float mapFillFactor) {
+            this.mapFillFactor = mapFillFactor;
+            return this;
+        }
+
+        public Builder mapIdleFactor(float mapIdleFactor) {
+            this.mapIdleFactor = mapIdleFactor;
+            return this;
+        }
+
+        public Builder expandFactor(float expandFactor) {
+            this.expandFactor = expandFactor;
+            return this;
+        }
+
+        public Builder shrinkFactor(float shrinkFactor) {
+            this.shrinkFactor = shrinkFactor;
+            return this;
+        }
+
+        public Builder autoShrink(boolean autoShrink) {
+            this.autoShrink = autoShrink;
+            return this;
+        }
+
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        public OffHeapLongLongHashMap build() {
+            return new OffHeapLongLongHashMap(expectedItems, concurrencyLevel,
+                    mapFillFactor, mapIdleFactor, autoShrink, expandFactor, shrinkFactor, allocator);
+        }
+    }
+
+    private OffHeapLongLongHashMap(int expectedItems, int concurrencyLevel,
+                                   float mapFillFactor, float mapIdleFactor,
+                                   boolean autoShrink, float expandFactor, float shrinkFactor,
+                                   ByteBufAllocator allocator) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+        checkArgument(mapFillFactor > 0 && mapFillFactor < 1);
+        checkArgument(mapIdleFactor > 0 && mapIdleFactor < 1);
+        checkArgument(mapFillFactor > mapIdleFactor);
+        checkArgument(expandFactor > 1);
+        checkArgument(shrinkFactor > 1);
+        checkNotNull(allocator);
+
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = Math.min(MaxSectionCapacity, (int) (perSectionExpectedItems / mapFillFactor));
+        this.sections = new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section(allocator, perSectionCapacity, mapFillFactor, mapIdleFactor,
+                    autoShrink, expandFactor, shrinkFactor);
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.sizeInBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public long capacity() {
+        long capacity = 0;
+        for (Section s : sections) {
+            capacity += s.capacity;
+        }
+        return capacity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Section s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long getUsedBucketCount() {
+        long usedBucketCount = 0;
+        for (Section s : sections) {
+            usedBucketCount += s.usedBuckets;
+        }
+        return usedBucketCount;
+    }
+
+    /**
+     * @return the value or -1 if the key was not present
+     */
+    @Override
+    public long get(long key) {
+        checkBiggerEqualZero(key);
+        long h = ConcurrentLongLongHashMap.hash(key);
+        return getSection(h).get(key, (int) h);
+    }
+
+    @Override
+    public boolean containsKey(long key) {
+        return get(key) != ValueNotFound;
+    }
+
+    @Override
+    public long put(long key, long value) {
+        checkBiggerEqualZero(key);
+        checkBiggerEqualZero(value);
+        long h = ConcurrentLongLongHashMap.hash(key);
+        return getSection(h).put(key, value, (int) h, false);
+    }
+
+    @Override
+    public long putIfAbsent(long key, long value) {
+        checkBiggerEqualZero(key);
+        checkBiggerEqualZero(value);
+        long h = ConcurrentLongLongHashMap.hash(key);
+        return getSection(h).put(key, value, (int) h, true);
+    }
+
+    /**
+     * Change the value for a specific key only if it matches the current value. A current value of -1 means that
+     * the key is expected not to be present.
+     */
+    @Override
+    public boolean compareAndSet(long key, long currentValue, long newValue) {
+        checkBiggerEqualZero(key);
+        checkBiggerEqualZero(newValue);
+        long h = ConcurrentLongLongHashMap.hash(key);
+        return getSection(h).compareAndSet(key, currentValue, newValue, (int) h);
+    }
+
+    /**
+     * Remove an existing entry if found.
+     *
+     * @return the value associated with the key or -1 if key was not present
+     */
+    @Override
+    public long remove(long key) {
+        checkBiggerEqualZero(key);
+        long h = ConcurrentLongLongHashMap.hash(key);
+        return getSection(h).remove(key, (int) h);
+    }
+
+    @Override
+    public int removeIf(LongLongPredicate filter) {
+        checkNotNull(filter);
+
+        int removedCount = 0;
+        for (Section s : sections) {
+            removedCount += s.removeIf(filter);
+        }
+
+        return removedCount;
+    }
+
+    private Section getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    @Override
+    public void clear() {
+        for (Section s : sections) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Iterate over all the items. The section being scanned is read-locked while the processor runs, so the
+     * processor must not update the map.
+     */
+    @Override
+    public void forEach(BiConsumerLong processor) {
+        for (Section s : sections) {
+            s.forEach(processor);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Section s : sections) {
+            s.close();
+        }
+    }
+
+    /**
+     * A hash table of a section, made of buckets of 2 longs: key, value.
+     */
+    private static final class Table {
+        private final ByteBuf buffer;
+        private final LongBuffer data;
+        private final int capacity;
+        private final int length;
+        private final long sizeInBytes;
+
+        Table(ByteBufAllocator allocator, int capacity) {
+            this.capacity = capacity;
+            this.length = 2 * capacity;
+            int size = length * Long.BYTES;
+            this.sizeInBytes = size;
+            this.buffer = allocator.directBuffer(size, size);
+            this.data = buffer.nioBuffer(0, size).order(ByteOrder.nativeOrder()).asLongBuffer();
+            fill();
+        }
+
+        void fill() {
+            for (int i = 0; i < length; i++) {
+                data.put(i, EmptyKey);
+            }
+        }
+
+        int find(long key, int keyHash) {
+            int bucket = signSafeMod(keyHash, capacity);
+
+            while (true) {
+                long storedKey = data.get(bucket);
+
+                if (key == storedKey) {
+                    return bucket;
+                } else if (storedKey == EmptyKey) {
+                    // Not found
+                    return -1;
+                }
+
+                bucket = (bucket + 2) & (length - 1);
+            }
+        }
+
+        void insert(long key, long value) {
+            int bucket = signSafeMod(ConcurrentLongLongHashMap.hash(key), capacity);
+
+            while (true) {
+                long storedKey = data.get(bucket);
+
+                if (storedKey == EmptyKey) {
+                    // The bucket is empty, so we can use it
+                    set(bucket, key, value);
+                    return;
+                }
+
+                bucket = (bucket + 2) & (length - 1);
+            }
+        }
+
+        void set(int bucket, long key, long value) {
+            data.put(bucket, key);
+            data.put(bucket + 1, value);
+        }
+
+        void release() {
+            buffer.release();
+        }
+    }
+
+    // A section is a portion of the hash map that is covered by a single
+    @SuppressWarnings("serial")
+    private static final class Section extends StampedLock {
+        private final ByteBufAllocator allocator;
+
+        private volatile Table table;
+
+        // Table that is being migrated into the current one, after an expansion
+        private volatile Table oldTable;
+        // Next bucket of the old table to be migrated
+        private int migrationIndex;
+
+        private volatile int capacity;
+        private final int initCapacity;
+        private volatile int size;
+        // Includes the items that are still to be migrated from the old table
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        private int resizeThresholdBelow;
+        private final float mapFillFactor;
+        private final float mapIdleFactor;
+        private final float expandFactor;
+        private final float shrinkFactor;
+        private final boolean autoShrink;
+
+        Section(ByteBufAllocator allocator, int capacity, float mapFillFactor, float mapIdleFactor,
+                boolean autoShrink, float expandFactor, float shrinkFactor) {
+            this.allocator = allocator;
+            // At least 2 buckets, so that the first insertion doesn't fill the table
+            this.capacity = alignToPowerOfTwo(Math.max(2, capacity));
+            this.initCapacity = this.capacity;
+            this.table = new Table(allocator, this.capacity);
+            this.size = 0;
+            this.usedBuckets = 0;
+            this.autoShrink = autoShrink;
+            this.mapFillFactor = mapFillFactor;
+            this.mapIdleFactor = mapIdleFactor;
+            this.expandFactor = expandFactor;
+            this.shrinkFactor = shrinkFactor;
+            this.resizeThresholdUp = resizeThresholdUp(this.capacity, mapFillFactor);
+            this.resizeThresholdBelow = (int) (this.capacity * mapIdleFactor);
+        }
+
+        long sizeInBytes() {
+            Table table = this.table;
+            Table oldTable = this.oldTable;
+            return (table != null ? table.sizeInBytes : 0) + (oldTable != null ? oldTable.sizeInBytes : 0);
+        }
+
+        long get(long key, int keyHash) {
+            long stamp = readLock();
+
+            try {
+                Table table = this.table;
+                int bucket = table.find(key, keyHash);
+                if (bucket == -1 && oldTable != null) {
+                    table = oldTable;
+                    bucket = table.find(key, keyHash);
+                }
+
+                return bucket != -1 ? table.data.get(bucket + 1) : ValueNotFound;
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        long put(long key, long value, int keyHash, boolean onlyIfAbsent) {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    migrate(MigrationBatchSize);
+                }
+
+                if (oldTable != null) {
+                    // The key might not have been migrated yet, in which case it's updated in place
+                    int bucket = oldTable.find(key, keyHash);
+                    if (bucket != -1) {
+                        long storedValue = oldTable.data.get(bucket + 1);
+                        if (!onlyIfAbsent) {
+                            oldTable.data.put(bucket + 1, value);
+                        }
+                        return storedValue;
+                    }
+                }
+
+                Table table = this.table;
+                int bucket = signSafeMod(keyHash, table.capacity);
+
+                // Remember where we find the first available spot
+                int firstDeletedKey = -1;
+
+                while (true) {
+                    long storedKey = table.data.get(bucket);
+                    long storedValue = table.data.get(bucket + 1);
+
+                    if (key == storedKey) {
+                        if (!onlyIfAbsent) {
+                            // Over written an old value for same key
+                            table.data.put(bucket + 1, value);
+                        }
+                        return storedValue;
+                    } else if (storedKey == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map. If we've already seen a deleted
+                        // key, we should write at that position
+                        insertAt(table, bucket, firstDeletedKey, key, value);
+                        return ValueNotFound;
+                    } else if (storedKey == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = (bucket + 2) & (table.length - 1);
+                }
+            } finally {
+                try {
+                    if (usedBuckets > resizeThresholdUp) {
+                        expand();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        boolean compareAndSet(long key, long currentValue, long newValue, int keyHash) {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    migrate(MigrationBatchSize);
+                }
+
+                if (oldTable != null) {
+                    int bucket = oldTable.find(key, keyHash);
+                    if (bucket != -1) {
+                        if (oldTable.data.get(bucket + 1) != currentValue) {
+                            return false;
+                        }
+
+                        oldTable.data.put(bucket + 1, newValue);
+                        return true;
+                    }
+                }
+
+                Table table = this.table;
+                int bucket = signSafeMod(keyHash, table.capacity);
+
+                // Remember where we find the first available spot
+                int firstDeletedKey = -1;
+
+                while (true) {
+                    long storedKey = table.data.get(bucket);
+                    long storedValue = table.data.get(bucket + 1);
+
+                    if (key == storedKey) {
+                        if (storedValue != currentValue) {
+                            return false;
+                        }
+
+                        // Over write an old value for same key
+                        table.data.put(bucket + 1, newValue);
+                        return true;
+                    } else if (storedKey == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map.
+                        if (currentValue == ValueNotFound) {
+                            insertAt(table, bucket, firstDeletedKey, key, newValue);
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    } else if (storedKey == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = (bucket + 2) & (table.length - 1);
+                }
+            } finally {
+                try {
+                    if (usedBuckets > resizeThresholdUp) {
+                        expand();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private void insertAt(Table table, int emptyBucket, int firstDeletedKey, long key, long value) {
+            int bucket = emptyBucket;
+            if (firstDeletedKey != -1) {
+                bucket = firstDeletedKey;
+            } else if (usedBuckets + 1 >= table.capacity) {
+                // Can only happen once the section has reached the max capacity
+                throw new IllegalStateException("Hash map section is full, capacity: " + table.capacity);
+            } else {
+                ++usedBuckets;
+            }
+
+            table.set(bucket, key, value);
+            ++size;
+        }
+
+        private long remove(long key, int keyHash) {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    migrate(MigrationBatchSize);
+                }
+
+                if (oldTable != null) {
+                    int bucket = oldTable.find(key, keyHash);
+                    if (bucket != -1) {
+                        long storedValue = oldTable.data.get(bucket + 1);
+                        --size;
+                        // The item won't need a bucket in the new table anymore
+                        --usedBuckets;
+                        oldTable.set(bucket, DeletedKey, ValueNotFound);
+                        return storedValue;
+                    }
+                }
+
+                Table table = this.table;
+                int bucket = table.find(key, keyHash);
+                if (bucket == -1) {
+                    return ValueNotFound;
+                }
+
+                long storedValue = table.data.get(bucket + 1);
+                --size;
+                cleanBucket(table, bucket);
+                return storedValue;
+            } finally {
+                try {
+                    if (autoShrink && size < resizeThresholdBelow) {
+                        shrink();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        int removeIf(LongLongPredicate filter) {
+            long stamp = writeLock();
+
+            int removedCount = 0;
+            try {
+                if (oldTable != null) {
+                    migrate(Integer.MAX_VALUE);
+                }
+
+                // Go through all the buckets for this section
+                Table table = this.table;
+                for (int bucket = 0; bucket < table.length; bucket += 2) {
+                    long storedKey = table.data.get(bucket);
+                    long storedValue = table.data.get(bucket + 1);
+
+                    if (storedKey != DeletedKey && storedKey != EmptyKey) {
+                        if (filter.test(storedKey, storedValue)) {
+                            // Removing item
+                            --size;
+                            ++removedCount;
+                            cleanBucket(table, bucket);
+                        }
+                    }
+                }
+
+                return removedCount;
+            } finally {
+                try {
+                    if (autoShrink && size < resizeThresholdBelow) {
+                        shrink();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private void cleanBucket(Table table, int bucket) {
+            int nextInArray = (bucket + 2) & (table.length - 1);
+            if (table.data.get(nextInArray) == EmptyKey) {
+                table.set(bucket, EmptyKey, ValueNotFound);
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DeletedKey` state,
+                // so that we can reduce unnecessary expansions
+                bucket = (bucket - 2) & (table.length - 1);
+                while (table.data.get(bucket) == DeletedKey) {
+                    table.set(bucket, EmptyKey, ValueNotFound);
+                    --usedBuckets;
+
+                    bucket = (bucket - 2) & (table.length - 1);
+                }
+            } else {
+                table.set(bucket, DeletedKey, ValueNotFound);
+            }
+        }
+
+        void clear() {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    oldTable.release();
+                    oldTable = null;
+                }
+
+                table.fill();
+                this.size = 0;
+                this.usedBuckets = 0;
+                if (autoShrink && capacity != initCapacity) {
+                    rehash(initCapacity);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        public void forEach(BiConsumerLong processor) {
+            long stamp = readLock();
+
+            try {
+                forEach(table, processor);
+                if (oldTable != null) {
+                    forEach(oldTable, processor);
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        private static void forEach(Table table, BiConsumerLong processor) {
+            // Go through all the buckets of the table
+            for (int bucket = 0; bucket < table.length; bucket += 2) {
+                long storedKey = table.data.get(bucket);
+
+                if (storedKey != DeletedKey && storedKey != EmptyKey) {
+                    processor.accept(storedKey, table.data.get(bucket + 1));
+                }
+            }
+        }
+
+        void close() {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    oldTable.release();
+                    oldTable = null;
+                }
+                if (table != null) {
+                    table.release();
+                    table = null;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Start moving the items to a bigger table. The old table is drained by the following updates.
+         */
+        private void expand() {
+            if (oldTable != null) {
+                // The previous expansion is still in progress, complete it first
+                migrate(Integer.MAX_VALUE);
+            }
+
+            int newCapacity = Math.min(MaxSectionCapacity, alignToPowerOfTwo((int) (capacity * expandFactor)));
+            if (newCapacity <= capacity) {
+                return;
+            }
+
+            oldTable = table;
+            migrationIndex = 0;
+            table = new Table(allocator, newCapacity);
+            // usedBuckets already accounts for the items to migrate, though not for the deleted keys left behind
+            usedBuckets = size;
+            updateCapacity(newCapacity);
+        }
+
+        /**
+         * Move up to {@code maxBuckets} buckets from the old table into the current one.
+         */
+        private void migrate(int maxBuckets) {
+            Table oldTable = this.oldTable;
+            Table table = this.table;
+            int end = (int) Math.min(migrationIndex + 2L * maxBuckets, oldTable.length);
+
+            for (int bucket = migrationIndex; bucket < end; bucket += 2) {
+                long storedKey = oldTable.data.get(bucket);
+                if (storedKey != EmptyKey && storedKey != DeletedKey) {
+                    table.insert(storedKey, oldTable.data.get(bucket + 1));
+                    // Leave a deleted key behind, so that lookups in the old table keep probing past this bucket
+                    oldTable.set(bucket, DeletedKey, ValueNotFound);
+                }
+            }
+
+            migrationIndex = end;
+            if (end == oldTable.length) {
+                this.oldTable = null;
+                oldTable.release();
+            }
+        }
+
+        private void shrink() {
+            int newCapacity = alignToPowerOfTwo((int) (capacity / shrinkFactor));
+            int newResizeThresholdUp = resizeThresholdUp(newCapacity, mapFillFactor);
+            if (newCapacity < capacity && newResizeThresholdUp > size) {
+                // shrink the hashmap
+                rehash(newCapacity);
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            if (oldTable != null) {
+                migrate(Integer.MAX_VALUE);
+            }
+
+            Table table = this.table;
+            Table newTable = new Table(allocator, newCapacity);
+
+            // Re-hash table
+            for (int bucket = 0; bucket < table.length; bucket += 2) {
+                long storedKey = table.data.get(bucket);
+                if (storedKey != EmptyKey && storedKey != DeletedKey) {
+                    newTable.insert(storedKey, table.data.get(bucket + 1));
+                }
+            }
+
+            this.table = newTable;
+            table.release();
+            usedBuckets = size;
+            updateCapacity(newCapacity);
+        }
+
+        private void updateCapacity(int newCapacity) {
+            capacity = newCapacity;
+            resizeThresholdUp = resizeThresholdUp(capacity, mapFillFactor);
+            resizeThresholdBelow = (int) (capacity * mapIdleFactor);
+        }
+    }
+
+    static final int signSafeMod(long n, int max) {
+        return (int) (n & (max - 1)) << 1;
+    }
+
+    /**
+     * The table expands once the used buckets exceed the threshold, which must happen before the table is full:
+     * probing relies on finding an empty bucket.
+     */
+    private static int resizeThresholdUp(int capacity, float mapFillFactor) {
+        return Math.min((int) (capacity * mapFillFactor), capacity - 2);
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static void checkBiggerEqualZero(long n) {
+        if (n < 0L) {
+            throw new IllegalArgumentException("Keys and values must be >= 0");
+        }
+    }
+}
@@ -0,0 +1,804 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.base.Preconditions.checkNotNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+
+import java.nio.ByteOrder;
+import java.nio.LongBuffer;
+import java.util.concurrent.locks.StampedLock;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.BiConsumerLongPair;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongLongPairPredicate;
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+
+/**
+ * Concurrent hash map where both keys and values are composed of pairs of longs, with the hash tables
+ * stored in direct memory.
+ *
+ * <p>(long,long) --&gt; (long,long)
+ *
+ * <p>It uses the same open addressing with linear probing as {@link ConcurrentLongLongPairHashMap}, but the
+ * tables are allocated through a {@link ByteBufAllocator}, outside of the Java heap, so that maps holding
+ * tens of millions of items don't weigh on the old generation.
+ *
+ * <p>When a section needs to expand, the bigger table is allocated and the items are moved over from the old
+ * table a few buckets at a time, by each of the following updates, rather than re-hashing the whole section
+ * while holding its lock. Until the migration is completed, lookups check both tables.
+ *
+ * <p>Lookups take the section read lock, since the tables are released as soon as they're no longer used.
+ *
+ * <p>Keys <strong>MUST</strong> be &gt;= 0. The map needs to be {@link #close() closed} to release the memory.
+ */
+public class OffHeapLongLongPairHashMap implements LongLongPairHashMap {
+
+    private static final long EmptyKey = -1L;
+    private static final long DeletedKey = -2L;
+
+    private static final long ValueNotFound = -1L;
+
+    private static final int DefaultExpectedItems = 256;
+    private static final int DefaultConcurrencyLevel = 16;
+
+    private static final float DefaultMapFillFactor = 0.66f;
+    private static final float DefaultMapIdleFactor = 0.15f;
+
+    private static final float DefaultExpandFactor = 2;
+    private static final float DefaultShrinkFactor = 2;
+
+    private static final boolean DefaultAutoShrink = false;
+
+    // Number of buckets moved to the new table by each update, while a section is being expanded
+    private static final int MigrationBatchSize = 16;
+
+    // Each bucket takes 32 bytes and a table needs to fit in a single buffer
+    private static final int MaxSectionCapacity = 1 << 25;
+
+    private final Section[] sections;
+
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    /**
+     * Builder of OffHeapLongLongPairHashMap.
+     */
+    public static class Builder {
+        int expectedItems = DefaultExpectedItems;
+        int concurrencyLevel = DefaultConcurrencyLevel;
+        float mapFillFactor = DefaultMapFillFactor;
+        float mapIdleFactor = DefaultMapIdleFactor;
+        float expandFactor = DefaultExpandFactor;
+        float shrinkFactor = DefaultShrinkFactor;
+        boolean autoShrink = DefaultAutoShrink;
+        ByteBufAllocator allocator = PooledByteBufAllocator.DEFAULT;
+
+        public Builder expectedItems(int expectedItems) {
+            this.expectedItems = expectedItems;
+            return this;
+        }
+
+        public Builder concurrencyLevel(int concurrencyLevel) {
+            this.concurrencyLevel = concurrencyLevel;
+            return this;
+        }
+
+        public Builder mapFillFactor(float mapFillFactor) {
+            this.mapFillFactor = mapFillFactor;
+            return this;
+        }
+
+        public Builder mapIdleFactor(float mapIdleFactor) {
+            this.mapIdleFactor = mapIdleFactor;
+            return this;
+        }
+
+        public Builder expandFactor(float expandFactor) {
+            this.expandFactor = expandFactor;
+            return this;
+        }
+
+        public Builder shrinkFactor(float shrinkFactor) {
+            this.shrinkFactor = shrinkFactor;
+            return this;
+        }
+
+        public Builder autoShrink(boolean autoShrink) {
+            this.autoShrink = autoShrink;
+            return this;
+        }
+
+        public Builder allocator(ByteBufAllocator allocator) {
+            this.allocator = allocator;
+            return this;
+        }
+
+        public OffHeapLongLongPairHashMap build() {
+            return new OffHeapLongLongPairHashMap(expectedItems, concurrencyLevel,
+                    mapFillFactor, mapIdleFactor, autoShrink, expandFactor, shrinkFactor, allocator);
+        }
+    }
+
+    private OffHeapLongLongPairHashMap(int expectedItems, int concurrencyLevel,
+                                       float mapFillFactor, float mapIdleFactor,
+                                       boolean autoShrink, float expandFactor, float shrinkFactor,
+                                       ByteBufAllocator allocator) {
+        checkArgument(expectedItems > 0);
+        checkArgument(concurrencyLevel > 0);
+        checkArgument(expectedItems >= concurrencyLevel);
+        checkArgument(mapFillFactor > 0 && mapFillFactor < 1);
+        checkArgument(mapIdleFactor > 0 && mapIdleFactor < 1);
+        checkArgument(mapFillFactor > mapIdleFactor);
+        checkArgument(expandFactor > 1);
+        checkArgument(shrinkFactor > 1);
+        checkNotNull(allocator);
+
+        int numSections = concurrencyLevel;
+        int perSectionExpectedItems = expectedItems / numSections;
+        int perSectionCapacity = Math.min(MaxSectionCapacity, (int) (perSectionExpectedItems / mapFillFactor));
+        this.sections = new Section[numSections];
+
+        for (int i = 0; i < numSections; i++) {
+            sections[i] = new Section(allocator, perSectionCapacity, mapFillFactor, mapIdleFactor,
+                    autoShrink, expandFactor, shrinkFactor);
+        }
+    }
+
+    @Override
+    public long size() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.size;
+        }
+        return size;
+    }
+
+    @Override
+    public long sizeInBytes() {
+        long size = 0;
+        for (Section s : sections) {
+            size += s.sizeInBytes();
+        }
+        return size;
+    }
+
+    @Override
+    public long capacity() {
+        long capacity = 0;
+        for (Section s : sections) {
+            capacity += s.capacity;
+        }
+        return capacity;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        for (Section s : sections) {
+            if (s.size != 0) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    long getUsedBucketCount() {
+        long usedBucketCount = 0;
+        for (Section s : sections) {
+            usedBucketCount += s.usedBuckets;
+        }
+        return usedBucketCount;
+    }
+
+    /**
+     * @return the value or null if the key was not present
+     */
+    @Override
+    public LongPair get(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).get(key1, key2, (int) h);
+    }
+
+    @Override
+    public boolean containsKey(long key1, long key2) {
+        return get(key1, key2) != null;
+    }
+
+    @Override
+    public boolean put(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).put(key1, key2, value1, value2, (int) h, false);
+    }
+
+    @Override
+    public boolean putIfAbsent(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).put(key1, key2, value1, value2, (int) h, true);
+    }
+
+    /**
+     * Remove an existing entry if found.
+     *
+     * @return true if the key was present
+     */
+    @Override
+    public boolean remove(long key1, long key2) {
+        checkBiggerEqualZero(key1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).remove(key1, key2, ValueNotFound, ValueNotFound, (int) h);
+    }
+
+    @Override
+    public boolean remove(long key1, long key2, long value1, long value2) {
+        checkBiggerEqualZero(key1);
+        checkBiggerEqualZero(value1);
+        long h = ConcurrentLongLongPairHashMap.hash(key1, key2);
+        return getSection(h).remove(key1, key2, value1, value2, (int) h);
+    }
+
+    @Override
+    public int removeIf(LongLongPairPredicate filter) {
+        checkNotNull(filter);
+
+        int removedCount = 0;
+        for (Section s : sections) {
+            removedCount += s.removeIf(filter);
+        }
+
+        return removedCount;
+    }
+
+    private Section getSection(long hash) {
+        // Use 32 msb out of long to get the section
+        final int sectionIdx = (int) (hash >>> 32) & (sections.length - 1);
+        return sections[sectionIdx];
+    }
+
+    @Override
+    public void clear() {
+        for (Section s : sections) {
+            s.clear();
+        }
+    }
+
+    /**
+     * Iterate over all the items. The section being scanned is read-locked while the processor runs, so the
+     * processor must not update the map.
+     */
+    @Override
+    public void forEach(BiConsumerLongPair processor) {
+        for (Section s : sections) {
+            s.forEach(processor);
+        }
+    }
+
+    @Override
+    public void close() {
+        for (Section s : sections) {
+            s.close();
+        }
+    }
+
+    /**
+     * A hash table of a section, made of buckets of 4 longs: key1, key2, value1, value2.
+     */
+    private static final class Table {
+        private final ByteBuf buffer;
+        private final LongBuffer data;
+        private final int capacity;
+        private final int length;
+        private final long sizeInBytes;
+
+        Table(ByteBufAllocator allocator, int capacity) {
+            this.capacity = capacity;
+            this.length = 4 * capacity;
+            int size = length * Long.BYTES;
+            this.sizeInBytes = size;
+            this.buffer = allocator.directBuffer(size, size);
+            this.data = buffer.nioBuffer(0, size).order(ByteOrder.nativeOrder()).asLongBuffer();
+            fill();
+        }
+
+        void fill() {
+            for (int i = 0; i < length; i++) {
+                data.put(i, EmptyKey);
+            }
+        }
+
+        int find(long key1, long key2, int keyHash) {
+            int bucket = signSafeMod(keyHash, capacity);
+
+            while (true) {
+                long storedKey1 = data.get(bucket);
+                long storedKey2 = data.get(bucket + 1);
+
+                if (key1 == storedKey1 && key2 == storedKey2) {
+                    return bucket;
+                } else if (storedKey1 == EmptyKey) {
+                    // Not found
+                    return -1;
+                }
+
+                bucket = (bucket + 4) & (length - 1);
+            }
+        }
+
+        void insert(long key1, long key2, long value1, long value2) {
+            int bucket = signSafeMod(ConcurrentLongLongPairHashMap.hash(key1, key2), capacity);
+
+            while (true) {
+                long storedKey1 = data.get(bucket);
+
+                if (storedKey1 == EmptyKey) {
+                    // The bucket is empty, so we can use it
+                    set(bucket, key1, key2, value1, value2);
+                    return;
+                }
+
+                bucket = (bucket + 4) & (length - 1);
+            }
+        }
+
+        void set(int bucket, long key1, long key2, long value1, long value2) {
+            data.put(bucket, key1);
+            data.put(bucket + 1, key2);
+            data.put(bucket + 2, value1);
+            data.put(bucket + 3, value2);
+        }
+
+        void release() {
+            buffer.release();
+        }
+    }
+
+    // A section is a portion of the hash map that is covered by a single
+    @SuppressWarnings("serial")
+    private static final class Section extends StampedLock {
+        private final ByteBufAllocator allocator;
+
+        private volatile Table table;
+
+        // Table that is being migrated into the current one, after an expansion
+        private volatile Table oldTable;
+        // Next bucket of the old table to be migrated
+        private int migrationIndex;
+
+        private volatile int capacity;
+        private final int initCapacity;
+        private volatile int size;
+        // Includes the items that are still to be migrated from the old table
+        private int usedBuckets;
+        private int resizeThresholdUp;
+        private int resizeThresholdBelow;
+        private final float mapFillFactor;
+        private final float mapIdleFactor;
+        private final float expandFactor;
+        private final float shrinkFactor;
+        private final boolean autoShrink;
+
+        Section(ByteBufAllocator allocator, int capacity, float mapFillFactor, float mapIdleFactor,
+                boolean autoShrink, float expandFactor, float shrinkFactor) {
+            this.allocator = allocator;
+            // At least 2 buckets, so that the first insertion doesn't fill the table
+            this.capacity = alignToPowerOfTwo(Math.max(2, capacity));
+            this.initCapacity = this.capacity;
+            this.table = new Table(allocator, this.capacity);
+            this.size = 0;
+            this.usedBuckets = 0;
+            this.autoShrink = autoShrink;
+            this.mapFillFactor = mapFillFactor;
+            this.mapIdleFactor = mapIdleFactor;
+            this.expandFactor = expandFactor;
+            this.shrinkFactor = shrinkFactor;
+            this.resizeThresholdUp = resizeThresholdUp(this.capacity, mapFillFactor);
+            this.resizeThresholdBelow = (int) (this.capacity * mapIdleFactor);
+        }
+
+        long sizeInBytes() {
+            Table table = this.table;
+            Table oldTable = this.oldTable;
+            return (table != null ? table.sizeInBytes : 0) + (oldTable != null ? oldTable.sizeInBytes : 0);
+        }
+
+        LongPair get(long key1, long key2, int keyHash) {
+            long stamp = readLock();
+
+            try {
+                Table table = this.table;
+                int bucket = table.find(key1, key2, keyHash);
+                if (bucket == -1 && oldTable != null) {
+                    table = oldTable;
+                    bucket = table.find(key1, key2, keyHash);
+                }
+
+                if (bucket == -1) {
+                    return null;
+                }
+                return new LongPair(table.data.get(bucket + 2), table.data.get(bucket + 3));
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        boolean put(long key1, long key2, long value1, long value2, int keyHash, boolean onlyIfAbsent) {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    migrate(MigrationBatchSize);
+                }
+
+                if (oldTable != null) {
+                    // The key might not have been migrated yet, in which case it's updated in place
+                    int bucket = oldTable.find(key1, key2, keyHash);
+                    if (bucket != -1) {
+                        if (!onlyIfAbsent) {
+                            oldTable.data.put(bucket + 2, value1);
+                            oldTable.data.put(bucket + 3, value2);
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    }
+                }
+
+                Table table = this.table;
+                int bucket = signSafeMod(keyHash, table.capacity);
+
+                // Remember where we find the first available spot
+                int firstDeletedKey = -1;
+
+                while (true) {
+                    long storedKey1 = table.data.get(bucket);
+                    long storedKey2 = table.data.get(bucket + 1);
+
+                    if (key1 == storedKey1 && key2 == storedKey2) {
+                        if (!onlyIfAbsent) {
+                            // Over written an old value for same key
+                            table.data.put(bucket + 2, value1);
+                            table.data.put(bucket + 3, value2);
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    } else if (storedKey1 == EmptyKey) {
+                        // Found an empty bucket. This means the key is not in the map. If we've already seen a deleted
+                        // key, we should write at that position
+                        if (firstDeletedKey != -1) {
+                            bucket = firstDeletedKey;
+                        } else if (usedBuckets + 1 >= table.capacity) {
+                            // Can only happen once the section has reached the max capacity
+                            throw new IllegalStateException("Hash map section is full, capacity: " + table.capacity);
+                        } else {
+                            ++usedBuckets;
+                        }
+
+                        table.set(bucket, key1, key2, value1, value2);
+                        ++size;
+                        return true;
+                    } else if (storedKey1 == DeletedKey) {
+                        // The bucket contained a different deleted key
+                        if (firstDeletedKey == -1) {
+                            firstDeletedKey = bucket;
+                        }
+                    }
+
+                    bucket = (bucket + 4) & (table.length - 1);
+                }
+            } finally {
+                try {
+                    if (usedBuckets > resizeThresholdUp) {
+                        expand();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private boolean remove(long key1, long key2, long value1, long value2, int keyHash) {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    migrate(MigrationBatchSize);
+                }
+
+                if (oldTable != null) {
+                    int bucket = oldTable.find(key1, key2, keyHash);
+                    if (bucket != -1) {
+                        if (matches(oldTable, bucket, value1, value2)) {
+                            --size;
+                            // The item won't need a bucket in the new table anymore
+                            --usedBuckets;
+                            oldTable.set(bucket, DeletedKey, DeletedKey, ValueNotFound, ValueNotFound);
+                            return true;
+                        } else {
+                            return false;
+                        }
+                    }
+                }
+
+                Table table = this.table;
+                int bucket = table.find(key1, key2, keyHash);
+                if (bucket != -1 && matches(table, bucket, value1, value2)) {
+                    --size;
+
+                    cleanBucket(table, bucket);
+                    return true;
+                } else {
+                    return false;
+                }
+            } finally {
+                try {
+                    if (autoShrink && size < resizeThresholdBelow) {
+                        shrink();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private static boolean matches(Table table, int bucket, long value1, long value2) {
+            return value1 == ValueNotFound
+                    || (value1 == table.data.get(bucket + 2) && value2 == table.data.get(bucket + 3));
+        }
+
+        int removeIf(LongLongPairPredicate filter) {
+            long stamp = writeLock();
+
+            int removedCount = 0;
+            try {
+                if (oldTable != null) {
+                    migrate(Integer.MAX_VALUE);
+                }
+
+                // Go through all the buckets for this section
+                Table table = this.table;
+                for (int bucket = 0; bucket < table.length; bucket += 4) {
+                    long storedKey1 = table.data.get(bucket);
+                    long storedKey2 = table.data.get(bucket + 1);
+                    long storedValue1 = table.data.get(bucket + 2);
+                    long storedValue2 = table.data.get(bucket + 3);
+
+                    if (storedKey1 != DeletedKey && storedKey1 != EmptyKey) {
+                        if (filter.test(storedKey1, storedKey2, storedValue1, storedValue2)) {
+                            // Removing item
+                            --size;
+                            ++removedCount;
+                            cleanBucket(table, bucket);
+                        }
+                    }
+                }
+
+                return removedCount;
+            } finally {
+                try {
+                    if (autoShrink && size < resizeThresholdBelow) {
+                        shrink();
+                    }
+                } finally {
+                    unlockWrite(stamp);
+                }
+            }
+        }
+
+        private void cleanBucket(Table table, int bucket) {
+            int nextInArray = (bucket + 4) & (table.length - 1);
+            if (table.data.get(nextInArray) == EmptyKey) {
+                table.set(bucket, EmptyKey, EmptyKey, ValueNotFound, ValueNotFound);
+                --usedBuckets;
+
+                // Cleanup all the buckets that were in `DeletedKey` state,
+                // so that we can reduce unnecessary expansions
+                bucket = (bucket - 4) & (table.length - 1);
+                while (table.data.get(bucket) == DeletedKey) {
+                    table.set(bucket, EmptyKey, EmptyKey, ValueNotFound, ValueNotFound);
+                    --usedBuckets;
+
+                    bucket = (bucket - 4) & (table.length - 1);
+                }
+            } else {
+                table.set(bucket, DeletedKey, DeletedKey, ValueNotFound, ValueNotFound);
+            }
+        }
+
+        void clear() {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    oldTable.release();
+                    oldTable = null;
+                }
+
+                table.fill();
+                this.size = 0;
+                this.usedBuckets = 0;
+                if (autoShrink && capacity != initCapacity) {
+                    rehash(initCapacity);
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        public void forEach(BiConsumerLongPair processor) {
+            long stamp = readLock();
+
+            try {
+                forEach(table, processor);
+                if (oldTable != null) {
+                    forEach(oldTable, processor);
+                }
+            } finally {
+                unlockRead(stamp);
+            }
+        }
+
+        private static void forEach(Table table, BiConsumerLongPair processor) {
+            // Go through all the buckets of the table
+            for (int bucket = 0; bucket < table.length; bucket += 4) {
+                long storedKey1 = table.data.get(bucket);
+
+                if (storedKey1 != DeletedKey && storedKey1 != EmptyKey) {
+                    processor.accept(storedKey1, table.data.get(bucket + 1), table.data.get(bucket + 2),
+                            table.data.get(bucket + 3));
+                }
+            }
+        }
+
+        void close() {
+            long stamp = writeLock();
+
+            try {
+                if (oldTable != null) {
+                    oldTable.release();
+                    oldTable = null;
+                }
+                if (table != null) {
+                    table.release();
+                    table = null;
+                }
+            } finally {
+                unlockWrite(stamp);
+            }
+        }
+
+        /**
+         * Start moving the items to a bigger table. The old table is drained by the following updates.
+         */
+        private void expand() {
+            if (oldTable != null) {
+                // The previous expansion is still in progress, complete it first
+                migrate(Integer.MAX_VALUE);
+            }
+
+            int newCapacity = Math.min(MaxSectionCapacity, alignToPowerOfTwo((int) (capacity * expandFactor)));
+            if (newCapacity <= capacity) {
+                return;
+            }
+
+            oldTable = table;
+            migrationIndex = 0;
+            table = new Table(allocator, newCapacity);
+            // usedBuckets already accounts for the items to migrate, though not for the deleted keys left behind
+            usedBuckets = size;
+            updateCapacity(newCapacity);
+        }
+
+        /**
+         * Move up to {@code maxBuckets} buckets from the old table into the current one.
+         */
+        private void migrate(int maxBuckets) {
+            Table oldTable = this.oldTable;
+            Table table = this.table;
+            int end = (int) Math.min(migrationIndex + 4L * maxBuckets, oldTable.length);
+
+            for (int bucket = migrationIndex; bucket < end; bucket += 4) {
+                long storedKey1 = oldTable.data.get(bucket);
+                if (storedKey1 != EmptyKey && storedKey1 != DeletedKey) {
+                    table.insert(storedKey1, oldTable.data.get(bucket + 1), oldTable.data.get(bucket + 2),
+                            oldTable.data.get(bucket + 3));
+                    // Leave a deleted key behind, so that lookups in the old table keep probing past this bucket
+                    oldTable.set(bucket, DeletedKey, DeletedKey, ValueNotFound, ValueNotFound);
+                }
+            }
+
+            migrationIndex = end;
+            if (end == oldTable.length) {
+                this.oldTable = null;
+                oldTable.release();
+            }
+        }
+
+        private void shrink() {
+            int newCapacity = alignToPowerOfTwo((int) (capacity / shrinkFactor));
+            int newResizeThresholdUp = resizeThresholdUp(newCapacity, mapFillFactor);
+            if (newCapacity < capacity && newResizeThresholdUp > size) {
+                // shrink the hashmap
+                rehash(newCapacity);
+            }
+        }
+
+        private void rehash(int newCapacity) {
+            if (oldTable != null) {
+                migrate(Integer.MAX_VALUE);
+            }
+
+            Table table = this.table;
+            Table newTable = new Table(allocator, newCapacity);
+
+            // Re-hash table
+            for (int bucket = 0; bucket < table.length; bucket += 4) {
+                long storedKey1 = table.data.get(bucket);
+                if (storedKey1 != EmptyKey && storedKey1 != DeletedKey) {
+                    newTable.insert(storedKey1, table.data.get(bucket + 1), table.data.get(bucket + 2),
+                            table.data.get(bucket + 3));
+                }
+            }
+
+            this.table = newTable;
+            table.release();
+            usedBuckets = size;
+            updateCapacity(newCapacity);
+        }
+
+        private void updateCapacity(int newCapacity) {
+            capacity = newCapacity;
+            resizeThresholdUp = resizeThresholdUp(capacity, mapFillFactor);
+            resizeThresholdBelow = (int) (capacity * mapIdleFactor);
+        }
+    }
+
+    static final int signSafeMod(long n, int max) {
+        return (int) (n & (max - 1)) << 2;
+    }
+
+    /**
+     * The table expands once the used buckets exceed the threshold, which must happen before the table is full:
+     * probing relies on finding an empty bucket.
+     */
+    private static int resizeThresholdUp(int capacity, float mapFillFactor) {
+        return Math.min((int) (capacity * mapFillFactor), capacity - 2);
+    }
+
+    private static int alignToPowerOfTwo(int n) {
+        return (int) Math.pow(2, 32 - Integer.numberOfLeadingZeros(n - 1));
+    }
+
+    private static void checkBiggerEqualZero(long n) {
+        if (n < 0L) {
+            throw new IllegalArgumentException("Keys and values must be >= 0");
+        }
+    }
+}
@@ -0,0 +1,77 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.GarbageCollectorThread.CompactionCandidate;
+import org.junit.Test;
+
+/**
+ * Unit test for the ordering of {@link CompactionCandidate}.
+ */
+public class CompactionCandidateTest {
+
+    @Test
+    public void testScore() {
+        // 3/4 of the log is garbage: 3 bytes reclaimed for each byte copied
+        assertEquals(3.0, new CompactionCandidate(1L, 2, 400, 100).getScore(), 0.0);
+        assertEquals(0.0, new CompactionCandidate(2L, 9, 100, 100).getScore(), 0.0);
+    }
+
+    @Test
+    public void testFullyGarbageEntryLog() {
+        CompactionCandidate empty = new CompactionCandidate(1L, 0, 100, 0);
+        assertTrue(empty.isFullyGarbage());
+        assertEquals(Double.POSITIVE_INFINITY, empty.getScore(), 0.0);
+
+        // An empty log file is not a division by zero either
+        CompactionCandidate emptyFile = new CompactionCandidate(2L, 0, 0, 0);
+        assertTrue(emptyFile.isFullyGarbage());
+        assertEquals(Double.POSITIVE_INFINITY, emptyFile.getScore(), 0.0);
+
+        assertFalse(new CompactionCandidate(3L, 0, 100, 1).isFullyGarbage());
+    }
+
+    @Test
+    public void testOrdering() {
+        List<CompactionCandidate> candidates = new ArrayList<>();
+        candidates.add(new CompactionCandidate(1L, 5, 1000, 500));
+        candidates.add(new CompactionCandidate(2L, 1, 1000, 100));
+        candidates.add(new CompactionCandidate(3L, 0, 1000, 0));
+        candidates.add(new CompactionCandidate(4L, 8, 1000, 800));
+        // Smaller log with the same usage as log 2 comes right after it
+        candidates.add(new CompactionCandidate(5L, 1, 100, 10));
+        candidates.add(new CompactionCandidate(6L, 3, 1000, 300));
+
+        GarbageCollectorThread.sortCompactionCandidates(candidates);
+
+        long[] expected = {3L, 2L, 5L, 6L, 1L, 4L};
+        assertEquals(expected.length, candidates.size());
+        for (int i = 0; i < expected.length; i++) {
+            assertEquals(expected[i], candidates.get(i).entryLogId);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import com.google.common.util.concurrent.RateLimiter;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.AbstractLogCompactor.Throttler;
+import org.apache.bookkeeper.common.util.MathUtils;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link Throttler}.
+ */
+public class CompactionThrottlerTest {
+
+    private static final double MAX_RATE = 1000;
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(2);
+
+    private ServerConfiguration conf;
+    private OperationLatencyTracker tracker;
+    private long now;
+
+    @Before
+    public void setUp() {
+        conf = new ServerConfiguration();
+        conf.setIsThrottleByBytes(true);
+        conf.setCompactionRateByBytes((int) MAX_RATE);
+        conf.setCompactionForegroundLatencyThresholdMillis(10);
+        tracker = new OperationLatencyTracker();
+    }
+
+    private Throttler newThrottler() {
+        Throttler throttler = new Throttler(conf, tracker, null);
+        now = MathUtils.nowInNano();
+        return throttler;
+    }
+
+    private void recordSamples(long latencyMillis, int count) {
+        for (int i = 0; i < count; i++) {
+            tracker.record(TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    private void adjust(Throttler throttler) {
+        now += INTERVAL_NANOS;
+        throttler.maybeAdjustRate(now);
+    }
+
+    @Test
+    public void testRateHalvedWhileLatencyIsHigh() {
+        Throttler throttler = newThrottler();
+        assertEquals(MAX_RATE, throttler.getRate(), 0.01);
+
+        recordSamples(20, 10);
+        adjust(throttler);
+        assertEquals(500, throttler.getRate(), 0.01);
+
+        recordSamples(50, 10);
+        adjust(throttler);
+        assertEquals(250, throttler.getRate(), 0.01);
+
+        recordSamples(50, 10);
+        adjust(throttler);
+        assertEquals(125, throttler.getRate(), 0.01);
+
+        // Never below a tenth of the configured rate
+        recordSamples(50, 10);
+        adjust(throttler);
+        assertEquals(100, throttler.getRate(), 0.01);
+        recordSamples(50, 10);
+        adjust(throttler);
+        assertEquals(100, throttler.getRate(), 0.01);
+    }
+
+    @Test
+    public void testRateRecoversWhenLatencyDrops() {
+        Throttler throttler = newThrottler();
+        recordSamples(20, 10);
+        adjust(throttler);
+        recordSamples(20, 10);
+        adjust(throttler);
+        assertEquals(250, throttler.getRate(), 0.01);
+
+        // Only the samples of the last interval count, not the high latency before
+        recordSamples(1, 10);
+        adjust(throttler);
+        assertEquals(350, throttler.getRate(), 0.01);
+        recordSamples(1, 10);
+        adjust(throttler);
+        assertEquals(450, throttler.getRate(), 0.01);
+
+        for (int i = 0; i < 10; i++) {
+            recordSamples(1, 10);
+            adjust(throttler);
+        }
+        assertEquals(MAX_RATE, throttler.getRate(), 0.01);
+    }
+
+    @Test
+    public void testFullRateWithoutForegroundTraffic() {
+        Throttler throttler = newThrottler();
+        recordSamples(20, 10);
+        adjust(throttler);
+        assertEquals(500, throttler.getRate(), 0.01);
+
+        adjust(throttler);
+        assertEquals(MAX_RATE, throttler.getRate(), 0.01);
+    }
+
+    @Test
+    public void testRateAdjustedOncePerInterval() {
+        Throttler throttler = newThrottler();
+        recordSamples(20, 10);
+        throttler.maybeAdjustRate(now + TimeUnit.MILLISECONDS.toNanos(500));
+        assertEquals(MAX_RATE, throttler.getRate(), 0.01);
+
+        adjust(throttler);
+        assertEquals(500, throttler.getRate(), 0.01);
+    }
+
+    @Test
+    public void testSharedRateLimiterIsCharged() {
+        RateLimiter shared = RateLimiter.create(MAX_RATE);
+        Throttler throttler = new Throttler(conf, tracker, shared);
+
+        throttler.acquire(100);
+        // The permits handed out by the throttler were also taken from the shared budget
+        assertFalse(shared.tryAcquire((int) MAX_RATE, 0, TimeUnit.MILLISECONDS));
+    }
+}
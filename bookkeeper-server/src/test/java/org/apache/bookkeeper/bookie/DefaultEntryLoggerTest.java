@@ -0,0 +1,128 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link DefaultEntryLogger}.
+ */
+public class DefaultEntryLoggerTest {
+    private static final int ENTRY_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        assertTrue(BookieImpl.getCurrentDirectory(ledgerDir).mkdirs());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+    }
+
+    @After
+    public void tearDown() {
+        entryLogger.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private static ByteBuf transfer(FileRegion region) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            WritableByteChannel target = Channels.newChannel(out);
+            while (region.transferred() < region.count()) {
+                region.transferTo(target, region.transferred());
+            }
+            return Unpooled.wrappedBuffer(out.toByteArray());
+        } finally {
+            region.release();
+        }
+    }
+
+    @Test
+    public void testReadEntryRegion() throws Exception {
+        long location = entryLogger.addEntry(1L, entry(1L, 0L));
+
+        // The entry is still in the write buffer of the current log
+        assertNull(entryLogger.readEntryRegion(1L, 0L, location, ENTRY_SIZE));
+
+        entryLogger.flush();
+        FileRegion region = entryLogger.readEntryRegion(1L, 0L, location, ENTRY_SIZE);
+        assertNotNull(region);
+        assertEquals(entry(1L, 0L), transfer(region));
+
+        // Below the minimum size, the entry is read the regular way
+        assertNull(entryLogger.readEntryRegion(1L, 0L, location, ENTRY_SIZE + 1));
+
+        // The entry at this location belongs to another ledger, the regular read reports the error
+        assertNull(entryLogger.readEntryRegion(2L, 0L, location, ENTRY_SIZE));
+    }
+
+    @Test
+    public void testReadEntryRegionOfDeletedLog() throws Exception {
+        long location = entryLogger.addEntry(1L, entry(1L, 0L));
+        entryLogger.flush();
+        long logId = DefaultEntryLogger.logIdForOffset(location);
+
+        // The file is opened along with the region, which can still be sent once the log is garbage collected
+        FileRegion region = entryLogger.readEntryRegion(1L, 0L, location, ENTRY_SIZE);
+        assertNotNull(region);
+        assertTrue(entryLogger.removeEntryLog(logId));
+        assertEquals(entry(1L, 0L), transfer(region));
+
+        assertNull(entryLogger.readEntryRegion(1L, 0L, location, ENTRY_SIZE));
+    }
+}
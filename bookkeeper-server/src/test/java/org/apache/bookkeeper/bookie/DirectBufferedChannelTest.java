@@ -0,0 +1,280 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.spy;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.Buffer;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.BufferPool;
+import org.apache.bookkeeper.bookie.storage.directentrylogger.FileChannelNativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link DirectBufferedChannel}, and the journals written with direct I/O.
+ */
+public class DirectBufferedChannelTest {
+
+    private static final int BUFFER_SIZE = 4 * Buffer.ALIGNMENT;
+    private static final long PREALLOC_SIZE = 16 * Buffer.ALIGNMENT;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private File journalDir;
+    private NativeIO nativeIO;
+    private BufferPool bufferPool;
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = tmpDirs.newFolder("journal");
+        nativeIO = spy(new FileChannelNativeIO());
+        bufferPool = new BufferPool(nativeIO, BUFFER_SIZE, 2);
+    }
+
+    @After
+    public void teardown() throws Exception {
+        bufferPool.close();
+    }
+
+    private JournalChannel newJournalChannel(long logId) throws IOException {
+        return new JournalChannel(journalDir, logId, PREALLOC_SIZE, BUFFER_SIZE, Buffer.ALIGNMENT, false,
+                JournalChannel.CURRENT_JOURNAL_FORMAT_VERSION,
+                Journal.directBufferedChannelBuilder(ByteBufAllocator.DEFAULT, bufferPool, nativeIO),
+                new ServerConfiguration(), new DefaultFileChannelProvider());
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] bytes = new byte[size];
+        for (int i = 0; i < size; i++) {
+            bytes[i] = (byte) (i * 31 + size);
+        }
+        return bytes;
+    }
+
+    private static byte[] readFile(File file, long offset, int size) throws IOException {
+        byte[] bytes = new byte[size];
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            raf.seek(offset);
+            raf.readFully(bytes);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void testPartialBlockWrittenAgain() throws Exception {
+        File file = new File(journalDir, "partial");
+        assertTrue(file.createNewFile());
+        byte[] first = randomBytes(100);
+        byte[] second = randomBytes(BUFFER_SIZE + 1000);
+        byte[] third = randomBytes(10);
+
+        try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+             DirectBufferedChannel bc = new DirectBufferedChannel(ByteBufAllocator.DEFAULT, fc, BUFFER_SIZE, file,
+                     bufferPool, nativeIO)) {
+            bc.write(Unpooled.wrappedBuffer(first));
+            assertEquals(first.length, bc.getNumOfBytesInWriteBuffer());
+            bc.flush();
+            assertEquals(0, bc.getNumOfBytesInWriteBuffer());
+            // The incomplete block is written padded with zeros
+            assertEquals(Buffer.ALIGNMENT, file.length());
+            assertArrayEquals(first, readFile(file, 0, first.length));
+
+            // The data following the incomplete block is appended to it, across a full buffer
+            bc.write(Unpooled.wrappedBuffer(second));
+            bc.flush();
+            bc.write(Unpooled.wrappedBuffer(third));
+            bc.flush();
+            assertEquals(first.length + second.length + third.length, bc.position());
+            assertEquals(bc.position(), bc.forceWrite(false));
+        }
+
+        assertArrayEquals(first, readFile(file, 0, first.length));
+        assertArrayEquals(second, readFile(file, first.length, second.length));
+        assertArrayEquals(third, readFile(file, first.length + second.length, third.length));
+        // The buffer of the closed channel is back in the pool
+        assertEquals(2, bufferPool.available());
+    }
+
+    @Test
+    public void testPreallocate() throws Exception {
+        JournalChannel jc = newJournalChannel(1L);
+        try {
+            assertTrue(jc.getBufferedChannel() instanceof DirectBufferedChannel);
+            File file = new File(journalDir, "1.txn");
+            assertEquals(PREALLOC_SIZE, file.length());
+
+            jc.getBufferedChannel().write(Unpooled.wrappedBuffer(randomBytes(1000)));
+            jc.preAllocIfNeeded(PREALLOC_SIZE);
+            assertEquals(2 * PREALLOC_SIZE, file.length());
+        } finally {
+            jc.close();
+        }
+    }
+
+    @Test
+    public void testPreallocateWithoutFallocate() throws Exception {
+        doThrow(new NativeIOException("fallocate not supported"))
+                .when(nativeIO).fallocate(anyInt(), anyInt(), anyLong(), anyLong());
+
+        byte[] data = randomBytes(1000);
+        JournalChannel jc = newJournalChannel(1L);
+        File file = new File(journalDir, "1.txn");
+        try {
+            // The last block of the preallocated range is written with zeros
+            assertEquals(PREALLOC_SIZE, file.length());
+            BufferedChannel bc = jc.getBufferedChannel();
+            bc.write(Unpooled.wrappedBuffer(data));
+            jc.preAllocIfNeeded(PREALLOC_SIZE);
+            assertEquals(2 * PREALLOC_SIZE, file.length());
+            bc.flush();
+        } finally {
+            jc.close();
+        }
+        verify(nativeIO).pwrite(anyInt(), anyLong(), eq(Buffer.ALIGNMENT), eq(PREALLOC_SIZE - Buffer.ALIGNMENT));
+        verify(nativeIO).pwrite(anyInt(), anyLong(), eq(Buffer.ALIGNMENT), eq(2 * PREALLOC_SIZE - Buffer.ALIGNMENT));
+
+        // The data written before the preallocation is kept
+        assertArrayEquals(data, readFile(file, JournalChannel.HEADER_SIZE, data.length));
+        byte[] zeros = new byte[Buffer.ALIGNMENT];
+        assertArrayEquals(zeros, readFile(file, 2 * PREALLOC_SIZE - Buffer.ALIGNMENT, Buffer.ALIGNMENT));
+    }
+
+    @Test
+    public void testJournalReplay() throws Exception {
+        int numEntries = 100;
+        JournalChannel jc = newJournalChannel(1L);
+        try {
+            BufferedChannel bc = jc.getBufferedChannel();
+            for (long entryId = 0; entryId < numEntries; entryId++) {
+                // Entries of various sizes, not aligned to the blocks, flushed one at a time so that the
+                // incomplete last block is written again with the next entry
+                ByteBuf entry = Unpooled.buffer(100 + (int) entryId * 97);
+                entry.writeLong(1L);
+                entry.writeLong(entryId);
+                entry.writerIndex(entry.capacity());
+                jc.preAllocIfNeeded(4 + entry.readableBytes());
+                ByteBuf len = Unpooled.buffer(4);
+                len.writeInt(entry.readableBytes());
+                bc.write(len);
+                bc.write(entry);
+                bc.flush();
+            }
+        } finally {
+            jc.close();
+        }
+
+        ServerConfiguration conf = new ServerConfiguration();
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                ByteBufAllocator.DEFAULT);
+
+        List<Long> replayed = new ArrayList<>();
+        journal.scanJournal(1L, 0L, (journalVersion, offset, entry) -> {
+            long entryId = entry.getLong(entry.position() + 8);
+            assertEquals(1L, entry.getLong(entry.position()));
+            assertEquals(100 + entryId * 97, entry.remaining());
+            replayed.add(entryId);
+        });
+        List<Long> expected = new ArrayList<>();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            expected.add(entryId);
+        }
+        assertEquals(expected, replayed);
+    }
+
+    @Test
+    public void testBufferedChannelWhenNoBufferAvailable() throws Exception {
+        try (BufferPool singleBuffer = new BufferPool(nativeIO, BUFFER_SIZE, 1)) {
+            Journal.BufferedChannelBuilder builder =
+                    Journal.directBufferedChannelBuilder(ByteBufAllocator.DEFAULT, singleBuffer, nativeIO);
+            List<BufferedChannel> channels = new ArrayList<>();
+            List<FileChannel> fileChannels = new ArrayList<>();
+            try {
+                for (String name : Arrays.asList("1.txn", "2.txn")) {
+                    File file = new File(journalDir, name);
+                    assertTrue(file.createNewFile());
+                    FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ,
+                            StandardOpenOption.WRITE);
+                    fileChannels.add(fc);
+                    channels.add(builder.create(file, fc, BUFFER_SIZE));
+                }
+                assertTrue(channels.get(0) instanceof DirectBufferedChannel);
+                // The only buffer is taken, the second file is written through the page cache
+                assertFalse(channels.get(1) instanceof DirectBufferedChannel);
+
+                byte[] data = randomBytes(1000);
+                channels.get(1).write(Unpooled.wrappedBuffer(data));
+                channels.get(1).flush();
+                assertArrayEquals(data, Arrays.copyOf(Files.readAllBytes(new File(journalDir, "2.txn").toPath()),
+                        data.length));
+            } finally {
+                for (BufferedChannel bc : channels) {
+                    bc.close();
+                }
+                for (FileChannel fc : fileChannels) {
+                    fc.close();
+                }
+            }
+
+            // Once the buffer is released, the next file is written with direct I/O again
+            File file = new File(journalDir, "3.txn");
+            assertTrue(file.createNewFile());
+            try (FileChannel fc = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+                 BufferedChannel bc = builder.create(file, fc, BUFFER_SIZE)) {
+                assertTrue(bc instanceof DirectBufferedChannel);
+            }
+        }
+    }
+}
@@ -0,0 +1,241 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.DefaultEntryLogger.BufferedLogChannel;
+import org.apache.bookkeeper.bookie.LedgerWriteClassifier.Tier;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link EntryLogManagerForTieredEntryLogs}.
+ */
+public class EntryLogManagerForTieredEntryLogsTest {
+    private static final int ENTRY_SIZE = 4096;
+    private static final long HOT_LEDGER = 1L;
+    private static final long WARM_LEDGER = 2L;
+    private static final long COLD_LEDGER = 3L;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private DefaultEntryLogger entryLogger;
+    private EntryLogManagerForTieredEntryLogs manager;
+    private long windowStartNanos;
+    private long windowEndNanos;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        assertTrue(BookieImpl.getCurrentDirectory(ledgerDir).mkdirs());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setEntryLogTieringEnabled(true);
+        conf.setEntryLogTieringWindowSeconds(1);
+        conf.setEntryLogTieringHotWriteRateBytes(1000);
+        conf.setEntryLogTieringColdWriteRateBytes(100);
+        conf.setEntryLogSizeLimit(64 * 1024);
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        entryLogger = new DefaultEntryLogger(conf, ledgerDirsManager);
+        manager = (EntryLogManagerForTieredEntryLogs) entryLogger.getEntryLogManager();
+
+        // Classify the ledgers over a window ending in the future, so that the entries added in the test don't
+        // complete a window and change the tiers
+        windowStartNanos = MathUtils.nowInNano() + TimeUnit.HOURS.toNanos(1);
+        windowEndNanos = windowStartNanos + TimeUnit.SECONDS.toNanos(1);
+        classify(HOT_LEDGER, 5000, Tier.HOT);
+        classify(COLD_LEDGER, 10, Tier.COLD);
+        assertEquals(Tier.WARM, manager.getClassifier().getTier(WARM_LEDGER));
+    }
+
+    private void classify(long ledgerId, int bytesPerSecond, Tier expectedTier) {
+        LedgerWriteClassifier classifier = manager.getClassifier();
+        classifier.onWrite(ledgerId, bytesPerSecond, windowStartNanos);
+        assertEquals(expectedTier, classifier.onWrite(ledgerId, 0, windowEndNanos));
+    }
+
+    @After
+    public void tearDown() {
+        entryLogger.close();
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private long currentLogId(Tier tier) {
+        return manager.getCurrentLogForTier(tier).getLogId();
+    }
+
+    private void assertEntry(long ledgerId, long entryId, long location) throws Exception {
+        ByteBuf entry = entryLogger.readEntry(ledgerId, entryId, location);
+        try {
+            assertEquals(entry(ledgerId, entryId), entry);
+        } finally {
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testOneLogPerTier() throws Exception {
+        long hot = entryLogger.addEntry(HOT_LEDGER, entry(HOT_LEDGER, 0));
+        long warm = entryLogger.addEntry(WARM_LEDGER, entry(WARM_LEDGER, 0));
+        long cold = entryLogger.addEntry(COLD_LEDGER, entry(COLD_LEDGER, 0));
+
+        assertEquals(currentLogId(Tier.HOT), DefaultEntryLogger.logIdForOffset(hot));
+        assertEquals(currentLogId(Tier.WARM), DefaultEntryLogger.logIdForOffset(warm));
+        assertEquals(currentLogId(Tier.COLD), DefaultEntryLogger.logIdForOffset(cold));
+        Set<Long> logIds = new HashSet<>();
+        for (Tier tier : Tier.values()) {
+            logIds.add(currentLogId(tier));
+        }
+        assertEquals(3, logIds.size());
+
+        // The ledgers of a tier share its log
+        long otherHotLedger = 4L;
+        classify(otherHotLedger, 5000, Tier.HOT);
+        long otherHot = entryLogger.addEntry(otherHotLedger, entry(otherHotLedger, 0));
+        assertEquals(currentLogId(Tier.HOT), DefaultEntryLogger.logIdForOffset(otherHot));
+
+        // Each current log is found by its id, including for the entries still in its write buffer
+        for (Tier tier : Tier.values()) {
+            BufferedLogChannel logChannel = manager.getCurrentLogForTier(tier);
+            assertSame(logChannel, manager.getCurrentLogIfPresent(logChannel.getLogId()));
+        }
+        assertNull(manager.getCurrentLogIfPresent(currentLogId(Tier.COLD) + 100));
+        assertEntry(HOT_LEDGER, 0, hot);
+        assertEntry(WARM_LEDGER, 0, warm);
+        assertEntry(COLD_LEDGER, 0, cold);
+        assertEntry(otherHotLedger, 0, otherHot);
+    }
+
+    @Test
+    public void testRollLogOfTier() throws Exception {
+        long hot = entryLogger.addEntry(HOT_LEDGER, entry(HOT_LEDGER, 0));
+        entryLogger.addEntry(WARM_LEDGER, entry(WARM_LEDGER, 0));
+        entryLogger.addEntry(COLD_LEDGER, entry(COLD_LEDGER, 0));
+        long hotLogId = currentLogId(Tier.HOT);
+        long warmLogId = currentLogId(Tier.WARM);
+        long coldLogId = currentLogId(Tier.COLD);
+
+        synchronized (manager) {
+            manager.createNewLogForTier(Tier.HOT, "for test");
+        }
+        assertNotEquals(hotLogId, currentLogId(Tier.HOT));
+        assertEquals(warmLogId, currentLogId(Tier.WARM));
+        assertEquals(coldLogId, currentLogId(Tier.COLD));
+        assertEquals(1, manager.getRotatedLogChannels().size());
+        assertEquals(hotLogId, manager.getRotatedLogChannels().get(0).getLogId());
+        assertNull(manager.getCurrentLogIfPresent(hotLogId));
+        assertEntry(HOT_LEDGER, 0, hot);
+
+        // Filling the cold log only rolls the cold log
+        long lastCold = 0;
+        for (long entryId = 1; entryId <= 20; entryId++) {
+            lastCold = entryLogger.addEntry(COLD_LEDGER, entry(COLD_LEDGER, entryId));
+        }
+        assertNotEquals(coldLogId, currentLogId(Tier.COLD));
+        assertEquals(currentLogId(Tier.COLD), DefaultEntryLogger.logIdForOffset(lastCold));
+        assertEquals(warmLogId, currentLogId(Tier.WARM));
+        assertTrue(manager.getRotatedLogChannels().size() > 1);
+
+        entryLogger.flush();
+        assertTrue(manager.getRotatedLogChannels().isEmpty());
+        assertTrue(entryLogger.getFlushedLogIds().contains(hotLogId));
+        assertTrue(entryLogger.getFlushedLogIds().contains(coldLogId));
+        assertEntry(HOT_LEDGER, 0, hot);
+        assertEntry(COLD_LEDGER, 20, lastCold);
+    }
+
+    @Test
+    public void testCheckpointAndFlushWithThreeLogs() throws Exception {
+        long[] locations = new long[] {
+            entryLogger.addEntry(HOT_LEDGER, entry(HOT_LEDGER, 0)),
+            entryLogger.addEntry(WARM_LEDGER, entry(WARM_LEDGER, 0)),
+            entryLogger.addEntry(COLD_LEDGER, entry(COLD_LEDGER, 0))
+        };
+        for (Tier tier : Tier.values()) {
+            assertTrue(manager.getCurrentLogForTier(tier).getNumOfBytesInWriteBuffer() > 0);
+        }
+
+        // The entries of a checkpoint can be in any of the current logs
+        entryLogger.checkpoint();
+        for (Tier tier : Tier.values()) {
+            BufferedLogChannel logChannel = manager.getCurrentLogForTier(tier);
+            assertEquals(0, logChannel.getNumOfBytesInWriteBuffer());
+            assertEquals(0, logChannel.getUnpersistedBytes());
+        }
+
+        // Before a checkpoint of the sorted ledger storage, all the current logs are rolled
+        long[] logIds = new long[Tier.values().length];
+        for (Tier tier : Tier.values()) {
+            logIds[tier.ordinal()] = currentLogId(tier);
+        }
+        entryLogger.prepareSortedLedgerStorageCheckpoint(1);
+        for (Tier tier : Tier.values()) {
+            assertNotEquals(logIds[tier.ordinal()], currentLogId(tier));
+        }
+        assertEquals(3, manager.getRotatedLogChannels().size());
+
+        entryLogger.flush();
+        assertTrue(manager.getRotatedLogChannels().isEmpty());
+        Set<Long> flushedLogIds = entryLogger.getFlushedLogIds();
+        for (long logId : logIds) {
+            assertTrue(flushedLogIds.contains(logId));
+        }
+        assertEntry(HOT_LEDGER, 0, locations[0]);
+        assertEntry(WARM_LEDGER, 0, locations[1]);
+        assertEntry(COLD_LEDGER, 0, locations[2]);
+    }
+
+    @Test
+    public void testLedgerDeletedIsForwardedToTheClassifier() throws Exception {
+        entryLogger.ledgerDeleted(HOT_LEDGER);
+        // Forgotten once deleted
+        assertEquals(Tier.WARM, manager.getClassifier().getTier(HOT_LEDGER));
+    }
+}
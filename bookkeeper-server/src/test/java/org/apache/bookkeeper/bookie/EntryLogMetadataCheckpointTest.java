@@ -0,0 +1,220 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link EntryLogMetadataCheckpoint}.
+ */
+public class EntryLogMetadataCheckpointTest {
+    // Position of the offset in the checkpoint file, after the magic, the version and the entry log id
+    private static final int HEADER_OFFSET_POSITION = 4 + 4 + 8;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private File curDir;
+    private DefaultEntryLogger entryLogger;
+
+    @Before
+    public void setUp() throws Exception {
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        curDir = BookieImpl.getCurrentDirectory(ledgerDir);
+        assertTrue(curDir.mkdirs());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setEntryLogMetadataCheckpointEnabled(true);
+        entryLogger = new DefaultEntryLogger(conf);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        if (entryLogger != null) {
+            entryLogger.close();
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.writerIndex() < size) {
+            entry.writeByte((int) entryId);
+        }
+        return entry;
+    }
+
+    /**
+     * Add the entries of a ledger and return the id of the entry log they were written to.
+     */
+    private long addEntries(long ledgerId, int count, int size) throws Exception {
+        long location = -1;
+        for (int i = 0; i < count; i++) {
+            location = entryLogger.addEntry(ledgerId, entry(ledgerId, i, size));
+        }
+        return DefaultEntryLogger.logIdForOffset(location);
+    }
+
+    private File checkpointFile(long logId) {
+        return EntryLogMetadataCheckpoint.checkpointFile(new File(curDir, Long.toHexString(logId) + ".log"), logId);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        EntryLogMetadata metadata = new EntryLogMetadata(5L);
+        metadata.addLedgerSize(1L, 100L);
+        metadata.addLedgerSize(2L, 200L);
+        metadata.addLedgerSize(1L, 50L);
+        File file = checkpointFile(5L);
+
+        new EntryLogMetadataCheckpoint(5L, 4096L, metadata).write(file);
+        assertTrue(file.exists());
+        assertFalse(new File(file.getParentFile(), file.getName() + ".tmp").exists());
+
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(file, 5L);
+        assertNotNull(checkpoint);
+        assertEquals(4096L, checkpoint.getOffset());
+        assertEquals(2, checkpoint.getMetadata().getLedgersMap().size());
+        assertEquals(150L, checkpoint.getMetadata().getLedgersMap().get(1L));
+        assertEquals(200L, checkpoint.getMetadata().getLedgersMap().get(2L));
+
+        // A checkpoint of another entry log is not used
+        assertNull(EntryLogMetadataCheckpoint.read(file, 6L));
+
+        // Neither is a corrupted one
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.seek(HEADER_OFFSET_POSITION);
+            raf.writeLong(8192L);
+        }
+        assertNull(EntryLogMetadataCheckpoint.read(file, 5L));
+
+        EntryLogMetadataCheckpoint.delete(file);
+        assertFalse(file.exists());
+        assertNull(EntryLogMetadataCheckpoint.read(file, 5L));
+    }
+
+    @Test
+    public void testFlushWritesCheckpoint() throws Exception {
+        long logId = addEntries(1L, 10, 100);
+        entryLogger.flush();
+
+        EntryLogMetadataCheckpoint checkpoint = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId);
+        assertNotNull(checkpoint);
+        assertEquals(10 * (100 + 4), checkpoint.getMetadata().getLedgersMap().get(1L));
+        assertEquals(new File(curDir, Long.toHexString(logId) + ".log").length(), checkpoint.getOffset());
+    }
+
+    @Test
+    public void testScanningResumesFromCheckpoint() throws Exception {
+        long logId = addEntries(1L, 10, 100);
+        entryLogger.flush();
+        byte[] firstCheckpoint = Files.readAllBytes(checkpointFile(logId).toPath());
+        long checkpointOffset = EntryLogMetadataCheckpoint.read(checkpointFile(logId), logId).getOffset();
+
+        assertEquals(logId, addEntries(2L, 5, 200));
+        entryLogger.flush();
+
+        // The log was not rotated, so its metadata can only be rebuilt by scanning it. Going back to the older
+        // checkpoint still gives the metadata of the whole log.
+        Files.write(checkpointFile(logId).toPath(), firstCheckpoint);
+        EntryLogMetadata metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertEquals(10 * (100 + 4), metadata.getLedgersMap().get(1L));
+        assertEquals(5 * (200 + 4), metadata.getLedgersMap().get(2L));
+
+        // Only the part of the log after the checkpointed offset is scanned
+        EntryLogMetadata checkpointed = new EntryLogMetadata(logId);
+        checkpointed.addLedgerSize(3L, 1000L);
+        new EntryLogMetadataCheckpoint(logId, checkpointOffset, checkpointed).write(checkpointFile(logId));
+        metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertEquals(2, metadata.getLedgersMap().size());
+        assertFalse(metadata.getLedgersMap().containsKey(1L));
+        assertEquals(5 * (200 + 4), metadata.getLedgersMap().get(2L));
+        assertEquals(1000L, metadata.getLedgersMap().get(3L));
+    }
+
+    @Test
+    public void testScanningIgnoresInvalidCheckpoint() throws Exception {
+        long logId = addEntries(1L, 10, 100);
+        entryLogger.flush();
+        long logSize = new File(curDir, Long.toHexString(logId) + ".log").length();
+
+        // A checkpoint beyond the end of the log is ignored and the whole log is scanned
+        EntryLogMetadata checkpointed = new EntryLogMetadata(logId);
+        checkpointed.addLedgerSize(3L, 1000L);
+        new EntryLogMetadataCheckpoint(logId, logSize + 1024, checkpointed).write(checkpointFile(logId));
+        EntryLogMetadata metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertEquals(1, metadata.getLedgersMap().size());
+        assertEquals(10 * (100 + 4), metadata.getLedgersMap().get(1L));
+
+        // So is a corrupted one
+        Files.write(checkpointFile(logId).toPath(), new byte[] { 1, 2, 3 });
+        metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertEquals(1, metadata.getLedgersMap().size());
+        assertEquals(10 * (100 + 4), metadata.getLedgersMap().get(1L));
+    }
+
+    @Test
+    public void testNoCheckpointForRotatedLog() throws Exception {
+        long logId = addEntries(1L, 10, 100);
+        EntryLogManagerBase entryLogManager = (EntryLogManagerBase) entryLogger.getEntryLogManager();
+        DefaultEntryLogger.BufferedLogChannel logChannel = entryLogManager.getCurrentLogForLedger(1L);
+        assertEquals(logId, logChannel.getLogId());
+
+        // A flush snapshots the metadata, then the log is rotated out before the checkpoint is written
+        EntryLogMetadataCheckpoint checkpoint = logChannel.checkpointMetadata();
+        entryLogManager.createNewLog(1L);
+        assertTrue(logChannel.isLedgersMapAppended());
+        logChannel.writeMetadataCheckpoint(checkpoint);
+        assertFalse(checkpointFile(logId).exists());
+
+        // Nor is it written when flushing the rotated log
+        entryLogManager.flushLogChannel(logChannel, true);
+        assertFalse(checkpointFile(logId).exists());
+
+        // The new current log is still checkpointed
+        long newLogId = addEntries(1L, 5, 100);
+        assertTrue(newLogId != logId);
+        entryLogger.flush();
+        assertFalse(checkpointFile(logId).exists());
+        assertNotNull(EntryLogMetadataCheckpoint.read(checkpointFile(newLogId), newLogId));
+
+        EntryLogMetadata metadata = entryLogger.getEntryLogMetadata(logId, null);
+        assertEquals(10 * (100 + 4), metadata.getLedgersMap().get(1L));
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.bookie.storage.ldb.PersistentEntryLogMetadataMap;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link EntryLogMetadataMap#forKey}.
+ */
+public class EntryLogMetadataMapTest {
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    @Test
+    public void testInMemoryForKey() throws Exception {
+        try (EntryLogMetadataMap map = new InMemoryEntryLogMetadataMap()) {
+            verifyForKey(map);
+        }
+    }
+
+    @Test
+    public void testPersistentForKey() throws Exception {
+        try (EntryLogMetadataMap map = new PersistentEntryLogMetadataMap(
+                tmpDir.newFolder().getAbsolutePath(), new ServerConfiguration())) {
+            verifyForKey(map);
+        }
+    }
+
+    private static void verifyForKey(EntryLogMetadataMap map) throws Exception {
+        EntryLogMetadata meta1 = new EntryLogMetadata(1L);
+        meta1.addLedgerSize(10L, 100);
+        meta1.addLedgerSize(11L, 200);
+        map.put(1L, meta1);
+        EntryLogMetadata meta2 = new EntryLogMetadata(2L);
+        meta2.addLedgerSize(20L, 50);
+        map.put(2L, meta2);
+
+        AtomicInteger calls = new AtomicInteger();
+        assertTrue(map.forKey(1L, (entryLogId, meta) -> {
+            calls.incrementAndGet();
+            assertEquals(1L, entryLogId.longValue());
+            assertEquals(1L, meta.getEntryLogId());
+            assertEquals(300, meta.getTotalSize());
+            assertEquals(300, meta.getRemainingSize());
+            assertTrue(meta.containsLedger(10L));
+            assertTrue(meta.containsLedger(11L));
+            assertFalse(meta.containsLedger(20L));
+        }));
+        assertEquals(1, calls.get());
+
+        // Missing entry logs are reported without calling the action
+        assertFalse(map.forKey(3L, (entryLogId, meta) -> calls.incrementAndGet()));
+        map.remove(2L);
+        assertFalse(map.forKey(2L, (entryLogId, meta) -> calls.incrementAndGet()));
+        assertEquals(1, calls.get());
+
+        // The action sees the latest version of the metadata
+        meta1.removeLedgerIf(ledgerId -> ledgerId == 10L);
+        map.put(1L, meta1);
+        assertTrue(map.forKey(1L, (entryLogId, meta) -> {
+            calls.incrementAndGet();
+            assertEquals(300, meta.getTotalSize());
+            assertEquals(200, meta.getRemainingSize());
+            assertFalse(meta.containsLedger(10L));
+        }));
+        assertEquals(2, calls.get());
+    }
+}
@@ -0,0 +1,158 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import org.apache.bookkeeper.bookie.GarbageCollectionCoordinator.LedgersInMetadata;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRangeIterator;
+import org.apache.bookkeeper.util.MathUtils;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link GarbageCollectionCoordinator}.
+ */
+public class GarbageCollectionCoordinatorTest {
+
+    private final List<LedgerRange> ranges = new ArrayList<>();
+    private LedgerManager ledgerManager;
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> rangeIterator(ranges));
+    }
+
+    static LedgerRangeIterator rangeIterator(List<LedgerRange> ranges) {
+        Iterator<LedgerRange> iterator = new ArrayList<>(ranges).iterator();
+        return new LedgerRangeIterator() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public LedgerRange next() {
+                return iterator.next();
+            }
+        };
+    }
+
+    static LedgerRange range(Long... ledgerIds) {
+        return new LedgerRange(new HashSet<>(Arrays.asList(ledgerIds)));
+    }
+
+    @Test
+    public void testListing() throws Exception {
+        ranges.add(range(1L, 5L, 3L));
+        ranges.add(range(10L, 12L));
+        // Enough ledgers to grow the listing array
+        Long[] many = new Long[2000];
+        for (int i = 0; i < many.length; i++) {
+            many[i] = 100L + i;
+        }
+        ranges.add(range(many));
+
+        GarbageCollectionCoordinator coordinator = new GarbageCollectionCoordinator(new ServerConfiguration(),
+                ledgerManager);
+        LedgersInMetadata ledgers = coordinator.getLedgersInMetadata(MathUtils.nowInNano());
+        assertEquals(5 + many.length, ledgers.size());
+        for (long ledgerId : new long[] {1L, 3L, 5L, 10L, 12L, 100L, 1000L, 2099L}) {
+            assertTrue(ledgers.contains(ledgerId));
+        }
+        for (long ledgerId : new long[] {0L, 2L, 4L, 11L, 99L, 2100L}) {
+            assertFalse(ledgers.contains(ledgerId));
+        }
+    }
+
+    @Test
+    public void testEmptyListing() throws Exception {
+        GarbageCollectionCoordinator coordinator = new GarbageCollectionCoordinator(new ServerConfiguration(),
+                ledgerManager);
+        LedgersInMetadata ledgers = coordinator.getLedgersInMetadata(MathUtils.nowInNano());
+        assertEquals(0, ledgers.size());
+        assertFalse(ledgers.contains(1L));
+    }
+
+    @Test
+    public void testListingSharedWithEarlierCallers() throws Exception {
+        ranges.add(range(1L, 2L));
+        GarbageCollectionCoordinator coordinator = new GarbageCollectionCoordinator(new ServerConfiguration(),
+                ledgerManager);
+
+        long firstDirListed = MathUtils.nowInNano();
+        long secondDirListed = MathUtils.nowInNano();
+        LedgersInMetadata ledgers = coordinator.getLedgersInMetadata(secondDirListed);
+        assertFalse(ledgers.contains(3L));
+
+        // A ledger created after the listing started is not in it
+        ranges.add(range(3L));
+
+        // Directories which listed their ledgers before the listing started can use it
+        assertSame(ledgers, coordinator.getLedgersInMetadata(firstDirListed));
+        assertSame(ledgers, coordinator.getLedgersInMetadata(secondDirListed));
+        verify(ledgerManager, times(1)).getLedgerRanges(anyLong());
+
+        // A directory which listed its ledgers afterwards might store the new ledger, it needs a new listing
+        LedgersInMetadata newLedgers = coordinator.getLedgersInMetadata(MathUtils.nowInNano() + 1);
+        assertNotSame(ledgers, newLedgers);
+        assertTrue(newLedgers.contains(3L));
+        verify(ledgerManager, times(2)).getLedgerRanges(anyLong());
+        assertSame(newLedgers, coordinator.getLedgersInMetadata(secondDirListed));
+    }
+
+    @Test
+    public void testRateLimiters() {
+        ServerConfiguration conf = new ServerConfiguration();
+        GarbageCollectionCoordinator coordinator = new GarbageCollectionCoordinator(conf, ledgerManager);
+        assertNull(coordinator.getCompactionRateLimiter());
+        assertNull(coordinator.getScanRateLimiter());
+
+        conf.setCompactionGlobalRate(1000);
+        coordinator = new GarbageCollectionCoordinator(conf, ledgerManager);
+        assertNotNull(coordinator.getCompactionRateLimiter());
+        assertNotNull(coordinator.getScanRateLimiter());
+        // Scanning entry logs does not eat into the compaction budget
+        assertNotSame(coordinator.getCompactionRateLimiter(), coordinator.getScanRateLimiter());
+        assertEquals(1000, coordinator.getCompactionRateLimiter().getRate(), 0.01);
+        assertEquals(1000, coordinator.getScanRateLimiter().getRate(), 0.01);
+    }
+}
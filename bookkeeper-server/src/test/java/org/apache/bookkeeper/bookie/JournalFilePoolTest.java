@@ -0,0 +1,280 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link JournalFilePool}.
+ */
+public class JournalFilePoolTest {
+
+    private static final long FILE_SIZE = 1024 * 1024;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private File journalDir;
+    private Counter missCounter;
+    private final List<JournalFilePool> pools = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = tmpDirs.newFolder("journal");
+        missCounter = mock(Counter.class);
+    }
+
+    @After
+    public void teardown() {
+        for (JournalFilePool pool : pools) {
+            pool.close();
+        }
+    }
+
+    private JournalFilePool newPool(int poolSize) {
+        JournalFilePool pool = new JournalFilePool(journalDir, poolSize, FILE_SIZE, missCounter);
+        pools.add(pool);
+        return pool;
+    }
+
+    private static void waitForReadyFiles(JournalFilePool pool, int count) throws Exception {
+        long deadline = System.currentTimeMillis() + 10000;
+        while (pool.getReadyFileCount() < count) {
+            assertTrue("Timed out waiting for the pool", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+        assertEquals(count, pool.getReadyFileCount());
+    }
+
+    private File[] poolFiles() {
+        File[] files = journalDir.listFiles(file -> file.getName().endsWith(JournalFilePool.POOL_FILE_SUFFIX));
+        Arrays.sort(files);
+        return files;
+    }
+
+    private static void writeGarbage(File file, long size) throws Exception {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            byte[] garbage = new byte[64 * 1024];
+            Arrays.fill(garbage, (byte) 0x5a);
+            for (long written = 0; written < size; written += garbage.length) {
+                raf.write(garbage);
+            }
+        }
+    }
+
+    private static void assertZeroedFile(File file) throws Exception {
+        assertEquals(FILE_SIZE, file.length());
+        byte[] content = Files.readAllBytes(file.toPath());
+        for (int i = 0; i < content.length; i++) {
+            if (content[i] != 0) {
+                throw new AssertionError("Byte " + i + " of " + file + " is not zero");
+            }
+        }
+    }
+
+    @Test
+    public void testTake() throws Exception {
+        JournalFilePool pool = newPool(2);
+        pool.start();
+        waitForReadyFiles(pool, 2);
+        assertEquals(2, poolFiles().length);
+
+        File journalFile = new File(journalDir, "1.txn");
+        assertTrue(pool.take(journalFile));
+        assertZeroedFile(journalFile);
+        verify(missCounter, never()).inc();
+
+        // The pool is replenished in the background
+        waitForReadyFiles(pool, 2);
+        assertEquals(2, poolFiles().length);
+    }
+
+    @Test
+    public void testTakeFromEmptyPool() throws Exception {
+        JournalFilePool pool = newPool(1);
+
+        File journalFile = new File(journalDir, "1.txn");
+        assertFalse(pool.take(journalFile));
+        assertFalse(journalFile.exists());
+        verify(missCounter, times(1)).inc();
+
+        // Missing a file replenishes the pool
+        waitForReadyFiles(pool, 1);
+        assertTrue(pool.take(journalFile));
+        assertZeroedFile(journalFile);
+    }
+
+    @Test
+    public void testRecycle() throws Exception {
+        JournalFilePool pool = newPool(1);
+
+        File oldJournal = new File(journalDir, "1.txn");
+        writeGarbage(oldJournal, 2 * FILE_SIZE);
+        assertTrue(pool.recycle(oldJournal));
+        assertFalse(oldJournal.exists());
+        waitForReadyFiles(pool, 1);
+
+        // The pool is full, the next old journal has to be deleted
+        File otherJournal = new File(journalDir, "2.txn");
+        writeGarbage(otherJournal, FILE_SIZE);
+        assertFalse(pool.recycle(otherJournal));
+        assertTrue(otherJournal.exists());
+
+        File journalFile = new File(journalDir, "3.txn");
+        assertTrue(pool.take(journalFile));
+        // Truncated to the size of the pool files and zeroed
+        assertZeroedFile(journalFile);
+    }
+
+    @Test
+    public void testLeftoversZeroedOnStart() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            writeGarbage(new File(journalDir, "leftover-" + i + JournalFilePool.POOL_FILE_SUFFIX), FILE_SIZE);
+        }
+
+        JournalFilePool pool = newPool(2);
+        pool.start();
+        waitForReadyFiles(pool, 2);
+        // Leftovers beyond the size of the pool are deleted
+        assertEquals(2, poolFiles().length);
+
+        for (int i = 0; i < 2; i++) {
+            File journalFile = new File(journalDir, i + ".txn");
+            assertTrue(pool.take(journalFile));
+            assertZeroedFile(journalFile);
+        }
+    }
+
+    private Journal newJournal(ServerConfiguration conf) throws Exception {
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        assertTrue(BookieImpl.getCurrentDirectory(ledgerDir).mkdirs());
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        // Keep the journal files, and the files of the pool, small
+        conf.setMaxJournalSizeMB(1);
+        conf.setProperty("journalPreAllocSizeMB", 1);
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager, NullStatsLogger.INSTANCE,
+                ByteBufAllocator.DEFAULT);
+        pools.add(journal.journalFilePool);
+        return journal;
+    }
+
+    @Test
+    public void testGcRecyclesJournals() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalPreAllocPoolSize(2);
+        conf.setMaxBackupJournals(0);
+        Journal journal = newJournal(conf);
+
+        for (long logId = 1; logId <= 4; logId++) {
+            writeGarbage(new File(journalDir, Long.toHexString(logId) + ".txn"), FILE_SIZE);
+        }
+        journal.getLastLogMark().setCurLogMark(4, 0);
+        journal.checkpointComplete(journal.newCheckpoint(), true);
+
+        // The journals before the mark are recycled until the pool is full, then deleted
+        assertEquals(Arrays.asList(4L), Journal.listJournalIds(journalDir, null));
+        waitForReadyFiles(journal.journalFilePool, 2);
+        assertEquals(2, poolFiles().length);
+    }
+
+    @Test
+    public void testReplayIgnoresPoolFiles() throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalPreAllocPoolSize(2);
+        conf.setNumJournalCallbackThreads(0);
+        Journal journal = newJournal(conf);
+        journal.start();
+
+        // Enough entries to roll the journal a few times
+        int numEntries = 64;
+        CountDownLatch acks = new CountDownLatch(numEntries);
+        try {
+            for (long entryId = 0; entryId < numEntries; entryId++) {
+                ByteBuf entry = Unpooled.buffer(64 * 1024);
+                entry.writeLong(1L);
+                entry.writeLong(entryId);
+                entry.writerIndex(entry.capacity());
+                journal.logAddEntry(entry, false, (rc, ledgerId, eId, addr, ctx) -> {
+                    assertEquals(BookieProtocol.EOK, rc);
+                    acks.countDown();
+                }, null);
+                entry.release();
+            }
+            assertTrue(acks.await(30, TimeUnit.SECONDS));
+        } finally {
+            journal.shutdown();
+        }
+
+        List<Long> journalIds = Journal.listJournalIds(journalDir, null);
+        assertTrue(journalIds.size() > 1);
+        assertTrue(poolFiles().length > 0);
+        // Only the journal files are listed, not the files of the pool
+        File[] journalFiles = journalDir.listFiles(file -> file.getName().endsWith(".txn"));
+        assertEquals(journalFiles.length, journalIds.size());
+
+        List<Long> replayed = new ArrayList<>();
+        for (long logId : journalIds) {
+            journal.scanJournal(logId, 0L, (journalVersion, offset, entry) -> {
+                long entryId = entry.getLong(entry.position() + 8);
+                if (entryId >= 0) {
+                    assertEquals(1L, entry.getLong(entry.position()));
+                    replayed.add(entryId);
+                }
+            });
+        }
+        List<Long> expected = new ArrayList<>();
+        for (long entryId = 0; entryId < numEntries; entryId++) {
+            expected.add(entryId);
+        }
+        assertEquals(expected, replayed);
+    }
+}
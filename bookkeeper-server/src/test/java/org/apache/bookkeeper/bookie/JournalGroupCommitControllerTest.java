@@ -0,0 +1,253 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.stats.OpStatsData;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link JournalGroupCommitController}.
+ */
+public class JournalGroupCommitControllerTest {
+
+    private static final long TARGET_NANOS = TimeUnit.MICROSECONDS.toNanos(1000);
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private static long micros(long micros) {
+        return TimeUnit.MICROSECONDS.toNanos(micros);
+    }
+
+    @Test
+    public void testGroupWaitWithSyncData() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_NANOS, 0, true);
+        // Nothing measured yet, the whole target is available
+        assertEquals(TARGET_NANOS, controller.getGroupWaitNanos());
+
+        controller.onFlush(micros(200));
+        assertEquals(micros(800), controller.getGroupWaitNanos());
+
+        // The entries are acknowledged after the force write, which takes its share of the target
+        controller.onForceWrite(micros(300));
+        assertEquals(micros(500), controller.getGroupWaitNanos());
+
+        // Moving average of the flush latency: 200 + 0.2 * (400 - 200)
+        controller.onFlush(micros(400));
+        assertEquals(micros(460), controller.getGroupWaitNanos(), 1);
+    }
+
+    @Test
+    public void testGroupWaitWithoutSyncData() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_NANOS, 0, false);
+        controller.onFlush(micros(200));
+        // The force write doesn't delay the acknowledgements
+        controller.onForceWrite(micros(300));
+        assertEquals(micros(800), controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testGroupWaitClamps() {
+        // A flush slower than the target leaves no budget
+        JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_NANOS, 0, true);
+        controller.onFlush(micros(1500));
+        assertEquals(JournalGroupCommitController.MIN_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+
+        // The max group wait caps the budget
+        controller = new JournalGroupCommitController(TARGET_NANOS, micros(100), true);
+        assertEquals(micros(100), controller.getGroupWaitNanos());
+        controller.onFlush(micros(50));
+        assertEquals(micros(100), controller.getGroupWaitNanos());
+        // Moving average of the flush latency: 50 + 0.2 * (5000 - 50)
+        controller.onFlush(micros(5000));
+        assertEquals(JournalGroupCommitController.MIN_GROUP_WAIT_NANOS, controller.getGroupWaitNanos());
+
+        // A max group wait above the target is capped by the target
+        controller = new JournalGroupCommitController(TARGET_NANOS, micros(5000), true);
+        assertEquals(TARGET_NANOS, controller.getGroupWaitNanos());
+    }
+
+    @Test
+    public void testExpectsArrivalWithin() {
+        JournalGroupCommitController controller = new JournalGroupCommitController(TARGET_NANOS, 0, true);
+        // Nothing known about the arrivals yet
+        assertTrue(controller.expectsArrivalWithin(0));
+
+        controller.onArrival(micros(10_000));
+        assertTrue(controller.expectsArrivalWithin(0));
+
+        controller.onArrival(micros(11_000));
+        assertTrue(controller.expectsArrivalWithin(micros(1000)));
+        assertFalse(controller.expectsArrivalWithin(micros(999)));
+
+        // An entry enqueued before the last one doesn't produce a sample
+        controller.onArrival(micros(10_500));
+        assertTrue(controller.expectsArrivalWithin(micros(1000)));
+        assertFalse(controller.expectsArrivalWithin(micros(999)));
+
+        // And doesn't move the last arrival back: 1000 + 0.2 * (100 - 1000)
+        controller.onArrival(micros(11_100));
+        assertTrue(controller.expectsArrivalWithin(micros(821)));
+        assertFalse(controller.expectsArrivalWithin(micros(819)));
+    }
+
+    @Test
+    public void testJournalWithTargetLatency() throws Exception {
+        File journalDir = tmpDirs.newFolder("journal");
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        assertTrue(BookieImpl.getCurrentDirectory(ledgerDir).mkdirs());
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setJournalGroupCommitTargetLatencyMicros(TimeUnit.NANOSECONDS.toMicros(TARGET_NANOS));
+        LedgerDirsManager ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+
+        RecordingStatsLogger statsLogger = new RecordingStatsLogger();
+        Journal journal = new Journal(0, journalDir, conf, ledgerDirsManager, statsLogger, ByteBufAllocator.DEFAULT);
+        journal.start();
+        try {
+            // One entry at a time: the next entry never arrives within the group wait
+            for (long entryId = 0; entryId < 20; entryId++) {
+                ByteBuf entry = Unpooled.buffer(128);
+                entry.writeLong(1L);
+                entry.writeLong(entryId);
+                entry.writerIndex(entry.capacity());
+                CompletableFuture<Long> acked = new CompletableFuture<>();
+                journal.logAddEntry(entry, false, (rc, ledgerId, eid, addr, ctx) -> {
+                    assertEquals(BookieProtocol.EOK, rc);
+                    acked.complete(eid);
+                }, null);
+                entry.release();
+                assertEquals(entryId, (long) acked.get(30, TimeUnit.SECONDS));
+            }
+        } finally {
+            journal.shutdown();
+        }
+
+        assertTrue(statsLogger.flushAdaptive.get() > 0);
+        assertFalse(statsLogger.groupCommitWaitMicros.isEmpty());
+        for (long waitMicros : statsLogger.groupCommitWaitMicros) {
+            assertTrue(waitMicros <= TimeUnit.NANOSECONDS.toMicros(TARGET_NANOS));
+        }
+    }
+
+    /**
+     * Records the adaptive flushes and the group waits of the journal.
+     */
+    private static class RecordingStatsLogger extends NullStatsLogger {
+        final AtomicLong flushAdaptive = new AtomicLong();
+        final List<Long> groupCommitWaitMicros = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Counter getCounter(String name) {
+            if (!BookKeeperServerStats.JOURNAL_NUM_FLUSH_ADAPTIVE.equals(name)) {
+                return super.getCounter(name);
+            }
+            return new Counter() {
+                @Override
+                public void clear() {
+                    flushAdaptive.set(0);
+                }
+
+                @Override
+                public void inc() {
+                    flushAdaptive.incrementAndGet();
+                }
+
+                @Override
+                public void dec() {
+                    flushAdaptive.decrementAndGet();
+                }
+
+                @Override
+                public void add(long delta) {
+                    flushAdaptive.addAndGet(delta);
+                }
+
+                @Override
+                public Long get() {
+                    return flushAdaptive.get();
+                }
+            };
+        }
+
+        @Override
+        public OpStatsLogger getOpStatsLogger(String name) {
+            if (!BookKeeperServerStats.JOURNAL_GROUP_COMMIT_WAIT.equals(name)) {
+                return super.getOpStatsLogger(name);
+            }
+            return new OpStatsLogger() {
+                @Override
+                public void registerFailedEvent(long eventLatency, TimeUnit unit) {
+                    // nop
+                }
+
+                @Override
+                public void registerSuccessfulEvent(long eventLatency, TimeUnit unit) {
+                    // nop
+                }
+
+                @Override
+                public void registerSuccessfulValue(long value) {
+                    groupCommitWaitMicros.add(value);
+                }
+
+                @Override
+                public void registerFailedValue(long value) {
+                    // nop
+                }
+
+                @Override
+                public OpStatsData toOpStatsData() {
+                    return null;
+                }
+
+                @Override
+                public void clear() {
+                    groupCommitWaitMicros.clear();
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.LedgerWriteClassifier.Tier;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LedgerWriteClassifier}.
+ */
+public class LedgerWriteClassifierTest {
+    private static final long WINDOW_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final LedgerWriteClassifier classifier = new LedgerWriteClassifier(1, 1000, 100);
+
+    /**
+     * Write a ledger at the given rate during a whole window.
+     *
+     * @return the tier of the ledger once the window completes
+     */
+    private Tier writeWindow(long ledgerId, int bytesPerSecond, long startNanos) {
+        classifier.onWrite(ledgerId, bytesPerSecond, startNanos);
+        return classifier.onWrite(ledgerId, 0, startNanos + WINDOW_NANOS);
+    }
+
+    @Test
+    public void testNewLedgersAreWarm() {
+        assertEquals(Tier.WARM, classifier.getTier(1L));
+        // Until the first window completes
+        assertEquals(Tier.WARM, classifier.onWrite(1L, 1_000_000, 0));
+        assertEquals(Tier.WARM, classifier.onWrite(1L, 1_000_000, WINDOW_NANOS - 1));
+        assertEquals(Tier.WARM, classifier.getTier(1L));
+    }
+
+    @Test
+    public void testClassifyByWriteRate() {
+        assertEquals(Tier.HOT, writeWindow(1L, 1000, 0));
+        assertEquals(Tier.WARM, writeWindow(2L, 500, 0));
+        assertEquals(Tier.COLD, writeWindow(3L, 99, 0));
+        assertEquals(Tier.HOT, classifier.getTier(1L));
+        assertEquals(Tier.WARM, classifier.getTier(2L));
+        assertEquals(Tier.COLD, classifier.getTier(3L));
+
+        // The tier follows the rate of the last window
+        assertEquals(Tier.COLD, writeWindow(1L, 10, WINDOW_NANOS));
+        assertEquals(Tier.HOT, writeWindow(3L, 5000, WINDOW_NANOS));
+    }
+
+    @Test
+    public void testIdleLedgersAreCold() {
+        assertEquals(Tier.HOT, writeWindow(1L, 5000, 0));
+        // Written at the hot rate again, after being idle for a long time
+        classifier.onWrite(1L, 5000, 100 * WINDOW_NANOS);
+        assertEquals(Tier.COLD, classifier.onWrite(1L, 5000, 100 * WINDOW_NANOS + 1));
+    }
+
+    @Test
+    public void testLongLivedLedgersAreDemoted() {
+        // The ledgers live 10 windows on average
+        for (long ledgerId = 100; ledgerId < 110; ledgerId++) {
+            classifier.onWrite(ledgerId, 10, 0);
+            classifier.onLedgerDeleted(ledgerId, 10 * WINDOW_NANOS);
+        }
+        // Deleted ledgers are forgotten
+        assertEquals(Tier.WARM, classifier.getTier(100L));
+
+        assertEquals(Tier.HOT, writeWindow(1L, 5000, 0));
+        assertEquals(Tier.HOT, writeWindow(1L, 5000, 19 * WINDOW_NANOS));
+        // Living more than twice as long as the deleted ledgers, whatever its write rate
+        assertEquals(Tier.COLD, writeWindow(1L, 5000, 20 * WINDOW_NANOS));
+    }
+
+    @Test
+    public void testAverageLifetime() {
+        classifier.onWrite(100L, 10, 0);
+        classifier.onLedgerDeleted(100L, 10 * WINDOW_NANOS);
+        // Moving average of the lifetimes: 10 + 0.1 * (110 - 10) = 20 windows
+        classifier.onWrite(101L, 10, 0);
+        classifier.onLedgerDeleted(101L, 110 * WINDOW_NANOS);
+        // Unknown ledgers don't count
+        classifier.onLedgerDeleted(102L, 1000 * WINDOW_NANOS);
+
+        classifier.onWrite(1L, 5000, 0);
+        assertEquals(Tier.HOT, writeWindow(1L, 5000, 38 * WINDOW_NANOS));
+        assertEquals(Tier.COLD, writeWindow(1L, 5000, 40 * WINDOW_NANOS));
+    }
+}
@@ -0,0 +1,208 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.nio.ReadOnlyBufferException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link MappedEntryLogReader}.
+ */
+public class MappedEntryLogReaderTest {
+    private static final long LOG_ID = 7L;
+    private static final int WINDOW_SIZE = 4096;
+    private static final int ENTRY_SIZE = 100;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private File logFile;
+    // Positions of the entries, after their size
+    private final List<Long> positions = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        logFile = tmpDirs.newFile(Long.toHexString(LOG_ID) + ".log");
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            // Header
+            raf.write(new byte[1024]);
+            for (long entryId = 0; raf.length() < 4 * WINDOW_SIZE; entryId++) {
+                ByteBuf entry = entry(1L, entryId);
+                raf.writeInt(entry.readableBytes());
+                positions.add(raf.getFilePointer());
+                raf.write(entry.array(), entry.arrayOffset(), entry.readableBytes());
+            }
+        }
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(ENTRY_SIZE);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (entryId + entry.writerIndex()));
+        }
+        return entry;
+    }
+
+    private MappedEntryLogReader newReader(int maxWindows) {
+        return new MappedEntryLogReader(UnpooledByteBufAllocator.DEFAULT, WINDOW_SIZE, maxWindows, logId -> {
+            if (logId != LOG_ID) {
+                throw new FileNotFoundException("No entry log " + logId);
+            }
+            return logFile;
+        });
+    }
+
+    private static boolean crossesWindow(long pos) {
+        return (pos - 4) / WINDOW_SIZE != (pos + ENTRY_SIZE - 1) / WINDOW_SIZE;
+    }
+
+    @Test
+    public void testReadEntries() throws Exception {
+        MappedEntryLogReader reader = newReader(2);
+        int mapped = 0;
+        for (int i = 0; i < positions.size(); i++) {
+            long pos = positions.get(i);
+            ByteBuf entry = reader.readEntry(LOG_ID, pos);
+            if (crossesWindow(pos)) {
+                // Has to be read from the file channel
+                assertNull(entry);
+                continue;
+            }
+            assertNotNull(entry);
+            assertEquals(entry(1L, i), entry);
+            entry.release();
+            mapped++;
+        }
+        assertTrue(mapped > 0);
+        reader.close();
+    }
+
+    @Test
+    public void testEntriesAreReadOnly() throws Exception {
+        MappedEntryLogReader reader = newReader(2);
+        ByteBuf entry = reader.readEntry(LOG_ID, positions.get(0));
+        try {
+            entry.setLong(0, 42L);
+            fail("The mapped entries should be read-only");
+        } catch (ReadOnlyBufferException e) {
+            // Expected
+        } finally {
+            entry.release();
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMissingEntryLog() throws Exception {
+        MappedEntryLogReader reader = newReader(2);
+        // The caller falls back to the file channel, which reports the missing entry log
+        assertNull(reader.readEntry(LOG_ID + 1, positions.get(0)));
+        // Beyond the end of the file
+        assertNull(reader.readEntry(LOG_ID, 10L * WINDOW_SIZE));
+        reader.close();
+    }
+
+    @Test
+    public void testEntriesOutliveTheirWindow() throws Exception {
+        MappedEntryLogReader reader = newReader(1);
+        long first = positions.get(0);
+        int lastIndex = positions.size() - 1;
+        while (crossesWindow(positions.get(lastIndex))) {
+            lastIndex--;
+        }
+        long last = positions.get(lastIndex);
+        assertTrue(first / WINDOW_SIZE != last / WINDOW_SIZE);
+
+        ByteBuf firstEntry = reader.readEntry(LOG_ID, first);
+        // Drops the window of the first entry
+        ByteBuf lastEntry = reader.readEntry(LOG_ID, last);
+        assertEquals(entry(1L, 0), firstEntry);
+        assertEquals(entry(1L, lastIndex), lastEntry);
+
+        reader.unmap(LOG_ID);
+        assertEquals(entry(1L, lastIndex), lastEntry);
+        assertTrue(firstEntry.release());
+        assertTrue(lastEntry.release());
+
+        // Mapped again
+        ByteBuf entry = reader.readEntry(LOG_ID, first);
+        assertEquals(entry(1L, 0), entry);
+        entry.release();
+        reader.close();
+    }
+
+    @Test
+    public void testConcurrentReads() throws Exception {
+        MappedEntryLogReader reader = newReader(2);
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                futures.add(executor.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int n = 0; n < 10_000; n++) {
+                        int i = random.nextInt(positions.size());
+                        ByteBuf entry = reader.readEntry(LOG_ID, positions.get(i));
+                        if (entry != null) {
+                            assertEquals(entry(1L, i), entry);
+                            entry.release();
+                        } else {
+                            assertTrue(crossesWindow(positions.get(i)));
+                        }
+                        if (n % 1000 == 0) {
+                            reader.unmap(LOG_ID);
+                        }
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            executor.shutdownNow();
+            reader.close();
+        }
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.apache.bookkeeper.bookie.GarbageCollectionCoordinatorTest.range;
+import static org.apache.bookkeeper.bookie.GarbageCollectionCoordinatorTest.rangeIterator;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.meta.LedgerManager.LedgerRange;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ScanAndCompareGarbageCollector} coordinated with the other directories.
+ */
+public class ScanAndCompareGarbageCollectorTest {
+
+    private final List<LedgerRange> ranges = new ArrayList<>();
+    private ServerConfiguration conf;
+    private LedgerManager ledgerManager;
+    private GarbageCollectionCoordinator coordinator;
+
+    @Before
+    public void setUp() throws Exception {
+        conf = new ServerConfiguration();
+        conf.setBookieId("127.0.0.1:3181");
+        ledgerManager = mock(LedgerManager.class);
+        when(ledgerManager.getLedgerRanges(anyLong())).thenAnswer(invocation -> rangeIterator(ranges));
+        coordinator = new GarbageCollectionCoordinator(conf, ledgerManager);
+    }
+
+    private ScanAndCompareGarbageCollector newCollector(CompactableLedgerStorage storage) throws Exception {
+        return new ScanAndCompareGarbageCollector(ledgerManager, storage, conf, NullStatsLogger.INSTANCE,
+                coordinator);
+    }
+
+    private static CompactableLedgerStorage storage(Long... ledgerIds) throws Exception {
+        CompactableLedgerStorage storage = mock(CompactableLedgerStorage.class);
+        when(storage.getActiveLedgersInRange(0, Long.MAX_VALUE)).thenReturn(Arrays.asList(ledgerIds));
+        return storage;
+    }
+
+    @Test
+    public void testLedgersNotInMetadataAreCleaned() throws Exception {
+        ranges.add(range(2L, 4L));
+        ranges.add(range(10L));
+
+        Set<Long> cleaned = new TreeSet<>();
+        ScanAndCompareGarbageCollector collector = newCollector(storage(1L, 2L, 3L, 4L, 10L, 11L));
+        collector.gc(cleaned::add);
+
+        assertEquals(new TreeSet<>(Arrays.asList(1L, 3L, 11L)), cleaned);
+        assertEquals(6, collector.getNumActiveLedgers());
+    }
+
+    @Test
+    public void testDirectoriesShareTheListing() throws Exception {
+        ranges.add(range(1L, 2L));
+
+        // The second directory is collected while the first one lists its ledgers
+        CompactableLedgerStorage storage1 = storage(1L, 2L, 3L);
+        CompactableLedgerStorage storage2 = storage(2L, 4L);
+        ScanAndCompareGarbageCollector collector2 = newCollector(storage2);
+        Set<Long> cleaned2 = new TreeSet<>();
+        when(storage1.getActiveLedgersInRange(0, Long.MAX_VALUE)).thenAnswer(invocation -> {
+            collector2.gc(cleaned2::add);
+            return Arrays.asList(1L, 2L, 3L);
+        });
+
+        Set<Long> cleaned1 = new TreeSet<>();
+        newCollector(storage1).gc(cleaned1::add);
+
+        assertEquals(new TreeSet<>(Arrays.asList(3L)), cleaned1);
+        assertEquals(new TreeSet<>(Arrays.asList(4L)), cleaned2);
+        // The first directory reuses the listing made for the second one, which started after its own listing
+        verify(ledgerManager, times(1)).getLedgerRanges(anyLong());
+    }
+
+    @Test
+    public void testLedgerCreatedAfterListingIsNotCleaned() throws Exception {
+        ranges.add(range(1L));
+        Set<Long> cleaned = new TreeSet<>();
+        newCollector(storage(1L)).gc(cleaned::add);
+
+        // Ledger 2 is created and stored after the listing, the directory storing it needs a new listing
+        ranges.add(range(2L));
+        newCollector(storage(1L, 2L)).gc(cleaned::add);
+
+        assertEquals(0, cleaned.size());
+        verify(ledgerManager, times(2)).getLedgerRanges(anyLong());
+    }
+
+    @Test
+    public void testFailedListingCleansNothing() throws Exception {
+        when(ledgerManager.getLedgerRanges(anyLong())).thenThrow(new RuntimeException("metadata store down"));
+
+        Set<Long> cleaned = new TreeSet<>();
+        newCollector(storage(1L, 2L)).gc(cleaned::add);
+        assertEquals(0, cleaned.size());
+    }
+}
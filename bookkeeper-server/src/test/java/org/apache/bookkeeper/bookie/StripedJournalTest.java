@@ -0,0 +1,270 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.Journal.LastLogMark;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.proto.BookieProtocol;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for the stripes of a journal directory.
+ */
+public class StripedJournalTest {
+
+    private static final int NUM_STRIPES = 3;
+    private static final int NUM_LEDGERS = 8;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private File journalDir;
+    private File ledgerCurDir;
+    private ServerConfiguration conf;
+    private LedgerDirsManager ledgerDirsManager;
+    private final List<Journal> journals = new ArrayList<>();
+
+    @Before
+    public void setup() throws Exception {
+        journalDir = tmpDirs.newFolder("journal");
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        ledgerCurDir = BookieImpl.getCurrentDirectory(ledgerDir);
+        assertTrue(ledgerCurDir.mkdirs());
+
+        conf = new ServerConfiguration();
+        conf.setJournalDirName(journalDir.getAbsolutePath());
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        conf.setJournalStripesPerDirectory(NUM_STRIPES);
+        // Run the callbacks on the force write thread, in the order of the journal
+        conf.setNumJournalCallbackThreads(0);
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+    }
+
+    @After
+    public void teardown() {
+        shutdownJournals();
+    }
+
+    /**
+     * Open the journals of all the stripes, as the bookie does when it starts.
+     */
+    private void startJournals() throws Exception {
+        for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+            File stripeDir = Journal.getStripeDirectory(journalDir, stripe);
+            assertTrue(stripeDir.isDirectory() || stripeDir.mkdirs());
+            Journal journal = new Journal(0, stripe, NUM_STRIPES, stripeDir, conf, ledgerDirsManager,
+                    NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT);
+            journal.start();
+            journals.add(journal);
+        }
+    }
+
+    private void shutdownJournals() {
+        for (Journal journal : journals) {
+            journal.shutdown();
+        }
+        journals.clear();
+    }
+
+    private Journal getJournal(long ledgerId) {
+        return journals.get(BookieImpl.getJournalIndex(ledgerId, journals.size()));
+    }
+
+    /**
+     * Write the entries of all the ledgers, interleaved, and check they are acknowledged in order.
+     */
+    private void addEntries(long firstEntryId, int count) throws Exception {
+        CountDownLatch acks = new CountDownLatch(NUM_LEDGERS * count);
+        Map<Long, List<Long>> ackedEntries = new ConcurrentHashMap<>();
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+                ByteBuf entry = Unpooled.buffer(128);
+                entry.writeLong(ledgerId);
+                entry.writeLong(entryId);
+                entry.writerIndex(entry.capacity());
+                getJournal(ledgerId).logAddEntry(entry, false, (rc, l, e, addr, ctx) -> {
+                    assertEquals(BookieProtocol.EOK, rc);
+                    ackedEntries.computeIfAbsent(l, k -> new ArrayList<>()).add(e);
+                    acks.countDown();
+                }, null);
+                entry.release();
+            }
+        }
+        assertTrue(acks.await(30, TimeUnit.SECONDS));
+
+        for (long ledgerId = 0; ledgerId < NUM_LEDGERS; ledgerId++) {
+            assertEquals(expectedEntries(firstEntryId, count), ackedEntries.get(ledgerId));
+        }
+    }
+
+    private static List<Long> expectedEntries(long firstEntryId, int count) {
+        List<Long> entries = new ArrayList<>();
+        for (long entryId = firstEntryId; entryId < firstEntryId + count; entryId++) {
+            entries.add(entryId);
+        }
+        return entries;
+    }
+
+    /**
+     * Replay a stripe from its last log mark, as the bookie does when it starts.
+     *
+     * @return the entries of each ledger, in the order of the journal
+     */
+    private static Map<Long, List<Long>> replay(Journal journal) throws Exception {
+        LogMark mark = journal.getLastLogMark().getCurMark();
+        Map<Long, List<Long>> entries = new TreeMap<>();
+        for (long logId : Journal.listJournalIds(journal.getJournalDirectory(),
+                journalId -> journalId >= mark.getLogFileId())) {
+            long position = logId == mark.getLogFileId() ? mark.getLogFileOffset() : 0L;
+            journal.scanJournal(logId, position, (journalVersion, offset, entry) -> {
+                long ledgerId = entry.getLong(entry.position());
+                long entryId = entry.getLong(entry.position() + 8);
+                if (entryId >= 0) {
+                    entries.computeIfAbsent(ledgerId, k -> new ArrayList<>()).add(entryId);
+                }
+            });
+        }
+        return entries;
+    }
+
+    @Test
+    public void testStripeDirectories() throws Exception {
+        assertEquals(journalDir, Journal.getStripeDirectory(journalDir, 0));
+        assertEquals(new File(journalDir, "stripe-1"), Journal.getStripeDirectory(journalDir, 1));
+        assertEquals(new File(journalDir, "stripe-2"), Journal.getStripeDirectory(journalDir, 2));
+
+        assertEquals(1, Journal.getNumStripesInUse(journalDir));
+        startJournals();
+        assertEquals(NUM_STRIPES, Journal.getNumStripesInUse(journalDir));
+    }
+
+    @Test
+    public void testLedgersMapToOneJournal() {
+        int numJournals = 2 * NUM_STRIPES;
+        int[] ledgersPerJournal = new int[numJournals];
+        for (long ledgerId = 0; ledgerId < 600; ledgerId++) {
+            int index = BookieImpl.getJournalIndex(ledgerId, numJournals);
+            assertEquals(ledgerId % numJournals, index);
+            ledgersPerJournal[index]++;
+        }
+        for (int count : ledgersPerJournal) {
+            assertEquals(100, count);
+        }
+
+        // Negative ledger ids are never mapped outside of the journals
+        for (long ledgerId : new long[] { -1L, -7L, Long.MIN_VALUE, Long.MAX_VALUE }) {
+            int index = BookieImpl.getJournalIndex(ledgerId, numJournals);
+            assertTrue(index >= 0 && index < numJournals);
+            assertEquals(index, BookieImpl.getJournalIndex(ledgerId, numJournals));
+        }
+    }
+
+    @Test
+    public void testReplayAfterRestart() throws Exception {
+        startJournals();
+        addEntries(0, 20);
+        shutdownJournals();
+
+        // Restart: each stripe replays the entries of its own ledgers, in order
+        startJournals();
+        int replayedLedgers = 0;
+        for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+            Map<Long, List<Long>> replayed = replay(journals.get(stripe));
+            for (Map.Entry<Long, List<Long>> e : replayed.entrySet()) {
+                assertEquals(stripe, BookieImpl.getJournalIndex(e.getKey(), NUM_STRIPES));
+                assertEquals(expectedEntries(0, 20), e.getValue());
+            }
+            replayedLedgers += replayed.size();
+        }
+        assertEquals(NUM_LEDGERS, replayedLedgers);
+    }
+
+    @Test
+    public void testLastMarkOfEachStripe() throws Exception {
+        startJournals();
+        addEntries(0, 10);
+
+        // Only the second stripe is checkpointed
+        Journal checkpointed = journals.get(1);
+        Checkpoint checkpoint = checkpointed.newCheckpoint();
+        checkpointed.checkpointComplete(checkpoint, false);
+        assertTrue(new File(ledgerCurDir, "lastMark.stripe-1").exists());
+        assertFalse(new File(ledgerCurDir, "lastMark").exists());
+        assertFalse(new File(ledgerCurDir, "lastMark.stripe-2").exists());
+
+        addEntries(10, 10);
+        shutdownJournals();
+
+        startJournals();
+        for (int stripe = 0; stripe < NUM_STRIPES; stripe++) {
+            LastLogMark lastLogMark = journals.get(stripe).getLastLogMark();
+            assertEquals(stripe == 1, lastLogMark.getCurMark().getLogFileId() > 0);
+
+            // The checkpointed stripe only replays the entries added after its last mark
+            List<Long> expected = stripe == 1 ? expectedEntries(10, 10) : expectedEntries(0, 20);
+            Map<Long, List<Long>> replayed = replay(journals.get(stripe));
+            assertFalse(replayed.isEmpty());
+            for (Map.Entry<Long, List<Long>> e : replayed.entrySet()) {
+                assertEquals(stripe, BookieImpl.getJournalIndex(e.getKey(), NUM_STRIPES));
+                assertEquals(expected, e.getValue());
+            }
+        }
+    }
+
+    @Test
+    public void testLastMarkFileNamesWithMultipleDirectories() throws Exception {
+        File otherJournalDir = tmpDirs.newFolder("journal2");
+        conf.setJournalDirsName(new String[] { journalDir.getAbsolutePath(), otherJournalDir.getAbsolutePath() });
+
+        File stripeDir = Journal.getStripeDirectory(otherJournalDir, 2);
+        assertTrue(stripeDir.mkdirs());
+        Journal journal = new Journal(1, 2, NUM_STRIPES, stripeDir, conf, ledgerDirsManager,
+                NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT);
+        journals.add(journal);
+        journal.checkpointComplete(journal.newCheckpoint(), false);
+
+        // The name depends on the directory and stripe indexes, not on the number of stripes
+        assertTrue(new File(ledgerCurDir, "lastMark.1.stripe-2").exists());
+    }
+}
@@ -0,0 +1,425 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.bookkeeper.bookie.Bookie.NoEntryException;
+import org.apache.bookkeeper.bookie.EntryLogMetadata;
+import org.apache.bookkeeper.bookie.storage.CompactionEntryLog;
+import org.apache.bookkeeper.bookie.storage.EntryLogScanner;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link DirectEntryLogger}.
+ */
+public class DirectEntryLoggerTest {
+    private static final int MAX_ENTRY_SIZE = 16 * 1024;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private File ledgerDir;
+    private FileChannelNativeIO nativeIO;
+    private final List<DirectEntryLogger> loggers = new ArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        ledgerDir = tmpDir.newFolder("ledgers");
+        nativeIO = new FileChannelNativeIO();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        for (DirectEntryLogger logger : loggers) {
+            logger.close();
+        }
+    }
+
+    private DirectEntryLogger newLogger(long maxFileSize) throws IOException {
+        DirectEntryLogger logger = new DirectEntryLogger(ledgerDir, nativeIO, ByteBufAllocator.DEFAULT,
+                maxFileSize, MAX_ENTRY_SIZE, 64 * 1024, 4, 1000L, 16 * 1024, 16, 300,
+                NullStatsLogger.INSTANCE);
+        loggers.add(logger);
+        return logger;
+    }
+
+    private static ByteBuf makeEntry(long ledgerId, long entryId, int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        byte[] payload = ("ledger-" + ledgerId + "-entry-" + entryId).getBytes(StandardCharsets.UTF_8);
+        while (entry.writableBytes() > 0) {
+            entry.writeBytes(payload, 0, Math.min(payload.length, entry.writableBytes()));
+        }
+        return entry;
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, int size, ByteBuf read) {
+        try {
+            ByteBuf expected = makeEntry(ledgerId, entryId, size);
+            assertTrue("Wrong content for " + ledgerId + ":" + entryId, ByteBufUtil.equals(expected, read));
+        } finally {
+            read.release();
+        }
+    }
+
+    private static int entrySize(long entryId) {
+        return 100 + (int) (entryId * 37 % 3000);
+    }
+
+    @Test
+    public void testWriteAndRead() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+
+        Map<Long, Long> locations = new HashMap<>();
+        for (long entryId = 0; entryId < 100; entryId++) {
+            long ledgerId = entryId % 3;
+            locations.put(entryId, logger.addEntry(ledgerId, makeEntry(ledgerId, entryId, entrySize(entryId))));
+        }
+        logger.flush();
+
+        for (long entryId = 0; entryId < 100; entryId++) {
+            long ledgerId = entryId % 3;
+            long location = locations.get(entryId);
+            assertEntry(ledgerId, entryId, entrySize(entryId), logger.readEntry(ledgerId, entryId, location));
+            assertEntry(ledgerId, entryId, entrySize(entryId), logger.readEntry(location));
+        }
+
+        try {
+            logger.readEntry(5, 0, locations.get(0L)).release();
+            fail("Should have failed validating the entry");
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testReadsAreBoundedByWrittenData() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+
+        long location = logger.addEntry(1, makeEntry(1, 0, 200));
+        try {
+            logger.readEntry(1, 0, location).release();
+            fail("The entry is still in the write buffer");
+        } catch (NoEntryException e) {
+            // expected
+        }
+
+        logger.flush();
+        assertEntry(1, 0, 200, logger.readEntry(1, 0, location));
+    }
+
+    @Test
+    public void testRollover() throws Exception {
+        long maxFileSize = 64 * 1024;
+        DirectEntryLogger logger = newLogger(maxFileSize);
+
+        Map<Long, Long> locations = new HashMap<>();
+        Map<Long, Long> ledgerSizes = new HashMap<>();
+        for (long entryId = 0; entryId < 200; entryId++) {
+            long ledgerId = entryId % 4;
+            int size = entrySize(entryId);
+            long location = logger.addEntry(ledgerId, makeEntry(ledgerId, entryId, size));
+            locations.put(entryId, location);
+            assertTrue((location & 0xffffffffL) + size <= maxFileSize);
+        }
+        logger.flush();
+
+        Collection<Long> flushedLogIds = logger.getFlushedLogIds();
+        assertTrue("Expected the log to roll over", flushedLogIds.size() > 1);
+        long currentLogId = locations.get(199L) >> 32L;
+        assertFalse(flushedLogIds.contains(currentLogId));
+
+        for (long entryId = 0; entryId < 200; entryId++) {
+            long ledgerId = entryId % 4;
+            long location = locations.get(entryId);
+            assertEntry(ledgerId, entryId, entrySize(entryId), logger.readEntry(ledgerId, entryId, location));
+            if (location >> 32L != currentLogId) {
+                ledgerSizes.merge(location >> 32L << 8 | ledgerId, (long) entrySize(entryId) + Integer.BYTES,
+                        Long::sum);
+            }
+        }
+
+        // The sealed logs have a ledgers map index
+        for (long logId : flushedLogIds) {
+            EntryLogMetadata fromIndex = logger.readEntryLogMetadataFromIndex(logId);
+            for (long ledgerId = 0; ledgerId < 4; ledgerId++) {
+                long expected = ledgerSizes.getOrDefault(logId << 8 | ledgerId, 0L);
+                assertEquals(expected, fromIndex.getLedgersMap().get(ledgerId));
+            }
+        }
+
+        // A new logger continues after the existing logs
+        logger.close();
+        loggers.remove(logger);
+        DirectEntryLogger reopened = newLogger(maxFileSize);
+        long location = reopened.addEntry(9, makeEntry(9, 0, 100));
+        assertTrue((location >> 32L) > currentLogId);
+        assertEntry(199 % 4, 199, entrySize(199), reopened.readEntry(199 % 4, 199, locations.get(199L)));
+    }
+
+    @Test
+    public void testScanSkipsPadding() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+
+        List<Long> locations = new ArrayList<>();
+        for (long entryId = 0; entryId < 20; entryId++) {
+            locations.add(logger.addEntry(1, makeEntry(1, entryId, entrySize(entryId))));
+            // Each flush pads the write to the alignment
+            logger.flush();
+        }
+        long logId = locations.get(0) >> 32L;
+
+        List<Long> scanned = new ArrayList<>();
+        logger.scanEntryLog(logId, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return true;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) {
+                assertEquals(1, ledgerId);
+                long entryId = entry.getLong(8);
+                assertEquals(entrySize(entryId), entry.readableBytes());
+                scanned.add(entryId);
+            }
+        });
+        assertEquals(20, scanned.size());
+        for (int i = 0; i < 20; i++) {
+            assertEquals(i, (long) scanned.get(i));
+        }
+    }
+
+    @Test
+    public void testCompaction() throws Exception {
+        DirectEntryLogger logger = newLogger(32 * 1024);
+
+        Map<Long, Long> locations = new HashMap<>();
+        for (long entryId = 0; entryId < 40; entryId++) {
+            long ledgerId = entryId % 2;
+            locations.put(entryId, logger.addEntry(ledgerId, makeEntry(ledgerId, entryId, 1000)));
+        }
+        logger.flush();
+        long srcLogId = locations.get(0L) >> 32L;
+        assertTrue(logger.getFlushedLogIds().contains(srcLogId));
+
+        // Copy the entries of ledger 0 out of the first log
+        CompactionEntryLog compactionLog = logger.newCompactionLog(srcLogId);
+        Map<Long, Long> newLocations = new HashMap<>();
+        logger.scanEntryLog(srcLogId, new EntryLogScanner() {
+            @Override
+            public boolean accept(long ledgerId) {
+                return ledgerId == 0;
+            }
+
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) throws IOException {
+                newLocations.put(entry.getLong(8), compactionLog.addEntry(ledgerId, entry));
+            }
+        });
+        assertFalse(newLocations.isEmpty());
+        compactionLog.flush();
+        compactionLog.markCompacted();
+        compactionLog.makeAvailable();
+        compactionLog.finalizeAndCleanup();
+        assertTrue(logger.removeEntryLog(srcLogId));
+
+        assertFalse(logger.logExists(srcLogId));
+        assertTrue(logger.logExists(compactionLog.getDstLogId()));
+        for (Map.Entry<Long, Long> e : newLocations.entrySet()) {
+            assertEquals(compactionLog.getDstLogId(), e.getValue() >> 32L);
+            assertEntry(0, e.getKey(), 1000, logger.readEntry(0, e.getKey(), e.getValue()));
+        }
+
+        EntryLogMetadata meta = logger.getEntryLogMetadata(compactionLog.getDstLogId(), null);
+        assertEquals(newLocations.size() * 1004L, meta.getLedgersMap().get(0));
+        assertFalse(meta.containsLedger(1));
+        assertTrue(logger.incompleteCompactionLogs().isEmpty());
+    }
+
+    @Test
+    public void testRecoverCompactedLog() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+        long srcLogId = logger.addEntry(1, makeEntry(1, 0, 1000)) >> 32L;
+        logger.flush();
+
+        CompactionEntryLog compactionLog = logger.newCompactionLog(srcLogId);
+        long location = compactionLog.addEntry(1, makeEntry(1, 0, 1000));
+        compactionLog.flush();
+        compactionLog.markCompacted();
+
+        // A compaction log that was still being written when the bookie stopped
+        File compacting = new File(ledgerDir, "ff.log.compacting");
+        assertTrue(compacting.createNewFile());
+
+        logger.close();
+        loggers.remove(logger);
+
+        DirectEntryLogger recovered = newLogger(1024 * 1024);
+        Collection<CompactionEntryLog> incomplete = recovered.incompleteCompactionLogs();
+        assertFalse(compacting.exists());
+        assertEquals(1, incomplete.size());
+        CompactionEntryLog recoveredLog = incomplete.iterator().next();
+        assertEquals(srcLogId, recoveredLog.getSrcLogId());
+        assertEquals(compactionLog.getDstLogId(), recoveredLog.getDstLogId());
+
+        recoveredLog.makeAvailable();
+        recoveredLog.finalizeAndCleanup();
+        assertEntry(1, 0, 1000, recovered.readEntry(1, 0, location));
+    }
+
+    @Test
+    public void testRemovedLogKeepsReaderOpenForReadInProgress() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+        long location = logger.addEntry(1, makeEntry(1, 0, 500));
+        logger.flush();
+        File file = new File(ledgerDir, Long.toHexString(location >> 32L) + ".log");
+
+        DirectReader reader = new DirectReader(location >> 32L, file.toString(), ByteBufAllocator.DEFAULT,
+                nativeIO, 16 * 1024, () -> Long.MAX_VALUE);
+        int openFiles = nativeIO.openFiles();
+
+        // A read in progress holds a reference while the cache drops its own
+        assertTrue(reader.tryRetain());
+        reader.close();
+        assertEquals(500, reader.readIntAt((location & 0xffffffffL) - Integer.BYTES));
+        assertEquals(openFiles, nativeIO.openFiles());
+
+        reader.release();
+        assertEquals(openFiles - 1, nativeIO.openFiles());
+        assertFalse(reader.tryRetain());
+        try {
+            reader.readIntAt(0);
+            fail("The reader should be closed");
+        } catch (IOException e) {
+            // expected
+        }
+
+        // Reading again after the log was removed does not reuse the closed reader
+        assertEntry(1, 0, 500, logger.readEntry(1, 0, location));
+        assertTrue(logger.removeEntryLog(location >> 32L));
+        try {
+            logger.readEntry(1, 0, location).release();
+            fail("The log was removed");
+        } catch (IOException e) {
+            assertFalse(e.getMessage(), e.getMessage().contains("Reader is closed"));
+        }
+    }
+
+    @Test
+    public void testEntryLargerThanWriteBuffer() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+
+        // Larger than the sane size, and than the 64 KB write buffer
+        int largeSize = 150 * 1024 + 123;
+        long before = logger.addEntry(1, makeEntry(1, 0, 1000));
+        long large = logger.addEntry(1, makeEntry(1, 1, largeSize));
+        long after = logger.addEntry(1, makeEntry(1, 2, 1000));
+        logger.flush();
+
+        assertEntry(1, 0, 1000, logger.readEntry(1, 0, before));
+        assertEntry(1, 1, largeSize, logger.readEntry(1, 1, large));
+        assertEntry(1, 2, 1000, logger.readEntry(1, 2, after));
+
+        List<Long> scanned = new ArrayList<>();
+        logger.scanEntryLog(large >> 32L, new EntryLogScanner() {
+            @Override
+            public void process(long ledgerId, long offset, ByteBuf entry) {
+                scanned.add(entry.getLong(8));
+            }
+
+            @Override
+            public boolean accept(long ledgerId) {
+                return true;
+            }
+        });
+        assertEquals(Arrays.asList(0L, 1L, 2L), scanned);
+    }
+
+    @Test
+    public void testReadersOfEndedThreadsAreClosed() throws Exception {
+        DirectEntryLogger logger = newLogger(1024 * 1024);
+        long location = logger.addEntry(1, makeEntry(1, 0, 500));
+        logger.flush();
+        int openFiles = nativeIO.openFiles();
+
+        Thread reader = new Thread(() -> {
+            try {
+                assertEntry(1, 0, 500, logger.readEntry(1, 0, location));
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        });
+        reader.start();
+        reader.join();
+        // The reader stays cached for the thread
+        assertEquals(openFiles + 1, nativeIO.openFiles());
+
+        // The next thread starting to read closes it
+        assertEntry(1, 0, 500, logger.readEntry(1, 0, location));
+        assertEquals(openFiles + 1, nativeIO.openFiles());
+    }
+
+    @Test
+    public void testWriteBufferAcquireIsBounded() throws Exception {
+        try (BufferPool pool = new BufferPool(nativeIO, Buffer.ALIGNMENT, 1, 10L,
+                NullStatsLogger.INSTANCE.getOpStatsLogger("wait"))) {
+            Buffer buffer = pool.acquire();
+            assertEquals(0, pool.available());
+            try {
+                pool.acquire();
+                fail("The pool is empty");
+            } catch (IOException e) {
+                // expected
+            }
+            pool.release(buffer);
+            Buffer again = pool.acquire();
+            assertNotEquals(0, again.size());
+            pool.release(again);
+        }
+    }
+}
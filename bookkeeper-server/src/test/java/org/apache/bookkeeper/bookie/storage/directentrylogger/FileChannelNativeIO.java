@@ -0,0 +1,159 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.directentrylogger;
+
+import io.netty.util.internal.PlatformDependent;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.bookkeeper.common.util.nativeio.NativeIO;
+import org.apache.bookkeeper.common.util.nativeio.NativeIOException;
+
+/**
+ * {@link NativeIO} backed by file channels, so that the direct I/O entry logger can be tested
+ * where the native library is not available.
+ */
+public class FileChannelNativeIO implements NativeIO {
+    private final AtomicInteger nextFd = new AtomicInteger(100);
+    private final Map<Integer, FileChannel> channels = new ConcurrentHashMap<>();
+
+    int openFiles() {
+        return channels.size();
+    }
+
+    @Override
+    public int open(String pathname, int flags, int mode) throws NativeIOException {
+        int fd = nextFd.getAndIncrement();
+        File file = new File(pathname);
+        if (file.isDirectory()) {
+            // Only opened to check that the library is available
+            return fd;
+        }
+        if ((flags & O_CREAT) == 0 && !file.exists()) {
+            throw new NativeIOException("No such file " + pathname);
+        }
+        try {
+            String fileMode = (flags & O_RDONLY) != 0 ? "r" : "rw";
+            channels.put(fd, new RandomAccessFile(file, fileMode).getChannel());
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        return fd;
+    }
+
+    @Override
+    public int fsync(int fd) throws NativeIOException {
+        try {
+            channel(fd).force(true);
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        return 0;
+    }
+
+    @Override
+    public int fallocate(int fd, int mode, long offset, long len) throws NativeIOException {
+        try {
+            FileChannel channel = channel(fd);
+            if (channel.size() < offset + len) {
+                // Extending the file fills it with zeros, like the pre-allocated space
+                channel.write(ByteBuffer.wrap(new byte[1]), offset + len - 1);
+            }
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        return 0;
+    }
+
+    @Override
+    public int pwrite(int fd, long pointer, int count, long offset) throws NativeIOException {
+        byte[] data = new byte[count];
+        PlatformDependent.copyMemory(pointer, data, 0, count);
+        try {
+            return channel(fd).write(ByteBuffer.wrap(data), offset);
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long posix_memalign(int alignment, int size) throws NativeIOException {
+        throw new NativeIOException("posix_memalign is not supported");
+    }
+
+    @Override
+    public void free(long pointer) throws NativeIOException {
+        throw new NativeIOException("free is not supported");
+    }
+
+    @Override
+    public long lseek(int fd, long offset, int whence) throws NativeIOException {
+        try {
+            return whence == SEEK_END ? channel(fd).size() + offset : offset;
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+    }
+
+    @Override
+    public long pread(int fd, long pointer, long size, long offset) throws NativeIOException {
+        byte[] data = new byte[(int) size];
+        int read;
+        try {
+            read = channel(fd).read(ByteBuffer.wrap(data), offset);
+        } catch (IOException e) {
+            throw new NativeIOException(e.getMessage());
+        }
+        if (read <= 0) {
+            return 0;
+        }
+        PlatformDependent.copyMemory(data, 0, pointer, read);
+        return read;
+    }
+
+    @Override
+    public int close(int fd) throws NativeIOException {
+        FileChannel channel = channels.remove(fd);
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                throw new NativeIOException(e.getMessage());
+            }
+        }
+        return 0;
+    }
+
+    private FileChannel channel(int fd) throws NativeIOException {
+        FileChannel channel = channels.get(fd);
+        if (channel == null) {
+            throw new NativeIOException("Bad file descriptor " + fd);
+        }
+        return channel;
+    }
+}
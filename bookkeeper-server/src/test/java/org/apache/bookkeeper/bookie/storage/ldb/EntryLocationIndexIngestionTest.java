@@ -0,0 +1,259 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.bookie.EntryLocation;
+import org.apache.bookkeeper.bookie.storage.ldb.KeyValueStorageFactory.DbConfigType;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for the ingestion of the locations relocated by the compaction in {@link EntryLocationIndex}.
+ */
+public class EntryLocationIndexIngestionTest {
+
+    private static final int INGESTION_MIN_ENTRIES = 10;
+
+    @Rule
+    public TemporaryFolder tmpDir = new TemporaryFolder();
+
+    private String batchPath;
+    private String ingestionPath;
+    private EntryLocationIndex batchIndex;
+    private EntryLocationIndex ingestionIndex;
+
+    @Before
+    public void setUp() throws Exception {
+        batchPath = tmpDir.newFolder("batch").getAbsolutePath();
+        batchIndex = new EntryLocationIndex(new ServerConfiguration(), KeyValueStorageRocksDB.factory, batchPath,
+                NullStatsLogger.INSTANCE);
+
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setProperty(DbLedgerStorage.LOCATIONS_INGESTION_MIN_ENTRIES, INGESTION_MIN_ENTRIES);
+        ingestionPath = tmpDir.newFolder("ingestion").getAbsolutePath();
+        ingestionIndex = new EntryLocationIndex(conf, KeyValueStorageRocksDB.factory, ingestionPath,
+                NullStatsLogger.INSTANCE);
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        batchIndex.close();
+        ingestionIndex.close();
+    }
+
+    private File ingestionDir(String path) {
+        return new File(path, "locations-ingest");
+    }
+
+    private void assertIngestionDirEmpty(String path) {
+        String[] files = ingestionDir(path).list();
+        if (files != null) {
+            assertArrayEquals(new String[0], files);
+        }
+    }
+
+    private void addLocations(long ledgerId, int entries, long firstLocation) throws Exception {
+        for (int i = 0; i < entries; i++) {
+            batchIndex.addLocation(ledgerId, i, firstLocation + i);
+            ingestionIndex.addLocation(ledgerId, i, firstLocation + i);
+        }
+    }
+
+    private void assertSameLocations(long ledgerId, int entries) throws Exception {
+        for (int i = 0; i < entries; i++) {
+            assertEquals(batchIndex.getLocation(ledgerId, i), ingestionIndex.getLocation(ledgerId, i));
+        }
+        assertEquals(batchIndex.getLastEntryInLedger(ledgerId), ingestionIndex.getLastEntryInLedger(ledgerId));
+    }
+
+    @Test
+    public void testIngestionMatchesBatch() throws Exception {
+        addLocations(1, 100, 1000);
+        addLocations(2, 100, 2000);
+        addLocations(3, 100, 3000);
+
+        // Relocate the entries of ledger 3 and half of ledger 1, in no particular order
+        List<EntryLocation> newLocations = new ArrayList<>();
+        for (int i = 99; i >= 0; i--) {
+            newLocations.add(new EntryLocation(3, i, 30000 + i));
+        }
+        for (int i = 0; i < 100; i += 2) {
+            newLocations.add(new EntryLocation(1, i, 10000 + i));
+        }
+        Collections.shuffle(newLocations);
+        assertTrue(newLocations.size() >= INGESTION_MIN_ENTRIES);
+
+        batchIndex.updateLocations(newLocations);
+        ingestionIndex.updateLocations(newLocations);
+
+        for (long ledgerId = 1; ledgerId <= 3; ledgerId++) {
+            assertSameLocations(ledgerId, 100);
+        }
+        assertEquals(30042, ingestionIndex.getLocation(3, 42));
+        assertEquals(10042, ingestionIndex.getLocation(1, 42));
+        assertEquals(1043, ingestionIndex.getLocation(1, 43));
+        assertEquals(2042, ingestionIndex.getLocation(2, 42));
+
+        long[] locations = new long[5];
+        assertEquals(5, ingestionIndex.getLocations(1, 10, locations));
+        assertArrayEquals(new long[] {10010, 1011, 10012, 1013, 10014}, locations);
+        assertIngestionDirEmpty(ingestionPath);
+    }
+
+    @Test
+    public void testLastDuplicateWins() throws Exception {
+        addLocations(1, 20, 1000);
+
+        List<EntryLocation> newLocations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            newLocations.add(new EntryLocation(1, i, 10000 + i));
+        }
+        // Entries relocated again by a later compaction in the same set
+        newLocations.add(new EntryLocation(1, 5, 50000));
+        newLocations.add(new EntryLocation(1, 19, 50019));
+        newLocations.add(new EntryLocation(1, 5, 60000));
+
+        batchIndex.updateLocations(newLocations);
+        ingestionIndex.updateLocations(newLocations);
+
+        assertSameLocations(1, 20);
+        assertEquals(60000, ingestionIndex.getLocation(1, 5));
+        assertEquals(50019, ingestionIndex.getLocation(1, 19));
+        assertEquals(10006, ingestionIndex.getLocation(1, 6));
+        assertIngestionDirEmpty(ingestionPath);
+    }
+
+    @Test
+    public void testIngestionOverMemtable() throws Exception {
+        // Only in the memtable, nothing was flushed to the disk yet
+        addLocations(1, 20, 1000);
+
+        List<EntryLocation> newLocations = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            newLocations.add(new EntryLocation(1, i, 10000 + i));
+        }
+        ingestionIndex.updateLocations(newLocations);
+
+        // Writes after the ingestion override it
+        ingestionIndex.addLocation(1, 3, 99);
+        assertEquals(99, ingestionIndex.getLocation(1, 3));
+        for (int i = 0; i < 20; i++) {
+            if (i != 3) {
+                assertEquals(10000 + i, ingestionIndex.getLocation(1, i));
+            }
+        }
+        assertEquals(19, ingestionIndex.getLastEntryInLedger(1));
+    }
+
+    @Test
+    public void testSmallUpdatesUseBatch() throws Exception {
+        addLocations(1, 20, 1000);
+
+        List<EntryLocation> newLocations = Arrays.asList(new EntryLocation(1, 1, 10001),
+                new EntryLocation(1, 2, 10002));
+        ingestionIndex.updateLocations(newLocations);
+        assertEquals(10001, ingestionIndex.getLocation(1, 1));
+        assertEquals(10002, ingestionIndex.getLocation(1, 2));
+        assertFalse(ingestionDir(ingestionPath).exists());
+    }
+
+    @Test
+    public void testSortedWriter() throws Exception {
+        String path = tmpDir.newFolder().getAbsolutePath();
+        KeyValueStorage storage = KeyValueStorageRocksDB.factory.newKeyValueStorage(path, "test",
+                DbConfigType.Default, new ServerConfiguration());
+        File ingestionDir = new File(path, "test-ingest");
+        try {
+            // An empty writer commits nothing
+            try (KeyValueStorage.SortedWriter writer = storage.newSortedWriter()) {
+                writer.commit();
+            }
+            assertEquals(0, ingestionDir.list().length);
+
+            // A writer closed without committing leaves nothing behind
+            try (KeyValueStorage.SortedWriter writer = storage.newSortedWriter()) {
+                writer.put(key(1, 1), key(1, 1));
+            }
+            assertEquals(0, ingestionDir.list().length);
+            assertNull(storage.get(key(1, 1)));
+
+            storage.put(key(1, 1), key(0, 0));
+            try (KeyValueStorage.SortedWriter writer = storage.newSortedWriter()) {
+                writer.put(key(1, 1), key(1, 1));
+                writer.put(key(1, 2), key(1, 2));
+                writer.commit();
+            }
+            assertEquals(0, ingestionDir.list().length);
+            assertArrayEquals(key(1, 1), storage.get(key(1, 1)));
+            assertArrayEquals(key(1, 2), storage.get(key(1, 2)));
+        } finally {
+            storage.close();
+        }
+    }
+
+    @Test
+    public void testLeftoverFilesDeletedOnOpen() throws Exception {
+        String path = tmpDir.newFolder().getAbsolutePath();
+        KeyValueStorage storage = KeyValueStorageRocksDB.factory.newKeyValueStorage(path, "test",
+                DbConfigType.Default, new ServerConfiguration());
+        File ingestionDir = new File(path, "test-ingest");
+
+        // A writer interrupted by a crash, before being closed
+        KeyValueStorage.SortedWriter writer = storage.newSortedWriter();
+        writer.put(key(1, 1), key(1, 1));
+        assertEquals(1, ingestionDir.list().length);
+        storage.close();
+
+        storage = KeyValueStorageRocksDB.factory.newKeyValueStorage(path, "test",
+                DbConfigType.Default, new ServerConfiguration());
+        try {
+            assertEquals(0, ingestionDir.list().length);
+            assertNull(storage.get(key(1, 1)));
+        } finally {
+            storage.close();
+        }
+    }
+
+    private static byte[] key(long first, long second) {
+        LongPairWrapper wrapper = LongPairWrapper.get(first, second);
+        try {
+            return wrapper.array.clone();
+        } finally {
+            wrapper.recycle();
+        }
+    }
+}
@@ -0,0 +1,339 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledHeapByteBuf;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ReadCache}.
+ */
+public class ReadCacheTest {
+
+    @Test
+    public void simple() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 10 * 1024);
+
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[1024]);
+        cache.put(1, 0, entry);
+
+        assertEquals(1, cache.count());
+        assertEquals(1024, cache.size());
+
+        assertEquals(entry, cache.get(1, 0));
+        assertNull(cache.get(1, 1));
+
+        for (int i = 1; i < 10; i++) {
+            cache.put(1, i, entry);
+        }
+
+        assertEquals(10, cache.count());
+        assertEquals(10 * 1024, cache.size());
+
+        cache.put(1, 10, entry);
+
+        // First half of entries will have been evicted
+        for (int i = 0; i < 5; i++) {
+            assertNull(cache.get(1, i));
+            assertFalse(cache.hasEntry(1, i));
+        }
+
+        for (int i = 5; i < 11; i++) {
+            assertEquals(entry, cache.get(1, i));
+            assertTrue(cache.hasEntry(1, i));
+        }
+
+        cache.close();
+    }
+
+    @Test
+    public void emptyCache() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 10 * 1024);
+
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+        assertNull(cache.get(0, 0));
+
+        cache.close();
+    }
+
+    @Test
+    public void multipleSegments() {
+        // Test with multiple smaller segments
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 10 * 1024, 2 * 1024);
+
+        assertEquals(0, cache.count());
+        assertEquals(0, cache.size());
+
+        for (int i = 0; i < 10; i++) {
+            ByteBuf entry = Unpooled.wrappedBuffer(new byte[1024]);
+            entry.setInt(0, i);
+            cache.put(1, i, entry);
+        }
+
+        for (int i = 0; i < 10; i++) {
+            ByteBuf res = cache.get(1, i);
+            assertEquals(1, res.refCnt());
+
+            assertEquals(1024, res.readableBytes());
+            assertEquals(i, res.getInt(0));
+        }
+
+        assertEquals(10, cache.count());
+        assertEquals(10 * 1024, cache.size());
+
+        // Putting one more entry, should trigger the 1st segment rollover
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[1024]);
+        cache.put(2, 0, entry);
+
+        assertEquals(9 * 1024, cache.size());
+
+        cache.close();
+    }
+
+    @Test
+    public void countExcludesRecycledSegments() {
+        // 4 segments of 1 KB, holding 4 entries each
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 4 * 1024, 1024);
+
+        for (int i = 0; i < 16; i++) {
+            cache.put(1, i, Unpooled.wrappedBuffer(new byte[256]));
+        }
+        assertEquals(16, cache.count());
+
+        // Wrapping around recycles the 1st segment
+        cache.put(1, 16, Unpooled.wrappedBuffer(new byte[256]));
+        assertEquals(13, cache.count());
+
+        // And the 2nd one
+        for (int i = 17; i < 21; i++) {
+            cache.put(1, i, Unpooled.wrappedBuffer(new byte[256]));
+        }
+        assertEquals(13, cache.count());
+        for (int i = 0; i < 8; i++) {
+            assertFalse(cache.hasEntry(1, i));
+        }
+        for (int i = 8; i < 21; i++) {
+            assertTrue(cache.hasEntry(1, i));
+        }
+
+        cache.close();
+    }
+
+    @Test
+    public void testCloseStopsCleanupThread() throws Exception {
+        // 4 segments of 1 KB, wrapped around a few times to schedule the cleanup of the recycled segments
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 4 * 1024, 1024);
+        for (int i = 0; i < 64; i++) {
+            cache.put(1, i, Unpooled.wrappedBuffer(new byte[256]));
+        }
+        cache.close();
+
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (cleanupThreadAlive()) {
+            assertTrue("The cleanup thread is still running", System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static boolean cleanupThreadAlive() {
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("read-cache-cleanup") && thread.isAlive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testEntryLargerThanSegment() {
+        ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 2 * 1024, 1024);
+
+        cache.put(1, 0, Unpooled.wrappedBuffer(new byte[2048]));
+
+        assertNull(cache.get(1, 0));
+        assertEquals(0, cache.count());
+
+        cache.close();
+    }
+
+    @Test
+    public void testConcurrentPutAndGet() throws Exception {
+        // Small segments, so that the cache rolls over many times while the writers and readers run
+        final int numThreads = 8;
+        final int entriesPerThread = 20_000;
+        final ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 8 * 1024, 2 * 1024);
+
+        final CyclicBarrier barrier = new CyclicBarrier(2 * numThreads);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final AtomicInteger hits = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+
+        for (int t = 0; t < numThreads; t++) {
+            final long ledgerId = t;
+            threads.add(new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        cache.put(ledgerId, i, newEntry(ledgerId, i));
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+            threads.add(new Thread(() -> {
+                try {
+                    barrier.await();
+                    for (int i = 0; i < entriesPerThread; i++) {
+                        long entryId = ThreadLocalRandom.current().nextInt(entriesPerThread);
+                        ByteBuf res = cache.get(ledgerId, entryId);
+                        if (res != null) {
+                            try {
+                                checkEntry(ledgerId, entryId, res);
+                                hits.incrementAndGet();
+                            } finally {
+                                res.release();
+                            }
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            }));
+        }
+
+        threads.forEach(Thread::start);
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        if (failure.get() != null) {
+            throw new AssertionError("Concurrent access failed", failure.get());
+        }
+
+        // The entries still in the cache are the right ones
+        for (long ledgerId = 0; ledgerId < numThreads; ledgerId++) {
+            for (long entryId = entriesPerThread - 10; entryId < entriesPerThread; entryId++) {
+                ByteBuf res = cache.get(ledgerId, entryId);
+                if (res != null) {
+                    checkEntry(ledgerId, entryId, res);
+                    res.release();
+                }
+            }
+        }
+
+        cache.close();
+    }
+
+    @Test
+    public void testRolloverSkipsSegmentWithStalledWriter() throws Exception {
+        // 2 segments of 1 KB
+        final ReadCache cache = new ReadCache(ByteBufAllocator.DEFAULT, 2 * 1024, 1024);
+
+        // A writer that stalls while copying its entry in the 1st segment
+        CountDownLatch copying = new CountDownLatch(1);
+        CountDownLatch resume = new CountDownLatch(1);
+        ByteBuf stalledEntry = new UnpooledHeapByteBuf(ByteBufAllocator.DEFAULT, 512, 512) {
+            @Override
+            public boolean hasArray() {
+                // Force the copy to go through getBytes()
+                return false;
+            }
+
+            @Override
+            public ByteBuf getBytes(int index, ByteBuf dst, int dstIndex, int length) {
+                copying.countDown();
+                try {
+                    resume.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.getBytes(index, dst, dstIndex, length);
+            }
+        };
+        stalledEntry.writerIndex(512);
+        Thread writer = new Thread(() -> cache.put(1, 0, stalledEntry));
+        writer.start();
+        copying.await();
+
+        // Fill the 1st segment and the 2nd one
+        for (int i = 1; i <= 3; i++) {
+            cache.put(1, i, Unpooled.wrappedBuffer(new byte[512]));
+        }
+
+        // Rolling over to the 1st segment again doesn't wait for the stalled writer, the entry is not cached
+        cache.put(1, 4, Unpooled.wrappedBuffer(new byte[512]));
+        assertFalse(cache.hasEntry(1, 4));
+        for (int i = 2; i <= 3; i++) {
+            assertTrue(cache.hasEntry(1, i));
+        }
+
+        resume.countDown();
+        writer.join();
+
+        // Once the writer is done, the segment gets recycled
+        cache.put(1, 5, Unpooled.wrappedBuffer(new byte[512]));
+        assertTrue(cache.hasEntry(1, 5));
+        assertFalse(cache.hasEntry(1, 0));
+        assertFalse(cache.hasEntry(1, 1));
+
+        cache.close();
+    }
+
+    private static ByteBuf newEntry(long ledgerId, long entryId) {
+        // Entries of different sizes, which are not multiple of the alignment
+        int size = 16 + (int) ((ledgerId * 31 + entryId) % 200);
+        ByteBuf entry = Unpooled.buffer(size, size);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entryId));
+        }
+        return entry;
+    }
+
+    private static void checkEntry(long ledgerId, long entryId, ByteBuf res) {
+        ByteBuf expected = newEntry(ledgerId, entryId);
+        assertNotNull(res);
+        assertEquals("Corrupted entry " + ledgerId + "@" + entryId, expected, res);
+    }
+}
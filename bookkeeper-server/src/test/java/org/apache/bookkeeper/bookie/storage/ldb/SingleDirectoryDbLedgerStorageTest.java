@@ -0,0 +1,358 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.FileRegion;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.bookie.BookieImpl;
+import org.apache.bookkeeper.bookie.CheckpointSource;
+import org.apache.bookkeeper.bookie.CheckpointSource.Checkpoint;
+import org.apache.bookkeeper.bookie.LedgerDirsManager;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.DiskChecker;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link SingleDirectoryDbLedgerStorage}.
+ */
+public class SingleDirectoryDbLedgerStorageTest {
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private ServerConfiguration conf;
+    private File curDir;
+    private LedgerDirsManager ledgerDirsManager;
+    private TestCheckpointSource checkpointSource;
+    private SingleDirectoryDbLedgerStorage storage;
+
+    /**
+     * Checkpoint source handing out increasing checkpoints and recording the completed ones.
+     */
+    private static class TestCheckpointSource implements CheckpointSource {
+        private final AtomicLong nextCheckpoint = new AtomicLong();
+        private final List<Long> completed = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Checkpoint newCheckpoint() {
+            return new TestCheckpoint(nextCheckpoint.incrementAndGet());
+        }
+
+        @Override
+        public void checkpointComplete(Checkpoint checkpoint, boolean compact) {
+            completed.add(((TestCheckpoint) checkpoint).mark);
+        }
+    }
+
+    private static class TestCheckpoint implements Checkpoint {
+        private final long mark;
+
+        TestCheckpoint(long mark) {
+            this.mark = mark;
+        }
+
+        @Override
+        public int compareTo(Checkpoint o) {
+            if (o == Checkpoint.MAX) {
+                return -1;
+            } else if (o == Checkpoint.MIN) {
+                return 1;
+            }
+            return Long.compare(mark, ((TestCheckpoint) o).mark);
+        }
+    }
+
+    @Before
+    public void setup() throws Exception {
+        File ledgerDir = tmpDirs.newFolder("ledgers");
+        curDir = BookieImpl.getCurrentDirectory(ledgerDir);
+        assertTrue(curDir.mkdirs());
+
+        conf = new ServerConfiguration();
+        conf.setLedgerDirNames(new String[] { ledgerDir.getAbsolutePath() });
+        // The bookie id of the garbage collector is resolved from the local address
+        conf.setAllowLoopback(true);
+        conf.setEntryLogPerLedgerEnabled(true);
+        // New entry logs can only be created in writable directories
+        conf.setEntryLogFilePreAllocationEnabled(false);
+        conf.setMinUsableSizeForEntryLogCreation(Long.MAX_VALUE);
+        conf.setProperty(DbLedgerStorage.FLUSH_WORKER_THREADS, 2);
+
+        checkpointSource = new TestCheckpointSource();
+        storage = newStorage();
+    }
+
+    @After
+    public void teardown() throws Exception {
+        if (storage != null) {
+            storage.shutdown();
+        }
+    }
+
+    private SingleDirectoryDbLedgerStorage newStorage() throws IOException {
+        ledgerDirsManager = new LedgerDirsManager(conf, conf.getLedgerDirs(),
+                new DiskChecker(conf.getDiskUsageThreshold(), conf.getDiskUsageWarnThreshold()));
+        SingleDirectoryDbLedgerStorage storage = new SingleDirectoryDbLedgerStorage(conf, null, ledgerDirsManager,
+                ledgerDirsManager, NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT, null,
+                4 * 1024 * 1024, 4 * 1024 * 1024, 100);
+        storage.setCheckpointSource(checkpointSource);
+        return storage;
+    }
+
+    private static ByteBuf entry(long ledgerId, long entryId) {
+        ByteBuf entry = Unpooled.buffer(1024);
+        entry.writeLong(ledgerId);
+        entry.writeLong(entryId);
+        entry.writeLong(entryId - 1); // lac
+        while (entry.isWritable()) {
+            entry.writeByte((int) (ledgerId + entryId));
+        }
+        return entry;
+    }
+
+    private void addEntries(long ledgerId, int count) throws Exception {
+        addEntries(ledgerId, 0, count);
+    }
+
+    private void addEntries(long ledgerId, int firstEntryId, int count) throws Exception {
+        storage.setMasterKey(ledgerId, "key".getBytes());
+        for (int i = firstEntryId; i < firstEntryId + count; i++) {
+            storage.addEntry(entry(ledgerId, i));
+        }
+    }
+
+    private void assertEntries(long ledgerId, int count) throws Exception {
+        for (int i = 0; i < count; i++) {
+            assertEntry(ledgerId, i, storage.getEntry(ledgerId, i));
+        }
+    }
+
+    private static void assertEntry(long ledgerId, long entryId, ByteBuf entry) {
+        ByteBuf expected = entry(ledgerId, entryId);
+        try {
+            assertEquals(expected, entry);
+        } finally {
+            expected.release();
+            entry.release();
+        }
+    }
+
+    @Test
+    public void testFlushWorkersRequireEntryLogPerLedger() throws Exception {
+        ServerConfiguration singleLogConf = new ServerConfiguration(conf);
+        singleLogConf.setEntryLogPerLedgerEnabled(false);
+        try {
+            new SingleDirectoryDbLedgerStorage(singleLogConf, null, ledgerDirsManager, ledgerDirsManager,
+                    NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT, null, 1024 * 1024, 1024 * 1024, 100);
+            fail("Flush workers sharing a single entry log should be rejected");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+
+        ServerConfiguration directIOConf = new ServerConfiguration(conf);
+        directIOConf.setDirectIOEntryLoggerEnabled(true);
+        try {
+            new SingleDirectoryDbLedgerStorage(directIOConf, null, ledgerDirsManager, ledgerDirsManager,
+                    NullStatsLogger.INSTANCE, ByteBufAllocator.DEFAULT, null, 1024 * 1024, 1024 * 1024, 100);
+            fail("Flush workers are not supported by the direct IO entry logger");
+        } catch (IllegalArgumentException e) {
+            // Expected
+        }
+    }
+
+    @Test
+    public void testFlushWithWorkers() throws Exception {
+        for (long ledgerId = 1; ledgerId <= 8; ledgerId++) {
+            addEntries(ledgerId, 10);
+        }
+        storage.flush();
+
+        assertFalse(storage.isFlushRequired());
+        assertTrue(storage.writeCacheBeingFlushed.isEmpty());
+        assertEquals(1, checkpointSource.completed.size());
+
+        // Read back from the entry logs after a restart
+        storage.shutdown();
+        storage = newStorage();
+        for (long ledgerId = 1; ledgerId <= 8; ledgerId++) {
+            assertEntries(ledgerId, 10);
+        }
+    }
+
+    @Test
+    public void testOlderCheckpointDoesNotFlush() throws Exception {
+        addEntries(1, 10);
+        Checkpoint old = checkpointSource.newCheckpoint();
+        storage.flush();
+
+        addEntries(2, 10);
+        // The entries added before this checkpoint are already persisted
+        storage.checkpoint(old);
+        assertTrue(storage.isFlushRequired());
+
+        storage.checkpoint(checkpointSource.newCheckpoint());
+        assertFalse(storage.isFlushRequired());
+    }
+
+    @Test
+    public void testWorkerFailingMidCheckpoint() throws Exception {
+        // Ledger 1 gets its entry log while the directory is writable
+        addEntries(1, 10);
+        storage.flush();
+        assertEquals(1, checkpointSource.completed.size());
+
+        // Two ledgers of the same size, split between the flushing thread and the flush worker
+        addEntries(1, 10, 20);
+        addEntries(2, 20);
+
+        // Once the directory is full, ledger 1 keeps its entry log but no new one can be created for
+        // ledger 2, which is the range of the flush worker
+        ledgerDirsManager.addToFilledDirs(curDir);
+        try {
+            storage.flush();
+            fail("The flush should have failed");
+        } catch (IOException e) {
+            // Expected
+        }
+
+        // The checkpoint is not marked and the entries are kept in the cache being flushed
+        assertEquals(1, checkpointSource.completed.size());
+        assertFalse(storage.writeCacheBeingFlushed.isEmpty());
+        assertEntries(1, 30);
+        assertEntries(2, 20);
+
+        // Entries added after the failure are flushed along with the ones that were left behind
+        addEntries(3, 20);
+        ledgerDirsManager.addToWritableDirs(curDir, true);
+        storage.flush();
+
+        assertEquals(2, checkpointSource.completed.size());
+        assertFalse(storage.isFlushRequired());
+        assertTrue(storage.writeCacheBeingFlushed.isEmpty());
+
+        storage.shutdown();
+        storage = newStorage();
+        assertEntries(1, 30);
+        assertEntries(2, 20);
+        assertEntries(3, 20);
+    }
+
+    @Test
+    public void testAsyncReads() throws Exception {
+        storage.shutdown();
+        conf.setProperty(DbLedgerStorage.READ_IO_THREADS, 2);
+        storage = newStorage();
+
+        addEntries(1, 10);
+        // Served by the write cache
+        assertEntry(1, 0, storage.getEntryAsync(1, 0).get());
+
+        storage.flush();
+
+        // Read from the entry logs on the read I/O threads
+        List<CompletableFuture<ByteBuf>> reads = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            reads.add(storage.getEntryAsync(1, i));
+        }
+        for (int i = 0; i < 10; i++) {
+            assertEntry(1, i, reads.get(i).get());
+        }
+
+        try {
+            storage.getEntryAsync(1, 10).get();
+            fail("The entry should not exist");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof Bookie.NoEntryException);
+        }
+    }
+
+    @Test
+    public void testAsyncReadsAreRejectedWhenTheQueueIsFull() throws Exception {
+        storage.shutdown();
+        conf.setProperty(DbLedgerStorage.READ_IO_THREADS, 1);
+        conf.setProperty(DbLedgerStorage.READ_IO_MAX_QUEUE_DEPTH, 0);
+        storage = newStorage();
+
+        addEntries(1, 10);
+        // The cache hits are never queued
+        assertEntry(1, 0, storage.getEntryAsync(1, 0).get());
+
+        storage.flush();
+
+        // The reads that need the disk are rejected rather than executed by the caller
+        try {
+            storage.getEntryAsync(1, 5).get();
+            fail("The read should have been rejected");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BookieException.OperationRejectedException);
+        }
+
+        // The synchronous reads are not affected
+        assertEntries(1, 10);
+    }
+
+    @Test
+    public void testGetEntryRegion() throws Exception {
+        addEntries(1, 2);
+        // Served by the write cache
+        assertNull(storage.getEntryRegion(1, 0, 1024));
+
+        storage.flush();
+        // Below the minimum size
+        assertNull(storage.getEntryRegion(1, 0, 1025));
+        FileRegion region = storage.getEntryRegion(1, 0, 1024);
+        assertNotNull(region);
+        assertEquals(1024, region.count());
+        region.release();
+
+        // Served by the read cache, once read the regular way
+        assertEntry(1, 1, storage.getEntry(1, 1));
+        assertNull(storage.getEntryRegion(1, 1, 1024));
+
+        // The regular read reports the missing entries
+        assertNull(storage.getEntryRegion(1, 2, 1024));
+        assertNull(storage.getEntryRegion(2, 0, 1024));
+    }
+}
@@ -0,0 +1,139 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+
+import org.apache.bookkeeper.stats.Counter;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for the adaptive read-ahead of {@link TransientLedgerInfo}.
+ */
+public class TransientLedgerInfoTest {
+
+    private static final int INITIAL_WINDOW = 10;
+    private static final int MAX_WINDOW = 40;
+    private static final int ENTRY_SIZE = 100;
+
+    private TransientLedgerInfo ledgerInfo;
+    private Counter wastedBytes;
+
+    @Before
+    public void setup() {
+        ledgerInfo = new TransientLedgerInfo(1L, null);
+        wastedBytes = mock(Counter.class);
+    }
+
+    private int miss(long entryId) {
+        return ledgerInfo.recordReadCacheMiss(entryId, INITIAL_WINDOW, MAX_WINDOW, wastedBytes);
+    }
+
+    /**
+     * Simulate the read-ahead after a miss and read all the entries it loaded.
+     *
+     * @return the next entry, which is not in the read cache
+     */
+    private long readAheadAndReadAll(long missedEntryId, int window) {
+        ledgerInfo.recordReadAhead(missedEntryId + 1, window, (long) window * ENTRY_SIZE);
+        for (long e = missedEntryId + 1; e <= missedEntryId + window; e++) {
+            assertTrue(ledgerInfo.recordReadCacheHit(e));
+        }
+        return missedEntryId + window + 1;
+    }
+
+    @Test
+    public void testWindowGrowsOnSequentialReads() {
+        long entryId = 0;
+        assertEquals(INITIAL_WINDOW, miss(entryId));
+        entryId = readAheadAndReadAll(entryId, INITIAL_WINDOW);
+
+        assertEquals(2 * INITIAL_WINDOW, miss(entryId));
+        entryId = readAheadAndReadAll(entryId, 2 * INITIAL_WINDOW);
+
+        assertEquals(4 * INITIAL_WINDOW, miss(entryId));
+        entryId = readAheadAndReadAll(entryId, 4 * INITIAL_WINDOW);
+
+        // Capped to the max window
+        assertEquals(MAX_WINDOW, miss(entryId));
+        entryId = readAheadAndReadAll(entryId, MAX_WINDOW);
+        assertEquals(MAX_WINDOW, miss(entryId));
+
+        // Everything that was read ahead has been used
+        verify(wastedBytes, never()).add(anyLong());
+    }
+
+    @Test
+    public void testWindowShrinksOnRandomReads() {
+        assertEquals(INITIAL_WINDOW, miss(0));
+        long entryId = readAheadAndReadAll(0, INITIAL_WINDOW);
+        assertEquals(2 * INITIAL_WINDOW, miss(entryId));
+
+        // Only 5 of the 20 entries read ahead are used before jumping somewhere else
+        ledgerInfo.recordReadAhead(entryId + 1, 2 * INITIAL_WINDOW, 2 * INITIAL_WINDOW * ENTRY_SIZE);
+        for (long e = entryId + 1; e <= entryId + 5; e++) {
+            assertTrue(ledgerInfo.recordReadCacheHit(e));
+        }
+        assertEquals(0, miss(1000));
+        verify(wastedBytes).add(15 * ENTRY_SIZE);
+
+        // Read-ahead stays disabled while the reads are random
+        assertEquals(0, miss(10));
+        assertEquals(0, miss(500));
+
+        // A repeated read of the same entry keeps the window as it is
+        assertEquals(0, miss(500));
+
+        // Going sequential again restarts from the initial window
+        assertEquals(INITIAL_WINDOW, miss(501));
+        assertEquals(2 * INITIAL_WINDOW, miss(502));
+    }
+
+    @Test
+    public void testRandomReadAfterReadAheadIsNotCountedAsHit() {
+        assertEquals(INITIAL_WINDOW, miss(0));
+        ledgerInfo.recordReadAhead(1, INITIAL_WINDOW, INITIAL_WINDOW * ENTRY_SIZE);
+
+        // Entries in the read cache that were not loaded by the last read-ahead
+        assertFalse(ledgerInfo.recordReadCacheHit(0));
+        assertTrue(ledgerInfo.recordReadCacheHit(INITIAL_WINDOW));
+        assertFalse(ledgerInfo.recordReadCacheHit(INITIAL_WINDOW + 1));
+
+        // The hits move the position of the reader: the next entry continues the sequential scan
+        assertEquals(2 * INITIAL_WINDOW, miss(INITIAL_WINDOW + 2));
+    }
+
+    @Test
+    public void testEmptyReadAheadIsNotWasted() {
+        assertEquals(INITIAL_WINDOW, miss(0));
+        // The read-ahead stopped at the end of the ledger
+        ledgerInfo.recordReadAhead(1, 0, 0);
+        assertEquals(2 * INITIAL_WINDOW, miss(1));
+        verify(wastedBytes, never()).add(anyLong());
+    }
+}
@@ -0,0 +1,257 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.bookie.storage.ldb;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link WriteCache}.
+ */
+public class WriteCacheTest {
+
+    private static final int ENTRY_SIZE = 1024;
+
+    private WriteCache cache;
+    private ExecutorService executor;
+
+    @Before
+    public void setup() {
+        cache = new WriteCache(ByteBufAllocator.DEFAULT, 1024 * 1024, 64 * 1024);
+        executor = Executors.newFixedThreadPool(3);
+    }
+
+    @After
+    public void teardown() {
+        cache.close();
+        executor.shutdownNow();
+    }
+
+    private void fill(int ledgers, int entriesPerLedger) {
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]);
+        // Insert out of order, the scan has to sort the entries
+        for (int e = entriesPerLedger - 1; e >= 0; e--) {
+            for (int l = ledgers; l > 0; l--) {
+                entry.setLong(0, l);
+                entry.setLong(8, e);
+                assertTrue(cache.put(l, e, entry));
+            }
+        }
+    }
+
+    @Test
+    public void testSinglePartitionScansInOrder() {
+        fill(5, 10);
+
+        List<long[]> visited = new ArrayList<>();
+        cache.forEach((ledgerId, entryId, entry) -> {
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            visited.add(new long[] { ledgerId, entryId });
+        });
+
+        assertEquals(50, visited.size());
+        for (int i = 0; i < visited.size(); i++) {
+            assertEquals(1 + i / 10, visited.get(i)[0]);
+            assertEquals(i % 10, visited.get(i)[1]);
+        }
+    }
+
+    @Test
+    public void testPartitionsAreContiguousLedgerRanges() {
+        fill(20, 10);
+
+        Map<Integer, List<long[]>> partitions = new ConcurrentHashMap<>();
+        Map<Integer, Thread> threads = new ConcurrentHashMap<>();
+        cache.forEach(4, executor, (partition, ledgerId, entryId, entry) -> {
+            assertEquals(ledgerId, entry.getLong(entry.readerIndex()));
+            assertEquals(entryId, entry.getLong(entry.readerIndex() + 8));
+            assertEquals(ENTRY_SIZE, entry.readableBytes());
+            threads.putIfAbsent(partition, Thread.currentThread());
+            assertSame(threads.get(partition), Thread.currentThread());
+            partitions.computeIfAbsent(partition, p -> new ArrayList<>()).add(new long[] { ledgerId, entryId });
+        });
+
+        // Same-sized ledgers are spread evenly
+        assertEquals(4, partitions.size());
+        assertSame(Thread.currentThread(), threads.get(0));
+
+        Map<Long, Integer> ledgerPartition = new HashMap<>();
+        long lastLedger = 0;
+        int visited = 0;
+        for (int p = 0; p < 4; p++) {
+            List<long[]> entries = partitions.get(p);
+            assertEquals(50, entries.size());
+            long[] previous = null;
+            for (long[] e : entries) {
+                // Each ledger is entirely in a single partition
+                Integer existing = ledgerPartition.putIfAbsent(e[0], p);
+                assertTrue(existing == null || existing == p);
+                // Partitions are ordered ranges of ledgers and entries are sorted within them
+                assertTrue(e[0] >= lastLedger);
+                if (previous != null) {
+                    assertTrue(e[0] > previous[0] || (e[0] == previous[0] && e[1] == previous[1] + 1));
+                }
+                previous = e;
+                lastLedger = e[0];
+                visited++;
+            }
+        }
+        assertEquals(200, visited);
+        assertEquals(20, ledgerPartition.size());
+    }
+
+    @Test
+    public void testLedgerIsNeverSplitAcrossPartitions() {
+        // A single big ledger followed by small ones: the big one can only be in one partition
+        ByteBuf entry = Unpooled.wrappedBuffer(new byte[ENTRY_SIZE]);
+        for (int e = 0; e < 100; e++) {
+            cache.put(1, e, entry);
+        }
+        for (int l = 2; l <= 4; l++) {
+            cache.put(l, 0, entry);
+        }
+
+        Map<Long, Integer> ledgerPartition = new ConcurrentHashMap<>();
+        AtomicInteger count = new AtomicInteger();
+        cache.forEach(4, executor, (partition, ledgerId, entryId, e) -> {
+            Integer existing = ledgerPartition.putIfAbsent(ledgerId, partition);
+            assertTrue(existing == null || existing == partition);
+            count.incrementAndGet();
+        });
+
+        assertEquals(103, count.get());
+        assertEquals(0, (int) ledgerPartition.get(1L));
+        for (long l = 2; l <= 4; l++) {
+            assertNotEquals(0, (int) ledgerPartition.get(l));
+        }
+    }
+
+    @Test
+    public void testFewerLedgersThanPartitions() {
+        fill(2, 5);
+
+        Map<Integer, AtomicInteger> partitions = new ConcurrentHashMap<>();
+        cache.forEach(4, executor, (partition, ledgerId, entryId, entry) ->
+                partitions.computeIfAbsent(partition, p -> new AtomicInteger()).incrementAndGet());
+
+        assertEquals(2, partitions.size());
+        assertEquals(5, partitions.get(0).get());
+        assertEquals(5, partitions.get(1).get());
+    }
+
+    @Test
+    public void testDeletedLedgersAreSkipped() {
+        fill(4, 5);
+        cache.deleteLedger(2);
+
+        AtomicInteger count = new AtomicInteger();
+        cache.forEach(2, executor, (partition, ledgerId, entryId, entry) -> {
+            assertNotEquals(2, ledgerId);
+            count.incrementAndGet();
+        });
+        assertEquals(15, count.get());
+    }
+
+    @Test
+    public void testFailedPartitionWaitsForTheOthers() throws Exception {
+        fill(4, 10);
+
+        CountDownLatch failed = new CountDownLatch(1);
+        AtomicInteger completed = new AtomicInteger();
+        try {
+            cache.forEach(4, executor, (partition, ledgerId, entryId, entry) -> {
+                if (partition == 0) {
+                    failed.countDown();
+                    throw new IllegalStateException("failed partition");
+                }
+                try {
+                    // Keep the other partitions running after the failure
+                    assertTrue(failed.await(10, TimeUnit.SECONDS));
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+                completed.incrementAndGet();
+            });
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("failed partition", e.getMessage());
+        }
+
+        // The exception is only rethrown once the other partitions are done with the sorted entries
+        assertEquals(30, completed.get());
+
+        // The cache is left untouched and can be scanned again
+        AtomicInteger count = new AtomicInteger();
+        cache.forEach(4, executor, (partition, ledgerId, entryId, entry) -> count.incrementAndGet());
+        assertEquals(40, count.get());
+        assertFalse(cache.isEmpty());
+    }
+
+    @Test
+    public void testFailureInWorkerPartitionIsPropagated() {
+        fill(4, 10);
+
+        AtomicInteger firstPartition = new AtomicInteger();
+        try {
+            cache.forEach(4, executor, (partition, ledgerId, entryId, entry) -> {
+                if (partition == 0) {
+                    firstPartition.incrementAndGet();
+                } else if (partition == 3) {
+                    throw new IllegalStateException("failed worker");
+                }
+            });
+            fail("Should have failed");
+        } catch (IllegalStateException e) {
+            assertEquals("failed worker", e.getMessage());
+        }
+        assertEquals(10, firstPartition.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionsRequireExecutor() {
+        cache.forEach(2, null, (partition, ledgerId, entryId, entry) -> {});
+    }
+}
@@ -0,0 +1,220 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.apache.bookkeeper.net.BookieId;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link AdaptiveSpeculativeRequestExecutionPolicy}.
+ */
+public class AdaptiveSpeculativeRequestExecutionPolicyTest {
+    private static final int FIRST_TIMEOUT_MS = 10;
+    private static final int MAX_TIMEOUT_MS = 100;
+
+    private static final BookieId BOOKIE_1 = BookieId.parse("bookie-1:3181");
+    private static final BookieId BOOKIE_2 = BookieId.parse("bookie-2:3181");
+    private static final BookieId BOOKIE_3 = BookieId.parse("bookie-3:3181");
+
+    // The speculative requests scheduled, run on demand
+    private final Deque<Runnable> scheduled = new ArrayDeque<>();
+    private final List<Long> delaysMicros = new ArrayList<>();
+    private ScheduledExecutorService scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            delaysMicros.add(((TimeUnit) invocation.getArgument(2)).toMicros(invocation.getArgument(1)));
+            return null;
+        });
+    }
+
+    private static long percentileMicros(long latencyMillis) {
+        long micros = TimeUnit.MILLISECONDS.toMicros(latencyMillis);
+        return LatencyHistogram.bucketUpperBound(LatencyHistogram.bucket(micros));
+    }
+
+    private static void record(AdaptiveSpeculativeRequestExecutionPolicy policy, BookieId bookie, int count,
+                               long latencyMillis) {
+        for (int i = 0; i < count; i++) {
+            policy.recordRequestLatency(bookie, TimeUnit.MILLISECONDS.toNanos(latencyMillis));
+        }
+    }
+
+    /**
+     * Run the scheduled speculative requests, including the ones they schedule.
+     */
+    private void runScheduled() {
+        while (!scheduled.isEmpty()) {
+            scheduled.poll().run();
+        }
+    }
+
+    private static SpeculativeRequestExecutor executor(AtomicInteger issued, boolean moreRequests) {
+        return new SpeculativeRequestExecutor() {
+            @Override
+            public ListenableFuture<Boolean> issueSpeculativeRequest() {
+                issued.incrementAndGet();
+                return Futures.immediateFuture(moreRequests);
+            }
+
+            @Override
+            public BookieId getLastRequestedBookie() {
+                return BOOKIE_1;
+            }
+        };
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidPercentile() {
+        new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 0, 10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBudget() {
+        new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 99, -1);
+    }
+
+    @Test
+    public void testTimeoutSelection() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 10);
+        long firstTimeoutMicros = TimeUnit.MILLISECONDS.toMicros(FIRST_TIMEOUT_MS);
+
+        // Not enough samples yet
+        assertEquals(firstTimeoutMicros, policy.getSpeculativeRequestTimeoutMicros(null));
+        record(policy, BOOKIE_1, 99, 5);
+        assertEquals(firstTimeoutMicros, policy.getSpeculativeRequestTimeoutMicros(BOOKIE_1));
+
+        // The bookies without enough samples use the percentile of the client
+        record(policy, BOOKIE_1, 1, 5);
+        assertEquals(percentileMicros(5), policy.getSpeculativeRequestTimeoutMicros(BOOKIE_1));
+        assertEquals(percentileMicros(5), policy.getSpeculativeRequestTimeoutMicros(BOOKIE_2));
+        assertEquals(percentileMicros(5), policy.getSpeculativeRequestTimeoutMicros(null));
+
+        // Each bookie has its own percentile once it has enough samples
+        record(policy, BOOKIE_2, 100, 40);
+        assertEquals(percentileMicros(5), policy.getSpeculativeRequestTimeoutMicros(BOOKIE_1));
+        assertEquals(percentileMicros(40), policy.getSpeculativeRequestTimeoutMicros(BOOKIE_2));
+        assertEquals(percentileMicros(40), policy.getSpeculativeRequestTimeoutMicros(BOOKIE_3));
+
+        // Capped by the max timeout
+        record(policy, BOOKIE_3, 100, 10 * MAX_TIMEOUT_MS);
+        assertEquals(TimeUnit.MILLISECONDS.toMicros(MAX_TIMEOUT_MS),
+                policy.getSpeculativeRequestTimeoutMicros(BOOKIE_3));
+    }
+
+    @Test
+    public void testScheduledWithBookieTimeout() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 10);
+        record(policy, BOOKIE_1, 100, 5);
+        record(policy, BOOKIE_2, 1000, 40);
+
+        policy.initiateSpeculativeRequest(scheduler, executor(new AtomicInteger(), false));
+        assertEquals(1, delaysMicros.size());
+        assertEquals(percentileMicros(5), (long) delaysMicros.get(0));
+    }
+
+    @Test
+    public void testBudget() {
+        // Each request earns a tenth of a speculative request, and the policy starts with one
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 10);
+        AtomicInteger issued = new AtomicInteger();
+        SpeculativeRequestExecutor executor = executor(issued, true);
+
+        for (int i = 0; i < 10; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runScheduled();
+        assertEquals(2, issued.get());
+
+        for (int i = 0; i < 9; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runScheduled();
+        assertEquals(2, issued.get());
+
+        policy.initiateSpeculativeRequest(scheduler, executor);
+        runScheduled();
+        assertEquals(3, issued.get());
+    }
+
+    @Test
+    public void testBudgetReturnedWhenNoRequestIsSent() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 0);
+        AtomicInteger attempts = new AtomicInteger();
+        SpeculativeRequestExecutor executor = executor(attempts, false);
+
+        // Without earning any budget, the initial speculative request can be attempted again and again
+        for (int i = 0; i < 10; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+            runScheduled();
+        }
+        assertEquals(10, attempts.get());
+
+        // Until one is sent
+        AtomicInteger issued = new AtomicInteger();
+        policy.initiateSpeculativeRequest(scheduler, executor(issued, true));
+        runScheduled();
+        assertEquals(1, issued.get());
+        policy.initiateSpeculativeRequest(scheduler, executor);
+        runScheduled();
+        assertEquals(10, attempts.get());
+    }
+
+    @Test
+    public void testBudgetIsBounded() {
+        AdaptiveSpeculativeRequestExecutionPolicy policy =
+            new AdaptiveSpeculativeRequestExecutionPolicy(FIRST_TIMEOUT_MS, MAX_TIMEOUT_MS, 95, 100);
+        AtomicInteger issued = new AtomicInteger();
+        SpeculativeRequestExecutor executor = executor(issued, true);
+
+        for (int i = 0; i < 1000; i++) {
+            policy.initiateSpeculativeRequest(scheduler, executor);
+        }
+        runScheduled();
+        // At most 100 speculative requests are saved up
+        assertEquals(100, issued.get());
+        assertTrue(delaysMicros.size() > 1000);
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.client.api.LedgerEntry;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.ReadHandle;
+import org.apache.bookkeeper.client.impl.LedgerEntriesImpl;
+import org.apache.bookkeeper.client.impl.LedgerEntryImpl;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BatchedEntryReader}.
+ */
+public class BatchedEntryReaderTest {
+    private static final long LEDGER_ID = 1234L;
+
+    private static BatchedEntryReader newReader(boolean batched) {
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(batched
+                ? Collections.singletonMap(BatchingWriteHandle.BATCHED_LEDGER_METADATA_KEY, new byte[] { '1' })
+                : Collections.emptyMap());
+        ReadHandle readHandle = mock(ReadHandle.class);
+        when(readHandle.getLedgerMetadata()).thenReturn(metadata);
+        return new BatchedEntryReader(readHandle);
+    }
+
+    private static ByteBuf batch(String... records) {
+        List<ByteBuf> buffers = new ArrayList<>();
+        int dataSize = 0;
+        for (String record : records) {
+            buffers.add(Unpooled.copiedBuffer(record, UTF_8));
+            dataSize += record.length();
+        }
+        return EntryBatchFormat.encode(UnpooledByteBufAllocator.DEFAULT, buffers, dataSize);
+    }
+
+    private static LedgerEntry entry(long entryId, ByteBuf data) {
+        return LedgerEntryImpl.create(LEDGER_ID, entryId, data.readableBytes(), data);
+    }
+
+    private static void assertRecord(BatchedRecord record, long entryId, int index, ByteBuf data) {
+        assertEquals(entryId, record.getPosition().getEntryId());
+        assertEquals(index, record.getPosition().getIndex());
+        assertEquals(data, record.getData());
+    }
+
+    @Test
+    public void testUnpackBatchedLedger() {
+        ByteBuf first = batch("a", "b", "c");
+        ByteBuf second = batch("d");
+        ByteBuf notABatch = Unpooled.copiedBuffer("not a batch", UTF_8);
+        List<BatchedRecord> records = newReader(true).unpack(LedgerEntriesImpl.create(new ArrayList<>(Arrays.asList(
+                entry(0, first), entry(1, second), entry(2, notABatch)))));
+
+        assertEquals(5, records.size());
+        assertRecord(records.get(0), 0, 0, Unpooled.copiedBuffer("a", UTF_8));
+        assertRecord(records.get(1), 0, 1, Unpooled.copiedBuffer("b", UTF_8));
+        assertRecord(records.get(2), 0, 2, Unpooled.copiedBuffer("c", UTF_8));
+        assertRecord(records.get(3), 1, 0, Unpooled.copiedBuffer("d", UTF_8));
+        assertRecord(records.get(4), 2, 0, Unpooled.copiedBuffer("not a batch", UTF_8));
+
+        // the entries were closed, the records hold the buffers until they are closed
+        assertEquals(3, first.refCnt());
+        records.forEach(BatchedRecord::close);
+        assertEquals(0, first.refCnt());
+        assertEquals(0, second.refCnt());
+        assertEquals(0, notABatch.refCnt());
+    }
+
+    @Test
+    public void testEntriesOfOtherLedgersAreNotSplit() {
+        // an entry of a ledger not written by a batching handle, which happens to look like a batch
+        ByteBuf entry = batch("a", "b");
+        ByteBuf expected = entry.copy();
+        List<BatchedRecord> records = newReader(false).unpack(
+                LedgerEntriesImpl.create(new ArrayList<>(Collections.singletonList(entry(0, entry)))));
+
+        assertEquals(1, records.size());
+        assertRecord(records.get(0), 0, 0, expected);
+        records.get(0).close();
+        assertEquals(0, entry.refCnt());
+    }
+}
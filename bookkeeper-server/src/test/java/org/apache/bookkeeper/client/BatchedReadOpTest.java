@@ -0,0 +1,141 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyBoolean;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import org.apache.bookkeeper.client.api.LedgerEntries;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.BatchedReadEntryCallback;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BatchedReadOp}.
+ */
+public class BatchedReadOpTest {
+
+    private LedgerHandle lh;
+    private ClientContext clientCtx;
+    private BookieClient bookieClient;
+
+    @Before
+    public void setUp() {
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getEnsembleAt(anyLong())).thenReturn(Arrays.asList(
+                BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181")));
+
+        DistributionSchedule.WriteSet writeSet = mock(DistributionSchedule.WriteSet.class);
+        when(writeSet.size()).thenReturn(2);
+        when(writeSet.get(anyInt())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        lh = mock(LedgerHandle.class);
+        when(lh.getLedgerMetadata()).thenReturn(metadata);
+        when(lh.getWriteSetForReadOperation(anyLong())).thenReturn(writeSet);
+
+        bookieClient = mock(BookieClient.class);
+        clientCtx = mock(ClientContext.class);
+        when(clientCtx.getConf()).thenReturn(ClientInternalConf.defaultValues());
+        when(clientCtx.getBookieClient()).thenReturn(bookieClient);
+        when(clientCtx.getClientStats()).thenReturn(BookKeeperClientStats.newInstance(NullStatsLogger.INSTANCE));
+    }
+
+    private void failBatchReads(int rc) {
+        doAnswer(invocation -> {
+            BatchedReadEntryCallback cb = invocation.getArgument(5);
+            cb.readEntriesComplete(rc, invocation.getArgument(1), invocation.getArgument(2), null,
+                    invocation.getArgument(6));
+            return null;
+        }).when(bookieClient).batchReadEntries(any(), anyLong(), anyLong(), anyInt(), anyLong(), any(), any(),
+                anyInt());
+    }
+
+    @Test
+    public void testFallBackToRangeReadWhenBatchesAreNotSupported() throws Exception {
+        // Old bookies answer with a bad request, read as a read error, or drop the connection
+        failBatchReads(BKException.Code.ReadException);
+        LedgerEntries entries = mock(LedgerEntries.class);
+        when(lh.readEntriesInternalAsync(5L, 7L, false)).thenReturn(CompletableFuture.completedFuture(entries));
+
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 5L, 3, 1024L);
+        op.run();
+
+        assertSame(entries, op.future().get());
+        // Every replica was tried first
+        verify(bookieClient).batchReadEntries(eq(BookieId.parse("bookie-0:3181")), anyLong(), eq(5L), eq(3),
+                eq(1024L), any(), any(), anyInt());
+        verify(bookieClient).batchReadEntries(eq(BookieId.parse("bookie-1:3181")), anyLong(), eq(5L), eq(3),
+                eq(1024L), any(), any(), anyInt());
+    }
+
+    @Test
+    public void testFallbackFailure() throws Exception {
+        failBatchReads(BKException.Code.BookieHandleNotAvailableException);
+        CompletableFuture<LedgerEntries> failed = new CompletableFuture<>();
+        failed.completeExceptionally(new BKException.BKBookieHandleNotAvailableException());
+        when(lh.readEntriesInternalAsync(5L, 7L, false)).thenReturn(failed);
+
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 5L, 3, 1024L);
+        op.run();
+
+        try {
+            op.future().get();
+            fail("The read should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKBookieHandleNotAvailableException);
+        }
+    }
+
+    @Test
+    public void testNoFallbackForMissingEntries() throws Exception {
+        failBatchReads(BKException.Code.NoSuchEntryException);
+
+        BatchedReadOp op = new BatchedReadOp(lh, clientCtx, 5L, 3, 1024L);
+        op.run();
+
+        try {
+            op.future().get();
+            fail("The read should fail");
+        } catch (ExecutionException e) {
+            assertEquals(BKException.Code.NoSuchEntryException, ((BKException) e.getCause()).getCode());
+        }
+        verify(lh, never()).readEntriesInternalAsync(anyLong(), anyLong(), anyBoolean());
+    }
+}
@@ -0,0 +1,317 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.client.api.CreateBuilder;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.client.api.WriteHandle;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test for {@link BatchingWriteHandle}.
+ */
+public class BatchingWriteHandleTest {
+    private static final int RECORD_SIZE = 10;
+    private static final long DELAY_MICROS = 1000;
+
+    private WriteHandle writeHandle;
+    private ScheduledExecutorService scheduler;
+    private ScheduledFuture<?> flushTask;
+    // the entries added to the write handle, and the futures of their adds
+    private final List<ByteBuf> entries = new ArrayList<>();
+    private final List<CompletableFuture<Long>> addFutures = new ArrayList<>();
+    private final List<Runnable> scheduled = new ArrayList<>();
+    private final CompletableFuture<Void> closeFuture = new CompletableFuture<>();
+
+    @Before
+    public void setUp() {
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(
+                Collections.singletonMap(BatchingWriteHandle.BATCHED_LEDGER_METADATA_KEY, new byte[] { '1' }));
+        writeHandle = mock(WriteHandle.class);
+        when(writeHandle.getLedgerMetadata()).thenReturn(metadata);
+        when(writeHandle.appendAsync(any(ByteBuf.class))).thenAnswer(invocation -> {
+            entries.add(invocation.getArgument(0));
+            CompletableFuture<Long> future = new CompletableFuture<>();
+            addFutures.add(future);
+            return future;
+        });
+        when(writeHandle.closeAsync()).thenReturn(closeFuture);
+
+        flushTask = mock(ScheduledFuture.class);
+        scheduler = mock(ScheduledExecutorService.class);
+        when(scheduler.schedule(any(Runnable.class), anyLong(), any(TimeUnit.class))).thenAnswer(invocation -> {
+            scheduled.add(invocation.getArgument(0));
+            return flushTask;
+        });
+    }
+
+    private BatchingWriteHandle newHandle(int maxBatchRecords, int maxBatchBytes, long maxBatchDelayMicros) {
+        return new BatchingWriteHandle(writeHandle, scheduler, UnpooledByteBufAllocator.DEFAULT,
+                maxBatchRecords, maxBatchBytes, maxBatchDelayMicros);
+    }
+
+    private static ByteBuf record(int i) {
+        ByteBuf record = Unpooled.buffer(RECORD_SIZE);
+        while (record.isWritable()) {
+            record.writeByte(i);
+        }
+        return record;
+    }
+
+    private List<CompletableFuture<BatchedRecordPosition>> append(BatchingWriteHandle handle, int from, int to) {
+        List<CompletableFuture<BatchedRecordPosition>> futures = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            futures.add(handle.appendAsync(record(i)));
+        }
+        return futures;
+    }
+
+    /**
+     * Check that an added entry holds the given records.
+     */
+    private void assertEntry(int entry, int from, int to) {
+        List<ByteBuf> records = EntryBatchFormat.decode(entries.get(entry));
+        assertEquals(to - from, records.size());
+        for (int i = from; i < to; i++) {
+            assertEquals(record(i), records.get(i - from));
+        }
+    }
+
+    private static void assertPositions(List<CompletableFuture<BatchedRecordPosition>> futures, long entryId)
+            throws Exception {
+        for (int i = 0; i < futures.size(); i++) {
+            assertEquals(new BatchedRecordPosition(entryId, i), futures.get(i).get());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidLimits() {
+        newHandle(0, 1024, DELAY_MICROS);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLedgerNotMarkedAsBatched() {
+        LedgerMetadata metadata = mock(LedgerMetadata.class);
+        when(metadata.getCustomMetadata()).thenReturn(Collections.emptyMap());
+        when(writeHandle.getLedgerMetadata()).thenReturn(metadata);
+        newHandle(10, 1024, DELAY_MICROS);
+    }
+
+    @Test
+    public void testCreateMarksTheLedger() throws Exception {
+        CreateBuilder createBuilder = mock(CreateBuilder.class);
+        when(createBuilder.withCustomMetadata(any())).thenReturn(createBuilder);
+        when(createBuilder.execute()).thenReturn(CompletableFuture.completedFuture(writeHandle));
+
+        BatchingWriteHandle handle = BatchingWriteHandle.createAsync(createBuilder,
+                Collections.singletonMap("application", "test".getBytes(UTF_8)), scheduler,
+                10, 1024, DELAY_MICROS).get();
+        assertSame(writeHandle, handle.getWriteHandle());
+
+        @SuppressWarnings("unchecked")
+        ArgumentCaptor<Map<String, byte[]>> captor = ArgumentCaptor.forClass(Map.class);
+        verify(createBuilder).withCustomMetadata(captor.capture());
+        assertEquals(2, captor.getValue().size());
+        assertEquals("test", new String(captor.getValue().get("application"), UTF_8));
+        assertTrue(captor.getValue().containsKey(BatchingWriteHandle.BATCHED_LEDGER_METADATA_KEY));
+    }
+
+    @Test
+    public void testCountTrigger() throws Exception {
+        BatchingWriteHandle handle = newHandle(3, 1024, DELAY_MICROS);
+
+        List<CompletableFuture<BatchedRecordPosition>> first = append(handle, 0, 3);
+        List<CompletableFuture<BatchedRecordPosition>> second = append(handle, 3, 5);
+        assertEquals(1, entries.size());
+        assertEntry(0, 0, 3);
+        // the delay of the first batch is cancelled once it is flushed
+        verify(flushTask).cancel(false);
+
+        addFutures.get(0).complete(7L);
+        assertPositions(first, 7L);
+        second.forEach(future -> assertFalse(future.isDone()));
+    }
+
+    @Test
+    public void testSizeTrigger() throws Exception {
+        int twoRecords = EntryBatchFormat.entrySize(2, 2 * RECORD_SIZE);
+        BatchingWriteHandle handle = newHandle(100, twoRecords, DELAY_MICROS);
+
+        // full once it holds two records
+        List<CompletableFuture<BatchedRecordPosition>> first = append(handle, 0, 2);
+        assertEquals(1, entries.size());
+        assertEntry(0, 0, 2);
+        assertEquals(twoRecords, entries.get(0).readableBytes());
+
+        // a record which doesn't fit in the current batch starts a new one
+        handle = newHandle(100, twoRecords + RECORD_SIZE / 2, DELAY_MICROS);
+        List<CompletableFuture<BatchedRecordPosition>> second = append(handle, 2, 5);
+        assertEquals(2, entries.size());
+        assertEntry(1, 2, 4);
+
+        addFutures.get(0).complete(0L);
+        addFutures.get(1).complete(1L);
+        assertPositions(first, 0L);
+        assertPositions(second.subList(0, 2), 1L);
+        assertFalse(second.get(2).isDone());
+
+        // a record larger than the batches is added alone
+        handle.flush();
+        ByteBuf large = Unpooled.wrappedBuffer(new byte[2 * twoRecords]);
+        handle.appendAsync(large);
+        assertEquals(4, entries.size());
+        assertEquals(1, EntryBatchFormat.decode(entries.get(3)).size());
+    }
+
+    @Test
+    public void testDelayTrigger() throws Exception {
+        BatchingWriteHandle handle = newHandle(100, 1024, DELAY_MICROS);
+
+        List<CompletableFuture<BatchedRecordPosition>> futures = append(handle, 0, 3);
+        assertTrue(entries.isEmpty());
+        // the delay starts with the first record of the batch
+        assertEquals(1, scheduled.size());
+        verify(scheduler).schedule(any(Runnable.class), eq(DELAY_MICROS), eq(TimeUnit.MICROSECONDS));
+
+        scheduled.get(0).run();
+        assertEquals(1, entries.size());
+        assertEntry(0, 0, 3);
+        addFutures.get(0).complete(0L);
+        assertPositions(futures, 0L);
+
+        // a flush of an empty batch adds nothing
+        scheduled.get(0).run();
+        assertEquals(1, entries.size());
+    }
+
+    @Test
+    public void testNoDelay() throws Exception {
+        BatchingWriteHandle handle = newHandle(100, 1024, 0);
+        append(handle, 0, 3);
+        assertEquals(3, entries.size());
+        verify(scheduler, never()).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+    }
+
+    @Test
+    public void testFailedEntryFailsAllItsRecords() throws Exception {
+        BatchingWriteHandle handle = newHandle(3, 1024, DELAY_MICROS);
+        List<CompletableFuture<BatchedRecordPosition>> first = append(handle, 0, 3);
+        List<CompletableFuture<BatchedRecordPosition>> second = append(handle, 3, 6);
+
+        BKException cause = new BKException.BKNotEnoughBookiesException();
+        addFutures.get(0).completeExceptionally(cause);
+        for (CompletableFuture<BatchedRecordPosition> future : first) {
+            try {
+                future.get();
+                fail("The records of a failed entry should fail");
+            } catch (ExecutionException e) {
+                assertSame(cause, e.getCause());
+            }
+        }
+
+        // the other entries are not affected
+        addFutures.get(1).complete(1L);
+        assertPositions(second, 1L);
+    }
+
+    @Test
+    public void testEncodingFailureFailsTheBatch() throws Exception {
+        ByteBufAllocator allocator = mock(ByteBufAllocator.class);
+        IllegalStateException cause = new IllegalStateException("out of buffers");
+        when(allocator.buffer(anyInt())).thenThrow(cause);
+        BatchingWriteHandle handle = new BatchingWriteHandle(writeHandle, scheduler, allocator,
+                3, 1024, DELAY_MICROS);
+
+        List<CompletableFuture<BatchedRecordPosition>> futures = append(handle, 0, 2);
+        ByteBuf last = record(2);
+        try {
+            handle.appendAsync(last);
+            fail("The encoding failure should be thrown");
+        } catch (IllegalStateException e) {
+            assertSame(cause, e);
+        }
+        assertEquals(0, last.refCnt());
+        for (CompletableFuture<BatchedRecordPosition> future : futures) {
+            assertTrue(future.isCompletedExceptionally());
+        }
+        assertTrue(entries.isEmpty());
+    }
+
+    @Test
+    public void testCloseFlushes() throws Exception {
+        BatchingWriteHandle handle = newHandle(100, 1024, DELAY_MICROS);
+        List<CompletableFuture<BatchedRecordPosition>> futures = append(handle, 0, 2);
+
+        CompletableFuture<Void> closed = handle.closeAsync();
+        assertEquals(1, entries.size());
+        assertEntry(0, 0, 2);
+        // the ledger is closed once the last entry is added
+        verify(writeHandle, never()).closeAsync();
+        addFutures.get(0).complete(0L);
+        verify(writeHandle).closeAsync();
+        assertPositions(futures, 0L);
+
+        assertFalse(closed.isDone());
+        closeFuture.complete(null);
+        assertTrue(closed.isDone());
+
+        // no more appends
+        ByteBuf record = record(2);
+        try {
+            handle.appendAsync(record).get();
+            fail("Appending to a closed handle should fail");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKLedgerClosedException);
+        }
+        assertEquals(0, record.refCnt());
+    }
+}
@@ -0,0 +1,155 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link EntryBatchFormat}.
+ */
+public class EntryBatchFormatTest {
+
+    private static ByteBuf encode(List<ByteBuf> records) {
+        int dataSize = records.stream().mapToInt(ByteBuf::readableBytes).sum();
+        ByteBuf entry = EntryBatchFormat.encode(UnpooledByteBufAllocator.DEFAULT, records, dataSize);
+        assertEquals(EntryBatchFormat.entrySize(records.size(), dataSize), entry.readableBytes());
+        return entry;
+    }
+
+    private static ByteBuf record(String data) {
+        return Unpooled.copiedBuffer(data, UTF_8);
+    }
+
+    @Test
+    public void testRoundTrip() {
+        List<ByteBuf> records = Arrays.asList(record("a"), record(""), record("some longer record"));
+        // the encoded part of a record is between its reader and writer indexes
+        ByteBuf partial = record("xxpartial");
+        partial.skipBytes(2);
+        List<ByteBuf> allRecords = new ArrayList<>(records);
+        allRecords.add(partial);
+
+        ByteBuf entry = encode(allRecords);
+        List<ByteBuf> decoded = EntryBatchFormat.decode(entry);
+        assertNotNull(decoded);
+        assertEquals(4, decoded.size());
+        assertEquals("a", decoded.get(0).toString(UTF_8));
+        assertEquals("", decoded.get(1).toString(UTF_8));
+        assertEquals("some longer record", decoded.get(2).toString(UTF_8));
+        assertEquals("partial", decoded.get(3).toString(UTF_8));
+
+        // the records are not consumed by the encoding, nor the entry by the decoding
+        assertEquals(2, partial.readerIndex());
+        assertEquals(0, entry.readerIndex());
+        // the decoded records are slices which are not retained
+        assertEquals(1, entry.refCnt());
+        entry.release();
+    }
+
+    @Test
+    public void testRoundTripAtOffset() {
+        ByteBuf entry = encode(Arrays.asList(record("first"), record("second")));
+        // the entry doesn't start at the beginning of the buffer
+        ByteBuf buffer = Unpooled.buffer();
+        buffer.writeBytes(new byte[] { 1, 2, 3 });
+        buffer.writeBytes(entry);
+        buffer.skipBytes(3);
+
+        List<ByteBuf> decoded = EntryBatchFormat.decode(buffer);
+        assertNotNull(decoded);
+        assertEquals(2, decoded.size());
+        assertEquals("first", decoded.get(0).toString(UTF_8));
+        assertEquals("second", decoded.get(1).toString(UTF_8));
+        entry.release();
+    }
+
+    @Test
+    public void testEmptyBatch() {
+        ByteBuf entry = encode(Collections.emptyList());
+        assertEquals(EntryBatchFormat.HEADER_SIZE, entry.readableBytes());
+        assertEquals(0, EntryBatchFormat.decode(entry).size());
+        entry.release();
+    }
+
+    @Test
+    public void testInvalidBatches() {
+        ByteBuf valid = encode(Arrays.asList(record("first"), record("second")));
+
+        // not a batch
+        assertNull(EntryBatchFormat.decode(record("some entry which is not a batch")));
+        assertNull(EntryBatchFormat.decode(Unpooled.EMPTY_BUFFER));
+
+        // truncated header
+        assertNull(EntryBatchFormat.decode(valid.slice(0, EntryBatchFormat.HEADER_SIZE - 1)));
+
+        // wrong magic
+        ByteBuf entry = valid.copy();
+        entry.setShort(0, EntryBatchFormat.MAGIC + 1);
+        assertNull(EntryBatchFormat.decode(entry));
+
+        // unknown version
+        entry = valid.copy();
+        entry.setByte(2, EntryBatchFormat.VERSION + 1);
+        assertNull(EntryBatchFormat.decode(entry));
+
+        // more or fewer records than announced
+        entry = valid.copy();
+        entry.setInt(3, 3);
+        assertNull(EntryBatchFormat.decode(entry));
+        entry.setInt(3, 1);
+        assertNull(EntryBatchFormat.decode(entry));
+        entry.setInt(3, -1);
+        assertNull(EntryBatchFormat.decode(entry));
+        entry.setInt(3, Integer.MAX_VALUE);
+        assertNull(EntryBatchFormat.decode(entry));
+
+        // record length beyond the end of the entry, or negative
+        entry = valid.copy();
+        entry.setInt(EntryBatchFormat.HEADER_SIZE, 100);
+        assertNull(EntryBatchFormat.decode(entry));
+        entry.setInt(EntryBatchFormat.HEADER_SIZE, -1);
+        assertNull(EntryBatchFormat.decode(entry));
+
+        // truncated record
+        assertNull(EntryBatchFormat.decode(valid.slice(0, valid.readableBytes() - 1)));
+
+        // trailing bytes
+        entry = Unpooled.buffer();
+        entry.writeBytes(valid, 0, valid.readableBytes());
+        entry.writeByte(0);
+        assertNull(EntryBatchFormat.decode(entry));
+
+        assertEquals(2, EntryBatchFormat.decode(valid).size());
+        valid.release();
+    }
+}
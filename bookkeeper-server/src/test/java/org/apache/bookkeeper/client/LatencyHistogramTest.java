@@ -0,0 +1,133 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link LatencyHistogram}.
+ */
+public class LatencyHistogramTest {
+    private static final long WINDOW_MILLIS = 1000;
+
+    @Test
+    public void testSmallValuesHaveTheirOwnBucket() {
+        for (int micros = 0; micros < 4; micros++) {
+            assertEquals(micros, LatencyHistogram.bucket(micros));
+            assertEquals(micros, LatencyHistogram.bucketUpperBound(micros));
+        }
+        assertEquals(0, LatencyHistogram.bucket(-1));
+    }
+
+    @Test
+    public void testBucketBounds() {
+        Random random = new Random(0);
+        for (int i = 0; i < 100_000; i++) {
+            long micros = random.nextInt(4) == 0 ? random.nextInt(1 << 16) : random.nextLong() >>> (1 + random.nextInt(63));
+            checkBucket(micros);
+        }
+        for (int shift = 0; shift < 63; shift++) {
+            checkBucket(1L << shift);
+            checkBucket((1L << shift) - 1);
+            checkBucket((1L << shift) + 1);
+        }
+        checkBucket(Long.MAX_VALUE);
+        assertEquals(Long.MAX_VALUE, LatencyHistogram.bucketUpperBound(LatencyHistogram.bucket(Long.MAX_VALUE)));
+    }
+
+    private static void checkBucket(long micros) {
+        int bucket = LatencyHistogram.bucket(micros);
+        long upperBound = LatencyHistogram.bucketUpperBound(bucket);
+        assertTrue("bucket of " + micros, bucket >= 0 && bucket < 64 * 4);
+        assertTrue("upper bound of " + micros, micros <= upperBound);
+        if (bucket > 0 && LatencyHistogram.bucketUpperBound(bucket - 1) != Long.MAX_VALUE) {
+            // the upper bound of the previous bucket is the lower bound of this one
+            assertTrue("lower bound of " + micros, LatencyHistogram.bucketUpperBound(bucket - 1) <= micros);
+        }
+        if (upperBound != Long.MAX_VALUE) {
+            // four buckets per power of two
+            assertTrue("precision of " + micros, upperBound <= micros * 1.25);
+            if (bucket >= 4) {
+                // the upper bound is exclusive
+                assertEquals(bucket + 1, LatencyHistogram.bucket(upperBound));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        LatencyHistogram histogram = new LatencyHistogram(WINDOW_MILLIS, new AtomicLong()::get);
+        assertEquals(-1, histogram.getPercentileMicros(50, 0));
+
+        for (int ms = 1; ms <= 100; ms++) {
+            histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(ms));
+        }
+        assertEquals(100, histogram.getCount());
+        assertEquals(-1, histogram.getPercentileMicros(50, 101));
+
+        for (double percentile : new double[] { 1, 50, 90, 99, 100 }) {
+            long expectedMicros = TimeUnit.MILLISECONDS.toMicros((long) Math.ceil(percentile));
+            long estimatedMicros = histogram.getPercentileMicros(percentile, 100);
+            assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucket(expectedMicros)), estimatedMicros);
+            assertTrue(estimatedMicros >= expectedMicros && estimatedMicros <= expectedMicros * 1.25);
+        }
+    }
+
+    @Test
+    public void testWindowRotation() {
+        AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+        LatencyHistogram histogram = new LatencyHistogram(WINDOW_MILLIS, clock::get);
+        long window = TimeUnit.MILLISECONDS.toNanos(WINDOW_MILLIS);
+
+        for (int i = 0; i < 10; i++) {
+            histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(100));
+        }
+        assertEquals(10, histogram.getCount());
+
+        // The samples of the previous window are still counted
+        clock.addAndGet(window);
+        assertEquals(10, histogram.getCount());
+        for (int i = 0; i < 5; i++) {
+            histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertEquals(15, histogram.getCount());
+        assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucket(100_000)),
+                histogram.getPercentileMicros(50, 0));
+
+        // Until the next rotation
+        clock.addAndGet(window);
+        assertEquals(5, histogram.getCount());
+        assertEquals(LatencyHistogram.bucketUpperBound(LatencyHistogram.bucket(1000)),
+                histogram.getPercentileMicros(100, 0));
+
+        // Nothing recorded for two windows, both are stale
+        histogram.recordLatency(TimeUnit.MILLISECONDS.toNanos(1));
+        clock.addAndGet(2 * window);
+        assertEquals(0, histogram.getCount());
+        assertEquals(-1, histogram.getPercentileMicros(50, 0));
+    }
+}
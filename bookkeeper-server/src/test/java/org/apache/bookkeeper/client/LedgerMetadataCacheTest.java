@@ -0,0 +1,230 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import org.apache.bookkeeper.client.api.DigestType;
+import org.apache.bookkeeper.client.api.LedgerMetadata;
+import org.apache.bookkeeper.meta.LedgerManager;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookkeeperInternalCallbacks.LedgerMetadataListener;
+import org.apache.bookkeeper.stats.Counter;
+import org.apache.bookkeeper.versioning.LongVersion;
+import org.apache.bookkeeper.versioning.Versioned;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test for {@link LedgerMetadataCache}.
+ */
+public class LedgerMetadataCacheTest {
+    private static final long LEDGER_ID = 1234L;
+    private static final List<BookieId> ENSEMBLE = Arrays.asList(
+            BookieId.parse("bookie-1:3181"), BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+
+    private LedgerManager ledgerManager;
+    private Counter hits;
+    private Counter misses;
+    private LedgerMetadataCache cache;
+
+    @Before
+    public void setUp() {
+        ledgerManager = mock(LedgerManager.class);
+        hits = mock(Counter.class);
+        misses = mock(Counter.class);
+        BookKeeperClientStats clientStats = mock(BookKeeperClientStats.class);
+        when(clientStats.getLedgerMetadataCacheHitsCounter()).thenReturn(hits);
+        when(clientStats.getLedgerMetadataCacheMissesCounter()).thenReturn(misses);
+        cache = new LedgerMetadataCache(ledgerManager, 1024 * 1024, clientStats);
+    }
+
+    private static Versioned<LedgerMetadata> metadata(long ledgerId, boolean closed, long version) {
+        LedgerMetadataBuilder builder = LedgerMetadataBuilder.create()
+                .withId(ledgerId)
+                .withEnsembleSize(3).withWriteQuorumSize(3).withAckQuorumSize(2)
+                .newEnsembleEntry(0L, ENSEMBLE);
+        if (closed) {
+            builder.withClosedState().withLastEntryId(version).withLength(version * 100);
+        }
+        return new Versioned<>(builder.build(), new LongVersion(version));
+    }
+
+    private void mockRead(long ledgerId, Versioned<LedgerMetadata> metadata) {
+        when(ledgerManager.readLedgerMetadata(ledgerId)).thenReturn(CompletableFuture.completedFuture(metadata));
+    }
+
+    private LedgerMetadataListener registeredListener(long ledgerId) {
+        ArgumentCaptor<LedgerMetadataListener> captor = ArgumentCaptor.forClass(LedgerMetadataListener.class);
+        verify(ledgerManager).registerLedgerMetadataListener(eq(ledgerId), captor.capture());
+        return captor.getValue();
+    }
+
+    @Test
+    public void testReadThroughAndHit() throws Exception {
+        Versioned<LedgerMetadata> closed = metadata(LEDGER_ID, true, 1);
+        mockRead(LEDGER_ID, closed);
+
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID, false).get());
+        verify(misses).inc();
+        verify(ledgerManager).registerLedgerMetadataListener(eq(LEDGER_ID), any());
+
+        // Closed ledgers are served from the cache even if open ledgers are not accepted
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID, false).get());
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID, true).get());
+        verify(ledgerManager, times(1)).readLedgerMetadata(LEDGER_ID);
+        verify(hits, times(2)).inc();
+    }
+
+    @Test
+    public void testAcceptOpenLedger() throws Exception {
+        Versioned<LedgerMetadata> open = metadata(LEDGER_ID, false, 1);
+        mockRead(LEDGER_ID, open);
+
+        assertSame(open, cache.readLedgerMetadata(LEDGER_ID, true).get());
+        assertSame(open, cache.readLedgerMetadata(LEDGER_ID, true).get());
+        verify(ledgerManager, times(1)).readLedgerMetadata(LEDGER_ID);
+
+        // The cached copy of an open ledger is not used when the caller needs fresh metadata
+        Versioned<LedgerMetadata> closed = metadata(LEDGER_ID, true, 2);
+        mockRead(LEDGER_ID, closed);
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID, false).get());
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+
+        // The fresh metadata updated the cached entry, whose listener stays registered
+        assertSame(closed, cache.readLedgerMetadata(LEDGER_ID, false).get());
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+        ArgumentCaptor<LedgerMetadataListener> captor = ArgumentCaptor.forClass(LedgerMetadataListener.class);
+        verify(ledgerManager, times(2)).registerLedgerMetadataListener(eq(LEDGER_ID), captor.capture());
+        verify(ledgerManager).unregisterLedgerMetadataListener(LEDGER_ID, captor.getAllValues().get(1));
+        verify(ledgerManager, never()).unregisterLedgerMetadataListener(LEDGER_ID, captor.getAllValues().get(0));
+    }
+
+    @Test
+    public void testChangedMetadata() throws Exception {
+        Versioned<LedgerMetadata> v1 = metadata(LEDGER_ID, false, 1);
+        mockRead(LEDGER_ID, v1);
+        cache.readLedgerMetadata(LEDGER_ID, true).get();
+        LedgerMetadataListener listener = registeredListener(LEDGER_ID);
+
+        Versioned<LedgerMetadata> v3 = metadata(LEDGER_ID, true, 3);
+        listener.onChanged(LEDGER_ID, v3);
+        assertSame(v3, cache.readLedgerMetadata(LEDGER_ID, false).get());
+
+        // A late notification of an older version is ignored
+        listener.onChanged(LEDGER_ID, metadata(LEDGER_ID, false, 2));
+        assertSame(v3, cache.readLedgerMetadata(LEDGER_ID, false).get());
+        verify(ledgerManager, times(1)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testDeletedMetadata() throws Exception {
+        mockRead(LEDGER_ID, metadata(LEDGER_ID, true, 1));
+        cache.readLedgerMetadata(LEDGER_ID, true).get();
+        LedgerMetadataListener listener = registeredListener(LEDGER_ID);
+
+        listener.onChanged(LEDGER_ID, null);
+        // The ledger manager drops the listeners of the deleted ledgers itself
+        verify(ledgerManager, never()).unregisterLedgerMetadataListener(anyLong(), any());
+
+        CompletableFuture<Versioned<LedgerMetadata>> notFound = new CompletableFuture<>();
+        notFound.completeExceptionally(new BKException.BKNoSuchLedgerExistsOnMetadataServerException());
+        when(ledgerManager.readLedgerMetadata(LEDGER_ID)).thenReturn(notFound);
+        try {
+            cache.readLedgerMetadata(LEDGER_ID, true).get();
+            fail("The metadata of a deleted ledger should not be served from the cache");
+        } catch (ExecutionException e) {
+            assertTrue(e.getCause() instanceof BKException.BKNoSuchLedgerExistsOnMetadataServerException);
+        }
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+        // Failed reads are not cached
+        verify(ledgerManager, times(1)).registerLedgerMetadataListener(eq(LEDGER_ID), any());
+    }
+
+    @Test
+    public void testInvalidateUnregistersListener() throws Exception {
+        mockRead(LEDGER_ID, metadata(LEDGER_ID, true, 1));
+        cache.readLedgerMetadata(LEDGER_ID, true).get();
+        LedgerMetadataListener listener = registeredListener(LEDGER_ID);
+
+        cache.invalidate(LEDGER_ID);
+        verify(ledgerManager).unregisterLedgerMetadataListener(LEDGER_ID, listener);
+
+        cache.readLedgerMetadata(LEDGER_ID, true).get();
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+        verify(ledgerManager, times(2)).registerLedgerMetadataListener(eq(LEDGER_ID), any());
+    }
+
+    @Test
+    public void testCloseUnregistersAllListeners() throws Exception {
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            mockRead(ledgerId, metadata(ledgerId, true, 1));
+            cache.readLedgerMetadata(ledgerId, true).get();
+        }
+
+        cache.close();
+        for (long ledgerId = 0; ledgerId < 10; ledgerId++) {
+            verify(ledgerManager).unregisterLedgerMetadataListener(eq(ledgerId), any());
+        }
+    }
+
+    @Test
+    public void testEvictionUnregistersListener() throws Exception {
+        BookKeeperClientStats clientStats = mock(BookKeeperClientStats.class);
+        when(clientStats.getLedgerMetadataCacheHitsCounter()).thenReturn(hits);
+        when(clientStats.getLedgerMetadataCacheMissesCounter()).thenReturn(misses);
+        // Too small to hold any entry
+        LedgerMetadataCache tinyCache = new LedgerMetadataCache(ledgerManager, 1, clientStats);
+
+        mockRead(LEDGER_ID, metadata(LEDGER_ID, true, 1));
+        tinyCache.readLedgerMetadata(LEDGER_ID, true).get();
+        LedgerMetadataListener listener = registeredListener(LEDGER_ID);
+        verify(ledgerManager).unregisterLedgerMetadataListener(LEDGER_ID, listener);
+
+        tinyCache.readLedgerMetadata(LEDGER_ID, true).get();
+        verify(ledgerManager, times(2)).readLedgerMetadata(LEDGER_ID);
+    }
+
+    @Test
+    public void testEstimateSize() {
+        LedgerMetadata small = metadata(LEDGER_ID, true, 1).getValue();
+        LedgerMetadata withPassword = LedgerMetadataBuilder.from(small)
+                .withPassword(new byte[100]).withDigestType(DigestType.CRC32C).build();
+        assertEquals(LedgerMetadataCache.estimateSize(small) + 100, LedgerMetadataCache.estimateSize(withPassword));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.client;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.net.BookieId;
+import org.apache.bookkeeper.proto.BookieClient;
+import org.junit.Test;
+
+/**
+ * Unit test for the read reordering of {@link RackawareEnsemblePlacementPolicyImpl}.
+ */
+public class ReorderByPredictedLatencyTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final List<BookieId> ensemble = Arrays.asList(
+            BookieId.parse("bookie-0:3181"), BookieId.parse("bookie-1:3181"),
+            BookieId.parse("bookie-2:3181"), BookieId.parse("bookie-3:3181"));
+    private final Map<BookieId, Long> latencies = new HashMap<>();
+    private final Map<BookieId, Long> pendingRequests = new HashMap<>();
+
+    private final BookiesHealthInfo healthInfo = new BookiesHealthInfo() {
+        @Override
+        public long getBookieFailureHistory(BookieId bookieSocketAddress) {
+            return -1L;
+        }
+
+        @Override
+        public long getBookiePendingRequests(BookieId bookieSocketAddress) {
+            return pendingRequests.getOrDefault(bookieSocketAddress, 0L);
+        }
+
+        @Override
+        public long getBookieReadLatencyNanos(BookieId bookieSocketAddress) {
+            return latencies.getOrDefault(bookieSocketAddress, 0L);
+        }
+    };
+
+    private void setBookie(int index, long latencyNanos, long pending) {
+        latencies.put(ensemble.get(index), latencyNanos);
+        pendingRequests.put(ensemble.get(index), pending);
+    }
+
+    private List<Integer> reorder(boolean expectReordered) {
+        DistributionSchedule.WriteSet writeSet = RoundRobinDistributionSchedule.writeSetFromValues(0, 1, 2, 3);
+        try {
+            assertEquals(expectReordered,
+                    RackawareEnsemblePlacementPolicyImpl.reorderByPredictedLatency(ensemble, writeSet, healthInfo));
+            return Arrays.asList(writeSet.get(0), writeSet.get(1), writeSet.get(2), writeSet.get(3));
+        } finally {
+            writeSet.recycle();
+        }
+    }
+
+    @Test
+    public void testOrderByPredictedLatency() {
+        setBookie(0, 4 * MS, 0);
+        setBookie(1, 1 * MS, 0);
+        setBookie(2, 1 * MS, 5);
+        setBookie(3, 2 * MS, 0);
+        assertEquals(Arrays.asList(1, 3, 0, 2), reorder(true));
+    }
+
+    @Test
+    public void testUnknownLatencyFirstAndNotWritableLast() {
+        setBookie(0, 1 * MS, BookieClient.PENDINGREQ_NOTWRITABLE_MASK);
+        setBookie(1, 3 * MS, 0);
+        setBookie(2, 0, 0);
+        setBookie(3, 2 * MS, 1);
+        assertEquals(Arrays.asList(2, 1, 3, 0), reorder(true));
+    }
+
+    @Test
+    public void testStableOrder() {
+        for (int i = 0; i < ensemble.size(); i++) {
+            setBookie(i, 2 * MS, 1);
+        }
+        assertEquals(Arrays.asList(0, 1, 2, 3), reorder(false));
+    }
+
+    @Test
+    public void testStalledBookie() {
+        // bookie-0 used to be the fastest, but stalled: its reads pile up and don't complete, so its
+        // latency doesn't decay, while its outstanding reads make it the slowest to serve one more read
+        setBookie(0, 1 * MS, 50);
+        setBookie(1, 5 * MS, 2);
+        setBookie(2, 4 * MS, 3);
+        setBookie(3, 3 * MS, 1);
+        assertEquals(Arrays.asList(3, 1, 2, 0), reorder(true));
+
+        // Had its latency decayed to nothing while it was stalled, it would have been tried first
+        setBookie(0, 1, 50);
+        assertEquals(0, (int) reorder(true).get(0));
+    }
+}
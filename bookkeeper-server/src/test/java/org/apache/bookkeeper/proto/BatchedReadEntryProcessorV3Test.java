@@ -0,0 +1,153 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.ArrayList;
+import java.util.List;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BatchReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BatchedReadEntryProcessorV3}.
+ */
+public class BatchedReadEntryProcessorV3Test {
+
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private EmbeddedChannel channel;
+
+    @Before
+    public void setUp() {
+        bookie = mock(Bookie.class);
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getMaxBatchReadCount()).thenReturn(100);
+        when(requestProcessor.getMaxBatchReadSize(anyLong(), anyInt())).thenReturn(1024L * 1024L);
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+        // Serialize the responses as the bookie does
+        channel = new EmbeddedChannel(new BookieProtoEncoding.ResponseEncoder(null));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+    }
+
+    private static Request batchReadRequest(int maxCount) {
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.BATCH_READ_ENTRY)
+                        .setTxnId(1L))
+                .setBatchReadRequest(BatchReadRequest.newBuilder()
+                        .setLedgerId(1L)
+                        .setStartEntryId(0L)
+                        .setMaxCount(maxCount)
+                        .setMaxSize(1024L * 1024L))
+                .build();
+    }
+
+    private Response readResponse() throws Exception {
+        ByteBuf frame = channel.readOutbound();
+        try {
+            return Response.parseFrom(frame.nioBuffer());
+        } finally {
+            frame.release();
+        }
+    }
+
+    @Test
+    public void testEntriesAreReleasedOnceWritten() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            entries.add(Unpooled.copiedBuffer("entry-" + i, UTF_8));
+        }
+        when(bookie.batchReadEntries(1L, 0L, 3, 1024L * 1024L)).thenReturn(new ArrayList<>(entries));
+
+        new BatchedReadEntryProcessorV3(batchReadRequest(3), channel, requestProcessor).run();
+        channel.runPendingTasks();
+
+        Response response = readResponse();
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(StatusCode.EOK, response.getBatchReadResponse().getStatus());
+        assertEquals(3, response.getBatchReadResponse().getBodyCount());
+        for (int i = 0; i < 3; i++) {
+            assertEquals("entry-" + i, response.getBatchReadResponse().getBody(i).toString(UTF_8));
+            // The bodies were wrapped in the response, and released once serialized
+            assertEquals(0, entries.get(i).refCnt());
+        }
+    }
+
+    @Test
+    public void testEntriesAreReleasedWhenTheChannelIsInactive() throws Exception {
+        List<ByteBuf> entries = new ArrayList<>();
+        entries.add(Unpooled.copiedBuffer("entry-0", UTF_8));
+        when(bookie.batchReadEntries(1L, 0L, 3, 1024L * 1024L)).thenReturn(new ArrayList<>(entries));
+
+        channel.close();
+        new BatchedReadEntryProcessorV3(batchReadRequest(3), channel, requestProcessor).run();
+        channel.runPendingTasks();
+
+        assertEquals(0, entries.get(0).refCnt());
+    }
+
+    @Test
+    public void testMissingEntry() throws Exception {
+        when(bookie.batchReadEntries(1L, 0L, 3, 1024L * 1024L))
+                .thenThrow(new Bookie.NoEntryException(1L, 0L));
+
+        new BatchedReadEntryProcessorV3(batchReadRequest(3), channel, requestProcessor).run();
+        channel.runPendingTasks();
+
+        Response response = readResponse();
+        assertEquals(StatusCode.ENOENTRY, response.getStatus());
+        assertEquals(0, response.getBatchReadResponse().getBodyCount());
+    }
+
+    @Test
+    public void testInvalidMaxCount() throws Exception {
+        new BatchedReadEntryProcessorV3(batchReadRequest(101), channel, requestProcessor).run();
+        channel.runPendingTasks();
+
+        assertEquals(StatusCode.EBADREQ, readResponse().getStatus());
+    }
+}
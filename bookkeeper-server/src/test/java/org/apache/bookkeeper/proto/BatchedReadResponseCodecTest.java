@@ -0,0 +1,152 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import java.util.Arrays;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Unit test for the encoding of the v2 batched read responses.
+ */
+public class BatchedReadResponseCodecTest {
+
+    private static final long LEDGER_ID = 1L;
+    private static final long ENTRY_ID = 2L;
+
+    private final BookieProtoEncoding.ResponseEnDeCoderPreV3 codec =
+            new BookieProtoEncoding.ResponseEnDeCoderPreV3(null);
+
+    private static ByteBuf entry(int size) {
+        ByteBuf entry = Unpooled.buffer(size);
+        while (entry.isWritable()) {
+            entry.writeByte(entry.writerIndex());
+        }
+        return entry;
+    }
+
+    private static ByteBuf header(int rc) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeInt(BookieProtocol.PacketHeader.toInt(BookieProtocol.CURRENT_PROTOCOL_VERSION,
+                BookieProtocol.BATCH_READ_ENTRY, (short) 0));
+        frame.writeInt(rc);
+        frame.writeLong(LEDGER_ID);
+        frame.writeLong(ENTRY_ID);
+        return frame;
+    }
+
+    private void assertInvalid(ByteBuf frame) throws Exception {
+        try {
+            codec.decode(frame);
+            fail("The frame should have been rejected");
+        } catch (IllegalStateException e) {
+            // expected
+        }
+        // No slice of the frame is left retained
+        assertEquals(1, frame.refCnt());
+        frame.release();
+    }
+
+    @Test
+    public void testEncodeDecode() throws Exception {
+        ByteBuf first = entry(10);
+        ByteBuf second = entry(1000);
+        BookieProtocol.BatchedReadResponse response = new BookieProtocol.BatchedReadResponse(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.EOK, LEDGER_ID, ENTRY_ID,
+                Arrays.asList(first.retain(), second.retain()));
+        ByteBufList encoded = (ByteBufList) codec.encode(response, UnpooledByteBufAllocator.DEFAULT);
+        ByteBuf frame = ByteBufList.coalesce(encoded);
+        encoded.release();
+        assertEquals(1, first.refCnt());
+
+        BookieProtocol.BatchedReadResponse decoded = (BookieProtocol.BatchedReadResponse) codec.decode(frame);
+        try {
+            assertEquals(BookieProtocol.EOK, decoded.getErrorCode());
+            assertEquals(LEDGER_ID, decoded.getLedgerId());
+            assertEquals(ENTRY_ID, decoded.getEntryId());
+            assertEquals(Arrays.asList(first, second), decoded.getData());
+        } finally {
+            decoded.release();
+        }
+        assertEquals(1, frame.refCnt());
+        frame.release();
+        first.release();
+        second.release();
+    }
+
+    @Test
+    public void testEncodeErrorReleasesData() throws Exception {
+        ByteBuf entry = entry(10);
+        BookieProtocol.BatchedReadResponse response = new BookieProtocol.BatchedReadResponse(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, BookieProtocol.EIO, LEDGER_ID, ENTRY_ID,
+                Arrays.asList(entry));
+        ByteBuf encoded = (ByteBuf) codec.encode(response, UnpooledByteBufAllocator.DEFAULT);
+        assertEquals(0, entry.refCnt());
+
+        BookieProtocol.BatchedReadResponse decoded = (BookieProtocol.BatchedReadResponse) codec.decode(encoded);
+        assertEquals(BookieProtocol.EIO, decoded.getErrorCode());
+        assertTrue(decoded.getData().isEmpty());
+        encoded.release();
+    }
+
+    @Test
+    public void testNegativeCount() throws Exception {
+        ByteBuf frame = header(BookieProtocol.EOK);
+        frame.writeInt(-1);
+        assertInvalid(frame);
+    }
+
+    @Test
+    public void testCountLargerThanFrame() throws Exception {
+        ByteBuf frame = header(BookieProtocol.EOK);
+        frame.writeInt(Integer.MAX_VALUE);
+        frame.writeInt(0);
+        assertInvalid(frame);
+    }
+
+    @Test
+    public void testEntrySizeLargerThanFrame() throws Exception {
+        ByteBuf frame = header(BookieProtocol.EOK);
+        frame.writeInt(2);
+        frame.writeInt(10);
+        // The second entry is truncated, after the first one was sliced
+        frame.writeInt(100);
+        frame.writeBytes(entry(10));
+        frame.writeBytes(entry(50));
+        assertInvalid(frame);
+    }
+
+    @Test
+    public void testNegativeEntrySize() throws Exception {
+        ByteBuf frame = header(BookieProtocol.EOK);
+        frame.writeInt(1);
+        frame.writeInt(-10);
+        frame.writeBytes(entry(10));
+        assertInvalid(frame);
+    }
+}
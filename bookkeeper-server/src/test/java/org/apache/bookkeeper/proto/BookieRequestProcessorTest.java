@@ -0,0 +1,85 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.ssl.SslHandler;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link BookieRequestProcessor}.
+ */
+public class BookieRequestProcessorTest {
+
+    private static BookieRequestProcessor newRequestProcessor(int zeroCopyReadMinEntrySize) throws Exception {
+        ServerConfiguration conf = new ServerConfiguration();
+        conf.setZeroCopyReadMinEntrySize(zeroCopyReadMinEntrySize);
+        return new BookieRequestProcessor(conf, mock(Bookie.class), NullStatsLogger.INSTANCE, null,
+                ByteBufAllocator.DEFAULT);
+    }
+
+    @Test
+    public void testZeroCopyReadEnabled() throws Exception {
+        BookieRequestProcessor requestProcessor = newRequestProcessor(1024);
+        NioSocketChannel channel = new NioSocketChannel();
+        try {
+            assertTrue(requestProcessor.isZeroCopyReadEnabled(channel));
+
+            // The file regions can't be encrypted
+            SSLEngine engine = SSLContext.getDefault().createSSLEngine();
+            engine.setUseClientMode(false);
+            channel.pipeline().addLast("tls", new SslHandler(engine));
+            assertFalse(requestProcessor.isZeroCopyReadEnabled(channel));
+
+            channel.pipeline().remove("tls");
+            assertTrue(requestProcessor.isZeroCopyReadEnabled(channel));
+
+            // Nor sent by the other transports
+            assertFalse(requestProcessor.isZeroCopyReadEnabled(new EmbeddedChannel()));
+        } finally {
+            channel.unsafe().closeForcibly();
+            requestProcessor.close();
+        }
+    }
+
+    @Test
+    public void testZeroCopyReadDisabled() throws Exception {
+        BookieRequestProcessor requestProcessor = newRequestProcessor(0);
+        NioSocketChannel channel = new NioSocketChannel();
+        try {
+            assertFalse(requestProcessor.isZeroCopyReadEnabled(channel));
+        } finally {
+            channel.unsafe().closeForcibly();
+            requestProcessor.close();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.ReferenceCountUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link FileRegionFrame}, checking that the responses sent from a file region are decoded by the
+ * clients the same way as the responses copied in memory.
+ */
+public class FileRegionFrameTest {
+    private static final int ENTRY_POS = 1024;
+    private static final int ENTRY_SIZE = 4096;
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private File logFile;
+    private byte[] entry;
+
+    @Before
+    public void setUp() throws Exception {
+        ByteBuf buf = Unpooled.buffer(ENTRY_SIZE);
+        buf.writeLong(1L);
+        buf.writeLong(2L);
+        while (buf.isWritable()) {
+            buf.writeByte(buf.writerIndex());
+        }
+        entry = buf.array();
+
+        logFile = tmpDirs.newFile("1.log");
+        try (RandomAccessFile raf = new RandomAccessFile(logFile, "rw")) {
+            // Some data ahead of the entry, and after it, which must not be sent
+            raf.write(new byte[ENTRY_POS]);
+            raf.write(entry);
+            raf.write(new byte[ENTRY_POS]);
+        }
+    }
+
+    private FileRegion region() {
+        return new DefaultFileRegion(logFile, ENTRY_POS, ENTRY_SIZE);
+    }
+
+    /**
+     * Write a response through the outbound handlers of the bookie pipeline.
+     *
+     * @return the bytes written on the socket
+     */
+    private static ByteBuf encode(Object response) throws IOException {
+        EmbeddedChannel channel = new EmbeddedChannel(ByteBufList.ENCODER_WITH_SIZE, FileRegionFrame.ENCODER,
+                new LengthFieldPrepender(4), new BookieProtoEncoding.ResponseEncoder(null));
+        assertTrue(channel.writeOutbound(response));
+
+        ByteBuf wire = Unpooled.buffer();
+        Object msg;
+        while ((msg = channel.readOutbound()) != null) {
+            try {
+                if (msg instanceof FileRegion) {
+                    FileRegion region = (FileRegion) msg;
+                    ByteArrayOutputStream out = new ByteArrayOutputStream();
+                    WritableByteChannel target = Channels.newChannel(out);
+                    while (region.transferred() < region.count()) {
+                        region.transferTo(target, region.transferred());
+                    }
+                    wire.writeBytes(out.toByteArray());
+                } else {
+                    wire.writeBytes((ByteBuf) msg);
+                }
+            } finally {
+                ReferenceCountUtil.release(msg);
+            }
+        }
+        assertFalse(channel.finish());
+        return wire;
+    }
+
+    /**
+     * Read a response through the inbound handlers of the client pipeline.
+     */
+    private static Object decode(ByteBuf wire, boolean useV2Protocol) {
+        EmbeddedChannel channel = new EmbeddedChannel(new LengthFieldBasedFrameDecoder(1024 * 1024, 0, 4, 0, 4),
+                new BookieProtoEncoding.ResponseDecoder(null, useV2Protocol, false));
+        assertTrue(channel.writeInbound(wire));
+        Object decoded = channel.readInbound();
+        assertNull(channel.readInbound());
+        assertFalse(channel.finish());
+        return decoded;
+    }
+
+    private static Response toResponse(Object decoded) {
+        if (!(decoded instanceof MessageWithBody)) {
+            return (Response) decoded;
+        }
+        MessageWithBody withBody = (MessageWithBody) decoded;
+        try {
+            Response response = (Response) withBody.getMessage();
+            return response.toBuilder()
+                    .setReadResponse(response.getReadResponse().toBuilder()
+                            .setBody(ByteString.copyFrom(((ByteBuf) withBody.getBody()).nioBuffer())))
+                    .build();
+        } finally {
+            withBody.release();
+        }
+    }
+
+    @Test
+    public void testV2ReadResponse() throws Exception {
+        BookieProtocol.ReadRequest request = new BookieProtocol.ReadRequest(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, 1L, 2L, BookieProtocol.FLAG_NONE, null);
+        ByteBuf copied = encode(ResponseBuilder.buildReadResponse(Unpooled.wrappedBuffer(entry), request));
+        FileRegion region = region();
+        ByteBuf sent = encode(ResponseBuilder.buildReadResponse(region, request));
+        assertEquals(0, region.refCnt());
+
+        // The v2 frame is the same, whether the entry is copied or not
+        assertEquals(copied, sent);
+        copied.release();
+
+        BookieProtocol.ReadResponse response = (BookieProtocol.ReadResponse) decode(sent, true);
+        try {
+            assertEquals(BookieProtocol.EOK, response.getErrorCode());
+            assertEquals(1L, response.getLedgerId());
+            assertEquals(2L, response.getEntryId());
+            assertEquals(Unpooled.wrappedBuffer(entry), response.getData());
+        } finally {
+            response.release();
+        }
+    }
+
+    @Test
+    public void testV3ReadResponse() throws Exception {
+        Response response = Response.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(3L))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(ReadResponse.newBuilder()
+                        .setStatus(StatusCode.EOK)
+                        .setLedgerId(1L)
+                        .setEntryId(2L)
+                        .setMaxLAC(1L))
+                .build();
+        Response expected = response.toBuilder()
+                .setReadResponse(response.getReadResponse().toBuilder().setBody(ByteString.copyFrom(entry)))
+                .build();
+
+        ByteBuf copied = encode(new MessageWithBody(response, Unpooled.wrappedBuffer(entry)));
+        FileRegion region = region();
+        ByteBuf sent = encode(BookieProtoEncoding.serializeReadResponse(response, region,
+                UnpooledByteBufAllocator.DEFAULT));
+        assertEquals(0, region.refCnt());
+
+        // Stock protobuf parsers read the body out of the frame as well
+        assertEquals(sent.readableBytes() - 4, sent.getInt(0));
+        assertEquals(expected, Response.parseFrom(sent.nioBuffer(4, sent.readableBytes() - 4)));
+
+        assertEquals(expected, toResponse(decode(copied, false)));
+        assertEquals(expected, toResponse(decode(sent, false)));
+    }
+}
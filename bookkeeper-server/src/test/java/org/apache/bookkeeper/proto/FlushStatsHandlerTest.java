@@ -0,0 +1,152 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import org.apache.bookkeeper.stats.OpStatsLogger;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+
+/**
+ * Unit test for {@link FlushStatsHandler}.
+ */
+public class FlushStatsHandlerTest {
+
+    private OpStatsLogger messagesPerFlushStats;
+    private FlushCounter flushCounter;
+
+    @Before
+    public void setup() {
+        messagesPerFlushStats = mock(OpStatsLogger.class);
+        flushCounter = new FlushCounter();
+    }
+
+    /**
+     * Create a channel which writes the given number of messages, each followed by a flush, when it reads a
+     * message, like the bookie sending responses to a batch of requests.
+     */
+    private EmbeddedChannel newChannel(boolean consolidateFlushes, int maxFlushes, boolean recordStats,
+                                       int messagesPerRead) {
+        EmbeddedChannel channel = new EmbeddedChannel();
+        channel.pipeline().addLast(flushCounter);
+        FlushStatsHandler.addLast(channel.pipeline(), consolidateFlushes, maxFlushes, recordStats,
+                messagesPerFlushStats);
+        channel.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                for (int i = 0; i < messagesPerRead; i++) {
+                    ctx.writeAndFlush(i);
+                }
+            }
+        });
+        return channel;
+    }
+
+    private List<Long> recordedValues(int times) {
+        ArgumentCaptor<Long> values = ArgumentCaptor.forClass(Long.class);
+        verify(messagesPerFlushStats, times(times)).registerSuccessfulValue(values.capture());
+        return values.getAllValues();
+    }
+
+    private static void assertWritten(EmbeddedChannel channel, int messages) {
+        for (int i = 0; i < messages; i++) {
+            assertEquals(i, (int) channel.readOutbound());
+        }
+        assertNull(channel.readOutbound());
+        assertFalse(channel.finish());
+    }
+
+    @Test
+    public void testConsolidatedFlushes() {
+        EmbeddedChannel channel = newChannel(true, 256, true, 10);
+        channel.writeInbound("request");
+
+        // The flushes of the messages written during the read are sent downstream as one
+        assertEquals(1, flushCounter.flushes);
+        assertEquals(Collections.singletonList(10L), recordedValues(1));
+        assertWritten(channel, 10);
+    }
+
+    @Test
+    public void testMaxFlushes() {
+        EmbeddedChannel channel = newChannel(true, 4, true, 10);
+        channel.writeInbound("request");
+
+        // The channel is flushed every 4 flushes, then at the end of the read
+        assertEquals(3, flushCounter.flushes);
+        assertEquals(Arrays.asList(4L, 4L, 2L), recordedValues(3));
+        assertWritten(channel, 10);
+    }
+
+    @Test
+    public void testFlushesNotConsolidated() {
+        EmbeddedChannel channel = newChannel(false, 256, true, 3);
+        assertNull(channel.pipeline().get(FlushStatsHandler.CONSOLIDATION_NAME));
+        channel.writeInbound("request");
+
+        assertEquals(3, flushCounter.flushes);
+        assertEquals(Arrays.asList(1L, 1L, 1L), recordedValues(3));
+        assertWritten(channel, 3);
+    }
+
+    @Test
+    public void testStatsDisabled() {
+        EmbeddedChannel channel = newChannel(true, 256, false, 10);
+        assertNull(channel.pipeline().get(FlushStatsHandler.NAME));
+        assertNotNull(channel.pipeline().get(FlushStatsHandler.CONSOLIDATION_NAME));
+        channel.writeInbound("request");
+
+        // The flushes are still consolidated, without recording them
+        assertEquals(1, flushCounter.flushes);
+        verify(messagesPerFlushStats, never()).registerSuccessfulValue(anyLong());
+        assertWritten(channel, 10);
+    }
+
+    /**
+     * Counts the flushes reaching the head of the pipeline.
+     */
+    private static class FlushCounter extends ChannelOutboundHandlerAdapter {
+        int flushes = 0;
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) throws Exception {
+            flushes++;
+            ctx.flush();
+        }
+    }
+}
@@ -0,0 +1,463 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import com.google.protobuf.ByteString;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.MessageLite;
+import com.google.protobuf.WireFormat;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.util.ReferenceCountUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.AddRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadResponse;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ProtocolV3Codec}.
+ */
+public class ProtocolV3CodecTest {
+    private static final ByteString BODY = ByteString.copyFrom("the body of the entry", UTF_8);
+    private static final ByteString MASTER_KEY = ByteString.copyFrom("master key", UTF_8);
+
+    private static BKPacketHeader header(OperationType operation) {
+        return BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(operation)
+                .setTxnId(42L)
+                .build();
+    }
+
+    private static AddRequest.Builder addRequest() {
+        return AddRequest.newBuilder().setLedgerId(1L).setEntryId(2L).setMasterKey(MASTER_KEY);
+    }
+
+    private static Request addRequest(ByteString body) {
+        return Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().setBody(body))
+                .build();
+    }
+
+    private static Response readResponse(ByteString body) {
+        ReadResponse.Builder readResponse = ReadResponse.newBuilder()
+                .setStatus(StatusCode.EOK).setLedgerId(1L).setEntryId(2L).setMaxLAC(1L);
+        if (body != null) {
+            readResponse.setBody(body);
+        }
+        return Response.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY))
+                .setStatus(StatusCode.EOK)
+                .setReadResponse(readResponse)
+                .build();
+    }
+
+    private static ByteString toByteString(ByteBuf buf) {
+        return ByteString.copyFrom(buf.nioBuffer());
+    }
+
+    /**
+     * Put back the body of a decoded add request, to compare it with the request parsed by protobuf.
+     */
+    private static Request withBody(Object decoded) {
+        MessageWithBody msg = (MessageWithBody) decoded;
+        Request request = (Request) msg.getMessage();
+        assertEquals(ByteString.EMPTY, request.getAddRequest().getBody());
+        return request.toBuilder()
+                .setAddRequest(request.getAddRequest().toBuilder().setBody(toByteString((ByteBuf) msg.getBody())))
+                .build();
+    }
+
+    private static Response withReadBody(Object decoded) {
+        MessageWithBody msg = (MessageWithBody) decoded;
+        Response response = (Response) msg.getMessage();
+        return response.toBuilder()
+                .setReadResponse(response.getReadResponse().toBuilder()
+                        .setBody(toByteString((ByteBuf) msg.getBody())))
+                .build();
+    }
+
+    private static ByteBuf encode(MessageLite messageWithoutBody, ByteString body) {
+        MessageWithBody msg = new MessageWithBody(messageWithoutBody, Unpooled.wrappedBuffer(body.toByteArray()));
+        ByteBufList frame = ProtocolV3Codec.encode(msg, UnpooledByteBufAllocator.DEFAULT);
+        // the message is released, the frame holds the body
+        assertEquals(0, msg.refCnt());
+        try {
+            return ByteBufList.coalesce(frame);
+        } finally {
+            frame.release();
+        }
+    }
+
+    /**
+     * Frame writer, to build frames that the protobuf serializers don't produce.
+     */
+    private static final class Frame {
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final CodedOutputStream out = CodedOutputStream.newInstance(bytes);
+
+        Frame message(MessageLite message) throws IOException {
+            message.writeTo(out);
+            return this;
+        }
+
+        Frame nested(int fieldNumber, MessageLite message) throws IOException {
+            return nested(fieldNumber, message.toByteArray());
+        }
+
+        Frame nested(int fieldNumber, byte[] content) throws IOException {
+            out.writeTag(fieldNumber, WireFormat.WIRETYPE_LENGTH_DELIMITED);
+            out.writeUInt32NoTag(content.length);
+            out.writeRawBytes(content);
+            return this;
+        }
+
+        Frame tag(int fieldNumber, int wireType) throws IOException {
+            out.writeTag(fieldNumber, wireType);
+            return this;
+        }
+
+        Frame raw(int... bytes) throws IOException {
+            for (int b : bytes) {
+                out.writeRawByte(b);
+            }
+            return this;
+        }
+
+        byte[] toByteArray() throws IOException {
+            out.flush();
+            return bytes.toByteArray();
+        }
+
+        ByteBuf toByteBuf() throws IOException {
+            return Unpooled.wrappedBuffer(toByteArray());
+        }
+    }
+
+    private static void assertInvalidRequest(ByteBuf frame) {
+        try {
+            ProtocolV3Codec.decodeRequest(frame, null);
+            fail("The frame should not be decoded");
+        } catch (InvalidProtocolBufferException e) {
+            // Expected
+        }
+        // the slices of the body taken before the failure are released
+        assertEquals(1, frame.refCnt());
+    }
+
+    private static void assertInvalidResponse(ByteBuf frame) {
+        try {
+            ProtocolV3Codec.decodeResponse(frame, null);
+            fail("The frame should not be decoded");
+        } catch (InvalidProtocolBufferException e) {
+            // Expected
+        }
+        assertEquals(1, frame.refCnt());
+    }
+
+    @Test
+    public void testEncodedAddRequestIsParsedByProtobuf() throws Exception {
+        Request withoutBody = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().buildPartial())
+                .buildPartial();
+        ByteBuf frame = encode(withoutBody, BODY);
+        assertEquals(addRequest(BODY), Request.parseFrom(frame.nioBuffer()));
+        frame.release();
+    }
+
+    @Test
+    public void testEncodedReadResponseIsParsedByProtobuf() throws Exception {
+        ByteBuf frame = encode(readResponse(null), BODY);
+        assertEquals(readResponse(BODY), Response.parseFrom(frame.nioBuffer()));
+        frame.release();
+
+        // empty body
+        frame = encode(readResponse(null), ByteString.EMPTY);
+        assertEquals(readResponse(ByteString.EMPTY), Response.parseFrom(frame.nioBuffer()));
+        frame.release();
+    }
+
+    @Test
+    public void testDecodeAddRequestWrittenByProtobuf() throws Exception {
+        Request request = addRequest(BODY);
+        ByteBuf frame = Unpooled.wrappedBuffer(request.toByteArray());
+
+        Object decoded = ProtocolV3Codec.decodeRequest(frame, null);
+        assertEquals(request, withBody(decoded));
+        // the body is a slice of the frame
+        assertEquals(2, frame.refCnt());
+        ((MessageWithBody) decoded).release();
+        assertEquals(1, frame.refCnt());
+        frame.release();
+    }
+
+    @Test
+    public void testDecodeRequestWithoutBody() throws Exception {
+        Request request = Request.newBuilder()
+                .setHeader(header(OperationType.READ_ENTRY))
+                .setReadRequest(ReadRequest.newBuilder().setLedgerId(1L).setEntryId(2L))
+                .build();
+        ByteBuf frame = Unpooled.wrappedBuffer(request.toByteArray());
+        assertEquals(request, ProtocolV3Codec.decodeRequest(frame, null));
+        assertEquals(1, frame.refCnt());
+        frame.release();
+    }
+
+    @Test
+    public void testDecodeReadResponse() throws Exception {
+        Response response = readResponse(BODY);
+        ByteBuf frame = Unpooled.wrappedBuffer(response.toByteArray());
+        Object decoded = ProtocolV3Codec.decodeResponse(frame, null);
+        assertEquals(response, withReadBody(decoded));
+        ((MessageWithBody) decoded).release();
+        assertEquals(1, frame.refCnt());
+        frame.release();
+
+        // a response without body is returned as is
+        response = readResponse(null);
+        frame = Unpooled.wrappedBuffer(response.toByteArray());
+        assertEquals(response, ProtocolV3Codec.decodeResponse(frame, null));
+        assertEquals(1, frame.refCnt());
+        frame.release();
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        Request withoutBody = Request.newBuilder()
+                .setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().setWriteFlags(1).buildPartial())
+                .buildPartial();
+        ByteBuf frame = encode(withoutBody, BODY);
+        Object decoded = ProtocolV3Codec.decodeRequest(frame, null);
+        assertEquals(addRequest(BODY).toBuilder().setAddRequest(addRequest().setBody(BODY).setWriteFlags(1)).build(),
+                withBody(decoded));
+        ((MessageWithBody) decoded).release();
+        frame.release();
+
+        frame = encode(readResponse(null), BODY);
+        decoded = ProtocolV3Codec.decodeResponse(frame, null);
+        assertEquals(readResponse(BODY), withReadBody(decoded));
+        ((MessageWithBody) decoded).release();
+        frame.release();
+    }
+
+    @Test
+    public void testBodySplitAcrossNestedOccurrences() throws Exception {
+        // the body in the first occurrence of the add request, the other fields in the second one
+        byte[] bytes = new Frame()
+                .message(Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY)).build())
+                .nested(Request.ADDREQUEST_FIELD_NUMBER, AddRequest.newBuilder().setBody(BODY).buildPartial())
+                .nested(Request.ADDREQUEST_FIELD_NUMBER, addRequest().setWriteFlags(1).buildPartial())
+                .toByteArray();
+        checkDecodedLikeProtobuf(bytes);
+
+        // a body in each occurrence, the last one wins
+        bytes = new Frame()
+                .message(addRequest(ByteString.copyFrom("first body", UTF_8)))
+                .nested(Request.ADDREQUEST_FIELD_NUMBER, AddRequest.newBuilder().setBody(BODY).buildPartial())
+                .toByteArray();
+        Request decoded = checkDecodedLikeProtobuf(bytes);
+        assertEquals(BODY, decoded.getAddRequest().getBody());
+
+        // the header after the add request
+        bytes = new Frame()
+                .nested(Request.ADDREQUEST_FIELD_NUMBER, addRequest().setBody(BODY).build())
+                .nested(Request.HEADER_FIELD_NUMBER, header(OperationType.ADD_ENTRY))
+                .toByteArray();
+        checkDecodedLikeProtobuf(bytes);
+    }
+
+    private static Request checkDecodedLikeProtobuf(byte[] bytes) throws Exception {
+        Request expected = Request.parseFrom(bytes);
+        ByteBuf frame = Unpooled.wrappedBuffer(bytes);
+        Object decoded = ProtocolV3Codec.decodeRequest(frame, null);
+        Request request = withBody(decoded);
+        assertEquals(expected, request);
+        ((MessageWithBody) decoded).release();
+        // the replaced bodies are released
+        assertEquals(1, frame.refCnt());
+        frame.release();
+        return request;
+    }
+
+    @Test
+    public void testUnknownFields() throws Exception {
+        byte[] unknownFields = new Frame()
+                // varint, fixed64, length delimited and fixed32 fields
+                .tag(999, WireFormat.WIRETYPE_VARINT).raw(0x96, 0x01)
+                .tag(998, WireFormat.WIRETYPE_FIXED64).raw(1, 2, 3, 4, 5, 6, 7, 8)
+                .nested(997, new byte[] { 1, 2, 3 })
+                .tag(996, WireFormat.WIRETYPE_FIXED32).raw(1, 2, 3, 4)
+                .toByteArray();
+
+        byte[] nested = new Frame()
+                .raw(toInts(unknownFields))
+                .message(addRequest().setBody(BODY).build())
+                .raw(toInts(unknownFields))
+                .toByteArray();
+        byte[] bytes = new Frame()
+                .raw(toInts(unknownFields))
+                .message(Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY)).build())
+                .nested(Request.ADDREQUEST_FIELD_NUMBER, nested)
+                .raw(toInts(unknownFields))
+                .toByteArray();
+        checkDecodedLikeProtobuf(bytes);
+    }
+
+    private static int[] toInts(byte[] bytes) {
+        int[] ints = new int[bytes.length];
+        for (int i = 0; i < bytes.length; i++) {
+            ints[i] = bytes[i] & 0xFF;
+        }
+        return ints;
+    }
+
+    @Test
+    public void testTruncatedFrames() throws Exception {
+        byte[] bytes = addRequest(BODY).toByteArray();
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            Request expected;
+            try {
+                expected = Request.parseFrom(truncated);
+            } catch (InvalidProtocolBufferException e) {
+                assertInvalidRequest(Unpooled.wrappedBuffer(truncated));
+                continue;
+            }
+            // cut between two fields
+            ByteBuf frame = Unpooled.wrappedBuffer(truncated);
+            Object decoded = ProtocolV3Codec.decodeRequest(frame, null);
+            assertEquals(expected, decoded instanceof MessageWithBody ? withBody(decoded) : decoded);
+            ReferenceCountUtil.release(decoded);
+            assertEquals(1, frame.refCnt());
+        }
+
+        bytes = readResponse(BODY).toByteArray();
+        for (int length = 0; length < bytes.length; length++) {
+            byte[] truncated = Arrays.copyOf(bytes, length);
+            try {
+                Response.parseFrom(truncated);
+            } catch (InvalidProtocolBufferException e) {
+                assertInvalidResponse(Unpooled.wrappedBuffer(truncated));
+            }
+        }
+    }
+
+    @Test
+    public void testMalformedVarints() throws Exception {
+        // more than 10 bytes
+        assertInvalidRequest(new Frame().raw(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01)
+                .toByteBuf());
+        // truncated tag, after a valid add request with its body
+        byte[] request = addRequest(BODY).toByteArray();
+        assertInvalidRequest(new Frame().raw(toInts(request)).raw(0x80).toByteBuf());
+        // truncated varint field in the add request, after its body
+        byte[] nested = new Frame().message(addRequest().setBody(BODY).build())
+                .tag(AddRequest.WRITEFLAGS_FIELD_NUMBER, WireFormat.WIRETYPE_VARINT).raw(0x80).toByteArray();
+        assertInvalidRequest(new Frame().message(Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY))
+                .build()).nested(Request.ADDREQUEST_FIELD_NUMBER, nested).toByteBuf());
+    }
+
+    @Test
+    public void testMalformedLengths() throws Exception {
+        Request header = Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY)).build();
+        // nested message longer than the frame
+        assertInvalidRequest(new Frame().message(header)
+                .tag(Request.ADDREQUEST_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED).raw(100, 1, 2, 3)
+                .toByteBuf());
+        // negative length
+        assertInvalidRequest(new Frame().message(header)
+                .tag(Request.ADDREQUEST_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED)
+                .raw(0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0x01)
+                .toByteBuf());
+        // body longer than its nested message
+        byte[] nested = new Frame().message(addRequest().buildPartial())
+                .tag(AddRequest.BODY_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED).raw(10, 1, 2, 3)
+                .toByteArray();
+        assertInvalidRequest(new Frame().message(header).nested(Request.ADDREQUEST_FIELD_NUMBER, nested)
+                .raw(4, 5, 6, 7, 8, 9, 10).toByteBuf());
+        // field overrunning the nested message, after the body
+        nested = new Frame().message(addRequest().setBody(BODY).build())
+                .tag(AddRequest.WRITEFLAGS_FIELD_NUMBER, WireFormat.WIRETYPE_FIXED32).raw(1, 2)
+                .toByteArray();
+        assertInvalidRequest(new Frame().message(header).nested(Request.ADDREQUEST_FIELD_NUMBER, nested)
+                .raw(3, 4).toByteBuf());
+    }
+
+    @Test
+    public void testInvalidTags() throws Exception {
+        byte[] request = addRequest(BODY).toByteArray();
+        // zero tag
+        assertInvalidRequest(new Frame().raw(toInts(request)).raw(0).toByteBuf());
+        // invalid wire type
+        assertInvalidRequest(new Frame().raw(toInts(request)).raw(7 << 3 | 7).toByteBuf());
+        // group wire types are not supported
+        assertInvalidRequest(new Frame().raw(toInts(request)).tag(7, WireFormat.WIRETYPE_START_GROUP).toByteBuf());
+    }
+
+    @Test
+    public void testInvalidMessages() throws Exception {
+        // add request without body
+        assertInvalidRequest(new Frame().message(Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(addRequest().buildPartial()).buildPartial()).toByteBuf());
+        // missing required field, with a body
+        assertInvalidRequest(new Frame().message(Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY))
+                .setAddRequest(AddRequest.newBuilder().setLedgerId(1L).setBody(BODY).buildPartial())
+                .buildPartial()).toByteBuf());
+        assertInvalidRequest(new Frame().message(Request.newBuilder()
+                .setAddRequest(addRequest().setBody(BODY)).buildPartial()).toByteBuf());
+        // invalid field in the fields merged by protobuf, after the body: a header holding a truncated varint
+        ByteBuf frame = new Frame().message(Request.newBuilder().setHeader(header(OperationType.ADD_ENTRY)).build())
+                .nested(Request.ADDREQUEST_FIELD_NUMBER, addRequest(BODY).getAddRequest().toByteArray())
+                .tag(Request.HEADER_FIELD_NUMBER, WireFormat.WIRETYPE_LENGTH_DELIMITED).raw(2, 0x08, 0x80)
+                .toByteBuf();
+        try {
+            Request.parseFrom(frame.nioBuffer());
+            fail("Protobuf should not parse the frame");
+        } catch (InvalidProtocolBufferException e) {
+            // Expected
+        }
+        assertInvalidRequest(frame);
+
+        // read response with a body and missing a required field
+        assertInvalidResponse(new Frame().message(Response.newBuilder().setHeader(header(OperationType.READ_ENTRY))
+                .setReadResponse(ReadResponse.newBuilder().setStatus(StatusCode.EOK).setBody(BODY).buildPartial())
+                .buildPartial()).toByteBuf());
+    }
+}
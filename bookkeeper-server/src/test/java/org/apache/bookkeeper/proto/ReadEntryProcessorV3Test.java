@@ -0,0 +1,321 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import com.google.protobuf.ByteString;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.ChannelPromise;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.util.ReferenceCountUtil;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import org.apache.bookkeeper.bookie.Bookie;
+import org.apache.bookkeeper.bookie.BookieException;
+import org.apache.bookkeeper.common.util.OrderedExecutor;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.BKPacketHeader;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.OperationType;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ProtocolVersion;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.ReadRequest;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Request;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.Response;
+import org.apache.bookkeeper.proto.BookkeeperProtocol.StatusCode;
+import org.apache.bookkeeper.stats.NullStatsLogger;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Unit test for {@link ReadEntryProcessorV3}.
+ */
+public class ReadEntryProcessorV3Test {
+
+    @Rule
+    public TemporaryFolder tmpDirs = new TemporaryFolder();
+
+    private Bookie bookie;
+    private BookieRequestProcessor requestProcessor;
+    private OrderedExecutor readThreadPool;
+    private EmbeddedChannel channel;
+    private final AtomicReference<Thread> writeThread = new AtomicReference<>();
+    private final CountDownLatch written = new CountDownLatch(1);
+
+    @Before
+    public void setUp() throws Exception {
+        bookie = mock(Bookie.class);
+        when(bookie.readLastAddConfirmed(1L)).thenReturn(5L);
+        readThreadPool = OrderedExecutor.newBuilder().numThreads(2).name("test-read").build();
+
+        requestProcessor = mock(BookieRequestProcessor.class);
+        when(requestProcessor.getBookie()).thenReturn(bookie);
+        when(requestProcessor.getRequestStats()).thenReturn(new RequestStats(NullStatsLogger.INSTANCE));
+        when(requestProcessor.getWaitTimeoutOnBackpressureMillis()).thenReturn(-1L);
+        when(requestProcessor.getReadThreadPool()).thenReturn(readThreadPool);
+
+        // Record the thread writing the response, then serialize it as the bookie does
+        channel = new EmbeddedChannel(new ChannelOutboundHandlerAdapter() {
+            @Override
+            public void write(ChannelHandlerContext ctx, Object msg, ChannelPromise promise) throws Exception {
+                writeThread.set(Thread.currentThread());
+                ctx.write(msg, promise);
+            }
+
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                // The response is only queued on the embedded channel once flushed
+                ctx.flush();
+                written.countDown();
+            }
+        }, new BookieProtoEncoding.ResponseEncoder(null));
+    }
+
+    @After
+    public void tearDown() {
+        channel.finishAndReleaseAll();
+        readThreadPool.shutdownNow();
+    }
+
+    private static Request readRequest() {
+        return Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.READ_ENTRY)
+                        .setTxnId(1L))
+                .setReadRequest(ReadRequest.newBuilder()
+                        .setLedgerId(1L)
+                        .setEntryId(3L))
+                .build();
+    }
+
+    private Thread orderedThread() throws Exception {
+        return readThreadPool.chooseThread(1L).submit(Thread::currentThread).get();
+    }
+
+    /**
+     * Decode the response written on the channel.
+     *
+     * @return the response, with its body as a string if it has one
+     */
+    private Response readResponse() throws Exception {
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        Object msg = channel.readOutbound();
+        ByteBuf frame = msg instanceof ByteBufList ? ByteBufList.coalesce((ByteBufList) msg) : (ByteBuf) msg;
+        if (frame != msg) {
+            ReferenceCountUtil.release(msg);
+        }
+        Object decoded = ProtocolV3Codec.decodeResponse(frame, null);
+        frame.release();
+        if (!(decoded instanceof MessageWithBody)) {
+            return (Response) decoded;
+        }
+        MessageWithBody withBody = (MessageWithBody) decoded;
+        try {
+            Response response = (Response) withBody.getMessage();
+            return response.toBuilder()
+                    .setReadResponse(response.getReadResponse().toBuilder()
+                            .setBody(ByteString.copyFrom(((ByteBuf) withBody.getBody()).nioBuffer())))
+                    .build();
+        } finally {
+            withBody.release();
+        }
+    }
+
+    @Test
+    public void testCachedReadIsSentFromTheReadThread() throws Exception {
+        ByteBuf entry = Unpooled.copiedBuffer("entry", UTF_8);
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(CompletableFuture.completedFuture(entry));
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+
+        Response response = readResponse();
+        assertSame(Thread.currentThread(), writeThread.get());
+        assertEquals(StatusCode.EOK, response.getStatus());
+        assertEquals(StatusCode.EOK, response.getReadResponse().getStatus());
+        assertEquals(5L, response.getReadResponse().getMaxLAC());
+        assertEquals("entry", response.getReadResponse().getBody().toString(UTF_8));
+        assertEquals(0, entry.refCnt());
+    }
+
+    @Test
+    public void testStorageReadIsSentFromTheOrderedThread() throws Exception {
+        CompletableFuture<ByteBuf> storageRead = new CompletableFuture<>();
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(storageRead);
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+        assertNull(channel.readOutbound());
+
+        // Complete the read from a storage read I/O thread
+        ByteBuf entry = Unpooled.copiedBuffer("entry", UTF_8);
+        Thread readIOThread = new Thread(() -> storageRead.complete(entry), "db-storage-read-test");
+        readIOThread.start();
+        readIOThread.join();
+
+        Response response = readResponse();
+        assertSame(orderedThread(), writeThread.get());
+        assertEquals(StatusCode.EOK, response.getReadResponse().getStatus());
+        assertEquals("entry", response.getReadResponse().getBody().toString(UTF_8));
+        assertEquals(0, entry.refCnt());
+    }
+
+    @Test
+    public void testStorageReadFailureIsSentFromTheOrderedThread() throws Exception {
+        CompletableFuture<ByteBuf> storageRead = new CompletableFuture<>();
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(storageRead);
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+        Thread readIOThread = new Thread(() -> storageRead.completeExceptionally(new Bookie.NoEntryException(1L, 3L)),
+                "db-storage-read-test");
+        readIOThread.start();
+        readIOThread.join();
+
+        Response response = readResponse();
+        assertSame(orderedThread(), writeThread.get());
+        assertEquals(StatusCode.ENOENTRY, response.getReadResponse().getStatus());
+    }
+
+    @Test
+    public void testRejectedStorageRead() throws Exception {
+        CompletableFuture<ByteBuf> storageRead = new CompletableFuture<>();
+        storageRead.completeExceptionally(new BookieException.OperationRejectedException());
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(storageRead);
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+
+        Response response = readResponse();
+        assertEquals(StatusCode.ETOOMANYREQUESTS, response.getStatus());
+        assertEquals(StatusCode.ETOOMANYREQUESTS, response.getReadResponse().getStatus());
+    }
+
+    @Test
+    public void testStorageReadIsSentWhenTheOrderedThreadRejectsIt() throws Exception {
+        CompletableFuture<ByteBuf> storageRead = new CompletableFuture<>();
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(storageRead);
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+        readThreadPool.shutdown();
+
+        ByteBuf entry = Unpooled.copiedBuffer("entry", UTF_8);
+        Thread readIOThread = new Thread(() -> storageRead.complete(entry), "db-storage-read-test");
+        readIOThread.start();
+        readIOThread.join();
+
+        Response response = readResponse();
+        assertSame(readIOThread, writeThread.get());
+        assertEquals(StatusCode.EOK, response.getReadResponse().getStatus());
+        assertEquals(0, entry.refCnt());
+    }
+
+    private FileRegion entryRegion() throws IOException {
+        File logFile = tmpDirs.newFile("1.log");
+        Files.write(logFile.toPath(), "entry".getBytes(UTF_8));
+        return new DefaultFileRegion(logFile, 0, logFile.length());
+    }
+
+    private void enableZeroCopyRead() {
+        when(requestProcessor.isZeroCopyReadEnabled(channel)).thenReturn(true);
+        when(requestProcessor.getZeroCopyReadMinEntrySize()).thenReturn(4);
+    }
+
+    @Test
+    public void testZeroCopyRead() throws Exception {
+        enableZeroCopyRead();
+        FileRegion region = entryRegion();
+        when(bookie.readEntryRegion(1L, 3L, 4)).thenReturn(region);
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+
+        assertTrue(written.await(10, TimeUnit.SECONDS));
+        Object msg = channel.readOutbound();
+        assertTrue(msg instanceof FileRegionFrame);
+        ReferenceCountUtil.release(msg);
+        assertEquals(0, region.refCnt());
+        verify(bookie, never()).readEntryAsync(anyLong(), anyLong());
+    }
+
+    @Test
+    public void testZeroCopyReadFallsBackToRegularRead() throws Exception {
+        // The storage has no region for the cached entries, the entries below the minimum size, the tail of the
+        // current entry log still in its write buffer, or the entry logs deleted in the meantime
+        enableZeroCopyRead();
+        when(bookie.readEntryRegion(1L, 3L, 4)).thenReturn(null);
+        ByteBuf entry = Unpooled.copiedBuffer("entry", UTF_8);
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(CompletableFuture.completedFuture(entry));
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+
+        Response response = readResponse();
+        assertEquals(StatusCode.EOK, response.getReadResponse().getStatus());
+        assertEquals("entry", response.getReadResponse().getBody().toString(UTF_8));
+    }
+
+    @Test
+    public void testZeroCopyReadFailureFallsBackToRegularRead() throws Exception {
+        enableZeroCopyRead();
+        when(bookie.readEntryRegion(1L, 3L, 4)).thenThrow(new IOException("region failure"));
+        CompletableFuture<ByteBuf> storageRead = new CompletableFuture<>();
+        storageRead.completeExceptionally(new Bookie.NoEntryException(1L, 3L));
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(storageRead);
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+
+        // The regular read reports the error
+        Response response = readResponse();
+        assertEquals(StatusCode.ENOENTRY, response.getReadResponse().getStatus());
+    }
+
+    @Test
+    public void testZeroCopyReadDisabledForChannel() throws Exception {
+        // Such as the channels with an SslHandler, see BookieRequestProcessorTest
+        when(requestProcessor.isZeroCopyReadEnabled(channel)).thenReturn(false);
+        ByteBuf entry = Unpooled.copiedBuffer("entry", UTF_8);
+        when(bookie.readEntryAsync(1L, 3L)).thenReturn(CompletableFuture.completedFuture(entry));
+
+        new ReadEntryProcessorV3(readRequest(), channel, requestProcessor, null).run();
+
+        Response response = readResponse();
+        assertEquals("entry", response.getReadResponse().getBody().toString(UTF_8));
+        verify(bookie, never()).readEntryRegion(anyLong(), anyLong(), anyInt());
+    }
+}
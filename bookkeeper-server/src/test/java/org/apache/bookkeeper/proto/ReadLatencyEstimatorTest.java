@@ -0,0 +1,83 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.proto;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link ReadLatencyEstimator}.
+ */
+public class ReadLatencyEstimatorTest {
+    private static final long MS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long HALF_LIFE = TimeUnit.SECONDS.toNanos(2);
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.HOURS.toNanos(1));
+    private final ReadLatencyEstimator estimator = new ReadLatencyEstimator(clock::get);
+
+    @Test
+    public void testAverage() {
+        assertEquals(0, estimator.getLatencyNanos(0));
+
+        estimator.recordLatency(10 * MS);
+        assertEquals(10 * MS, estimator.getLatencyNanos(0));
+
+        // The last read weights 20% of the average
+        estimator.recordLatency(20 * MS);
+        assertEquals(12 * MS, estimator.getLatencyNanos(0), 1.0);
+    }
+
+    @Test
+    public void testDecayWhileIdle() {
+        estimator.recordLatency(10 * MS);
+
+        clock.addAndGet(HALF_LIFE);
+        assertEquals(5 * MS, estimator.getLatencyNanos(0), 1.0);
+        clock.addAndGet(HALF_LIFE);
+        assertEquals(2.5 * MS, estimator.getLatencyNanos(0), 1.0);
+
+        // Once known, the latency is never reported as unknown
+        clock.addAndGet(TimeUnit.HOURS.toNanos(1));
+        assertEquals(1, estimator.getLatencyNanos(0));
+    }
+
+    @Test
+    public void testNoDecayWhileRequestsAreOutstanding() {
+        estimator.recordLatency(10 * MS);
+
+        // A stalled bookie doesn't complete its reads, it must not look faster and faster
+        for (int i = 0; i < 10; i++) {
+            clock.addAndGet(HALF_LIFE);
+            assertEquals(10 * MS, estimator.getLatencyNanos(5));
+        }
+
+        // The decay starts when the bookie was last seen busy
+        clock.addAndGet(HALF_LIFE);
+        assertEquals(5 * MS, estimator.getLatencyNanos(0), 1.0);
+
+        // A late completion is averaged with the latency as of the last time the bookie was busy
+        estimator.recordLatency(30 * MS);
+        assertEquals(0.2 * 30 * MS + 0.8 * 5 * MS, estimator.getLatencyNanos(0), 1.0);
+    }
+}
@@ -0,0 +1,200 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeFalse;
+import static org.junit.Assume.assumeTrue;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.incubator.channel.uring.IOUring;
+import io.netty.incubator.channel.uring.IOUringServerSocketChannel;
+import io.netty.incubator.channel.uring.IOUringSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.commons.lang.SystemUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link EventLoopUtil}, checking the transport picked by the event loop groups when io_uring is
+ * enabled, and that the matching channels work.
+ */
+public class EventLoopUtilTest {
+
+    private final ThreadFactory threadFactory = new DefaultThreadFactory("event-loop-util-test");
+    private final List<EventLoopGroup> eventLoopGroups = new ArrayList<>();
+
+    @After
+    public void teardown() throws Exception {
+        for (EventLoopGroup eventLoopGroup : eventLoopGroups) {
+            eventLoopGroup.shutdownGracefully(0, 1, TimeUnit.SECONDS).sync();
+        }
+    }
+
+    private EventLoopGroup track(EventLoopGroup eventLoopGroup) {
+        eventLoopGroups.add(eventLoopGroup);
+        return eventLoopGroup;
+    }
+
+    private static boolean isIoUringSupported() {
+        return SystemUtils.IS_OS_LINUX && IOUring.isAvailable();
+    }
+
+    /**
+     * Check that the group uses epoll when available, and nio otherwise, along with the matching channels.
+     */
+    private static void assertFallbackTransport(EventLoopGroup eventLoopGroup) {
+        assertFalse(EventLoopUtil.isIOUringEventLoopGroup(eventLoopGroup));
+        if (SystemUtils.IS_OS_LINUX && Epoll.isAvailable()) {
+            assertTrue(eventLoopGroup instanceof EpollEventLoopGroup);
+            assertEquals(EpollServerSocketChannel.class, EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
+            assertEquals(EpollSocketChannel.class, EventLoopUtil.getSocketChannelClass(eventLoopGroup));
+        } else {
+            assertTrue(eventLoopGroup instanceof NioEventLoopGroup);
+            assertEquals(NioServerSocketChannel.class, EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
+            assertEquals(NioSocketChannel.class, EventLoopUtil.getSocketChannelClass(eventLoopGroup));
+        }
+    }
+
+    private static void assertIOUringTransport(EventLoopGroup eventLoopGroup) {
+        assertTrue(EventLoopUtil.isIOUringEventLoopGroup(eventLoopGroup));
+        assertEquals(IOUringServerSocketChannel.class, EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
+        assertEquals(IOUringSocketChannel.class, EventLoopUtil.getSocketChannelClass(eventLoopGroup));
+    }
+
+    /**
+     * Connect a client to a server, both using the channels matching the group, and echo some data.
+     */
+    private static void assertTransportWorks(EventLoopGroup eventLoopGroup) throws Exception {
+        Channel serverChannel = new ServerBootstrap()
+                .group(eventLoopGroup, eventLoopGroup)
+                .channel(EventLoopUtil.getServerSocketChannelClass(eventLoopGroup))
+                .childHandler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ctx.writeAndFlush(msg);
+                    }
+                })
+                .bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+        CompletableFuture<Integer> echoed = new CompletableFuture<>();
+        Channel channel = new Bootstrap()
+                .group(eventLoopGroup)
+                .channel(EventLoopUtil.getSocketChannelClass(eventLoopGroup))
+                .handler(new ChannelInboundHandlerAdapter() {
+                    @Override
+                    public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                        ByteBuf buf = (ByteBuf) msg;
+                        echoed.complete(buf.readInt());
+                        buf.release();
+                    }
+                })
+                .connect(serverChannel.localAddress()).sync().channel();
+        try {
+            channel.writeAndFlush(Unpooled.buffer(4).writeInt(42)).sync();
+            assertEquals(42, (int) echoed.get(10, TimeUnit.SECONDS));
+        } finally {
+            channel.close().sync();
+            serverChannel.close().sync();
+        }
+    }
+
+    @Test
+    public void testIoUringEnabled() throws Exception {
+        assumeTrue(isIoUringSupported());
+
+        ServerConfiguration serverConf = new ServerConfiguration().setIoUringEnabled(true);
+        serverConf.setServerNumIOThreads(1);
+        EventLoopGroup serverGroup = track(EventLoopUtil.getServerEventLoopGroup(serverConf, threadFactory));
+        assertIOUringTransport(serverGroup);
+        assertTransportWorks(serverGroup);
+
+        ClientConfiguration clientConf = new ClientConfiguration().setIoUringEnabled(true);
+        clientConf.setNumIOThreads(1);
+        EventLoopGroup clientGroup = track(EventLoopUtil.getClientEventLoopGroup(clientConf, threadFactory));
+        assertIOUringTransport(clientGroup);
+        assertTransportWorks(clientGroup);
+    }
+
+    @Test
+    public void testIoUringNotSupported() throws Exception {
+        // Non Linux systems, or a kernel without io_uring
+        assumeFalse(isIoUringSupported());
+
+        ServerConfiguration serverConf = new ServerConfiguration().setIoUringEnabled(true);
+        serverConf.setServerNumIOThreads(1);
+        EventLoopGroup serverGroup = track(EventLoopUtil.getServerEventLoopGroup(serverConf, threadFactory));
+        assertFallbackTransport(serverGroup);
+        assertTransportWorks(serverGroup);
+
+        ClientConfiguration clientConf = new ClientConfiguration().setIoUringEnabled(true);
+        clientConf.setNumIOThreads(1);
+        EventLoopGroup clientGroup = track(EventLoopUtil.getClientEventLoopGroup(clientConf, threadFactory));
+        assertFallbackTransport(clientGroup);
+        assertTransportWorks(clientGroup);
+    }
+
+    @Test
+    public void testIoUringTransportMissing() throws Exception {
+        EventLoopGroup eventLoopGroup = track(EventLoopUtil.getEventLoopGroup(threadFactory, 1, false, true, false));
+        assertFallbackTransport(eventLoopGroup);
+        assertTransportWorks(eventLoopGroup);
+    }
+
+    @Test
+    public void testIoUringIgnoresBusyWait() throws Exception {
+        assumeTrue(isIoUringSupported());
+
+        EventLoopGroup eventLoopGroup = track(EventLoopUtil.getEventLoopGroup(threadFactory, 1, true, true, true));
+        assertIOUringTransport(eventLoopGroup);
+        assertTransportWorks(eventLoopGroup);
+    }
+
+    @Test
+    public void testNioChannels() throws Exception {
+        EventLoopGroup eventLoopGroup = track(new NioEventLoopGroup(1, threadFactory));
+        assertFalse(EventLoopUtil.isIOUringEventLoopGroup(eventLoopGroup));
+        assertEquals(NioServerSocketChannel.class, EventLoopUtil.getServerSocketChannelClass(eventLoopGroup));
+        assertEquals(NioSocketChannel.class, EventLoopUtil.getSocketChannelClass(eventLoopGroup));
+        assertTransportWorks(eventLoopGroup);
+    }
+}
@@ -0,0 +1,638 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.junit.Test;
+
+/**
+ * Unit test for {@link OffHeapLongLongHashMap}.
+ */
+public class OffHeapLongLongHashMapTest {
+
+    @Test
+    public void testConstructor() {
+        try {
+            OffHeapLongLongHashMap.newBuilder().expectedItems(0).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            OffHeapLongLongHashMap.newBuilder().expectedItems(16).concurrencyLevel(0).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            OffHeapLongLongHashMap.newBuilder().expectedItems(4).concurrencyLevel(8).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            OffHeapLongLongHashMap.newBuilder().mapFillFactor(0.2f).mapIdleFactor(0.5f).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void simpleInsertions() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().expectedItems(16).build()) {
+            assertTrue(map.isEmpty());
+            assertEquals(-1, map.put(1, 11));
+            assertFalse(map.isEmpty());
+
+            assertEquals(-1, map.put(2, 22));
+            assertEquals(-1, map.put(3, 33));
+
+            assertEquals(3, map.size());
+
+            assertEquals(11, map.get(1));
+            assertEquals(3, map.size());
+
+            assertEquals(11, map.remove(1));
+            assertEquals(2, map.size());
+            assertEquals(-1, map.get(1));
+            assertEquals(-1, map.get(5));
+            assertEquals(2, map.size());
+
+            assertEquals(-1, map.put(1, 11));
+            assertEquals(3, map.size());
+            assertEquals(11, map.put(1, 111));
+            assertEquals(3, map.size());
+            assertEquals(111, map.get(1));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            assertTrue(map.isEmpty());
+            assertEquals(-1, map.put(1, 1));
+            assertFalse(map.isEmpty());
+
+            assertEquals(-1, map.remove(0));
+            assertFalse(map.isEmpty());
+            assertEquals(1, map.remove(1));
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void testClear() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .mapIdleFactor(0.25f)
+                .build()) {
+            assertEquals(4, map.capacity());
+
+            assertEquals(-1, map.put(1, 1));
+            assertEquals(-1, map.put(2, 2));
+            assertEquals(-1, map.put(3, 3));
+
+            assertEquals(8, map.capacity());
+            map.clear();
+            assertEquals(0, map.size());
+            assertEquals(-1, map.get(1));
+            assertEquals(4, map.capacity());
+        }
+    }
+
+    @Test
+    public void testExpandAndShrink() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .mapIdleFactor(0.25f)
+                .build()) {
+            assertEquals(-1, map.put(1, 1));
+            assertEquals(-1, map.put(2, 2));
+            assertEquals(4, map.capacity());
+
+            // expand hashmap
+            assertEquals(-1, map.put(3, 3));
+            assertEquals(8, map.capacity());
+
+            assertEquals(1, map.remove(1));
+            // not shrink
+            assertEquals(8, map.capacity());
+            assertEquals(2, map.remove(2));
+            // shrink hashmap
+            assertEquals(4, map.capacity());
+
+            // expand hashmap
+            assertEquals(-1, map.put(4, 4));
+            assertEquals(-1, map.put(5, 5));
+            assertEquals(8, map.capacity());
+
+            for (long key = 3; key <= 5; key++) {
+                assertEquals(key, map.get(key));
+            }
+            assertEquals(3, map.size());
+        }
+    }
+
+    @Test
+    public void testNegativeUsedBucketCount() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build()) {
+            map.put(0, 0);
+            assertEquals(1, map.getUsedBucketCount());
+            map.put(0, 1);
+            assertEquals(1, map.getUsedBucketCount());
+            map.remove(0);
+            assertEquals(0, map.getUsedBucketCount());
+            map.remove(0);
+            assertEquals(0, map.getUsedBucketCount());
+        }
+    }
+
+    @Test
+    public void testRehashing() {
+        int n = 16;
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(n / 2)
+                .concurrencyLevel(1)
+                .build()) {
+            assertEquals(map.capacity(), n);
+            assertEquals(0, map.size());
+
+            for (int i = 0; i < n; i++) {
+                map.put(i, i);
+            }
+
+            assertEquals(2 * n, map.capacity());
+            assertEquals(n, map.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(i, map.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testRehashingWithDeletes() {
+        int n = 16;
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(n / 2)
+                .concurrencyLevel(1)
+                .build()) {
+            assertEquals(map.capacity(), n);
+            assertEquals(0, map.size());
+
+            for (int i = 0; i < n / 2; i++) {
+                map.put(i, i);
+            }
+
+            for (int i = 0; i < n / 2; i++) {
+                map.remove(i);
+            }
+
+            for (int i = n; i < (2 * n); i++) {
+                map.put(i, i);
+            }
+
+            assertEquals(2 * n, map.capacity());
+            assertEquals(n, map.size());
+            for (int i = 0; i < n / 2; i++) {
+                assertEquals(-1, map.get(i));
+            }
+            for (int i = n; i < 2 * n; i++) {
+                assertEquals(i, map.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalMigrationKeepsItemsVisible() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(1024)
+                .concurrencyLevel(1)
+                .build()) {
+            // Every key must be found after each insertion, whether or not it has been moved to the new table
+            for (int i = 0; i < 10_000; i++) {
+                map.put(i, i * 10L);
+                if (i % 7 == 0) {
+                    assertEquals(i * 10L, map.remove(i));
+                    assertEquals(-1, map.put(i, i * 10L));
+                }
+                for (int j = Math.max(0, i - 100); j <= i; j++) {
+                    assertEquals(j * 10L, map.get(j));
+                }
+            }
+            assertEquals(10_000, map.size());
+        }
+    }
+
+    @Test
+    public void concurrentInsertions() throws Throwable {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            ExecutorService executor = Executors.newCachedThreadPool();
+
+            final int nThreads = 16;
+            final int n = 10_000;
+            long value = 55;
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads; i++) {
+                final int threadIdx = i;
+
+                futures.add(executor.submit(() -> {
+                    Random random = new Random();
+
+                    for (int j = 0; j < n; j++) {
+                        long key = Math.abs(random.nextLong());
+                        // Ensure keys are unique
+                        key -= key % (threadIdx + 1);
+                        key = key / nThreads * nThreads + threadIdx;
+
+                        map.put(key, value);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            assertEquals(n * nThreads, map.size());
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentInsertionsAndReads() throws Throwable {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            ExecutorService executor = Executors.newCachedThreadPool();
+
+            final int nThreads = 16;
+            final int n = 10_000;
+            final long value = 55;
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads; i++) {
+                final int threadIdx = i;
+
+                futures.add(executor.submit(() -> {
+                    Random random = new Random();
+
+                    for (int j = 0; j < n; j++) {
+                        long key = Math.abs(random.nextLong());
+                        // Ensure keys are unique
+                        key -= key % (threadIdx + 1);
+                        key = key / nThreads * nThreads + threadIdx;
+
+                        map.put(key, value);
+                        assertEquals(value, map.get(key));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            assertEquals(n * nThreads, map.size());
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentPutAndRemoveDuringRehash() throws Throwable {
+        // A single small section, so that the threads keep updating it while it expands and shrinks
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .build()) {
+            final int nWriters = 4;
+            final int nReaders = 4;
+            final int n = 20_000;
+            ExecutorService executor = Executors.newFixedThreadPool(nWriters + nReaders);
+            CyclicBarrier barrier = new CyclicBarrier(nWriters + nReaders);
+            // Highest index of each writer below which the odd keys are stable
+            AtomicLongArray progress = new AtomicLongArray(nWriters);
+            AtomicBoolean done = new AtomicBoolean();
+
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < nWriters; t++) {
+                final int writer = t;
+                writers.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int i = 0; i < n; i++) {
+                        long key = (long) i * nWriters + writer;
+                        assertEquals(-1, map.put(key, key + 1));
+                        if (i % 2 == 0) {
+                            // even keys are removed right away, making the section expand and shrink
+                            assertEquals(key + 1, map.remove(key));
+                        }
+                        progress.set(writer, i);
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < nReaders; t++) {
+                readers.add(executor.submit(() -> {
+                    barrier.await();
+                    Random random = new Random();
+                    while (!done.get()) {
+                        int writer = random.nextInt(nWriters);
+                        long max = progress.get(writer);
+                        if (max < 1) {
+                            continue;
+                        }
+                        long i = random.nextInt((int) max) | 1;
+                        if (i > max) {
+                            continue;
+                        }
+                        long key = i * nWriters + writer;
+                        assertEquals(key + 1, map.get(key));
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                for (Future<?> future : writers) {
+                    future.get();
+                }
+            } finally {
+                done.set(true);
+            }
+            for (Future<?> future : readers) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(nWriters * n / 2, map.size());
+            for (int t = 0; t < nWriters; t++) {
+                for (long i = 0; i < n; i++) {
+                    long key = i * nWriters + t;
+                    assertEquals(i % 2 == 0 ? -1 : key + 1, map.get(key));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIteration() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            List<Long> keys = new ArrayList<>();
+            map.forEach((key, value) -> keys.add(key));
+            assertTrue(keys.isEmpty());
+
+            map.put(0, 0);
+            map.forEach((key, value) -> keys.add(key));
+            assertEquals(Collections.singletonList(0L), keys);
+
+            map.remove(0);
+            keys.clear();
+            map.forEach((key, value) -> keys.add(key));
+            assertTrue(keys.isEmpty());
+
+            map.put(0, 0);
+            map.put(1, 11);
+            map.put(2, 22);
+
+            List<Long> values = new ArrayList<>();
+            keys.clear();
+            map.forEach((key, value) -> {
+                keys.add(key);
+                values.add(value);
+            });
+            Collections.sort(keys);
+            Collections.sort(values);
+            assertEquals(3, keys.size());
+            assertEquals(Arrays.asList(0L, 1L, 2L), keys);
+            assertEquals(Arrays.asList(0L, 11L, 22L), values);
+        }
+    }
+
+    @Test
+    public void testIterationDuringMigration() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(256)
+                .concurrencyLevel(1)
+                .build()) {
+            // Stop right after an expansion, while the old table still holds most of the items
+            long capacity = map.capacity();
+            long key = 0;
+            while (map.capacity() == capacity) {
+                map.put(key, key);
+                key++;
+            }
+
+            List<Long> keys = new ArrayList<>();
+            map.forEach((k, v) -> keys.add(k));
+            Collections.sort(keys);
+            assertEquals(key, keys.size());
+            for (int i = 0; i < key; i++) {
+                assertEquals(i, (long) keys.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testHashConflictWithDeletion() {
+        final int buckets = 16;
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(buckets)
+                .concurrencyLevel(1)
+                .build()) {
+            int capacity = (int) map.capacity();
+
+            // Pick 2 keys that fall into the same bucket
+            long key1 = 1;
+            long key2 = 2;
+            int bucket1 = OffHeapLongLongHashMap.signSafeMod(ConcurrentLongLongHashMap.hash(key1), capacity);
+            while (OffHeapLongLongHashMap.signSafeMod(ConcurrentLongLongHashMap.hash(key2), capacity) != bucket1) {
+                key2++;
+            }
+
+            long value1 = 1;
+            long value2 = 2;
+
+            assertEquals(-1, map.put(key1, value1));
+            assertEquals(-1, map.put(key2, value2));
+            assertEquals(2, map.size());
+
+            assertEquals(value1, map.remove(key1));
+            assertEquals(1, map.size());
+
+            assertEquals(-1, map.put(key1, value1));
+            assertEquals(2, map.size());
+
+            assertEquals(value1, map.remove(key1));
+            assertEquals(1, map.size());
+
+            assertEquals(value2, map.remove(key2));
+            assertTrue(map.isEmpty());
+            assertEquals(0, map.getUsedBucketCount());
+        }
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            assertEquals(-1, map.putIfAbsent(1, 11));
+            assertEquals(11, map.get(1));
+
+            assertEquals(11, map.putIfAbsent(1, 111));
+            assertEquals(11, map.get(1));
+        }
+    }
+
+    @Test
+    public void testCompareAndSet() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            assertFalse(map.compareAndSet(1, 11, 22));
+            assertTrue(map.compareAndSet(1, -1, 11));
+            assertEquals(11, map.get(1));
+
+            assertFalse(map.compareAndSet(1, -1, 22));
+            assertFalse(map.compareAndSet(1, 12, 22));
+            assertEquals(11, map.get(1));
+
+            assertTrue(map.compareAndSet(1, 11, 22));
+            assertEquals(22, map.get(1));
+            assertEquals(1, map.size());
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build()) {
+            map.put(1L, 1L);
+            map.put(2L, 2L);
+            map.put(3L, 3L);
+            map.put(4L, 4L);
+            map.put(5L, 5L);
+            map.put(6L, 6L);
+            assertEquals(3, map.removeIf((k, v) -> k < 4));
+            assertFalse(map.containsKey(1L));
+            assertFalse(map.containsKey(2L));
+            assertFalse(map.containsKey(3L));
+            assertTrue(map.containsKey(4L));
+            assertTrue(map.containsKey(5L));
+            assertTrue(map.containsKey(6L));
+            assertEquals(3, map.size());
+        }
+    }
+
+    @Test
+    public void testReduceUnnecessaryExpansions() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .build()) {
+            assertEquals(-1, map.put(1, 1));
+            assertEquals(-1, map.put(2, 2));
+            assertEquals(-1, map.put(3, 3));
+            assertEquals(-1, map.put(4, 4));
+
+            assertEquals(1, map.remove(1));
+            assertEquals(2, map.remove(2));
+            assertEquals(3, map.remove(3));
+            assertEquals(4, map.remove(4));
+
+            assertEquals(0, map.getUsedBucketCount());
+        }
+    }
+
+    @Test
+    public void testInvalidKeys() {
+        try (OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder().build()) {
+            try {
+                map.put(-5, 4);
+                fail("should have failed");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+
+            try {
+                map.get(-1);
+                fail("should have failed");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+
+            try {
+                map.put(1, -1);
+                fail("should have failed");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void testCloseReleasesMemory() {
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        OffHeapLongLongHashMap map = OffHeapLongLongHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .allocator(allocator)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i);
+        }
+        assertTrue(map.sizeInBytes() >= 16 * map.capacity());
+        assertEquals(map.sizeInBytes(), allocator.metric().usedDirectMemory());
+
+        map.close();
+        assertEquals(0, allocator.metric().usedDirectMemory());
+    }
+}
@@ -0,0 +1,637 @@
+/**
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.bookkeeper.util.collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import io.netty.buffer.UnpooledByteBufAllocator;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.apache.bookkeeper.util.collections.ConcurrentLongLongPairHashMap.LongPair;
+import org.junit.Test;
+
+/**
+ * Unit test for {@link OffHeapLongLongPairHashMap}.
+ */
+public class OffHeapLongLongPairHashMapTest {
+
+    @Test
+    public void testConstructor() {
+        try {
+            OffHeapLongLongPairHashMap.newBuilder().expectedItems(0).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            OffHeapLongLongPairHashMap.newBuilder().expectedItems(16).concurrencyLevel(0).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            OffHeapLongLongPairHashMap.newBuilder().expectedItems(4).concurrencyLevel(8).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+
+        try {
+            OffHeapLongLongPairHashMap.newBuilder().mapFillFactor(0.2f).mapIdleFactor(0.5f).build();
+            fail("should have thrown exception");
+        } catch (IllegalArgumentException e) {
+            // ok
+        }
+    }
+
+    @Test
+    public void simpleInsertions() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().expectedItems(16).build()) {
+            assertTrue(map.isEmpty());
+            assertTrue(map.put(1, 1, 11, 11));
+            assertFalse(map.isEmpty());
+
+            assertTrue(map.put(2, 2, 22, 22));
+            assertTrue(map.put(3, 3, 33, 33));
+
+            assertEquals(3, map.size());
+
+            assertEquals(new LongPair(11, 11), map.get(1, 1));
+            assertEquals(3, map.size());
+
+            assertTrue(map.remove(1, 1));
+            assertEquals(2, map.size());
+            assertNull(map.get(1, 1));
+            assertNull(map.get(5, 5));
+            assertEquals(2, map.size());
+
+            assertTrue(map.put(1, 1, 11, 11));
+            assertEquals(3, map.size());
+            assertTrue(map.put(1, 1, 111, 111));
+            assertEquals(3, map.size());
+            assertEquals(new LongPair(111, 111), map.get(1, 1));
+        }
+    }
+
+    @Test
+    public void testRemove() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().build()) {
+            assertTrue(map.isEmpty());
+            assertTrue(map.put(1, 1, 11, 11));
+            assertFalse(map.isEmpty());
+
+            assertFalse(map.remove(0, 0));
+            assertFalse(map.remove(1, 1, 111, 111));
+
+            assertFalse(map.isEmpty());
+            assertTrue(map.remove(1, 1, 11, 11));
+            assertTrue(map.isEmpty());
+        }
+    }
+
+    @Test
+    public void testClear() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .mapIdleFactor(0.25f)
+                .build()) {
+            assertEquals(4, map.capacity());
+
+            assertTrue(map.put(1, 1, 11, 11));
+            assertTrue(map.put(2, 2, 22, 22));
+            assertTrue(map.put(3, 3, 33, 33));
+
+            assertEquals(8, map.capacity());
+            map.clear();
+            assertEquals(0, map.size());
+            assertNull(map.get(1, 1));
+            assertEquals(4, map.capacity());
+        }
+    }
+
+    @Test
+    public void testExpandAndShrink() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .mapIdleFactor(0.25f)
+                .build()) {
+            assertTrue(map.put(1, 1, 11, 11));
+            assertTrue(map.put(2, 2, 22, 22));
+            assertEquals(4, map.capacity());
+
+            // expand hashmap
+            assertTrue(map.put(3, 3, 33, 33));
+            assertEquals(8, map.capacity());
+
+            assertTrue(map.remove(1, 1, 11, 11));
+            // not shrink
+            assertEquals(8, map.capacity());
+            assertTrue(map.remove(2, 2, 22, 22));
+            // shrink hashmap
+            assertEquals(4, map.capacity());
+
+            // expand hashmap
+            assertTrue(map.put(4, 4, 44, 44));
+            assertTrue(map.put(5, 5, 55, 55));
+            assertEquals(8, map.capacity());
+
+            for (long key = 3; key <= 5; key++) {
+                assertEquals(new LongPair(key * 11, key * 11), map.get(key, key));
+            }
+            assertEquals(3, map.size());
+        }
+    }
+
+    @Test
+    public void testNegativeUsedBucketCount() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build()) {
+            map.put(0, 0, 0, 0);
+            assertEquals(1, map.getUsedBucketCount());
+            map.put(0, 0, 1, 1);
+            assertEquals(1, map.getUsedBucketCount());
+            map.remove(0, 0);
+            assertEquals(0, map.getUsedBucketCount());
+            map.remove(0, 0);
+            assertEquals(0, map.getUsedBucketCount());
+        }
+    }
+
+    @Test
+    public void testRehashing() {
+        int n = 16;
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(n / 2)
+                .concurrencyLevel(1)
+                .build()) {
+            assertEquals(map.capacity(), n);
+            assertEquals(0, map.size());
+
+            for (int i = 0; i < n; i++) {
+                map.put(i, i, i, i);
+            }
+
+            assertEquals(2 * n, map.capacity());
+            assertEquals(n, map.size());
+            for (int i = 0; i < n; i++) {
+                assertEquals(new LongPair(i, i), map.get(i, i));
+            }
+        }
+    }
+
+    @Test
+    public void testRehashingWithDeletes() {
+        int n = 16;
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(n / 2)
+                .concurrencyLevel(1)
+                .build()) {
+            assertEquals(map.capacity(), n);
+            assertEquals(0, map.size());
+
+            for (int i = 0; i < n / 2; i++) {
+                map.put(i, i, i, i);
+            }
+
+            for (int i = 0; i < n / 2; i++) {
+                map.remove(i, i);
+            }
+
+            for (int i = n; i < (2 * n); i++) {
+                map.put(i, i, i, i);
+            }
+
+            assertEquals(2 * n, map.capacity());
+            assertEquals(n, map.size());
+            for (int i = 0; i < n / 2; i++) {
+                assertNull(map.get(i, i));
+            }
+            for (int i = n; i < 2 * n; i++) {
+                assertEquals(new LongPair(i, i), map.get(i, i));
+            }
+        }
+    }
+
+    @Test
+    public void testIncrementalMigrationKeepsItemsVisible() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(1024)
+                .concurrencyLevel(1)
+                .build()) {
+            // Every key must be found after each insertion, whether or not it has been moved to the new table
+            for (int i = 0; i < 10_000; i++) {
+                map.put(i, -i, i * 10L, -i);
+                if (i % 7 == 0) {
+                    assertTrue(map.remove(i, -i, i * 10L, -i));
+                    assertTrue(map.putIfAbsent(i, -i, i * 10L, -i));
+                }
+                for (int j = Math.max(0, i - 100); j <= i; j++) {
+                    assertEquals(new LongPair(j * 10L, -j), map.get(j, -j));
+                }
+            }
+            assertEquals(10_000, map.size());
+        }
+    }
+
+    @Test
+    public void concurrentInsertions() throws Throwable {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().build()) {
+            ExecutorService executor = Executors.newCachedThreadPool();
+
+            final int nThreads = 16;
+            final int n = 10_000;
+            long value = 55;
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads; i++) {
+                final int threadIdx = i;
+
+                futures.add(executor.submit(() -> {
+                    Random random = new Random();
+
+                    for (int j = 0; j < n; j++) {
+                        long key1 = Math.abs(random.nextLong());
+                        // Ensure keys are unique
+                        key1 -= key1 % (threadIdx + 1);
+                        key1 = key1 / nThreads * nThreads + threadIdx;
+
+                        long key2 = Math.abs(random.nextLong());
+                        // Ensure keys are unique
+                        key2 -= key2 % (threadIdx + 1);
+
+                        map.put(key1, key2, value, value);
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            assertEquals(n * nThreads, map.size());
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentInsertionsAndReads() throws Throwable {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().build()) {
+            ExecutorService executor = Executors.newCachedThreadPool();
+
+            final int nThreads = 16;
+            final int n = 10_000;
+            final long value = 55;
+
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < nThreads; i++) {
+                final int threadIdx = i;
+
+                futures.add(executor.submit(() -> {
+                    Random random = new Random();
+
+                    for (int j = 0; j < n; j++) {
+                        long key1 = Math.abs(random.nextLong());
+                        // Ensure keys are unique
+                        key1 -= key1 % (threadIdx + 1);
+                        key1 = key1 / nThreads * nThreads + threadIdx;
+
+                        long key2 = Math.abs(random.nextLong());
+                        // Ensure keys are unique
+                        key2 -= key2 % (threadIdx + 1);
+
+                        map.put(key1, key2, value, value);
+                        assertEquals(new LongPair(value, value), map.get(key1, key2));
+                    }
+                }));
+            }
+
+            for (Future<?> future : futures) {
+                future.get();
+            }
+
+            assertEquals(n * nThreads, map.size());
+
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentPutAndRemoveDuringRehash() throws Throwable {
+        // A single small section, so that the threads keep updating it while it expands and shrinks
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .autoShrink(true)
+                .build()) {
+            final int nWriters = 4;
+            final int nReaders = 4;
+            final int n = 20_000;
+            ExecutorService executor = Executors.newFixedThreadPool(nWriters + nReaders);
+            CyclicBarrier barrier = new CyclicBarrier(nWriters + nReaders);
+            // Highest index of each writer below which the odd keys are stable
+            AtomicLongArray progress = new AtomicLongArray(nWriters);
+            AtomicBoolean done = new AtomicBoolean();
+
+            List<Future<?>> writers = new ArrayList<>();
+            for (int t = 0; t < nWriters; t++) {
+                final int writer = t;
+                writers.add(executor.submit(() -> {
+                    barrier.await();
+                    for (int i = 0; i < n; i++) {
+                        long key = (long) i * nWriters + writer;
+                        assertTrue(map.putIfAbsent(key, writer, key + 1, i));
+                        if (i % 2 == 0) {
+                            // even keys are removed right away, making the section expand and shrink
+                            assertTrue(map.remove(key, writer, key + 1, i));
+                        }
+                        progress.set(writer, i);
+                    }
+                    return null;
+                }));
+            }
+
+            List<Future<?>> readers = new ArrayList<>();
+            for (int t = 0; t < nReaders; t++) {
+                readers.add(executor.submit(() -> {
+                    barrier.await();
+                    Random random = new Random();
+                    while (!done.get()) {
+                        int writer = random.nextInt(nWriters);
+                        long max = progress.get(writer);
+                        if (max < 1) {
+                            continue;
+                        }
+                        long i = random.nextInt((int) max) | 1;
+                        if (i > max) {
+                            continue;
+                        }
+                        long key = i * nWriters + writer;
+                        assertEquals(new LongPair(key + 1, i), map.get(key, writer));
+                    }
+                    return null;
+                }));
+            }
+
+            try {
+                for (Future<?> future : writers) {
+                    future.get();
+                }
+            } finally {
+                done.set(true);
+            }
+            for (Future<?> future : readers) {
+                future.get();
+            }
+            executor.shutdown();
+
+            assertEquals(nWriters * n / 2, map.size());
+            for (int t = 0; t < nWriters; t++) {
+                for (long i = 0; i < n; i++) {
+                    long key = i * nWriters + t;
+                    if (i % 2 == 0) {
+                        assertNull(map.get(key, t));
+                    } else {
+                        assertEquals(new LongPair(key + 1, i), map.get(key, t));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testIteration() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().build()) {
+            List<LongPair> keys = new ArrayList<>();
+            map.forEach((key1, key2, value1, value2) -> keys.add(new LongPair(key1, key2)));
+            assertTrue(keys.isEmpty());
+
+            map.put(0, 0, 0, 0);
+            map.forEach((key1, key2, value1, value2) -> keys.add(new LongPair(key1, key2)));
+            assertEquals(Collections.singletonList(new LongPair(0, 0)), keys);
+
+            map.remove(0, 0);
+            keys.clear();
+            map.forEach((key1, key2, value1, value2) -> keys.add(new LongPair(key1, key2)));
+            assertTrue(keys.isEmpty());
+
+            map.put(0, 0, 0, 0);
+            map.put(1, 1, 11, 11);
+            map.put(2, 2, 22, 22);
+
+            List<LongPair> values = new ArrayList<>();
+            keys.clear();
+            map.forEach((key1, key2, value1, value2) -> {
+                keys.add(new LongPair(key1, key2));
+                values.add(new LongPair(value1, value2));
+            });
+            Collections.sort(keys);
+            Collections.sort(values);
+            assertEquals(3, keys.size());
+            for (int i = 0; i < 3; i++) {
+                assertEquals(new LongPair(i, i), keys.get(i));
+                assertEquals(new LongPair(i * 11, i * 11), values.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testIterationDuringMigration() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(256)
+                .concurrencyLevel(1)
+                .build()) {
+            // Stop right after an expansion, while the old table still holds most of the items
+            long capacity = map.capacity();
+            long key = 0;
+            while (map.capacity() == capacity) {
+                map.put(key, key, key, key);
+                key++;
+            }
+
+            List<LongPair> keys = new ArrayList<>();
+            map.forEach((k1, k2, v1, v2) -> keys.add(new LongPair(k1, k2)));
+            Collections.sort(keys);
+            assertEquals(key, keys.size());
+            for (int i = 0; i < key; i++) {
+                assertEquals(new LongPair(i, i), keys.get(i));
+            }
+        }
+    }
+
+    @Test
+    public void testHashConflictWithDeletion() {
+        final int buckets = 16;
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(buckets)
+                .concurrencyLevel(1)
+                .build()) {
+            int capacity = (int) map.capacity();
+
+            // Pick 2 keys that fall into the same bucket
+            long key1 = 1;
+            long key2 = 2;
+            int bucket1 = OffHeapLongLongPairHashMap.signSafeMod(ConcurrentLongLongPairHashMap.hash(key1, key1),
+                    capacity);
+            while (OffHeapLongLongPairHashMap.signSafeMod(ConcurrentLongLongPairHashMap.hash(key2, key2),
+                    capacity) != bucket1) {
+                key2++;
+            }
+
+            assertTrue(map.put(key1, key1, 1, 1));
+            assertTrue(map.put(key2, key2, 2, 2));
+            assertEquals(2, map.size());
+
+            assertTrue(map.remove(key1, key1, 1, 1));
+            assertEquals(1, map.size());
+
+            assertTrue(map.put(key1, key1, 1, 1));
+            assertEquals(2, map.size());
+
+            assertTrue(map.remove(key1, key1, 1, 1));
+            assertEquals(1, map.size());
+
+            assertTrue(map.remove(key2, key2, 2, 2));
+            assertTrue(map.isEmpty());
+            assertEquals(0, map.getUsedBucketCount());
+        }
+    }
+
+    @Test
+    public void testPutIfAbsent() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().build()) {
+            assertTrue(map.putIfAbsent(1, 1, 11, 11));
+            assertEquals(new LongPair(11, 11), map.get(1, 1));
+
+            assertFalse(map.putIfAbsent(1, 1, 111, 111));
+            assertEquals(new LongPair(11, 11), map.get(1, 1));
+        }
+    }
+
+    @Test
+    public void testRemoveIf() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .build()) {
+            map.put(1L, 1L, 11L, 11L);
+            map.put(2L, 2L, 22L, 22L);
+            map.put(3L, 3L, 33L, 33L);
+            map.put(4L, 4L, 44L, 44L);
+            map.put(5L, 5L, 55L, 55L);
+            map.put(6L, 6L, 66L, 66L);
+            assertEquals(3, map.removeIf((k1, k2, v1, v2) -> k1 < 4));
+            assertFalse(map.containsKey(1L, 1L));
+            assertFalse(map.containsKey(2L, 2L));
+            assertFalse(map.containsKey(3L, 3L));
+            assertTrue(map.containsKey(4L, 4L));
+            assertTrue(map.containsKey(5L, 5L));
+            assertTrue(map.containsKey(6L, 6L));
+            assertEquals(3, map.size());
+        }
+    }
+
+    @Test
+    public void testReduceUnnecessaryExpansions() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(2)
+                .concurrencyLevel(1)
+                .build()) {
+            assertTrue(map.put(1, 1, 1, 1));
+            assertTrue(map.put(2, 2, 2, 2));
+            assertTrue(map.put(3, 3, 3, 3));
+            assertTrue(map.put(4, 4, 4, 4));
+
+            assertTrue(map.remove(1, 1, 1, 1));
+            assertTrue(map.remove(2, 2, 2, 2));
+            assertTrue(map.remove(3, 3, 3, 3));
+            assertTrue(map.remove(4, 4, 4, 4));
+
+            assertEquals(0, map.getUsedBucketCount());
+        }
+    }
+
+    @Test
+    public void testInvalidKeys() {
+        try (OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder().build()) {
+            try {
+                map.put(-5, 3, 4, 4);
+                fail("should have failed");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+
+            try {
+                map.get(-1, 0);
+                fail("should have failed");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+
+            try {
+                map.put(1, 1, -1, 0);
+                fail("should have failed");
+            } catch (IllegalArgumentException e) {
+                // ok
+            }
+        }
+    }
+
+    @Test
+    public void testCloseReleasesMemory() {
+        UnpooledByteBufAllocator allocator = new UnpooledByteBufAllocator(true);
+        OffHeapLongLongPairHashMap map = OffHeapLongLongPairHashMap.newBuilder()
+                .expectedItems(16)
+                .concurrencyLevel(1)
+                .allocator(allocator)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            map.put(i, i, i, i);
+        }
+        assertTrue(map.sizeInBytes() >= 32 * map.capacity());
+        assertEquals(map.sizeInBytes(), allocator.metric().usedDirectMemory());
+
+        map.close();
+        assertEquals(0, allocator.metric().usedDirectMemory());
+    }
+}
@@ -20,6 +20,7 @@ package org.apache.bookkeeper.proto;
 import static java.nio.charset.StandardCharsets.UTF_8;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.UnsafeByteOperations;
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.ByteBufAllocator;
 import io.netty.buffer.Unpooled;
@@ -65,6 +66,7 @@ public class ProtocolBenchmark {
     short flags;
     EnDecoder reqEnDeV2;
     EnDecoder reqEnDeV3;
+    ByteBuf addRequestV3;
 
     @Setup
     public void prepare() {
@@ -79,6 +81,20 @@ public class ProtocolBenchmark {
         // prepare the encoder
         this.reqEnDeV2 = new RequestEnDeCoderPreV3(null);
         this.reqEnDeV3 = new RequestEnDecoderV3(null);
+
+        // prepare an encoded v3 add request
+        Request request = Request.newBuilder()
+                .setHeader(BKPacketHeader.newBuilder()
+                        .setVersion(ProtocolVersion.VERSION_THREE)
+                        .setOperation(OperationType.ADD_ENTRY)
+                        .setTxnId(0L))
+                .setAddRequest(AddRequest.newBuilder()
+                        .setLedgerId(ledgerId)
+                        .setEntryId(entryId)
+                        .setMasterKey(ByteString.copyFrom(masterKey))
+                        .setBody(ByteString.copyFrom(data)))
+                .build();
+        this.addRequestV3 = Unpooled.wrappedBuffer(request.toByteArray());
     }
 
 
@@ -196,4 +212,39 @@ public class ProtocolBenchmark {
         Object res = this.reqEnDeV3.encode(request, ByteBufAllocator.DEFAULT);
         ReferenceCountUtil.release(res);
     }
+
+    @Benchmark
+    public void testAddEntryV3WithBody() throws Exception {
+        // Build the request without body, which is written next to it
+        BKPacketHeader.Builder headerBuilder = BKPacketHeader.newBuilder()
+                .setVersion(ProtocolVersion.VERSION_THREE)
+                .setOperation(OperationType.ADD_ENTRY)
+                .setTxnId(0L);
+
+        ByteBufList list = ByteBufList.get(entry.retainedSlice());
+        AddRequest.Builder addBuilder = AddRequest.newBuilder()
+                .setLedgerId(ledgerId)
+                .setEntryId(entryId)
+                .setMasterKey(UnsafeByteOperations.unsafeWrap(masterKey))
+                .setFlag(AddRequest.Flag.RECOVERY_ADD);
+
+        Request request = Request.newBuilder()
+                .setHeader(headerBuilder)
+                .setAddRequest(addBuilder.buildPartial())
+                .buildPartial();
+
+        Object res = this.reqEnDeV3.encode(new MessageWithBody(request, list), ByteBufAllocator.DEFAULT);
+        ReferenceCountUtil.release(res);
+    }
+
+    @Benchmark
+    public Object testDecodeAddEntryV3Protobuf() throws Exception {
+        return Request.parseFrom(addRequestV3.nioBuffer());
+    }
+
+    @Benchmark
+    public void testDecodeAddEntryV3() throws Exception {
+        Object req = this.reqEnDeV3.decode(addRequestV3.duplicate());
+        ReferenceCountUtil.release(req);
+    }
 }
@@ -0,0 +1,263 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.bookkeeper.proto;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelHandler.Sharable;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.ChannelPipeline;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.util.concurrent.DefaultThreadFactory;
+
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.apache.bookkeeper.conf.ClientConfiguration;
+import org.apache.bookkeeper.conf.ServerConfiguration;
+import org.apache.bookkeeper.util.ByteBufList;
+import org.apache.bookkeeper.util.EventLoopUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarking the round-trip latency of add and read requests over the epoll and io_uring transports.
+ *
+ * <p>The bookie side only decodes the request and sends back a response, so that the measure is dominated by
+ * the transport and the codecs rather than by the storage.
+ *
+ * <p>At the end of each trial, the number of socket reads and writes per request is printed, counting both
+ * the client and the bookie sides. With epoll, each of them is a read or write syscall. With io_uring, they are
+ * submitted to the ring instead, and batched in fewer io_uring_enter syscalls, which only
+ * {@code perf stat -e raw_syscalls:sys_enter} can count.
+ */
+@BenchmarkMode({Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@State(Scope.Thread)
+@Fork(1)
+@Warmup(iterations = 2, time = 10, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 3, time = 10, timeUnit = TimeUnit.SECONDS)
+public class TransportBenchmark {
+
+    @Param({"epoll", "io_uring"})
+    String transport;
+
+    @Param({"64", "1024"})
+    int entrySize;
+
+    // the v2 protocol sends master keys of a fixed length
+    private final byte[] masterKey = Arrays.copyOf("test-benchmark-key".getBytes(UTF_8),
+            BookieProtocol.MASTER_KEY_LENGTH);
+    private final long ledgerId = ThreadLocalRandom.current().nextLong(Long.MAX_VALUE);
+    private long entryId = 0;
+
+    private EventLoopGroup serverGroup;
+    private EventLoopGroup clientGroup;
+    private Channel serverChannel;
+    private Channel clientChannel;
+    private ByteBuf entry;
+    private volatile CompletableFuture<BookieProtocol.Response> pendingResponse;
+    private final SocketIOCounter ioCounter = new SocketIOCounter();
+    private long requests = 0;
+
+    @Setup(Level.Trial)
+    public void setup() throws Exception {
+        boolean ioUring = "io_uring".equals(transport);
+        ServerConfiguration serverConf = new ServerConfiguration().setIoUringEnabled(ioUring);
+        serverGroup = EventLoopUtil.getServerEventLoopGroup(serverConf.setServerNumIOThreads(1),
+                new DefaultThreadFactory("bench-bookie-io"));
+        ClientConfiguration clientConf = new ClientConfiguration().setIoUringEnabled(ioUring);
+        clientGroup = EventLoopUtil.getClientEventLoopGroup(clientConf.setNumIOThreads(1),
+                new DefaultThreadFactory("bench-client-io"));
+        if (!isTransport(serverGroup, ioUring) || !isTransport(clientGroup, ioUring)) {
+            throw new IllegalStateException("Transport " + transport + " is not available on this host");
+        }
+
+        ServerBootstrap serverBootstrap = new ServerBootstrap()
+                .group(serverGroup, serverGroup)
+                .channel(EventLoopUtil.getServerSocketChannelClass(serverGroup))
+                .childOption(ChannelOption.TCP_NODELAY, true)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ChannelPipeline pipeline = ch.pipeline();
+                        pipeline.addLast("ioCounter", ioCounter);
+                        pipeline.addLast("bytebufList", ByteBufList.ENCODER_WITH_SIZE);
+                        pipeline.addLast("lengthbaseddecoder", new LengthFieldBasedFrameDecoder(1 << 20, 0, 4, 0, 4));
+                        pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
+                        pipeline.addLast("bookieProtoDecoder", new BookieProtoEncoding.RequestDecoder(null));
+                        pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.ResponseEncoder(null));
+                        pipeline.addLast("bookieRequestHandler", new BookieHandler());
+                    }
+                });
+        serverChannel = serverBootstrap.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+        Bootstrap clientBootstrap = new Bootstrap()
+                .group(clientGroup)
+                .channel(EventLoopUtil.getSocketChannelClass(clientGroup))
+                .option(ChannelOption.TCP_NODELAY, true)
+                .handler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ChannelPipeline pipeline = ch.pipeline();
+                        pipeline.addLast("ioCounter", ioCounter);
+                        pipeline.addLast("bytebufList", ByteBufList.ENCODER_WITH_SIZE);
+                        pipeline.addLast("lengthbasedframedecoder",
+                                new LengthFieldBasedFrameDecoder(1 << 20, 0, 4, 0, 4));
+                        pipeline.addLast("lengthprepender", new LengthFieldPrepender(4));
+                        pipeline.addLast("bookieProtoEncoder", new BookieProtoEncoding.RequestEncoder(null));
+                        pipeline.addLast("bookieProtoDecoder",
+                                new BookieProtoEncoding.ResponseDecoder(null, true, false));
+                        pipeline.addLast("mainhandler", new ClientHandler());
+                    }
+                });
+        clientChannel = clientBootstrap.connect(serverChannel.localAddress()).sync().channel();
+
+        byte[] data = new byte[entrySize];
+        ThreadLocalRandom.current().nextBytes(data);
+        entry = Unpooled.wrappedBuffer(data);
+    }
+
+    private static boolean isTransport(EventLoopGroup eventLoopGroup, boolean ioUring) {
+        return ioUring ? EventLoopUtil.isIOUringEventLoopGroup(eventLoopGroup)
+                : eventLoopGroup instanceof EpollEventLoopGroup;
+    }
+
+    @TearDown(Level.Trial)
+    public void teardown() throws Exception {
+        if (requests > 0) {
+            System.out.printf("%s, %d bytes entries: %.2f socket reads and %.2f socket writes per request%n",
+                    transport, entrySize, (double) ioCounter.reads.sum() / requests,
+                    (double) ioCounter.writes.sum() / requests);
+        }
+        clientChannel.close().sync();
+        serverChannel.close().sync();
+        clientGroup.shutdownGracefully().sync();
+        serverGroup.shutdownGracefully().sync();
+        entry.release();
+    }
+
+    @Benchmark
+    public void addEntry() throws Exception {
+        long eId = entryId++;
+        // the bookie reads the ledger and entry ids at the beginning of the payload
+        ByteBuf header = Unpooled.buffer(16);
+        header.writeLong(ledgerId);
+        header.writeLong(eId);
+        ByteBufList toSend = ByteBufList.get(header, entry.retainedDuplicate());
+        BookieProtocol.AddRequest request = BookieProtocol.AddRequest.create(
+                BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, eId, BookieProtocol.FLAG_NONE, masterKey, toSend);
+        toSend.release();
+        roundTrip(request);
+    }
+
+    @Benchmark
+    public void readEntry() throws Exception {
+        roundTrip(new BookieProtocol.ReadRequest(BookieProtocol.CURRENT_PROTOCOL_VERSION, ledgerId, entryId++,
+                BookieProtocol.FLAG_NONE, null));
+    }
+
+    private void roundTrip(Object request) throws Exception {
+        CompletableFuture<BookieProtocol.Response> future = new CompletableFuture<>();
+        pendingResponse = future;
+        requests++;
+        clientChannel.writeAndFlush(request, clientChannel.voidPromise());
+        BookieProtocol.Response response = future.get();
+        response.release();
+        response.recycle();
+    }
+
+    /**
+     * Counts the reads and the writes on the sockets, as the first handler of the pipelines. Each read of the
+     * socket passes a buffer to the pipeline, and each flush writes the pending buffers to the socket.
+     */
+    @Sharable
+    private static class SocketIOCounter extends ChannelDuplexHandler {
+        final LongAdder reads = new LongAdder();
+        final LongAdder writes = new LongAdder();
+
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            reads.increment();
+            ctx.fireChannelRead(msg);
+        }
+
+        @Override
+        public void flush(ChannelHandlerContext ctx) {
+            writes.increment();
+            ctx.flush();
+        }
+    }
+
+    /**
+     * Bookie side handler, answering every request without touching any storage.
+     */
+    private class BookieHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            BookieProtocol.Request request = (BookieProtocol.Request) msg;
+            BookieProtocol.Response response;
+            if (request instanceof BookieProtocol.ParsedAddRequest) {
+                ((BookieProtocol.ParsedAddRequest) request).release();
+                response = ResponseBuilder.buildAddResponse(request);
+            } else {
+                response = ResponseBuilder.buildReadResponse(entry.retainedDuplicate(), request);
+            }
+            request.recycle();
+            ctx.writeAndFlush(response, ctx.voidPromise());
+        }
+    }
+
+    /**
+     * Client side handler, completing the outstanding request.
+     */
+    private class ClientHandler extends ChannelInboundHandlerAdapter {
+        @Override
+        public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            pendingResponse.complete((BookieProtocol.Response) msg);
+        }
+    }
+}
@@ -175,6 +175,32 @@ public class JournalWriter implements Runnable {
         )
         public int numJournalCallbackThreads = 8;
 
+        @Parameter(
+            names = {
+                "-js", "--journal-stripes"
+            },
+            description = "Number of journal stripes per journal directory, each one with its own writer thread."
+                + " Run with increasing values to measure how the journal scales with the writer threads"
+        )
+        public int journalStripes = 1;
+
+        @Parameter(
+            names = {
+                "-dio", "--direct-io"
+            },
+            description = "Write the journal with direct I/O instead of through the page cache."
+                + " Run with and without it to compare both modes"
+        )
+        public boolean journalDirectIO = false;
+
+        @Parameter(
+            names = {
+                "-ja", "--journal-alignment-size"
+            },
+            description = "Journal alignment size in bytes, use 4096 with direct I/O"
+        )
+        public int journalAlignmentSize = 512;
+
     }
 
 
@@ -237,17 +263,21 @@ public class JournalWriter implements Runnable {
             checker,
             NullStatsLogger.INSTANCE
         );
-        Journal[] journals = new Journal[flags.journalDirs.size()];
-        for (int i = 0; i < journals.length; i++) {
-            Journal journal = new Journal(
+        Journal[] journals = new Journal[flags.journalDirs.size() * flags.journalStripes];
+        for (int i = 0; i < flags.journalDirs.size(); i++) {
+            List<Journal> stripeJournals = Journal.newStripeJournals(
                 i,
                 new File(flags.journalDirs.get(i)),
+                flags.journalStripes,
                 conf,
                 manager,
                 statsLogger.scope(JOURNAL_SCOPE),
                 allocator);
-            journals[i] = journal;
-            journal.start();
+            for (int stripe = 0; stripe < flags.journalStripes; stripe++) {
+                Journal journal = stripeJournals.get(stripe);
+                journals[i * flags.journalStripes + stripe] = journal;
+                journal.start();
+            }
         }
         try {
             execute(journals);
@@ -472,8 +502,11 @@ public class JournalWriter implements Runnable {
         conf.setJournalMaxGroupWaitMSec(flags.groupCommitIntervalMs);
         conf.setJournalBufferedWritesThreshold(flags.groupCommitMaxBytes);
         conf.setNumJournalCallbackThreads(flags.numJournalCallbackThreads);
+        conf.setJournalStripesPerDirectory(flags.journalStripes);
         conf.setJournalQueueSize(flags.journalQueueSize);
         conf.setJournalSyncData(flags.journalSyncEnabled);
+        conf.setJournalDirectIOEnabled(flags.journalDirectIO);
+        conf.setJournalAlignmentSize(flags.journalAlignmentSize);
         conf.setLedgerDirNames(flags.journalDirs.toArray(new String[0]));
         conf.setStatsProviderClass(PrometheusMetricsProvider.class);
         File[] currentDirs = BookieImpl.getCurrentDirectories(conf.getLedgerDirs());